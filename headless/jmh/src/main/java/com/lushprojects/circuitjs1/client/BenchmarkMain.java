@@ -0,0 +1,38 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Arrays;
+
+// Main class of benchmarks.jar.  Runs JMH's own Main with -foe true (fail on error) unless
+// -foe is given, so a circuit that fails in setup stops the run with an error instead of
+// being left out of the results.
+public class BenchmarkMain {
+    public static void main(String args[]) throws Exception {
+	if (!Arrays.asList(args).contains("-foe")) {
+	    String a[] = new String[args.length+2];
+	    a[0] = "-foe";
+	    a[1] = "true";
+	    System.arraycopy(args, 0, a, 2, args.length);
+	    args = a;
+	}
+	org.openjdk.jmh.Main.main(args);
+    }
+}
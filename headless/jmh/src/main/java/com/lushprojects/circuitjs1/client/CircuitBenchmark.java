@@ -0,0 +1,146 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Benchmarks over circuits loaded with HeadlessSim.readCircuit():
+//
+//   analyze  - analyzeCircuit() (node allocation and current path checks), in ops/s
+//   stamp    - stampCircuit() (stamping, simplifying and factoring the matrix), in ops/s
+//   step     - one call to step() in steady state, in ops/s (= timesteps/sec).  The steps and
+//              subIterations counters give the subiterations per step; steps can be more
+//              than the number of calls if the timestep had to be cut.
+//
+// A circuit of the form topology:size is generated by CircuitGenerator, with about size
+// nodes.  Anything else is a file in tests/, whose directory is set with
+// -jvmArgs -Dcircuitjs1.tests=dir (default ../../tests).  Use -p circuit=a.txt,mesh:1000 to
+// pick circuits.  All of tests/ is listed except lm324-sub.txt, which only defines a
+// subcircuit model, in an old format that can't be loaded.
+//
+// A circuit that can't be loaded (including one with a subcircuit model we can't read), or
+// that stops while settling or running, is an error.
+// BenchmarkMain runs JMH with -foe true, so the whole run fails instead of going on to the
+// next circuit and leaving it out of the results.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBenchmark {
+    @Param({"rc-ladder:1000", "rc-ladder:10000", "lc-ladder:1000", "lc-ladder:10000",
+	    "mesh:1000", "mesh:10000", "inverters:1000", "inverters:10000", "counter:1000",
+	    "counter:10000", "transline:1000", "transline:10000", "wires:1000", "wires:10000",
+	    "14seg1.txt", "14segca.txt", "16seg1.txt", "16segca.txt", "7seg.txt", "7segca.txt",
+	    "7segdp.txt", "cccs.txt", "cir-amp-741.txt", "cir-relax-741.txt", "circuit-324.txt",
+	    "current-adder.txt", "custom.txt", "fullrect-ex.txt", "fullrect.txt", "jfet1.txt",
+	    "label.txt", "multitrans.txt", "mux.txt", "pjfetfollow.txt", "polarcap.txt",
+	    "schmitt.txt", "square67.txt", "switchingxform.txt", "tappedxform.txt", "tflipflop.txt",
+	    "vccs-resistor.txt", "vcvs-opamp.txt", "vcvs-power.txt", "wire-pair.txt"})
+    public String circuit;
+
+    // number of timesteps to run before measuring steady-state steps
+    @Param({"1000"})
+    public int settleSteps;
+
+    HeadlessSim sim;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StepCounters {
+	public long steps, subIterations;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+	    steps = subIterations = 0;
+	}
+    }
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+	sim = new HeadlessSim();
+	sim.readCircuit(getCircuitText());
+	if (sim.loadError != null)
+	    throw new IllegalStateException(circuit + ": " + sim.loadError);
+	if (sim.elmList.size() == 0)
+	    throw new IllegalStateException(circuit + ": no elements");
+	sim.reset();
+	int i;
+	for (i = 0; i != settleSteps && sim.stopMessage == null; i++)
+	    sim.step();
+	if (sim.stopMessage != null)
+	    throw new IllegalStateException(circuit + ": " + sim.stopMessage);
+    }
+
+    String getCircuitText() throws Exception {
+	int colon = circuit.indexOf(':');
+	if (colon >= 0) {
+	    String text = CircuitGenerator.generate(circuit.substring(0, colon),
+		    Integer.parseInt(circuit.substring(colon+1)));
+	    if (text == null)
+		throw new IllegalArgumentException(circuit + ": unknown topology");
+	    return text;
+	}
+	File dir = new File(System.getProperty("circuitjs1.tests", "../../tests"));
+	return new String(Files.readAllBytes(new File(dir, circuit).toPath()), "UTF-8");
+    }
+
+    @Benchmark
+    public Object analyze() {
+	// analyze from scratch, as when the circuit is loaded
+	sim.topology = null;
+	sim.analyzeCircuit();
+	return sim.nodeList;
+    }
+
+    @Benchmark
+    public Object stamp() {
+	sim.stampCircuit();
+	return sim.circuitSolver;
+    }
+
+    @Benchmark
+    public double step(StepCounters counters) {
+	int sub = sim.getSubIterations();
+	int steps = sim.steps;
+	if (!sim.step())
+	    throw new IllegalStateException(circuit + ": " + sim.stopMessage);
+	counters.steps += sim.steps-steps;
+	counters.subIterations += sim.getSubIterations()-sub;
+	return sim.t;
+    }
+}
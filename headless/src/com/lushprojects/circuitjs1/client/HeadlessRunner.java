@@ -0,0 +1,311 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Vector;
+
+// Command-line batch runner.  Simulates each circuit file given on the command line to an end
+// time, as fast as possible, and writes the values of its probes to CSV or binary output:
+//
+//   java -jar circuitjs1-core.jar [options] circuit.txt ...
+//
+// By default we output the voltage of each labeled node, probe, output and data recorder, and the
+// voltage and current of each element shown in a scope.  Statistics (wall time, steps/sec,
+// subiterations) are printed to stderr for each circuit.  With -c, the run fails unless the
+// given values come out right at the end, which is how "ant check" tests circuits in tests/.
+//
+// The binary format is big-endian: the int 0x434a5331 ("CJS1"), the number of columns n, the n
+// column names as UTF strings (see DataOutput.writeUTF()), and then one row of n doubles per
+// sample.  The first column is always the time.
+class HeadlessRunner {
+    double endTime = .01;
+    double interval = 0;
+    boolean binary;
+    boolean quiet;
+    boolean verbose;
+    String outputFile, outputDir;
+    Vector<String> selected = new Vector<String>();
+
+    // values to check at the end of the run (-c name=value)
+    Vector<String> checkNames = new Vector<String>();
+    Vector<Double> checkValues = new Vector<Double>();
+
+    // relative tolerance for -c
+    static final double CHECK_TOLERANCE = 1e-6;
+
+    // a value we write out for every sample
+    static class Signal {
+	String name;
+	SimElm elm;
+	int node = -1;
+	boolean current;
+
+	Signal(String n, SimElm e, int nd, boolean c) {
+	    name = n;
+	    elm = e;
+	    node = nd;
+	    current = c;
+	}
+
+	double getValue(HeadlessSim sim) {
+	    if (node >= 0)
+		return sim.getNodeVoltage(node);
+	    if (current)
+		return elm.getCurrent();
+	    return (elm.device != null) ? elm.device.getVoltageDiff() : elm.getVoltageDiff();
+	}
+    }
+
+    static void usage() {
+	System.err.println("usage: java -jar circuitjs1-core.jar [options] circuit.txt ...");
+	System.err.println("  -t time      simulate until this time (default .01)");
+	System.err.println("  -i interval  write a sample every interval seconds (default every timestep)");
+	System.err.println("  -o file      write output to file (default stdout)");
+	System.err.println("  -d dir       write output for each circuit to dir/name.csv or dir/name.bin");
+	System.err.println("  -b           binary output");
+	System.err.println("  -s name      only output this value (may be repeated)");
+	System.err.println("  -q           no output, only statistics");
+	System.err.println("  -c name=val  fail unless this value is val at the end (may be repeated)");
+	System.err.println("  -v           print log messages from the simulator");
+	System.exit(2);
+    }
+
+    public static void main(String args[]) {
+	HeadlessRunner r = new HeadlessRunner();
+	Vector<String> files = new Vector<String>();
+	int i;
+	try {
+	    for (i = 0; i != args.length; i++) {
+		String a = args[i];
+		if (a.equals("-t"))
+		    r.endTime = Double.parseDouble(args[++i]);
+		else if (a.equals("-i"))
+		    r.interval = Double.parseDouble(args[++i]);
+		else if (a.equals("-o"))
+		    r.outputFile = args[++i];
+		else if (a.equals("-d"))
+		    r.outputDir = args[++i];
+		else if (a.equals("-b"))
+		    r.binary = true;
+		else if (a.equals("-s"))
+		    r.selected.add(args[++i]);
+		else if (a.equals("-c")) {
+		    String s[] = args[++i].split("=");
+		    r.checkNames.add(s[0]);
+		    r.checkValues.add(Double.parseDouble(s[1]));
+		}
+		else if (a.equals("-q"))
+		    r.quiet = true;
+		else if (a.equals("-v"))
+		    r.verbose = true;
+		else if (a.startsWith("-"))
+		    usage();
+		else
+		    files.add(a);
+	    }
+	} catch (Exception e) {
+	    usage();
+	}
+	if (files.size() == 0 || (files.size() > 1 && r.outputFile != null))
+	    usage();
+	int failed = 0;
+	for (i = 0; i != files.size(); i++)
+	    if (!r.runFile(files.get(i)))
+		failed++;
+	System.exit(failed == 0 ? 0 : 1);
+    }
+
+    Vector<Signal> getSignals(HeadlessSim sim) {
+	Vector<Signal> list = new Vector<Signal>();
+	Vector<String> labels = new Vector<String>();
+	int i;
+	for (i = 0; i != sim.elmList.size(); i++) {
+	    SimElm ce = sim.elmList.get(i);
+	    if (ce.device instanceof LabeledNodeDevice) {
+		String label = ((LabeledNodeDevice) ce.device).text;
+		if (!labels.contains(label)) {
+		    labels.add(label);
+		    list.add(new Signal(label, ce, ce.nodes[0], false));
+		}
+		continue;
+	    }
+	    if (ce.device instanceof ProbeDevice)
+		list.add(new Signal(sim.getElmName(ce), ce, -1, false));
+	}
+	for (i = 0; i != sim.scopeTargets.size(); i++) {
+	    SimElm ce = sim.getElmByDumpIndex(sim.scopeTargets.get(i));
+	    if (ce == null)
+		continue;
+	    list.add(new Signal(sim.getElmName(ce) + ".v", ce, -1, false));
+	    list.add(new Signal(sim.getElmName(ce) + ".i", ce, -1, true));
+	}
+	if (selected.size() == 0)
+	    return list;
+	Vector<Signal> sel = new Vector<Signal>();
+	for (i = 0; i != list.size(); i++)
+	    if (selected.contains(list.get(i).name))
+		sel.add(list.get(i));
+	return sel;
+    }
+
+    boolean runFile(String file) {
+	HeadlessSim sim = new HeadlessSim();
+	sim.verbose = verbose;
+	try {
+	    sim.readCircuit(new String(Files.readAllBytes(new File(file).toPath()), "UTF-8"));
+	} catch (IOException e) {
+	    System.err.println(file + ": " + e);
+	    return false;
+	}
+	sim.reset();
+	if (sim.stopMessage != null) {
+	    System.err.println(file + ": " + sim.stopMessage);
+	    return false;
+	}
+	Vector<Signal> signals = getSignals(sim);
+	OutputStream os = null;
+	DataOutputStream dos = null;
+	PrintStream ps = null;
+	try {
+	    if (!quiet) {
+		if (outputFile != null)
+		    os = new FileOutputStream(outputFile);
+		else if (outputDir != null) {
+		    String name = new File(file).getName().replaceFirst("\\.txt$", "");
+		    os = new FileOutputStream(new File(outputDir, name + (binary ? ".bin" : ".csv")));
+		} else
+		    os = System.out;
+		os = new BufferedOutputStream(os, 1<<16);
+		if (binary)
+		    dos = new DataOutputStream(os);
+		else
+		    ps = new PrintStream(os, false, "UTF-8");
+		writeHeader(signals, dos, ps);
+	    }
+
+	    long start = System.nanoTime();
+	    double nextSample = interval;
+	    boolean ok = true;
+	    while (sim.t < endTime) {
+		if (!sim.step()) {
+		    ok = false;
+		    break;
+		}
+		if (os == null)
+		    continue;
+		if (interval > 0) {
+		    if (sim.t < nextSample)
+			continue;
+		    while (nextSample <= sim.t)
+			nextSample += interval;
+		}
+		writeRow(sim, signals, dos, ps);
+	    }
+	    double wall = (System.nanoTime()-start)*1e-9;
+	    if (os != null) {
+		os.flush();
+		if (outputFile != null || outputDir != null)
+		    os.close();
+	    }
+	    printStats(file, sim, wall);
+	    if (!ok) {
+		System.err.println(file + ": stopped at t=" + sim.t + ": " + sim.stopMessage);
+		return false;
+	    }
+	    return checkValues(file, sim, signals);
+	} catch (IOException e) {
+	    System.err.println(file + ": " + e);
+	    return false;
+	}
+    }
+
+    // compare the values at the end of the run against the ones given with -c
+    boolean checkValues(String file, HeadlessSim sim, Vector<Signal> signals) {
+	boolean ok = true;
+	int i, j;
+	for (i = 0; i != checkNames.size(); i++) {
+	    String name = checkNames.get(i);
+	    double expected = checkValues.get(i);
+	    Signal s = null;
+	    for (j = 0; j != signals.size(); j++)
+		if (signals.get(j).name.equals(name))
+		    s = signals.get(j);
+	    if (s == null) {
+		System.err.println(file + ": no value named " + name);
+		ok = false;
+		continue;
+	    }
+	    double v = s.getValue(sim);
+	    if (!(Math.abs(v-expected) <= CHECK_TOLERANCE*Math.max(Math.abs(expected), 1e-3))) {
+		System.err.println(file + ": " + name + " is " + v + ", expected " + expected);
+		ok = false;
+	    }
+	}
+	return ok;
+    }
+
+    void writeHeader(Vector<Signal> signals, DataOutputStream dos, PrintStream ps) throws IOException {
+	int i;
+	if (dos != null) {
+	    dos.writeInt(0x434a5331);
+	    dos.writeInt(signals.size()+1);
+	    dos.writeUTF("t");
+	    for (i = 0; i != signals.size(); i++)
+		dos.writeUTF(signals.get(i).name);
+	    return;
+	}
+	StringBuilder sb = new StringBuilder("t");
+	for (i = 0; i != signals.size(); i++)
+	    sb.append(',').append(signals.get(i).name);
+	ps.println(sb);
+    }
+
+    void writeRow(HeadlessSim sim, Vector<Signal> signals, DataOutputStream dos, PrintStream ps) throws IOException {
+	int i;
+	if (dos != null) {
+	    dos.writeDouble(sim.t);
+	    for (i = 0; i != signals.size(); i++)
+		dos.writeDouble(signals.get(i).getValue(sim));
+	    return;
+	}
+	StringBuilder sb = new StringBuilder();
+	sb.append(sim.t);
+	for (i = 0; i != signals.size(); i++)
+	    sb.append(',').append(signals.get(i).getValue(sim));
+	ps.println(sb);
+    }
+
+    void printStats(String file, HeadlessSim sim, double wall) {
+	double avg = (sim.steps == 0) ? 0 : sim.getSubIterations() / (double) sim.steps;
+	System.err.println(file + ": t=" + sim.t + ", " + sim.steps + " steps in " +
+		Math.round(wall*1000) + " ms (" + Math.round(sim.steps/Math.max(wall, 1e-9)) + " steps/s), " +
+		"matrix " + sim.circuitMatrixSize + " (" + (sim.circuitSolver == null ? "none" : sim.circuitSolver.getName()) + "), " +
+		"subiterations avg " + Math.round(avg*100)/100. + " max " + sim.subIterationMax +
+		", convergence failures " + sim.convergenceFailures);
+    }
+}
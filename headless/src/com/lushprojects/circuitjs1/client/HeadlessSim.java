@@ -0,0 +1,652 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+// Simulator that runs on a plain JVM, with no GWT.  It reads the same circuit text as
+// CirSim.readCircuit() and creates a SimElm for each element, with the same Device the browser
+// element uses.  The device reads the dump itself (see Device.undump()), and PostLayout puts
+// the posts where the browser element would.  Analysis, stamping and the timestep loop are
+// the ones in CircuitEngine that CirSim uses, so results match the browser, including
+// adjustable timesteps, breakpoints, multirate integration and the Newton predictor.  A
+// circuit with an element type we have no device for (see createDevice()) is rejected
+// rather than simulated wrongly.
+//
+// Only the parts that need a user (scopes, sliders, dc analysis) are left out.
+class HeadlessSim extends CircuitEngine {
+    Vector<SimElm> elmList = new Vector<SimElm>();
+
+    // dump type of each element in elmList, and its position in the circuit file counting only
+    // element lines (the index CirSim would give it, which scopes refer to)
+    Vector<Integer> elmDumpTypes = new Vector<Integer>();
+    Vector<Integer> elmDumpIndices = new Vector<Integer>();
+
+    boolean verbose;
+
+    // grid size of the circuit, which sets where some elements put their posts
+    int gridSize = 16;
+
+    // why the circuit couldn't be loaded, or null.  reset() stops with this message.
+    String loadError;
+
+    // dump types we found in the circuit but can't simulate
+    Vector<String> unsupportedTypes = new Vector<String>();
+
+    // elements shown in scopes ('o' lines and scope elements), as dump indices (see
+    // elmDumpIndices)
+    Vector<Integer> scopeTargets = new Vector<Integer>();
+
+    // diode models from the circuit file (type 34), name -> { Is, Rs, N, Bv }
+    HashMap<String,double[]> diodeModels = new HashMap<String,double[]>();
+
+    // transistor models from the circuit file (type 32)
+    HashMap<String,TransistorParameters> transistorModels = new HashMap<String,TransistorParameters>();
+
+    // custom logic models from the circuit file ('!' lines)
+    HashMap<String,CustomLogicRules> logicModels = new HashMap<String,CustomLogicRules>();
+
+    // subcircuit models from the circuit file ('.' lines)
+    HashMap<String,SubcircuitModel> subcircuitModels = new HashMap<String,SubcircuitModel>();
+
+    // the parts of CustomCompositeModel we need to load a subcircuit (410)
+    static class SubcircuitModel {
+	int sizeX, sizeY;
+	ChipPin pins[];
+	int externalNodes[];
+	String nodeList, elmDump;
+
+	// same as CustomCompositeModel.undump()
+	SubcircuitModel(StringTokenizer st) {
+	    // flags
+	    st.nextToken();
+	    sizeX = Integer.parseInt(st.nextToken());
+	    sizeY = Integer.parseInt(st.nextToken());
+	    int extCount = Integer.parseInt(st.nextToken());
+	    pins = new ChipPin[extCount];
+	    externalNodes = new int[extCount];
+	    int i;
+	    for (i = 0; i != extCount; i++) {
+		String s = Device.unescape(st.nextToken());
+		externalNodes[i] = Integer.parseInt(st.nextToken());
+		int p = Integer.parseInt(st.nextToken());
+		int sd = Integer.parseInt(st.nextToken());
+		pins[i] = new ChipPin(p, sd, s);
+	    }
+	    nodeList = Device.unescape(st.nextToken());
+	    elmDump = Device.unescape(st.nextToken());
+	}
+    }
+
+    // largest number of subiterations in one timestep, and the number of timesteps that failed
+    // to converge and were retried
+    int subIterationMax, convergenceFailures;
+
+    Vector<? extends SimElm> getElmList() { return elmList; }
+
+    void log(String s) {
+	if (verbose)
+	    System.err.println(s);
+    }
+
+    void stop(String s, SimElm ce) {
+	if (stopMessage == null)
+	    stopMessage = s;
+	circuitMatrix = null;
+    }
+
+    // load a circuit in the format written by CirSim.dumpCircuit().  If something in it can't
+    // be loaded, loadError is set and the circuit won't run.
+    void readCircuit(String text) {
+	elmList.removeAllElements();
+	elmDumpTypes.removeAllElements();
+	elmDumpIndices.removeAllElements();
+	unsupportedTypes.removeAllElements();
+	scopeTargets.removeAllElements();
+	diodeModels.clear();
+	transistorModels.clear();
+	logicModels.clear();
+	subcircuitModels.clear();
+	loadError = stopMessage = null;
+	topology = null;
+	t = 0;
+	maxTimeStep = timeStep = 5e-6;
+	minTimeStep = 50e-12;
+	readOptionFlags(0);
+	matrixSolverType = SOLVER_AUTO;
+	String lines[] = text.split("\r\n|\n|\r");
+	int i;
+	// number of elements CirSim would have in elmList so far
+	int dumpIndex = 0;
+	for (i = 0; i != lines.length; i++) {
+	    StringTokenizer st = new StringTokenizer(lines[i], " +\t\n\r\f");
+	    if (!st.hasMoreTokens())
+		continue;
+	    String type = st.nextToken();
+	    int tint = type.charAt(0);
+	    try {
+		if (tint == '$') {
+		    readOptions(st);
+		    continue;
+		}
+		if (tint == 'o') {
+		    addScopeTarget(st);
+		    continue;
+		}
+		if (tint == '!') {
+		    // the rest of the file is a script for the browser
+		    if (type.equals("!!!javascript"))
+			break;
+		    readLogicModel(st);
+		    continue;
+		}
+		if (tint == '.') {
+		    readSubcircuitModel(st);
+		    continue;
+		}
+		// hints and filter settings
+		if (tint == 'h' || tint == '%' || tint == '?' || tint == 'B')
+		    continue;
+		if (tint >= '0' && tint <= '9')
+		    tint = Integer.parseInt(type);
+		if (tint == 34) {
+		    readDiodeModel(st);
+		    continue;
+		}
+		if (tint == 32) {
+		    readTransistorModel(st);
+		    continue;
+		}
+		// sliders
+		if (tint == 38)
+		    continue;
+		int x1 = Integer.parseInt(st.nextToken());
+		int y1 = Integer.parseInt(st.nextToken());
+		int x2 = Integer.parseInt(st.nextToken());
+		int y2 = Integer.parseInt(st.nextToken());
+		int f  = Integer.parseInt(st.nextToken());
+		// text, boxes and lines don't do anything
+		if (tint == 'x' || tint == 'b' || tint == 423) {
+		    dumpIndex++;
+		    continue;
+		}
+		// scope element; the rest of the line is a scope
+		if (tint == 403) {
+		    addScopeTarget(st);
+		    dumpIndex++;
+		    continue;
+		}
+		SimElm ce = createElm(tint, x1, y1, x2, y2, f, st);
+		if (ce == null) {
+		    if (!unsupportedTypes.contains(type))
+			unsupportedTypes.add(type);
+		    continue;
+		}
+		elmList.add(ce);
+		elmDumpTypes.add(tint);
+		elmDumpIndices.add(dumpIndex++);
+	    } catch (Exception e) {
+		loadError = "exception while reading line " + (i+1) + ": " + e;
+		return;
+	    }
+	}
+	if (unsupportedTypes.size() > 0)
+	    loadError = "unsupported element type(s): " + unsupportedTypes;
+    }
+
+    // scope dump, starting with the index of the element it shows (see Scope.undump())
+    void addScopeTarget(StringTokenizer st) {
+	int e = Integer.parseInt(st.nextToken());
+	if (e >= 0 && !scopeTargets.contains(e))
+	    scopeTargets.add(e);
+    }
+
+    SimElm getElmByDumpIndex(int n) {
+	int i = elmDumpIndices.indexOf(n);
+	return (i < 0) ? null : elmList.get(i);
+    }
+
+    // name for an element's values, like "p12" for a probe that is the 12th element in the file
+    String getElmName(SimElm ce) {
+	int i = elmList.indexOf(ce);
+	int dt = elmDumpTypes.get(i);
+	String type = (dt < 127 && Character.isLetter((char) dt)) ? String.valueOf((char) dt) : dt + ".";
+	return type + elmDumpIndices.get(i);
+    }
+
+    // same as CirSim.readOptions(), without the display settings
+    void readOptions(StringTokenizer st) {
+	int flags = Integer.parseInt(st.nextToken());
+	gridSize = ((flags & 2) != 0) ? 8 : 16;
+	readOptionFlags(flags);
+	maxTimeStep = timeStep = Double.parseDouble(st.nextToken());
+	// skip simulation speed, current speed and voltage range
+	int i;
+	for (i = 0; i != 3; i++)
+	    st.nextToken();
+	try {
+	    // power brightness
+	    st.nextToken();
+	    minTimeStep = Double.parseDouble(st.nextToken());
+	} catch (Exception e) {
+	}
+	matrixSolverType = SOLVER_AUTO;
+	try {
+	    matrixSolverType = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {
+	}
+    }
+
+    // create the element for a dump line, or null if we can't simulate that type.  st has the
+    // rest of the line after the flags.
+    SimElm createElm(int tint, int x1, int y1, int x2, int y2, int f, StringTokenizer st) {
+	if (tint == 410)
+	    return createSubcircuit(x1, y1, x2, y2, f, st);
+	Device d = createDevice(tint);
+	if (d == null)
+	    return null;
+	SimElm ce = new SimElm(x1, y1, x2, y2, f);
+	ce.setDevice(d);
+	d.undump(st, f);
+	setupDevice(tint, d);
+	// the number of posts may depend on the dump
+	ce.allocNodes();
+	PostLayout.setPosts(ce, tint, gridSize);
+	return ce;
+    }
+
+    // the device for each dump type, see CirSim.createCe()
+    Device createDevice(int tint) {
+	switch (tint) {
+	case 'w': return new WireDevice(this);
+	case 'g': return new GroundDevice(this);
+	case 207: return new LabeledNodeDevice(this);
+	case 'r': return new ResistorDevice(this, 0);
+	case 'c': return new CapacitorDevice(this);
+	case 209: return new PolarCapacitorDevice(this);
+	case 'l': return new InductorDevice(this);
+	case 'v': return new VoltageDevice(this);
+	case 'R':
+	case 172: return new RailDevice(this);
+	case 'i': return new CurrentDevice(this, .01);
+	case 's': return new SwitchDevice(this);
+	case 'S': return new Switch2Device(this);
+	case 'L': return new LogicInputDevice(this);
+	case 'd': return new DiodeDevice(this);
+	case 't': return new TransistorDevice(this);
+	case 'f': return new MosfetDevice(this);
+	case 'j': return new JfetDevice(this);
+	case 150: return new GateDevice(this, GateDevice.FUNC_AND, false);
+	case 151: return new GateDevice(this, GateDevice.FUNC_AND, true);
+	case 152: return new GateDevice(this, GateDevice.FUNC_OR, false);
+	case 153: return new GateDevice(this, GateDevice.FUNC_OR, true);
+	case 154: return new GateDevice(this, GateDevice.FUNC_XOR, false);
+	case 171: return new TransLineDevice(this);
+	case 157: return new SevenSegDevice(this);
+	case 164: return new CounterDevice(this);
+	case 184: return new MultiplexerDevice(this);
+	case 185: return new DeMultiplexerDevice(this);
+	case 193: return new TFlipFlopDevice(this);
+	case 197: return new SevenSegDecoderDevice(this);
+	case 208: return new CustomLogicDevice(this);
+	case 212: return new VCVSDevice(this);
+	case 213: return new VCCSDevice(this);
+	case 214: return new CCVSDevice(this);
+	case 215: return new CCCSDevice(this);
+	case 159: return new AnalogSwitchDevice(this);
+	case 160: return new AnalogSwitch2Device(this);
+	case 182: return new SchmittDevice(this);
+	case 183: return new InvertingSchmittDevice(this);
+	case 203: return new DiacDevice(this);
+	case 206: return new TriacDevice(this);
+	case 'a': return new OpAmpDevice(this);
+	case 'M': return new LogicOutputDevice(this);
+	case 'T': return new TransformerDevice(this);
+	case 169: return new TappedTransformerDevice(this);
+	case 406: return new CustomTransformerDevice(this);
+	case 'p': return new ProbeDevice(this, 2);
+	case 'O':
+	case 210: return new ProbeDevice(this, 1);
+	case 211: return new AudioOutputDevice(this);
+	case 409: return new OpAmpRealDevice(this);
+	}
+	return null;
+    }
+
+    // the parts of the browser element constructors that come after Device.undump(): looking
+    // up models, and checking what the device read
+    void setupDevice(int tint, Device d) {
+	switch (tint) {
+	case 'd': {
+	    DiodeDevice diode = (DiodeDevice) d;
+	    double m[] = (diode.modelName != null) ? getDiodeModel(diode.modelName) :
+		getDiodeModelWithDrop(diode.fwdrop);
+	    diode.setup(m[0], m[3], m[2], m[1]);
+	    break;
+	}
+	case 't': {
+	    TransistorDevice trans = (TransistorDevice) d;
+	    trans.setup(getTransistorModel(trans.modelName));
+	    break;
+	}
+	case 'f':
+	case 'j': {
+	    MosfetDevice fet = (MosfetDevice) d;
+	    setupDefaultDiode(fet.diodeB1);
+	    setupDefaultDiode(fet.diodeB2);
+	    if (fet instanceof JfetDevice)
+		setupDefaultDiode(((JfetDevice) fet).diode);
+	    break;
+	}
+	case 203:
+	    setupDefaultDiode(((DiacDevice) d).diode1);
+	    setupDefaultDiode(((DiacDevice) d).diode2);
+	    break;
+	case 206:
+	    setupDefaultDiode(((TriacDevice) d).diode03);
+	    setupDefaultDiode(((TriacDevice) d).diode30);
+	    break;
+	case 157: {
+	    // see SevenSegElm.stamp()
+	    SevenSegDevice seg = (SevenSegDevice) d;
+	    double m[] = getDiodeModel("default-led");
+	    seg.saturationCurrent = m[0];
+	    seg.emissionCoefficient = m[2];
+	    seg.breakdownVoltage = m[3];
+	    break;
+	}
+	case 172: {
+	    // the voltage comes from a slider with 101 positions, see VarRailElm.getVoltage()
+	    VoltageDevice v = (VoltageDevice) d;
+	    v.waveform = VoltageDevice.WF_VAR;
+	    int value = (int) ((v.frequency-v.bias)*100/(v.maxVoltage-v.bias));
+	    v.frequency = value * (v.maxVoltage-v.bias) / 100. + v.bias;
+	    break;
+	}
+	case 212:
+	case 213:
+	case 214:
+	case 215: {
+	    VCCSDevice vccs = (VCCSDevice) d;
+	    if (vccs.exprError != null)
+		throw new IllegalArgumentException("parse error in expression: " + vccs.exprString + ": " + vccs.exprError);
+	    break;
+	}
+	}
+    }
+
+    // body diodes of fets, and the diodes inside diacs and triacs, use the default model
+    void setupDefaultDiode(Diode d) {
+	double m[] = getDiodeModel("default");
+	d.setup(m[0], m[3], m[2]);
+    }
+
+    // subcircuit (410), see CustomCompositeElm.  The model comes from a '.' line in the circuit
+    // file, and the element line has the dumps of the elements inside.
+    SimElm createSubcircuit(int x1, int y1, int x2, int y2, int f, StringTokenizer st) {
+	String modelName = Device.unescape(st.nextToken());
+	SubcircuitModel model = subcircuitModels.get(modelName);
+	if (model == null)
+	    throw new IllegalArgumentException("unknown subcircuit " + modelName);
+	SimElm ce = new SimElm(x1, y1, x2, y2, f);
+	CompositeDevice comp = new CompositeDevice(this);
+	comp.loadComposite(st, model.nodeList, model.externalNodes, (f & CompositeDevice.FLAG_ESCAPE) != 0);
+	ce.setDevice(comp);
+	PostLayout.setSubcircuitPosts(ce, model);
+	return ce;
+    }
+
+    // dump types of the elements a composite can contain, by class name (see
+    // CirSim.constructElement())
+    static final String compositeClassNames[] = {
+	"GroundElm", "ResistorElm", "CapacitorElm", "PolarCapacitorElm", "InductorElm",
+	"VoltageElm", "DCVoltageElm", "ACVoltageElm", "RailElm", "VarRailElm", "CurrentElm",
+	"SwitchElm", "Switch2Elm", "LogicInputElm", "DiodeElm",
+	"TransistorElm", "NTransistorElm", "PTransistorElm", "MosfetElm", "NMosfetElm", "PMosfetElm",
+	"JfetElm", "NJfetElm", "AndGateElm", "NandGateElm", "OrGateElm", "NorGateElm", "XorGateElm",
+	"TransLineElm", "OpAmpElm", "OpAmpSwapElm", "VCVSElm", "VCCSElm", "CCVSElm", "CCCSElm",
+	"AnalogSwitchElm", "AnalogSwitch2Elm", "SchmittElm", "InvertingSchmittElm", "DiacElm",
+	"TriacElm", "TransformerElm", "TappedTransformerElm", "CustomTransformerElm",
+	"LabeledNodeElm",
+    };
+    static final int compositeDumpTypes[] = {
+	'g', 'r', 'c', 209, 'l',
+	'v', 'v', 'v', 'R', 172, 'i',
+	's', 'S', 'L', 'd',
+	't', 't', 't', 'f', 'f', 'f',
+	'j', 'j', 150, 151, 152, 153, 154,
+	171, 'a', 'a', 212, 213, 214, 215,
+	159, 160, 182, 183, 203,
+	206, 'T', 169, 406,
+	207,
+    };
+
+    // flags and dump of an element created with its default constructor, for models that
+    // don't have dumps.  Only the elements OpAmpRealDevice's 741 model uses are needed.
+    static String getDefaultDump(String ceType) {
+	if (ceType.equals("NTransistorElm"))
+	    return "0 1 0 0 100";
+	if (ceType.equals("PTransistorElm"))
+	    return "0 -1 0 0 100";
+	if (ceType.equals("ResistorElm"))
+	    return "0 1000";
+	if (ceType.equals("CapacitorElm"))
+	    return "0 1e-5 0 1e-3";
+	return null;
+    }
+
+    SimElm createCompositeElm(String ceType, StringTokenizer st) {
+	int tint = -1;
+	int i;
+	for (i = 0; i != compositeClassNames.length; i++)
+	    if (compositeClassNames[i].equals(ceType))
+		tint = compositeDumpTypes[i];
+	if (st == null) {
+	    String dump = getDefaultDump(ceType);
+	    st = (dump == null) ? null : new StringTokenizer(dump);
+	}
+	if (tint < 0 || st == null)
+	    throw new IllegalArgumentException("unsupported element in composite: " + ceType);
+	int f = Integer.parseInt(st.nextToken());
+	SimElm ce = createElm(tint, 0, 0, 0, 0, f, st);
+	if (ce == null)
+	    throw new IllegalArgumentException("unsupported element in composite: " + ceType);
+	return ce;
+    }
+
+    // model line: name flags inputs outputs infoText rules (see CustomLogicModel.dump())
+    void readLogicModel(StringTokenizer st) {
+	CustomLogicRules m = getLogicModel(Device.unescape(st.nextToken()));
+	st.nextToken();
+	m.inputs = m.listToArray(Device.unescape(st.nextToken()));
+	m.outputs = m.listToArray(Device.unescape(st.nextToken()));
+	st.nextToken();
+	m.rules = Device.unescape(st.nextToken());
+	m.parseRules();
+    }
+
+    // model line: name flags sizeX sizeY pinCount pins... nodeList elmDump (see
+    // CustomCompositeModel.dump()).  A model we can't read means the circuit can't be loaded,
+    // even if nothing uses it.
+    void readSubcircuitModel(StringTokenizer st) {
+	String name = Device.unescape(st.nextToken());
+	try {
+	    subcircuitModels.put(name, new SubcircuitModel(st));
+	} catch (Exception e) {
+	    throw new IllegalArgumentException("can't read subcircuit model " + name + ": " + e);
+	}
+    }
+
+    // same as CustomLogicModel.getModelWithName(): a model we haven't seen yet gets the
+    // default pins, and is filled in if its '!' line comes later
+    CustomLogicRules getLogicModel(String name) {
+	CustomLogicRules m = logicModels.get(name);
+	if (m == null) {
+	    m = new CustomLogicRules();
+	    logicModels.put(name, m);
+	}
+	return m;
+    }
+
+    // the built-in models from DiodeModel.createModelMap()
+    static final String builtInDiodeModels[] = {
+	"spice-default 1e-14 0 1 0",
+	"default 1.7143528192808883e-7 0 2 0",
+	"default-zener 1.7143528192808883e-7 0 2 5.6",
+	"old-default-led 2.2349907006671927e-18 0 2 0",
+	"default-led 93.2e-12 .042 3.73 0",
+	"1N5711 315e-9 2.8 2.03 70",
+	"1N5712 680e-12 12 1.003 20",
+	"1N34 200e-12 84e-3 2.19 60",
+	"1N4004 18.8e-9 28.6e-3 2 400",
+	"1N4148 4.352e-9 .6458 1.906 75",
+	"x2n2646-emitter 2.13e-11 0 1.8 0",
+	"~tl431ed-d_ed 1e-14 5 1 0",
+	"~lm317-dz 1e-14 0 1 6.3",
+    };
+
+    // model line: name flags saturationCurrent seriesResistance emissionCoefficient breakdownVoltage ...
+    void readDiodeModel(StringTokenizer st) {
+	String name = Device.unescape(st.nextToken());
+	st.nextToken();
+	double m[] = new double[4];
+	int i;
+	for (i = 0; i != 4; i++)
+	    m[i] = Double.parseDouble(st.nextToken());
+	diodeModels.put(name, m);
+    }
+
+    double[] getDiodeModel(String name) {
+	double m[] = diodeModels.get(name);
+	if (m != null)
+	    return m;
+	int i, j;
+	for (i = 0; i != builtInDiodeModels.length; i++) {
+	    StringTokenizer st = new StringTokenizer(builtInDiodeModels[i]);
+	    if (!st.nextToken().equals(name))
+		continue;
+	    m = new double[4];
+	    for (j = 0; j != 4; j++)
+		m[j] = Double.parseDouble(st.nextToken());
+	    return m;
+	}
+	log("model not found: " + name);
+	return getDiodeModel("default");
+    }
+
+    void readTransistorModel(StringTokenizer st) {
+	TransistorParameters m = new TransistorParameters();
+	String name = Device.unescape(st.nextToken());
+	m.undump(st);
+	transistorModels.put(name, m);
+    }
+
+    // the built-in models from TransistorModel.createModelMap()
+    TransistorParameters getTransistorModel(String name) {
+	TransistorParameters m = transistorModels.get(name);
+	if (m != null)
+	    return m;
+	m = new TransistorParameters();
+	if (name.equals("default") || name.equals("spice-default")) {
+	    m.satCur = name.equals("default") ? 1e-13 : 1e-16;
+	    return m;
+	}
+	int i;
+	for (i = 0; i != TransistorParameters.internalModels.length; i++) {
+	    StringTokenizer st = new StringTokenizer(TransistorParameters.internalModels[i]);
+	    if (!st.nextToken().equals(name))
+		continue;
+	    m.undump(st);
+	    return m;
+	}
+	log("model not found: " + name);
+	return getTransistorModel("default");
+    }
+
+    // model for old-style diodes which only give the forward voltage drop, see
+    // DiodeModel.getModelWithParameters()
+    static double[] getDiodeModelWithDrop(double fwdrop) {
+	final double emcoef = 2;
+	double leakage = 1 / (Math.exp(fwdrop / (emcoef*Diode.vt)) - 1);
+	return new double[] { leakage, 0, emcoef, 0 };
+    }
+
+    double getNodeVoltage(int n) {
+	return (n == 0) ? 0 : nodeVoltages[n-1];
+    }
+
+    // start the simulation over, like the reset button: reset the elements, then analyze the
+    // circuit.  It is stamped on the first step().
+    void reset() {
+	stopMessage = null;
+	if (loadError != null) {
+	    stop(loadError);
+	    return;
+	}
+	if (elmList.isEmpty()) {
+	    stop("no elements");
+	    return;
+	}
+	resetSimulation();
+	analyzeCircuit();
+	goodIterations = 0;
+	steps = subIterationMax = convergenceFailures = 0;
+	if (lastNodeVoltages != null)
+	    Arrays.fill(lastNodeVoltages, 0);
+    }
+
+    // subiterations in all timesteps so far (CircuitEngine counts them with and without the
+    // predictor separately)
+    int getSubIterations() {
+	return subIterationTotal[0]+subIterationTotal[1];
+    }
+
+    void timeStepConverged(int subiter) {
+	subIterationMax = Math.max(subIterationMax, subiter);
+    }
+
+    void timeStepFailed(double failedTimeStep, int subiter) {
+	convergenceFailures++;
+    }
+
+    // take one timestep with CircuitEngine.runTimeStep(), the same as CirSim.runCircuit().  If
+    // the timestep has to be reduced this still advances t, by the reduced timestep.  Returns
+    // false if the simulation stopped.
+    boolean step() {
+	if (stopMessage != null)
+	    return false;
+	if (needsStamp) {
+	    stampCircuit();
+	    if (stopMessage != null || circuitMatrix == null)
+		return false;
+	}
+	return runTimeStep(false);
+    }
+
+    // simulate until time endTime.  Returns false if the simulation stopped.
+    boolean run(double endTime) {
+	while (t < endTime)
+	    if (!step())
+		return false;
+	return true;
+    }
+}
@@ -0,0 +1,303 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Post positions for elements in the headless simulator.  In the browser each CircuitElm
+// subclass works these out in setPoints(); here there are only SimElms, so we do the same
+// calculation from the dump type, flags and device.  Posts are only used to connect elements
+// to each other, so only the positions matter, not any of the drawing.
+class PostLayout {
+    // chip flags, see ChipElm
+    static final int FLAG_SMALL = 1;
+    static final int FLAG_FLIP_X = 1<<10;
+    static final int FLAG_FLIP_Y = 1<<11;
+    static final int FLAG_FLIP_XY = 1<<12;
+    static final int sideFlipXY[] = { ChipDevice.SIDE_W, ChipDevice.SIDE_E, ChipDevice.SIDE_N, ChipDevice.SIDE_S };
+
+    // subcircuits are drawn small with this flag, see CustomCompositeElm
+    static final int FLAG_SUBCIRCUIT_SMALL = 2;
+
+    // set the posts of ce, an element of the given dump type whose device has read its dump.
+    // Elements with their posts at (x,y) and (x2,y2) are left with devicePosts == null.
+    static void setPosts(SimElm ce, int type, int gridSize) {
+	ce.setPoints();
+	ce.devicePosts = getPosts(ce, type, gridSize);
+    }
+
+    static Point[] getPosts(SimElm ce, int type, int gridSize) {
+	Device d = ce.device;
+	int flags = ce.flags;
+	switch (type) {
+	case 't': {
+	    // base is at (x,y); collector and emitter are on either side of (x2,y2), see
+	    // TransistorElm.setPoints()
+	    int dsign = ((flags & 1) != 0) ? -ce.dsign : ce.dsign;
+	    int hs2 = 16*dsign*((TransistorDevice) d).pnp;
+	    return new Point[] { ce.point1, interp(ce, 1, hs2), interp(ce, 1, -hs2) };
+	}
+	case 'f':
+	case 'j': {
+	    // the gate is at (x,y); the source and drain are on either side of (x2,y2), see
+	    // MosfetElm.setPoints().  JfetElm doesn't flip the source and drain.
+	    int hs2 = 16*ce.dsign;
+	    if ((flags & 8) != 0 && type != 'j')
+		hs2 = -hs2;
+	    Point src = interp(ce, 1, -hs2), drn = interp(ce, 1, hs2);
+	    return new Point[] { ce.point1, src, drn, ce.interpPoint(src, drn, .5) };
+	}
+	case 150:
+	case 151:
+	case 152:
+	case 153:
+	case 154: {
+	    // inputs are spaced along the (x,y) end, see GateElm.setPoints()
+	    int inputCount = ((GateDevice) d).inputCount;
+	    int hs = ((flags & 1) != 0) ? 8 : 16;
+	    Point p[] = new Point[inputCount+1];
+	    int i, i0 = -inputCount/2;
+	    for (i = 0; i != inputCount; i++, i0++) {
+		if (i0 == 0 && (inputCount & 1) == 0)
+		    i0++;
+		p[i] = interp(ce, 0, hs*i0);
+	    }
+	    p[inputCount] = ce.point2;
+	    return p;
+	}
+	case 171: {
+	    // see TransLineElm.setPoints()
+	    int width = ((TransLineDevice) d).width;
+	    int ds = (ce.dy == 0) ? SimElm.sign(ce.dx) : -SimElm.sign(ce.dy);
+	    return new Point[] { interp(ce, 0, -width*ds), interp(ce, 1, -width*ds), ce.point1, ce.point2 };
+	}
+	case 157:
+	case 164:
+	case 184:
+	case 185:
+	case 193:
+	case 197:
+	case 208:
+	case 212:
+	case 213:
+	case 214:
+	case 215: {
+	    ChipDevice chip = (ChipDevice) d;
+	    return getChipPosts(ce, flags, ((flags & FLAG_SMALL) != 0) ? 1 : 2, chip.sizeX, chip.sizeY, chip.pins);
+	}
+	case 159:
+	    // the control input is halfway along, off to the side, see AnalogSwitchElm.setPoints()
+	    return new Point[] { ce.point1, ce.point2, interp(ce, .5, -16) };
+	case 160:
+	    // the throws are on either side of (x2,y2), see AnalogSwitch2Elm.setPoints()
+	    return new Point[] { ce.point1, interp(ce, 1, 16), interp(ce, 1, -16), interp(ce, .5, 16) };
+	case 'S': {
+	    // throws are at the end of the switch, spaced 16 apart (see Switch2Elm.setPoints())
+	    int throwCount = ((Switch2Device) d).throwCount;
+	    Point p[] = new Point[throwCount+1];
+	    p[0] = ce.point1;
+	    int i;
+	    for (i = 0; i != throwCount; i++)
+		p[i+1] = interp(ce, 1, (throwCount == 2 && i == 0) ? 16 : -16*(i-(throwCount-1)/2));
+	    return p;
+	}
+	case 'a': {
+	    // the inputs are on either side of (x,y), see OpAmpElm.setPoints()
+	    int hs = (((flags & 2) != 0) ? 8 : 16)*ce.dsign;
+	    if ((flags & 1) != 0)
+		hs = -hs;
+	    return new Point[] { interp(ce, 0, hs), interp(ce, 0, -hs), ce.point2 };
+	}
+	case 409:
+	    return getOpAmpRealPosts(ce, gridSize);
+	case 'T':
+	    return getTransformerPosts(ce);
+	case 169:
+	    // primary on the left, secondary on the right with the tap in the middle, see
+	    // TappedTransformerElm.setPoints()
+	    return new Point[] { ce.point1, interp(ce, 0, -64), ce.point2, interp(ce, 1, -32), interp(ce, 1, -64) };
+	case 406:
+	    return getCustomTransformerPosts(ce, (CustomTransformerDevice) d);
+	case 206:
+	    return getTriacPosts(ce, gridSize);
+	}
+	return null;
+    }
+
+    // same as CircuitElm.interpPoint(point1, point2, f, g)
+    static Point interp(SimElm ce, double f, double g) {
+	return ce.interpPoint(ce.point1, ce.point2, f, g);
+    }
+
+    // the posts of a subcircuit (410) are the pins of a chip, see CustomCompositeElm.setPoints()
+    static void setSubcircuitPosts(SimElm ce, HeadlessSim.SubcircuitModel model) {
+	ce.setPoints();
+	int chipFlags = ce.flags & (FLAG_FLIP_X | FLAG_FLIP_Y | FLAG_FLIP_XY);
+	ce.devicePosts = getChipPosts(ce, chipFlags, ((ce.flags & FLAG_SUBCIRCUIT_SMALL) != 0) ? 1 : 2,
+				      model.sizeX, model.sizeY, model.pins);
+    }
+
+    static Point[] getChipPosts(SimElm ce, int flags, int csize, int sizeX, int sizeY, ChipPin pins[]) {
+	Point p[] = new Point[pins.length];
+	int i;
+	for (i = 0; i != pins.length; i++)
+	    p[i] = getPinPost(ce.x, ce.y, flags, csize, sizeX, sizeY, pins[i]);
+	return p;
+    }
+
+    // post of pin p on a chip at (x,y) with the given flip flags and size, see
+    // ChipElm.setPoints() and ChipPin.setPoint()
+    static Point getPinPost(int x, int y, int flags, int csize, int sizeX, int sizeY, ChipPin p) {
+	int cspc = 8*csize, cspc2 = cspc*2;
+	if ((flags & FLAG_FLIP_XY) != 0) {
+	    int t = sizeX;
+	    sizeX = sizeY;
+	    sizeY = t;
+	}
+	int side = p.side0;
+	if ((flags & FLAG_FLIP_XY) != 0)
+	    side = sideFlipXY[side];
+	int px = x+cspc2, py = y;
+	int dx = 0, dy = 0, dax = 0, day = 0, sx = 0, sy = 0;
+	switch (side) {
+	case ChipDevice.SIDE_N: dx = 1; day = -1; break;
+	case ChipDevice.SIDE_S: dx = 1; day = 1; sy = sizeY*cspc2-cspc2; break;
+	case ChipDevice.SIDE_W: dy = 1; dax = -1; break;
+	case ChipDevice.SIDE_E: dy = 1; dax = 1; sx = sizeX*cspc2-cspc2; break;
+	}
+	if ((flags & FLAG_FLIP_X) != 0) {
+	    dx = -dx;
+	    dax = -dax;
+	    px += cspc2*(sizeX-1);
+	    sx = -sx;
+	}
+	if ((flags & FLAG_FLIP_Y) != 0) {
+	    dy = -dy;
+	    day = -day;
+	    py += cspc2*(sizeY-1);
+	    sy = -sy;
+	}
+	int xa = px+cspc2*dx*p.pos+sx;
+	int ya = py+cspc2*dy*p.pos+sy;
+	return new Point(xa+dax*cspc2, ya+day*cspc2);
+    }
+
+    // see OpAmpRealElm.setPoints().  The inputs are on either side of (x,y), the output is at
+    // (x2,y2) and the rails are above and below the middle of the triangle.
+    static Point[] getOpAmpRealPosts(SimElm ce, int gridSize) {
+	int ww = 32;
+	if (ww > ce.dn/2)
+	    ww = (int) (ce.dn/2);
+	int hs = 16*ce.dsign;
+	int hsswap = ((ce.flags & 2) != 0) ? -hs : hs;
+	// leads, see CircuitElm.calcLeads()
+	Point lead1 = ce.point1, lead2 = ce.point2;
+	if (ce.dn >= ww*2 && ww != 0) {
+	    lead1 = ce.interpPoint(ce.point1, ce.point2, (ce.dn-ww*2)/(2*ce.dn));
+	    lead2 = ce.interpPoint(ce.point1, ce.point2, (ce.dn+ww*2)/(2*ce.dn));
+	}
+	double railPos = .5 - ((ce.dn/2) % gridSize)/(ww*2);
+	Point rail1 = new Point(), rail2 = new Point();
+	ce.interpPoint2(lead1, lead2, rail1, rail2, railPos, hs*2);
+	return new Point[] { interp(ce, 0, hsswap), interp(ce, 0, -hsswap), ce.point2, rail1, rail2 };
+    }
+
+    // the coils are (x,y) to (x,y) moved width to the side, and the same at the other end,
+    // which is moved level with (x,y).  See TransformerElm.setPoints().
+    static Point[] getTransformerPosts(SimElm ce) {
+	boolean vertical = (ce.flags & 8) != 0;
+	int width = vertical ? -Math.max(32, Math.abs(ce.x2-ce.x)) : Math.max(32, Math.abs(ce.y2-ce.y));
+	int dsign = ce.dsign;
+	Point p1 = ce.point1;
+	Point p2 = vertical ? new Point(ce.x, ce.y2) : new Point(ce.x2, ce.y);
+	int g = -dsign*width;
+	Point p[] = new Point[] { p1, p2, ce.interpPoint(p1, p2, 0, g), ce.interpPoint(p1, p2, 1, g) };
+	if ((ce.flags & 4) != 0) {
+	    Point t = p[1];
+	    p[1] = p[3];
+	    p[3] = t;
+	}
+	return p;
+    }
+
+    // the primary posts are stacked below (x,y) and the secondary posts below the other end,
+    // which is moved level with (x,y).  Same as CustomTransformerElm.setPoints().
+    static Point[] getCustomTransformerPosts(SimElm ce, CustomTransformerDevice xform) {
+	final int width = 32;
+	Point p1 = ce.point1, p2 = new Point(ce.x2, ce.y);
+	int nodeCount = xform.nodeCount;
+	int primaryNodes = (xform.primaryCoils == xform.coilCount) ? nodeCount : xform.coilNodes[xform.primaryCoils];
+	Point p[] = new Point[nodeCount];
+	double maxWidth = 0;
+	int i, step;
+	for (step = 0; step != 2; step++) {
+	    int c = 0;
+	    double offset = 0;
+	    for (i = 0; i != nodeCount; i++) {
+		if (i == primaryNodes)
+		    offset = 0;
+		if (step == 1) {
+		    if (i == primaryNodes-1 || i == nodeCount-1)
+			offset = maxWidth;
+		    p[i] = ce.interpPoint(p1, p2, i < primaryNodes ? 0 : 1, -offset);
+		}
+		maxWidth = Math.max(maxWidth, offset);
+		int nn = c < xform.coilCount ? xform.coilNodes[c] : -1;
+		if (nn == i) {
+		    // this is first node of a coil, make room
+		    c++;
+		    offset += width;
+		} else {
+		    // this is last node of a coil, make small gap
+		    offset += 16;
+		}
+	    }
+	}
+	return p;
+    }
+
+    // MT2 is at (x,y), MT1 is (x2,y2) made horizontal or vertical, and the gate sticks out to
+    // the side of the lead to MT1.  See TriacElm.setPoints().
+    static Point[] getTriacPosts(SimElm ce, int gridSize) {
+	int dx = ce.dx, dy = ce.dy;
+	Point p1 = ce.point1, p2;
+	int dir;
+	double dn;
+	if (Math.abs(dx) > Math.abs(dy)) {
+	    dir = -SimElm.sign(dx)*SimElm.sign(dy);
+	    dn = Math.abs(dx);
+	    p2 = new Point(ce.x2, ce.y);
+	} else {
+	    dir = SimElm.sign(dy)*SimElm.sign(dx);
+	    dn = Math.abs(dy);
+	    p2 = new Point(ce.x, ce.y2);
+	}
+	if (dir == 0)
+	    dir = 1;
+	Point p[] = new Point[] { p1, p2, new Point() };
+	Point lead2 = (dn >= 16) ? ce.interpPoint(p1, p2, (dn+16)/(2*dn)) : p2;
+	int gatelen = gridSize;
+	double leadlen = (dn-16)/2;
+	gatelen += leadlen % gridSize;
+	// the browser leaves the gate post at the origin in this case
+	if (leadlen < gatelen)
+	    return p;
+	p[2] = ce.interpPoint(lead2, p2, gatelen/leadlen, gridSize*2*dir);
+	return p;
+    }
+}
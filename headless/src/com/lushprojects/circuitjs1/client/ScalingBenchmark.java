@@ -0,0 +1,199 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Vector;
+
+// Measures how analyzeCircuit(), stampCircuit() and step() scale with circuit size, using
+// circuits from CircuitGenerator:
+//
+//   java -cp circuitjs1-core.jar com.lushprojects.circuitjs1.client.ScalingBenchmark \
+//       [-s size,size,...] [-n steps] [-m slope] [topology ...]
+//
+// For each topology (default all) and size (approximate number of nodes), we print a CSV row
+// with the times, and the slope of log(time) against log(nodes) since the previous size, so
+// 1 means linear and 2 quadratic.  The rows can be plotted directly on log-log axes.  With
+// -m, we exit with status 1 if any slope is above the given value, so a script can check
+// that nothing has become quadratic.  The circuits are analyzed, stamped and run by the same
+// CircuitEngine code the browser uses, so the analysis includes the current path checks.
+//
+// "-g topology size" prints the generated circuit instead, which can be pasted into the
+// browser version with File / Import From Text.
+class ScalingBenchmark {
+    int sizes[] = { 100, 1000, 10000, 100000 };
+    int stepCount = 100;
+    double maxSlope = 0;
+    boolean tooSlow;
+
+    // we don't try larger sizes of a topology once analyzing and stamping take this long
+    static final double maxSeconds = 10;
+
+    static void usage() {
+	System.err.println("usage: ScalingBenchmark [-s size,size,...] [-n steps] [-m slope] [topology ...]");
+	System.err.println("       ScalingBenchmark -g topology size");
+	System.err.print("topologies:");
+	int i;
+	for (i = 0; i != CircuitGenerator.topologies.length; i++)
+	    System.err.print(" " + CircuitGenerator.topologies[i]);
+	System.err.println();
+	System.exit(2);
+    }
+
+    public static void main(String args[]) {
+	ScalingBenchmark b = new ScalingBenchmark();
+	Vector<String> topologies = new Vector<String>();
+	int i;
+	try {
+	    for (i = 0; i != args.length; i++) {
+		String a = args[i];
+		if (a.equals("-g")) {
+		    String text = CircuitGenerator.generate(args[i+1], Integer.parseInt(args[i+2]));
+		    if (text == null)
+			usage();
+		    System.out.print(text);
+		    return;
+		} else if (a.equals("-s")) {
+		    String s[] = args[++i].split(",");
+		    b.sizes = new int[s.length];
+		    int j;
+		    for (j = 0; j != s.length; j++)
+			b.sizes[j] = Integer.parseInt(s[j]);
+		} else if (a.equals("-n"))
+		    b.stepCount = Integer.parseInt(args[++i]);
+		else if (a.equals("-m"))
+		    b.maxSlope = Double.parseDouble(args[++i]);
+		else if (a.startsWith("-") || !CircuitGenerator.isTopology(a))
+		    usage();
+		else
+		    topologies.add(a);
+	    }
+	} catch (Exception e) {
+	    usage();
+	}
+	if (topologies.size() == 0)
+	    for (i = 0; i != CircuitGenerator.topologies.length; i++)
+		topologies.add(CircuitGenerator.topologies[i]);
+
+	System.out.println("topology,size,elements,nodes,matrix,solver,analyze_ms,stamp_ms,step_us," +
+		"subiterations,analyze_slope,stamp_slope,step_slope");
+	// warm up the JIT on a small circuit so the first sizes aren't measuring the interpreter
+	for (i = 0; i != topologies.size(); i++)
+	    b.measure(topologies.get(i), 500);
+	for (i = 0; i != topologies.size(); i++) {
+	    double last[] = null;
+	    int j;
+	    for (j = 0; j != b.sizes.length; j++) {
+		String topology = topologies.get(i);
+		double r[] = b.measure(topology, b.sizes[j]);
+		if (r == null)
+		    break;
+		b.printRow(topology, b.sizes[j], r, last);
+		last = r;
+		// the next size would take 10 times as long or more
+		if (r[1]+r[2] > maxSeconds && j+1 < b.sizes.length) {
+		    System.err.println(topology + " " + b.sizes[j] + ": too slow, skipping larger sizes");
+		    break;
+		}
+	    }
+	}
+	if (b.tooSlow)
+	    System.exit(1);
+    }
+
+    HeadlessSim sim;
+    String solverName;
+    int matrixSize, elementCount;
+
+    // returns { nodes, analyze time, stamp time, step time, subiterations per step }, in
+    // seconds, or null if the simulation failed
+    double[] measure(String topology, int size) {
+	sim = new HeadlessSim();
+	sim.readCircuit(CircuitGenerator.generate(topology, size));
+	sim.reset();
+	if (sim.stopMessage != null) {
+	    System.err.println(topology + " " + size + ": " + sim.stopMessage);
+	    return null;
+	}
+	int i;
+	// take the fastest of a few runs, since large circuits are affected by GC pauses
+	double analyze = Double.MAX_VALUE;
+	for (i = 0; i != 3; i++) {
+	    // do the whole analysis each time, as when the circuit is loaded, rather than
+	    // finding that nothing changed since the last one
+	    sim.topology = null;
+	    long start = System.nanoTime();
+	    sim.analyzeCircuit();
+	    analyze = Math.min(analyze, (System.nanoTime()-start)*1e-9);
+	}
+	double stamp = Double.MAX_VALUE;
+	for (i = 0; i != 3 && sim.stopMessage == null; i++) {
+	    long start = System.nanoTime();
+	    sim.stampCircuit();
+	    stamp = Math.min(stamp, (System.nanoTime()-start)*1e-9);
+	}
+	sim.reset();
+	// let the circuit settle, and get the matrix stamped for the current timestep
+	for (i = 0; i != 10; i++)
+	    sim.step();
+	int steps = sim.steps;
+	int sub = sim.getSubIterations();
+	long start = System.nanoTime();
+	for (i = 0; i != stepCount; i++)
+	    sim.step();
+	double step = (System.nanoTime()-start)*1e-9;
+	if (sim.stopMessage != null) {
+	    System.err.println(topology + " " + size + ": " + sim.stopMessage);
+	    return null;
+	}
+	steps = sim.steps-steps;
+	matrixSize = sim.circuitMatrixSize;
+	elementCount = sim.elmList.size();
+	solverName = (sim.circuitSolver == null) ? "none" : sim.circuitSolver.getName();
+	return new double[] { sim.nodeVoltages.length+1, analyze, stamp, step/Math.max(steps, 1),
+			      (sim.getSubIterations()-sub)/(double) Math.max(steps, 1) };
+    }
+
+    void printRow(String topology, int size, double r[], double last[]) {
+	StringBuilder sb = new StringBuilder();
+	sb.append(topology).append(',').append(size).append(',').append(elementCount);
+	sb.append(',').append((int) r[0]);
+	// solver names can have commas in them
+	sb.append(',').append(matrixSize).append(",\"").append(solverName).append('"');
+	sb.append(',').append(round(r[1]*1e3)).append(',').append(round(r[2]*1e3));
+	sb.append(',').append(round(r[3]*1e6)).append(',').append(round(r[4]));
+	int i;
+	for (i = 1; i != 4; i++) {
+	    sb.append(',');
+	    if (last == null || r[0] == last[0])
+		continue;
+	    double slope = Math.log(r[i]/last[i]) / Math.log(r[0]/last[0]);
+	    sb.append(round(slope));
+	    if (maxSlope > 0 && slope > maxSlope) {
+		System.err.println(topology + " " + size + ": slope " + round(slope) + " is above " + maxSlope);
+		tooSlow = true;
+	    }
+	}
+	System.out.println(sb);
+    }
+
+    static double round(double x) {
+	return Math.round(x*1000)/1000.;
+    }
+}
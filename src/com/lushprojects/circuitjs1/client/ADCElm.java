@@ -30,14 +30,14 @@ class ADCElm extends ChipElm {
     void setupPins() {
 	sizeX = 2;
 	sizeY = bits > 2 ? bits : 2;
-	pins = new Pin[getPostCount()];
+	allocPins(getPostCount());
 	int i;
 	for (i = 0; i != bits; i++) {
-	    pins[i] = new Pin(bits-1-i, SIDE_E, "D" + i);
+	    pins[i] = new ChipPin(bits-1-i, SIDE_E, "D" + i);
 	    pins[i].output = true;
 	}
-	pins[bits]   = new Pin(0, SIDE_W, "In");
-	pins[bits+1] = new Pin(sizeY-1, SIDE_W, "V+");
+	pins[bits]   = new ChipPin(0, SIDE_W, "In");
+	pins[bits+1] = new ChipPin(sizeY-1, SIDE_W, "V+");
 	allocNodes();
     }
     void execute() {
@@ -0,0 +1,67 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// SPDT analog switch, for AnalogSwitch2Elm: post 0 is connected to post 1 through r_on when
+// the control voltage on post 3 is high, and to post 2 when it's low
+class AnalogSwitch2Device extends AnalogSwitchDevice {
+    AnalogSwitch2Device(CircuitEngine s) {
+	super(s);
+    }
+
+    int getPostCount() { return 4; }
+    void calculateCurrent() {
+	if (open)
+	    current = (volts[0]-volts[2])/r_on;
+	else
+	    current = (volts[0]-volts[1])/r_on;
+    }
+
+    void stamp() {
+	sim.stampNonLinear(nodes[0]);
+	sim.stampNonLinear(nodes[1]);
+	sim.stampNonLinear(nodes[2]);
+    }
+    void doStep() {
+	open = (volts[3] < 2.5);
+	if (invert)
+	    open = !open;
+	if (open) {
+	    sim.stampResistor(nodes[0], nodes[2], r_on);
+	    sim.stampResistor(nodes[0], nodes[1], r_off);
+	} else {
+	    sim.stampResistor(nodes[0], nodes[1], r_on);
+	    sim.stampResistor(nodes[0], nodes[2], r_off);
+	}
+    }
+    boolean getConnection(int n1, int n2) {
+	if (n1 == 3 || n2 == 3)
+	    return false;
+	return true;
+    }
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return -current;
+	int position = (open) ? 1 : 0;
+	if (n == position+1)
+	    return current;
+	return 0;
+    }
+}
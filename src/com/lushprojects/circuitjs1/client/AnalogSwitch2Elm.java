@@ -28,6 +28,8 @@ class AnalogSwitch2Elm extends AnalogSwitchElm {
 	super(xa, ya, xb, yb, f, st);
     }
 
+    AnalogSwitchDevice createDevice() { return new AnalogSwitch2Device(sim); }
+
     final int openhs = 16;
     Point swposts[], swpoles[], ctlPoint;
     void setPoints() {
@@ -39,7 +41,6 @@ class AnalogSwitch2Elm extends AnalogSwitchElm {
 	interpPoint2(point1, point2, swposts[0], swposts[1], 1, openhs);
 	ctlPoint = interpPoint(point1, point2, .5, openhs);
     }
-    int getPostCount() { return 4; }
 
     void draw(Graphics g) {
 	setBbox(point1, point2, openhs);
@@ -58,7 +59,7 @@ class AnalogSwitch2Elm extends AnalogSwitchElm {
 
 	// draw switch
 	g.setColor(lightGrayColor);
-	int position = (open) ? 1 : 0;
+	int position = (sw.open) ? 1 : 0;
 	drawThickLine(g, lead1, swpoles[position]);
 	    
 	updateDotCount();
@@ -72,48 +73,8 @@ class AnalogSwitch2Elm extends AnalogSwitchElm {
     }
     int getDumpType() { return 160; }
 
-    void calculateCurrent() {
-	if (open)
-	    current = (volts[0]-volts[2])/r_on;
-	else
-	    current = (volts[0]-volts[1])/r_on;
-    }
-	
-    void stamp() {
-	sim.stampNonLinear(nodes[0]);
-	sim.stampNonLinear(nodes[1]);
-	sim.stampNonLinear(nodes[2]);
-    }
-    void doStep() {
-	open = (volts[3] < 2.5);
-	if ((flags & FLAG_INVERT) != 0)
-	    open = !open;
-	if (open) {
-	    sim.stampResistor(nodes[0], nodes[2], r_on);
-	    sim.stampResistor(nodes[0], nodes[1], r_off);
-	} else {
-	    sim.stampResistor(nodes[0], nodes[1], r_on);
-	    sim.stampResistor(nodes[0], nodes[2], r_off);
-	}
-    }
-	
-    boolean getConnection(int n1, int n2) {
-	if (n1 == 3 || n2 == 3)
-	    return false;
-	return true;
-    }
     void getInfo(String arr[]) {
 	arr[0] = "analog switch (SPDT)";
 	arr[1] = "I = " + getCurrentDText(getCurrent());
     }
-    
-    double getCurrentIntoNode(int n) {
-	if (n == 0)
-	    return -current;
-	int position = (open) ? 1 : 0;
-	if (n == position+1)
-	    return current;
-	return 0;
-    }	
 }
-
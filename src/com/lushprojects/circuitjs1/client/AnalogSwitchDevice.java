@@ -0,0 +1,77 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// analog switch, for AnalogSwitchElm: a resistor between posts 0 and 1 that is r_on when the
+// control voltage on post 2 is high and r_off when it's low (the other way around if inverted)
+class AnalogSwitchDevice extends Device {
+    double resistance, r_on, r_off;
+    boolean open, invert;
+
+    static final int FLAG_INVERT = 1;
+
+    AnalogSwitchDevice(CircuitEngine s) {
+	super(s);
+	r_on = 20;
+	r_off = 1e10;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	invert = (f & FLAG_INVERT) != 0;
+	try {
+	    r_on = new Double(st.nextToken()).doubleValue();
+	    r_off = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) { }
+    }
+
+    int getPostCount() { return 3; }
+    void calculateCurrent() {
+	current = (volts[0]-volts[1])/resistance;
+    }
+
+    // we need this to be able to change the matrix for each step
+    boolean nonLinear() { return true; }
+
+    void stamp() {
+	sim.stampNonLinear(nodes[0]);
+	sim.stampNonLinear(nodes[1]);
+    }
+    void doStep() {
+	open = (volts[2] < 2.5);
+	if (invert)
+	    open = !open;
+	resistance = (open) ? r_off : r_on;
+	sim.stampResistor(nodes[0], nodes[1], resistance);
+    }
+    // we have to just assume current will flow either way, even though that
+    // might cause singular matrix errors
+    boolean getConnection(int n1, int n2) {
+	if (n1 == 2 || n2 == 2)
+	    return false;
+	return true;
+    }
+    double getCurrentIntoNode(int n) {
+	if (n==2)
+	    return 0;
+	if (n==0)
+	    return -current;
+	return current;
+    }
+}
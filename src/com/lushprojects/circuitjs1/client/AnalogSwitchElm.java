@@ -20,30 +20,25 @@
 package com.lushprojects.circuitjs1.client;
 
 class AnalogSwitchElm extends CircuitElm {
-    final int FLAG_INVERT = 1;
-    double resistance, r_on, r_off;
+    final int FLAG_INVERT = AnalogSwitchDevice.FLAG_INVERT;
+    AnalogSwitchDevice sw;
     public AnalogSwitchElm(int xx, int yy) {
 	super(xx, yy);
-	r_on = 20;
-	r_off = 1e10;
+	setDevice(sw = createDevice());
     }
     public AnalogSwitchElm(int xa, int ya, int xb, int yb, int f,
 			   StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	r_on = 20;
-	r_off = 1e10;
-	try {
-	    r_on = new Double(st.nextToken()).doubleValue();
-	    r_off = new Double(st.nextToken()).doubleValue();
-	} catch (Exception e) { }
-	
+	setDevice(sw = createDevice());
+	sw.undump(st, f);
+
     }
+    AnalogSwitchDevice createDevice() { return new AnalogSwitchDevice(sim); }
     String dump() {
-	return super.dump() + " " + r_on + " " + r_off;
+	return super.dump() + " " + sw.r_on + " " + sw.r_off;
     }
     
     int getDumpType() { return 159; }
-    boolean open;
 	
     Point ps, point3, lead3;
     void setPoints() {
@@ -57,7 +52,7 @@ class AnalogSwitchElm extends CircuitElm {
 	
     void draw(Graphics g) {
 	int openhs = 16;
-	int hs = (open) ? openhs : 0;
+	int hs = (sw.open) ? openhs : 0;
 	setBbox(point1, point2, openhs);
 
 	draw2Leads(g);
@@ -69,28 +64,10 @@ class AnalogSwitchElm extends CircuitElm {
 	setVoltageColor(g, volts[2]);
 	drawThickLine(g, point3, lead3);
 	    
-	if (!open)
+	if (!sw.open)
 	    doDots(g);
 	drawPosts(g);
     }
-    void calculateCurrent() {
-	current = (volts[0]-volts[1])/resistance;
-    }
-	
-    // we need this to be able to change the matrix for each step
-    boolean nonLinear() { return true; }
-
-    void stamp() {
-	sim.stampNonLinear(nodes[0]);
-	sim.stampNonLinear(nodes[1]);
-    }
-    void doStep() {
-	open = (volts[2] < 2.5);
-	if ((flags & FLAG_INVERT) != 0)
-	    open = !open;
-	resistance = (open) ? r_off : r_on;
-	sim.stampResistor(nodes[0], nodes[1], resistance);
-    }
     void drag(int xx, int yy) {
 	xx = sim.snapGrid(xx);
 	yy = sim.snapGrid(yy);
@@ -105,24 +82,16 @@ class AnalogSwitchElm extends CircuitElm {
 	x2 = xx; y2 = yy;
 	setPoints();
     }
-    int getPostCount() { return 3; }
     Point getPost(int n) {
 	return (n == 0) ? point1 : (n == 1) ? point2 : point3;
     }
     void getInfo(String arr[]) {
 	arr[0] = "analog switch";
-	arr[1] = open ? "open" : "closed";
+	arr[1] = sw.open ? "open" : "closed";
 	arr[2] = "Vd = " + getVoltageDText(getVoltageDiff());
 	arr[3] = "I = " + getCurrentDText(getCurrent());
 	arr[4] = "Vc = " + getVoltageText(volts[2]);
     }
-    // we have to just assume current will flow either way, even though that
-    // might cause singular matrix errors
-    boolean getConnection(int n1, int n2) {
-	if (n1 == 2 || n2 == 2)
-	    return false;
-	return true;
-    }
     public EditInfo getEditInfo(int n) {
 	if (n == 0) {
 	    EditInfo ei = new EditInfo("", 0, -1, -1);
@@ -131,9 +100,9 @@ class AnalogSwitchElm extends CircuitElm {
 	    return ei;
 	}
 	if (n == 1)
-	    return new EditInfo("On Resistance (ohms)", r_on, 0, 0);
+	    return new EditInfo("On Resistance (ohms)", sw.r_on, 0, 0);
 	if (n == 2)
-	    return new EditInfo("Off Resistance (ohms)", r_off, 0, 0);
+	    return new EditInfo("Off Resistance (ohms)", sw.r_off, 0, 0);
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
@@ -141,18 +110,10 @@ class AnalogSwitchElm extends CircuitElm {
 	    flags = (ei.checkbox.getState()) ?
 		(flags | FLAG_INVERT) :
 		(flags & ~FLAG_INVERT);
+	sw.invert = (flags & FLAG_INVERT) != 0;
 	if (n == 1 && ei.value > 0)
-	    r_on = ei.value;
+	    sw.r_on = ei.value;
 	if (n == 2 && ei.value > 0)
-	    r_off = ei.value;
+	    sw.r_off = ei.value;
     }
-    
-    double getCurrentIntoNode(int n) {
-	if (n==2)
-	    return 0;
-	if (n==0)
-	    return -current;
-	return current;
-    }  
 }
-
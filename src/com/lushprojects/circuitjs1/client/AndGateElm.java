@@ -76,13 +76,7 @@ import com.google.gwt.canvas.dom.client.Context2d;
 	    }
 	}
 	String getGateName() { return "AND gate"; }
-	boolean calcFunction() {
-	    int i;
-	    boolean f = true;
-	    for (i = 0; i != inputCount; i++)
-		f &= getInput(i);
-	    return f;
-	}
+	int getGateFunction() { return GateDevice.FUNC_AND; }
 	int getDumpType() { return 150; }
 	int getShortcut() { return '2'; }
     }
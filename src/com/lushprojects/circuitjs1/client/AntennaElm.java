@@ -24,7 +24,7 @@ package com.lushprojects.circuitjs1.client;
 	public AntennaElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    waveform = WF_AC;
+	    source.waveform = WF_AC;
 	}
 	double fmphase;
 	
@@ -44,6 +44,7 @@ package com.lushprojects.circuitjs1.client;
 	}
 
 	int getDumpType() { return 'A'; }
+	int getStateCount() { return -1; }
 	int getShortcut() { return 0; }
 	
 	void getInfo(String arr[]) {
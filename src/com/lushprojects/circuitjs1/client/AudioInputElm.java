@@ -54,7 +54,7 @@ class AudioInputElm extends RailElm {
 	public AudioInputElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    waveform = WF_AC;
+	    source.waveform = WF_AC;
 	    maxVoltage = Double.parseDouble(st.nextToken());
 	    startPosition = Double.parseDouble(st.nextToken());
 	    fileNum = Integer.parseInt(st.nextToken());
@@ -117,6 +117,7 @@ class AudioInputElm extends RailElm {
 	}
 	
 	int getDumpType() { return 411; }
+	int getStateCount() { return -1; }
 	int getShortcut() { return 0; }
 	
 	public EditInfo getEditInfo(int n) {
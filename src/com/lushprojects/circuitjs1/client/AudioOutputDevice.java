@@ -0,0 +1,83 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// audio output, for AudioOutputElm.  It only measures: after each step we average the voltage
+// into samples at samplingRate, keeping the last duration seconds in data[].
+class AudioOutputDevice extends Device {
+    int dataCount, dataPtr;
+    double data[];
+    boolean dataFull;
+    int samplingRate;
+    double duration;
+    double sampleStep;
+    double dataStart;
+    double dataSampleTime = 0;
+    double nextDataSample = 0;
+    double dataSample;
+
+    AudioOutputDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    // the label number after these is only used for display, so the element reads it
+    void undump(StringTokenizer st, int f) {
+	duration = Double.parseDouble(st.nextToken());
+	samplingRate = Integer.parseInt(st.nextToken());
+	setDataCount();
+    }
+
+    int getPostCount() { return 1; }
+    void reset() {
+	dataPtr = 0;
+	dataFull = false;
+	dataSampleTime = 0;
+	nextDataSample = 0;
+	dataSample = 0;
+    }
+    double getVoltageDiff() { return volts[0]; }
+
+    void stepFinished() {
+	// weight each step by its length, since steps may not be uniform if the
+	// timestep is being adjusted
+	dataSample += volts[0]*sim.timeStep;
+	dataSampleTime += sim.timeStep;
+	if (sim.t >= nextDataSample) {
+	    nextDataSample += sampleStep;
+	    data[dataPtr++] = dataSample/dataSampleTime;
+	    dataSampleTime = 0;
+	    dataSample = 0;
+	    if (dataPtr >= dataCount) {
+		dataPtr = 0;
+		dataFull = true;
+	    }
+	}
+    }
+
+    void setDataCount() {
+	dataCount = (int) (samplingRate * duration);
+	data = new double[dataCount];
+	dataStart = sim.t;
+	dataPtr = 0;
+	dataFull = false;
+	sampleStep = 1./samplingRate;
+	nextDataSample = sim.t+sampleStep;
+    }
+}
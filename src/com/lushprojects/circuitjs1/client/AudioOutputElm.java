@@ -12,37 +12,31 @@ import com.google.gwt.user.client.ui.Button;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 public class AudioOutputElm extends CircuitElm {
-    int dataCount, dataPtr;
-    double data[];
-    boolean dataFull;
+    AudioOutputDevice audio;
     Button button;
-    int samplingRate;
     int labelNum;
-    double duration;
-    double sampleStep;
-    double dataStart;
     static int lastSamplingRate = 8000;
     static boolean okToChangeTimeStep;
     
 	public AudioOutputElm(int xx, int yy) {
 	    super(xx, yy);
-	    duration = 1;
-	    samplingRate = lastSamplingRate;
+	    setDevice(audio = new AudioOutputDevice(sim));
+	    audio.duration = 1;
+	    audio.samplingRate = lastSamplingRate;
 	    labelNum = getNextLabelNum();
-	    setDataCount();
+	    audio.setDataCount();
 	    createButton();
 	}
 	public AudioOutputElm(int xa, int ya, int xb, int yb, int f,
 			 StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    duration = Double.parseDouble(st.nextToken());
-	    samplingRate = Integer.parseInt(st.nextToken());
+	    setDevice(audio = new AudioOutputDevice(sim));
+	    audio.undump(st, f);
 	    labelNum = Integer.parseInt(st.nextToken());
-	    setDataCount();
 	    createButton();
 	}
 	String dump() { 
-	    return super.dump() + " " + duration + " " + samplingRate + " " + labelNum;
+	    return super.dump() + " " + audio.duration + " " + audio.samplingRate + " " + labelNum;
 	}
 	
 	void draggingDone() {
@@ -67,14 +61,6 @@ public class AudioOutputElm extends CircuitElm {
 	}
 	
 	int getDumpType() { return 211; }
-	int getPostCount() { return 1; }
-	void reset() {
-	    dataPtr = 0;
-	    dataFull = false;
-	    dataSampleCount = 0;
-	    nextDataSample = 0;
-	    dataSample = 0;
-	}
 	void setPoints() {
 	    super.setPoints();
 	    lead1 = new Point();
@@ -89,7 +75,7 @@ public class AudioOutputElm extends CircuitElm {
 	    g.setFont(f);
 	    int textWidth = (int)g.context.measureText(s).getWidth();
 	    g.setColor(Color.darkGray);
-	    int pct = (dataFull) ? textWidth : textWidth*dataPtr/dataCount;
+	    int pct = (audio.dataFull) ? textWidth : textWidth*audio.dataPtr/audio.dataCount;
 	    g.fillRect(x2-textWidth/2, y2-10, pct, 20);
 	    g.setColor(selected ? selectColor : whiteColor);
 	    interpPoint(point1, point2, lead1, 1-(textWidth/2.+8)/dn);
@@ -102,51 +88,21 @@ public class AudioOutputElm extends CircuitElm {
 	    drawPosts(g);
 	    g.restore();
 	}
-	double getVoltageDiff() { return volts[0]; }
 	void getInfo(String arr[]) {
 	    arr[0] = "audio output";
 	    arr[1] = "V = " + getVoltageText(volts[0]);
-	    int ct = (dataFull ? dataCount : dataPtr);
-	    double dur = sampleStep * ct;
-	    arr[2] = "start = " + getUnitText(dataFull ? sim.t-duration : dataStart, "s");
+	    int ct = (audio.dataFull ? audio.dataCount : audio.dataPtr);
+	    double dur = audio.sampleStep * ct;
+	    arr[2] = "start = " + getUnitText(audio.dataFull ? sim.t-audio.duration : audio.dataStart, "s");
 	    arr[3] = "dur = " + getUnitText(dur, "s");
-	    arr[4] = "samples = " + ct + (dataFull ? "" : "/" + dataCount);
-	}
-	
-	int dataSampleCount = 0;
-	double nextDataSample = 0;
-	double dataSample;
-	
-	void stepFinished() {
-	    dataSample += volts[0];
-	    dataSampleCount++;
-	    if (sim.t >= nextDataSample) {
-		nextDataSample += sampleStep;
-		data[dataPtr++] = dataSample/dataSampleCount;
-		dataSampleCount = 0;
-		dataSample = 0;
-		if (dataPtr >= dataCount) {
-		    dataPtr = 0;
-		    dataFull = true;
-		}
-	    }
-	}
-	
-	void setDataCount() {
-	    dataCount = (int) (samplingRate * duration);
-	    data = new double[dataCount];
-	    dataStart = sim.t;
-	    dataPtr = 0;
-	    dataFull = false;
-	    sampleStep = 1./samplingRate;
-	    nextDataSample = sim.t+sampleStep;
+	    arr[4] = "samples = " + ct + (audio.dataFull ? "" : "/" + audio.dataCount);
 	}
 	
 	int samplingRateChoices[] = { 8000, 11025, 16000, 22050, 44100, 48000 };
 	
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0) {
-		EditInfo ei = new EditInfo("Duration (s)", duration, 0, 5);
+		EditInfo ei = new EditInfo("Duration (s)", audio.duration, 0, 5);
 		return ei;
 	    }
 	    if (n == 1) {
@@ -155,7 +111,7 @@ public class AudioOutputElm extends CircuitElm {
 		int i;
 		for (i = 0; i != samplingRateChoices.length; i++) {
 		    ei.choice.add(samplingRateChoices[i] + "");
-		    if (samplingRateChoices[i] == samplingRate)
+		    if (samplingRateChoices[i] == audio.samplingRate)
 			ei.choice.select(i);
 		}
 		return ei;
@@ -178,15 +134,15 @@ public class AudioOutputElm extends CircuitElm {
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0 && ei.value > 0) {
-		duration = ei.value;
-		setDataCount();
+		audio.duration = ei.value;
+		audio.setDataCount();
 	    }
 	    if (n == 1) {
 		int nsr = samplingRateChoices[ei.choice.getSelectedIndex()];
-		if (nsr != samplingRate) {
-		    samplingRate = nsr;
+		if (nsr != audio.samplingRate) {
+		    audio.samplingRate = nsr;
 		    lastSamplingRate = nsr;
-		    setDataCount();
+		    audio.setDataCount();
 		    setTimeStep();
 		}
 	    }
@@ -208,7 +164,7 @@ public class AudioOutputElm extends CircuitElm {
 	    */
 	    
 //	    int frac = (int)Math.round(Math.max(sampleStep*33000, 1));
-	    double target = sampleStep/8;
+	    double target = audio.sampleStep/8;
 	    if (sim.maxTimeStep != target) {
                 if (okToChangeTimeStep || Window.confirm(Locale.LS("Adjust timestep for best audio quality and performance?"))) {
                     sim.maxTimeStep = target;
@@ -357,13 +313,14 @@ public class AudioOutputElm extends CircuitElm {
         void play() {
             int i;
             JsArrayInteger arr = (JsArrayInteger)JsArrayInteger.createArray();
-            int ct = dataPtr;
+            double data[] = audio.data;
+            int ct = audio.dataPtr;
             int base = 0;
-            if (dataFull) {
-        	ct = dataCount;
-        	base = dataPtr;
+            if (audio.dataFull) {
+        	ct = audio.dataCount;
+        	base = audio.dataPtr;
             }
-            if (ct * sampleStep < .05) {
+            if (ct * audio.sampleStep < .05) {
         	Window.alert(Locale.LS("Audio data is not ready yet.  Increase simulation speed to make data ready sooner."));
         	return;
             }
@@ -380,15 +337,15 @@ public class AudioOutputElm extends CircuitElm {
             double mult = (.25*32766)/(max+adj);
             
             // fade in over 1/20 sec
-	    int fadeLen = samplingRate/20;
+	    int fadeLen = audio.samplingRate/20;
 	    int fadeOut = ct-fadeLen;
 	    
 	    double fadeMult = mult/fadeLen;
             for (i = 0; i != ct; i++) {
 		double fade = (i < fadeLen) ? i*fadeMult : (i > fadeOut) ? (ct-i)*fadeMult : mult;
-        	int s = (int)((data[(i+base)%dataCount]+adj)*fade);
+        	int s = (int)((data[(i+base)%audio.dataCount]+adj)*fade);
         	arr.push(s);
             }
-            playJS(arr, samplingRate);
+            playJS(arr, audio.samplingRate);
         }
 }
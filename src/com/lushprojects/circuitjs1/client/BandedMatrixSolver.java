@@ -0,0 +1,179 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// LU factorization with partial pivoting for a matrix whose nonzero entries are all near
+// the diagonal: a[i][j] == 0 unless i-kl <= j <= i+ku.  This only touches the band, so it
+// takes O(n*kl*(kl+ku)) time instead of O(n^3).  Row interchanges can fill in kl more
+// diagonals above the band, so we leave room for them.
+//
+// The band is stored by column, like LAPACK does: entry (i,j) is at ab[j*ldab + kv+i-j],
+// where kv = kl+ku.
+class BandedMatrixSolver implements MatrixSolver {
+    int n, kl, ku, kv, ldab;
+    double ab[];
+    int ipvt[];
+
+    // nonzero count of the matrix when we last checked its bandwidth
+    int checkedNonzeros = -1;
+
+    BandedMatrixSolver(int n_, int kl_, int ku_) {
+	n = n_;
+	ipvt = new int[n];
+	setBandwidth(kl_, ku_);
+    }
+
+    void setBandwidth(int kl_, int ku_) {
+	kl = kl_;
+	ku = ku_;
+	kv = kl+ku;
+	ldab = 2*kl+ku+1;
+	ab = new double[ldab*n];
+    }
+
+    public String getName() { return "banded, " + kl + "+" + ku; }
+
+    // nothing is cached between factorizations
+    public boolean updateValues(SparseMatrix a) { return true; }
+
+    // get the number of diagonals below the main diagonal that have nonzero entries
+    static int getLowerBandwidth(SparseMatrix a) {
+	int i, k, bw = 0;
+	for (i = 0; i != a.size; i++)
+	    for (k = 0; k != a.rowLength[i]; k++)
+		bw = Math.max(bw, i-a.rowCols[i][k]);
+	return bw;
+    }
+
+    // get the number of diagonals above the main diagonal that have nonzero entries
+    static int getUpperBandwidth(SparseMatrix a) {
+	int i, k, bw = 0;
+	for (i = 0; i != a.size; i++)
+	    for (k = 0; k != a.rowLength[i]; k++)
+		bw = Math.max(bw, a.rowCols[i][k]-i);
+	return bw;
+    }
+
+    // nonlinear elements may have added entries outside the band.  Widen the band to hold
+    // them, unless that makes it more than maxWidth diagonals wide, in which case we return
+    // false and leave it alone.
+    boolean checkBandwidth(SparseMatrix a, int maxWidth) {
+	int nz = a.getNonzeroCount();
+	if (nz == checkedNonzeros)
+	    return true;
+	int l = Math.max(getLowerBandwidth(a), kl);
+	int u = Math.max(getUpperBandwidth(a), ku);
+	if (l+u+1 > maxWidth)
+	    return false;
+	if (l > kl || u > ku)
+	    setBandwidth(l, u);
+	checkedNonzeros = nz;
+	return true;
+    }
+
+    public boolean factor(SparseMatrix a) {
+	int i, j, k;
+
+	checkBandwidth(a, Integer.MAX_VALUE);
+
+	for (i = 0; i != ab.length; i++)
+	    ab[i] = 0;
+	for (i = 0; i != n; i++) {
+	    int cols[] = a.rowCols[i];
+	    double vals[] = a.rowValues[i];
+	    for (k = 0; k != a.rowLength[i]; k++) {
+		j = cols[k];
+		ab[j*ldab + kv+i-j] += vals[k];
+	    }
+	}
+
+	// ju = last column affected by row interchanges so far
+	int ju = 0;
+	for (k = 0; k != n; k++) {
+	    int km = Math.min(kl, n-1-k);
+	    int ck = k*ldab + kv-k;
+
+	    // find pivot
+	    int p = k;
+	    double largest = Math.abs(ab[ck+k]);
+	    for (i = k+1; i <= k+km; i++)
+		if (Math.abs(ab[ck+i]) > largest) {
+		    largest = Math.abs(ab[ck+i]);
+		    p = i;
+		}
+	    ipvt[k] = p;
+	    if (!(largest > 0))
+		return false;
+	    ju = Math.max(ju, Math.min(p+ku, n-1));
+
+	    // interchange rows
+	    if (p != k)
+		for (j = k; j <= ju; j++) {
+		    int cj = j*ldab + kv-j;
+		    double x = ab[cj+p];
+		    ab[cj+p] = ab[cj+k];
+		    ab[cj+k] = x;
+		}
+
+	    // compute multipliers
+	    double mult = 1/ab[ck+k];
+	    for (i = k+1; i <= k+km; i++)
+		ab[ck+i] *= mult;
+
+	    // update the rest of the band
+	    for (j = k+1; j <= ju; j++) {
+		int cj = j*ldab + kv-j;
+		double x = ab[cj+k];
+		if (x == 0)
+		    continue;
+		for (i = k+1; i <= k+km; i++)
+		    ab[cj+i] -= ab[ck+i]*x;
+	    }
+	}
+	return true;
+    }
+
+    public void solve(double b[]) {
+	int i, j, k;
+
+	// forward substitution with L, applying the row interchanges as we go
+	for (k = 0; k != n; k++) {
+	    int p = ipvt[k];
+	    double x = b[p];
+	    b[p] = b[k];
+	    b[k] = x;
+	    if (x == 0)
+		continue;
+	    int km = Math.min(kl, n-1-k);
+	    int ck = k*ldab + kv-k;
+	    for (i = k+1; i <= k+km; i++)
+		b[i] -= ab[ck+i]*x;
+	}
+
+	// back substitution with U
+	for (i = n-1; i >= 0; i--) {
+	    double tot = b[i];
+	    int jmax = Math.min(n-1, i+kv);
+	    for (j = i+1; j <= jmax; j++)
+		tot -= ab[j*ldab + kv+i-j]*b[j];
+	    b[i] = tot/ab[i*ldab + kv];
+	}
+    }
+}
@@ -0,0 +1,369 @@
+/*
+    Copyright (C) Paul Falstad and Iain Sharp
+
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Solver for circuits made of several parts that are only coupled one way, for example
+// a stage driving another through a controlled source.  We permute the matrix to block
+// lower triangular form:
+//
+//   [ A_11           ] [ x_1 ]   [ b_1 ]
+//   [ A_21 A_22      ] [ x_2 ] = [ b_2 ]
+//   [ A_31 A_32 A_33 ] [ x_3 ]   [ b_3 ]
+//
+// and then solve for x_1, x_2, ... in turn, only factoring the diagonal blocks.  To find the
+// blocks, we first pair each column (unknown) with a row that has a nonzero entry in it
+// (a maximum transversal), so that each unknown is determined by one equation.  Then the
+// blocks are the strongly connected components of the graph where unknown j points to every
+// unknown that appears in j's equation (Tarjan's algorithm).
+//
+// Blocks that contain no nonlinear rows are only factored once.
+class BlockTriangularSolver implements MatrixSolver {
+    int n;
+    boolean nonLinearRow[];
+
+    // colToRow[j] = row paired with column j, rowToCol[i] = column paired with row i
+    int colToRow[], rowToCol[];
+
+    // columns of block b are colOrder[blockStart[b]] .. colOrder[blockStart[b+1]-1].
+    // colPos[j] is the position of column j in colOrder.
+    int blockCount;
+    int blockStart[];
+    int colOrder[], colPos[];
+    int colBlock[];
+    int largestBlock;
+
+    // for each entry of the matrix, its index in the row of the block matrix it belongs to,
+    // or -1 if it's outside the diagonal blocks
+    int entrySlot[][];
+
+    boolean blockLinear[], blockFactored[];
+
+    // diagonal blocks larger than 1x1, and their factorizations
+    SparseMatrix blockMatrix[];
+    SparseLU blockLU[];
+
+    // value of 1x1 blocks
+    double blockPivot[];
+
+    // nonzero count of the matrix when we last called setup()
+    int setupNonzeros = -1;
+
+    SparseMatrix matrix;
+    double x[], rhs[];
+
+    BlockTriangularSolver(boolean nonLinearRow_[]) {
+	nonLinearRow = nonLinearRow_;
+    }
+
+    int getBlockCount() { return blockCount; }
+    int getLargestBlock() { return largestBlock; }
+    public String getName() { return "sparse, " + blockCount + " blocks"; }
+
+    // the linear blocks have to be factored again
+    public boolean updateValues(SparseMatrix a) {
+	int b;
+	for (b = 0; b != blockCount; b++)
+	    blockFactored[b] = false;
+	return true;
+    }
+
+    // find the blocks for the pattern of a.  Returns false if the matrix is structurally singular.
+    boolean setup(SparseMatrix a) {
+	n = a.size;
+	setupNonzeros = -1;
+	if (!findTransversal(a))
+	    return false;
+	findBlocks(a);
+
+	int i, j, k, b;
+	colOrder = new int[n];
+	colPos = new int[n];
+	blockStart = new int[blockCount+1];
+	for (j = 0; j != n; j++)
+	    blockStart[colBlock[j]+1]++;
+	largestBlock = 0;
+	for (b = 0; b != blockCount; b++) {
+	    largestBlock = Math.max(largestBlock, blockStart[b+1]);
+	    blockStart[b+1] += blockStart[b];
+	}
+	int next[] = new int[blockCount];
+	for (b = 0; b != blockCount; b++)
+	    next[b] = blockStart[b];
+	for (j = 0; j != n; j++) {
+	    int p = next[colBlock[j]]++;
+	    colOrder[p] = j;
+	    colPos[j] = p;
+	}
+
+	// create the block matrices and figure out where each entry goes
+	blockLinear = new boolean[blockCount];
+	blockFactored = new boolean[blockCount];
+	blockMatrix = new SparseMatrix[blockCount];
+	blockLU = new SparseLU[blockCount];
+	blockPivot = new double[blockCount];
+	for (b = 0; b != blockCount; b++) {
+	    int size = blockStart[b+1]-blockStart[b];
+	    blockLinear[b] = true;
+	    if (size > 1)
+		blockMatrix[b] = new SparseMatrix(size);
+	}
+	entrySlot = new int[n][];
+	for (i = 0; i != n; i++) {
+	    b = colBlock[rowToCol[i]];
+	    if (nonLinearRow[i])
+		blockLinear[b] = false;
+	    int len = a.rowLength[i];
+	    int cols[] = a.rowCols[i];
+	    entrySlot[i] = new int[len];
+	    for (k = 0; k != len; k++) {
+		int c = cols[k];
+		if (colBlock[c] != b)
+		    entrySlot[i][k] = -1;
+		else if (blockMatrix[b] == null)
+		    entrySlot[i][k] = 0;
+		else
+		    entrySlot[i][k] = blockMatrix[b].findOrCreate(colPos[rowToCol[i]]-blockStart[b],
+								 colPos[c]-blockStart[b]);
+	    }
+	}
+	for (b = 0; b != blockCount; b++)
+	    if (blockMatrix[b] != null) {
+		blockLU[b] = new SparseLU(blockMatrix[b].size);
+		blockLU[b].analyze(blockMatrix[b]);
+	    }
+	x = new double[n];
+	rhs = new double[largestBlock];
+	setupNonzeros = a.getNonzeroCount();
+	return true;
+    }
+
+    // pair each column with a row that has a nonzero entry in that column, by looking for
+    // augmenting paths (Duff's MC21 algorithm).  Nonrecursive depth-first search.
+    boolean findTransversal(SparseMatrix a) {
+	int i, j, k;
+
+	// get the rows in each column
+	int colp[] = new int[n+1];
+	for (i = 0; i != n; i++)
+	    for (k = 0; k != a.rowLength[i]; k++)
+		colp[a.rowCols[i][k]+1]++;
+	for (j = 0; j != n; j++)
+	    colp[j+1] += colp[j];
+	int coli[] = new int[colp[n]];
+	int fill[] = new int[n];
+	for (j = 0; j != n; j++)
+	    fill[j] = colp[j];
+	for (i = 0; i != n; i++)
+	    for (k = 0; k != a.rowLength[i]; k++)
+		coli[fill[a.rowCols[i][k]]++] = i;
+
+	rowToCol = new int[n];
+	colToRow = new int[n];
+	for (i = 0; i != n; i++)
+	    rowToCol[i] = -1;
+
+	// cheap[j] = next entry of column j to check for an unmatched row.  Matched rows stay
+	// matched, so we never have to look at an entry twice for this.
+	int cheap[] = new int[n];
+	int pos[] = new int[n];
+	int visited[] = new int[n];
+	int colStack[] = new int[n];
+	int rowStack[] = new int[n];
+	for (j = 0; j != n; j++) {
+	    cheap[j] = colp[j];
+	    visited[j] = -1;
+	}
+	int j0;
+	for (j0 = 0; j0 != n; j0++) {
+	    int head = 0;
+	    int found = -1;
+	    colStack[0] = j0;
+	    pos[j0] = colp[j0];
+	    while (head >= 0) {
+		j = colStack[head];
+		for (; cheap[j] != colp[j+1]; cheap[j]++)
+		    if (rowToCol[coli[cheap[j]]] < 0) {
+			found = coli[cheap[j]];
+			break;
+		    }
+		if (found >= 0)
+		    break;
+
+		// no free row, so try to move one of the rows in this column to another column
+		boolean advanced = false;
+		for (; pos[j] != colp[j+1]; pos[j]++) {
+		    i = coli[pos[j]];
+		    if (visited[i] == j0)
+			continue;
+		    visited[i] = j0;
+		    pos[j]++;
+		    rowStack[head] = i;
+		    int jn = rowToCol[i];
+		    colStack[++head] = jn;
+		    pos[jn] = colp[jn];
+		    advanced = true;
+		    break;
+		}
+		if (!advanced)
+		    head--;
+	    }
+	    if (found < 0)
+		return false;
+
+	    // flip the matches along the path
+	    rowToCol[found] = colStack[head];
+	    colToRow[colStack[head]] = found;
+	    for (k = head-1; k >= 0; k--) {
+		rowToCol[rowStack[k]] = colStack[k];
+		colToRow[colStack[k]] = rowStack[k];
+	    }
+	}
+	return true;
+    }
+
+    // find strongly connected components with Tarjan's algorithm (nonrecursive).  Components
+    // are found only after everything they depend on, so that is the order we solve them in.
+    void findBlocks(SparseMatrix a) {
+	int index[] = new int[n];
+	int low[] = new int[n];
+	int edgePos[] = new int[n];
+	int callStack[] = new int[n];
+	int sccStack[] = new int[n];
+	boolean onStack[] = new boolean[n];
+	colBlock = new int[n];
+	int j, counter = 0, sccTop = 0;
+	blockCount = 0;
+	for (j = 0; j != n; j++)
+	    index[j] = -1;
+	int j0;
+	for (j0 = 0; j0 != n; j0++) {
+	    if (index[j0] >= 0)
+		continue;
+	    int callTop = 0;
+	    callStack[0] = j0;
+	    index[j0] = low[j0] = counter++;
+	    edgePos[j0] = 0;
+	    sccStack[sccTop++] = j0;
+	    onStack[j0] = true;
+	    while (callTop >= 0) {
+		int v = callStack[callTop];
+		int row = colToRow[v];
+		if (edgePos[v] != a.rowLength[row]) {
+		    int w = a.rowCols[row][edgePos[v]++];
+		    if (index[w] < 0) {
+			index[w] = low[w] = counter++;
+			edgePos[w] = 0;
+			sccStack[sccTop++] = w;
+			onStack[w] = true;
+			callStack[++callTop] = w;
+		    } else if (onStack[w] && index[w] < low[v])
+			low[v] = index[w];
+		    continue;
+		}
+		if (low[v] == index[v]) {
+		    int w;
+		    do {
+			w = sccStack[--sccTop];
+			onStack[w] = false;
+			colBlock[w] = blockCount;
+		    } while (w != v);
+		    blockCount++;
+		}
+		if (--callTop >= 0) {
+		    int u = callStack[callTop];
+		    if (low[v] < low[u])
+			low[u] = low[v];
+		}
+	    }
+	}
+    }
+
+    // factor the diagonal blocks.  Blocks with no nonlinear rows only need to be factored once.
+    public boolean factor(SparseMatrix a) {
+	// redo the blocks if nonlinear elements added entries
+	if (a.getNonzeroCount() != setupNonzeros && !setup(a))
+	    return false;
+	matrix = a;
+	int b, p, k;
+	for (b = 0; b != blockCount; b++) {
+	    if (blockLinear[b] && blockFactored[b])
+		continue;
+	    blockFactored[b] = false;
+	    SparseMatrix bm = blockMatrix[b];
+	    if (bm == null) {
+		int i = colToRow[colOrder[blockStart[b]]];
+		double v = 0;
+		for (k = 0; k != a.rowLength[i]; k++)
+		    if (entrySlot[i][k] >= 0)
+			v += a.rowValues[i][k];
+		if (!(v != 0) || Double.isInfinite(v))
+		    return false;
+		blockPivot[b] = v;
+	    } else {
+		for (p = blockStart[b]; p != blockStart[b+1]; p++) {
+		    int i = colToRow[colOrder[p]];
+		    int lr = p-blockStart[b];
+		    int slots[] = entrySlot[i];
+		    double vals[] = a.rowValues[i];
+		    double bvals[] = bm.rowValues[lr];
+		    for (k = 0; k != bm.rowLength[lr]; k++)
+			bvals[k] = 0;
+		    for (k = 0; k != slots.length; k++)
+			if (slots[k] >= 0)
+			    bvals[slots[k]] += vals[k];
+		}
+		if (!blockLU[b].factor(bm))
+		    return false;
+	    }
+	    blockFactored[b] = true;
+	}
+	return true;
+    }
+
+    // solve the system using the factored blocks.  On input, b is the right hand side,
+    // and on output it contains the solution.
+    public void solve(double b[]) {
+	int blk, p, k;
+	for (blk = 0; blk != blockCount; blk++) {
+	    int start = blockStart[blk];
+	    int end = blockStart[blk+1];
+	    for (p = start; p != end; p++) {
+		// move the entries for the unknowns we already have to the right side
+		int i = colToRow[colOrder[p]];
+		int slots[] = entrySlot[i];
+		int cols[] = matrix.rowCols[i];
+		double vals[] = matrix.rowValues[i];
+		double s = b[i];
+		for (k = 0; k != slots.length; k++)
+		    if (slots[k] < 0)
+			s -= vals[k]*x[cols[k]];
+		rhs[p-start] = s;
+	    }
+	    if (blockMatrix[blk] == null) {
+		x[colOrder[start]] = rhs[0]/blockPivot[blk];
+		continue;
+	    }
+	    blockLU[blk].solve(rhs);
+	    for (p = start; p != end; p++)
+		x[colOrder[p]] = rhs[p-start];
+	}
+	System.arraycopy(x, 0, b, 0, n);
+    }
+}
@@ -35,11 +35,11 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 3;
-	    pins = new Pin[3];
-	    pins[0] = new Pin(0, SIDE_W, "X");
+	    allocPins(3);
+	    pins[0] = new ChipPin(0, SIDE_W, "X");
 	    pins[0].output = true;
-	    pins[1] = new Pin(2, SIDE_W, "Y");
-	    pins[2] = new Pin(1, SIDE_E, "Z");
+	    pins[1] = new ChipPin(2, SIDE_W, "Y");
+	    pins[2] = new ChipPin(1, SIDE_E, "Z");
 	}
 	void getInfo(String arr[]) {
 	    arr[0] = (gain == 1) ? "CCII+~" : "CCII-~"; // ~ is for localization
@@ -0,0 +1,132 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// capacitor, for CapacitorElm
+class CapacitorDevice extends Device {
+    static final int FLAG_BACK_EULER = 2;
+    double capacitance;
+    double compResistance, voltdiff;
+    double initialVoltage;
+    double curSourceValue;
+    boolean trapezoidal;
+    TruncationError lte = new TruncationError();
+
+    CapacitorDevice(CircuitEngine s) {
+	super(s);
+	trapezoidal = true;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	trapezoidal = (f & FLAG_BACK_EULER) == 0;
+	capacitance = new Double(st.nextToken()).doubleValue();
+	voltdiff = new Double(st.nextToken()).doubleValue();
+	initialVoltage = 1e-3;
+	try {
+	    initialVoltage = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {}
+    }
+
+    void reset() {
+	super.reset();
+	current = curSourceValue = 0;
+	// put small charge on caps when reset to start oscillators
+	voltdiff = initialVoltage;
+	lte.reset();
+    }
+    void shorted() {
+	voltdiff = current = curSourceValue = 0;
+	lte.reset();
+    }
+    void stamp() {
+	if (sim.dcAnalysisFlag) {
+	    // when finding DC operating point, replace cap with a 100M resistor
+	    sim.stampResistor(nodes[0], nodes[1], 1e8);
+	    curSourceValue = 0;
+	    return;
+	}
+
+	// capacitor companion model using trapezoidal approximation
+	// (Norton equivalent) consists of a current source in
+	// parallel with a resistor.  Trapezoidal is more accurate
+	// than backward euler but can cause oscillatory behavior
+	// if RC is small relative to the timestep.
+	if (trapezoidal)
+	    compResistance = sim.timeStep/(2*capacitance);
+	else
+	    compResistance = sim.timeStep/capacitance;
+	sim.stampResistor(nodes[0], nodes[1], compResistance);
+	sim.stampRightSide(nodes[0]);
+	sim.stampRightSide(nodes[1]);
+    }
+    void startIteration() {
+	if (trapezoidal)
+	    curSourceValue = -voltdiff/compResistance-current;
+	else
+	    curSourceValue = -voltdiff/compResistance;
+    }
+
+    void stepFinished() {
+	voltdiff = volts[0]-volts[1];
+	calculateCurrent();
+	if (!sim.dcAnalysisFlag)
+	    lte.add(sim.t, voltdiff);
+    }
+
+    boolean storesNodeVoltageOnly() { return true; }
+    int getStateCount() { return 2; }
+    void getState(double s[], int off) {
+	s[off] = voltdiff;
+	s[off+1] = current;
+    }
+    void setState(double s[], int off) {
+	voltdiff = s[off];
+	current = s[off+1];
+    }
+
+    double getTimeStepLimit() {
+	return lte.getTimeStepLimit(trapezoidal, CircuitEngine.LTE_TOLERANCE, 1e-6);
+    }
+
+    void setNodeVoltage(int n, double c) {
+	// do not calculate current, that only gets done in stepFinished().  otherwise calculateCurrent() may get
+	// called while stamping the circuit, which might discharge the cap (since we use that current to calculate
+	// curSourceValue in startIteration)
+	volts[n] = c;
+    }
+
+    void calculateCurrent() {
+	double voltdiff = volts[0] - volts[1];
+	if (sim.dcAnalysisFlag) {
+	    current = voltdiff/1e8;
+	    return;
+	}
+	// we check compResistance because this might get called
+	// before stamp(), which sets compResistance, causing
+	// infinite current
+	if (compResistance > 0)
+	    current = voltdiff/compResistance + curSourceValue;
+    }
+    void doStep() {
+	if (sim.dcAnalysisFlag)
+	    return;
+	sim.stampCurrentSource(nodes[0], nodes[1], curSourceValue);
+    }
+}
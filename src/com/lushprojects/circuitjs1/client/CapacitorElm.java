@@ -22,41 +22,35 @@ package com.lushprojects.circuitjs1.client;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class CapacitorElm extends CircuitElm {
-	double capacitance;
-	double compResistance, voltdiff;
-	double initialVoltage;
+	CapacitorDevice cap;
 	Point plate1[], plate2[];
 	public static final int FLAG_BACK_EULER = 2;
 	public CapacitorElm(int xx, int yy) {
 	    super(xx, yy);
-	    capacitance = 1e-5;
-	    initialVoltage = 1e-3;
+	    setDevice(cap = createDevice());
+	    cap.capacitance = 1e-5;
+	    cap.initialVoltage = 1e-3;
 	}
 	public CapacitorElm(int xa, int ya, int xb, int yb, int f,
 			    StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    capacitance = new Double(st.nextToken()).doubleValue();
-	    voltdiff = new Double(st.nextToken()).doubleValue();
-	    initialVoltage = 1e-3;
-	    try {
-		initialVoltage = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {}
+	    setDevice(cap = createDevice());
+	    cap.undump(st, f);
+	}
+	CapacitorDevice createDevice() {
+	    CapacitorDevice d = new CapacitorDevice(sim);
+	    d.trapezoidal = isTrapezoidal();
+	    return d;
 	}
 	boolean isTrapezoidal() { return (flags & FLAG_BACK_EULER) == 0; }
 	
-	void reset() {
-	    super.reset();
-	    current = curcount = curSourceValue = 0;
-	    // put small charge on caps when reset to start oscillators
-	    voltdiff = initialVoltage;
-	}
 	void shorted() {
-	    super.reset();
-	    voltdiff = current = curcount = curSourceValue = 0;
+	    reset();
+	    cap.shorted();
 	}
 	int getDumpType() { return 'c'; }
 	String dump() {
-	    return super.dump() + " " + capacitance + " " + voltdiff + " " + initialVoltage;
+	    return super.dump() + " " + cap.capacitance + " " + cap.voltdiff + " " + cap.initialVoltage;
 	}
 	
 	// used for PolarCapacitorElm
@@ -106,106 +100,49 @@ class CapacitorElm extends CircuitElm {
 	    }
 	    drawPosts(g);
 	    if (sim.showValuesCheckItem.getState()) {
-		String s = getShortUnitText(capacitance, "F");
+		String s = getShortUnitText(cap.capacitance, "F");
 		drawValues(g, s, hs);
 	    }
 	}
-	void stamp() {
-	    if (sim.dcAnalysisFlag) {
-		// when finding DC operating point, replace cap with a 100M resistor
-		sim.stampResistor(nodes[0], nodes[1], 1e8);
-		curSourceValue = 0;
-		return;
-	    }
-	    
-	    // capacitor companion model using trapezoidal approximation
-	    // (Norton equivalent) consists of a current source in
-	    // parallel with a resistor.  Trapezoidal is more accurate
-	    // than backward euler but can cause oscillatory behavior
-	    // if RC is small relative to the timestep.
-	    if (isTrapezoidal())
-		compResistance = sim.timeStep/(2*capacitance);
-	    else
-		compResistance = sim.timeStep/capacitance;
-	    sim.stampResistor(nodes[0], nodes[1], compResistance);
-	    sim.stampRightSide(nodes[0]);
-	    sim.stampRightSide(nodes[1]);
-	}
-	void startIteration() {
-	    if (isTrapezoidal())
-		curSourceValue = -voltdiff/compResistance-current;
-	    else
-		curSourceValue = -voltdiff/compResistance;
-	}
-	
-	void stepFinished() {
-	    voltdiff = volts[0]-volts[1];
-	    calculateCurrent();
-	}
-	
-	void setNodeVoltage(int n, double c) {
-	    // do not calculate current, that only gets done in stepFinished().  otherwise calculateCurrent() may get
-	    // called while stamping the circuit, which might discharge the cap (since we use that current to calculate
-	    // curSourceValue in startIteration)
-	    volts[n] = c;
-	}	
-	
-	void calculateCurrent() {
-	    double voltdiff = volts[0] - volts[1];
-	    if (sim.dcAnalysisFlag) {
-		current = voltdiff/1e8;
-		return;
-	    }
-	    // we check compResistance because this might get called
-	    // before stamp(), which sets compResistance, causing
-	    // infinite current
-	    if (compResistance > 0)
-		current = voltdiff/compResistance + curSourceValue;
-	}
-	double curSourceValue;
-	void doStep() {
-	    if (sim.dcAnalysisFlag)
-		return;
-	    sim.stampCurrentSource(nodes[0], nodes[1], curSourceValue);
- 	}
 	void getInfo(String arr[]) {
 	    arr[0] = "capacitor";
 	    getBasicInfo(arr);
-	    arr[3] = "C = " + getUnitText(capacitance, "F");
+	    arr[3] = "C = " + getUnitText(cap.capacitance, "F");
 	    arr[4] = "P = " + getUnitText(getPower(), "W");
 	    //double v = getVoltageDiff();
 	    //arr[4] = "U = " + getUnitText(.5*capacitance*v*v, "J");
 	}
 	@Override
 	String getScopeText(int v) {
-	    return Locale.LS("capacitor") + ", " + getUnitText(capacitance, "F");
+	    return Locale.LS("capacitor") + ", " + getUnitText(cap.capacitance, "F");
 	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Capacitance (F)", capacitance, 1e-6, 1e-3);
+		return new EditInfo("Capacitance (F)", cap.capacitance, 1e-6, 1e-3);
 	    if (n == 1) {
 		EditInfo ei = new EditInfo("", 0, -1, -1);
 		ei.checkbox = new Checkbox("Trapezoidal Approximation", isTrapezoidal());
 		return ei;
 	    }
 	    if (n == 2)
-		return new EditInfo("Initial Voltage (on Reset)", initialVoltage);
+		return new EditInfo("Initial Voltage (on Reset)", cap.initialVoltage);
 	    // if you add more things here, check PolarCapacitorElm
 	    return null;
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0)
-		capacitance = (ei.value > 0) ? ei.value : 1e-12;
+		cap.capacitance = (ei.value > 0) ? ei.value : 1e-12;
 	    if (n == 1) {
 		if (ei.checkbox.getState())
 		    flags &= ~FLAG_BACK_EULER;
 		else
 		    flags |= FLAG_BACK_EULER;
+		cap.trapezoidal = isTrapezoidal();
 	    }
 	    if (n == 2)
-		initialVoltage = ei.value;
+		cap.initialVoltage = ei.value;
 	}
 	int getShortcut() { return 'c'; }
-	public double getCapacitance() { return capacitance; }
-	public void setCapacitance(double c) { capacitance = c; }
+	public double getCapacitance() { return cap.capacitance; }
+	public void setCapacitance(double c) { cap.capacitance = c; }
     }
@@ -0,0 +1,154 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of ChipElm.  A digital chip has a voltage source on each output pin, which
+// doStep() drives to highVoltage or 0 after reading the inputs and calling execute().  Chips
+// whose logic has been moved here subclass this and lay out their pins in setupPins(); the
+// others use a ChipDevice that calls back into the element (see ChipElm.createDevice()).
+class ChipDevice extends Device {
+    static final int SIDE_N = 0;
+    static final int SIDE_S = 1;
+    static final int SIDE_W = 2;
+    static final int SIDE_E = 3;
+    static final int FLAG_CUSTOM_VOLTAGE = 1<<13;
+
+    ChipPin pins[];
+    // size of the chip in pin spacings, for laying out the pins
+    int sizeX, sizeY;
+    int bits;
+    double highVoltage = 5;
+    boolean lastClock;
+
+    ChipDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    // true if the dump has a bit count before the pin states
+    boolean needsBits() { return false; }
+    int defaultBitCount() { return 4; }
+
+    // read the bit count, logic voltage and the states of the pins that save them, and lay out
+    // the pins.  Subclasses set their options from f first, and read their own settings after.
+    void undump(StringTokenizer st, int f) {
+	if (needsBits())
+	    bits = st.hasMoreTokens() ? new Integer(st.nextToken()).intValue() : defaultBitCount();
+	highVoltage = ((f & FLAG_CUSTOM_VOLTAGE) != 0) ? Double.parseDouble(st.nextToken()) : 5;
+	setupPins();
+	undumpPinStates(st);
+    }
+
+    // read the voltages of the pins whose state is saved.  The pins may have changed, so the
+    // element copies these voltages when it allocates its nodes again (see SimElm.allocNodes()).
+    void undumpPinStates(StringTokenizer st) {
+	int i;
+	int n = getPostCount();
+	if (volts == null || volts.length < n)
+	    volts = new double[n];
+	for (i = 0; i != n; i++) {
+	    if (pins == null)
+		volts[i] = new Double(st.nextToken()).doubleValue();
+	    else if (pins[i].state) {
+		volts[i] = new Double(st.nextToken()).doubleValue();
+		pins[i].value = volts[i] > getThreshold();
+	    }
+	}
+    }
+
+    // create pins[] and set sizeX and sizeY
+    void setupPins() {}
+    void allocPins(int n) { pins = new ChipPin[n]; }
+
+    int getPostCount() { return (pins == null) ? 0 : pins.length; }
+
+    // one voltage source per output
+    int getVoltageSourceCount() {
+	int i, n = 0;
+	for (i = 0; i != getPostCount(); i++)
+	    if (pins[i].output)
+		n++;
+	return n;
+    }
+    double getThreshold() { return highVoltage/2; }
+
+    void setVoltageSource(int j, int vs) {
+	int i;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (p.output && j-- == 0) {
+		p.voltSource = vs;
+		return;
+	    }
+	}
+	sim.log("setVoltageSource failed for " + this);
+    }
+    void stamp() {
+	int i;
+	int vsc = 0;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (p.output) {
+		sim.stampVoltageSource(0, nodes[i], p.voltSource);
+		vsc++;
+	    }
+	}
+	if (vsc != getVoltageSourceCount())
+	    sim.log("voltage source count does not match number of outputs");
+    }
+    // update the output pin values from the inputs
+    void execute() {}
+    void doStep() {
+	int i;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (!p.output)
+		p.value = volts[i] > getThreshold();
+	}
+	execute();
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (p.output)
+		sim.updateVoltageSource(0, nodes[i], p.voltSource,
+					p.value ? highVoltage : 0);
+	}
+    }
+    void reset() {
+	int i;
+	for (i = 0; i != getPostCount(); i++) {
+	    pins[i].value = false;
+	    volts[i] = 0;
+	}
+	lastClock = false;
+    }
+    void writeOutput(int n, boolean value) {
+	if (!pins[n].output)
+	    sim.log("pin " + n + " is not an output!");
+	pins[n].value = value;
+    }
+    void setCurrent(int x, double c) {
+	int i;
+	for (i = 0; i != getPostCount(); i++)
+	    if (pins[i].output && pins[i].voltSource == x)
+		pins[i].current = c;
+    }
+    boolean getConnection(int n1, int n2) { return false; }
+    boolean hasGroundConnection(int n1) { return pins[n1].output; }
+    double getCurrentIntoNode(int n) { return pins[n].current; }
+}
@@ -21,8 +21,9 @@ package com.lushprojects.circuitjs1.client;
 
 abstract class ChipElm extends CircuitElm {
 	int csize, cspc, cspc2;
+	// bit count from the dump, copied to the device by setupPins()
 	int bits;
-	double highVoltage;
+	ChipDevice chip;
 	
 	static final int FLAG_SMALL = 1;
 	static final int FLAG_FLIP_X = 1<<10;
@@ -31,39 +32,50 @@ abstract class ChipElm extends CircuitElm {
 	static final int FLAG_CUSTOM_VOLTAGE = 1<<13;
 	public ChipElm(int xx, int yy) {
 	    super(xx, yy);
+	    setDevice(chip = createDevice());
 	    if (needsBits())
 		bits = defaultBitCount();
-	    highVoltage = 5;
 	    noDiagonal = true;
 	    setupPins();
+	    allocNodes();
 	    setSize(sim.smallGridCheckItem.getState() ? 1 : 2);
 	}
 	public ChipElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    if (needsBits())
-	    	if (st.hasMoreTokens())
-	    		bits = new Integer(st.nextToken()).intValue();
-	    	else
-	    		bits = defaultBitCount();
-	    highVoltage = (hasCustomVoltage()) ? Double.parseDouble(st.nextToken()) : 5;
+	    setDevice(chip = createDevice());
 	    noDiagonal = true;
-	    setupPins();
+	    chip.undump(st, f);
+	    bits = chip.bits;
+	    pins = chip.pins;
+	    sizeX = chip.sizeX;
+	    sizeY = chip.sizeY;
+	    allocNodes();
 	    setSize((f & FLAG_SMALL) != 0 ? 1 : 2);
-	    int i;
-	    for (i = 0; i != getPostCount(); i++) {
-		if (pins == null)
-		    volts[i] = new Double(st.nextToken()).doubleValue();
-		else if (pins[i].state) {
-		    volts[i] = new Double(st.nextToken()).doubleValue();
-		    pins[i].value = volts[i] > getThreshold();
+	}
+
+	// device for chips whose simulation is still done here: the generic pin handling is in
+	// ChipDevice, and execute(), the pin layout and the pin and voltage source counts come from us
+	ChipDevice createDevice() {
+	    return new ChipDevice(sim) {
+		int getPostCount() { return ChipElm.this.getPostCount(); }
+		int getVoltageSourceCount() { return ChipElm.this.getVoltageSourceCount(); }
+		void execute() { ChipElm.this.execute(); }
+		boolean needsBits() { return ChipElm.this.needsBits(); }
+		int defaultBitCount() { return ChipElm.this.defaultBitCount(); }
+		void setupPins() {
+		    ChipElm.this.bits = bits;
+		    ChipElm.this.setupPins();
+		    sizeX = ChipElm.this.sizeX;
+		    sizeY = ChipElm.this.sizeY;
 		}
-	    }
+	    };
 	}
+
 	boolean needsBits() { return false; }
 	boolean hasCustomVoltage() { return (flags & FLAG_CUSTOM_VOLTAGE) != 0; }
 	boolean isDigitalChip() { return true; }
-	double getThreshold() { return highVoltage/2; }
+	double getThreshold() { return chip.getThreshold(); }
 	
 	int defaultBitCount() { return 4; }
 	void setSize(int s) {
@@ -73,7 +85,20 @@ abstract class ChipElm extends CircuitElm {
 	    flags &= ~FLAG_SMALL;
 	    flags |= (s == 1) ? FLAG_SMALL : 0;
 	}
-	abstract void setupPins();
+	// create pins[] and set sizeX and sizeY.  Chips with their own ChipDevice do this there.
+	void setupPins() {
+	    chip.bits = bits;
+	    chip.setupPins();
+	    pins = chip.pins;
+	    sizeX = chip.sizeX;
+	    sizeY = chip.sizeY;
+	}
+	void allocPins(int n) {
+	    pins = chip.pins = new ChipPin[n];
+	}
+	void setPins(ChipPin p[]) {
+	    pins = chip.pins = p;
+	}
 	void draw(Graphics g) {
 	    drawChip(g);
 	}
@@ -91,7 +116,7 @@ abstract class ChipElm extends CircuitElm {
 		}
 	    for (i = 0; i != getPostCount(); i++) {
 		g.setFont(f);
-		Pin p = pins[i];
+		ChipPin p = pins[i];
 		setVoltageColor(g, volts[i]);
 		Point a = p.post;
 		Point b = p.stub;
@@ -148,9 +173,9 @@ abstract class ChipElm extends CircuitElm {
 	    g.restore();
 	}
 	int rectPointsX[], rectPointsY[];
-	Pin pins[];
+	// same array as chip.pins
+	ChipPin pins[];
 	int sizeX, sizeY, flippedSizeX, flippedSizeY;
-	boolean lastClock;
 	void drag(int xx, int yy) {
 	    yy = sim.snapGrid(yy);
 	    if (xx < x) {
@@ -181,15 +206,15 @@ abstract class ChipElm extends CircuitElm {
 	    int ys = flippedSizeY*cspc2;
 	    int i;
 	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
+		ChipPin p = pins[i];
 		p.side = p.side0;
 		if ((flags & FLAG_FLIP_XY) != 0)
 		    p.side = sideFlipXY[p.side];
 		switch (p.side) {
-		case SIDE_N: p.setPoint(x0, y0, 1, 0, 0, -1, 0, 0); break;
-		case SIDE_S: p.setPoint(x0, y0, 1, 0, 0,  1, 0, ys-cspc2);break;
-		case SIDE_W: p.setPoint(x0, y0, 0, 1, -1, 0, 0, 0); break;
-		case SIDE_E: p.setPoint(x0, y0, 0, 1,  1, 0, xs-cspc2, 0);break;
+		case SIDE_N: setPinPoint(p, x0, y0, 1, 0, 0, -1, 0, 0); break;
+		case SIDE_S: setPinPoint(p, x0, y0, 1, 0, 0,  1, 0, ys-cspc2);break;
+		case SIDE_W: setPinPoint(p, x0, y0, 0, 1, -1, 0, 0, 0); break;
+		case SIDE_E: setPinPoint(p, x0, y0, 0, 1,  1, 0, xs-cspc2, 0);break;
 		}
 	    }
 	    rectPointsX = new int[] { xr, xr+xs, xr+xs, xr };
@@ -234,7 +259,7 @@ abstract class ChipElm extends CircuitElm {
 	    for (int i = 0; i != getPostCount(); i++) {
 		if (pin == i)
 		    continue;
-		if (pins[i].overlaps(p1, p2))
+		if (pinOverlaps(pins[i], p1, p2))
 		    return i;
 	    }
 	    return -1;
@@ -243,59 +268,16 @@ abstract class ChipElm extends CircuitElm {
 	Point getPost(int n) {
 	    return pins[n].post;
 	}
-	abstract int getVoltageSourceCount(); // output count
-	void setVoltageSource(int j, int vs) {
-	    int i;
-	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
-		if (p.output && j-- == 0) {
-		    p.voltSource = vs;
-		    return;
-		}
-	    }
-	    System.out.println("setVoltageSource failed for " + this);
-	}
-	void stamp() {
-	    int i;
-	    int vsc = 0;
-	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
-		if (p.output) {
-		    sim.stampVoltageSource(0, nodes[i], p.voltSource);
-		    vsc++;
-		}
-	    }
-	    if (vsc != getVoltageSourceCount())
-		CirSim.console("voltage source count does not match number of outputs");
-	}
 	void execute() {}
-	void doStep() {
-	    int i;
-	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
-		if (!p.output)
-		    p.value = volts[i] > getThreshold();
-	    }
-	    execute();
-	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
-		if (p.output)
-		    sim.updateVoltageSource(0, nodes[i], p.voltSource,
-					p.value ? highVoltage : 0);
-	    }
-	}
 	void reset() {
+	    super.reset();
 	    int i;
-	    for (i = 0; i != getPostCount(); i++) {
-		pins[i].value = false;
+	    for (i = 0; i != getPostCount(); i++)
 		pins[i].curcount = 0;
-		volts[i] = 0;
-	    }
-	    lastClock = false;
 	}
 	
 	String dump() {
-	    if (highVoltage == 5)
+	    if (chip.highVoltage == 5)
 		flags &= ~FLAG_CUSTOM_VOLTAGE;
 	    else
 		flags |= FLAG_CUSTOM_VOLTAGE;
@@ -304,7 +286,7 @@ abstract class ChipElm extends CircuitElm {
 	    if (needsBits())
 		s += " " + bits;
 	    if (hasCustomVoltage())
-		s += " " + highVoltage;
+		s += " " + chip.highVoltage;
 	    int i;
 	    for (i = 0; i != getPostCount(); i++) {
 		if (pins[i].state)
@@ -314,16 +296,14 @@ abstract class ChipElm extends CircuitElm {
 	}
 	
 	void writeOutput(int n, boolean value) {
-	    if (!pins[n].output)
-		CirSim.console("pin " + n + " is not an output!");
-	    pins[n].value = value;
+	    chip.writeOutput(n, value);
 	}
 	
 	void getInfo(String arr[]) {
 	    arr[0] = getChipName();
 	    int i, a = 1;
 	    for (i = 0; i != getPostCount(); i++) {
-		Pin p = pins[i];
+		ChipPin p = pins[i];
 		if (arr[a] != null)
 		    arr[a] += "; ";
 		else
@@ -338,22 +318,7 @@ abstract class ChipElm extends CircuitElm {
 		    a++;
 	    }
 	}
-	void setCurrent(int x, double c) {
-	    int i;
-	    for (i = 0; i != getPostCount(); i++)
-		if (pins[i].output && pins[i].voltSource == x)
-		    pins[i].current = c;
-	}
 	String getChipName() { return "chip"; }
-	boolean getConnection(int n1, int n2) { return false; }
-	boolean hasGroundConnection(int n1) {
-	    return pins[n1].output;
-	}
-	
-	double getCurrentIntoNode(int n) {
-	    return pins[n].current;
-	}
-	
 	boolean isFlippedXY() { return (flags & FLAG_FLIP_XY) != 0; }
 	
 	public EditInfo getEditInfo(int n) {
@@ -376,7 +341,7 @@ abstract class ChipElm extends CircuitElm {
 		return getChipEditInfo(n-3);
 	    
 	    if (n == 3)
-		return new EditInfo("High Logic Voltage", highVoltage);
+		return new EditInfo("High Logic Voltage", chip.highVoltage);
 	    
 	    return getChipEditInfo(n-4);
 	}
@@ -400,7 +365,7 @@ abstract class ChipElm extends CircuitElm {
 	    }
 	    
 	    if (n == 3)
-		highVoltage = ei.value;
+		chip.highVoltage = ei.value;
 	    
 	    if (n >= 4)
 		setChipEditValue(n-4, ei);
@@ -447,10 +412,10 @@ abstract class ChipElm extends CircuitElm {
 		}
 	}
 
-	static final int SIDE_N = 0;
-	static final int SIDE_S = 1;
-	static final int SIDE_W = 2;
-	static final int SIDE_E = 3;
+	static final int SIDE_N = ChipDevice.SIDE_N;
+	static final int SIDE_S = ChipDevice.SIDE_S;
+	static final int SIDE_W = ChipDevice.SIDE_W;
+	static final int SIDE_E = ChipDevice.SIDE_E;
 	
 	static final int sideFlipXY[] = { SIDE_W, SIDE_E, SIDE_N, SIDE_S };
 
@@ -464,112 +429,71 @@ abstract class ChipElm extends CircuitElm {
 	    return s;
 	}
 	
-	class Pin {
-	    Pin(int p, int s, String t) {
-		pos = p; side0 = side = s; text = t;
-	    }
-	    Point post, stub;
-	    Point textloc;
-	    int pos, side, side0, voltSource, bubbleX, bubbleY;
-	    String text;
-	    boolean lineOver, bubble, clock, output, value, state, selected;
-	    double curcount, current;
-            int clockPointsX[], clockPointsY[];
-	    void setPoint(int px, int py, int dx, int dy, int dax, int day, int sx, int sy) {
-		if ((flags & FLAG_FLIP_X) != 0) {
-		    dx = -dx;
-		    dax = -dax;
-		    px += cspc2*(flippedSizeX-1);
-		    sx = -sx;
-		}
-		if ((flags & FLAG_FLIP_Y) != 0) {
-		    dy = -dy;
-		    day = -day;
-		    py += cspc2*(flippedSizeY-1);
-		    sy = -sy;
-		}
-		int xa = px+cspc2*dx*pos+sx;
-		int ya = py+cspc2*dy*pos+sy;
-		post    = new Point(xa+dax*cspc2, ya+day*cspc2);
-		stub    = new Point(xa+dax*cspc , ya+day*cspc );
-		textloc = new Point(xa       , ya       );
-		if (bubble) {
-		    bubbleX = xa+dax*10*csize;
-		    bubbleY = ya+day*10*csize;
-		}
-		if (clock) {
-		    if (clockPointsX == null) {
-			clockPointsX = new int[3];
-			clockPointsY = new int[3];
-		    }
-		    clockPointsX[0] = xa+dax*cspc-dx*cspc/2;
-		    clockPointsY[0] = ya+day*cspc-dy*cspc/2;
-		    clockPointsX[1] = xa;
-		    clockPointsY[1] = ya;
-		    clockPointsX[2] = xa+dax*cspc+dx*cspc/2;
-		    clockPointsY[2] = ya+day*cspc+dy*cspc/2;
-		    if (text.length() > 0) {
-			// See for example http://127.0.0.1:8000/circuitjs.html?ctz=CQAgjCAMB0l3BWcMBMcUHYMGZIA4UA2ATmIxAUgpABZsKBTAWjDACgAncDQkPKlDSr8oySGzTkwPPlTAo8s2iADCAGQDSALgCSAOQBqWle0khBwgUJDYUy9dv1GVKCZHIXwNGubyKw3vaauobG2G5SMgE+0rxgxHY+DiHONJzcvCKxXj5y8OnZ0ebWRXlw6Z5FniJl4kA
-			clockPointsX[1] += dax*cspc/2;
-			clockPointsY[1] += day*cspc/2;
-			textloc.x -= dax*cspc/2;
-			textloc.y -= day*cspc/4;
-		    }
-		}
-		else {
-		    clockPointsX = null;
-		    clockPointsY = null;
-		}
-	    }
 
-	    // convert position, side to a grid position (0=top left) so we can detect overlaps
-	    int toGrid(int p, int s) {
-		if (s == SIDE_N)
-		    return p;
-		if (s == SIDE_S)
-		    return p+sizeX*(sizeY-1);
-		if (s == SIDE_W)
-		    return p*sizeX;
-		if (s == SIDE_E)
-		    return p*sizeX+sizeX-1;
-		return -1;
+	void setPinPoint(ChipPin p, int px, int py, int dx, int dy, int dax, int day, int sx, int sy) {
+	    if ((flags & FLAG_FLIP_X) != 0) {
+		dx = -dx;
+		dax = -dax;
+		px += cspc2*(flippedSizeX-1);
+		sx = -sx;
 	    }
-	    
-	    boolean overlaps(int p, int s) {
-		int g = toGrid(p, s);
-		if (g == -1)
-		    return true;
-		return toGrid(pos, side) == g;
+	    if ((flags & FLAG_FLIP_Y) != 0) {
+		dy = -dy;
+		day = -day;
+		py += cspc2*(flippedSizeY-1);
+		sy = -sy;
 	    }
-	    
-	    void fixName() {
-		if (text.startsWith("/")) {
-		    text = text.substring(1);
-		    lineOver = true;
-		}
-		else if (text.startsWith("#")) {
-		    text = text.substring(1);
-		    bubble = true;
-		}
-
-		String result = text.replaceAll("CLK:", "");
-		if (result.length() != text.length()) {
-		    clock = true;
-		    text = result;
-		}
-		result = text.replaceAll("INV:", "");
-		if (result.length() != text.length()) {
-		    bubble = true;
-		    text = result;
+	    int xa = px+cspc2*dx*p.pos+sx;
+	    int ya = py+cspc2*dy*p.pos+sy;
+	    p.post    = new Point(xa+dax*cspc2, ya+day*cspc2);
+	    p.stub    = new Point(xa+dax*cspc , ya+day*cspc );
+	    p.textloc = new Point(xa       , ya       );
+	    if (p.bubble) {
+		p.bubbleX = xa+dax*10*csize;
+		p.bubbleY = ya+day*10*csize;
+	    }
+	    if (p.clock) {
+		if (p.clockPointsX == null) {
+		    p.clockPointsX = new int[3];
+		    p.clockPointsY = new int[3];
 		}
-
-		if (text.compareToIgnoreCase("clk") == 0) {
-		    text = "";
-		    clock = true;
+		p.clockPointsX[0] = xa+dax*cspc-dx*cspc/2;
+		p.clockPointsY[0] = ya+day*cspc-dy*cspc/2;
+		p.clockPointsX[1] = xa;
+		p.clockPointsY[1] = ya;
+		p.clockPointsX[2] = xa+dax*cspc+dx*cspc/2;
+		p.clockPointsY[2] = ya+day*cspc+dy*cspc/2;
+		if (p.text.length() > 0) {
+		    // See for example http://127.0.0.1:8000/circuitjs.html?ctz=CQAgjCAMB0l3BWcMBMcUHYMGZIA4UA2ATmIxAUgpABZsKBTAWjDACgAncDQkPKlDSr8oySGzTkwPPlTAo8s2iADCAGQDSALgCSAOQBqWle0khBwgUJDYUy9dv1GVKCZHIXwNGubyKw3vaauobG2G5SMgE+0rxgxHY+DiHONJzcvCKxXj5y8OnZ0ebWRXlw6Z5FniJl4kA
+		    p.clockPointsX[1] += dax*cspc/2;
+		    p.clockPointsY[1] += day*cspc/2;
+		    p.textloc.x -= dax*cspc/2;
+		    p.textloc.y -= day*cspc/4;
 		}
 	    }
-	    
+	    else {
+		p.clockPointsX = null;
+		p.clockPointsY = null;
+	    }
+	}
 
+	// convert position, side to a grid position (0=top left) so we can detect overlaps
+	int toGrid(int p, int s) {
+	    if (s == SIDE_N)
+		return p;
+	    if (s == SIDE_S)
+		return p+sizeX*(sizeY-1);
+	    if (s == SIDE_W)
+		return p*sizeX;
+	    if (s == SIDE_E)
+		return p*sizeX+sizeX-1;
+	    return -1;
+	}
+	
+	boolean pinOverlaps(ChipPin pin, int p, int s) {
+	    int g = toGrid(p, s);
+	    if (g == -1)
+		return true;
+	    return toGrid(pin.pos, pin.side) == g;
 	}
     }
-
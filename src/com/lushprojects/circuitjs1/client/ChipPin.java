@@ -0,0 +1,66 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// a pin of a chip (see ChipDevice).  The first group of fields is the pin's logical state,
+// used by the simulation; the rest is where ChipElm draws it.
+class ChipPin {
+    ChipPin(int p, int s, String t) {
+	pos = p; side0 = side = s; text = t;
+    }
+    int pos, side, side0, voltSource;
+    String text;
+    boolean lineOver, bubble, clock, output, value, state;
+    double current;
+
+    Point post, stub;
+    Point textloc;
+    int bubbleX, bubbleY;
+    int clockPointsX[], clockPointsY[];
+    boolean selected;
+    double curcount;
+
+    void fixName() {
+	if (text.startsWith("/")) {
+	    text = text.substring(1);
+	    lineOver = true;
+	}
+	else if (text.startsWith("#")) {
+	    text = text.substring(1);
+	    bubble = true;
+	}
+
+	String result = text.replaceAll("CLK:", "");
+	if (result.length() != text.length()) {
+	    clock = true;
+	    text = result;
+	}
+	result = text.replaceAll("INV:", "");
+	if (result.length() != text.length()) {
+	    bubble = true;
+	    text = result;
+	}
+
+	if (text.compareToIgnoreCase("clk") == 0) {
+	    text = "";
+	    clock = true;
+	}
+    }
+}
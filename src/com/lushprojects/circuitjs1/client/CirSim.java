@@ -28,6 +28,7 @@ import java.util.Vector;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.lang.Math;
@@ -105,11 +106,10 @@ import com.google.gwt.event.dom.client.BlurEvent;
 import com.google.gwt.event.dom.client.FocusHandler;
 import com.google.gwt.event.dom.client.FocusEvent;
 
-public class CirSim implements MouseDownHandler, MouseMoveHandler, MouseUpHandler,
+public class CirSim extends CircuitEngine implements MouseDownHandler, MouseMoveHandler, MouseUpHandler,
 ClickHandler, DoubleClickHandler, ContextMenuHandler, NativePreviewHandler,
 MouseOutHandler, MouseWheelHandler {
 
-    Random random;
     Button resetButton;
     Button runStopButton;
     Button dumpMatrixButton;
@@ -132,6 +132,8 @@ MouseOutHandler, MouseWheelHandler {
     CheckboxMenuItem conventionCheckItem;
     CheckboxMenuItem noEditCheckItem;
     CheckboxMenuItem mouseWheelEditCheckItem;
+    CheckboxMenuItem profileCheckItem;
+    CheckboxMenuItem trackConvergenceCheckItem;
     private Label powerLabel;
     private Label titleLabel;
     private Scrollbar speedBar;
@@ -185,37 +187,27 @@ MouseOutHandler, MouseWheelHandler {
     Rectangle selectedArea;
     int gridSize, gridMask, gridRound;
     boolean dragging;
-    boolean analyzeFlag, needsStamp, savedFlag;
-    boolean dumpMatrix;
-    boolean dcAnalysisFlag;
+    boolean analyzeFlag, savedFlag;
     // boolean useBufferedImage;
     boolean isMac;
     String ctrlMetaKey;
-    double t;
     int pause = 10;
     int scopeSelected = -1;
     int scopeMenuSelected = -1;
     int menuScope = -1;
     int menuPlot = -1;
     int hintType = -1, hintItem1, hintItem2;
-    String stopMessage;
 
-    // current timestep (time between iterations)
-    double timeStep;
-
-    // maximum timestep (== timeStep unless we reduce it because of trouble
-    // converging)
-    double maxTimeStep;
-    double minTimeStep;
+    boolean developerMode;
 
-    // accumulated time since we incremented timeStepCount
-    double timeStepAccum;
+    // timing histograms and counters, kept for the life of the simulator (see getPerfStats())
+    PerfMonitor perfmon = new PerfMonitor();
 
-    // incremented each time we advance t by maxTimeStep
-    int timeStepCount;
+    // per-element timings, or null if profiling is off
+    ElementProfiler elementProfiler;
 
-    boolean adjustTimeStep;
-    boolean developerMode;
+    // subiteration histogram, timestep reductions, and (optionally) per-element convergence
+    ConvergenceMonitor convergenceMonitor = new ConvergenceMonitor(this);
     static final int HINT_LC = 1;
     static final int HINT_RC = 2;
     static final int HINT_3DB_C = 3;
@@ -225,7 +217,6 @@ MouseOutHandler, MouseWheelHandler {
     Vector<Adjustable> adjustables;
     // Vector setupList;
     CircuitElm dragElm, menuElm, stopElm;
-    CircuitElm elmArr[];
     ScopeElm scopeElmArr[];
     private CircuitElm mouseElm = null;
     boolean didSwitch = false;
@@ -233,14 +224,7 @@ MouseOutHandler, MouseWheelHandler {
     CircuitElm plotXElm, plotYElm;
     int draggingPost;
     SwitchElm heldSwitchElm;
-    double circuitMatrix[][], circuitRightSide[], lastNodeVoltages[], nodeVoltages[], origRightSide[], origMatrix[][];
-    RowInfo circuitRowInfo[];
-    int circuitPermute[];
     boolean simRunning;
-    boolean circuitNonLinear;
-    int voltageSourceCount;
-    int circuitMatrixSize, circuitMatrixFullSize;
-    boolean circuitNeedsMap;
     // public boolean useFrame;
     int scopeCount;
     Scope scopes[];
@@ -300,13 +284,6 @@ MouseOutHandler, MouseWheelHandler {
     };
     final int FASTTIMER = 16;
 
-    int getrand(int x) {
-        int q = random.nextInt();
-        if (q < 0)
-            q = -q;
-        return q % x;
-    }
-
     static native float devicePixelRatio() /*-{
         return window.devicePixelRatio;
     }-*/;
@@ -414,6 +391,13 @@ MouseOutHandler, MouseWheelHandler {
 	    String ctz=qp.getValue("ctz");
 	    if (ctz!= null)
 		startCircuitText = decompress(ctz);
+	    // generated test circuit, see CircuitGenerator
+	    String generate = qp.getValue("generate");
+	    if (generate != null) {
+		String size = qp.getValue("size");
+		startCircuitText = CircuitGenerator.generate(generate,
+			(size == null) ? 1000 : Integer.parseInt(size));
+	    }
 	    startCircuit = qp.getValue("startCircuit");
 	    startLabel   = qp.getValue("startLabel");
 	    startCircuitLink = qp.getValue("startCircuitLink");
@@ -436,6 +420,7 @@ MouseOutHandler, MouseWheelHandler {
 	    currentColor = qp.getValue("currentColor");
 	    mouseModeReq = qp.getValue("mouseMode");
 	    hideInfoBox = qp.getBooleanValue("hideInfoBox", false);
+	    validateTopology = qp.getBooleanValue("validateTopology", false);
 	} catch (Exception e) { }
 
 	boolean euroSetting = false;
@@ -631,6 +616,19 @@ MouseOutHandler, MouseWheelHandler {
 	}));
 	mouseWheelEditCheckItem.setState(mouseWheelEdit);
 
+	m.addItem(profileCheckItem = new CheckboxMenuItem(Locale.LS("Profile Elements"),
+		new Command() { public void execute(){
+		    elementProfiler = profileCheckItem.getState() ? new ElementProfiler() : null;
+		}
+	}));
+	m.addItem(new CheckboxAlignedMenuItem(Locale.LS("Element Profile..."), new MyCommand("options", "profile")));
+	m.addItem(trackConvergenceCheckItem = new CheckboxMenuItem(Locale.LS("Track Convergence"),
+		new Command() { public void execute(){
+		    convergenceMonitor.trackElements = trackConvergenceCheckItem.getState();
+		}
+	}));
+	m.addItem(new CheckboxAlignedMenuItem(Locale.LS("Convergence Diagnostics..."), new MyCommand("options", "convergence")));
+
 	m.addItem(new CheckboxAlignedMenuItem(Locale.LS("Shortcuts..."), new MyCommand("options", "shortcuts")));
 	m.addItem(optionsItem = new CheckboxAlignedMenuItem(Locale.LS("Other Options..."), new MyCommand("options","other")));
 	if (isElectron())
@@ -1561,7 +1559,6 @@ MouseOutHandler, MouseWheelHandler {
 
     long lastTime = 0, lastFrameTime, lastIterTime, secTime = 0;
     int frames = 0;
-    int steps = 0;
     int framerate = 0, steprate = 0;
     static CirSim theSim;
 
@@ -1606,7 +1603,7 @@ MouseOutHandler, MouseWheelHandler {
     //                     UPDATE CIRCUIT
     
     public void updateCircuit() {
-        PerfMonitor perfmon = new PerfMonitor();
+        perfmon.clearContexts();
         perfmon.startContext("updateCircuit()");
 
         checkCanvasSize();
@@ -1711,13 +1708,19 @@ MouseOutHandler, MouseWheelHandler {
 
         // Draw each element
         perfmon.startContext("elm.draw()");
-        for (int i = 0; i != elmList.size(); i++) {
-            if (powerCheckItem.getState())
-                g.setColor(Color.gray);
-            
-            getElm(i).draw(g);
+        if (elementProfiler != null)
+            elementProfiler.draw(g, elmArr, elmList, powerCheckItem.getState());
+        else {
+            for (int i = 0; i != elmList.size(); i++) {
+                if (powerCheckItem.getState())
+                    g.setColor(Color.gray);
+
+                getElm(i).draw(g);
+            }
         }
         perfmon.stopContext();
+        if (elementProfiler != null)
+            elementProfiler.drawHeatmap(g);
 
         // Draw posts normally
         if (mouseMode != CirSim.MODE_DRAG_ROW && mouseMode != CirSim.MODE_DRAG_COLUMN) {
@@ -1807,6 +1810,8 @@ MouseOutHandler, MouseWheelHandler {
         lastFrameTime = lastTime;
 
         perfmon.stopContext(); // updateCircuit
+        perfmon.count(PerfMonitor.COUNT_FACTORIZATIONS, factorCount);
+        factorCount = 0;
         
         if (developerMode) {
             int height = 15;
@@ -1816,6 +1821,16 @@ MouseOutHandler, MouseWheelHandler {
             g.drawString("Steprate/iter: " + CircuitElm.showFormat.format(steprate / getIterCount()), 10, height += increment);
             g.drawString("iterc: " + CircuitElm.showFormat.format(getIterCount()), 10, height += increment);
             g.drawString("Frames: " + frames, 10, height += increment);
+            if (circuitSolver != null)
+        	g.drawString("Solver: " + circuitSolver.getName() + ", n=" + circuitMatrixSize, 10, height += increment);
+            if (subIterationSteps[0] > 0)
+        	g.drawString("Subiterations/step: " + CircuitElm.showFormat.format(subIterationTotal[0]/(double) subIterationSteps[0]), 10, height += increment);
+            if (subIterationSteps[1] > 0)
+        	g.drawString("Subiterations/step (predictor): " + CircuitElm.showFormat.format(subIterationTotal[1]/(double) subIterationSteps[1]), 10, height += increment);
+            if (deviceBypass)
+        	g.drawString("Bypassed: " + deviceBypassCount + "/" + (deviceEvalCount+deviceBypassCount), 10, height += increment);
+            if (multirateStepper != null)
+        	g.drawString("Partition steps: " + multirateStepper.getStepCounts(), 10, height += increment);
             
             height += (increment * 2);
             
@@ -1856,8 +1871,11 @@ MouseOutHandler, MouseWheelHandler {
 	if (scopeElmArr != null)
 	    for (i=0; i != scopeElmArr.length; i++)
 		scopeElmArr[i].selectScope(mouseCursorX, mouseCursorY);
-	for (i = 0; i != ct; i++)
+	for (i = 0; i != ct; i++) {
+	    perfmon.startContext("scope " + i);
 	    scopes[i].draw(g);
+	    perfmon.stopContext();
+	}
 	if (mouseWasOverSplitter) {
 		g.setColor(CircuitElm.selectColor);
 		g.setLineWidth(4.0);
@@ -2018,8 +2036,8 @@ MouseOutHandler, MouseWheelHandler {
 		return null;
 	    InductorElm ie = (InductorElm) c1;
 	    CapacitorElm ce = (CapacitorElm) c2;
-	    return Locale.LS("res.f = ") + CircuitElm.getUnitText(1/(2*pi*Math.sqrt(ie.inductance*
-						    ce.capacitance)), "Hz");
+	    return Locale.LS("res.f = ") + CircuitElm.getUnitText(1/(2*pi*Math.sqrt(ie.getInductance()*
+						    ce.getCapacitance())), "Hz");
 	}
 	if (hintType == HINT_RC) {
 	    if (!(c1 instanceof ResistorElm))
@@ -2028,7 +2046,7 @@ MouseOutHandler, MouseWheelHandler {
 		return null;
 	    ResistorElm re = (ResistorElm) c1;
 	    CapacitorElm ce = (CapacitorElm) c2;
-	    return "RC = " + CircuitElm.getUnitText(re.resistance*ce.capacitance,
+	    return "RC = " + CircuitElm.getUnitText(re.getResistance()*ce.getCapacitance(),
 					 "s");
 	}
 	if (hintType == HINT_3DB_C) {
@@ -2039,7 +2057,7 @@ MouseOutHandler, MouseWheelHandler {
 	    ResistorElm re = (ResistorElm) c1;
 	    CapacitorElm ce = (CapacitorElm) c2;
 	    return Locale.LS("f.3db = ") +
-		CircuitElm.getUnitText(1/(2*pi*re.resistance*ce.capacitance), "Hz");
+		CircuitElm.getUnitText(1/(2*pi*re.getResistance()*ce.getCapacitance()), "Hz");
 	}
 	if (hintType == HINT_3DB_L) {
 	    if (!(c1 instanceof ResistorElm))
@@ -2049,7 +2067,7 @@ MouseOutHandler, MouseWheelHandler {
 	    ResistorElm re = (ResistorElm) c1;
 	    InductorElm ie = (InductorElm) c2;
 	    return Locale.LS("f.3db = ") +
-		CircuitElm.getUnitText(re.resistance/(2*pi*ie.inductance), "Hz");
+		CircuitElm.getUnitText(re.getResistance()/(2*pi*ie.getInductance()), "Hz");
 	}
 	if (hintType == HINT_TWINT) {
 	    if (!(c1 instanceof ResistorElm))
@@ -2059,7 +2077,7 @@ MouseOutHandler, MouseWheelHandler {
 	    ResistorElm re = (ResistorElm) c1;
 	    CapacitorElm ce = (CapacitorElm) c2;
 	    return Locale.LS("fc = ") +
-		CircuitElm.getUnitText(1/(2*pi*re.resistance*ce.capacitance), "Hz");
+		CircuitElm.getUnitText(1/(2*pi*re.getResistance()*ce.getCapacitance()), "Hz");
 	}
 	return null;
     }
@@ -2085,15 +2103,19 @@ MouseOutHandler, MouseWheelHandler {
     	repaint();
     }
     
-    Vector<CircuitNode> nodeList;
     Vector<Point> postDrawList = new Vector<Point>();
     Vector<Point> badConnectionList = new Vector<Point>();
-    CircuitElm voltageSources[];
 
-    public CircuitNode getCircuitNode(int n) {
-	if (n >= nodeList.size())
-	    return null;
-	return nodeList.elementAt(n);
+    Vector<? extends SimElm> getElmList() { return elmList; }
+    CustomLogicRules getLogicModel(String name) { return CustomLogicModel.getModelWithName(name); }
+
+    SimElm createCompositeElm(String ceType, StringTokenizer st) {
+	CircuitElm newce = constructElement(ceType, 0, 0);
+	if (st != null) {
+	    int flags = new Integer(st.nextToken()).intValue();
+	    newce = createCe(newce.getDumpType(), 0, 0, 0, 0, flags, st);
+	}
+	return newce;
     }
 
     public CircuitElm getElm(int n) {
@@ -2131,463 +2153,20 @@ MouseOutHandler, MouseWheelHandler {
 
     public static native void debugger() /*-{ debugger; }-*/;
     
-    class NodeMapEntry {
-	int node;
-	NodeMapEntry() { node = -1; }
-	NodeMapEntry(int n) { node = n; }
-    }
-    // map points to node numbers
-    HashMap<Point,NodeMapEntry> nodeMap;
-    HashMap<Point,Integer> postCountMap;
-    
-    class WireInfo {
-	CircuitElm wire;
-	Vector<CircuitElm> neighbors;
-	int post;
-	WireInfo(CircuitElm w) {
-	    wire = w;
-	}
-    }
-    
-    // info about each wire and its neighbors, used to calculate wire currents
-    Vector<WireInfo> wireInfoList;
-    
-    // find groups of nodes connected by wire equivalents and map them to the same node.  this speeds things
-    // up considerably by reducing the size of the matrix.  We do this for wires, labeled nodes, and ground.
-    // The actual node we map to is not assigned yet.  Instead we map to the same NodeMapEntry.
-    void calculateWireClosure() {
-	int i;
-	LabeledNodeElm.resetNodeList();
-	GroundElm.resetNodeList();
-	nodeMap = new HashMap<Point,NodeMapEntry>();
-//	int mergeCount = 0;
-	wireInfoList = new Vector<WireInfo>();
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    if (!ce.isRemovableWire())
-		continue;
-	    ce.hasWireInfo = false;
-	    wireInfoList.add(new WireInfo(ce));
-	    Point p0 = ce.getPost(0);
-	    NodeMapEntry cn  = nodeMap.get(p0);
-	    
-	    // what post are we connected to
-	    Point p1 = ce.getConnectedPost();
-	    if (p1 == null) {
-		// no connected post (true for labeled node the first time it's encountered, or ground)
-		if (cn == null) {
-		    cn = new NodeMapEntry();
-		    nodeMap.put(p0, cn);
-		}
-		continue;
-	    }
-	    NodeMapEntry cn2 = nodeMap.get(p1);
-	    if (cn != null && cn2 != null) {
-		// merge nodes; go through map and change all keys pointing to cn2 to point to cn
-		for (Map.Entry<Point, NodeMapEntry> entry : nodeMap.entrySet()) {
-		    if (entry.getValue() == cn2)
-			entry.setValue(cn);
-		}
-//		mergeCount++;
-		continue;
-	    }
-	    if (cn != null) {
-		nodeMap.put(p1, cn);
-		continue;
-	    }
-	    if (cn2 != null) {
-		nodeMap.put(p0, cn2);
-		continue;
-	    }
-	    // new entry
-	    cn = new NodeMapEntry();
-	    nodeMap.put(p0, cn);
-	    nodeMap.put(p1, cn);
-	}
-	
-//	console("got " + (groupCount-mergeCount) + " groups with " + nodeMap.size() + " nodes " + mergeCount);
-    }
-    
-    // generate info we need to calculate wire currents.  Most other elements calculate currents using
-    // the voltage on their terminal nodes.  But wires have the same voltage at both ends, so we need
-    // to use the neighbors' currents instead.  We used to treat wires as zero voltage sources to make
-    // this easier, but this is very inefficient, since it makes the matrix 2 rows bigger for each wire.
-    // We create a list of WireInfo objects instead to help us calculate the wire currents instead,
-    // so we make the matrix less complex, and we only calculate the wire currents when we need them
-    // (once per frame, not once per subiteration).  We need the WireInfos arranged in the correct order,
-    // each one containing a list of neighbors and which end to use (since one end may be ready before
-    // the other)
-    boolean calcWireInfo() {
-	int i;
-	int moved = 0;
-	
-	for (i = 0; i != wireInfoList.size(); i++) {
-	    WireInfo wi = wireInfoList.get(i);
-	    CircuitElm wire = wi.wire;
-	    CircuitNode cn1 = nodeList.get(wire.getNode(0));  // both ends of wire have same node #
-	    int j;
-
-	    Vector<CircuitElm> neighbors0 = new Vector<CircuitElm>();
-	    Vector<CircuitElm> neighbors1 = new Vector<CircuitElm>();
-	    
-	    // assume each end is ready (except ground nodes which have one end)
-	    // labeled nodes are treated as having 2 terminals, see below
-	    boolean isReady0 = true, isReady1 = !(wire instanceof GroundElm);
-
-	    // go through elements sharing a node with this wire (may be connected indirectly
-	    // by other wires, but at least it's faster than going through all elements)
-	    for (j = 0; j != cn1.links.size(); j++) {
-		CircuitNodeLink cnl = cn1.links.get(j);
-		CircuitElm ce = cnl.elm;
-		if (ce == wire)
-		    continue;
-		Point pt = ce.getPost(cnl.num);
-		
-		// is this a wire that doesn't have wire info yet?  If so we can't use it yet.
-		// That would create a circular dependency.  So that side isn't ready.
-		boolean notReady = (ce.isRemovableWire() && !ce.hasWireInfo);
-		
-		// which post does this element connect to, if any?
-		if (pt.x == wire.x && pt.y == wire.y) {
-		    neighbors0.add(ce);
-		    if (notReady) isReady0 = false;
-		} else if (wire.getPostCount() > 1) {
-		    Point p2 = wire.getConnectedPost();
-		    if (pt.x == p2.x && pt.y == p2.y) { 
-			neighbors1.add(ce);
-			if (notReady) isReady1 = false;
-		    }
-		} else if (ce instanceof LabeledNodeElm && wire instanceof LabeledNodeElm &&
-			((LabeledNodeElm) ce).text == ((LabeledNodeElm) wire).text) {
-		    // ce and wire are both labeled nodes with matching labels.  treat them as neighbors
-		    neighbors1.add(ce);
-		    if (notReady) isReady1 = false;
-		}
-	    }
-
-	    // does one of the posts have all information necessary to calculate current?
-	    if (isReady0) {
-		wi.neighbors = neighbors0;
-		wi.post = 0;
-		wire.hasWireInfo = true;
-		moved = 0;
-	    } else if (isReady1) {
-		wi.neighbors = neighbors1;
-		wi.post = 1;
-		wire.hasWireInfo = true;
-		moved = 0;
-	    } else {
-		// no, so move to the end of the list and try again later
-		wireInfoList.add(wireInfoList.remove(i--));
-		moved++;
-		if (moved > wireInfoList.size() * 2) {
-		    stop("wire loop detected", wire);
-		    return false;
-		}
-	    }
-	}
-	
-	return true;
-    }
-
-    // find or allocate ground node
-    void setGroundNode() {
-	int i;
-	boolean gotGround = false;
-	boolean gotRail = false;
-	CircuitElm volt = null;
-	    
-	//System.out.println("ac1");
-	// look for voltage or ground element
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    if (ce instanceof GroundElm) {
-		gotGround = true;
-		
-		// set ground node to 0
-		NodeMapEntry nme = nodeMap.get(ce.getPost(0));
-		nme.node = 0;
-		break;
-	    }
-	    if (ce instanceof RailElm)
-	    	gotRail = true;
-	    if (volt == null && ce instanceof VoltageElm)
-	    	volt = ce;
-	}
-
-	// if no ground, and no rails, then the voltage elm's first terminal
-	// is ground
-	if (!gotGround && volt != null && !gotRail) {
-	    CircuitNode cn = new CircuitNode();
-	    Point pt = volt.getPost(0);
-	    nodeList.addElement(cn);
-
-	    // update node map
-	    NodeMapEntry cln = nodeMap.get(pt);
-	    if (cln != null)
-		cln.node = 0;
-	    else
-		nodeMap.put(pt, new NodeMapEntry(0));
-	} else {
-	    // otherwise allocate extra node for ground
-	    CircuitNode cn = new CircuitNode();
-	    nodeList.addElement(cn);
-	}
-    }
-
-    // make list of nodes
-    void makeNodeList() {
-	int i, j;
-	int vscount = 0;
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    int inodes = ce.getInternalNodeCount();
-	    int ivs = ce.getVoltageSourceCount();
-	    int posts = ce.getPostCount();
-	    
-	    // allocate a node for each post and match posts to nodes
-	    for (j = 0; j != posts; j++) {
-		Point pt = ce.getPost(j);
-		Integer g = postCountMap.get(pt);
-		postCountMap.put(pt, g == null ? 1 : g+1);
-		NodeMapEntry cln = nodeMap.get(pt);
-		
-		// is this node not in map yet?  or is the node number unallocated?
-		// (we don't allocate nodes before this because changing the allocation order
-		// of nodes changes circuit behavior and breaks backward compatibility;
-		// the code below to connect unconnected nodes may connect a different node to ground) 
-		if (cln == null || cln.node == -1) {
-		    CircuitNode cn = new CircuitNode();
-		    CircuitNodeLink cnl = new CircuitNodeLink();
-		    cnl.num = j;
-		    cnl.elm = ce;
-		    cn.links.addElement(cnl);
-		    ce.setNode(j, nodeList.size());
-		    if (cln != null)
-			cln.node = nodeList.size();
-		    else
-			nodeMap.put(pt, new NodeMapEntry(nodeList.size()));
-		    nodeList.addElement(cn);
-		} else {
-		    int n = cln.node;
-		    CircuitNodeLink cnl = new CircuitNodeLink();
-		    cnl.num = j;
-		    cnl.elm = ce;
-		    getCircuitNode(n).links.addElement(cnl);
-		    ce.setNode(j, n);
-		    // if it's the ground node, make sure the node voltage is 0,
-		    // cause it may not get set later
-		    if (n == 0)
-			ce.setNodeVoltage(j, 0);
-		}
-	    }
-	    for (j = 0; j != inodes; j++) {
-		CircuitNode cn = new CircuitNode();
-		cn.internal = true;
-		CircuitNodeLink cnl = new CircuitNodeLink();
-		cnl.num = j+posts;
-		cnl.elm = ce;
-		cn.links.addElement(cnl);
-		ce.setNode(cnl.num, nodeList.size());
-		nodeList.addElement(cn);
-	    }
-	    
-	    // also count voltage sources so we can allocate array
-	    vscount += ivs;
-	}
-	
-        voltageSources = new CircuitElm[vscount];
-    }
-    
-    Vector<Integer> unconnectedNodes;
-    Vector<CircuitElm> nodesWithGroundConnection;
-    int nodesWithGroundConnectionCount;
-    
-    void findUnconnectedNodes() {
-	int i, j;
-	
-	// determine nodes that are not connected indirectly to ground.
-	// all nodes must be connected to ground somehow, or else we
-	// will get a matrix error.
-	boolean closure[] = new boolean[nodeList.size()];
-	boolean changed = true;
-	unconnectedNodes = new Vector<Integer>();
-	nodesWithGroundConnection = new Vector<CircuitElm>();
-	closure[0] = true;
-	while (changed) {
-	    changed = false;
-	    for (i = 0; i != elmList.size(); i++) {
-		CircuitElm ce = getElm(i);
-		if (ce instanceof WireElm)
-		    continue;
-		// loop through all ce's nodes to see if they are connected
-		// to other nodes not in closure
-		boolean hasGround = false;
-		for (j = 0; j < ce.getConnectionNodeCount(); j++) {
-		    boolean hg = ce.hasGroundConnection(j);
-		    if (hg)
-			hasGround = true;
-		    if (!closure[ce.getConnectionNode(j)]) {
-			if (hg)
-			    closure[ce.getConnectionNode(j)] = changed = true;
-			continue;
-		    }
-		    int k;
-		    for (k = 0; k != ce.getConnectionNodeCount(); k++) {
-			if (j == k)
-			    continue;
-			int kn = ce.getConnectionNode(k);
-			if (ce.getConnection(j, k) && !closure[kn]) {
-			    closure[kn] = true;
-			    changed = true;
-			}
-		    }
-		}
-		if (hasGround)
-		    nodesWithGroundConnection.add(ce);
-	    }
-	    if (changed)
-		continue;
-
-	    // connect one of the unconnected nodes to ground with a big resistor, then try again
-	    for (i = 0; i != nodeList.size(); i++)
-		if (!closure[i] && !getCircuitNode(i).internal) {
-		    unconnectedNodes.add(i);
-		    console("node " + i + " unconnected");
-//		    stampResistor(0, i, 1e8);   // do this later in connectUnconnectedNodes()
-		    closure[i] = true;
-		    changed = true;
-		    break;
-		}
-	}
-    }
-    
-    // take list of unconnected nodes, which we identified earlier, and connect them to ground
-    // with a big resistor.  otherwise we will get matrix errors.  The resistor has to be big,
-    // otherwise circuits like 555 Square Wave will break
-    void connectUnconnectedNodes() {
-	int i;
-	for (i = 0; i != unconnectedNodes.size(); i++) {
-	    int n = unconnectedNodes.get(i);
-	    stampResistor(0, n, 1e8);
-	}
-    }
-    
-    boolean validateCircuit() {
-	int i, j;
-	
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    // look for inductors with no current path
-	    if (ce instanceof InductorElm) {
-		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
-						    ce.getNode(1));
-		if (!fpi.findPath(ce.getNode(0))) {
-//		    console(ce + " no path");
-		    ce.reset();
-		}
-	    }
-	    // look for current sources with no current path
-	    if (ce instanceof CurrentElm) {
-		CurrentElm cur = (CurrentElm) ce;
-		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
-						    ce.getNode(1));
-		cur.setBroken(!fpi.findPath(ce.getNode(0)));
-	    }
-	    if (ce instanceof VCCSElm) {
-		VCCSElm cur = (VCCSElm) ce;
-		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
-						    cur.getOutputNode(0));
-		if (cur.hasCurrentOutput() && !fpi.findPath(cur.getOutputNode(1))) {
-		    cur.broken = true;
-		} else
-		    cur.broken = false;
-	    }
-	    
-	    // look for voltage source or wire loops.  we do this for voltage sources
-	    if (ce.getPostCount() == 2) {
-		if (ce instanceof VoltageElm) {
-		    FindPathInfo fpi = new FindPathInfo(FindPathInfo.VOLTAGE, ce,
-						    ce.getNode(1));
-		    if (fpi.findPath(ce.getNode(0))) {
-			stop("Voltage source/wire loop with no resistance!", ce);
-			return false;
-		    }
-		}
-	    }
-
-	    // look for path from rail to ground
-	    if (ce instanceof RailElm || ce instanceof LogicInputElm) {
-		FindPathInfo fpi = new FindPathInfo(FindPathInfo.VOLTAGE, ce, ce.getNode(0));
-		if (fpi.findPath(0)) {
-		    stop("Path to ground with no resistance!", ce);
-		    return false;
-		}
-	    }
-	    
-	    // look for shorted caps, or caps w/ voltage but no R
-	    if (ce instanceof CapacitorElm) {
-		FindPathInfo fpi = new FindPathInfo(FindPathInfo.SHORT, ce,
-						    ce.getNode(1));
-		if (fpi.findPath(ce.getNode(0))) {
-		    console(ce + " shorted");
-		    ((CapacitorElm) ce).shorted();
-		} else {
-		    // a capacitor loop used to cause a matrix error. but we changed the capacitor model
-		    // so it works fine now. The only issue is if a capacitor is added in parallel with
-		    // another capacitor with a nonzero voltage; in that case we will get oscillation unless
-		    // we reset both capacitors to have the same voltage. Rather than check for that, we just
-		    // give an error.
-		    fpi = new FindPathInfo(FindPathInfo.CAP_V, ce, ce.getNode(1));
-		    if (fpi.findPath(ce.getNode(0))) {
-			stop("Capacitor loop with no resistance!", ce);
-			return false;
-		    }
-		}
-	    }
-	}
-	return true;
-    }
-    
     // analyze the circuit when something changes, so it can be simulated
     void analyzeCircuit() {
-	stopMessage = null;
+	int i;
 	stopElm = null;
 	if (elmList.isEmpty()) {
 	    postDrawList = new Vector<Point>();
 	    badConnectionList = new Vector<Point>();
-	    return;
 	}
-	int i, j;
-	nodeList = new Vector<CircuitNode>();
-	postCountMap = new HashMap<Point,Integer>();
-
-	calculateWireClosure();
-	setGroundNode();
-
-	// allocate nodes and voltage sources
-	makeNodeList();
-	
+	super.analyzeCircuit();
+	if (elmList.isEmpty())
+	    return;
 	makePostDrawList();
-	if (!calcWireInfo())
+	if (stopMessage != null)
 	    return;
-	nodeMap = null; // done with this
-	
-	int vscount = 0;
-	circuitNonLinear = false;
-
-	// determine if circuit is nonlinear.  also set voltage sources
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    if (ce.nonLinear())
-		circuitNonLinear = true;
-	    int ivs = ce.getVoltageSourceCount();
-	    for (j = 0; j != ivs; j++) {
-		voltageSources[vscount] = ce;
-		ce.setVoltageSource(j, vscount++);
-	    }
-	}
-	voltageSourceCount = vscount;
 
 	// show resistance in voltage sources if there's only one.
 	// can't use voltageSourceCount here since that counts internal voltage sources, like the one in GroundElm
@@ -2602,216 +2181,50 @@ MouseOutHandler, MouseWheelHandler {
 		    gotVoltageSource = true;
 	    }
 	}
-
-	findUnconnectedNodes();
-	if (!validateCircuit())
-	    return;
-	
-	nodesWithGroundConnectionCount = nodesWithGroundConnection.size();
-	// only need this for validation
-	nodesWithGroundConnection = null;
-	
-	timeStep = maxTimeStep;
-	needsStamp = true;
 	
 	callAnalyzeHook();
     }
 
-    // stamp the matrix, meaning populate the matrix as required to simulate the circuit (for all linear elements, at least)
     void stampCircuit() {
 	int i;
-	int matrixSize = nodeList.size()-1 + voltageSourceCount;
-	circuitMatrix = new double[matrixSize][matrixSize];
-	circuitRightSide = new double[matrixSize];
-	nodeVoltages = new double[nodeList.size()-1];
-	if (lastNodeVoltages == null || lastNodeVoltages.length != nodeVoltages.length)
-	    lastNodeVoltages = new double[nodeList.size()-1];
-	origMatrix = new double[matrixSize][matrixSize];
-	origRightSide = new double[matrixSize];
-	circuitMatrixSize = circuitMatrixFullSize = matrixSize;
-	circuitRowInfo = new RowInfo[matrixSize];
-	circuitPermute = new int[matrixSize];
-	for (i = 0; i != matrixSize; i++)
-	    circuitRowInfo[i] = new RowInfo();
-	circuitNeedsMap = false;
-	
-	connectUnconnectedNodes();
-
-	// stamp linear circuit elements
-	for (i = 0; i != elmList.size(); i++) {
-	    CircuitElm ce = getElm(i);
-	    ce.setParentList(elmList);
-	    ce.stamp();
-	}
-
-	if (!simplifyMatrix(matrixSize))
-	    return;
-	
-	// check if we called stop()
+	super.stampCircuit();
 	if (circuitMatrix == null)
 	    return;
 	
-	// if a matrix is linear, we can do the lu_factor here instead of
-	// needing to do it every frame
-	if (!circuitNonLinear) {
-	    if (!lu_factor(circuitMatrix, circuitMatrixSize, circuitPermute)) {
-		stop("Singular matrix!", null);
-		return;
-	    }
-	}
-	
-	// copy elmList to an array to avoid a bunch of calls to canCast() when doing simulation
-	elmArr = new CircuitElm[elmList.size()];
+	// copy ScopeElms to an array to avoid a second pass over entire list of elms during simulation
 	int scopeElmCount = 0;
-	for (i = 0; i != elmList.size(); i++) {
-	    elmArr[i] = elmList.get(i);
+	for (i = 0; i != elmArr.length; i++)
 	    if (elmArr[i] instanceof ScopeElm)
 		scopeElmCount++;
-	}
-	
-	// copy ScopeElms to an array to avoid a second pass over entire list of elms during simulation
 	scopeElmArr = new ScopeElm[scopeElmCount];
 	int j = 0;
-	for (i = 0; i != elmList.size(); i++) {
+	for (i = 0; i != elmArr.length; i++) {
 	    if (elmArr[i] instanceof ScopeElm)
 		scopeElmArr[j++] = (ScopeElm) elmArr[i];
-	}	
-
-	needsStamp = false;
-    }
-
-    // simplify the matrix; this speeds things up quite a bit, especially for digital circuits.
-    // or at least it did before we added wire removal
-    boolean simplifyMatrix(int matrixSize) {
-	int i, j;
-	for (i = 0; i != matrixSize; i++) {
-	    int qp = -1;
-	    double qv = 0;
-	    RowInfo re = circuitRowInfo[i];
-	    /*System.out.println("row " + i + " " + re.lsChanges + " " + re.rsChanges + " " +
-			       re.dropRow);*/
-	    
-//	    if (qp != -100) continue;   // uncomment this line to disable matrix simplification for debugging purposes
-	    
-	    if (re.lsChanges || re.dropRow || re.rsChanges)
-		continue;
-	    double rsadd = 0;
-
-	    // see if this row can be removed
-	    for (j = 0; j != matrixSize; j++) {
-		double q = circuitMatrix[i][j];
-		if (circuitRowInfo[j].type == RowInfo.ROW_CONST) {
-		    // keep a running total of const values that have been
-		    // removed already
-		    rsadd -= circuitRowInfo[j].value*q;
-		    continue;
-		}
-		// ignore zeroes
-		if (q == 0)
-		    continue;
-		// keep track of first nonzero element that is not ROW_CONST
-		if (qp == -1) {
-		    qp = j;
-		    qv = q;
-		    continue;
-		}
-		// more than one nonzero element?  give up
-		break;
-	    }
-	    if (j == matrixSize) {
-		if (qp == -1) {
-		    // probably a singular matrix, try disabling matrix simplification above to check this
-		    stop("Matrix error", null);
-		    return false;
-		}
-		RowInfo elt = circuitRowInfo[qp];
-		// we found a row with only one nonzero nonconst entry; that value
-		// is a constant
-		if (elt.type != RowInfo.ROW_NORMAL) {
-		    System.out.println("type already " + elt.type + " for " + qp + "!");
-		    continue;
-		}
-		elt.type = RowInfo.ROW_CONST;
-//		console("ROW_CONST " + i + " " + rsadd);
-		elt.value = (circuitRightSide[i]+rsadd)/qv;
-		circuitRowInfo[i].dropRow = true;
-		// find first row that referenced the element we just deleted
-		for (j = 0; j != i; j++)
-		    if (circuitMatrix[j][qp] != 0)
-			break;
-		// start over just before that
-		i = j-1;
-	    }
 	}
-	//System.out.println("ac7");
-
-	// find size of new matrix
-	int nn = 0;
-	for (i = 0; i != matrixSize; i++) {
-	    RowInfo elt = circuitRowInfo[i];
-	    if (elt.type == RowInfo.ROW_NORMAL) {
-		elt.mapCol = nn++;
-		//System.out.println("col " + i + " maps to " + elt.mapCol);
-		continue;
-	    }
-	    if (elt.type == RowInfo.ROW_CONST)
-		elt.mapCol = -1;
-	}
-
-	// make the new, simplified matrix
-	int newsize = nn;
-	double newmatx[][] = new double[newsize][newsize];
-	double newrs  []   = new double[newsize];
-	int ii = 0;
-	for (i = 0; i != matrixSize; i++) {
-	    RowInfo rri = circuitRowInfo[i];
-	    if (rri.dropRow) {
-		rri.mapRow = -1;
-		continue;
-	    }
-	    newrs[ii] = circuitRightSide[i];
-	    rri.mapRow = ii;
-	    //System.out.println("Row " + i + " maps to " + ii);
-	    for (j = 0; j != matrixSize; j++) {
-		RowInfo ri = circuitRowInfo[j];
-		if (ri.type == RowInfo.ROW_CONST)
-		    newrs[ii] -= ri.value*circuitMatrix[i][j];
-		else
-		    newmatx[ii][ri.mapCol] += circuitMatrix[i][j];
-	    }
-	    ii++;
-	}
-
-//	console("old size = " + matrixSize + " new size = " + newsize);
-	
-	circuitMatrix = newmatx;
-	circuitRightSide = newrs;
-	matrixSize = circuitMatrixSize = newsize;
-	for (i = 0; i != matrixSize; i++)
-	    origRightSide[i] = circuitRightSide[i];
-	for (i = 0; i != matrixSize; i++)
-	    for (j = 0; j != matrixSize; j++)
-		origMatrix[i][j] = circuitMatrix[i][j];
-	circuitNeedsMap = true;
-	return true;
     }
-    
+
     // make list of posts we need to draw.  posts shared by 2 elements should be hidden, all
     // others should be drawn.  We can't use the node list for this purpose anymore because wires
     // have the same node number at both ends.
     void makePostDrawList() {
 	postDrawList = new Vector<Point>();
 	badConnectionList = new Vector<Point>();
-	for (Map.Entry<Point, Integer> entry : postCountMap.entrySet()) {
-	    if (entry.getValue() != 2)
-		postDrawList.add(entry.getKey());
+	int p;
+	for (p = 0; p != postMap.count; p++) {
+	    int count = postMap.postCount[p];
+	    // points left over from elements that were removed
+	    if (count == 0)
+		continue;
+	    Point cn = new Point(postMap.xs[p], postMap.ys[p]);
+	    if (count != 2)
+		postDrawList.add(cn);
 	    
 	    // look for bad connections, posts not connected to other elements which intersect
 	    // other elements' bounding boxes
-	    if (entry.getValue() == 1) {
+	    if (count == 1) {
 		int j;
 		boolean bad = false;
-		Point cn = entry.getKey();
 		for (j = 0; j != elmList.size() && !bad; j++) {
 		    CircuitElm ce = getElm(j);
 		    if ( ce instanceof GraphicElm )
@@ -2832,248 +2245,25 @@ MouseOutHandler, MouseWheelHandler {
 		    badConnectionList.add(cn);
 	    }
 	}
-	postCountMap = null;
-    }
-
-    class FindPathInfo {
-	static final int INDUCT  = 1;
-	static final int VOLTAGE = 2;
-	static final int SHORT   = 3;
-	static final int CAP_V   = 4;
-	boolean visited[];
-	int dest;
-	CircuitElm firstElm;
-	int type;
-
-	// State object to help find loops in circuit subject to various conditions (depending on type_)
-	// elm_ = source and destination element.  dest_ = destination node.
-	FindPathInfo(int type_, CircuitElm elm_, int dest_) {
-	    dest = dest_;
-	    type = type_;
-	    firstElm = elm_;
-	    visited  = new boolean[nodeList.size()];
-	}
-
-	// look through circuit for loop starting at node n1 of firstElm, for a path back to
-	// dest node of firstElm
-	boolean findPath(int n1) {
-	    if (n1 == dest)
-		return true;
-
-	    // depth first search, don't need to revisit already visited nodes!
-	    if (visited[n1])
-		return false;
+    }
 
-	    visited[n1] = true;
-	    CircuitNode cn = getCircuitNode(n1);
-	    int i;
-	    if (cn == null)
-		return false;
-	    for (i = 0; i != cn.links.size(); i++) {
-		CircuitNodeLink cnl = cn.links.get(i);
-		CircuitElm ce = cnl.elm;
-		if (checkElm(n1, ce))
-		    return true;
-	    }
-	    if (n1 == 0) {
-		for (i = 0; i != nodesWithGroundConnection.size(); i++)
-		    if (checkElm(0, nodesWithGroundConnection.get(i)))
-			return true;
-	    }
-	    return false;
-	}
-	
-	boolean checkElm(int n1, CircuitElm ce) {
-		if (ce == firstElm)
-		    return false;
-		if (type == INDUCT) {
-		    // inductors need a path free of current sources
-		    if (ce instanceof CurrentElm)
-			return false;
-		}
-		if (type == VOLTAGE) {
-		    // when checking for voltage loops, we only care about voltage sources/wires/ground
-		    if (!(ce.isWireEquivalent() || ce instanceof VoltageElm || ce instanceof GroundElm))
-			return false;
-		}
-		// when checking for shorts, just check wires
-		if (type == SHORT && !ce.isWireEquivalent())
-		    return false;
-		if (type == CAP_V) {
-		    // checking for capacitor/voltage source loops
-		    if (!(ce.isWireEquivalent() || ce instanceof CapacitorElm || ce instanceof VoltageElm))
-			return false;
-		}
-		if (n1 == 0) {
-		    // look for posts which have a ground connection;
-		    // our path can go through ground
-		    int j;
-		    for (j = 0; j != ce.getConnectionNodeCount(); j++)
-			if (ce.hasGroundConnection(j) && findPath(ce.getConnectionNode(j)))
-			    return true;
-		}
-		int j;
-		for (j = 0; j != ce.getConnectionNodeCount(); j++) {
-		    if (ce.getConnectionNode(j) == n1) {
-			if (ce.hasGroundConnection(j) && findPath(0))
-			    return true;
-			if (type == INDUCT && ce instanceof InductorElm) {
-			    // inductors can use paths with other inductors of matching current
-			    double c = ce.getCurrent();
-			    if (j == 0)
-				c = -c;
-			    if (Math.abs(c-firstElm.getCurrent()) > 1e-10)
-				continue;
-			}
-			int k;
-			for (k = 0; k != ce.getConnectionNodeCount(); k++) {
-			    if (j == k)
-				continue;
-			    if (ce.getConnection(j, k) && findPath(ce.getConnectionNode(k))) {
-				//System.out.println("got findpath " + n1);
-				return true;
-			    }
-			}
-		    }
-		}
-	    return false;
-	}
+    void debugBreak() {
+	debugger();
+    }
+    
+    void log(String s) {
+	console(s);
     }
 
-    void stop(String s, CircuitElm ce) {
+    void stop(String s, SimElm ce) {
 	stopMessage = Locale.LS(s);
 	circuitMatrix = null;  // causes an exception
-	stopElm = ce;
+	stopElm = (CircuitElm) ce;
 	setSimRunning(false);
 	analyzeFlag = false;
 //	cv.repaint();
     }
     
-    // control voltage source vs with voltage from n1 to n2 (must
-    // also call stampVoltageSource())
-    void stampVCVS(int n1, int n2, double coef, int vs) {
-	int vn = nodeList.size()+vs;
-	stampMatrix(vn, n1, coef);
-	stampMatrix(vn, n2, -coef);
-    }
-    
-    // stamp independent voltage source #vs, from n1 to n2, amount v
-    void stampVoltageSource(int n1, int n2, int vs, double v) {
-	int vn = nodeList.size()+vs;
-	stampMatrix(vn, n1, -1);
-	stampMatrix(vn, n2, 1);
-	stampRightSide(vn, v);
-	stampMatrix(n1, vn, 1);
-	stampMatrix(n2, vn, -1);
-    }
-
-    // use this if the amount of voltage is going to be updated in doStep(), by updateVoltageSource()
-    void stampVoltageSource(int n1, int n2, int vs) {
-	int vn = nodeList.size()+vs;
-	stampMatrix(vn, n1, -1);
-	stampMatrix(vn, n2, 1);
-	stampRightSide(vn);
-	stampMatrix(n1, vn, 1);
-	stampMatrix(n2, vn, -1);
-    }
-    
-    // update voltage source in doStep()
-    void updateVoltageSource(int n1, int n2, int vs, double v) {
-	int vn = nodeList.size()+vs;
-	stampRightSide(vn, v);
-    }
-    
-    void stampResistor(int n1, int n2, double r) {
-	double r0 = 1/r;
-	if (Double.isNaN(r0) || Double.isInfinite(r0)) {
-	    System.out.print("bad resistance " + r + " " + r0 + "\n");
-	    int a = 0;
-	    a /= a;
-	}
-	stampMatrix(n1, n1, r0);
-	stampMatrix(n2, n2, r0);
-	stampMatrix(n1, n2, -r0);
-	stampMatrix(n2, n1, -r0);
-    }
-
-    void stampConductance(int n1, int n2, double r0) {
-	stampMatrix(n1, n1, r0);
-	stampMatrix(n2, n2, r0);
-	stampMatrix(n1, n2, -r0);
-	stampMatrix(n2, n1, -r0);
-    }
-
-    // specify that current from cn1 to cn2 is equal to voltage from vn1 to 2, divided by g
-    void stampVCCurrentSource(int cn1, int cn2, int vn1, int vn2, double g) {
-	stampMatrix(cn1, vn1, g);
-	stampMatrix(cn2, vn2, g);
-	stampMatrix(cn1, vn2, -g);
-	stampMatrix(cn2, vn1, -g);
-    }
-
-    void stampCurrentSource(int n1, int n2, double i) {
-	stampRightSide(n1, -i);
-	stampRightSide(n2, i);
-    }
-
-    // stamp a current source from n1 to n2 depending on current through vs
-    void stampCCCS(int n1, int n2, int vs, double gain) {
-	int vn = nodeList.size()+vs;
-	stampMatrix(n1, vn, gain);
-	stampMatrix(n2, vn, -gain);
-    }
-
-    // stamp value x in row i, column j, meaning that a voltage change
-    // of dv in node j will increase the current into node i by x dv.
-    // (Unless i or j is a voltage source node.)
-    void stampMatrix(int i, int j, double x) {
-	if (Double.isInfinite(x))
-	    debugger();
-	if (i > 0 && j > 0) {
-	    if (circuitNeedsMap) {
-		i = circuitRowInfo[i-1].mapRow;
-		RowInfo ri = circuitRowInfo[j-1];
-		if (ri.type == RowInfo.ROW_CONST) {
-		    //System.out.println("Stamping constant " + i + " " + j + " " + x);
-		    circuitRightSide[i] -= x*ri.value;
-		    return;
-		}
-		j = ri.mapCol;
-		//System.out.println("stamping " + i + " " + j + " " + x);
-	    } else {
-		i--;
-		j--;
-	    }
-	    circuitMatrix[i][j] += x;
-	}
-    }
-
-    // stamp value x on the right side of row i, representing an
-    // independent current source flowing into node i
-    void stampRightSide(int i, double x) {
-	if (i > 0) {
-	    if (circuitNeedsMap) {
-		i = circuitRowInfo[i-1].mapRow;
-		//System.out.println("stamping " + i + " " + x);
-	    } else
-		i--;
-	    circuitRightSide[i] += x;
-	}
-    }
-
-    // indicate that the value on the right side of row i changes in doStep()
-    void stampRightSide(int i) {
-	//System.out.println("rschanges true " + (i-1));
-	if (i > 0)
-	    circuitRowInfo[i-1].rsChanges = true;
-    }
-    
-    // indicate that the values on the left side of row i change in doStep()
-    void stampNonLinear(int i) {
-	if (i > 0)
-	    circuitRowInfo[i-1].lsChanges = true;
-    }
-
     double getIterCount() {
     	// IES - remove interaction
 	if (speedBar.getValue() == 0)
@@ -3096,18 +2286,11 @@ MouseOutHandler, MouseWheelHandler {
 	return true;
     }
     
-    boolean converged;
-    int subIterations;
-    
     void runCircuit(boolean didAnalyze) {
 	if (circuitMatrix == null || elmList.size() == 0) {
 	    circuitMatrix = null;
 	    return;
 	}
-	int iter;
-	//int maxIter = getIterCount();
-	boolean debugprint = dumpMatrix;
-	dumpMatrix = false;
 	long steprate = (long) (160*getIterCount());
 	long tm = System.currentTimeMillis();
 	long lit = lastIterTime;
@@ -3126,122 +2309,11 @@ MouseOutHandler, MouseWheelHandler {
 	int timeStepCountAtFrameStart = timeStepCount;
 	
 	// keep track of iterations completed without convergence issues
-	int goodIterations = 100;
-	
-	for (iter = 1; ; iter++) {
-	    if (goodIterations >= 3 && timeStep < maxTimeStep) {
-		// things are going well, double the time step
-		timeStep = Math.min(timeStep*2, maxTimeStep);
-		console("timestep up = " + timeStep + " at " + t);
-		stampCircuit();
-		goodIterations = 0;
-	    }
-	    
-	    int i, j, subiter;
-	    for (i = 0; i != elmArr.length; i++)
-		elmArr[i].startIteration();
-	    steps++;
-	    int subiterCount = (adjustTimeStep && timeStep/2 > minTimeStep) ? 100 : 5000;
-	    for (subiter = 0; subiter != subiterCount; subiter++) {
-		converged = true;
-		subIterations = subiter;
-//		if (t % .030 < .002 && timeStep > 1e-6)  // force nonconvergence for debugging
-//		    converged = false;
-		for (i = 0; i != circuitMatrixSize; i++)
-		    circuitRightSide[i] = origRightSide[i];
-		if (circuitNonLinear) {
-		    for (i = 0; i != circuitMatrixSize; i++)
-			for (j = 0; j != circuitMatrixSize; j++)
-			    circuitMatrix[i][j] = origMatrix[i][j];
-		}
-		for (i = 0; i != elmArr.length; i++)
-		    elmArr[i].doStep();
-		if (stopMessage != null)
-		    return;
-		boolean printit = debugprint;
-		debugprint = false;
-		if (circuitMatrixSize < 8) {
-		    // we only need this for debugging purposes, so skip it for large matrices 
-		    for (j = 0; j != circuitMatrixSize; j++) {
-			for (i = 0; i != circuitMatrixSize; i++) {
-			    double x = circuitMatrix[i][j];
-			    if (Double.isNaN(x) || Double.isInfinite(x)) {
-				stop("nan/infinite matrix!", null);
-				console("circuitMatrix " + i + " " + j + " is " + x);
-				return;
-			    }
-			}
-		    }
-		}
-		if (printit) {
-		    for (j = 0; j != circuitMatrixSize; j++) {
-			String x = "";
-			for (i = 0; i != circuitMatrixSize; i++)
-			    x += circuitMatrix[j][i] + ",";
-			x += "\n";
-			console(x);
-		    }
-		    console("done");
-		}
-		if (circuitNonLinear) {
-		    // stop if converged (elements check for convergence in doStep())
-		    if (converged && subiter > 0)
-			break;
-		    if (!lu_factor(circuitMatrix, circuitMatrixSize,
-				  circuitPermute)) {
-			stop("Singular matrix!", null);
-			return;
-		    }
-		}
-		lu_solve(circuitMatrix, circuitMatrixSize, circuitPermute,
-			 circuitRightSide);
-		applySolvedRightSide(circuitRightSide);
-		if (!circuitNonLinear)
-		    break;
-	    }
-	    if (subiter == subiterCount) {
-		// convergence failed
-		goodIterations = 0;
-		if (adjustTimeStep) {
-		    timeStep /= 2;
-		    console("timestep down to " + timeStep + " at " + t);
-		}
-		if (timeStep < minTimeStep || !adjustTimeStep) {
-		    console("convergence failed after " + subiter + " iterations");
-		    stop("Convergence failed!", null);
-		    break;
-		}
-		// we reduced the timestep.  reset circuit state to the way it was at start of iteration
-		setNodeVoltages(lastNodeVoltages);
-		stampCircuit();
-		continue;
-	    }
-	    if (subiter > 5 || timeStep < maxTimeStep)
-		console("converged after " + subiter + " iterations, timeStep = " + timeStep);
-	    if (subiter < 3)
-		goodIterations++;
-	    else
-		goodIterations = 0;
-	    t += timeStep;
-	    timeStepAccum += timeStep;
-	    if (timeStepAccum >= maxTimeStep) {
-		timeStepAccum -= maxTimeStep;
-		timeStepCount++;
-	    }
-	    for (i = 0; i != elmArr.length; i++)
-		elmArr[i].stepFinished();
-	    if (!delayWireProcessing)
-		calcWireCurrents();
-	    for (i = 0; i != scopeCount; i++)
-	    	scopes[i].timeStep();
-	    for (i=0; i != scopeElmArr.length; i++)
-		scopeElmArr[i].stepScope();
-	    callTimeStepHook();
-	    // save last node voltages so we can restart the next iteration if necessary
-	    for (i = 0; i != lastNodeVoltages.length; i++)
-		lastNodeVoltages[i] = nodeVoltages[i];
-//	    console("set lastrightside at " + t + " " + lastNodeVoltages);
-		
+	goodIterations = 100;
+
+	while (true) {
+	    if (!runTimeStep(delayWireProcessing))
+		break;
 	    tm = System.currentTimeMillis();
 	    lit = tm;
 	    // Check whether enough time has elapsed to perform an *additional* iteration after
@@ -3250,92 +2322,86 @@ MouseOutHandler, MouseWheelHandler {
 		break;
 	    if (!simRunning)
 		break;
-	} // for (iter = 1; ; iter++)
+	}
 	lastIterTime = lit;
 	if (delayWireProcessing)
 	    calcWireCurrents();
 //	System.out.println((System.currentTimeMillis()-lastFrameTime)/(double) iter);
     }
 
-    // set node voltages given right side found by solving matrix
-    void applySolvedRightSide(double rs[]) {
-//	console("setvoltages " + rs);
-	int j;
-	for (j = 0; j != circuitMatrixFullSize; j++) {
-	    RowInfo ri = circuitRowInfo[j];
-	    double res = 0;
-	    if (ri.type == RowInfo.ROW_CONST)
-		res = ri.value;
-	    else
-		res = rs[ri.mapCol];
-	    if (Double.isNaN(res)) {
-		converged = false;
-		break;
-	    }
-	    if (j < nodeList.size()-1) {
-		nodeVoltages[j] = res;
-	    } else {
-		int ji = j-(nodeList.size()-1);
-		voltageSources[ji].setCurrent(ji, res);
-	    }
-	}
-	
-	setNodeVoltages(nodeVoltages);
-    }
+    // the profiler runs its own timed loops on the timesteps it samples
+    ElementProfiler prof;
     
-    // set node voltages in each element given an array of node voltages
-    void setNodeVoltages(double nv[]) {
-	int j, k;
-	for (j = 0; j != nv.length; j++) {
-	    double res = nv[j];
-	    CircuitNode cn = getCircuitNode(j+1);
-	    for (k = 0; k != cn.links.size(); k++) {
-		CircuitNodeLink cnl = cn.links.elementAt(k);
-		cnl.elm.setNodeVoltage(cnl.num, res);
-	    }
-	}
+    void startElementIteration() {
+	prof = (elementProfiler != null && elementProfiler.sampleStep(elmArr)) ? elementProfiler : null;
+	if (prof != null)
+	    prof.startIteration();
+	else
+	    super.startElementIteration();
     }
-    
-    // we removed wires from the matrix to speed things up.  in order to display wire currents,
-    // we need to calculate them now.
-    void calcWireCurrents() {
+
+    void doElementSteps(int subiter) {
+	if (convergenceMonitor.trackElements)
+	    convergenceMonitor.doStep(elmArr, subiter);
+	else if (prof != null)
+	    prof.doStep();
+	else
+	    super.doElementSteps(subiter);
+    }
+
+    void finishElementSteps() {
+	if (prof != null)
+	    prof.stepFinished();
+	else
+	    super.finishElementSteps();
+    }
+
+    void timeStepConverged(int subiter) {
+	perfmon.count(PerfMonitor.COUNT_SUBITERATIONS, subiter+1);
+	convergenceMonitor.addTimeStep(subiter+1);
+    }
+
+    void timeStepFailed(double failedTimeStep, int subiter) {
+	perfmon.count(PerfMonitor.COUNT_SUBITERATIONS, subiter);
+	perfmon.count(PerfMonitor.COUNT_CONVERGENCE_FAILURES, 1);
+	convergenceMonitor.convergenceFailed(t, failedTimeStep, timeStep, subiter);
+    }
+
+    // update wire currents, scopes and hooks after a timestep
+    void finishTimeStep(boolean delayWireProcessing) {
 	int i;
-	
-	// for debugging
-	//for (i = 0; i != wireInfoList.size(); i++)
-	 //   wireInfoList.get(i).wire.setCurrent(-1, 1.23);
-	
-	for (i = 0; i != wireInfoList.size(); i++) {
-	    WireInfo wi = wireInfoList.get(i);
-	    double cur = 0;
-	    int j;
-	    Point p = wi.wire.getPost(wi.post);
-	    for (j = 0; j != wi.neighbors.size(); j++) {
-		CircuitElm ce = wi.neighbors.get(j);
-		int n = ce.getNodeAtPoint(p.x, p.y);
-		cur += ce.getCurrentIntoNode(n);
-	    }
-	    // get correct current polarity
-	    // (LabeledNodes may have wi.post == 1, in which case we flip the current sign)
-	    if (wi.post == 0 || (wi.wire instanceof LabeledNodeElm))
-		wi.wire.setCurrent(-1, cur);
-	    else
-		wi.wire.setCurrent(-1, -cur);
-	}
+	super.finishTimeStep(delayWireProcessing);
+	perfmon.count(PerfMonitor.COUNT_TIMESTEPS, 1);
+	for (i = 0; i != scopeCount; i++)
+	    scopes[i].timeStep();
+	for (i=0; i != scopeElmArr.length; i++)
+	    scopeElmArr[i].stepScope();
+	callTimeStepHook();
     }
     
     int min(int a, int b) { return (a < b) ? a : b; }
     int max(int a, int b) { return (a > b) ? a : b; }
     
+    // skip ahead in time without simulating every timestep.  This only works for linear
+    // circuits with constant or piecewise-constant sources (see LinearFastForward).
+    // Returns false if the circuit isn't supported.
+    boolean fastForward(double duration) {
+	if (analyzeFlag || needsStamp)
+	    return false;
+	if (!new LinearFastForward(this).run(duration))
+	    return false;
+	predictorCount = 0;
+	calcWireCurrents();
+	repaint();
+	return true;
+    }
+    
     public void resetAction(){
     	int i;
     	analyzeFlag = true;
     	if (t == 0)
     	    setSimRunning(true);
-    	t = timeStepAccum = 0;
-    	timeStepCount = 0;
-    	for (i = 0; i != elmList.size(); i++)
-		getElm(i).reset();
+    	resetSimulation();
 	for (i = 0; i != scopeCount; i++)
 		scopes[i].resetGraph(true);
     	repaint();
@@ -3459,6 +2525,14 @@ MouseOutHandler, MouseWheelHandler {
     	    	dialogShowing = new SearchDialog(this);
     	    	dialogShowing.show();
     	}
+    	if (menu=="options" && item=="profile") {
+    	    	dialogShowing = new ElementProfileDialog(this);
+    	    	dialogShowing.show();
+    	}
+    	if (menu=="options" && item=="convergence") {
+    	    	dialogShowing = new ConvergenceDialog(this);
+    	    	dialogShowing.show();
+    	}
     	if (menu=="options" && item=="other")
     		doEdit(new EditOptions(this));
     	if (item=="devtools")
@@ -3875,10 +2949,15 @@ MouseOutHandler, MouseWheelHandler {
 	f |= (showValuesCheckItem.getState()) ? 0 : 16;
 	// 32 = linear scale in afilter
 	f |= adjustTimeStep ? 64 : 0;
+	f |= deviceBypass ? 128 : 0;
+	f |= newtonPredictor ? 256 : 0;
+	f |= lteTimeStep ? 512 : 0;
+	f |= multirate ? 1024 : 0;
+	f |= breakpointTimeStep ? 2048 : 0;
 	String dump = "$ " + f + " " +
 	    maxTimeStep + " " + getIterCount() + " " +
 	    currentBar.getValue() + " " + CircuitElm.voltageRange + " " +
-	    powerBar.getValue() + " " + minTimeStep + "\n";
+	    powerBar.getValue() + " " + minTimeStep + " " + matrixSolverType + "\n";
 	return dump;
     }
     
@@ -4250,7 +3329,7 @@ MouseOutHandler, MouseWheelHandler {
 	voltsCheckItem.setState((flags & 4) == 0);
 	powerCheckItem.setState((flags & 8) == 8);
 	showValuesCheckItem.setState((flags & 16) == 0);
-	adjustTimeStep = (flags & 64) != 0;
+	readOptionFlags(flags);
 	maxTimeStep = timeStep = new Double (st.nextToken()).doubleValue();
 	double sp = new Double(st.nextToken()).doubleValue();
 	int sp2 = (int) (Math.log(10*sp)*24+61.5);
@@ -4264,6 +3343,11 @@ MouseOutHandler, MouseWheelHandler {
 	    minTimeStep = Double.parseDouble(st.nextToken());
 	} catch (Exception e) {
 	}
+	matrixSolverType = SOLVER_AUTO;
+	try {
+	    matrixSolverType = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {
+	}
 	setGrid();
     }
     
@@ -4278,7 +3362,7 @@ MouseOutHandler, MouseWheelHandler {
 		if (!se.getSwitchRect().contains(x, y))
 		    return false;
 		se.toggle();
-		if (se.momentary)
+		if (se.sw.momentary)
 		    heldSwitchElm = se;
 		if (!(se instanceof LogicInputElm))
 		    needAnalyze();
@@ -5668,130 +4752,6 @@ MouseOutHandler, MouseWheelHandler {
     	}
     }
     
-    // factors a matrix into upper and lower triangular matrices by
-    // gaussian elimination.  On entry, a[0..n-1][0..n-1] is the
-    // matrix to be factored.  ipvt[] returns an integer vector of pivot
-    // indices, used in the lu_solve() routine.
-    static boolean lu_factor(double a[][], int n, int ipvt[]) {
-	int i,j,k;
-	
-	// check for a possible singular matrix by scanning for rows that
-	// are all zeroes
-	for (i = 0; i != n; i++) { 
-	    boolean row_all_zeros = true;
-	    for (j = 0; j != n; j++) {
-		if (a[i][j] != 0) {
-		    row_all_zeros = false;
-		    break;
-		}
-	    }
-	    // if all zeros, it's a singular matrix
-	    if (row_all_zeros)
-		return false;
-	}
-	
-        // use Crout's method; loop through the columns
-	for (j = 0; j != n; j++) {
-	    
-	    // calculate upper triangular elements for this column
-	    for (i = 0; i != j; i++) {
-		double q = a[i][j];
-		for (k = 0; k != i; k++)
-		    q -= a[i][k]*a[k][j];
-		a[i][j] = q;
-	    }
-
-	    // calculate lower triangular elements for this column
-	    double largest = 0;
-	    int largestRow = -1;
-	    for (i = j; i != n; i++) {
-		double q = a[i][j];
-		for (k = 0; k != j; k++)
-		    q -= a[i][k]*a[k][j];
-		a[i][j] = q;
-		double x = Math.abs(q);
-		if (x >= largest) {
-		    largest = x;
-		    largestRow = i;
-		}
-	    }
-	    
-	    // pivoting
-	    if (j != largestRow) {
-		if (largestRow == -1) {
-		    console("largestRow == -1");
-		    return false;
-		}
-		double x;
-		for (k = 0; k != n; k++) {
-		    x = a[largestRow][k];
-		    a[largestRow][k] = a[j][k];
-		    a[j][k] = x;
-		}
-	    }
-
-	    // keep track of row interchanges
-	    ipvt[j] = largestRow;
-
-	    // check for zeroes; if we find one, it's a singular matrix.
-	    // we used to avoid them, but that caused weird bugs.  For example,
-	    // two inverters with outputs connected together should be flagged
-	    // as a singular matrix, but it was allowed (with weird currents)
-	    if (a[j][j] == 0.0) {
-		console("didn't avoid zero");
-//		a[j][j]=1e-18;
-		return false;
-	    }
-
-	    if (j != n-1) {
-		double mult = 1.0/a[j][j];
-		for (i = j+1; i != n; i++)
-		    a[i][j] *= mult;
-	    }
-	}
-	return true;
-    }
-
-    // Solves the set of n linear equations using a LU factorization
-    // previously performed by lu_factor.  On input, b[0..n-1] is the right
-    // hand side of the equations, and on output, contains the solution.
-    static void lu_solve(double a[][], int n, int ipvt[], double b[]) {
-	int i;
-
-	// find first nonzero b element
-	for (i = 0; i != n; i++) {
-	    int row = ipvt[i];
-
-	    double swap = b[row];
-	    b[row] = b[i];
-	    b[i] = swap;
-	    if (swap != 0)
-		break;
-	}
-	
-	int bi = i++;
-	for (; i < n; i++) {
-	    int row = ipvt[i];
-	    int j;
-	    double tot = b[row];
-	    
-	    b[row] = b[i];
-	    // forward substitution using the lower triangular matrix
-	    for (j = bi; j < i; j++)
-		tot -= a[i][j]*b[j];
-	    b[i] = tot;
-	}
-	for (i = n-1; i >= 0; i--) {
-	    double tot = b[i];
-	    
-	    // back-substitution using the upper triangular matrix
-	    int j;
-	    for (j = i+1; j != n; j++)
-		tot -= a[i][j]*b[j];
-	    b[i] = tot/a[i][i];
-	}
-    }
-
     
     void createNewLoadFile() {
     	// This is a hack to fix what IMHO is a bug in the <INPUT FILE element
@@ -6271,9 +5231,9 @@ MouseOutHandler, MouseWheelHandler {
 	    if (cs=="WireElm") 
 		continue;
 	    if (cs=="LabeledNodeElm")
-		cs = cs+" "+((LabeledNodeElm)e).text;
+		cs = cs+" "+((LabeledNodeElm)e).label.text;
 	    if (cs=="TransistorElm") {
-		if (((TransistorElm)e).pnp == -1)
+		if (((TransistorElm)e).trans.pnp == -1)
 		    cs= "PTransistorElm";
 		else
 		    cs = "NTransistorElm";
@@ -6476,7 +5436,7 @@ MouseOutHandler, MouseWheelHandler {
 		    continue;
 		if (ce instanceof LabeledNodeElm) {
 		    LabeledNodeElm lne = (LabeledNodeElm) ce;
-		    String label = lne.text;
+		    String label = lne.label.text;
 		    if (lne.isInternal())
 			continue;
 		    
@@ -6503,7 +5463,7 @@ MouseOutHandler, MouseWheelHandler {
             for (int side = 0; side < sideLabels.length; side++) {
                 for (int pos = 0; pos < sideLabels[side].size(); pos++) {
                     LabeledNodeElm lne = sideLabels[side].get(pos);
-                    ExtListEntry ent = new ExtListEntry(lne.text, lne.getNode(0), pos, side);
+                    ExtListEntry ent = new ExtListEntry(lne.label.text,lne.getNode(0), pos, side);
                     extList.add(ent);
                 }
             }
@@ -6573,37 +5533,6 @@ MouseOutHandler, MouseWheelHandler {
 	    return ccm;
 	}
 	
-	static void invertMatrix(double a[][], int n) {
-	    int ipvt[] = new int[n];
-	    lu_factor(a, n, ipvt);
-	    int i, j;
-	    double b[] = new double[n];
-	    double inva[][] = new double[n][n];
-	    
-	    // solve for each column of identity matrix
-	    for (i = 0; i != n; i++) {
-		for (j = 0; j != n; j++)
-		    b[j] = 0;
-		b[i] = 1;
-		lu_solve(a, n, ipvt, b);
-		for (j = 0; j != n; j++)
-		    inva[j][i] = b[j];
-	    }
-	    
-	    // return in original matrix
-	    for (i = 0; i != n; i++)
-		for (j = 0; j != n; j++)
-		    a[i][j] = inva[i][j];
-	}
-	
-	double getLabeledNodeVoltage(String name) {
-	    Integer node = LabeledNodeElm.getByName(name);
-	    if (node == null || node == 0)
-		return 0;
-	    // subtract one because ground is not included in nodeVoltages[]
-	    return nodeVoltages[node.intValue()-1];
-	}
-	
 	void setExtVoltage(String name, double v) {
 	    int i;
 	    for (i = 0; i != elmList.size(); i++) {
@@ -6629,6 +5558,11 @@ MouseOutHandler, MouseWheelHandler {
 	    return arr;
 	}
 	
+	void setConvergenceTracking(boolean on) {
+	    convergenceMonitor.trackElements = on;
+	    trackConvergenceCheckItem.setState(on);
+	}
+
 	native void setupJSInterface() /*-{
 	    var that = this;
 	    $wnd.CircuitJS1 = {
@@ -6639,13 +5573,20 @@ MouseOutHandler, MouseWheelHandler {
 	        getMaxTimeStep: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::maxTimeStep; } ),
 	        setMaxTimeStep: $entry(function(ts) { that.@com.lushprojects.circuitjs1.client.CirSim::maxTimeStep = 
                                                       that.@com.lushprojects.circuitjs1.client.CirSim::timeStep = ts; } ),
+	        fastForward: $entry(function(t) { return that.@com.lushprojects.circuitjs1.client.CirSim::fastForward(D)(t); } ),
 	        isRunning: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::simIsRunning()(); } ),
 	        getNodeVoltage: $entry(function(n) { return that.@com.lushprojects.circuitjs1.client.CirSim::getLabeledNodeVoltage(Ljava/lang/String;)(n); } ),
 	        setExtVoltage: $entry(function(n, v) { that.@com.lushprojects.circuitjs1.client.CirSim::setExtVoltage(Ljava/lang/String;D)(n, v); } ),
 	        getElements: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::getJSElements()(); } ),
 	        getCircuitAsSVG: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::doExportAsSVGFromAPI()(); } ),
 	        exportCircuit: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::dumpCircuit()(); } ),
-	        importCircuit: $entry(function(circuit, subcircuitsOnly) { return that.@com.lushprojects.circuitjs1.client.CirSim::importCircuitFromText(Ljava/lang/String;Z)(circuit, subcircuitsOnly); })
+	        importCircuit: $entry(function(circuit, subcircuitsOnly) { return that.@com.lushprojects.circuitjs1.client.CirSim::importCircuitFromText(Ljava/lang/String;Z)(circuit, subcircuitsOnly); }),
+	        getPerfStats: $entry(function() { return JSON.parse(that.@com.lushprojects.circuitjs1.client.CirSim::perfmon.@com.lushprojects.circuitjs1.client.util.PerfMonitor::getStatsJSON()()); } ),
+	        getPerfTrace: $entry(function() { return that.@com.lushprojects.circuitjs1.client.CirSim::perfmon.@com.lushprojects.circuitjs1.client.util.PerfMonitor::getTraceJSON()(); } ),
+	        resetPerfStats: $entry(function() { that.@com.lushprojects.circuitjs1.client.CirSim::perfmon.@com.lushprojects.circuitjs1.client.util.PerfMonitor::reset()(); } ),
+	        getConvergenceStats: $entry(function(max) { return JSON.parse(that.@com.lushprojects.circuitjs1.client.CirSim::convergenceMonitor.@com.lushprojects.circuitjs1.client.ConvergenceMonitor::getJSON(I)(max || 50)); } ),
+	        resetConvergenceStats: $entry(function() { that.@com.lushprojects.circuitjs1.client.CirSim::convergenceMonitor.@com.lushprojects.circuitjs1.client.ConvergenceMonitor::reset()(); } ),
+	        setConvergenceTracking: $entry(function(on) { that.@com.lushprojects.circuitjs1.client.CirSim::setConvergenceTracking(Z)(on); } )
 	    };
 	    var hook = $wnd.oncircuitjsloaded;
 	    if (hook)
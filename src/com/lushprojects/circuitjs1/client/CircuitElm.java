@@ -19,8 +19,6 @@
 
 package com.lushprojects.circuitjs1.client;
 
-import java.util.Vector;
-
 import com.google.gwt.canvas.dom.client.CanvasGradient;
 import com.google.gwt.canvas.dom.client.Context2d;
 import com.google.gwt.canvas.dom.client.Context2d.LineCap;
@@ -32,7 +30,7 @@ import com.google.gwt.user.client.Random;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 // circuit element class
-public abstract class CircuitElm implements Editable {
+public abstract class CircuitElm extends SimElm implements Editable {
     static double voltageRange = 5;
     static int colorScaleCount = 201; // odd so ground = gray 
     static Color colorScale[];
@@ -57,34 +55,12 @@ public abstract class CircuitElm implements Editable {
     
     static int decimalDigits, shortDecimalDigits;
  
-    // initial point where user created element.  For simple two-terminal elements, this is the first node/post.
-    int x, y;
-    
-    // point to which user dragged out element.  For simple two-terminal elements, this is the second node/post
-    int x2, y2;
-    
-    int flags, nodes[], voltSource;
-    
-    // length along x and y axes, and sign of difference
-    int dx, dy, dsign;
-
     int lastHandleGrabbed=-1;
     
-    // length of element
-    double dn;
-    
-    double dpx1, dpy1;
-    
-    // (x,y) and (x2,y2) as Point objects
-    Point point1, point2;
-    
     // lead points (ends of wire stubs for simple two-terminal elements)  
     Point lead1, lead2;
     
-    // voltages at each node
-    double volts[];
-    
-    double current, curcount;
+    double curcount;
     Rectangle boundingBox;
     
     // if subclasses set this to true, element will be horizontal or vertical only 
@@ -92,8 +68,6 @@ public abstract class CircuitElm implements Editable {
     
     public boolean selected;
     
-    boolean hasWireInfo; // used in calcWireInfo()
-    
 //    abstract int getDumpType();
     int getDumpType() {
 	
@@ -198,7 +172,7 @@ public abstract class CircuitElm implements Editable {
     
     // create element between xa,ya and xb,yb from undump
     CircuitElm(int xa, int ya, int xb, int yb, int f) {
-	x = xa; y = ya; x2 = xb; y2 = yb; flags = f;
+	super(xa, ya, xb, yb, f);
 	allocNodes();
 	initBoundingBox();
     }
@@ -209,16 +183,6 @@ public abstract class CircuitElm implements Editable {
 			      abs(x2-x)+1, abs(y2-y)+1);
     }
     
-    // allocate nodes/volts arrays we need
-    void allocNodes() {
-	int n = getPostCount() + getInternalNodeCount();
-	// preserve voltages if possible
-	if (nodes == null || nodes.length != n) {
-	    nodes = new int[n];
-	    volts = new double[n];
-	}
-    }
-    
     // dump component state for export/undo
     String dump() {
 	int t = getDumpType();
@@ -228,58 +192,19 @@ public abstract class CircuitElm implements Editable {
     
     // handle reset button
     void reset() {
-	int i;
-	for (i = 0; i != getPostCount()+getInternalNodeCount(); i++)
-	    volts[i] = 0;
+	super.reset();
 	curcount = 0;
     }
     void draw(Graphics g) {}
     
-    // set current for voltage source vn to c.  vn will be the same value as in a previous call to setVoltageSource(n, vn) 
-    void setCurrent(int vn, double c) { current = c; }
-    
-    // get current for one- or two-terminal elements
-    double getCurrent() { return current; }
-
-    void setParentList(Vector<CircuitElm> elmList) {}
-    
-    // stamp matrix values for linear elements.
-    // for non-linear elements, use this to stamp values that don't change each iteration, and call stampRightSide() or stampNonLinear() as needed
-    void stamp() {}
-    
-    // stamp matrix values for non-linear elements
-    void doStep() {}
-    
     void delete() {
 	if (mouseElmRef==this)
 	    mouseElmRef=null;
 	sim.deleteSliders(this);
     }
-    void startIteration() {}
-    
     // get voltage of x'th node
     double getPostVoltage(int x) { return volts[x]; }
     
-    // set voltage of x'th node, called by simulator logic
-    void setNodeVoltage(int n, double c) {
-	volts[n] = c;
-	calculateCurrent();
-    }
-    
-    // calculate current in response to node voltages changing
-    void calculateCurrent() {}
-    
-    // calculate post locations and other convenience values used for drawing.  Called when element is moved 
-    void setPoints() {
-    	dx = x2-x; dy = y2-y;
-    	dn = Math.sqrt(dx*dx+dy*dy);
-    	dpx1 = dy/dn;
-    	dpy1 = -dx/dn;
-    	dsign = (dy == 0) ? sign(dx) : sign(dy);
-    	point1 = new Point(x , y );
-    	point2 = new Point(x2, y2);
-    }
-    
     // calculate lead points for an element of length len.  Handy for simple two-terminal elements.
     // Posts are where the user connects wires; leads are ends of wire stubs drawn inside the element.
     void calcLeads(int len) {
@@ -292,71 +217,6 @@ public abstract class CircuitElm implements Editable {
 	lead2 = interpPoint(point1, point2, (dn+len)/(2*dn));
     }
 
-    // calculate point fraction f between a and b, linearly interpolated
-    Point interpPoint(Point a, Point b, double f) {
-	Point p = new Point();
-	interpPoint(a, b, p, f);
-	return p;
-    }
-    
-    // calculate point fraction f between a and b, linearly interpolated, return it in c
-    void interpPoint(Point a, Point b, Point c, double f) {
-	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+.48);
-	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+.48);
-    }
-    
-    /**
-     * Returns a point fraction f along the line between a and b and offset perpendicular by g
-     * @param a 1st Point
-     * @param b 2nd Point
-     * @param f Fraction along line
-     * @param g Fraction perpendicular to line
-     * Returns interpolated point in c
-     */
-    void interpPoint(Point a, Point b, Point c, double f, double g) {
-	int gx = b.y-a.y;
-	int gy = a.x-b.x;
-	g /= Math.sqrt(gx*gx+gy*gy);
-	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+g*gx+.48);
-	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+g*gy+.48);
-    }
-    
-    /**
-     * Returns a point fraction f along the line between a and b and offset perpendicular by g
-     * @param a 1st Point
-     * @param b 2nd Point
-     * @param f Fraction along line
-     * @param g Fraction perpendicular to line
-     * @return Interpolated point
-     */
-    Point interpPoint(Point a, Point b, double f, double g) {
-	Point p = new Point();
-	interpPoint(a, b, p, f, g);
-	return p;
-    }
-    
-    
-    /**
-     * Calculates two points fraction f along the line between a and b and offest perpendicular by +/-g
-     * @param a 1st point (In)
-     * @param b 2nd point (In)
-     * @param c 1st point (Out)
-     * @param d 2nd point (Out)
-     * @param f Fraction along line
-     * @param g Fraction perpendicular to line
-     */
-    void interpPoint2(Point a, Point b, Point c, Point d, double f, double g) {
-//	int xpd = b.x-a.x;
-//	int ypd = b.y-a.y;
-	int gx = b.y-a.y;
-	int gy = a.x-b.x;
-	g /= Math.sqrt(gx*gx+gy*gy);
-	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+g*gx+.48);
-	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+g*gy+.48);
-	d.x = (int) Math.floor(a.x*(1-f)+b.x*f-g*gx+.48);
-	d.y = (int) Math.floor(a.y*(1-f)+b.y*f-g*gy+.48);
-    }
-    
     void draw2Leads(Graphics g) {
 	// draw first lead
 	setVoltageColor(g, volts[0]);
@@ -366,12 +226,6 @@ public abstract class CircuitElm implements Editable {
 	setVoltageColor(g, volts[1]);
 	drawThickLine(g, lead2, point2);
     }
-    Point [] newPointArray(int n) {
-	Point a[] = new Point[n];
-	while (n > 0)
-	    a[--n] = new Point();
-	return a;
-    }
 
     final int CURRENT_TOO_FAST = 100;
 
@@ -575,52 +429,6 @@ public abstract class CircuitElm implements Editable {
     	return lastHandleGrabbed;
     }
     
-    // number of voltage sources this element needs 
-    int getVoltageSourceCount() { return 0; }
-    
-    // number of internal nodes (nodes not visible in UI that are needed for implementation)
-    int getInternalNodeCount() { return 0; }
-    
-    // notify this element that its pth node is n.  This value n can be passed to stampMatrix()
-    void setNode(int p, int n) { nodes[p] = n; }
-    
-    // notify this element that its nth voltage source is v.  This value v can be passed to stampVoltageSource(), etc and will be passed back in calls to setCurrent()
-    void setVoltageSource(int n, int v) {
-	// default implementation only makes sense for subclasses with one voltage source.  If we have 0 this isn't used, if we have >1 this won't work 
-	voltSource = v;
-    }
-    
-//    int getVoltageSource() { return voltSource; } // Never used except for debug code which is commented out
-    
-    double getVoltageDiff() {
-	return volts[0] - volts[1];
-    }
-    boolean nonLinear() { return false; }
-    int getPostCount() { return 2; }
-    
-    // get (global) node number of nth node
-    int getNode(int n) { return nodes[n]; }
-    
-    // get position of nth node
-    Point getPost(int n) {
-	return (n == 0) ? point1 : (n == 1) ? point2 : null;
-    }
-    
-    // return post we're connected to (for wires, so we can optimize them out in calculateWireClosure())
-    Point getConnectedPost() {
-	return point2;
-    }
-    
-    int getNodeAtPoint(int xp, int yp) {
-	int i;
-	for (i = 0; i != getPostCount(); i++) {
-	    Point p = getPost(i);
-	    if (p.x == xp && p.y == yp)
-		return i;
-	}
-	return 0;
-    }
-    
     /*
     void drawPost(Graphics g, int x0, int y0, int n) {
 	if (sim.dragElm == null && !needsHighlight() &&
@@ -928,7 +736,7 @@ public abstract class CircuitElm implements Editable {
 
     // update dot positions (curcount) for drawing current (simple case for single current)
     void updateDotCount() {
-	curcount = updateDotCount(current, curcount);
+	curcount = updateDotCount(getCurrent(), curcount);
     }
 
     // update dot positions (curcount) for drawing current (general case for multiple currents)
@@ -1027,7 +835,7 @@ public abstract class CircuitElm implements Editable {
 	int rg = (int) (w*255);
 	g.setColor(new Color(rg, rg, rg));
     }
-    double getPower() { return getVoltageDiff()*current; }
+    double getPower() { return getVoltageDiff()*getCurrent(); }
     double getScopeValue(int x) {
 	return (x == Scope.VAL_CURRENT) ? getCurrent() :
 	    (x == Scope.VAL_POWER) ? getPower() : getVoltageDiff();
@@ -1039,26 +847,6 @@ public abstract class CircuitElm implements Editable {
     public EditInfo getEditInfo(int n) { return null; }
     public void setEditValue(int n, EditInfo ei) {}
     
-    // get number of nodes that can be retrieved by getConnectionNode()
-    int getConnectionNodeCount() { return getPostCount(); }
-    
-    // get nodes that can be passed to getConnection(), to test if this element connects
-    // those two nodes; this is the same as getNode() for all but labeled nodes.
-    int getConnectionNode(int n) { return getNode(n); }
-    
-    // are n1 and n2 connected by this element?  this is used to determine
-    // unconnected nodes, and look for loops
-    boolean getConnection(int n1, int n2) { return true; }
-    
-    // is n1 connected to ground somehow?
-    boolean hasGroundConnection(int n1) { return false; }
-    
-    // is this a wire or equivalent to a wire?  (used for circuit validation)
-    boolean isWireEquivalent() { return false; }
-    
-    // is this a wire we can remove?
-    boolean isRemovableWire() { return false; }
-    
     boolean canViewInScope() { return getPostCount() <= 2; }
     boolean comparePair(int x1, int x2, int y1, int y2) {
 	return ((x1 == y1 && x2 == y2) || (x1 == y2 && x2 == y1));
@@ -1077,10 +865,6 @@ public abstract class CircuitElm implements Editable {
 	else if (!add)
 	    selected = false;
     }
-    static int abs(int x) { return x < 0 ? -x : x; }
-    static int sign(int x) { return (x < 0) ? -1 : (x == 0) ? 0 : 1; }
-    static int min(int a, int b) { return (a < b) ? a : b; }
-    static int max(int a, int b) { return (a > b) ? a : b; }
     static double distance(Point p1, Point p2) {
 	double x = p1.x-p2.x;
 	double y = p1.y-p2.y;
@@ -1107,16 +891,6 @@ public abstract class CircuitElm implements Editable {
     }
     
     void updateModels() {}
-    void stepFinished() {}
-    
-    // get current flowing into node n out of this element
-    double getCurrentIntoNode(int n) {
-	// if we take out the getPostCount() == 2 it gives the wrong value for rails
-	if (n==0 && getPostCount() == 2)
-	    return -current;
-	else
-	    return current;
-    }
     
     void flipPosts() {
 	int oldx = x;
@@ -0,0 +1,2330 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Vector;
+
+// The part of the simulator that doesn't depend on GWT: the circuit matrix, the stamp
+// methods elements use to fill it in, matrix simplification and the choice of solver, and
+// the analysis and timestep loop that run a list of SimElms.  CirSim extends this for the
+// browser, and the headless module (see headless/) extends it to run circuits on a plain
+// JVM.  Nothing in here may refer to GWT classes or to CircuitElm.
+abstract class CircuitEngine {
+    // simulation time
+    double t;
+
+    // current timestep (time between iterations)
+    double timeStep;
+
+    // maximum timestep (== timeStep unless we reduce it because of trouble
+    // converging)
+    double maxTimeStep;
+    double minTimeStep;
+
+    boolean deviceBypass;
+    int matrixSolverType;
+    String stopMessage;
+
+    double circuitRightSide[], origRightSide[];
+    SparseMatrix circuitMatrix, origMatrix;
+    MatrixSolver circuitSolver;
+    RowInfo circuitRowInfo[];
+    boolean circuitNonLinear;
+    int circuitMatrixSize, circuitMatrixFullSize;
+    boolean circuitNeedsMap;
+
+    // number of nodes (including ground) when the matrix was allocated.  Voltage source
+    // rows come after the node rows.
+    int nodeCount;
+
+    boolean converged;
+    int subIterations;
+
+    // true while we're finding the dc operating point, when sources hold their dc values
+    boolean dcAnalysisFlag;
+
+    // used by noise sources and to break up oscillating logic
+    Random random = new Random();
+
+    // time of the next source discontinuity, see addBreakpoint()
+    double nextBreakpoint;
+
+    // incremented each time we advance t by maxTimeStep
+    int timeStepCount;
+    
+    // values for matrixSolverType
+    static final int SOLVER_AUTO   = 0;
+    static final int SOLVER_DENSE  = 1;
+    static final int SOLVER_BANDED = 2;
+    static final int SOLVER_SPARSE = 3;
+    
+    // when picking a solver automatically, use the dense solver for matrices with fewer than
+    // this many rows
+    static final int SPARSE_MATRIX_THRESHOLD = 64;
+    
+    // use the banded solver if all nonzero entries are within a band this wide
+    static final int BANDED_SOLVER_MAX_WIDTH = 24;
+    
+    // use the Schur complement solver if at most 1 in this many rows of a sparse matrix are nonlinear
+    static final int SCHUR_COMPLEMENT_RATIO = 4;
+
+    // ...and there are at most this many of them.  The Schur complement is dense and gets
+    // factored on every subiteration, so above this SparseLU's refactor is faster.
+    static final int SCHUR_MAX_NONLINEAR = 96;
+
+    // ...and the dense block A_LL^-1 A_LN has at most this many entries (32 MB)
+    static final int SCHUR_MAX_DENSE_ENTRIES = 1<<22;
+    
+    // use the block triangular solver if no block has more than this fraction of the rows
+    static final double BLOCK_SOLVER_MAX_FRACTION = .75;
+    
+    // if deviceBypass is set, nonlinear devices whose voltages have moved less than this since their
+    // model was last evaluated reuse the stamp from that evaluation
+    static final double BYPASS_TOLERANCE = 1e-4;
+    
+    // number of nonlinear device model evaluations, and number of evaluations that were bypassed
+    int deviceEvalCount, deviceBypassCount;
+
+    // number of matrix factorizations since the caller last cleared this
+    int factorCount;
+    
+    // relative tolerance for the local truncation error of capacitors and inductors
+    static final double LTE_TOLERANCE = 1e-3;
+    
+    // print a debugging message
+    void log(String s) {}
+
+    // called by elements from registerBreakpoints() to report a time at which one of their
+    // sources changes abruptly
+    void addBreakpoint(double bt) {
+	if (bt > t && bt < nextBreakpoint)
+	    nextBreakpoint = bt;
+    }
+
+    int getrand(int x) {
+        int q = random.nextInt();
+        if (q < 0)
+            q = -q;
+        return q % x;
+    }
+
+    // called when an element stamps an infinite value, so we can stop in the debugger
+    void debugBreak() {}
+
+    // allocate an empty matrix for a circuit with the given number of nodes (including
+    // ground) and voltage sources
+    void allocMatrix(int nodes, int vsCount) {
+	int i;
+	nodeCount = nodes;
+	int matrixSize = nodes-1 + vsCount;
+	circuitMatrix = new SparseMatrix(matrixSize);
+	origMatrix = null;
+	circuitSolver = null;
+	circuitRightSide = new double[matrixSize];
+	origRightSide = new double[matrixSize];
+	circuitMatrixSize = circuitMatrixFullSize = matrixSize;
+	circuitRowInfo = new RowInfo[matrixSize];
+	for (i = 0; i != matrixSize; i++)
+	    circuitRowInfo[i] = new RowInfo();
+	circuitNeedsMap = false;
+    }
+
+    // called after all elements have been stamped.  Simplifies the matrix, picks a solver,
+    // and factors the matrix if the circuit is linear.  Returns false if we stopped.
+    boolean finishStamp() {
+	if (!simplifyMatrix(circuitMatrixFullSize))
+	    return false;
+
+	// check if we called stop()
+	if (circuitMatrix == null)
+	    return false;
+
+	// if a matrix is linear, we can factor it here instead of
+	// needing to do it every frame
+	if (!circuitNonLinear) {
+	    factorCount++;
+	    if (!circuitSolver.factor(circuitMatrix)) {
+		stop("Singular matrix!");
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    // matrix and right side saved by beginRestamp()
+    SparseMatrix restampMatrix;
+    double restampRightSide[];
+
+    // When only the timestep changes, the elements stamp the same entries with different
+    // values (companion models of capacitors, inductors, etc.), so we don't need to simplify,
+    // renumber and analyze the matrix again.  beginRestamp() points the stamp functions at a
+    // scratch full-size matrix; after the elements stamp into it, finishRestamp() checks that
+    // the rows simplifyMatrix() removed are still satisfied by the same constants, and copies
+    // the values into the existing simplified matrix in place, so the solver can keep its
+    // ordering and pivots.  Returns false if there is no simplified matrix yet.
+    boolean beginRestamp() {
+	if (circuitMatrix == null || circuitSolver == null || !circuitNeedsMap)
+	    return false;
+	restampMatrix = circuitMatrix;
+	restampRightSide = circuitRightSide;
+	circuitMatrix = new SparseMatrix(circuitMatrixFullSize);
+	circuitRightSide = new double[circuitMatrixFullSize];
+	circuitNeedsMap = false;
+	return true;
+    }
+
+    // returns false if the matrix can't be updated in place, in which case the caller should
+    // do a full stampCircuit()
+    boolean finishRestamp() {
+	if (!finishRestamp(null))
+	    return false;
+	if (circuitMatrix == null)
+	    return true;
+	if (!circuitSolver.updateValues(origMatrix)) {
+	    stop("Singular matrix!");
+	    return true;
+	}
+	if (!circuitNonLinear) {
+	    factorCount++;
+	    if (!circuitSolver.factor(circuitMatrix))
+		stop("Singular matrix!");
+	}
+	return true;
+    }
+
+    // update only the rows of the simplified matrix set in rows[] (or all rows if it is null),
+    // leaving the solver to the caller.  The elements that stamp into other rows don't have
+    // to be stamped again.
+    boolean finishRestamp(boolean rows[]) {
+	SparseMatrix full = circuitMatrix;
+	double fullRs[] = circuitRightSide;
+	circuitMatrix = restampMatrix;
+	circuitRightSide = restampRightSide;
+	restampMatrix = null;
+	restampRightSide = null;
+	circuitNeedsMap = true;
+	// an element called stop()
+	if (full == null) {
+	    circuitMatrix = null;
+	    return true;
+	}
+	int i, k;
+
+	// each removed row must only refer to constant columns, and still hold
+	for (i = 0; i != circuitMatrixFullSize; i++) {
+	    if (!circuitRowInfo[i].dropRow)
+		continue;
+	    double sum = 0, scale = Math.abs(fullRs[i]);
+	    for (k = 0; k != full.rowLength[i]; k++) {
+		RowInfo ri = circuitRowInfo[full.rowCols[i][k]];
+		double q = full.rowValues[i][k];
+		if (ri.type != RowInfo.ROW_CONST) {
+		    if (q != 0)
+			return false;
+		    continue;
+		}
+		sum += q*ri.value;
+		scale = Math.max(scale, Math.abs(q*ri.value));
+	    }
+	    if (Math.abs(sum-fullRs[i]) > 1e-9*scale)
+		return false;
+	}
+
+	// put back the entries changed by doStep(), so the only values left in circuitMatrix
+	// are the stamped ones
+	if (circuitNonLinear)
+	    circuitMatrix.restoreJournal(origMatrix);
+
+	// copy the values into origMatrix, which must keep its pattern
+	int nz = 0;
+	for (i = 0; i != circuitMatrixSize; i++) {
+	    if (rows != null && !rows[i])
+		continue;
+	    nz += origMatrix.rowLength[i];
+	    origRightSide[i] = 0;
+	    for (k = 0; k != origMatrix.rowLength[i]; k++)
+		origMatrix.rowValues[i][k] = 0;
+	}
+	for (i = 0; i != circuitMatrixFullSize; i++) {
+	    RowInfo rri = circuitRowInfo[i];
+	    if (rri.dropRow || (rows != null && !rows[rri.mapRow]))
+		continue;
+	    int r = rri.mapRow;
+	    origRightSide[r] += fullRs[i];
+	    for (k = 0; k != full.rowLength[i]; k++) {
+		RowInfo ri = circuitRowInfo[full.rowCols[i][k]];
+		double q = full.rowValues[i][k];
+		if (ri.type == RowInfo.ROW_CONST)
+		    origRightSide[r] -= ri.value*q;
+		else
+		    origMatrix.add(r, ri.mapCol, q);
+	    }
+	}
+	for (i = 0; i != circuitMatrixSize; i++)
+	    if (rows == null || rows[i])
+		nz -= origMatrix.rowLength[i];
+	if (nz != 0)
+	    return false;
+
+	// and from there into circuitMatrix, which may have extra entries added by doStep()
+	for (i = 0; i != circuitMatrixSize; i++) {
+	    if (rows != null && !rows[i])
+		continue;
+	    circuitRightSide[i] = origRightSide[i];
+	    int olen = origMatrix.rowLength[i];
+	    for (k = 0; k != circuitMatrix.rowLength[i]; k++)
+		circuitMatrix.rowValues[i][k] = (k < olen) ? origMatrix.rowValues[i][k] : 0;
+	}
+	return true;
+    }
+
+    // put back the matrix and right side the way they were after stamping, before the
+    // elements' doStep() for the next subiteration
+    void restoreMatrix() {
+	int i;
+	for (i = 0; i != circuitMatrixSize; i++)
+	    circuitRightSide[i] = origRightSide[i];
+	// restore the matrix entries that nonlinear elements changed in the last doStep()
+	if (circuitNonLinear)
+	    circuitMatrix.restoreJournal(origMatrix);
+    }
+
+    // factor the matrix (if it changes in doStep()) and solve it, leaving the solution in
+    // circuitRightSide.  Returns false if we stopped.
+    boolean solveMatrix() {
+	if (circuitNonLinear) {
+	    factorCount++;
+	    checkSolverBandwidth();
+	    if (!circuitSolver.factor(circuitMatrix)) {
+		stop("Singular matrix!");
+		return false;
+	    }
+	}
+	circuitSolver.solve(circuitRightSide);
+	return true;
+    }
+
+    // get the value of row j of the full matrix (node j+1's voltage, or a voltage source
+    // current) from the solution of the simplified matrix
+    double getSolvedValue(double rs[], int j) {
+	RowInfo ri = circuitRowInfo[j];
+	if (ri.type == RowInfo.ROW_CONST)
+	    return ri.value;
+	return rs[ri.mapCol];
+    }
+
+    // simplify the matrix; this speeds things up quite a bit, especially for digital circuits.
+    // or at least it did before we added wire removal
+    boolean simplifyMatrix(int matrixSize) {
+	int i, j, k;
+	SparseMatrix mat = circuitMatrix;
+	
+	// make list of rows that have nonzero entries in each column, so we can find rows
+	// that reference a column without scanning the whole matrix
+	int colCount[] = new int[matrixSize+1];
+	for (i = 0; i != matrixSize; i++)
+	    for (k = 0; k != mat.rowLength[i]; k++)
+		colCount[mat.rowCols[i][k]+1]++;
+	for (i = 0; i != matrixSize; i++)
+	    colCount[i+1] += colCount[i];
+	int colRows[] = new int[colCount[matrixSize]];
+	int colPos[] = new int[matrixSize];
+	for (i = 0; i != matrixSize; i++)
+	    colPos[i] = colCount[i];
+	for (i = 0; i != matrixSize; i++)
+	    for (k = 0; k != mat.rowLength[i]; k++) {
+		int c = mat.rowCols[i][k];
+		colRows[colPos[c]++] = i;
+	    }
+	
+	for (i = 0; i != matrixSize; i++) {
+	    int qp = -1;
+	    double qv = 0;
+	    RowInfo re = circuitRowInfo[i];
+	    if (re.lsChanges || re.dropRow || re.rsChanges)
+		continue;
+	    double rsadd = 0;
+	    int cols[] = mat.rowCols[i];
+	    double vals[] = mat.rowValues[i];
+	    boolean multiple = false;
+
+	    // see if this row can be removed
+	    for (k = 0; k != mat.rowLength[i]; k++) {
+		j = cols[k];
+		double q = vals[k];
+		if (circuitRowInfo[j].type == RowInfo.ROW_CONST) {
+		    rsadd -= circuitRowInfo[j].value*q;
+		    continue;
+		}
+		if (q == 0)
+		    continue;
+		if (qp == -1) {
+		    qp = j;
+		    qv = q;
+		    continue;
+		}
+		multiple = true;
+		break;
+	    }
+	    if (multiple)
+		continue;
+	    if (qp == -1) {
+		stop("Matrix error");
+		return false;
+	    }
+	    RowInfo elt = circuitRowInfo[qp];
+	    if (elt.type != RowInfo.ROW_NORMAL) {
+		System.out.println("type already " + elt.type + " for " + qp + "!");
+		continue;
+	    }
+	    elt.type = RowInfo.ROW_CONST;
+	    elt.value = (circuitRightSide[i]+rsadd)/qv;
+	    circuitRowInfo[i].dropRow = true;
+	    // find first row that referenced the element we just deleted
+	    j = i;
+	    for (k = colCount[qp]; k != colCount[qp+1]; k++) {
+		int r = colRows[k];
+		if (r < j && mat.get(r, qp) != 0)
+		    j = r;
+	    }
+	    // start over just before that
+	    i = j-1;
+	}
+
+	// find size of new matrix
+	int nn = 0;
+	for (i = 0; i != matrixSize; i++) {
+	    RowInfo elt = circuitRowInfo[i];
+	    if (elt.type == RowInfo.ROW_NORMAL) {
+		elt.mapCol = nn++;
+		continue;
+	    }
+	    if (elt.type == RowInfo.ROW_CONST)
+		elt.mapCol = -1;
+	}
+
+	// make the new, simplified matrix
+	int newsize = nn;
+	SparseMatrix newmatx = new SparseMatrix(newsize);
+	double newrs[] = new double[newsize];
+	int ii = 0;
+	for (i = 0; i != matrixSize; i++) {
+	    RowInfo rri = circuitRowInfo[i];
+	    if (rri.dropRow) {
+		rri.mapRow = -1;
+		continue;
+	    }
+	    newrs[ii] = circuitRightSide[i];
+	    rri.mapRow = ii;
+	    for (k = 0; k != mat.rowLength[i]; k++) {
+		RowInfo ri = circuitRowInfo[mat.rowCols[i][k]];
+		double q = mat.rowValues[i][k];
+		if (ri.type == RowInfo.ROW_CONST)
+		    newrs[ii] -= ri.value*q;
+		else
+		    newmatx.add(ii, ri.mapCol, q);
+	    }
+	    ii++;
+	}
+
+	circuitRightSide = newrs;
+	circuitMatrixSize = newsize;
+	for (i = 0; i != newsize; i++)
+	    origRightSide[i] = circuitRightSide[i];
+	circuitNeedsMap = true;
+
+	circuitMatrix = newmatx;
+	renumberMatrix();
+	origMatrix = circuitMatrix.copy();
+	chooseMatrixSolver();
+	if (circuitNonLinear) {
+	    // keep track of entries changed in doStep() so we can restore them cheaply
+	    circuitMatrix.startJournal();
+	}
+	return true;
+    }
+    
+    // renumber the rows and columns of the simplified matrix in reverse Cuthill-McKee order,
+    // which brings the nonzero entries close to the diagonal, so we can use the banded solver
+    // for long chains of elements.  Elements don't notice this, since stampMatrix() etc. go
+    // through circuitRowInfo[] anyway.
+    void renumberMatrix() {
+	int i;
+	int n = circuitMatrixSize;
+	if (n < SPARSE_MATRIX_THRESHOLD)
+	    return;
+	int perm[] = MatrixOrdering.reverseCuthillMcKee(circuitMatrix);
+	int inv[] = new int[n];
+	for (i = 0; i != n; i++)
+	    inv[perm[i]] = i;
+	SparseMatrix m = circuitMatrix.permute(inv);
+	if (BandedMatrixSolver.getLowerBandwidth(m) + BandedMatrixSolver.getUpperBandwidth(m) >=
+	    BandedMatrixSolver.getLowerBandwidth(circuitMatrix) + BandedMatrixSolver.getUpperBandwidth(circuitMatrix))
+	    return;
+	circuitMatrix = m;
+	for (i = 0; i != n; i++)
+	    circuitRightSide[inv[i]] = origRightSide[i];
+	for (i = 0; i != n; i++)
+	    origRightSide[i] = circuitRightSide[i];
+	for (i = 0; i != circuitMatrixFullSize; i++) {
+	    RowInfo ri = circuitRowInfo[i];
+	    if (ri.mapRow >= 0)
+		ri.mapRow = inv[ri.mapRow];
+	    if (ri.type == RowInfo.ROW_NORMAL)
+		ri.mapCol = inv[ri.mapCol];
+	}
+    }
+    
+    // pick a solver for the simplified matrix, based on its size, bandwidth and density,
+    // unless the user chose one in the options
+    void chooseMatrixSolver() {
+	int n = circuitMatrixSize;
+	int kl = BandedMatrixSolver.getLowerBandwidth(circuitMatrix);
+	int ku = BandedMatrixSolver.getUpperBandwidth(circuitMatrix);
+	int type = matrixSolverType;
+	if (type == SOLVER_AUTO) {
+	    // small or dense matrices are faster with the dense solver.  (n*n overflows an int
+	    // for large circuits.)
+	    if (n < SPARSE_MATRIX_THRESHOLD || circuitMatrix.getNonzeroCount()*4. > (double) n*n)
+		type = SOLVER_DENSE;
+	    else if (kl+ku+1 <= BANDED_SOLVER_MAX_WIDTH)
+		type = SOLVER_BANDED;
+	    else
+		type = SOLVER_SPARSE;
+	}
+	if (type == SOLVER_DENSE)
+	    circuitSolver = new DenseMatrixSolver(n);
+	else if (type == SOLVER_BANDED)
+	    circuitSolver = new BandedMatrixSolver(n, kl, ku);
+	else
+	    circuitSolver = createSparseSolver();
+    }
+    
+    // we chose the banded solver from the entries stamped before the first step, but doStep()
+    // may add entries outside the band.  If they make it too wide, switch to the sparse solver
+    // (unless the user chose the banded solver).
+    void checkSolverBandwidth() {
+	if (matrixSolverType != SOLVER_AUTO || !(circuitSolver instanceof BandedMatrixSolver))
+	    return;
+	BandedMatrixSolver bs = (BandedMatrixSolver) circuitSolver;
+	if (!bs.checkBandwidth(circuitMatrix, BANDED_SOLVER_MAX_WIDTH))
+	    circuitSolver = createSparseSolver();
+    }
+    
+    MatrixSolver createSparseSolver() {
+	int n = circuitMatrixSize;
+	boolean nonLinearRow[] = getNonLinearRows();
+	
+	// if the circuit splits into parts that are only coupled one way, solve them one at a time
+	BlockTriangularSolver bs = new BlockTriangularSolver(nonLinearRow);
+	if (bs.setup(origMatrix) && bs.getBlockCount() > 1 &&
+	      bs.getLargestBlock() <= n*BLOCK_SOLVER_MAX_FRACTION)
+	    return bs;
+	
+	if (circuitNonLinear) {
+	    SchurSolver ss = createSchurSolver(nonLinearRow);
+	    if (ss != null)
+		return ss;
+	}
+	
+	// do the symbolic part of the factorization now, so that subiterations only have to
+	// redo the numeric part
+	SparseLU lu = new SparseLU(n);
+	lu.analyze(origMatrix);
+	return lu;
+    }
+    
+    // get the rows of the simplified matrix whose left side changes in doStep()
+    boolean[] getNonLinearRows() {
+	int i;
+	boolean nonLinearRow[] = new boolean[circuitMatrixSize];
+	for (i = 0; i != circuitMatrixFullSize; i++) {
+	    RowInfo ri = circuitRowInfo[i];
+	    if (ri.lsChanges && ri.mapRow >= 0)
+		nonLinearRow[ri.mapRow] = true;
+	}
+	return nonLinearRow;
+    }
+    
+    // if only a small fraction of the rows are nonlinear, factor the linear part of the matrix
+    // now, so that each subiteration only has to deal with the nonlinear rows.
+    SchurSolver createSchurSolver(boolean nonLinearRow[]) {
+	int i;
+	int n = circuitMatrixSize;
+	int nonLinearCount = 0;
+	for (i = 0; i != n; i++)
+	    if (nonLinearRow[i])
+		nonLinearCount++;
+	if (nonLinearCount*SCHUR_COMPLEMENT_RATIO > n || nonLinearCount > SCHUR_MAX_NONLINEAR ||
+		(double) nonLinearCount*(n-nonLinearCount) > SCHUR_MAX_DENSE_ENTRIES)
+	    return null;
+	
+	// pair each row of the simplified matrix with a column.  Rows and columns that came from
+	// the same row/column of the full matrix go together; the rest are paired up in order.
+	int rowToCol[] = new int[n];
+	int extraRows[] = new int[n];
+	int extraCols[] = new int[n];
+	int extraRowCount = 0, extraColCount = 0;
+	for (i = 0; i != circuitMatrixFullSize; i++) {
+	    RowInfo ri = circuitRowInfo[i];
+	    boolean hasRow = !ri.dropRow;
+	    boolean hasCol = ri.type == RowInfo.ROW_NORMAL;
+	    if (hasRow && hasCol)
+		rowToCol[ri.mapRow] = ri.mapCol;
+	    else if (hasRow)
+		extraRows[extraRowCount++] = ri.mapRow;
+	    else if (hasCol)
+		extraCols[extraColCount++] = ri.mapCol;
+	}
+	for (i = 0; i != extraRowCount; i++)
+	    rowToCol[extraRows[i]] = extraCols[i];
+	
+	SchurSolver ss = new SchurSolver();
+	if (ss.setup(origMatrix, rowToCol, nonLinearRow))
+	    return ss;
+	return null;
+    }
+    
+    // control voltage source vs with voltage from n1 to n2 (must
+    // also call stampVoltageSource())
+    void stampVCVS(int n1, int n2, double coef, int vs) {
+	int vn = nodeCount+vs;
+	stampMatrix(vn, n1, coef);
+	stampMatrix(vn, n2, -coef);
+    }
+    
+    // stamp independent voltage source #vs, from n1 to n2, amount v
+    void stampVoltageSource(int n1, int n2, int vs, double v) {
+	int vn = nodeCount+vs;
+	stampMatrix(vn, n1, -1);
+	stampMatrix(vn, n2, 1);
+	stampRightSide(vn, v);
+	stampMatrix(n1, vn, 1);
+	stampMatrix(n2, vn, -1);
+    }
+
+    // use this if the amount of voltage is going to be updated in doStep(), by updateVoltageSource()
+    void stampVoltageSource(int n1, int n2, int vs) {
+	int vn = nodeCount+vs;
+	stampMatrix(vn, n1, -1);
+	stampMatrix(vn, n2, 1);
+	stampRightSide(vn);
+	stampMatrix(n1, vn, 1);
+	stampMatrix(n2, vn, -1);
+    }
+    
+    // update voltage source in doStep()
+    void updateVoltageSource(int n1, int n2, int vs, double v) {
+	int vn = nodeCount+vs;
+	stampRightSide(vn, v);
+    }
+    
+    void stampResistor(int n1, int n2, double r) {
+	double r0 = 1/r;
+	if (Double.isNaN(r0) || Double.isInfinite(r0)) {
+	    System.out.print("bad resistance " + r + " " + r0 + "\n");
+	    int a = 0;
+	    a /= a;
+	}
+	stampMatrix(n1, n1, r0);
+	stampMatrix(n2, n2, r0);
+	stampMatrix(n1, n2, -r0);
+	stampMatrix(n2, n1, -r0);
+    }
+
+    void stampConductance(int n1, int n2, double r0) {
+	stampMatrix(n1, n1, r0);
+	stampMatrix(n2, n2, r0);
+	stampMatrix(n1, n2, -r0);
+	stampMatrix(n2, n1, -r0);
+    }
+
+    // specify that current from cn1 to cn2 is equal to voltage from vn1 to 2, divided by g
+    void stampVCCurrentSource(int cn1, int cn2, int vn1, int vn2, double g) {
+	stampMatrix(cn1, vn1, g);
+	stampMatrix(cn2, vn2, g);
+	stampMatrix(cn1, vn2, -g);
+	stampMatrix(cn2, vn1, -g);
+    }
+
+    void stampCurrentSource(int n1, int n2, double i) {
+	stampRightSide(n1, -i);
+	stampRightSide(n2, i);
+    }
+
+    // stamp a current source from n1 to n2 depending on current through vs
+    void stampCCCS(int n1, int n2, int vs, double gain) {
+	int vn = nodeCount+vs;
+	stampMatrix(n1, vn, gain);
+	stampMatrix(n2, vn, -gain);
+    }
+
+    // stamp value x in row i, column j, meaning that a voltage change
+    // of dv in node j will increase the current into node i by x dv.
+    // (Unless i or j is a voltage source node.)
+    void stampMatrix(int i, int j, double x) {
+	if (Double.isInfinite(x))
+	    debugBreak();
+	if (i > 0 && j > 0) {
+	    if (circuitNeedsMap) {
+		i = circuitRowInfo[i-1].mapRow;
+		RowInfo ri = circuitRowInfo[j-1];
+		if (ri.type == RowInfo.ROW_CONST) {
+		    //System.out.println("Stamping constant " + i + " " + j + " " + x);
+		    circuitRightSide[i] -= x*ri.value;
+		    return;
+		}
+		j = ri.mapCol;
+		//System.out.println("stamping " + i + " " + j + " " + x);
+	    } else {
+		i--;
+		j--;
+	    }
+	    circuitMatrix.add(i, j, x);
+	}
+    }
+
+    // stamp value x on the right side of row i, representing an
+    // independent current source flowing into node i
+    void stampRightSide(int i, double x) {
+	if (i > 0) {
+	    if (circuitNeedsMap) {
+		i = circuitRowInfo[i-1].mapRow;
+		//System.out.println("stamping " + i + " " + x);
+	    } else
+		i--;
+	    circuitRightSide[i] += x;
+	}
+    }
+
+    // indicate that the value on the right side of row i changes in doStep()
+    void stampRightSide(int i) {
+	//System.out.println("rschanges true " + (i-1));
+	if (i > 0)
+	    circuitRowInfo[i-1].rsChanges = true;
+    }
+    
+    // indicate that the values on the left side of row i change in doStep()
+    void stampNonLinear(int i) {
+	if (i > 0)
+	    circuitRowInfo[i-1].lsChanges = true;
+    }
+
+    // factors a matrix into upper and lower triangular matrices by
+    // gaussian elimination.  On entry, a[0..n-1][0..n-1] is the
+    // matrix to be factored.  ipvt[] returns an integer vector of pivot
+    // indices, used in the lu_solve() routine.
+    static boolean lu_factor(double a[][], int n, int ipvt[]) {
+	int i,j,k;
+	
+	// check for a possible singular matrix by scanning for rows that
+	// are all zeroes
+	for (i = 0; i != n; i++) { 
+	    boolean row_all_zeros = true;
+	    for (j = 0; j != n; j++) {
+		if (a[i][j] != 0) {
+		    row_all_zeros = false;
+		    break;
+		}
+	    }
+	    // if all zeros, it's a singular matrix
+	    if (row_all_zeros)
+		return false;
+	}
+	
+        // use Crout's method; loop through the columns
+	for (j = 0; j != n; j++) {
+	    
+	    // calculate upper triangular elements for this column
+	    for (i = 0; i != j; i++) {
+		double q = a[i][j];
+		for (k = 0; k != i; k++)
+		    q -= a[i][k]*a[k][j];
+		a[i][j] = q;
+	    }
+
+	    // calculate lower triangular elements for this column
+	    double largest = 0;
+	    int largestRow = -1;
+	    for (i = j; i != n; i++) {
+		double q = a[i][j];
+		for (k = 0; k != j; k++)
+		    q -= a[i][k]*a[k][j];
+		a[i][j] = q;
+		double x = Math.abs(q);
+		if (x >= largest) {
+		    largest = x;
+		    largestRow = i;
+		}
+	    }
+	    
+	    // pivoting
+	    if (j != largestRow) {
+		if (largestRow == -1) {
+		    System.out.println("largestRow == -1");
+		    return false;
+		}
+		double x;
+		for (k = 0; k != n; k++) {
+		    x = a[largestRow][k];
+		    a[largestRow][k] = a[j][k];
+		    a[j][k] = x;
+		}
+	    }
+
+	    // keep track of row interchanges
+	    ipvt[j] = largestRow;
+
+	    // check for zeroes; if we find one, it's a singular matrix.
+	    // we used to avoid them, but that caused weird bugs.  For example,
+	    // two inverters with outputs connected together should be flagged
+	    // as a singular matrix, but it was allowed (with weird currents)
+	    if (a[j][j] == 0.0) {
+		System.out.println("didn't avoid zero");
+//		a[j][j]=1e-18;
+		return false;
+	    }
+
+	    if (j != n-1) {
+		double mult = 1.0/a[j][j];
+		for (i = j+1; i != n; i++)
+		    a[i][j] *= mult;
+	    }
+	}
+	return true;
+    }
+
+    // Solves the set of n linear equations using a LU factorization
+    // previously performed by lu_factor.  On input, b[0..n-1] is the right
+    // hand side of the equations, and on output, contains the solution.
+    static void lu_solve(double a[][], int n, int ipvt[], double b[]) {
+	int i;
+
+	// find first nonzero b element
+	for (i = 0; i != n; i++) {
+	    int row = ipvt[i];
+
+	    double swap = b[row];
+	    b[row] = b[i];
+	    b[i] = swap;
+	    if (swap != 0)
+		break;
+	}
+	
+	int bi = i++;
+	for (; i < n; i++) {
+	    int row = ipvt[i];
+	    int j;
+	    double tot = b[row];
+	    
+	    b[row] = b[i];
+	    // forward substitution using the lower triangular matrix
+	    for (j = bi; j < i; j++)
+		tot -= a[i][j]*b[j];
+	    b[i] = tot;
+	}
+	for (i = n-1; i >= 0; i--) {
+	    double tot = b[i];
+	    
+	    // back-substitution using the upper triangular matrix
+	    int j;
+	    for (j = i+1; j != n; j++)
+		tot -= a[i][j]*b[j];
+	    b[i] = tot/a[i][i];
+	}
+    }
+
+    // replaces a[0..n-1][0..n-1] with its inverse
+    static void invertMatrix(double a[][], int n) {
+	int ipvt[] = new int[n];
+	lu_factor(a, n, ipvt);
+	int i, j;
+	double b[] = new double[n];
+	double inva[][] = new double[n][n];
+	
+	// solve for each column of identity matrix
+	for (i = 0; i != n; i++) {
+	    for (j = 0; j != n; j++)
+		b[j] = 0;
+	    b[i] = 1;
+	    lu_solve(a, n, ipvt, b);
+	    for (j = 0; j != n; j++)
+		inva[j][i] = b[j];
+	}
+	
+	// return in original matrix
+	for (i = 0; i != n; i++)
+	    for (j = 0; j != n; j++)
+		a[i][j] = inva[i][j];
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Everything below analyzes and runs a list of elements (see getElmList()).  CirSim and
+    // HeadlessSim both use it, so they allocate nodes and step through time the same way.
+
+    // accumulated time since we incremented timeStepCount
+    double timeStepAccum;
+
+    boolean adjustTimeStep;
+    // if set (along with adjustTimeStep), choose timestep from local truncation error
+    boolean lteTimeStep;
+    // if set (along with adjustTimeStep), cut steps short to land on source edges
+    boolean breakpointTimeStep;
+    // if set (along with lteTimeStep), give each independent part of the circuit its own timestep
+    boolean multirate;
+    MultirateStepper multirateStepper;
+    boolean newtonPredictor;
+
+    boolean needsStamp;
+    boolean dumpMatrix;
+
+    Vector<CircuitNode> nodeList;
+    SimElm voltageSources[];
+    // tables for setNodeVoltages(), see makeNodeVoltageTables()
+    SimElm voltElms[], callElms[];
+    int voltPosts[], callPosts[];
+    int voltStart[], callStart[];
+    SimElm elmArr[];
+    double lastNodeVoltages[], nodeVoltages[];
+    int voltageSourceCount;
+
+    // the elements of the circuit, in the order they were loaded
+    abstract Vector<? extends SimElm> getElmList();
+
+    // custom logic model with the given name, for CustomLogicDevice.undump().  A model we
+    // haven't seen yet is created with default pins, and filled in if it's loaded later.
+    abstract CustomLogicRules getLogicModel(String name);
+
+    // create an element inside a composite (see CompositeDevice.loadComposite()) from its class
+    // name.  st has its flags and the rest of its dump, or is null for the default settings.
+    abstract SimElm createCompositeElm(String ceType, StringTokenizer st);
+
+    // stop the simulation with an error message caused by element ce (or null)
+    abstract void stop(String s, SimElm ce);
+
+    void stop(String s) {
+	stop(s, null);
+    }
+
+    // stop with an error message caused by device d, pointing at the element it belongs to
+    // if it's in the circuit
+    void stopDevice(String s, Device d) {
+	int i;
+	for (i = 0; i != getElmList().size(); i++)
+	    if (getElm(i).device == d) {
+		stop(s, getElm(i));
+		return;
+	    }
+	stop(s, null);
+    }
+
+    public CircuitNode getCircuitNode(int n) {
+	if (n >= nodeList.size())
+	    return null;
+	return nodeList.elementAt(n);
+    }
+
+    public SimElm getElm(int n) {
+	if (n >= getElmList().size())
+	    return null;
+	return getElmList().elementAt(n);
+    }
+
+    // set the simulation options from the flags in the options line of a circuit file
+    void readOptionFlags(int flags) {
+	adjustTimeStep = (flags & 64) != 0;
+	deviceBypass = (flags & 128) != 0;
+	newtonPredictor = (flags & 256) != 0;
+	lteTimeStep = (flags & 512) != 0;
+	multirate = (flags & 1024) != 0;
+	breakpointTimeStep = (flags & 2048) != 0;
+    }
+
+    // the first post of each label seen by calculateWireClosure(), and the first ground
+    HashMap<String,SimElm> labelList;
+    Point firstGround;
+
+    // return post ce is connected to, so calculateWireClosure() can merge them.  Labeled nodes
+    // are connected to the first one with the same label, and grounds to the first ground.
+    // The first one we see isn't connected to anything yet, so we return null.
+    Point getConnectedPost(SimElm ce) {
+	if (ce.device instanceof GroundDevice) {
+	    if (firstGround != null)
+		return firstGround;
+	    firstGround = ce.getPost(0);
+	    return null;
+	}
+	if (ce.device instanceof LabeledNodeDevice) {
+	    String text = ((LabeledNodeDevice) ce.device).text;
+	    SimElm le = labelList.get(text);
+	    if (le != null)
+		return le.getPost(0);
+	    labelList.put(text, ce);
+	    return null;
+	}
+	return ce.getConnectedPost();
+    }
+
+    // voltage of the node with the given label, or 0 if there isn't one
+    double getLabeledNodeVoltage(String name) {
+	SimElm le = (labelList == null) ? null : labelList.get(name);
+	if (le == null || le.getNode(0) == 0)
+	    return 0;
+	// subtract one because ground is not included in nodeVoltages[]
+	return nodeVoltages[le.getNode(0)-1];
+    }
+
+    // go back to t = 0 and reset every element
+    void resetSimulation() {
+	int i;
+	t = timeStepAccum = 0;
+	timeStepCount = 0;
+	deviceEvalCount = deviceBypassCount = 0;
+	predictorCount = 0;
+	for (i = 0; i != 2; i++)
+	    subIterationTotal[i] = subIterationSteps[i] = 0;
+	for (i = 0; i != getElmList().size(); i++)
+	    getElm(i).reset();
+    }
+
+    // map points to node numbers
+    PostMap postMap;
+    // node allocation from the last analysis, so we can update it incrementally
+    TopologyCache topology;
+    // if set, check every incremental update against a full analysis
+    boolean validateTopology;
+    
+    class WireInfo {
+	SimElm wire;
+	// elements at the end of the wire we use to calculate its current, and which of
+	// their posts is there
+	SimElm neighbors[];
+	int neighborPosts[];
+	int post;
+	WireInfo(SimElm w) {
+	    wire = w;
+	}
+    }
+    
+    // info about each wire and its neighbors, used to calculate wire currents
+    Vector<WireInfo> wireInfoList;
+
+    // links of the nodes that have wires on them, grouped by the point each link's post is at,
+    // so calcWireInfo() only looks at the elements at a wire's own ends.  Every ground element
+    // is on node 0, and going through all of its links for each of them was quadratic.
+    class LinkIndex {
+	PostMap points = new PostMap();
+	// first entry at each point, and first labeled node entry on each node (entry+1, 0 = none)
+	int pointFirst[] = new int[64];
+	int labelFirst[];
+	// link index, node and next entry (+1) of each entry
+	int link[] = new int[64], node[] = new int[64], next[] = new int[64];
+	int count;
+	boolean indexed[];
+
+	LinkIndex() {
+	    labelFirst = new int[nodeList.size()];
+	    indexed = new boolean[nodeList.size()];
+	}
+
+	// add the links of node n, if we haven't yet
+	void index(int n) {
+	    if (indexed[n])
+		return;
+	    indexed[n] = true;
+	    Vector<CircuitNodeLink> links = nodeList.get(n).links;
+	    int j;
+	    // go backwards so the entries at each point are in link order
+	    for (j = links.size()-1; j >= 0; j--) {
+		CircuitNodeLink cnl = links.get(j);
+		int p = points.add(cnl.elm.getPost(cnl.num));
+		if (p >= pointFirst.length)
+		    pointFirst = Arrays.copyOf(pointFirst, pointFirst.length*2);
+		pointFirst[p] = add(j, n, pointFirst[p]);
+		if (cnl.elm.device instanceof LabeledNodeDevice)
+		    labelFirst[n] = add(j, n, labelFirst[n]);
+	    }
+	}
+
+	int add(int j, int n, int nextEntry) {
+	    if (count == link.length) {
+		link = Arrays.copyOf(link, count*2);
+		node = Arrays.copyOf(node, count*2);
+		next = Arrays.copyOf(next, count*2);
+	    }
+	    link[count] = j;
+	    node[count] = n;
+	    next[count] = nextEntry;
+	    return ++count;
+	}
+
+	// first entry at point (x,y)
+	int getFirst(int x, int y) {
+	    int p = points.find(x, y);
+	    return (p < 0) ? 0 : pointFirst[p];
+	}
+    }
+    
+    // find groups of nodes connected by wire equivalents and map them to the same node.  this speeds things
+    // up considerably by reducing the size of the matrix.  We do this for wires, labeled nodes, and ground.
+    // The actual node we map to is not assigned yet.  Instead we put the points in the same group.
+    void calculateWireClosure() {
+	int i;
+	labelList = new HashMap<String,SimElm>();
+	firstGround = null;
+	postMap = new PostMap();
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (!ce.isRemovableWire())
+		continue;
+	    int p0 = postMap.add(ce.getPost(0));
+	    
+	    // what post are we connected to
+	    Point p1 = getConnectedPost(ce);
+	    // no connected post (true for labeled node the first time it's encountered, or ground)
+	    if (p1 == null)
+		continue;
+	    postMap.union(p0, postMap.add(p1));
+	}
+    }
+    
+    // redo the wire info for the wires on the given nodes, keeping the rest (or redo all of it
+    // if changedNodes is null).  Wires only depend on other wires on the same node, so the ones
+    // we keep are still in a valid order, and we can put the new ones after them.
+    boolean updateWireInfo(Vector<CircuitNode> changedNodes) {
+	if (changedNodes == null || wireInfoList == null) {
+	    makeWireInfoList();
+	    return calcWireInfo();
+	}
+	int i, j;
+	HashSet<CircuitNode> changed = new HashSet<CircuitNode>(changedNodes);
+	Vector<WireInfo> kept = new Vector<WireInfo>();
+	for (i = 0; i != wireInfoList.size(); i++) {
+	    WireInfo wi = wireInfoList.get(i);
+	    if (!changed.contains(getCircuitNode(wi.wire.getNode(0))))
+		kept.add(wi);
+	}
+	wireInfoList = new Vector<WireInfo>();
+	for (i = 0; i != changedNodes.size(); i++) {
+	    Vector<CircuitNodeLink> links = changedNodes.get(i).links;
+	    for (j = 0; j != links.size(); j++) {
+		CircuitNodeLink cnl = links.get(j);
+		if (cnl.num != 0 || !cnl.elm.isRemovableWire())
+		    continue;
+		cnl.elm.wireInfoIndex = wireInfoList.size();
+		wireInfoList.add(new WireInfo(cnl.elm));
+	    }
+	}
+	if (!calcWireInfo())
+	    return false;
+	kept.addAll(wireInfoList);
+	wireInfoList = kept;
+	return true;
+    }
+
+    // compare wire info from an incremental update with a full analysis.  Returns a description
+    // of the first difference, or null if they match.
+    String compareWireInfo(Vector<WireInfo> inc, Vector<WireInfo> full) {
+	if (inc.size() != full.size())
+	    return "wire count " + inc.size() + " != " + full.size();
+	HashMap<SimElm,WireInfo> map = new HashMap<SimElm,WireInfo>();
+	int i, j;
+	for (i = 0; i != inc.size(); i++)
+	    map.put(inc.get(i).wire, inc.get(i));
+	for (i = 0; i != full.size(); i++) {
+	    WireInfo f = full.get(i);
+	    WireInfo w = map.get(f.wire);
+	    if (w == null)
+		return "no wire info for " + f.wire;
+	    if (w.post != f.post || w.neighbors.length != f.neighbors.length)
+		return "wire info for " + f.wire + " differs";
+	    for (j = 0; j != f.neighbors.length; j++)
+		if (w.neighbors[j] != f.neighbors[j] || w.neighborPosts[j] != f.neighborPosts[j])
+		    return "neighbor " + j + " of " + f.wire + " differs";
+	}
+	return null;
+    }
+
+    // make list of wires for calcWireInfo()
+    void makeWireInfoList() {
+	int i;
+	wireInfoList = new Vector<WireInfo>();
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (!ce.isRemovableWire())
+		continue;
+	    ce.wireInfoIndex = wireInfoList.size();
+	    wireInfoList.add(new WireInfo(ce));
+	}
+    }
+
+    // generate info we need to calculate wire currents.  Most other elements calculate currents using
+    // the voltage on their terminal nodes.  But wires have the same voltage at both ends, so we need
+    // to use the neighbors' currents instead.  We used to treat wires as zero voltage sources to make
+    // this easier, but this is very inefficient, since it makes the matrix 2 rows bigger for each wire.
+    // We create a list of WireInfo objects instead to help us calculate the wire currents instead,
+    // so we make the matrix less complex, and we only calculate the wire currents when we need them
+    // (once per frame, not once per subiteration).  We need the WireInfos arranged in the correct order,
+    // each one containing a list of neighbors and which end to use (since one end may be ready before
+    // the other)
+    boolean calcWireInfo() {
+	return calcWireInfo(false);
+    }
+
+    // labelNeighbors says whether to give each labeled node the other labeled nodes with the
+    // same text as neighbors at its second end.  That list is long if there are many of them
+    // (like a supply label at every stage), and we only need it when the elements at a labeled
+    // node's own post aren't enough, so first we try without it.
+    boolean calcWireInfo(boolean labelNeighbors) {
+	int i, j, k;
+	int wireCount = wireInfoList.size();
+	
+	// neighbors at each wire end (wire index*2 + end), as indices into the links of the
+	// wire's node.  The neighbors at end e of wire i are neighborLinks[neighborStart[i*2+e]]
+	// up to neighborLinks[neighborStart[i*2+e+1]-1].
+	int neighborStart[] = new int[wireCount*2+1];
+	int neighborLinks[] = new int[wireCount*2+16];
+	int neighborCount = 0;
+	// number of neighbors at each wire end that are wires whose current we don't know yet
+	int waiting[] = new int[wireCount*2];
+	// number of wire ends that depend on each wire
+	int dependentStart[] = new int[wireCount+1];
+	LinkIndex index = new LinkIndex();
+	for (i = 0; i != wireCount; i++) {
+	    WireInfo wi = wireInfoList.get(i);
+	    SimElm wire = wi.wire;
+	    int n = wire.getNode(0);  // both ends of wire have same node #
+	    CircuitNode cn1 = nodeList.get(n);
+	    index.index(n);
+
+	    // ground nodes have only one end.
+	    // labeled nodes are treated as having 2 terminals, see below
+	    if (wire.device instanceof GroundDevice)
+		waiting[i*2+1] = 1;
+
+	    // go through elements at each end of this wire (they share a node with it, but may
+	    // be connected indirectly by other wires)
+	    int e;
+	    for (e = 0; e != 2; e++) {
+		int entry;
+		if (e == 0)
+		    entry = index.getFirst(wire.x, wire.y);
+		else if (wire.getPostCount() > 1) {
+		    Point p2 = wire.getConnectedPost();
+		    entry = (p2.x == wire.x && p2.y == wire.y) ? 0 : index.getFirst(p2.x, p2.y);
+		} else if (wire.device instanceof LabeledNodeDevice && labelNeighbors) {
+		    // other labeled nodes with matching labels are treated as neighbors
+		    entry = index.labelFirst[n];
+		} else {
+		    if (wire.device instanceof LabeledNodeDevice)
+			waiting[i*2+1] = 1;
+		    entry = 0;
+		}
+		for (; entry != 0; entry = index.next[entry-1]) {
+		    if (index.node[entry-1] != n)
+			continue;
+		    j = index.link[entry-1];
+		    CircuitNodeLink cnl = cn1.links.get(j);
+		    SimElm ce = cnl.elm;
+		    if (ce == wire)
+			continue;
+		    if (e == 1 && wire.getPostCount() == 1) {
+			Point pt = ce.getPost(cnl.num);
+			if ((pt.x == wire.x && pt.y == wire.y) ||
+			      !((LabeledNodeDevice) ce.device).text.equals(((LabeledNodeDevice) wire.device).text))
+			    continue;
+		    }
+		    if (neighborCount == neighborLinks.length)
+			neighborLinks = Arrays.copyOf(neighborLinks, neighborCount*2);
+		    neighborLinks[neighborCount++] = j;
+
+		    // if this is a wire, we need its current first
+		    if (ce.isRemovableWire()) {
+			waiting[i*2+e]++;
+			dependentStart[ce.wireInfoIndex+1]++;
+		    }
+		}
+		neighborStart[i*2+e+1] = neighborCount;
+	    }
+	}
+
+	// list of wire ends (wire index*2 + end) that depend on each wire
+	for (i = 0; i != wireCount; i++)
+	    dependentStart[i+1] += dependentStart[i];
+	int dependents[] = new int[dependentStart[wireCount]];
+	int dependentPos[] = new int[wireCount];
+	System.arraycopy(dependentStart, 0, dependentPos, 0, wireCount);
+	for (i = 0; i != wireCount; i++) {
+	    CircuitNode cn1 = nodeList.get(wireInfoList.get(i).wire.getNode(0));
+	    for (k = neighborStart[i*2]; k != neighborStart[i*2+2]; k++) {
+		SimElm ce = cn1.links.get(neighborLinks[k]).elm;
+		if (ce.isRemovableWire())
+		    dependents[dependentPos[ce.wireInfoIndex]++] = (k < neighborStart[i*2+1]) ? i*2 : i*2+1;
+	    }
+	}
+
+	// topological sort.  A wire is ready when all the wires at one of its ends are, so we
+	// take wires off the queue in an order where each one only depends on earlier ones.
+	// We pick the end to use when the wire is queued.  Wires later in the order keep
+	// decrementing the counts, so by the end the other end may look ready too, but its
+	// neighbors come after this wire.
+	int order[] = new int[wireCount];
+	boolean queued[] = new boolean[wireCount];
+	int orderLength = 0;
+	for (i = 0; i != wireCount; i++) {
+	    if (waiting[i*2] == 0 || waiting[i*2+1] == 0) {
+		queued[i] = true;
+		wireInfoList.get(i).post = (waiting[i*2] == 0) ? 0 : 1;
+		order[orderLength++] = i;
+	    }
+	}
+	int head;
+	for (head = 0; head != orderLength; head++) {
+	    int w = order[head];
+	    int d;
+	    for (d = dependentStart[w]; d != dependentStart[w+1]; d++) {
+		int dw = dependents[d] >> 1;
+		waiting[dependents[d]]--;
+		if (!queued[dw] && (waiting[dw*2] == 0 || waiting[dw*2+1] == 0)) {
+		    queued[dw] = true;
+		    wireInfoList.get(dw).post = (waiting[dw*2] == 0) ? 0 : 1;
+		    order[orderLength++] = dw;
+		}
+	    }
+	}
+
+	// anything left over is in a loop of wires, or is a labeled node that needs the others
+	if (orderLength != wireCount) {
+	    for (i = 0; i != wireCount; i++)
+		if (!queued[i] && !labelNeighbors && wireInfoList.get(i).wire.device instanceof LabeledNodeDevice)
+		    return calcWireInfo(true);
+	    for (i = 0; i != wireCount; i++)
+		if (!queued[i]) {
+		    stop("wire loop detected", wireInfoList.get(i).wire);
+		    return false;
+		}
+	}
+
+	// put the list in order, and use the end that was ready when the wire was queued
+	Vector<WireInfo> sorted = new Vector<WireInfo>(wireCount);
+	for (i = 0; i != wireCount; i++) {
+	    int w = order[i];
+	    WireInfo wi = wireInfoList.get(w);
+	    CircuitNode cn1 = nodeList.get(wi.wire.getNode(0));
+	    int n0 = neighborStart[w*2+wi.post], n1 = neighborStart[w*2+wi.post+1];
+	    Point p = wi.wire.getPost(wi.post);
+	    wi.neighbors = new SimElm[n1-n0];
+	    wi.neighborPosts = new int[n1-n0];
+	    for (k = n0; k != n1; k++) {
+		SimElm ce = cn1.links.get(neighborLinks[k]).elm;
+		wi.neighbors[k-n0] = ce;
+		wi.neighborPosts[k-n0] = ce.getNodeAtPoint(p.x, p.y);
+	    }
+	    sorted.add(wi);
+	}
+	wireInfoList = sorted;
+	return true;
+    }
+
+    // find or allocate ground node
+    void setGroundNode() {
+	int i;
+	boolean gotGround = false;
+	boolean gotRail = false;
+	SimElm volt = null;
+	    
+	//System.out.println("ac1");
+	// look for voltage or ground element
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (ce.device instanceof GroundDevice) {
+		gotGround = true;
+		
+		// set ground node to 0
+		postMap.setNode(postMap.add(ce.getPost(0)), 0);
+		break;
+	    }
+	    if (ce.device instanceof RailDevice)
+	    	gotRail = true;
+	    if (volt == null && ce.device instanceof VoltageDevice)
+	    	volt = ce;
+	}
+
+	// if no ground, and no rails, then the voltage elm's first terminal
+	// is ground
+	if (!gotGround && volt != null && !gotRail) {
+	    CircuitNode cn = new CircuitNode();
+	    Point pt = volt.getPost(0);
+	    nodeList.addElement(cn);
+
+	    // update node map
+	    postMap.setNode(postMap.add(pt), 0);
+	} else {
+	    // otherwise allocate extra node for ground
+	    CircuitNode cn = new CircuitNode();
+	    nodeList.addElement(cn);
+	}
+	topology.gotGround = gotGround;
+    }
+
+    // make list of nodes
+    void makeNodeList() {
+	int i;
+	int vscount = 0;
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    int kind[] = new int[ce.getPostCount()];
+	    makeElmNodes(ce, kind);
+	    topology.add(ce, kind);
+	    
+	    // also count voltage sources so we can allocate array
+	    vscount += ce.getVoltageSourceCount();
+	}
+	
+        voltageSources = new SimElm[vscount];
+    }
+
+    // allocate nodes for one element's posts and internal nodes.  kind[j] is set to record how
+    // post j was matched (see TopologyCache).
+    void makeElmNodes(SimElm ce, int kind[]) {
+	int j;
+	int inodes = ce.getInternalNodeCount();
+	int posts = ce.getPostCount();
+	
+	// allocate a node for each post and match posts to nodes
+	for (j = 0; j != posts; j++) {
+	    int p = postMap.add(ce.getPost(j));
+	    postMap.postCount[p]++;
+	    int n = postMap.getNode(p);
+	    
+	    // is the node number unallocated?
+	    // (we don't allocate nodes before this because changing the allocation order
+	    // of nodes changes circuit behavior and breaks backward compatibility;
+	    // the code below to connect unconnected nodes may connect a different node to ground) 
+	    if (n == -1) {
+		CircuitNode cn = new CircuitNode();
+		CircuitNodeLink cnl = new CircuitNodeLink();
+		cnl.num = j;
+		cnl.elm = ce;
+		cn.links.addElement(cnl);
+		ce.setNode(j, nodeList.size());
+		postMap.setNode(p, nodeList.size());
+		kind[j] = TopologyCache.POST_NEW;
+		nodeList.addElement(cn);
+	    } else {
+		CircuitNodeLink cnl = new CircuitNodeLink();
+		cnl.num = j;
+		cnl.elm = ce;
+		getCircuitNode(n).links.addElement(cnl);
+		ce.setNode(j, n);
+		kind[j] = TopologyCache.POST_JOINED;
+		// if it's the ground node, make sure the node voltage is 0,
+		// cause it may not get set later
+		if (n == 0)
+		    ce.setNodeVoltage(j, 0);
+	    }
+	}
+	for (j = 0; j != inodes; j++) {
+	    CircuitNode cn = new CircuitNode();
+	    cn.internal = true;
+	    CircuitNodeLink cnl = new CircuitNodeLink();
+	    cnl.num = j+posts;
+	    cnl.elm = ce;
+	    cn.links.addElement(cnl);
+	    ce.setNode(cnl.num, nodeList.size());
+	    nodeList.addElement(cn);
+	}
+    }
+    
+    Vector<Integer> unconnectedNodes;
+    Vector<SimElm> nodesWithGroundConnection;
+    int nodesWithGroundConnectionCount;
+    
+    void findUnconnectedNodes() {
+	int i, j, k;
+	
+	// determine nodes that are not connected indirectly to ground.
+	// all nodes must be connected to ground somehow, or else we
+	// will get a matrix error.
+	// We make a graph with an edge from node j to node k for each element that connects its
+	// posts j and k, and then find the nodes we can reach from ground.
+	int nodeCount = nodeList.size();
+	unconnectedNodes = new Vector<Integer>();
+	nodesWithGroundConnection = new Vector<SimElm>();
+	boolean closure[] = new boolean[nodeCount];
+	int queue[] = new int[nodeCount];
+	int queueLength = 0;
+	closure[0] = true;
+	queue[queueLength++] = 0;
+
+	// count edges leaving each node, and start from nodes with a ground connection
+	int edgeStart[] = new int[nodeCount+1];
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (ce.device instanceof WireDevice)
+		continue;
+	    int cnc = ce.getConnectionNodeCount();
+	    boolean hasGround = false;
+	    for (j = 0; j != cnc; j++) {
+		int jn = ce.getConnectionNode(j);
+		if (ce.hasGroundConnection(j)) {
+		    hasGround = true;
+		    if (!closure[jn]) {
+			closure[jn] = true;
+			queue[queueLength++] = jn;
+		    }
+		}
+		for (k = 0; k != cnc; k++)
+		    if (j != k && ce.getConnection(j, k))
+			edgeStart[jn+1]++;
+	    }
+	    if (hasGround)
+		nodesWithGroundConnection.add(ce);
+	}
+	for (i = 0; i != nodeCount; i++)
+	    edgeStart[i+1] += edgeStart[i];
+	int edges[] = new int[edgeStart[nodeCount]];
+	int edgePos[] = new int[nodeCount];
+	System.arraycopy(edgeStart, 0, edgePos, 0, nodeCount);
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (ce.device instanceof WireDevice)
+		continue;
+	    int cnc = ce.getConnectionNodeCount();
+	    for (j = 0; j != cnc; j++) {
+		int jn = ce.getConnectionNode(j);
+		for (k = 0; k != cnc; k++)
+		    if (j != k && ce.getConnection(j, k))
+			edges[edgePos[jn]++] = ce.getConnectionNode(k);
+	    }
+	}
+
+	// breadth-first search from ground.  When we run out of nodes, connect the first
+	// unconnected node to ground with a big resistor, and keep going from there.
+	int head = 0;
+	int next = 0;
+	while (true) {
+	    while (head < queueLength) {
+		int n = queue[head++];
+		int e;
+		for (e = edgeStart[n]; e != edgeStart[n+1]; e++) {
+		    int kn = edges[e];
+		    if (!closure[kn]) {
+			closure[kn] = true;
+			queue[queueLength++] = kn;
+		    }
+		}
+	    }
+	    while (next != nodeCount && (closure[next] || getCircuitNode(next).internal))
+		next++;
+	    if (next == nodeCount)
+		break;
+	    unconnectedNodes.add(next);
+	    log("node " + next + " unconnected");
+//	    stampResistor(0, next, 1e8);   // do this later in connectUnconnectedNodes()
+	    closure[next] = true;
+	    queue[queueLength++] = next;
+	}
+    }
+    
+    // take list of unconnected nodes, which we identified earlier, and connect them to ground
+    // with a big resistor.  otherwise we will get matrix errors.  The resistor has to be big,
+    // otherwise circuits like 555 Square Wave will break
+    void connectUnconnectedNodes() {
+	int i;
+	for (i = 0; i != unconnectedNodes.size(); i++) {
+	    int n = unconnectedNodes.get(i);
+	    stampResistor(0, n, 1e8);
+	}
+    }
+    
+    boolean validateCircuit() {
+	int i, j;
+	
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    // look for inductors with no current path
+	    if (ce.device instanceof InductorDevice) {
+		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
+						    ce.getNode(1));
+		if (!fpi.findPath(ce.getNode(0))) {
+//		    log(ce + " no path");
+		    ce.reset();
+		}
+	    }
+	    // look for current sources with no current path
+	    if (ce.device instanceof CurrentDevice) {
+		CurrentDevice cur = (CurrentDevice) ce.device;
+		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
+						    ce.getNode(1));
+		cur.broken = !fpi.findPath(ce.getNode(0));
+	    }
+	    if (ce.device instanceof VCCSDevice) {
+		VCCSDevice cur = (VCCSDevice) ce.device;
+		FindPathInfo fpi = new FindPathInfo(FindPathInfo.INDUCT, ce,
+						    cur.getOutputNode(0));
+		cur.broken = cur.hasCurrentOutput() && !fpi.findPath(cur.getOutputNode(1));
+	    }
+	    
+	    // look for voltage source or wire loops.  we do this for voltage sources
+	    if (ce.getPostCount() == 2) {
+		if (ce.device instanceof VoltageDevice) {
+		    FindPathInfo fpi = new FindPathInfo(FindPathInfo.VOLTAGE, ce,
+						    ce.getNode(1));
+		    if (fpi.findPath(ce.getNode(0))) {
+			stop("Voltage source/wire loop with no resistance!", ce);
+			return false;
+		    }
+		}
+	    }
+
+	    // look for path from rail to ground
+	    if (ce.device instanceof RailDevice || ce.device instanceof LogicInputDevice) {
+		FindPathInfo fpi = new FindPathInfo(FindPathInfo.VOLTAGE, ce, ce.getNode(0));
+		if (fpi.findPath(0)) {
+		    stop("Path to ground with no resistance!", ce);
+		    return false;
+		}
+	    }
+	    
+	    // look for shorted caps, or caps w/ voltage but no R
+	    if (ce.device instanceof CapacitorDevice) {
+		FindPathInfo fpi = new FindPathInfo(FindPathInfo.SHORT, ce,
+						    ce.getNode(1));
+		if (fpi.findPath(ce.getNode(0))) {
+		    log(ce + " shorted");
+		    ce.reset();
+		    ((CapacitorDevice) ce.device).shorted();
+		} else {
+		    // a capacitor loop used to cause a matrix error. but we changed the capacitor model
+		    // so it works fine now. The only issue is if a capacitor is added in parallel with
+		    // another capacitor with a nonzero voltage; in that case we will get oscillation unless
+		    // we reset both capacitors to have the same voltage. Rather than check for that, we just
+		    // give an error.
+		    fpi = new FindPathInfo(FindPathInfo.CAP_V, ce, ce.getNode(1));
+		    if (fpi.findPath(ce.getNode(0))) {
+			stop("Capacitor loop with no resistance!", ce);
+			return false;
+		    }
+		}
+	    }
+	}
+	return true;
+    }
+    
+    // analyze the circuit when something changes, so it can be simulated
+    void analyzeCircuit() {
+	stopMessage = null;
+	if (getElmList().isEmpty()) {
+	    topology = null;
+	    return;
+	}
+	int i, j;
+	predictorCount = 0;
+	multirateStepper = null;
+	voltStart = callStart = null;
+
+	// allocate nodes and voltage sources.  if only a few elements changed, we can just
+	// update the node list, and the info for the wires on the nodes that changed.
+	Vector<CircuitNode> changedNodes = null;
+	if (topology == null || !topology.update())
+	    makeAllNodes();
+	else
+	    changedNodes = topology.changedNodes;
+	
+	// start from scratch next time if we found a wire loop
+	if (!updateWireInfo(changedNodes)) {
+	    topology = null;
+	    return;
+	}
+
+	if (changedNodes != null && validateTopology) {
+	    TopologyCache inc = topology;
+	    Vector<CircuitNode> incList = nodeList;
+	    Vector<WireInfo> incWires = wireInfoList;
+	    makeAllNodes();
+	    if (!updateWireInfo(null)) {
+		topology = null;
+		return;
+	    }
+	    String err = inc.compare(topology, incList);
+	    if (err == null)
+		err = compareWireInfo(incWires, wireInfoList);
+	    if (err != null)
+		log("incremental analysis is wrong: " + err);
+	}
+	
+	int vscount = 0;
+	circuitNonLinear = false;
+
+	// determine if circuit is nonlinear.  also set voltage sources
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    if (ce.nonLinear())
+		circuitNonLinear = true;
+	    int ivs = ce.getVoltageSourceCount();
+	    for (j = 0; j != ivs; j++) {
+		voltageSources[vscount] = ce;
+		ce.setVoltageSource(j, vscount++);
+	    }
+	}
+	voltageSourceCount = vscount;
+
+	findUnconnectedNodes();
+	if (!validateCircuit())
+	    return;
+	
+	nodesWithGroundConnectionCount = nodesWithGroundConnection.size();
+	// only need this for validation
+	nodesWithGroundConnection = null;
+	
+	timeStep = maxTimeStep;
+	targetTimeStep = maxTimeStep;
+	needsStamp = true;
+    }
+
+    // allocate all nodes from scratch
+    void makeAllNodes() {
+	nodeList = new Vector<CircuitNode>();
+	topology = new TopologyCache(this);
+	calculateWireClosure();
+	setGroundNode();
+	makeNodeList();
+    }
+
+    // stamp the matrix, meaning populate the matrix as required to simulate the circuit (for all linear elements, at least)
+    void stampCircuit() {
+	int i;
+	allocMatrix(nodeList.size(), voltageSourceCount);
+	nodeVoltages = new double[nodeList.size()-1];
+	if (lastNodeVoltages == null || lastNodeVoltages.length != nodeVoltages.length)
+	    lastNodeVoltages = new double[nodeList.size()-1];
+	
+	stampElements();
+
+	if (!finishStamp())
+	    return;
+	
+	// copy elmList to an array to avoid a bunch of calls to canCast() when doing simulation
+	elmArr = new SimElm[getElmList().size()];
+	for (i = 0; i != getElmList().size(); i++)
+	    elmArr[i] = getElm(i);
+	makeNodeVoltageTables();
+
+	needsStamp = false;
+
+	if (multirate && adjustTimeStep && lteTimeStep && !dcAnalysisFlag) {
+	    if (multirateStepper == null)
+		multirateStepper = new MultirateStepper(this);
+	    if (!multirateStepper.setup())
+		multirateStepper = null;
+	} else
+	    multirateStepper = null;
+    }
+
+    void stampElements() {
+	int i;
+	connectUnconnectedNodes();
+
+	// stamp linear circuit elements.  with multirate integration, each element is stamped
+	// with the timestep of its partition.
+	double ts = timeStep;
+	for (i = 0; i != getElmList().size(); i++) {
+	    SimElm ce = getElm(i);
+	    ce.setParentList(getElmList());
+	    if (multirateStepper != null)
+		timeStep = multirateStepper.getStampTimeStep(i);
+	    ce.stamp();
+	}
+	timeStep = ts;
+    }
+
+    // stamp the circuit again after the timestep changed.  Only the values of the entries
+    // change, so we can usually skip the simplification and analysis (see beginRestamp()).
+    void restampCircuit() {
+	// the multirate stepper has to split the new matrix into partitions again
+	if (needsStamp || multirateStepper != null || !beginRestamp()) {
+	    stampCircuit();
+	    return;
+	}
+	stampElements();
+	if (!finishRestamp())
+	    stampCircuit();
+    }
+
+    // nodes visited by each FindPathInfo: a node has been visited if its entry is that search's
+    // mark.  Sharing one array saves clearing a new one for every element validateCircuit() checks.
+    int pathVisited[];
+    int pathMark;
+
+    class FindPathInfo {
+	static final int INDUCT  = 1;
+	static final int VOLTAGE = 2;
+	static final int SHORT   = 3;
+	static final int CAP_V   = 4;
+	int mark;
+	int dest;
+	SimElm firstElm;
+	int type;
+
+	// State object to help find loops in circuit subject to various conditions (depending on type_)
+	// elm_ = source and destination element.  dest_ = destination node.
+	FindPathInfo(int type_, SimElm elm_, int dest_) {
+	    dest = dest_;
+	    type = type_;
+	    firstElm = elm_;
+	    if (pathVisited == null || pathVisited.length != nodeList.size()) {
+		pathVisited = new int[nodeList.size()];
+		pathMark = 0;
+	    }
+	    mark = ++pathMark;
+	}
+
+	// nodes we have reached but not looked at yet.  This is a breadth first search, with our
+	// own queue so long chains of elements don't overflow the Java stack, and so we stop as
+	// soon as we reach dest instead of following the chain to its end first.
+	int queue[];
+	int queueHead, queueTail;
+	boolean found;
+
+	void push(int n) {
+	    if (n == dest)
+		found = true;
+	    // don't need to revisit already visited nodes!
+	    if (pathVisited[n] == mark)
+		return;
+	    pathVisited[n] = mark;
+	    if (queueTail == queue.length)
+		queue = Arrays.copyOf(queue, queueTail*2);
+	    queue[queueTail++] = n;
+	}
+
+	// look through circuit for loop starting at node n1 of firstElm, for a path back to
+	// dest node of firstElm
+	boolean findPath(int n1) {
+	    queue = new int[16];
+	    queueHead = queueTail = 0;
+	    found = false;
+	    push(n1);
+	    CircuitNode dn = getCircuitNode(dest);
+	    while (!found && queueHead < queueTail) {
+		int n = queue[queueHead++];
+		CircuitNode cn = getCircuitNode(n);
+		int i;
+		if (cn == null)
+		    continue;
+		// if this node has more links than dest (like ground, in a ladder of inductors and
+		// capacitors), first try the elements on dest, which may join the two directly
+		if (dn != null && cn.links.size() > dn.links.size()) {
+		    for (i = 0; i != dn.links.size() && !found; i++)
+			checkElm(n, dn.links.get(i).elm);
+		    if (found)
+			break;
+		}
+		for (i = 0; i != cn.links.size(); i++)
+		    checkElm(n, cn.links.get(i).elm);
+		if (n == 0) {
+		    for (i = 0; i != nodesWithGroundConnection.size(); i++)
+			checkElm(0, nodesWithGroundConnection.get(i));
+		}
+	    }
+	    return found;
+	}
+	
+	// queue the nodes we can get to from node n1 through ce
+	void checkElm(int n1, SimElm ce) {
+		if (ce == firstElm)
+		    return;
+		if (type == INDUCT) {
+		    // inductors need a path free of current sources
+		    if (ce.device instanceof CurrentDevice)
+			return;
+		}
+		if (type == VOLTAGE) {
+		    // when checking for voltage loops, we only care about voltage sources/wires/ground
+		    if (!(ce.isWireEquivalent() || ce.device instanceof VoltageDevice || ce.device instanceof GroundDevice))
+			return;
+		}
+		// when checking for shorts, just check wires
+		if (type == SHORT && !ce.isWireEquivalent())
+		    return;
+		if (type == CAP_V) {
+		    // checking for capacitor/voltage source loops
+		    if (!(ce.isWireEquivalent() || ce.device instanceof CapacitorDevice || ce.device instanceof VoltageDevice))
+			return;
+		}
+		if (n1 == 0) {
+		    // look for posts which have a ground connection;
+		    // our path can go through ground
+		    int j;
+		    for (j = 0; j != ce.getConnectionNodeCount(); j++)
+			if (ce.hasGroundConnection(j))
+			    push(ce.getConnectionNode(j));
+		}
+		int j;
+		for (j = 0; j != ce.getConnectionNodeCount(); j++) {
+		    if (ce.getConnectionNode(j) == n1) {
+			if (ce.hasGroundConnection(j))
+			    push(0);
+			if (type == INDUCT && ce.device instanceof InductorDevice) {
+			    // inductors can use paths with other inductors of matching current
+			    double c = ce.getCurrent();
+			    if (j == 0)
+				c = -c;
+			    if (Math.abs(c-firstElm.getCurrent()) > 1e-10)
+				continue;
+			}
+			int k;
+			for (k = 0; k != ce.getConnectionNodeCount(); k++) {
+			    if (j == k)
+				continue;
+			    if (ce.getConnection(j, k))
+				push(ce.getConnectionNode(k));
+			}
+		    }
+		}
+	}
+    }
+    
+    // node voltages and times of the last few timesteps, newest first, for the Newton predictor
+    static final int PREDICTOR_HISTORY = 3;
+    double predictorVoltages[][];
+    double predictorTimes[] = new double[PREDICTOR_HISTORY];
+    int predictorCount;
+    // the predicted node voltages, reused every step
+    double predictedVoltages[];
+    
+    // size of step we'd like to take when adjustTimeStep is set.  The step we actually take
+    // may be cut short, see getNextTimeStep().
+    double targetTimeStep;
+    
+    // whether the next step ends on nextBreakpoint
+    boolean stepToBreakpoint;
+    
+    // size of the next step when adjusting the timestep.  This is targetTimeStep, cut short
+    // so that we land exactly on the end of the current maxTimeStep interval (so timeStepCount
+    // is incremented at exact multiples of maxTimeStep, which keeps elements that count timesteps,
+    // like TransLineElm, correct) and on the next breakpoint (so source edges aren't smeared
+    // out over a whole step).
+    double getNextTimeStep() {
+	// maxTimeStep may have been reduced since the interval started
+	if (timeStepAccum >= maxTimeStep)
+	    timeStepAccum = 0;
+	double ts = Math.min(targetTimeStep, maxTimeStep-timeStepAccum);
+	stepToBreakpoint = false;
+	if (!breakpointTimeStep)
+	    return ts;
+	nextBreakpoint = Double.MAX_VALUE;
+	int i;
+	for (i = 0; i != elmArr.length; i++)
+	    elmArr[i].registerBreakpoints();
+	double left = nextBreakpoint-t;
+	// if the breakpoint is just past the end of the step, we snap t to it at the end of
+	// the step rather than take a tiny step afterwards.  Either way the step is exactly
+	// the distance to the breakpoint, so t and timeStepAccum agree.
+	stepToBreakpoint = (left <= ts*(1+1e-6));
+	if (stepToBreakpoint)
+	    ts = left;
+	return ts;
+    }
+    
+    // pick the size of the next step from the truncation error of the elements.  We only
+    // use maxTimeStep divided by a power of 2, so we don't have to restamp the circuit
+    // every time the limit changes a little.
+    void chooseLteTimeStep() {
+	double limit = Double.MAX_VALUE;
+	int i;
+	for (i = 0; i != elmArr.length; i++)
+	    limit = Math.min(limit, elmArr[i].getTimeStepLimit());
+	// don't grow the step by more than a factor of 2 at once
+	double ts = Math.min(targetTimeStep*2, maxTimeStep);
+	while (ts > limit && ts/2 >= minTimeStep)
+	    ts /= 2;
+	if (ts != targetTimeStep)
+	    log("timestep = " + ts + " at " + t + " (truncation error)");
+	targetTimeStep = ts;
+    }
+    
+    // total subiterations and timesteps of nonlinear circuits, with the predictor off [0] and on [1]
+    int subIterationTotal[] = new int[2], subIterationSteps[] = new int[2];
+    
+    // save the node voltages of the timestep we just finished
+    void savePredictorHistory() {
+	int n = lastNodeVoltages.length;
+	if (predictorVoltages == null || predictorVoltages[0].length != n) {
+	    predictorVoltages = new double[PREDICTOR_HISTORY][n];
+	    predictedVoltages = new double[n];
+	    predictorCount = 0;
+	}
+	// reuse the oldest array
+	double v[] = predictorVoltages[PREDICTOR_HISTORY-1];
+	int i;
+	for (i = PREDICTOR_HISTORY-1; i > 0; i--) {
+	    predictorVoltages[i] = predictorVoltages[i-1];
+	    predictorTimes[i] = predictorTimes[i-1];
+	}
+	System.arraycopy(nodeVoltages, 0, v, 0, n);
+	predictorVoltages[0] = v;
+	predictorTimes[0] = t;
+	if (predictorCount < PREDICTOR_HISTORY)
+	    predictorCount++;
+    }
+    
+    // guess the node voltages at the end of the next timestep by fitting a line (or parabola, if
+    // we have three points) through the last few timesteps, and use that as the starting point
+    // for the first subiteration instead of the last solution.  Nonlinear elements still limit
+    // their voltage steps relative to the last point where they were evaluated (lastvoltdiff
+    // etc.), so a bad guess can't throw them too far off.
+    void predictNodeVoltages() {
+	if (predictorCount < 2 || predictorVoltages[0].length != lastNodeVoltages.length)
+	    return;
+	double tn = t+timeStep;
+	double t0 = predictorTimes[0], t1 = predictorTimes[1];
+	double w0, w1, w2 = 0;
+	if (predictorCount == 2) {
+	    w0 = (tn-t1)/(t0-t1);
+	    w1 = (tn-t0)/(t1-t0);
+	} else {
+	    double t2 = predictorTimes[2];
+	    w0 = (tn-t1)*(tn-t2)/((t0-t1)*(t0-t2));
+	    w1 = (tn-t0)*(tn-t2)/((t1-t0)*(t1-t2));
+	    w2 = (tn-t0)*(tn-t1)/((t2-t0)*(t2-t1));
+	}
+	if (Double.isNaN(w0+w1+w2) || Double.isInfinite(w0+w1+w2))
+	    return;
+	double v0[] = predictorVoltages[0], v1[] = predictorVoltages[1], v2[] = predictorVoltages[2];
+	double pv[] = predictedVoltages;
+	int i;
+	for (i = 0; i != pv.length; i++)
+	    pv[i] = w0*v0[i] + w1*v1[i] + w2*v2[i];
+	setNodeVoltages(pv);
+    }
+
+    // iterations in a row that converged quickly, used to grow the timestep again.  The
+    // caller sets this before a run of timesteps.
+    int goodIterations;
+
+    // number of timesteps taken (for the step rate display)
+    int steps;
+
+    // take one timestep, reducing it and trying again if it fails to converge, or let the
+    // multirate stepper advance every partition by maxTimeStep.  Wire currents are calculated
+    // at the end unless delayWireProcessing is set.  Returns false if we stopped.
+    boolean runTimeStep(boolean delayWireProcessing) {
+	// choose each step with getNextTimeStep() (otherwise the timestep is only halved when
+	// convergence fails and doubled again after a few good steps)
+	boolean steppedTimeStep = adjustTimeStep && (lteTimeStep || breakpointTimeStep);
+	boolean debugprint = dumpMatrix;
+	dumpMatrix = false;
+	
+	while (true) {
+	    if (multirateStepper != null) {
+		// each partition takes its own steps up to the end of the interval
+		steps++;
+		if (!multirateStepper.step())
+		    return false;
+		timeStepCount++;
+		timeStepAccum = 0;
+		finishTimeStep(delayWireProcessing);
+		return true;
+	    }
+	    if (steppedTimeStep) {
+		if (!lteTimeStep && goodIterations >= 3 && targetTimeStep < maxTimeStep) {
+		    // things are going well, double the time step
+		    targetTimeStep = Math.min(targetTimeStep*2, maxTimeStep);
+		    log("timestep up = " + targetTimeStep + " at " + t);
+		    goodIterations = 0;
+		}
+		double ts = getNextTimeStep();
+		if (ts != timeStep) {
+		    timeStep = ts;
+		    restampCircuit();
+		}
+	    } else if (goodIterations >= 3 && timeStep < maxTimeStep) {
+		// things are going well, double the time step
+		timeStep = Math.min(timeStep*2, maxTimeStep);
+		log("timestep up = " + timeStep + " at " + t);
+		restampCircuit();
+		goodIterations = 0;
+	    }
+	    
+	    int i, j, subiter;
+	    startElementIteration();
+	    steps++;
+	    boolean predicted = newtonPredictor && circuitNonLinear;
+	    if (predicted)
+		predictNodeVoltages();
+	    int subiterCount = (adjustTimeStep && timeStep/2 > minTimeStep) ? 100 : 5000;
+	    for (subiter = 0; subiter != subiterCount; subiter++) {
+		converged = true;
+		subIterations = subiter;
+//		if (t % .030 < .002 && timeStep > 1e-6)  // force nonconvergence for debugging
+//		    converged = false;
+		restoreMatrix();
+		doElementSteps(subiter);
+		if (stopMessage != null)
+		    return false;
+		boolean printit = debugprint;
+		debugprint = false;
+		if (circuitMatrixSize < 8) {
+		    // we only need this for debugging purposes, so skip it for large matrices 
+		    for (i = 0; i != circuitMatrixSize; i++) {
+			for (j = 0; j != circuitMatrix.rowLength[i]; j++) {
+			    double x = circuitMatrix.rowValues[i][j];
+			    if (Double.isNaN(x) || Double.isInfinite(x)) {
+				stop("nan/infinite matrix!", null);
+				log("circuitMatrix " + i + " " + circuitMatrix.rowCols[i][j] + " is " + x);
+				return false;
+			    }
+			}
+		    }
+		}
+		if (printit) {
+		    for (j = 0; j != circuitMatrixSize; j++) {
+			String x = "";
+			for (i = 0; i != circuitMatrixSize; i++)
+			    x += circuitMatrix.get(j, i) + ",";
+			x += "\n";
+			log(x);
+		    }
+		    log("done");
+		}
+		// stop if converged (elements check for convergence in doStep())
+		if (circuitNonLinear && converged && subiter > 0)
+		    break;
+		if (!solveMatrix())
+		    return false;
+		applySolvedRightSide(circuitRightSide);
+		if (!circuitNonLinear)
+		    break;
+	    }
+	    if (subiter == subiterCount) {
+		// convergence failed
+		goodIterations = 0;
+		double failedTimeStep = timeStep;
+		if (adjustTimeStep) {
+		    timeStep /= 2;
+		    targetTimeStep = timeStep;
+		    log("timestep down to " + timeStep + " at " + t);
+		}
+		timeStepFailed(failedTimeStep, subiter);
+		if (timeStep < minTimeStep || !adjustTimeStep) {
+		    log("convergence failed after " + subiter + " iterations");
+		    stop("Convergence failed!", null);
+		    return false;
+		}
+		// we reduced the timestep.  reset circuit state to the way it was at start of iteration
+		setNodeVoltages(lastNodeVoltages);
+		restampCircuit();
+		continue;
+	    }
+	    timeStepConverged(subiter);
+	    if (subiter > 5 || timeStep < maxTimeStep)
+		log("converged after " + subiter + " iterations, timeStep = " + timeStep);
+	    if (subiter < 3)
+		goodIterations++;
+	    else
+		goodIterations = 0;
+	    if (circuitNonLinear) {
+		int pi = predicted ? 1 : 0;
+		subIterationTotal[pi] += subiter;
+		subIterationSteps[pi]++;
+	    }
+	    if (steppedTimeStep) {
+		// land exactly on the breakpoint so elements see the new value of the source.
+		// getNextTimeStep() made timeStep the distance to it.
+		t = stepToBreakpoint ? nextBreakpoint : t+timeStep;
+		timeStepAccum += timeStep;
+		// getNextTimeStep() makes sure we don't pass the end of the interval (except by
+		// roundoff, or by snapping to a breakpoint just past it)
+		if (timeStepAccum >= maxTimeStep*(1-1e-9)) {
+		    timeStepAccum = Math.max(timeStepAccum-maxTimeStep, 0);
+		    timeStepCount++;
+		}
+	    } else {
+		t += timeStep;
+		timeStepAccum += timeStep;
+		if (timeStepAccum >= maxTimeStep) {
+		    timeStepAccum -= maxTimeStep;
+		    timeStepCount++;
+		}
+	    }
+	    finishElementSteps();
+	    if (adjustTimeStep && lteTimeStep)
+		chooseLteTimeStep();
+	    finishTimeStep(delayWireProcessing);
+	    // save last node voltages so we can restart the next iteration if necessary
+	    for (i = 0; i != lastNodeVoltages.length; i++)
+		lastNodeVoltages[i] = nodeVoltages[i];
+	    if (newtonPredictor)
+		savePredictorHistory();
+//	    log("set lastrightside at " + t + " " + lastNodeVoltages);
+	    return true;
+	}
+    }
+
+    // call startIteration(), doStep() and stepFinished() on every element.  CirSim overrides
+    // these to time the elements or watch them converge.
+    void startElementIteration() {
+	int i;
+	for (i = 0; i != elmArr.length; i++)
+	    elmArr[i].startIteration();
+    }
+    void doElementSteps(int subiter) {
+	int i;
+	for (i = 0; i != elmArr.length && stopMessage == null; i++)
+	    elmArr[i].doStep();
+    }
+    void finishElementSteps() {
+	int i;
+	for (i = 0; i != elmArr.length; i++)
+	    elmArr[i].stepFinished();
+    }
+
+    // called when a timestep converged after subiter+1 subiterations, or failed to converge
+    // after subiter subiterations (and timeStep has been reduced, if we're adjusting it)
+    void timeStepConverged(int subiter) {}
+    void timeStepFailed(double failedTimeStep, int subiter) {}
+
+    // update wire currents after a timestep.  CirSim also updates the scopes here.
+    void finishTimeStep(boolean delayWireProcessing) {
+	if (!delayWireProcessing)
+	    calcWireCurrents();
+    }
+
+    // set node voltages given right side found by solving matrix
+    void applySolvedRightSide(double rs[]) {
+//	log("setvoltages " + rs);
+	int j;
+	for (j = 0; j != circuitMatrixFullSize; j++) {
+	    double res = getSolvedValue(rs, j);
+	    if (Double.isNaN(res)) {
+		converged = false;
+		break;
+	    }
+	    if (j < nodeList.size()-1) {
+		nodeVoltages[j] = res;
+	    } else {
+		int ji = j-(nodeList.size()-1);
+		voltageSources[ji].setCurrent(ji, res);
+	    }
+	}
+	
+	setNodeVoltages(nodeVoltages);
+    }
+    
+    // set node voltages in each element given an array of node voltages
+    void setNodeVoltages(double nv[]) {
+	int j, k;
+	if (voltStart == null || voltStart.length != nv.length+1) {
+	    // not stamped yet
+	    for (j = 0; j != nv.length; j++) {
+		double res = nv[j];
+		CircuitNode cn = getCircuitNode(j+1);
+		for (k = 0; k != cn.links.size(); k++) {
+		    CircuitNodeLink cnl = cn.links.elementAt(k);
+		    cnl.elm.setNodeVoltage(cnl.num, res);
+		}
+	    }
+	    return;
+	}
+	for (j = 0; j != nv.length; j++) {
+	    double res = nv[j];
+	    for (k = voltStart[j]; k != voltStart[j+1]; k++)
+		voltElms[k].volts[voltPosts[k]] = res;
+	    for (k = callStart[j]; k != callStart[j+1]; k++)
+		callElms[k].setNodeVoltage(callPosts[k], res);
+	}
+    }
+
+    // set the voltage of node j+1 (row j of the matrix) in the elements connected to it
+    void scatterNodeVoltage(int j, double res) {
+	int k;
+	for (k = voltStart[j]; k != voltStart[j+1]; k++)
+	    voltElms[k].volts[voltPosts[k]] = res;
+	for (k = callStart[j]; k != callStart[j+1]; k++)
+	    callElms[k].setNodeVoltage(callPosts[k], res);
+    }
+
+    // build the tables used by setNodeVoltages().  Node j+1's links are split into elements we
+    // can write volts[] for directly (voltStart[j] to voltStart[j+1]), and ones that need a call to
+    // setNodeVoltage() (callStart[j] to callStart[j+1]).
+    void makeNodeVoltageTables() {
+	int n = nodeList.size()-1;
+	int j, k;
+	voltStart = new int[n+1];
+	callStart = new int[n+1];
+	for (j = 0; j != n; j++) {
+	    Vector<CircuitNodeLink> links = getCircuitNode(j+1).links;
+	    int direct = 0;
+	    for (k = 0; k != links.size(); k++)
+		if (links.get(k).elm.storesNodeVoltageOnly())
+		    direct++;
+	    voltStart[j+1] = voltStart[j] + direct;
+	    callStart[j+1] = callStart[j] + links.size()-direct;
+	}
+	voltElms = new SimElm[voltStart[n]];
+	voltPosts = new int[voltStart[n]];
+	callElms = new SimElm[callStart[n]];
+	callPosts = new int[callStart[n]];
+	int vi = 0, ci = 0;
+	for (j = 0; j != n; j++) {
+	    Vector<CircuitNodeLink> links = getCircuitNode(j+1).links;
+	    for (k = 0; k != links.size(); k++) {
+		CircuitNodeLink cnl = links.get(k);
+		if (cnl.elm.storesNodeVoltageOnly()) {
+		    voltElms[vi] = cnl.elm;
+		    voltPosts[vi++] = cnl.num;
+		} else {
+		    callElms[ci] = cnl.elm;
+		    callPosts[ci++] = cnl.num;
+		}
+	    }
+	}
+    }
+    
+    // we removed wires from the matrix to speed things up.  in order to display wire currents,
+    // we need to calculate them now.
+    void calcWireCurrents() {
+	int i;
+	
+	// for debugging
+	//for (i = 0; i != wireInfoList.size(); i++)
+	 //   wireInfoList.get(i).wire.setCurrent(-1, 1.23);
+	
+	for (i = 0; i != wireInfoList.size(); i++) {
+	    WireInfo wi = wireInfoList.get(i);
+	    double cur = 0;
+	    int j;
+	    for (j = 0; j != wi.neighbors.length; j++)
+		cur += wi.neighbors[j].getCurrentIntoNode(wi.neighborPosts[j]);
+	    // get correct current polarity
+	    // (LabeledNodes may have wi.post == 1, in which case we flip the current sign)
+	    if (wi.post == 0 || (wi.wire.device instanceof LabeledNodeDevice))
+		wi.wire.setCurrent(-1, cur);
+	    else
+		wi.wire.setCurrent(-1, -cur);
+	}
+    }
+}
@@ -0,0 +1,255 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Generates circuit text for large circuits with a regular structure, to see how the
+// simulator scales with circuit size.  generate() takes the name of a topology and the
+// approximate number of nodes, and returns text that can be passed to readCircuit().  The
+// browser version loads a generated circuit with ?generate=<topology>&size=<nodes> in the URL,
+// and the headless ScalingBenchmark times the same circuits over a range of sizes.
+//
+// Long chains are broken into rows, with labeled nodes joining the end of each row to the
+// start of the next, so that the circuit still fits on a reasonable canvas.
+class CircuitGenerator {
+    static final String topologies[] = {
+	"rc-ladder", "lc-ladder", "mesh", "inverters", "counter", "transline", "wires"
+    };
+
+    StringBuilder sb = new StringBuilder();
+    int perRow;
+
+    static boolean isTopology(String name) {
+	int i;
+	for (i = 0; i != topologies.length; i++)
+	    if (topologies[i].equals(name))
+		return true;
+	return false;
+    }
+
+    // returns null if the topology is unknown
+    static String generate(String topology, int nodes) {
+	CircuitGenerator g = new CircuitGenerator();
+	nodes = Math.max(nodes, 1);
+	if (topology.equals("rc-ladder"))
+	    g.rcLadder(nodes, false);
+	else if (topology.equals("lc-ladder"))
+	    g.rcLadder(nodes, true);
+	else if (topology.equals("mesh"))
+	    g.mesh((int) Math.max(2, Math.round(Math.sqrt(nodes))));
+	else if (topology.equals("inverters"))
+	    g.inverters(Math.max(1, nodes/2));
+	else if (topology.equals("counter"))
+	    g.counter(Math.max(1, nodes/6));
+	else if (topology.equals("transline"))
+	    g.transLine(Math.max(1, nodes/3));
+	else if (topology.equals("wires"))
+	    g.wires(Math.max(1, nodes/(WIRES_PER_STAGE+1)));
+	else
+	    return null;
+	return g.sb.toString();
+    }
+
+    void options(String timeStep) {
+	sb.append("$ 0 " + timeStep + " 10.2 50 5 50 5e-11\n");
+    }
+
+    void elm(String type, int x1, int y1, int x2, int y2, int flags, String rest) {
+	sb.append(type + " " + x1 + " " + y1 + " " + x2 + " " + y2 + " " + flags);
+	if (rest != null)
+	    sb.append(" " + rest);
+	sb.append('\n');
+    }
+
+    // labeled node with its post at (x,y), drawn towards (x2,y2)
+    void label(int x, int y, int x2, int y2, String text) {
+	elm("207", x, y, x2, y2, 4, text);
+    }
+
+    void ground(int x, int y) {
+	elm("g", x, y, x, y+16, 0, "0");
+    }
+
+    // if stage i is at the end of a row, join its output at (x,y) to the input of the next
+    // stage, which is at the start of the next row, (0,ny)
+    void wrapRow(int i, int count, int x, int y, int ny) {
+	if (i % perRow != perRow-1 || i == count-1)
+	    return;
+	label(x, y, x+16, y, "row" + (i/perRow+1));
+	label(0, ny, -16, ny, "row" + (i/perRow+1));
+    }
+
+    // n stages, each a series resistor (or inductor) and a capacitor to ground, driven by a
+    // sine wave.  One node per stage.
+    void rcLadder(int n, boolean lc) {
+	options("5e-6");
+	perRow = 64;
+	elm("R", 0, 0, -32, 0, 0, "1 1000 5 0 0 0.5");
+	int i;
+	for (i = 0; i != n; i++) {
+	    int x = (i % perRow) * 64;
+	    int y = (i / perRow) * 128;
+	    if (lc)
+		elm("l", x, y, x+64, y, 0, "0.001 0 0");
+	    else
+		elm("r", x, y, x+64, y, 0, "1000");
+	    elm("c", x+64, y, x+64, y+64, 0, "1e-6 0 0");
+	    ground(x+64, y+64);
+	    wrapRow(i, n, x+64, y, y+128);
+	    // terminate LC ladder with its characteristic impedance
+	    if (lc && i == n-1) {
+		elm("r", x+64, y, x+128, y, 0, "31.6");
+		ground(x+128, y);
+	    }
+	}
+    }
+
+    // m x m grid of resistors, driven by a sine wave at one corner and grounded at the
+    // opposite corner
+    void mesh(int m) {
+	options("5e-6");
+	elm("R", 0, 0, -32, 0, 0, "1 1000 5 0 0 0.5");
+	int i, j;
+	for (i = 0; i != m; i++)
+	    for (j = 0; j != m; j++) {
+		int x = j*64;
+		int y = i*64;
+		if (j < m-1)
+		    elm("r", x, y, x+64, y, 0, "1000");
+		if (i < m-1)
+		    elm("r", x, y, x, y+64, 0, "1000");
+	    }
+	ground((m-1)*64, (m-1)*64);
+    }
+
+    // chain of n resistor-transistor inverters, driven by a square wave.  Two nodes per
+    // stage (base and collector).  Each collector has a small load capacitance, so the
+    // stages switch one after another instead of the whole chain having to converge at once
+    // (which takes more subiterations than we allow once the chain gets long).
+    void inverters(int n) {
+	options("1e-7");
+	perRow = 32;
+	elm("R", 0, 0, -32, 0, 0, "2 10000 2.5 2.5 0 0.5");
+	elm("R", -48, -64, -48, -80, 0, "0 40 5 0 0 0.5");
+	label(-48, -64, -32, -64, "vcc");
+	int i;
+	for (i = 0; i != n; i++) {
+	    int x = (i % perRow) * 128;
+	    int y = (i / perRow) * 160;
+	    elm("r", x, y, x+48, y, 0, "10000");
+	    elm("t", x+48, y, x+80, y, 0, "1 0 0 100 default");
+	    ground(x+80, y+16);
+	    elm("r", x+80, y-16, x+80, y-64, 0, "1000");
+	    label(x+80, y-64, x+80, y-80, "vcc");
+	    elm("w", x+80, y-16, x+112, y-16, 0, null);
+	    elm("c", x+112, y-16, x+112, y+16, 0, "1e-9 0 0");
+	    ground(x+112, y+16);
+	    elm("w", x+112, y-16, x+128, y-16, 0, null);
+	    elm("w", x+128, y-16, x+128, y, 0, null);
+	    wrapRow(i, n, x+128, y, y+160);
+	}
+    }
+
+    // n-bit ripple counter, clocked by a square wave.  Each bit is a positive-edge-triggered
+    // D flip-flop made from six 2- and 3-input NAND gates, with D connected to /Q; the clock
+    // of each bit is /Q of the one before.  The gates are wired with labeled nodes.  Six
+    // nodes per bit.
+    void counter(int n) {
+	options("5e-6");
+	perRow = 16;
+	elm("R", -64, 0, -96, 0, 0, "2 1000 2.5 2.5 0 0.5");
+	label(-64, 0, -48, 0, "clk");
+	int i;
+	for (i = 0; i != n; i++) {
+	    int x = (i % perRow) * 192;
+	    int y = (i / perRow) * 448;
+	    String s = "b" + i;
+	    String clk = (i == 0) ? "clk" : "b" + (i-1) + "nq";
+	    nand(x, y,     s + "a", s + "d", s + "b", null);
+	    nand(x, y+64,  s + "b", s + "a", clk, null);
+	    nand(x, y+128, s + "c", s + "b", clk, s + "d");
+	    nand(x, y+192, s + "d", s + "c", s + "nq", null);
+	    nand(x, y+256, s + "q", s + "b", s + "nq", null);
+	    nand(x, y+320, s + "nq", s + "q", s + "c", null);
+	}
+    }
+
+    // NAND gate at (x,y) with output out and two or three inputs, with a labeled node on
+    // each post.  See GateElm.setPoints() for where the inputs are.
+    void nand(int x, int y, String out, String in0, String in1, String in2) {
+	int count = (in2 == null) ? 2 : 3;
+	elm("151", x, y, x+96, y, 0, count + " 0 5");
+	label(x+96, y, x+112, y, out);
+	label(x, y+16, x-16, y+16, in0);
+	if (count == 2)
+	    label(x, y-16, x-16, y-16, in1);
+	else {
+	    label(x, y, x-16, y, in1);
+	    label(x, y-16, x-16, y-16, in2);
+	}
+    }
+
+    // chain of n 75 ohm transmission line segments, driven by a sine wave through a matched
+    // resistor and terminated with a matched load.  Three nodes per segment (the top
+    // conductor and two internal nodes).
+    void transLine(int n) {
+	options("1e-9");
+	perRow = 64;
+	elm("R", -64, 0, -96, 0, 0, "1 10000000 5 0 0 0.5");
+	elm("r", -64, 0, 0, 0, 0, "75");
+	int i;
+	for (i = 0; i != n; i++) {
+	    int x = (i % perRow) * 64;
+	    int y = (i / perRow) * 96;
+	    // the bottom conductor isn't connected from one end of a segment to the other, so
+	    // it has to be grounded at every joint, including the end of each row
+	    elm("171", x, y, x+64, y, 0, "1e-8 75 32 0");
+	    ground(x, y+32);
+	    if (i % perRow == perRow-1 || i == n-1)
+		ground(x+64, y+32);
+	    wrapRow(i, n, x+64, y, y+96);
+	    if (i == n-1)
+		elm("r", x+64, y, x+64, y+32, 0, "75");
+	}
+    }
+
+    static final int WIRES_PER_STAGE = 8;
+
+    // RC ladder with n stages like rcLadder(), but with each resistor joined to its capacitor
+    // by a run of WIRES_PER_STAGE wires.  The wires are merged into one node, so this mostly
+    // measures calculateWireClosure() and calcWireInfo().  WIRES_PER_STAGE+1 posts per stage,
+    // which become one node.
+    void wires(int n) {
+	options("5e-6");
+	perRow = 32;
+	elm("R", 0, 0, -32, 0, 0, "1 1000 5 0 0 0.5");
+	int i, j;
+	for (i = 0; i != n; i++) {
+	    int x = (i % perRow) * (64+WIRES_PER_STAGE*16);
+	    int y = (i / perRow) * 128;
+	    elm("r", x, y, x+64, y, 0, "1000");
+	    for (j = 0; j != WIRES_PER_STAGE; j++)
+		elm("w", x+64+j*16, y, x+80+j*16, y, 0, null);
+	    int xc = x+64+WIRES_PER_STAGE*16;
+	    elm("c", xc, y, xc, y+64, 0, "1e-6 0 0");
+	    ground(xc, y+64);
+	    wrapRow(i, n, xc, y, y+128);
+	}
+    }
+}
@@ -21,5 +21,5 @@ package com.lushprojects.circuitjs1.client;
 
 class CircuitNodeLink {
 	int num;
-	CircuitElm elm;
+	SimElm elm;
     }
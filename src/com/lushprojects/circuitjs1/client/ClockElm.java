@@ -22,9 +22,9 @@ package com.lushprojects.circuitjs1.client;
 class ClockElm extends RailElm {
 	public ClockElm(int xx, int yy) {
 	    super(xx, yy, WF_SQUARE);
-	    maxVoltage = 2.5;
-	    bias = 2.5;
-	    frequency = 100;
+	    source.maxVoltage = 2.5;
+	    source.bias = 2.5;
+	    source.frequency = 100;
 	    flags |= FLAG_CLOCK;
 	}
 	Class getDumpClass() { return RailElm.class; }
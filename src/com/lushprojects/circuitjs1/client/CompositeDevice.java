@@ -0,0 +1,308 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Vector;
+
+// element made up of other elements, for CompositeElm.  The elements inside are created by the
+// engine from their class names and dumps (see CircuitEngine.createCompositeElm()), and each
+// simulation call is passed on to them.  Each of our nodes is linked to the inner posts on it.
+class CompositeDevice extends Device {
+    // need to use escape() instead of converting spaces to _'s so composite elements can be nested
+    static final int FLAG_ESCAPE = 1;
+
+    // list of elements contained in this subcircuit
+    Vector<SimElm> compElmList;
+    
+    // list of nodes, mapping each one to a list of elements that reference that node
+    Vector<CircuitNode> compNodeList;
+    
+    int numPosts, numNodes;
+    Vector<VoltageSourceRecord> voltageSources;
+
+    CompositeDevice(CircuitEngine s) {
+	super(s);
+	compElmList = new Vector<SimElm>();
+	compNodeList = new Vector<CircuitNode>();
+	voltageSources = new Vector<VoltageSourceRecord>();
+    }
+
+    // create the elements in model, one per line, each followed by the numbers of the nodes its
+    // posts are on.  stIn has their dumps (escaped if useEscape is set, otherwise with _'s for
+    // spaces), or is null to create them with their default settings.
+    void loadComposite(StringTokenizer stIn, String model, int externalNodes[], boolean useEscape) {
+	HashMap<Integer, CircuitNode> compNodeHash = new HashMap<Integer, CircuitNode>();
+	StringTokenizer modelLinet = new StringTokenizer(model, "\r");
+	CircuitNode cn;
+	CircuitNodeLink cnLink;
+	VoltageSourceRecord vsRecord;
+
+	compElmList = new Vector<SimElm>();
+	compNodeList = new Vector<CircuitNode>();
+	voltageSources = new Vector<VoltageSourceRecord>();
+
+	// Build compElmList and compNodeHash from input string
+
+	while (modelLinet.hasMoreTokens()) {
+	    String line = modelLinet.nextToken();
+	    StringTokenizer stModel = new StringTokenizer(line, " +\t\n\r\f");
+	    String ceType = stModel.nextToken();
+	    StringTokenizer stCe = null;
+	    if (stIn != null) {
+		String dumpedCe = stIn.nextToken();
+		if (useEscape)
+		    dumpedCe = unescape(dumpedCe);
+		stCe = new StringTokenizer(dumpedCe, useEscape ? " " : "_");
+	    }
+	    SimElm newce = sim.createCompositeElm(ceType, stCe);
+	    // grounds in old subcircuits hold their node at 0 with a voltage source
+	    if (newce.device instanceof GroundDevice) {
+		newce.flags |= GroundDevice.FLAG_OLD_STYLE;
+		((GroundDevice) newce.device).oldStyle = true;
+	    }
+	    compElmList.add(newce);
+
+	    int thisPost = 0;
+	    while (stModel.hasMoreTokens()) {
+		int nodeOfThisPost = new Integer(stModel.nextToken()).intValue();
+
+		// node = 0 means ground
+		if (nodeOfThisPost == 0) {
+		    newce.setNode(thisPost, 0);
+		    newce.setNodeVoltage(thisPost, 0);
+		    thisPost++;
+		    continue;
+		}
+		cnLink = new CircuitNodeLink();
+		cnLink.num = thisPost;
+		cnLink.elm = newce;
+		if (!compNodeHash.containsKey(nodeOfThisPost)) {
+		    cn = new CircuitNode();
+		    cn.links.add(cnLink);
+		    compNodeHash.put(nodeOfThisPost, cn);
+		} else {
+		    cn = compNodeHash.get(nodeOfThisPost);
+		    cn.links.add(cnLink);
+		}
+		thisPost++;
+	    }
+	}
+
+	// Flatten compNodeHash in to compNodeList
+	numPosts = externalNodes.length;
+	for (int i = 0; i < externalNodes.length; i++) { // External Nodes First
+	    if (compNodeHash.containsKey(externalNodes[i])) {
+		compNodeList.add(compNodeHash.get(externalNodes[i]));
+		compNodeHash.remove(externalNodes[i]);
+	    } else
+		throw new IllegalArgumentException();
+	}
+	for (Entry<Integer, CircuitNode> entry : compNodeHash.entrySet()) {
+	    int key = entry.getKey();
+	    compNodeList.add(compNodeHash.get(key));
+	}
+
+	// allocate more nodes for sub-elements' internal nodes
+	for (int i = 0; i != compElmList.size(); i++) {
+	    SimElm ce = compElmList.get(i);
+	    int inodes = ce.getInternalNodeCount();
+	    for (int j = 0; j != inodes; j++) {
+		cnLink = new CircuitNodeLink();
+		cnLink.num = j + ce.getPostCount();
+		cnLink.elm = ce;
+		cn = new CircuitNode();
+		cn.links.add(cnLink);
+		compNodeList.add(cn);
+	    }
+	}
+
+	numNodes = compNodeList.size();
+
+	// Enumerate voltage sources
+	for (int i = 0; i < compElmList.size(); i++) {
+	    int cnt = compElmList.get(i).getVoltageSourceCount();
+	    for (int j=0;j < cnt ; j++) {
+		vsRecord = new VoltageSourceRecord();
+		vsRecord.elm = compElmList.get(i);
+		vsRecord.vsNumForElement = j;
+		voltageSources.add(vsRecord);
+	    }
+	}
+    }
+
+    int getPostCount() { return numPosts; }
+    int getInternalNodeCount() { return numNodes - numPosts; }
+    int getVoltageSourceCount() { return voltageSources.size(); }
+
+    boolean nonLinear() {
+	for (int i = 0; i < compElmList.size(); i++)
+	    if (compElmList.get(i).nonLinear())
+		return true;
+	return false;
+    }
+
+    // are n1 and n2 connected internally somehow?
+    boolean getConnection(int n1, int n2) {
+	Vector<Integer> connectedNodes = new Vector<Integer>();
+
+	// keep list of nodes connected to n1
+	connectedNodes.add(n1);
+	int i;
+	for (i = 0; i < connectedNodes.size(); i++) {
+	    // next node in list
+	    int n = connectedNodes.get(i);
+	    if (n == n2)
+		return true;
+	    
+	    // find all elements connected to n
+	    Vector<CircuitNodeLink> cnLinks = compNodeList.get(n).links;
+	    for (int j = 0; j < cnLinks.size(); j++) {
+		CircuitNodeLink link = cnLinks.get(j);
+		SimElm lelm = link.elm;
+		// loop through all other nodes this element has
+		for (int k = 0; k != lelm.getConnectionNodeCount(); k++)
+		    // are they connected?
+		    if (k != link.num && lelm.getConnection(link.num, k)) {
+			int kn = lelm.getConnectionNode(k);
+			if (kn == 0)
+			    return true;
+			int m;
+			// find local node number (kn is global) and add it to list
+			for (m = 0; m != nodes.length; m++)
+			    if (nodes[m] == kn && !connectedNodes.contains(m))
+				connectedNodes.add(m);
+		    }
+	    }
+	}
+	return false;
+    }
+    
+    // is n1 connected to ground somehow?
+    boolean hasGroundConnection(int n1) {
+	Vector<Integer> connectedNodes = new Vector<Integer>();
+
+	// keep list of nodes connected to n1
+	connectedNodes.add(n1);
+	int i;
+	for (i = 0; i < connectedNodes.size(); i++) {
+	    // next node in list
+	    int n = connectedNodes.get(i);	    
+	    // find all elements connected to n
+	    Vector<CircuitNodeLink> cnLinks = compNodeList.get(n).links;
+	    for (int j = 0; j < cnLinks.size(); j++) {
+		CircuitNodeLink link = cnLinks.get(j);
+		SimElm lelm = link.elm;
+		if (lelm.hasGroundConnection(link.num))
+		    return true;
+		// loop through all other nodes this element has
+		for (int k = 0; k != lelm.getConnectionNodeCount(); k++)
+		    // are they connected?
+		    if (k != link.num && lelm.getConnection(link.num, k)) {
+			int kn = lelm.getConnectionNode(k);
+			int m;
+			// find local node number (kn is global) and add it to list
+			for (m = 0; m != nodes.length; m++)
+			    if (nodes[m] == kn && !connectedNodes.contains(m))
+				connectedNodes.add(m);
+		    }
+	    }
+	}
+	return false;
+    }
+
+    void reset() {
+	for (int i = 0; i < compElmList.size(); i++)
+	    compElmList.get(i).reset();
+    } 
+
+    void stamp() {
+	for (int i = 0; i < compElmList.size(); i++) {
+	    SimElm ce = compElmList.get(i);
+	    ce.setParentList(compElmList);
+	    ce.stamp();
+	}
+    }
+
+    void startIteration() {
+	for (int i = 0; i < compElmList.size(); i++)
+	    compElmList.get(i).startIteration();
+    }
+    
+    void doStep() {
+	for (int i = 0; i < compElmList.size(); i++)
+	    compElmList.get(i).doStep();
+    }
+
+    void stepFinished() {
+	for (int i = 0; i < compElmList.size(); i++)
+	    compElmList.get(i).stepFinished();
+    }
+
+    // called after node p (local to this element) is set to n (global)
+    void setNode(int p, int n) {
+	Vector<CircuitNodeLink> cnLinks = compNodeList.get(p).links;
+
+        // call setNode() for all elements that use that node
+	for (int i = 0; i < cnLinks.size(); i++)
+	    cnLinks.get(i).elm.setNode(cnLinks.get(i).num, n);
+    }
+
+    void setNodeVoltage(int n, double c) {
+	Vector<CircuitNodeLink> cnLinks = compNodeList.get(n).links;
+	for (int i = 0; i < cnLinks.size(); i++)
+	    cnLinks.get(i).elm.setNodeVoltage(cnLinks.get(i).num, c);
+	volts[n]=c;
+    }
+
+    // Find the component with the nth voltage
+    // and set the
+    // appropriate source in that component
+    void setVoltageSource(int n, int v) {
+	VoltageSourceRecord vsr;
+	vsr=voltageSources.get(n);
+	vsr.elm.setVoltageSource(vsr.vsNumForElement, v);
+	vsr.vsNode=v;
+    }
+    
+    void setCurrent(int vsn, double c) {
+	for (int i=0;i<voltageSources.size(); i++)
+	    if (voltageSources.get(i).vsNode == vsn) {
+		voltageSources.get(i).elm.setCurrent(vsn, c);
+	    }
+    }
+
+    double getCurrentIntoNode(int n) {
+	double c=0;
+	Vector<CircuitNodeLink> cnLinks;
+	cnLinks = compNodeList.get(n).links;
+	for (int i = 0; i < cnLinks.size(); i++) {
+	    c+=cnLinks.get(i).elm.getCurrentIntoNode(cnLinks.get(i).num);
+	}
+	return c;
+    }
+}
+
+class VoltageSourceRecord {
+	int vsNumForElement;
+	int vsNode;
+	SimElm elm;
+}
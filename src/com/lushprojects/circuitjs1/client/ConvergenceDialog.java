@@ -0,0 +1,83 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.user.client.ui.Button;
+import com.google.gwt.user.client.ui.HasHorizontalAlignment;
+import com.google.gwt.user.client.ui.HorizontalPanel;
+import com.google.gwt.user.client.ui.TextArea;
+import com.google.gwt.user.client.ui.VerticalPanel;
+import com.lushprojects.circuitjs1.client.util.Locale;
+
+// shows the convergence diagnostics: subiteration histogram, elements that report
+// non-convergence, and timestep reductions
+public class ConvergenceDialog extends Dialog {
+
+	CirSim sim;
+	TextArea textArea;
+
+	public ConvergenceDialog(CirSim asim) {
+		super();
+		closeOnEnter = false;
+		sim = asim;
+		Button okButton, refreshButton, resetButton;
+		VerticalPanel vp = new VerticalPanel();
+		setWidget(vp);
+		setText(Locale.LS("Convergence Diagnostics"));
+		vp.add(textArea = new TextArea());
+		textArea.setWidth("640px");
+		textArea.setHeight("400px");
+		textArea.setReadOnly(true);
+		textArea.getElement().getStyle().setProperty("fontFamily", "monospace");
+		HorizontalPanel hp = new HorizontalPanel();
+		hp.setWidth("100%");
+		hp.setHorizontalAlignment(HasHorizontalAlignment.ALIGN_LEFT);
+		hp.setStyleName("topSpace");
+		vp.add(hp);
+		hp.add(okButton = new Button(Locale.LS("OK")));
+		hp.add(refreshButton = new Button(Locale.LS("Refresh")));
+		hp.setHorizontalAlignment(HasHorizontalAlignment.ALIGN_RIGHT);
+		hp.add(resetButton = new Button(Locale.LS("Reset")));
+		okButton.addClickHandler(new ClickHandler() {
+			public void onClick(ClickEvent event) {
+				closeDialog();
+			}
+		});
+		refreshButton.addClickHandler(new ClickHandler() {
+			public void onClick(ClickEvent event) {
+				refresh();
+			}
+		});
+		resetButton.addClickHandler(new ClickHandler() {
+			public void onClick(ClickEvent event) {
+				sim.convergenceMonitor.reset();
+				refresh();
+			}
+		});
+		refresh();
+		this.center();
+	}
+
+	void refresh() {
+		textArea.setText(sim.convergenceMonitor.getReport(50));
+	}
+}
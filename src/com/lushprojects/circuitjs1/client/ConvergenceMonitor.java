@@ -0,0 +1,288 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+
+// Convergence diagnostics: how many subiterations each timestep took, when and why the
+// timestep was cut, and (with Options/Track Convergence) which elements kept the Newton
+// iteration going.
+//
+// The histogram and the log of timestep reductions cost a few array updates per timestep and
+// are always kept.  Per-element tracking needs its own doStep() loop: each element is run
+// with sim.converged set to true, so we can see which ones clear it, and we compare its
+// node voltages with the previous subiteration.  runCircuit() only uses that loop when
+// trackElements is set.  Per-element numbers are kept in arrays that parallel sim.elmArr,
+// like ElementProfiler does.
+class ConvergenceMonitor {
+    // histogram buckets: 1, 2-3, 4-7, 8-15, ... subiterations, plus one for failed timesteps
+    static final int BUCKETS = 13;
+    // number of timestep reductions kept
+    static final int LOG_SIZE = 256;
+
+    CircuitEngine sim;
+    boolean trackElements;
+
+    int histogram[] = new int[BUCKETS];
+    int failedSteps;
+
+    SimElm elms[] = new SimElm[0];
+    // number of subiterations (after the first) in which each element reported non-convergence
+    int nonConverged[] = new int[0];
+    // largest change in each element's node voltages since the previous subiteration, when
+    // it reported non-convergence
+    double maxDelta[] = new double[0];
+    double lastVolts[][] = new double[0][];
+    // element that last reported non-convergence in this timestep, or null
+    SimElm culprit;
+
+    // log of timestep reductions (ring buffer)
+    double logWallTime[] = new double[LOG_SIZE];
+    double logSimTime[] = new double[LOG_SIZE];
+    double logFrom[] = new double[LOG_SIZE];
+    double logTo[] = new double[LOG_SIZE];
+    int logSubiter[] = new int[LOG_SIZE];
+    String logElm[] = new String[LOG_SIZE];
+    int logPos, logCount;
+
+    ConvergenceMonitor(CircuitEngine s) {
+	sim = s;
+    }
+
+    void reset() {
+	int i;
+	for (i = 0; i != BUCKETS; i++)
+	    histogram[i] = 0;
+	failedSteps = 0;
+	for (i = 0; i != elms.length; i++) {
+	    nonConverged[i] = 0;
+	    maxDelta[i] = 0;
+	}
+	logPos = logCount = 0;
+    }
+
+    // switch to a new element array, keeping the numbers of elements that are still there
+    void setElements(SimElm arr[]) {
+	HashMap<SimElm, Integer> old = new HashMap<SimElm, Integer>();
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    old.put(elms[i], i);
+	int nc[] = new int[arr.length];
+	double md[] = new double[arr.length];
+	double lv[][] = new double[arr.length][];
+	for (i = 0; i != arr.length; i++) {
+	    lv[i] = new double[arr[i].volts.length];
+	    Integer o = old.get(arr[i]);
+	    if (o == null)
+		continue;
+	    nc[i] = nonConverged[o];
+	    md[i] = maxDelta[o];
+	}
+	elms = arr;
+	nonConverged = nc;
+	maxDelta = md;
+	lastVolts = lv;
+    }
+
+    // run doStep() on each element, recording which ones report non-convergence
+    void doStep(SimElm arr[], int subiter) {
+	if (arr != elms)
+	    setElements(arr);
+	if (subiter == 0)
+	    culprit = null;
+	boolean conv = sim.converged;
+	int i, j;
+	for (i = 0; i != elms.length; i++) {
+	    SimElm ce = elms[i];
+	    sim.converged = true;
+	    ce.doStep();
+	    double v[] = ce.volts;
+	    double lv[] = lastVolts[i];
+	    if (lv.length != v.length)
+		lastVolts[i] = lv = new double[v.length];
+	    if (!sim.converged) {
+		conv = false;
+		// non-convergence on the first subiteration doesn't cost anything
+		if (subiter > 0) {
+		    nonConverged[i]++;
+		    culprit = ce;
+		    double d = 0;
+		    for (j = 0; j != v.length; j++)
+			d = Math.max(d, Math.abs(v[j]-lv[j]));
+		    maxDelta[i] = Math.max(maxDelta[i], d);
+		}
+	    }
+	    for (j = 0; j != v.length; j++)
+		lv[j] = v[j];
+	}
+	sim.converged = conv;
+    }
+
+    // a timestep finished after the given number of subiterations
+    void addTimeStep(int subiterations) {
+	int b = 0;
+	while (subiterations > 1 && b < BUCKETS-1) {
+	    subiterations >>= 1;
+	    b++;
+	}
+	histogram[b]++;
+    }
+
+    // a timestep failed to converge, so the timestep was cut from "from" to "to" (or the
+    // simulation was stopped, if they're the same)
+    void convergenceFailed(double simTime, double from, double to, int subiterations) {
+	failedSteps++;
+	logWallTime[logPos] = System.currentTimeMillis();
+	logSimTime[logPos] = simTime;
+	logFrom[logPos] = from;
+	logTo[logPos] = to;
+	logSubiter[logPos] = subiterations;
+	logElm[logPos] = (culprit == null) ? null : describe(culprit);
+	logPos = (logPos+1) % LOG_SIZE;
+	if (logCount < LOG_SIZE)
+	    logCount++;
+    }
+
+    static String describe(SimElm ce) {
+	return ((CircuitElm) ce).getClassName() + " at " + ce.x + "," + ce.y;
+    }
+
+    static String bucketName(int b) {
+	int lo = 1 << b;
+	if (b == BUCKETS-1)
+	    return lo + "+";
+	if (b == 0)
+	    return "1";
+	return lo + "-" + (lo*2-1);
+    }
+
+    // indices of elements that reported non-convergence, worst first
+    ArrayList<Integer> getRankedElements() {
+	ArrayList<Integer> list = new ArrayList<Integer>();
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    if (nonConverged[i] > 0)
+		list.add(i);
+	Collections.sort(list, new Comparator<Integer>() {
+	    public int compare(Integer a, Integer b) {
+		return nonConverged[b] - nonConverged[a];
+	    }
+	});
+	return list;
+    }
+
+    String getReport(int maxElements) {
+	StringBuilder sb = new StringBuilder();
+	int i;
+	sb.append("Subiterations per timestep:\n");
+	for (i = 0; i != BUCKETS; i++)
+	    if (histogram[i] > 0) {
+		pad(sb, bucketName(i), 10);
+		pad(sb, String.valueOf(histogram[i]), 10);
+		sb.append("\n");
+	    }
+	sb.append("Failed timesteps: ").append(failedSteps).append("\n\n");
+
+	sb.append("Elements reporting non-convergence:\n");
+	if (!trackElements)
+	    sb.append("  (turn on Options/Track Convergence)\n");
+	else {
+	    sb.append("     count   max dV  element\n");
+	    ArrayList<Integer> list = getRankedElements();
+	    for (i = 0; i < list.size() && i < maxElements; i++) {
+		int e = list.get(i);
+		pad(sb, String.valueOf(nonConverged[e]), 10);
+		pad(sb, CircuitElm.getShortUnitText(maxDelta[e], "V"), 9);
+		sb.append("  ").append(describe(elms[e])).append("\n");
+	    }
+	}
+
+	sb.append("\nTimestep reductions (latest first):\n");
+	int start = (logPos - 1 + LOG_SIZE) % LOG_SIZE;
+	for (i = 0; i != logCount; i++) {
+	    int p = (start - i + LOG_SIZE) % LOG_SIZE;
+	    sb.append("  ").append(new Date((long) logWallTime[p]).toString());
+	    sb.append("  t=").append(CircuitElm.getUnitText(logSimTime[p], "s"));
+	    sb.append("  ").append(CircuitElm.getUnitText(logFrom[p], "s"));
+	    sb.append(" -> ").append(CircuitElm.getUnitText(logTo[p], "s"));
+	    sb.append(" after ").append(logSubiter[p]).append(" subiterations");
+	    if (logElm[p] != null)
+		sb.append(", last: ").append(logElm[p]);
+	    sb.append("\n");
+	}
+	return sb.toString();
+    }
+
+    // the same data as getReport(), as JSON for the JS API
+    String getJSON(int maxElements) {
+	StringBuilder sb = new StringBuilder("{\"histogram\":[");
+	int i;
+	for (i = 0; i != BUCKETS; i++) {
+	    if (i > 0)
+		sb.append(',');
+	    sb.append("{\"min\":").append(1 << i);
+	    if (i < BUCKETS-1)
+		sb.append(",\"max\":").append((2 << i)-1);
+	    sb.append(",\"count\":").append(histogram[i]).append('}');
+	}
+	sb.append("],\"failures\":").append(failedSteps);
+	sb.append(",\"tracking\":").append(trackElements);
+	sb.append(",\"elements\":[");
+	ArrayList<Integer> list = getRankedElements();
+	for (i = 0; i < list.size() && i < maxElements; i++) {
+	    int e = list.get(i);
+	    if (i > 0)
+		sb.append(',');
+	    sb.append("{\"type\":").append(quote(((CircuitElm) elms[e]).getClassName()));
+	    sb.append(",\"x\":").append(elms[e].x).append(",\"y\":").append(elms[e].y);
+	    sb.append(",\"nonConverged\":").append(nonConverged[e]);
+	    sb.append(",\"maxDelta\":").append(maxDelta[e]).append('}');
+	}
+	sb.append("],\"reductions\":[");
+	int start = (logPos - logCount + LOG_SIZE) % LOG_SIZE;
+	for (i = 0; i != logCount; i++) {
+	    int p = (start + i) % LOG_SIZE;
+	    if (i > 0)
+		sb.append(',');
+	    sb.append("{\"time\":").append(logWallTime[p]);
+	    sb.append(",\"t\":").append(logSimTime[p]);
+	    sb.append(",\"from\":").append(logFrom[p]);
+	    sb.append(",\"to\":").append(logTo[p]);
+	    sb.append(",\"subiterations\":").append(logSubiter[p]);
+	    sb.append(",\"element\":").append(logElm[p] == null ? "null" : quote(logElm[p])).append('}');
+	}
+	sb.append("]}");
+	return sb.toString();
+    }
+
+    static void pad(StringBuilder sb, String s, int width) {
+	for (int i = s.length(); i < width; i++)
+	    sb.append(' ');
+	sb.append(s);
+    }
+
+    static String quote(String s) {
+	return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -52,15 +52,15 @@ class Counter2Elm extends ChipElm {
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = bits+3;
-	    pins = new Pin[getPostCount()];
+	    allocPins(getPostCount());
 	    int i;
 	    for (i = 0; i != bits; i++) {
-		pins[i] = new Pin(i+1, SIDE_E, "Q" + (bits-i-1));
+		pins[i] = new ChipPin(i+1, SIDE_E, "Q" + (bits-i-1));
 		pins[i].output = pins[i].state = true;
 	    }
 	    for (i = 0; i != bits; i++) {
 		int ii = i+bits;
-		pins[ii] = new Pin(i+1, SIDE_W, "I" + (bits-i-1));
+		pins[ii] = new ChipPin(i+1, SIDE_W, "I" + (bits-i-1));
 	    }
 	    int p = bits*2;
 	    clk = p;
@@ -69,16 +69,16 @@ class Counter2Elm extends ChipElm {
 	    rco = p+3;
 	    load = p+4;
 	    ent = p+5;
-	    pins[clk] = new Pin(0, SIDE_W, "");
+	    pins[clk] = new ChipPin(0, SIDE_W, "");
 	    pins[clk].clock = true;
-	    pins[clr] = new Pin(bits+1, SIDE_W, "CLR");
+	    pins[clr] = new ChipPin(bits+1, SIDE_W, "CLR");
 	    pins[clr].bubble = true;
-	    pins[enp] = new Pin(bits+2, SIDE_W, "EnP");
-	    pins[rco] = new Pin(0, SIDE_E, "RCO");
+	    pins[enp] = new ChipPin(bits+2, SIDE_W, "EnP");
+	    pins[rco] = new ChipPin(0, SIDE_E, "RCO");
 	    pins[rco].output = true;
-	    pins[load] = new Pin(bits+1, SIDE_E, "LOAD");
+	    pins[load] = new ChipPin(bits+1, SIDE_E, "LOAD");
 	    pins[load].bubble = true;
-	    pins[ent] = new Pin(bits+2, SIDE_E, "EnT");
+	    pins[ent] = new ChipPin(bits+2, SIDE_E, "EnT");
 	}
 	int getPostCount() {
 	    return bits*2+6;
@@ -105,7 +105,7 @@ class Counter2Elm extends ChipElm {
 	boolean carry;
 	
 	void execute() {
-	    if (pins[clk].value && !lastClock) {
+	    if (pins[clk].value && !chip.lastClock) {
 		if (pins[enp].value && pins[ent].value) {
 		    int i;
 		    int value = 0;
@@ -141,7 +141,7 @@ class Counter2Elm extends ChipElm {
 		carry = false;
 	    }
 	    
-	    lastClock = pins[clk].value;
+	    chip.lastClock = pins[clk].value;
 	    writeOutput(rco, carry && pins[ent].value);
 	}
 	int getDumpType() { return 421; }
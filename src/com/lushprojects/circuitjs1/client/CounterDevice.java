@@ -0,0 +1,97 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of CounterElm
+class CounterDevice extends ChipDevice {
+    static final int FLAG_UP_DOWN = 4;
+    static final int FLAG_NEGATIVE_EDGE = 8;
+    boolean invertreset, upDown, negativeEdge;
+    int modulus;
+
+    CounterDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    boolean needsBits() { return true; }
+    void undump(StringTokenizer st, int f) {
+	upDown = (f & FLAG_UP_DOWN) != 0;
+	negativeEdge = (f & FLAG_NEGATIVE_EDGE) != 0;
+	super.undump(st, f);
+	invertreset = true;
+	try {
+	    invertreset = Boolean.parseBoolean(st.nextToken());
+	    modulus = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {}
+    }
+
+    void setupPins() {
+	sizeX = 2;
+	sizeY = bits > 2 ? bits : 2;
+	allocPins(upDown ? bits+3 : bits+2);
+	pins[0] = new ChipPin(0, SIDE_W, "");
+	pins[0].clock = true;
+	pins[0].bubble = negativeEdge;
+	pins[1] = new ChipPin(sizeY-1, SIDE_W, "R");
+	pins[1].bubble = invertreset;
+	int i;
+	for (i = 0; i != bits; i++) {
+	    int ii = i+2;
+	    pins[ii] = new ChipPin(i, SIDE_E, "Q" + (bits-i-1));
+	    pins[ii].output = pins[ii].state = true;
+	}
+	if (upDown)
+	    pins[bits+2] = new ChipPin(sizeY-2, SIDE_W, "U/D");
+    }
+
+    void execute() {
+	boolean neg = negativeEdge;
+	if (pins[0].value != neg && lastClock == neg) {
+	    int i;
+	    int value = 0;
+
+	    // get direction
+	    int dir = 1;
+	    if (upDown && pins[bits+2].value)
+		dir = -1;
+
+	    // get current value
+	    int lastBit = 2+bits-1;
+	    for (i = 0; i != bits; i++)
+		if (pins[lastBit-i].value)
+		    value |= 1<<i;
+
+	    // update value
+	    value += dir;
+	    if (modulus != 0)
+		value = (value+modulus) % modulus;
+
+	    // convert value to binary
+	    for (i = 0; i != bits; i++)
+		pins[lastBit-i].value = (value & (1<<i)) != 0;
+	}
+	if (!pins[1].value == invertreset) {
+	    int i;
+	    for (i = 0; i != bits; i++)
+		pins[i+2].value = false;
+	}
+	lastClock = pins[0].value;
+    }
+}
@@ -22,10 +22,11 @@ package com.lushprojects.circuitjs1.client;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class CounterElm extends ChipElm {
-	boolean invertreset;
-	int modulus;
-	final int FLAG_UP_DOWN = 4;
-	final int FLAG_NEGATIVE_EDGE = 8;
+	CounterDevice counter;
+	final int FLAG_UP_DOWN = CounterDevice.FLAG_UP_DOWN;
+	final int FLAG_NEGATIVE_EDGE = CounterDevice.FLAG_NEGATIVE_EDGE;
+
+	ChipDevice createDevice() { return counter = new CounterDevice(sim); }
 
 	public CounterElm(int xx, int yy) {
 	    super(xx, yy);
@@ -34,56 +35,35 @@ class CounterElm extends ChipElm {
 	public CounterElm(int xa, int ya, int xb, int yb, int f,
 			    StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    invertreset = true;
-	    try {
-	   	invertreset = Boolean.parseBoolean(st.nextToken());
-		modulus = Integer.parseInt(st.nextToken());
-	    } catch (Exception e) {}
-	    pins[1].bubble = invertreset;
+	    pins[1].bubble= counter.invertreset;
 	}
 
 	String dump() {
-	    return super.dump() + " " + invertreset + " " + modulus;
+	    return super.dump() + " " + counter.invertreset + " " + counter.modulus;
 	}
 
 	boolean needsBits() { return true; }
 	String getChipName() {
-	    if (modulus == 0)
+	    if (counter.modulus == 0)
 		return "Counter";
-	    return Locale.LS("Counter") + Locale.LS(" (mod ") + modulus + ")";
+	    return Locale.LS("Counter") + Locale.LS(" (mod ") + counter.modulus + ")";
 	}
 	void setupPins() {
-	    sizeX = 2;
-	    sizeY = bits > 2 ? bits : 2;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(0, SIDE_W, "");
-	    pins[0].clock = true;
-	    pins[0].bubble = negativeEdgeTriggered();
-	    pins[1] = new Pin(sizeY-1, SIDE_W, "R");
-	    pins[1].bubble = invertreset;
-	    int i;
-	    for (i = 0; i != bits; i++) {
-		int ii = i+2;
-		pins[ii] = new Pin(i, SIDE_E, "Q" + (bits-i-1));
-		pins[ii].output = pins[ii].state = true;
-	    }
-	    if (hasUpDown())
-	        pins[bits+2] = new Pin(sizeY-2, SIDE_W, "U/D");
+	    counter.upDown = hasUpDown();
+	    counter.negativeEdge = negativeEdgeTriggered();
+	    super.setupPins();
 	    allocNodes();
 	}
-	int getPostCount() {
-	    return (hasUpDown()) ? bits+3 : bits+2;
-	}
 	public EditInfo getChipEditInfo(int n) {
     	    if (n == 0) {
 		EditInfo ei = new EditInfo("", 0, -1, -1);
-		ei.checkbox = new Checkbox("Invert reset pin",invertreset);
+		ei.checkbox = new Checkbox("Invert reset pin",counter.invertreset);
 		return ei;
 	    }
             if (n == 1)
                 return new EditInfo("# of Bits", bits, 1, 1).setDimensionless();
             if (n == 2)
-                return new EditInfo("Modulus", modulus, 1, 1).setDimensionless();
+                return new EditInfo("Modulus", counter.modulus, 1, 1).setDimensionless();
     	    if (n == 3) {
 		EditInfo ei = new EditInfo("", 0, -1, -1);
 		ei.checkbox = new Checkbox("Up/Down Pin", hasUpDown());
@@ -98,7 +78,7 @@ class CounterElm extends ChipElm {
 	}
 	public void setChipEditValue(int n, EditInfo ei) {
 	    if (n == 0) {
-		invertreset = ei.checkbox.getState();
+		counter.invertreset = ei.checkbox.getState();
 		setupPins();
 		setPoints();
 	    }
@@ -108,7 +88,7 @@ class CounterElm extends ChipElm {
 		setPoints();
 	    }
 	    if (n == 2)
-		modulus = (int)ei.value;
+		counter.modulus = (int)ei.value;
 	    if (n == 3) {
 		flags = ei.changeFlag(flags, FLAG_UP_DOWN);
 		setupPins();
@@ -122,39 +102,5 @@ class CounterElm extends ChipElm {
 	}
 	boolean hasUpDown() { return (flags & FLAG_UP_DOWN) != 0; }
 	boolean negativeEdgeTriggered() { return (flags & FLAG_NEGATIVE_EDGE) != 0; }
-	int getVoltageSourceCount() { return bits; }
-	void execute() {
-	    boolean neg = negativeEdgeTriggered();
-	    if (pins[0].value != neg && lastClock == neg) {
-		int i;
-		int value = 0;
-		
-		// get direction
-		int dir = 1;
-		if (hasUpDown() && pins[bits+2].value)
-		    dir = -1;
-		
-		// get current value
-		int lastBit = 2+bits-1;
-		for (i = 0; i != bits; i++)
-		    if (pins[lastBit-i].value)
-			value |= 1<<i;
-		
-		// update value
-		value += dir;
-		if (modulus != 0)
-		   value = (value+modulus) % modulus;
-		
-		// convert value to binary
-		for (i = 0; i != bits; i++)
-		    pins[lastBit-i].value = (value & (1<<i)) != 0;
-	    }
-	    if (!pins[1].value == invertreset) {
-		int i;
-		for (i = 0; i != bits; i++)
-		    pins[i+2].value = false;
-	    }
-	    lastClock = pins[0].value;
-	}
 	int getDumpType() { return 164; }
     }
@@ -20,23 +20,19 @@
 package com.lushprojects.circuitjs1.client;
 
     class CurrentElm extends CircuitElm {
-	double currentValue;
-	boolean broken;
+	CurrentDevice src;
 	public CurrentElm(int xx, int yy) {
 	    super(xx, yy);
-	    currentValue = .01;
+	    setDevice(src = new CurrentDevice(sim, .01));
 	}
 	public CurrentElm(int xa, int ya, int xb, int yb, int f,
 		   StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    try {
-		currentValue = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {
-		currentValue = .01;
-	    }
+	    setDevice(src = new CurrentDevice(sim, .01));
+	    src.undump(st, f);
 	}
 	String dump() {
-	    return super.dump() + " " + currentValue;
+	    return super.dump() + " " + src.currentValue;
 	}
 	int getDumpType() { return 'i'; }
 	
@@ -63,39 +59,21 @@ package com.lushprojects.circuitjs1.client;
 	    g.fillPolygon(arrow);
 	    setBbox(point1, point2, cr);
 	    doDots(g);
-	    if (sim.showValuesCheckItem.getState() && current != 0) {
-		String s = getShortUnitText(current, "A");
+	    if (sim.showValuesCheckItem.getState() && getCurrent() != 0) {
+		String s = getShortUnitText(getCurrent(), "A");
 		if (dx == 0 || dy == 0)
 		    drawValues(g, s, cr);
 	    }
 	    drawPosts(g);
 	}
 	
-	// analyzeCircuit determines if current source has a path or if it's broken
-	void setBroken(boolean b) {
-	    broken = b;
-	}
-	
-	// we defer stamping current sources until we can tell if they have a current path or not
-	void stamp() {
-	    if (broken) {
-		// no current path; stamping a current source would cause a matrix error.
-		sim.stampResistor(nodes[0], nodes[1], 1e8);
-		current = 0;
-	    } else {
-		// ok to stamp a current source
-		sim.stampCurrentSource(nodes[0], nodes[1], currentValue);
-		current = currentValue;
-	    }
-	}
-	
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Current (A)", currentValue, 0, .1);
+		return new EditInfo("Current (A)", src.currentValue, 0, .1);
 	    return null;
 	}
 	public void setEditValue(int n, EditInfo ei) {
-	    currentValue = ei.value;
+	    src.currentValue = ei.value;
 	}
 	void getInfo(String arr[]) {
 	    arr[0] = "current source";
@@ -104,5 +82,5 @@ package com.lushprojects.circuitjs1.client;
 	double getVoltageDiff() {
 	    return volts[1] - volts[0];
 	}
-	double getPower() { return -getVoltageDiff()*current; }
+	double getPower() { return -getVoltageDiff()*getCurrent(); }
     }
@@ -31,14 +31,8 @@ package com.lushprojects.circuitjs1.client;
 	boolean needsBits() { return false; }
 	void setupPins() { }
 	int getVoltageSourceCount() { return 0; }
-	void setPins(Pin p[]) {
-	    pins = p;
-	}
-	void allocPins(int n) {
-	    pins = new Pin[n];
-	}
 	void setPin(int n, int p, int s, String t) {
-	    pins[n] = new Pin(p, s, t);
+	    pins[n] = new ChipPin(p, s, t);
 	    pins[n].fixName();
 	}
 
@@ -0,0 +1,200 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of CustomLogicElm: a chip whose outputs come from the truth table of a
+// CustomLogicRules model
+class CustomLogicDevice extends ChipDevice {
+    CustomLogicRules model;
+    int inputCount, outputCount;
+    boolean lastValues[];
+    boolean patternValues[];
+    boolean highImpedance[];
+
+    // model name from the dump; the model itself comes from CircuitEngine.getLogicModel()
+    String modelName;
+
+    CustomLogicDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    // we don't know how many pins to read until we have the model, so the output states
+    // come after the model name
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	modelName = unescape(st.nextToken());
+	model = sim.getLogicModel(modelName);
+	setupPins();
+	int i;
+	int n = getPostCount();
+	if (volts == null || volts.length < n)
+	    volts = new double[n];
+	for (i = 0; i != n; i++) {
+	    if (pins[i].output) {
+		volts[i] = new Double(st.nextToken()).doubleValue();
+		pins[i].value = volts[i] > getThreshold();
+	    }
+	}
+    }
+
+    void setupPins() {
+	if (model == null)
+	    return;
+	inputCount = model.inputs.length;
+	outputCount = model.outputs.length;
+	sizeY = inputCount > outputCount ? inputCount : outputCount;
+	if (sizeY == 0)
+	    sizeY = 1;
+	sizeX = 2;
+	int postCount = inputCount+outputCount;
+	allocPins(postCount);
+	int i;
+	for (i = 0; i != inputCount; i++) {
+	    pins[i] = new ChipPin(i, SIDE_W, model.inputs[i]);
+	    pins[i].fixName();
+	}
+	for (i = 0; i != outputCount; i++) {
+	    pins[i+inputCount] = new ChipPin(i, SIDE_E, model.outputs[i]);
+	    pins[i+inputCount].output = true;
+	    pins[i+inputCount].fixName();
+	}
+	lastValues = new boolean[postCount];
+	patternValues = new boolean[26];
+	highImpedance = new boolean[postCount];
+    }
+
+    int getVoltageSourceCount() {
+	return outputCount;
+    }
+
+    // keep track of whether we have any tri-state outputs.  if not, then we can simplify things quite a bit, making the simulation faster
+    boolean hasTriState() { return model == null ? false : model.triState; }
+    boolean nonLinear() { return hasTriState(); }
+    int getInternalNodeCount() {
+	// for tri-state outputs, we need an internal node to connect a voltage source to, and then connect a resistor from there to the output.
+	// we do this for all outputs if any of them are tri-state
+	return (hasTriState()) ? outputCount : 0;
+    }
+
+    void stamp() {
+	int i;
+	int add = (hasTriState()) ? outputCount : 0;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (p.output) {
+		sim.stampVoltageSource(0, nodes[i+add], p.voltSource);
+		if (hasTriState()) {
+		    sim.stampNonLinear(nodes[i+add]);
+		    sim.stampNonLinear(nodes[i]);
+		}
+	    }
+	}
+    }
+
+    void doStep() {
+	int i;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (!p.output)
+		p.value = volts[i] > getThreshold();
+	}
+	execute();
+	int add = (hasTriState()) ? outputCount : 0;
+	for (i = 0; i != getPostCount(); i++) {
+	    ChipPin p = pins[i];
+	    if (p.output) {
+		// connect output voltage source (to internal node if tri-state, otherwise connect directly to output)
+		sim.updateVoltageSource(0, nodes[i+add], p.voltSource, p.value ? highVoltage : 0);
+		// add resistor for tri-state if necessary
+		if (hasTriState())
+		    sim.stampResistor(nodes[i+add], nodes[i], highImpedance[i] ? 1e8 : 1e-3);
+	    }
+	}
+    }
+
+    void execute() {
+	int i;
+	for (i = 0; i != model.rulesLeft.size(); i++) {
+	    // check for a match
+	    String rl = model.rulesLeft.get(i);
+	    int j;
+	    for (j = 0; j != rl.length(); j++) {
+		char x = rl.charAt(j);
+		if (x == '0' || x == '1') {
+		    if (pins[j].value == (x == '1'))
+			continue;
+		    break;
+		}
+		
+		// don't care
+		if (x == '?')
+		    continue;
+		
+		// up transition
+		if (x == '+') {
+		    if (pins[j].value && !lastValues[j])
+			continue;
+		    break;
+		}
+		
+		// down transition
+		if (x == '-') {
+		    if (!pins[j].value && lastValues[j])
+			continue;
+		    break;
+		}
+		
+		// save pattern values
+		if (x >= 'a' && x <= 'z') {
+		    patternValues[x-'a'] = pins[j].value;
+		    continue;
+		}
+		
+		// compare pattern values
+		if (x >= 'A' && x <= 'z') {
+		    if (patternValues[x-'A'] != pins[j].value)
+			break;
+		    continue;
+		}
+	    }
+	    if (j != rl.length())
+		continue;
+	    
+	    // success
+	    String rr = model.rulesRight.get(i);
+	    for (j = 0; j != rr.length(); j++) {
+		char x = rr.charAt(j);
+		highImpedance[j+inputCount] = false;
+		if (x >= 'a' && x <= 'z')
+		    pins[j+inputCount].value = patternValues[x-'a'];
+		else if (x == '_')
+		    highImpedance[j+inputCount] = true;
+		else
+		    pins[j+inputCount].value = (x == '1');
+	    }
+	    break;
+	}
+	
+	// save values for transition checking
+	int j;
+	for (j = 0; j != getPostCount(); j++)
+	    lastValues[j] = pins[j].value;
+    }
+}
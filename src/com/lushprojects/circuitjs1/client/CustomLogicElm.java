@@ -5,12 +5,8 @@ import com.lushprojects.circuitjs1.client.util.Locale;
 
 public class CustomLogicElm extends ChipElm {
     String modelName;
-    int postCount;
-    int inputCount, outputCount;
     CustomLogicModel model;
-    boolean lastValues[];
-    boolean patternValues[];
-    boolean highImpedance[];
+    CustomLogicDevice logic;
     static String lastModelName = "default";
     
     public CustomLogicElm(int xx, int yy) {
@@ -22,15 +18,8 @@ public class CustomLogicElm extends ChipElm {
     public CustomLogicElm(int xa, int ya, int xb, int yb, int f,
             StringTokenizer st) {
 	super(xa, ya, xb, yb, f, st);
-	modelName = CustomLogicModel.unescape(st.nextToken());
-	updateModels();
-	int i;
-	for (i = 0; i != getPostCount(); i++) {
-	    if (pins[i].output) {
-		volts[i] = new Double(st.nextToken()).doubleValue();
-		pins[i].value = volts[i] > getThreshold();
-	    }
-	}
+	modelName = logic.modelName;
+	model = (CustomLogicModel) logic.model;
     }
     
     String dump() {
@@ -61,162 +50,16 @@ public class CustomLogicElm extends ChipElm {
 	setPoints();
     }
     
-    @Override
-    void setupPins() {
-	if (modelName == null) {
-	    postCount = bits;
-	    allocNodes();
-	    return;
-	}
-	
-	model = CustomLogicModel.getModelWithName(modelName);
-	inputCount = model.inputs.length;
-	outputCount = model.outputs.length;
-	sizeY = inputCount > outputCount ? inputCount : outputCount;
-	if (sizeY == 0)
-	    sizeY = 1;
-	sizeX = 2;
-	postCount = inputCount+outputCount;
-	pins = new Pin[postCount];
-	int i;
-	for (i = 0; i != inputCount; i++) {
-	    pins[i] = new Pin(i, SIDE_W, model.inputs[i]);
-	    pins[i].fixName();
-	}
-	for (i = 0; i != outputCount; i++) {
-	    pins[i+inputCount] = new Pin(i, SIDE_E, model.outputs[i]);
-	    pins[i+inputCount].output = true;
-	    pins[i+inputCount].fixName();
-	}
-	lastValues = new boolean[postCount];
-	patternValues = new boolean[26];
-	highImpedance = new boolean[postCount];
-    }
+    ChipDevice createDevice() { return logic = new CustomLogicDevice(sim); }
 
-    int getPostCount() { return postCount; }
-    
     @Override
-    int getVoltageSourceCount() {
-	return outputCount;
-    }
-
-    // keep track of whether we have any tri-state outputs.  if not, then we can simplify things quite a bit, making the simulation faster
-    boolean hasTriState() { return model == null ? false : model.triState; }
-    
-    boolean nonLinear() { return hasTriState(); }
-    
-    int getInternalNodeCount() {
-	// for tri-state outputs, we need an internal node to connect a voltage source to, and then connect a resistor from there to the output.
-	// we do this for all outputs if any of them are tri-state
-	return (hasTriState()) ? outputCount : 0; 
-    }
-    
-    void stamp() {
-	int i;
-	int add = (hasTriState()) ? outputCount : 0;
-	for (i = 0; i != getPostCount(); i++) {
-	    Pin p = pins[i];
-	    if (p.output) {
-		sim.stampVoltageSource(0, nodes[i+add], p.voltSource);
-		if (hasTriState()) {
-		    sim.stampNonLinear(nodes[i+add]);
-		    sim.stampNonLinear(nodes[i]);
-		}
-	    }
-	}
-    }
-    
-    void doStep() {
-	int i;
-	for (i = 0; i != getPostCount(); i++) {
-	    Pin p = pins[i];
-	    if (!p.output)
-		p.value = volts[i] > getThreshold();
-	}
-	execute();
-	int add = (hasTriState()) ? outputCount : 0;
-	for (i = 0; i != getPostCount(); i++) {
-	    Pin p = pins[i];
-	    if (p.output) {
-		// connect output voltage source (to internal node if tri-state, otherwise connect directly to output)
-		sim.updateVoltageSource(0, nodes[i+add], p.voltSource, p.value ? highVoltage : 0);
-		
-		// add resistor for tri-state if necessary
-		if (hasTriState())
-		    sim.stampResistor(nodes[i+add], nodes[i], highImpedance[i] ? 1e8 : 1e-3);
-	    }
-	}
+    void setupPins() {
+	if (modelName != null)
+	    logic.model = model = CustomLogicModel.getModelWithName(modelName);
+	super.setupPins();
+	allocNodes();
     }
 
-    void execute() {
-	int i;
-	for (i = 0; i != model.rulesLeft.size(); i++) {
-	    // check for a match
-	    String rl = model.rulesLeft.get(i);
-	    int j;
-	    for (j = 0; j != rl.length(); j++) {
-		char x = rl.charAt(j);
-		if (x == '0' || x == '1') {
-		    if (pins[j].value == (x == '1'))
-			continue;
-		    break;
-		}
-		
-		// don't care
-		if (x == '?')
-		    continue;
-		
-		// up transition
-		if (x == '+') {
-		    if (pins[j].value && !lastValues[j])
-			continue;
-		    break;
-		}
-		
-		// down transition
-		if (x == '-') {
-		    if (!pins[j].value && lastValues[j])
-			continue;
-		    break;
-		}
-		
-		// save pattern values
-		if (x >= 'a' && x <= 'z') {
-		    patternValues[x-'a'] = pins[j].value;
-		    continue;
-		}
-		
-		// compare pattern values
-		if (x >= 'A' && x <= 'z') {
-		    if (patternValues[x-'A'] != pins[j].value)
-			break;
-		    continue;
-		}
-	    }
-	    if (j != rl.length())
-		continue;
-	    
-	    // success
-	    String rr = model.rulesRight.get(i);
-	    for (j = 0; j != rr.length(); j++) {
-		char x = rr.charAt(j);
-		highImpedance[j+inputCount] = false;
-		if (x >= 'a' && x <= 'z')
-		    pins[j+inputCount].value = patternValues[x-'a'];
-		else if (x == '_')
-		    highImpedance[j+inputCount] = true;
-		else
-		    pins[j+inputCount].value = (x == '1');
-	    }
-	    break;
-	}
-	
-	// save values for transition checking
-	int j;
-	for (j = 0; j != postCount; j++)
-	    lastValues[j] = pins[j].value;
-    }
-    
     public EditInfo getChipEditInfo(int n) {
 	if (n == 0) {
 	    EditInfo ei = new EditInfo("Model Name", 0, -1, -1);
@@ -3,25 +3,19 @@ package com.lushprojects.circuitjs1.client;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Vector;
 
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.TextArea;
 
-public class CustomLogicModel implements Editable {
+public class CustomLogicModel extends CustomLogicRules implements Editable {
 
     static int FLAG_SCHMITT = 1;
     static HashMap<String, CustomLogicModel> modelMap;
     
     int flags;
     String name;
-    String[] inputs;
-    String[] outputs;
     String infoText;
-    String rules;
-    Vector<String> rulesLeft, rulesRight;
     boolean dumped;
-    boolean triState;
     
     static CustomLogicModel getModelWithName(String name) {
 	if (modelMap == null)
@@ -60,11 +54,6 @@ public class CustomLogicModel implements Editable {
     }
     
     CustomLogicModel() {
-	inputs = listToArray("A,B");
-	outputs = listToArray("C,D");
-	rulesLeft = new Vector<String>();
-	rulesRight = new Vector<String>();
-	rules = "";
     }
     
     CustomLogicModel(CustomLogicModel copy) {
@@ -104,10 +93,6 @@ public class CustomLogicModel implements Editable {
 	return x;
     }
     
-    String [] listToArray(String arr) {
-	return arr.split(",");
-    }
-    
     public EditInfo getEditInfo(int n) {
         if (n == 0) {
             EditInfo ei = new EditInfo("Inputs", 0, -1, -1);
@@ -162,63 +147,10 @@ public class CustomLogicModel implements Editable {
 	CirSim.theSim.updateModels();
     }
 
-    void parseRules() {
-	String lines[] = rules.split("\n");
-	int i;
-	rulesLeft = new Vector<String>();
-	rulesRight = new Vector<String>();
-	triState = false;
-	for (i = 0; i != lines.length; i++) {
-	    String s = lines[i].toLowerCase();
-	    if (s.length() == 0 || s.startsWith("#"))
-		continue;
-	    String s0[] = s.replaceAll(" ", "").split("=");
-	    if (s0.length != 2) {
-		Window.alert("Error on line " + (i+1) + " of model description");
-		return;
-	    }
-	    if (s0[0].length() < inputs.length) {
-		Window.alert("Model must have >= " + (inputs.length) + " digits on left side");
-		return;
-	    }
-	    if (s0[0].length() > inputs.length + outputs.length) {
-		Window.alert("Model must have <= " + (inputs.length+outputs.length) + " digits on left side");
-		return;
-	    }
-	    if (s0[1].length() != outputs.length) {
-		Window.alert("Model must have " + (outputs.length) + " digits on right side");
-		return;
-	    }
-	    String rl = s0[0];
-	    boolean used[] = new boolean[26];
-	    int j;
-	    String newRl = "";
-	    for (j = 0; j != rl.length(); j++) {
-		char x = rl.charAt(j);
-		if (x == '?' || x == '+' || x == '-' || x == '0' || x == '1') {
-		    newRl += x;
-		    continue;
-		}
-		if (x < 'a' || x > 'z') {
-		    Window.alert("Error on line " + (i+1) + " of model description");
-		    return;
-		}
-		// if a letter appears twice, capitalize it the 2nd time so we can compare
-		if (used[x-'a']) {
-		    newRl += (char)(x + 'A' - 'a');
-		    continue;
-		}
-		used[x-'a'] = true;
-		newRl += x;
-	    }
-	    String rr = s0[1];
-	    if (rr.contains("_"))
-		triState = true;
-	    rulesLeft.add(newRl);
-	    rulesRight.add(s0[1]);
-	}
+    void error(String s) {
+	Window.alert(s);
     }
-    
+
     String dump() {
 	dumped = true;
 	if (rules.length() > 0 && !rules.endsWith("\n"))
@@ -235,30 +167,6 @@ public class CustomLogicModel implements Editable {
     }
     
     static String unescape(String s) {
-	if (s.equals("\\0"))
-	    return "";
-	int i;
-	for (i = 0; i < s.length(); i++) {
-	    if (s.charAt(i) == '\\') {
-		char c = s.charAt(i+1);
-		if (c == 'n')
-		    s = s.substring(0, i) + "\n" + s.substring(i+2);
-		else if (c == 'r')
-		    s = s.substring(0, i) + "\r" + s.substring(i+2);
-		else if (c == 's')
-		    s = s.substring(0, i) + " " + s.substring(i+2);
-		else if (c == 'p')
-		    s = s.substring(0, i) + "+" + s.substring(i+2);
-		else if (c == 'q')
-		    s = s.substring(0, i) + "=" + s.substring(i+2);
-		else if (c == 'h')
-		    s = s.substring(0, i) + "#" + s.substring(i+2);
-		else if (c == 'a')
-		    s = s.substring(0, i) + "&" + s.substring(i+2);
-		else
-		    s = s.substring(0, i) + s.substring(i+1);
-	    }
-	}
-	return s;
+	return Device.unescape(s);
     }
 }
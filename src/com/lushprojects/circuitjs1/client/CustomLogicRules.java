@@ -0,0 +1,106 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Vector;
+
+// pins and truth table of a custom logic model, without the editing and dumping in
+// CustomLogicModel, so CustomLogicDevice can be used without GWT
+class CustomLogicRules {
+    String[] inputs;
+    String[] outputs;
+    String rules;
+    Vector<String> rulesLeft, rulesRight;
+    boolean triState;
+
+    CustomLogicRules() {
+	inputs = listToArray("A,B");
+	outputs = listToArray("C,D");
+	rulesLeft = new Vector<String>();
+	rulesRight = new Vector<String>();
+	rules = "";
+    }
+
+    String [] listToArray(String arr) {
+	return arr.split(",");
+    }
+
+    // report an error in the rules.  Parsing stops, keeping the rules before the bad line.
+    void error(String s) {
+	throw new IllegalArgumentException(s);
+    }
+
+    void parseRules() {
+	String lines[] = rules.split("\n");
+	int i;
+	rulesLeft = new Vector<String>();
+	rulesRight = new Vector<String>();
+	triState = false;
+	for (i = 0; i != lines.length; i++) {
+	    String s = lines[i].toLowerCase();
+	    if (s.length() == 0 || s.startsWith("#"))
+		continue;
+	    String s0[] = s.replaceAll(" ", "").split("=");
+	    if (s0.length != 2) {
+		error("Error on line " + (i+1) + " of model description");
+		return;
+	    }
+	    if (s0[0].length() < inputs.length) {
+		error("Model must have >= " + (inputs.length) + " digits on left side");
+		return;
+	    }
+	    if (s0[0].length() > inputs.length + outputs.length) {
+		error("Model must have <= " + (inputs.length+outputs.length) + " digits on left side");
+		return;
+	    }
+	    if (s0[1].length() != outputs.length) {
+		error("Model must have " + (outputs.length) + " digits on right side");
+		return;
+	    }
+	    String rl = s0[0];
+	    boolean used[] = new boolean[26];
+	    int j;
+	    String newRl = "";
+	    for (j = 0; j != rl.length(); j++) {
+		char x = rl.charAt(j);
+		if (x == '?' || x == '+' || x == '-' || x == '0' || x == '1') {
+		    newRl += x;
+		    continue;
+		}
+		if (x < 'a' || x > 'z') {
+		    error("Error on line " + (i+1) + " of model description");
+		    return;
+		}
+		// if a letter appears twice, capitalize it the 2nd time so we can compare
+		if (used[x-'a']) {
+		    newRl += (char)(x + 'A' - 'a');
+		    continue;
+		}
+		used[x-'a'] = true;
+		newRl += x;
+	    }
+	    String rr = s0[1];
+	    if (rr.contains("_"))
+		triState = true;
+	    rulesLeft.add(newRl);
+	    rulesRight.add(s0[1]);
+	}
+    }
+}
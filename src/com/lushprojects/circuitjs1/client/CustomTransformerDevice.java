@@ -0,0 +1,260 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// transformer with any number of coils, for CustomTransformerElm.  The coils are described by
+// a string like "1,1:1" (see parseDescription()).
+class CustomTransformerDevice extends Device {
+    double coilCurrents[], coilInductances[], coilCurSourceValues[], coilPolarities[];
+    double nodeCurrents[];
+
+    // node number n of first node of each coil (second node = n+1)
+    int coilNodes[];
+
+    int coilCount, nodeCount;
+
+    // number of primary coils
+    int primaryCoils;
+
+    double inductance, couplingCoef;
+    boolean needDots;
+    int flags;
+
+    // the description read by undump(), and whether it parsed
+    String description;
+    boolean descriptionOk;
+
+    CustomTransformerDevice(CircuitEngine s) {
+	super(s);
+	inductance = 4;
+	couplingCoef = .999;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	flags = f;
+	inductance = new Double(st.nextToken()).doubleValue();
+	couplingCoef = new Double(st.nextToken()).doubleValue();
+	description = unescape(st.nextToken());
+	int n = new Integer(st.nextToken()).intValue();
+	int i;
+	coilCurrents = new double[n];
+	for (i = 0; i != n; i++)
+	    coilCurrents[i] = new Double(st.nextToken()).doubleValue();
+	descriptionOk = parseDescription(description);
+    }
+
+    boolean parseDescription(String desc) {
+	// a number indicates a coil (number = turns ratio to base inductance coil)
+	// (negative number = reverse polarity)
+	// : separates primary and secondary
+	// , separates two coils
+	// + separates two connected coils (tapped)
+	StringTokenizer st = new StringTokenizer(desc, ",:+", true);
+
+	// count coils/nodes
+	coilCount = nodeCount = 0;
+	while (st.hasMoreTokens()) {
+	    String s = st.nextToken();
+	    if (s.equals("+"))
+		nodeCount--;
+	    if (s.equals(",") || s.equals("+") || s.equals(":"))
+		continue;
+	    nodeCount += 2;
+	    coilCount++;
+	}
+
+	coilNodes = new int[coilCount];
+	coilInductances = new double[coilCount];
+	// save coil currents if possible (needed for undumping)
+	if (coilCurrents == null || coilCurrents.length != coilCount)
+	    coilCurrents = new double[coilCount];
+	coilCurSourceValues = new double[coilCount];
+	coilPolarities = new double[coilCount];
+	nodeCurrents = new double[nodeCount];
+
+	// start over
+	st = new StringTokenizer(desc, ",:+", true);
+	int nodeNum = 0;
+	int coilNum = 0;
+	primaryCoils = 0;
+	boolean secondary = false;
+	needDots = false;
+	while (true) {
+	    String tok = st.nextToken();
+	    double n = 0;
+	    try {
+		n = Double.parseDouble(tok);
+	    } catch (Exception e) { return false; }
+	    if (n == 0)
+		return false;
+	    // create new coil
+	    coilNodes[coilNum] = nodeNum;
+	    coilInductances[coilNum] = n*n*inductance;
+	    coilPolarities[coilNum] = 1;
+	    if (n < 0) {
+		coilPolarities[coilNum] = -1;
+		needDots = true;
+	    }
+	    nodeNum += 2;
+	    coilNum++;
+	    if (!secondary)
+		primaryCoils = coilNum;
+	    if (!st.hasMoreTokens())
+		break;
+	    tok = st.nextToken();
+	    if (tok.equals(","))
+		continue;
+	    if (tok.equals("+")) {
+		nodeNum--;
+		continue;
+	    }
+	    if (tok.equals(":")) {
+		// switch to secondary
+		if (secondary)
+		    return false;
+		secondary = true;
+		continue;
+	    }
+	    return false;
+	}
+	return true;
+    }
+
+    boolean isTrapezoidal() { return (flags & Inductor.FLAG_BACK_EULER) == 0; }
+    int getPostCount() { return nodeCount; }
+    void reset() {
+	super.reset();
+	int i;
+	for (i = 0; i != coilCount; i++)
+	    coilCurrents[i] = coilCurSourceValues[i] = 0;
+	for (i = 0; i != nodeCount; i++)
+	    nodeCurrents[i] = 0;
+    }
+    double xformMatrix[][];
+
+    void stamp() {
+	// equations for transformer:
+	//   v1 = L1  di1/dt + M12  di2/dt + M13 di3/dt + ...
+	//   v2 = M21 di1/dt + L2 di2/dt   + M23 di3/dt + ...
+	//   v3 = ... (one row for each coil)
+	// we invert that to get:
+	//   di1/dt = a1 v1 + a2 v2 + ...
+	//   di2/dt = a3 v1 + a4 v2 + ...
+	// integrate di1/dt using trapezoidal approx and we get:
+	//   i1(t2) = i1(t1) + dt/2 (i1(t1) + i1(t2))
+	//          = i1(t1) + a1 dt/2 v1(t1) + a2 dt/2 v2(t1) + ... +
+	//                     a1 dt/2 v1(t2) + a2 dt/2 v2(t2) + ...
+	// the norton equivalent of this for i1 is:
+	//  a. current source, I = i1(t1) + a1 dt/2 v1(t1) + a2 dt/2 v2(t1) + ...
+	//  b. resistor, G = a1 dt/2
+	//  c. current source controlled by voltage v2, G = a2 dt/2
+	// and for i2:
+	//  a. current source, I = i2(t1) + a3 dt/2 v1(t1) + a4 dt/2 v2(t1) + ...
+	//  b. resistor, G = a3 dt/2
+	//  c. current source controlled by voltage v2, G = a4 dt/2
+	//
+	// For backward euler, the current source value is just i1(t1) and we use
+	// dt instead of dt/2 for the resistor and VCCS.
+	xformMatrix = new double[coilCount][coilCount];
+	int i;
+	// fill diagonal
+	for (i = 0; i != coilCount; i++)
+	    xformMatrix[i][i] = coilInductances[i];
+	int j;
+	// fill off-diagonal
+	for (i = 0; i != coilCount; i++)
+	    for (j = 0; j != i; j++)
+		xformMatrix[i][j] = xformMatrix[j][i] = couplingCoef*Math.sqrt(coilInductances[i]*coilInductances[j])*coilPolarities[i]*coilPolarities[j];
+
+	CircuitEngine.invertMatrix(xformMatrix, coilCount);
+
+	double ts = isTrapezoidal() ? sim.timeStep/2 : sim.timeStep;
+	for (i = 0; i != coilCount; i++)
+	    for (j = 0; j != coilCount; j++) {
+		// multiply in dt/2 (or dt for backward euler)
+		xformMatrix[i][j] *= ts;
+		int ni = coilNodes[i];
+		int nj = coilNodes[j];
+		if (i == j)
+		    sim.stampConductance(nodes[ni], nodes[ni+1], xformMatrix[i][i]);
+		else
+		    sim.stampVCCurrentSource(nodes[ni], nodes[ni+1], nodes[nj], nodes[nj+1], xformMatrix[i][j]);
+	    }
+	for (i = 0; i != nodeCount; i++)
+	    sim.stampRightSide(nodes[i]);
+    }
+
+    void startIteration() {
+	int i;
+	for (i = 0; i != coilCount; i++) {
+	    double val = coilCurrents[i];
+	    if (isTrapezoidal()) {
+		int j;
+		for (j = 0; j != coilCount; j++) {
+		    int n = coilNodes[j];
+		    double voltdiff = volts[n]-volts[n+1];
+		    val += voltdiff*xformMatrix[i][j];
+		}
+	    }
+	    coilCurSourceValues[i] = val;
+	}
+    }
+
+    void doStep() {
+	int i;
+	for (i = 0; i != coilCount; i++) {
+	    int n = coilNodes[i];
+	    sim.stampCurrentSource(nodes[n], nodes[n+1], coilCurSourceValues[i]);
+	}
+    }
+
+    void calculateCurrent() {
+	int i;
+	for (i = 0; i != nodeCount; i++)
+	    nodeCurrents[i] = 0;
+	for (i = 0; i != coilCount; i++) {
+	    double val = coilCurSourceValues[i];
+	    if (xformMatrix != null) {
+		int j;
+		for (j = 0; j != coilCount; j++) {
+		    int n = coilNodes[j];
+		    double voltdiff = volts[n]-volts[n+1];
+		    val += voltdiff*xformMatrix[i][j];
+		}
+	    }
+	    coilCurrents[i] = val;
+	    int ni = coilNodes[i];
+	    nodeCurrents[ni] += val;
+	    nodeCurrents[ni+1] -= val;
+	}
+    }
+
+    double getCurrentIntoNode(int n) {
+	return -nodeCurrents[n];
+    }
+
+    boolean getConnection(int n1, int n2) {
+	int i;
+	for (i = 0; i != coilCount; i++)
+	    if (comparePair(n1, n2, coilNodes[i], coilNodes[i]+1))
+		return true;
+	return false;
+    }
+}
@@ -30,13 +30,13 @@ class DACElm extends ChipElm {
     void setupPins() {
 	sizeX = 2;
 	sizeY = bits > 2 ? bits : 2;
-	pins = new Pin[getPostCount()];
+	allocPins(getPostCount());
 	int i;
 	for (i = 0; i != bits; i++)
-	    pins[i] = new Pin(bits-1-i, SIDE_W, "D" + i);
-	pins[bits]   = new Pin(0, SIDE_E, "O");
+	    pins[i] = new ChipPin(bits-1-i, SIDE_W, "D" + i);
+	pins[bits]   = new ChipPin(0, SIDE_E, "O");
 	pins[bits].output = true;
-	pins[bits+1] = new Pin(sizeY-1, SIDE_E, "V+");
+	pins[bits+1] = new ChipPin(sizeY-1, SIDE_E, "V+");
 	allocNodes();
     }
     void doStep() {
@@ -43,23 +43,23 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 3;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(0, SIDE_W, "D");
-	    pins[1] = new Pin(0, SIDE_E, "Q");
+	    allocPins(getPostCount());
+	    pins[0] = new ChipPin(0, SIDE_W, "D");
+	    pins[1] = new ChipPin(0, SIDE_E, "Q");
 	    pins[1].output = pins[1].state = true;
-	    pins[2] = new Pin(hasSet()?1:2, SIDE_E, "Q");
+	    pins[2] = new ChipPin(hasSet()?1:2, SIDE_E, "Q");
 	    pins[2].output = true;
 	    pins[2].lineOver = true;
-	    pins[3] = new Pin(1, SIDE_W, "");
+	    pins[3] = new ChipPin(1, SIDE_W, "");
 	    pins[3].clock = true;
            if (!hasSet()) {
             if (hasReset()) {
-               pins[4] = new Pin(2, SIDE_W, "R");
+               pins[4] = new ChipPin(2, SIDE_W, "R");
                pins[4].bubble = invertSetReset();
             }
            } else {
-               pins[5] = new Pin(2, SIDE_W, "S");
-               pins[4] = new Pin(2, SIDE_E, "R");
+               pins[5] = new ChipPin(2, SIDE_W, "S");
+               pins[4] = new ChipPin(2, SIDE_E, "R");
                pins[4].bubble = pins[5].bubble = invertSetReset();
             }
 	}
@@ -69,7 +69,7 @@ package com.lushprojects.circuitjs1.client;
 	int getVoltageSourceCount() { return 2; }
         void reset() {
             super.reset();
-	    volts[2] = highVoltage;
+	    volts[2] = chip.highVoltage;
 	    pins[2].value = true;
         }
 	void execute() {
@@ -79,14 +79,14 @@ package com.lushprojects.circuitjs1.client;
                 return;
             }
 	    
-	    if (pins[3].value && !lastClock)
+	    if (pins[3].value && !chip.lastClock)
 		writeOutput(1, pins[0].value);
 	    if(hasSet() && pins[5].value != invertSetReset())
 		writeOutput(1, true);
 	    if(hasReset() && pins[4].value != invertSetReset())
 		writeOutput(1, false);
 	    writeOutput(2, !pins[1].value);
-	    lastClock = pins[3].value;
+	    chip.lastClock = pins[3].value;
 	}
 	int getDumpType() { return 155; }
 	public EditInfo getChipEditInfo(int n) {
@@ -21,8 +21,8 @@ public class DarlingtonElm extends CompositeElm {
     DarlingtonElm(int xx, int yy, boolean pnpflag) {
 	super(xx, yy, modelString, modelExternalNodes);
 	pnp = (pnpflag) ? -1 : 1;
-	((TransistorElm) compElmList.get(0)).pnp=pnp;
-	((TransistorElm) compElmList.get(1)).pnp=pnp;
+	((TransistorElm) compElmList.get(0)).trans.pnp=pnp;
+	((TransistorElm) compElmList.get(1)).trans.pnp=pnp;
 	noDiagonal = true;
 	
     }
@@ -53,7 +53,7 @@ class DataInputElm extends RailElm {
 	public DataInputElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    waveform = WF_AC;
+	    source.waveform = WF_AC;
 	    sampleLength = Double.parseDouble(st.nextToken());
 	    scaleFactor = Double.parseDouble(st.nextToken());
 	    fileNum = Integer.parseInt(st.nextToken());
@@ -114,6 +114,7 @@ class DataInputElm extends RailElm {
 	}
 	
 	int getDumpType() { return 424; }
+	int getStateCount() { return -1; }
 	int getShortcut() { return 0; }
 	
 	public EditInfo getEditInfo(int n) {
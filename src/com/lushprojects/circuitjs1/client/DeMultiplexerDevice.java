@@ -0,0 +1,70 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of DeMultiplexerElm
+class DeMultiplexerDevice extends ChipDevice {
+    int selectBitCount;
+    int outputCount;
+    int qPin;
+
+    DeMultiplexerDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	try {
+	    selectBitCount = Integer.parseInt(st.nextToken());
+	    setupPins();
+	} catch (Exception e) {}
+    }
+
+    void setupPins() {
+	if (selectBitCount == 0)
+	    selectBitCount = 2;
+	outputCount = 1 << selectBitCount;
+	sizeX = 1+selectBitCount;
+	sizeY = 1+outputCount;
+	qPin = outputCount+selectBitCount;
+	allocPins(qPin+1);
+	int i;
+	for (i = 0; i != outputCount; i++) {
+	    pins[i] = new ChipPin(i, SIDE_E, "Q" + i);
+	    pins[i].output=true;
+	}
+	for (i = 0; i != selectBitCount; i++) {
+	    int ii = i+outputCount;
+	    pins[ii] = new ChipPin(i, SIDE_S, "S" + i);
+	}
+	pins[qPin] = new ChipPin(0, SIDE_W, "Q");
+    }
+
+    void execute() {
+	int val = 0;
+	int i;
+	for (i = 0; i != selectBitCount; i++)
+	    if (pins[i+outputCount].value)
+		val |= 1<<i;
+	for (i = 0; i != outputCount; i++)
+	    pins[i].value = false;
+	pins[val].value = pins[qPin].value;
+    }
+}
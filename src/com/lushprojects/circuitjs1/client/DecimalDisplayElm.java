@@ -64,10 +64,10 @@ class DecimalDisplayElm extends ChipElm {
     void setupPins() {
 	sizeX = 3;
 	sizeY = bitCount;
-	pins = new Pin[bitCount];
+	allocPins(bitCount);
 	int i;
 	for (i = 0; i != bitCount; i++)
-	    pins[i] = new Pin(bitCount-1-i, SIDE_W, "I" + i);
+	    pins[i] = new ChipPin(bitCount-1-i, SIDE_W, "I" + i);
 	allocNodes();
     }
     int getPostCount() { return bitCount; }
@@ -0,0 +1,156 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// LU factorization of the whole matrix, for small or dense circuits.  This is the same
+// algorithm as CircuitEngine.lu_factor()/lu_solve(), but the matrix is stored in a single
+// row-major array, which is a lot friendlier to the cache than a double[][].
+class DenseMatrixSolver implements MatrixSolver {
+    int n;
+    double a[];
+    int ipvt[];
+
+    DenseMatrixSolver(int n_) {
+	n = n_;
+	a = new double[n*n];
+	ipvt = new int[n];
+    }
+
+    public String getName() { return "dense"; }
+
+    // nothing is cached between factorizations
+    public boolean updateValues(SparseMatrix a) { return true; }
+
+    // factors the matrix into upper and lower triangular matrices by gaussian
+    // elimination, using Crout's method.  Returns false if it is singular.
+    public boolean factor(SparseMatrix m) {
+	int i, j, k;
+	for (i = 0; i != n*n; i++)
+	    a[i] = 0;
+	for (i = 0; i != n; i++) {
+	    int cols[] = m.rowCols[i];
+	    double vals[] = m.rowValues[i];
+	    boolean row_all_zeros = true;
+	    for (k = 0; k != m.rowLength[i]; k++) {
+		a[i*n+cols[k]] += vals[k];
+		if (vals[k] != 0)
+		    row_all_zeros = false;
+	    }
+	    // if all zeros, it's a singular matrix
+	    if (row_all_zeros)
+		return false;
+	}
+
+	// loop through the columns
+	for (j = 0; j != n; j++) {
+
+	    // calculate upper triangular elements for this column
+	    for (i = 0; i != j; i++) {
+		int ri = i*n;
+		double q = a[ri+j];
+		for (k = 0; k != i; k++)
+		    q -= a[ri+k]*a[k*n+j];
+		a[ri+j] = q;
+	    }
+
+	    // calculate lower triangular elements for this column
+	    double largest = 0;
+	    int largestRow = -1;
+	    for (i = j; i != n; i++) {
+		int ri = i*n;
+		double q = a[ri+j];
+		for (k = 0; k != j; k++)
+		    q -= a[ri+k]*a[k*n+j];
+		a[ri+j] = q;
+		double x = Math.abs(q);
+		if (x >= largest) {
+		    largest = x;
+		    largestRow = i;
+		}
+	    }
+
+	    // pivoting
+	    if (j != largestRow) {
+		if (largestRow == -1)
+		    return false;
+		int r1 = largestRow*n;
+		int r2 = j*n;
+		for (k = 0; k != n; k++) {
+		    double x = a[r1+k];
+		    a[r1+k] = a[r2+k];
+		    a[r2+k] = x;
+		}
+	    }
+
+	    // keep track of row interchanges
+	    ipvt[j] = largestRow;
+
+	    // check for zeroes; if we find one, it's a singular matrix.
+	    if (a[j*n+j] == 0.0)
+		return false;
+
+	    if (j != n-1) {
+		double mult = 1.0/a[j*n+j];
+		for (i = j+1; i != n; i++)
+		    a[i*n+j] *= mult;
+	    }
+	}
+	return true;
+    }
+
+    public void solve(double b[]) {
+	int i;
+
+	// find first nonzero b element
+	for (i = 0; i != n; i++) {
+	    int row = ipvt[i];
+
+	    double swap = b[row];
+	    b[row] = b[i];
+	    b[i] = swap;
+	    if (swap != 0)
+		break;
+	}
+
+	int bi = i++;
+	for (; i < n; i++) {
+	    int row = ipvt[i];
+	    int j;
+	    double tot = b[row];
+
+	    b[row] = b[i];
+	    // forward substitution using the lower triangular matrix
+	    int ri = i*n;
+	    for (j = bi; j < i; j++)
+		tot -= a[ri+j]*b[j];
+	    b[i] = tot;
+	}
+	for (i = n-1; i >= 0; i--) {
+	    double tot = b[i];
+
+	    // back-substitution using the upper triangular matrix
+	    int ri = i*n;
+	    int j;
+	    for (j = i+1; j != n; j++)
+		tot -= a[ri+j]*b[j];
+	    b[i] = tot/a[ri+i];
+	}
+    }
+}
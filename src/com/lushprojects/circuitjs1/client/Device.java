@@ -0,0 +1,126 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Vector;
+
+// The simulation half of a circuit element: its nodes and voltages, and how it stamps the
+// matrix and steps through time, with no drawing or editing, so it doesn't depend on GWT.
+// An element that has one (see CircuitElm.setDevice()) forwards its simulation methods to it,
+// and the headless simulator runs the same device through a plain SimElm.  The methods here
+// have the same meaning as the ones in CircuitElm.  The element owns the node and voltage
+// arrays; they are shared with the device when they're allocated.
+abstract class Device {
+    CircuitEngine sim;
+    int nodes[];
+    double volts[];
+    int voltSource;
+    double current;
+
+    Device(CircuitEngine s) {
+	sim = s;
+    }
+
+    int getPostCount() { return 2; }
+    int getInternalNodeCount() { return 0; }
+    int getVoltageSourceCount() { return 0; }
+    void setVoltageSource(int n, int v) { voltSource = v; }
+    boolean nonLinear() { return false; }
+    boolean getConnection(int n1, int n2) { return true; }
+    boolean hasGroundConnection(int n1) { return false; }
+    boolean isWireEquivalent() { return false; }
+    boolean isRemovableWire() { return false; }
+    void setParentList(Vector<? extends SimElm> elmList) {}
+
+    // called after post (or internal node) p is set to node n.  nodes[] is already updated.
+    void setNode(int p, int n) {}
+
+    // read the values after the coordinates and flags f in a dump line.  The browser
+    // element constructors and HeadlessSim both use this, so the dump format is parsed in one
+    // place.  Values that aren't simulated (labels, display options) are skipped.
+    void undump(StringTokenizer st, int f) {}
+
+    // true if posts x1 and x2 are y1 and y2, in either order
+    static boolean comparePair(int x1, int x2, int y1, int y2) {
+	return ((x1 == y1 && x2 == y2) || (x1 == y2 && x2 == y1));
+    }
+
+    // undo CustomLogicModel.escape()
+    static String unescape(String s) {
+	if (s.equals("\\0"))
+	    return "";
+	int i;
+	for (i = 0; i < s.length(); i++) {
+	    if (s.charAt(i) == '\\') {
+		char c = s.charAt(i+1);
+		if (c == 'n')
+		    s = s.substring(0, i) + "\n" + s.substring(i+2);
+		else if (c == 'r')
+		    s = s.substring(0, i) + "\r" + s.substring(i+2);
+		else if (c == 's')
+		    s = s.substring(0, i) + " " + s.substring(i+2);
+		else if (c == 'p')
+		    s = s.substring(0, i) + "+" + s.substring(i+2);
+		else if (c == 'q')
+		    s = s.substring(0, i) + "=" + s.substring(i+2);
+		else if (c == 'h')
+		    s = s.substring(0, i) + "#" + s.substring(i+2);
+		else if (c == 'a')
+		    s = s.substring(0, i) + "&" + s.substring(i+2);
+		else
+		    s = s.substring(0, i) + s.substring(i+1);
+	    }
+	}
+	return s;
+    }
+
+    void reset() {
+	int i;
+	for (i = 0; i != volts.length; i++)
+	    volts[i] = 0;
+    }
+    void stamp() {}
+    void startIteration() {}
+    void doStep() {}
+    void stepFinished() {}
+
+    void setNodeVoltage(int n, double c) {
+	volts[n] = c;
+	calculateCurrent();
+    }
+    void calculateCurrent() {}
+    boolean storesNodeVoltageOnly() { return false; }
+
+    void setCurrent(int vn, double c) { current = c; }
+    double getCurrent() { return current; }
+    double getVoltageDiff() { return volts[0] - volts[1]; }
+    double getCurrentIntoNode(int n) {
+	if (n == 0 && getPostCount() == 2)
+	    return -current;
+	return current;
+    }
+
+    double getTimeStepLimit() { return Double.MAX_VALUE; }
+    void registerBreakpoints() {}
+    boolean isPartitionBoundary() { return false; }
+    int getStateCount() { return -1; }
+    void getState(double s[], int off) {}
+    void setState(double s[], int off) {}
+}
@@ -0,0 +1,71 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// DIAC, for DiacElm.  A resistor from node 0 to internal nodes 2 and 3, and diodes from 2 and
+// 3 to node 1.  The resistance drops to onresistance when the voltage exceeds the breakdown
+// voltage, and goes back up when the current falls below the hold current.
+class DiacDevice extends Device {
+    double onresistance, offresistance, breakdown, holdcurrent;
+    boolean state;
+    Diode diode1, diode2;
+
+    DiacDevice(CircuitEngine s) {
+	super(s);
+	offresistance = 1e8;
+	onresistance = 500;
+	breakdown = 30;
+	holdcurrent = .01;
+	diode1 = new Diode(s);
+	diode2 = new Diode(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	onresistance = new Double(st.nextToken()).doubleValue();
+	offresistance = new Double(st.nextToken()).doubleValue();
+	breakdown = new Double(st.nextToken()).doubleValue();
+	holdcurrent = new Double(st.nextToken()).doubleValue();
+    }
+
+    boolean nonLinear() { return true; }
+    int getInternalNodeCount() { return 2; }
+    void calculateCurrent() {
+	double r = (state) ? onresistance : offresistance;
+	current = (volts[0]-volts[2])/r + (volts[0]-volts[3])/r;
+    }
+    void startIteration() {
+	double vd = volts[0] - volts[1];
+	if (Math.abs(current) < holdcurrent) state = false;
+	if (Math.abs(vd) > breakdown) state = true;
+    }
+    void doStep() {
+	double r = (state) ? onresistance : offresistance;
+	sim.stampResistor(nodes[0], nodes[2], r);
+	sim.stampResistor(nodes[0], nodes[3], r);
+	diode1.doStep(volts[2]-volts[1]);
+	diode2.doStep(volts[1]-volts[3]);
+    }
+    void stamp() {
+	sim.stampNonLinear(nodes[0]);
+	sim.stampNonLinear(nodes[1]);
+	diode1.stamp(nodes[2], nodes[1]);
+	diode2.stamp(nodes[1], nodes[3]);
+    }
+}
@@ -24,40 +24,29 @@ import com.lushprojects.circuitjs1.client.util.Locale;
 class DiacElm extends CircuitElm {
     // resistor from 0 to 2, 3
     // diodes from 2, 3 to 1
-    double onresistance, offresistance, breakdown, holdcurrent;
-    boolean state;
-    Diode diode1, diode2;
+    DiacDevice diac;
     
     public DiacElm(int xx, int yy) {
 	super(xx, yy);
-	offresistance = 1e8;
-	onresistance = 500;
-	breakdown = 30;
-	holdcurrent = .01;
-	state = false;
-	createDiodes();
+	setDevice(diac = new DiacDevice(sim));
+	setupDiodes();
     }
     public DiacElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	onresistance = new Double(st.nextToken()).doubleValue();
-	offresistance = new Double(st.nextToken()).doubleValue();
-	breakdown = new Double(st.nextToken()).doubleValue();
-	holdcurrent = new Double(st.nextToken()).doubleValue();
-	createDiodes();
+	setDevice(diac = new DiacDevice(sim));
+	diac.undump(st, f);
+	setupDiodes();
     }
     
-    void createDiodes() {
-	diode1 = new Diode(sim);
-	diode2 = new Diode(sim);
-	diode1.setupForDefaultModel();
-	diode2.setupForDefaultModel();
+    void setupDiodes() {
+	DiodeModel.getDefaultModel().setupDiode(diac.diode1);
+	DiodeModel.getDefaultModel().setupDiode(diac.diode2);
     }
-    boolean nonLinear() {return true;}
     int getDumpType() { return 203; }
     String dump() {
-	return super.dump() + " " + onresistance + " " + offresistance + " "
-	    + breakdown + " " + holdcurrent;
+	return super.dump() + " " + diac.onresistance + " " + diac.offresistance + " "
+	    + diac.breakdown + " " + diac.holdcurrent;
     }
     
     Polygon arrows[];
@@ -104,59 +93,36 @@ class DiacElm extends CircuitElm {
 	drawPosts(g);
     }
     
-    void calculateCurrent() {
-	double r = (state) ? onresistance : offresistance;
-	current = (volts[0]-volts[2])/r + (volts[0]-volts[3])/r;
-    }
-    void startIteration() {
-	double vd = volts[0] - volts[1];
-	if(Math.abs(current) < holdcurrent) state = false;	
-	if(Math.abs(vd) > breakdown) state = true;
-    }
-    void doStep() {
-	double r = (state) ? onresistance : offresistance;
-	sim.stampResistor(nodes[0], nodes[2], r);
-	sim.stampResistor(nodes[0], nodes[3], r);
-	diode1.doStep(volts[2]-volts[1]);
-	diode2.doStep(volts[1]-volts[3]);
-    }
-    void stamp() {
-	sim.stampNonLinear(nodes[0]);
-	sim.stampNonLinear(nodes[1]);
-	diode1.stamp(nodes[2], nodes[1]);
-	diode2.stamp(nodes[1], nodes[3]);
-    }
-    int getInternalNodeCount() { return 2; }
     void getInfo(String arr[]) {
 	arr[0] = "DIAC";
 	getBasicInfo(arr);
-	arr[3] = state ? "on" : "off";
-	arr[4] = "Ron = " + getUnitText(onresistance, Locale.ohmString);
-	arr[5] = "Roff = " + getUnitText(offresistance, Locale.ohmString);
-	arr[6] = "Vbrkdn = " + getUnitText(breakdown, "V");
-	arr[7] = "Ihold = " + getUnitText(holdcurrent, "A");
+	arr[3] = diac.state ? "on" : "off";
+	arr[4] = "Ron = " + getUnitText(diac.onresistance, Locale.ohmString);
+	arr[5] = "Roff = " + getUnitText(diac.offresistance, Locale.ohmString);
+	arr[6] = "Vbrkdn = " + getUnitText(diac.breakdown, "V");
+	arr[7] = "Ihold = " + getUnitText(diac.holdcurrent, "A");
         arr[8] = "P = " + getUnitText(getPower(), "W");
     }
     public EditInfo getEditInfo(int n) {
 	if (n == 0)
-	    return new EditInfo("On resistance (ohms)", onresistance, 0, 0);
+	    return new EditInfo("On resistance (ohms)", diac.onresistance, 0, 0);
 	if (n == 1)
-	    return new EditInfo("Off resistance (ohms)", offresistance, 0, 0);
+	    return new EditInfo("Off resistance (ohms)", diac.offresistance, 0, 0);
 	if (n == 2)
-	    return new EditInfo("Breakdown voltage (volts)", breakdown, 0, 0);
+	    return new EditInfo("Breakdown voltage (volts)", diac.breakdown, 0, 0);
 	if (n == 3)
-	    return new EditInfo("Hold current (amps)", holdcurrent, 0, 0);
+	    return new EditInfo("Hold current (amps)", diac.holdcurrent, 0, 0);
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
 	if (ei.value > 0 && n == 0)
-	    onresistance = ei.value;
+	    diac.onresistance = ei.value;
 	if (ei.value > 0 && n == 1)
-	    offresistance = ei.value;
+	    diac.offresistance = ei.value;
 	if (ei.value > 0 && n == 2)
-	    breakdown = ei.value;
+	    diac.breakdown = ei.value;
 	if (ei.value > 0 && n == 3)
-	    holdcurrent = ei.value;
+	    diac.holdcurrent = ei.value;
     }
 }
 
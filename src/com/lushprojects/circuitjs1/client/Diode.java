@@ -22,19 +22,20 @@ package com.lushprojects.circuitjs1.client;
 // diode that can be embedded in other elements.  series resistance is handled in DiodeElm, not here.
 class Diode {
     int nodes[];
-    CirSim sim;
+    CircuitEngine sim;
     
-    Diode(CirSim s) {
+    Diode(CircuitEngine s) {
 	sim = s;
 	nodes = new int[2];
     }
-    void setup(DiodeModel model) {
-	leakage = model.saturationCurrent;
-	zvoltage = model.breakdownVoltage;
-	vscale = model.vscale;
-	vdcoef = model.vdcoef;
+    // set up using the parameters of a model (see DiodeModel.setupDiode())
+    void setup(double saturationCurrent, double breakdownVoltage, double emissionCoefficient) {
+	leakage = saturationCurrent;
+	zvoltage = breakdownVoltage;
+	vscale = emissionCoefficient * vt;
+	vdcoef = 1/vscale;
 	
-//	sim.console("setup " + leakage + " " + zvoltage + " " + model.emissionCoefficient + " " +  vdcoef);
+//	sim.console("setup " + leakage + " " + zvoltage + " " + emissionCoefficient + " " +  vdcoef);
 
 	// critical voltage for limiting; current is vscale/sqrt(2) at
 	// this voltage
@@ -49,14 +50,12 @@ class Diode {
 	    double i = -.005;
 	    zoffset = zvoltage-Math.log(-(1+i/leakage))/vzcoef;
 	}
+	bypassValid = false;
     }
 	
-    void setupForDefaultModel() {
-	setup(DiodeModel.getDefaultModel());
-    }
-    
     void reset() {
 	lastvoltdiff = 0;
+	bypassValid = false;
     }
 	
     // Electron thermal voltage at SPICE's default temperature of 27 C (300.15 K):
@@ -79,6 +78,10 @@ class Diode {
     // Critical voltages for limiting the normal diode and Zener breakdown exponentials.
     double vcrit, vzcrit;
     double lastvoltdiff;
+
+    // point where we last evaluated the model, and the resulting stamp, for device bypass
+    boolean bypassValid;
+    double bypassVoltdiff, bypassGmin, bypassGeq, bypassNc;
     
     double limitStep(double vnew, double vold) {
 	double arg;
@@ -155,13 +158,22 @@ class Diode {
 		gmin = .1;
 	}
 
+	// if the voltage has barely moved since we last evaluated the model, reuse that result
+	if (sim.deviceBypass && bypassValid && gmin == bypassGmin &&
+	      Math.abs(voltdiff-bypassVoltdiff) < CircuitEngine.BYPASS_TOLERANCE) {
+	    sim.deviceBypassCount++;
+	    sim.stampConductance(nodes[0], nodes[1], bypassGeq);
+	    sim.stampCurrentSource(nodes[0], nodes[1], bypassNc);
+	    return;
+	}
+	sim.deviceEvalCount++;
+
+	double geq, nc;
 	if (voltdiff >= 0 || zvoltage == 0) {
 	    // regular diode or forward-biased zener
 	    double eval = Math.exp(voltdiff*vdcoef);
-	    double geq = vdcoef*leakage*eval + gmin;
-	    double nc = (eval-1)*leakage - geq*voltdiff;
-	    sim.stampConductance(nodes[0], nodes[1], geq);
-	    sim.stampCurrentSource(nodes[0], nodes[1], nc);
+	    geq = vdcoef*leakage*eval + gmin;
+	    nc = (eval-1)*leakage - geq*voltdiff;
 	} else {
 	    // Zener diode
 	    
@@ -176,19 +188,24 @@ class Diode {
 	     * nc is I(Vd) + I'(Vd)*(-Vd)
 	     */
 
-	    double geq = leakage* ( 
+	    geq = leakage* ( 
 		vdcoef*Math.exp(voltdiff*vdcoef) + vzcoef*Math.exp((-voltdiff-zoffset)*vzcoef)
 		) + gmin;
 
-	    double nc = leakage* (
+	    nc = leakage* (
 		Math.exp(voltdiff*vdcoef) 
 		- Math.exp((-voltdiff-zoffset)*vzcoef) 
 		- 1
 		) + geq*(-voltdiff);
-
-	    sim.stampConductance(nodes[0], nodes[1], geq);
-	    sim.stampCurrentSource(nodes[0], nodes[1],  nc);
 	}
+	sim.stampConductance(nodes[0], nodes[1], geq);
+	sim.stampCurrentSource(nodes[0], nodes[1], nc);
+
+	bypassValid = true;
+	bypassVoltdiff = voltdiff;
+	bypassGmin = gmin;
+	bypassGeq = geq;
+	bypassNc = nc;
     }
     
     double calculateCurrent(double voltdiff) {
@@ -0,0 +1,93 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// diode with optional series resistance, for DiodeElm and its subclasses
+class DiodeDevice extends Device {
+    static final int FLAG_FWDROP = 1;
+    static final int FLAG_MODEL = 2;
+    static final double DEFAULT_DROP = .805904783;
+    Diode diode;
+    double seriesResistance;
+    int diodeEndNode;
+
+    // model name from the dump, or null if it only gives the forward voltage drop.  The
+    // element finds the model and calls setup().
+    String modelName;
+    double fwdrop;
+
+    DiodeDevice(CircuitEngine s) {
+	super(s);
+	diode = new Diode(s);
+	diodeEndNode = 1;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	modelName = null;
+	fwdrop = DEFAULT_DROP;
+	if ((f & FLAG_MODEL) != 0) {
+	    modelName = unescape(st.nextToken());
+	} else {
+	    if ((f & FLAG_FWDROP) > 0) {
+		try {
+		    fwdrop = new Double(st.nextToken()).doubleValue();
+		} catch (Exception e) {
+		}
+	    }
+	}
+    }
+
+    // set up using the parameters of a model (see DiodeModel.setupDiode())
+    void setup(double saturationCurrent, double breakdownVoltage, double emissionCoefficient, double rs) {
+	diode.setup(saturationCurrent, breakdownVoltage, emissionCoefficient);
+	seriesResistance = rs;
+	diodeEndNode = hasResistance() ? 2 : 1;
+    }
+    boolean hasResistance() { return seriesResistance > 0; }
+
+    boolean nonLinear() { return true; }
+    int getInternalNodeCount() { return hasResistance() ? 1 : 0; }
+
+    void reset() {
+	super.reset();
+	diode.reset();
+    }
+    void stamp() {
+	if (hasResistance()) {
+	    // create diode from node 0 to internal node
+	    diode.stamp(nodes[0], nodes[2]);
+	    // create resistor from internal node to node 1
+	    sim.stampResistor(nodes[1], nodes[2], seriesResistance);
+	} else
+	    // don't need any internal nodes if no series resistance
+	    diode.stamp(nodes[0], nodes[1]);
+    }
+    void doStep() {
+	diode.doStep(volts[0]-volts[diodeEndNode]);
+    }
+    void calculateCurrent() {
+	current = diode.calculateCurrent(volts[0]-volts[diodeEndNode]);
+    }
+    void stepFinished() {
+	// stop for huge currents that make simulator act weird
+	if (Math.abs(current) > 1e12)
+	    sim.stopDevice("max current exceeded", this);
+    }
+}
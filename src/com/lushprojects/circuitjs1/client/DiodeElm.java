@@ -26,57 +26,48 @@ import com.google.gwt.user.client.ui.Button;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class DiodeElm extends CircuitElm {
-    Diode diode;
+    DiodeDevice diode;
     static final int FLAG_FWDROP = 1;
     static final int FLAG_MODEL = 2;
     String modelName;
     DiodeModel model;
     static String lastModelName = "default";
-    boolean hasResistance;
-    int diodeEndNode;
     
     public DiodeElm(int xx, int yy) {
 	super(xx, yy);
 	modelName = lastModelName;
-	diode = new Diode(sim);
 	setup();
     }
     
     public DiodeElm(int xa, int ya, int xb, int yb, int f,
 		    StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	final double defaultdrop = .805904783;
-	diode = new Diode(sim);
-	double fwdrop = defaultdrop;
-	double zvoltage = 0;
-	if ((f & FLAG_MODEL) != 0) {
-	    modelName = CustomLogicModel.unescape(st.nextToken());
+	setDevice(diode = createDevice());
+	diode.undump(st, f);
+	if (diode.modelName != null) {
+	    modelName = diode.modelName;
 	} else {
-	    if ((f & FLAG_FWDROP) > 0) {
-		try {
-		    fwdrop = new Double(st.nextToken()).doubleValue();
-		} catch (Exception e) {
-		}
-	    }
-	    model = DiodeModel.getModelWithParameters(fwdrop, zvoltage);
+	    model = DiodeModel.getModelWithParameters(diode.fwdrop, 0);
 	    modelName = model.name;
 //	    CirSim.console("model name wparams = " + modelName);
 	}
 	setup();
     }
-    boolean nonLinear() { return true; }
         
     void setup() {
 //	CirSim.console("setting up for model " + modelName + " " + model);
         model = DiodeModel.getModelWithNameOrCopy(modelName, model);
         modelName = model.name;   // in case we couldn't find that model
-	diode.setup(model);
-	hasResistance = (model.seriesResistance > 0);
-	diodeEndNode = (hasResistance) ? 2 : 1;
+	if (diode == null) {
+	    diode = createDevice();
+	    setDevice(diode);
+	}
+	diode.setup(model.saturationCurrent, model.breakdownVoltage, model.emissionCoefficient,
+		    model.seriesResistance);
 	allocNodes();
     }
+    DiodeDevice createDevice() { return new DiodeDevice(sim); }
     
-    int getInternalNodeCount() { return hasResistance ? 1 : 0; }
     
     public void updateModels() {
 	setup();
@@ -118,13 +109,6 @@ class DiodeElm extends CircuitElm {
 	drawPosts(g);
     }
 	
-    void reset() {
-	diode.reset();
-	volts[0] = volts[1] = curcount = 0;
-	if (hasResistance)
-	    volts[2] = 0;
-    }
-	
     void drawDiode(Graphics g) {
 	setBbox(point1, point2, hs);
 
@@ -144,22 +128,6 @@ class DiodeElm extends CircuitElm {
 	drawThickLine(g, cathode[0], cathode[1]);
     }
 	
-    void stamp() {
-	if (hasResistance) {
-	    // create diode from node 0 to internal node
-	    diode.stamp(nodes[0], nodes[2]);
-	    // create resistor from internal node to node 1
-	    sim.stampResistor(nodes[1], nodes[2], model.seriesResistance);
-	} else
-	    // don't need any internal nodes if no series resistance
-	    diode.stamp(nodes[0], nodes[1]);
-    }
-    void doStep() {
-	diode.doStep(volts[0]-volts[diodeEndNode]);
-    }
-    void calculateCurrent() {
-	current = diode.calculateCurrent(volts[0]-volts[diodeEndNode]);
-    }
     void getInfo(String arr[]) {
 	if (model.oldStyle)
 	    arr[0] = "diode";
@@ -252,11 +220,6 @@ class DiodeElm extends CircuitElm {
 	lastModelName = n;
     }
     
-    void stepFinished() {
-        // stop for huge currents that make simulator act weird
-        if (Math.abs(current) > 1e12)
-            sim.stop("max current exceeded", this);
-    }
 
 
 }
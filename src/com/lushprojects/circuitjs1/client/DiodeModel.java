@@ -305,6 +305,10 @@ public class DiodeModel implements Editable, Comparable<DiodeModel> {
 	vdcoef = 1/vscale;
 	fwdrop = Math.log(1/saturationCurrent + 1) * emissionCoefficient * vt;
     }
+
+    void setupDiode(Diode d) {
+	d.setup(saturationCurrent, breakdownVoltage, emissionCoefficient);
+    }
     
     String dump() {
 	dumped = true;
@@ -29,7 +29,6 @@ import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.ui.Anchor;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.VerticalPanel;
-import com.lushprojects.circuitjs1.client.ChipElm.Pin;
 import com.lushprojects.circuitjs1.client.util.Locale;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.dom.client.MouseDownEvent;
@@ -270,7 +269,7 @@ public class EditCompositeModelDialog extends Dialog implements MouseDownHandler
 	void adjustChipSize(int dx, int dy) {
 	    if (dx < 0 || dy < 0) {
 		for (int i = 0; i != postCount; i++) {
-		    Pin p = chip.pins[i];
+		    ChipPin p = chip.pins[i];
 		    if (dx < 0 && (p.side == ChipElm.SIDE_N || p.side == ChipElm.SIDE_S) && p.pos >= chip.sizeX+dx)
 			return;
 		    if (dy < 0 && (p.side == ChipElm.SIDE_E || p.side == ChipElm.SIDE_W) && p.pos >= chip.sizeY+dy)
@@ -331,7 +330,7 @@ public class EditCompositeModelDialog extends Dialog implements MouseDownHandler
 		double bestdist = 20;
 		selectedPin = -1;
 		for (i = 0; i != postCount; i++) {
-		    Pin p = chip.pins[i];
+		    ChipPin p = chip.pins[i];
 		    int dx = (int)(x*scale) - p.textloc.x;
 		    int dy = (int)(y*scale) - p.textloc.y;
 		    double dist = Math.hypot(dx, dy);
@@ -78,8 +78,43 @@ class EditOptions implements Editable {
 		    ei.checkbox = new Checkbox("Auto-Adjust Timestep", sim.adjustTimeStep);
 		    return ei;
 		}
-		if (n == 12 && sim.adjustTimeStep)
+		if (n == 12) {
+		    EditInfo ei = new EditInfo("", 0, -1, -1);
+		    ei.checkbox = new Checkbox("Bypass Converged Devices", sim.deviceBypass);
+		    return ei;
+		}
+		if (n == 13) {
+		    EditInfo ei = new EditInfo("Matrix Solver", 0, -1, -1);
+		    ei.choice = new Choice();
+		    ei.choice.add("Automatic");
+		    ei.choice.add("Dense");
+		    ei.choice.add("Banded");
+		    ei.choice.add("Sparse");
+		    ei.choice.select(sim.matrixSolverType);
+		    return ei;
+		}
+		if (n == 14) {
+		    EditInfo ei = new EditInfo("", 0, -1, -1);
+		    ei.checkbox = new Checkbox("Newton Predictor", sim.newtonPredictor);
+		    return ei;
+		}
+		if (n == 15 && sim.adjustTimeStep)
 		    return new EditInfo("Minimum time step size (s)", sim.minTimeStep, 0, 0);
+		if (n == 16 && sim.adjustTimeStep) {
+		    EditInfo ei = new EditInfo("", 0, -1, -1);
+		    ei.checkbox = new Checkbox("Use Truncation Error", sim.lteTimeStep);
+		    return ei;
+		}
+		if (n == 17 && sim.adjustTimeStep) {
+		    EditInfo ei = new EditInfo("", 0, -1, -1);
+		    ei.checkbox = new Checkbox("Multirate Partitions", sim.multirate);
+		    return ei;
+		}
+		if (n == 18 && sim.adjustTimeStep) {
+		    EditInfo ei = new EditInfo("", 0, -1, -1);
+		    ei.checkbox = new Checkbox("Step To Source Edges", sim.breakpointTimeStep);
+		    return ei;
+		}
 
 		return null;
 	}
@@ -151,8 +186,26 @@ class EditOptions implements Editable {
 		    sim.adjustTimeStep = ei.checkbox.getState();
 		    ei.newDialog = true;
 		}
-		if (n == 12 && ei.value > 0)
+		if (n == 12)
+		    sim.deviceBypass = ei.checkbox.getState();
+		if (n == 13) {
+		    sim.matrixSolverType = ei.choice.getSelectedIndex();
+		    sim.needAnalyze();
+		}
+		if (n == 14) {
+		    sim.newtonPredictor = ei.checkbox.getState();
+		    sim.predictorCount = 0;
+		}
+		if (n == 15 && ei.value > 0)
 		    sim.minTimeStep = ei.value;
+		if (n == 16)
+		    sim.lteTimeStep = ei.checkbox.getState();
+		if (n == 17) {
+		    sim.multirate = ei.checkbox.getState();
+		    sim.needAnalyze();
+		}
+		if (n == 18)
+		    sim.breakpointTimeStep = ei.checkbox.getState();
 	}
 	
 	Color setColor(String name, EditInfo ei, Color def) {
@@ -0,0 +1,254 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Vector;
+
+import com.lushprojects.circuitjs1.client.util.PerfMonitor;
+
+// Per-element CPU profiler, turned on with Options/Profile Elements.  runCircuit() and
+// updateCircuit() only call into here when profiling is on; otherwise they run their usual
+// loops, so the profiler costs nothing when it's off.
+//
+// Timing each element takes two calls to performance.now(), which is slower than many
+// doStep()s, so we only time one timestep out of every SAMPLE_INTERVAL and scale the result.
+// Drawing is timed on every frame.  Times are kept in arrays that parallel sim.elmArr; when
+// the circuit is analyzed again we carry the totals over to the new array.
+class ElementProfiler {
+    static final int SAMPLE_INTERVAL = 8;
+
+    static final int START_ITERATION = 0;
+    static final int DO_STEP = 1;
+    static final int STEP_FINISHED = 2;
+    static final int DRAW = 3;
+    static final String phaseNames[] = { "startIteration", "doStep", "stepFinished", "draw" };
+
+    SimElm elms[] = new SimElm[0];
+    // times[phase][i] = estimated total milliseconds spent in elms[i] for that phase
+    double times[][] = new double[phaseNames.length][0];
+    int stepCount, sampledSteps, frames;
+
+    void reset() {
+	int i, j;
+	for (i = 0; i != times.length; i++)
+	    for (j = 0; j != elms.length; j++)
+		times[i][j] = 0;
+	stepCount = sampledSteps = frames = 0;
+    }
+
+    // called at the start of each timestep.  returns true if this step should be timed.
+    boolean sampleStep(SimElm arr[]) {
+	if (++stepCount % SAMPLE_INTERVAL != 0)
+	    return false;
+	if (arr != elms)
+	    setElements(arr);
+	sampledSteps++;
+	return true;
+    }
+
+    // switch to a new element array, keeping the totals of elements that are still there
+    void setElements(SimElm arr[]) {
+	HashMap<SimElm, Integer> old = new HashMap<SimElm, Integer>();
+	int i, j;
+	for (i = 0; i != elms.length; i++)
+	    old.put(elms[i], i);
+	double nt[][] = new double[phaseNames.length][arr.length];
+	for (i = 0; i != arr.length; i++) {
+	    Integer o = old.get(arr[i]);
+	    if (o == null)
+		continue;
+	    for (j = 0; j != nt.length; j++)
+		nt[j][i] = times[j][o];
+	}
+	elms = arr;
+	times = nt;
+    }
+
+    void startIteration() {
+	double t[] = times[START_ITERATION];
+	double last = PerfMonitor.getTime();
+	for (int i = 0; i != elms.length; i++) {
+	    elms[i].startIteration();
+	    double now = PerfMonitor.getTime();
+	    t[i] += (now-last)*SAMPLE_INTERVAL;
+	    last = now;
+	}
+    }
+
+    void doStep() {
+	double t[] = times[DO_STEP];
+	double last = PerfMonitor.getTime();
+	for (int i = 0; i != elms.length; i++) {
+	    elms[i].doStep();
+	    double now = PerfMonitor.getTime();
+	    t[i] += (now-last)*SAMPLE_INTERVAL;
+	    last = now;
+	}
+    }
+
+    void stepFinished() {
+	double t[] = times[STEP_FINISHED];
+	double last = PerfMonitor.getTime();
+	for (int i = 0; i != elms.length; i++) {
+	    elms[i].stepFinished();
+	    double now = PerfMonitor.getTime();
+	    t[i] += (now-last)*SAMPLE_INTERVAL;
+	    last = now;
+	}
+    }
+
+    // draw all elements, timing the ones we know about.  elmList may have changed since the
+    // last analysis (while dragging, for example); new elements are drawn but not timed.
+    void draw(Graphics g, SimElm arr[], Vector<CircuitElm> elmList, boolean gray) {
+	if (arr != null && arr != elms)
+	    setElements(arr);
+	double t[] = times[DRAW];
+	boolean same = elmList.size() == elms.length;
+	double last = PerfMonitor.getTime();
+	for (int i = 0; i != elmList.size(); i++) {
+	    CircuitElm ce = elmList.get(i);
+	    if (gray)
+		g.setColor(Color.gray);
+	    ce.draw(g);
+	    double now = PerfMonitor.getTime();
+	    if (same && elms[i] == ce)
+		t[i] += now-last;
+	    last = now;
+	}
+	frames++;
+    }
+
+    double getSimTime(int i) {
+	return times[START_ITERATION][i] + times[DO_STEP][i] + times[STEP_FINISHED][i];
+    }
+
+    // tint each element red according to its share of simulation time, relative to the
+    // most expensive element
+    void drawHeatmap(Graphics g) {
+	int i;
+	double max = 0;
+	for (i = 0; i != elms.length; i++)
+	    max = Math.max(max, getSimTime(i));
+	if (max == 0)
+	    return;
+	for (i = 0; i != elms.length; i++) {
+	    double f = getSimTime(i)/max;
+	    if (f < .02)
+		continue;
+	    Rectangle r = ((CircuitElm) elms[i]).boundingBox;
+	    if (r == null)
+		continue;
+	    g.setColor("rgba(255,0,0," + (Math.round(f*60)/100.) + ")");
+	    g.fillRect(r.x-4, r.y-4, r.width+8, r.height+8);
+	}
+    }
+
+    // one row of the report: an element, or all elements of a class
+    static class Row {
+	String name;
+	int count;
+	double time[] = new double[phaseNames.length];
+
+	double getSimTime() {
+	    return time[START_ITERATION] + time[DO_STEP] + time[STEP_FINISHED];
+	}
+    }
+
+    static String describe(SimElm ce) {
+	return ((CircuitElm) ce).getClassName() + " at " + ce.x + "," + ce.y;
+    }
+
+    // ranked tables of the most expensive classes and elements
+    String getReport(int maxElements) {
+	ArrayList<Row> classRows = new ArrayList<Row>();
+	ArrayList<Row> elmRows = new ArrayList<Row>();
+	HashMap<String, Row> byClass = new HashMap<String, Row>();
+	double total = 0;
+	int i, j;
+	for (i = 0; i != elms.length; i++) {
+	    Row r = new Row();
+	    r.name = describe(elms[i]);
+	    r.count = 1;
+	    String cn = ((CircuitElm) elms[i]).getClassName();
+	    Row cr = byClass.get(cn);
+	    if (cr == null) {
+		cr = new Row();
+		cr.name = cn;
+		byClass.put(cn, cr);
+		classRows.add(cr);
+	    }
+	    cr.count++;
+	    for (j = 0; j != phaseNames.length; j++) {
+		r.time[j] = times[j][i];
+		cr.time[j] += times[j][i];
+	    }
+	    total += r.getSimTime();
+	    elmRows.add(r);
+	}
+	Comparator<Row> cmp = new Comparator<Row>() {
+	    public int compare(Row a, Row b) {
+		return Double.compare(b.getSimTime(), a.getSimTime());
+	    }
+	};
+	Collections.sort(classRows, cmp);
+	Collections.sort(elmRows, cmp);
+
+	StringBuilder sb = new StringBuilder();
+	sb.append("Timesteps: ").append(stepCount).append(" (1 in ").append(SAMPLE_INTERVAL);
+	sb.append(" timed), frames: ").append(frames).append("\n");
+	sb.append("Simulation time: ").append(format(total)).append(" ms\n\n");
+	sb.append("By class:\n");
+	appendRows(sb, classRows, total, classRows.size());
+	sb.append("\nBy element:\n");
+	appendRows(sb, elmRows, total, maxElements);
+	return sb.toString();
+    }
+
+    void appendRows(StringBuilder sb, ArrayList<Row> rows, double total, int max) {
+	sb.append("  sim%   sim ms  doStep  startIt  stepFin   draw ms  count  name\n");
+	int i, j;
+	for (i = 0; i < rows.size() && i < max; i++) {
+	    Row r = rows.get(i);
+	    double st = r.getSimTime();
+	    pad(sb, total > 0 ? format(100*st/total) : "0", 6);
+	    pad(sb, format(st), 9);
+	    pad(sb, format(r.time[DO_STEP]), 8);
+	    pad(sb, format(r.time[START_ITERATION]), 9);
+	    pad(sb, format(r.time[STEP_FINISHED]), 9);
+	    pad(sb, format(r.time[DRAW]), 10);
+	    pad(sb, String.valueOf(r.count), 7);
+	    sb.append("  ").append(r.name).append("\n");
+	}
+    }
+
+    static void pad(StringBuilder sb, String s, int width) {
+	for (int i = s.length(); i < width; i++)
+	    sb.append(' ');
+	sb.append(s);
+    }
+
+    static String format(double x) {
+	return String.valueOf(Math.round(x * 100) / 100.);
+    }
+}
@@ -8,6 +8,8 @@ class ExprState {
     double lastValues[];
     double lastOutput;
     double t;
+    // simulator timestep, for timestep() and the derivatives; set along with t
+    double timeStep;
     ExprState(int xx) {
 	//n = xx;
 	values = new double[9];
@@ -135,15 +137,14 @@ class Expr {
 	case E_LASTOUTPUT:
 	    return es.lastOutput;
 	case E_TIMESTEP:
-	    return CirSim.theSim.timeStep;
+	    return es.timeStep;
 	default:
 	    if (type >= E_LASTA)
 		return es.lastValues[type-E_LASTA];
 	    if (type >= E_DADT)
-		return (es.values[type-E_DADT]-es.lastValues[type-E_DADT])/CirSim.theSim.timeStep;
+		return (es.values[type-E_DADT]-es.lastValues[type-E_DADT])/es.timeStep;
 	    if (type >= E_A)
 		return es.values[type-E_A];
-	    CirSim.console("unknown\n");
 	}
 	return 0;
     }
@@ -171,6 +172,25 @@ class Expr {
 	return y1;
     }
 
+    // return the first time after es.t at which this expression has a corner that we know
+    // about (the points of pwl(t, ...)), or Double.MAX_VALUE
+    double getNextBreakpoint(ExprState es) {
+	double bt = Double.MAX_VALUE;
+	if (children == null)
+	    return bt;
+	int i;
+	if (type == E_PWL && children.get(0).type == E_T) {
+	    for (i = 1; i < children.size(); i += 2) {
+		double x = children.get(i).eval(es);
+		if (x > es.t && x < bt)
+		    bt = x;
+	    }
+	}
+	for (i = 0; i != children.size(); i++)
+	    bt = Math.min(bt, children.get(i).getNextBreakpoint(es));
+	return bt;
+    }
+
     double posmod(double x, double y) {
 	x %= y;
 	return (x >= 0) ? x : x+y;
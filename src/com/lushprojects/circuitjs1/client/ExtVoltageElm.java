@@ -27,7 +27,7 @@ class ExtVoltageElm extends RailElm {
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
 	    name = CustomLogicModel.unescape(st.nextToken());
-	    waveform = WF_AC;
+	    source.waveform = WF_AC;
 	}
 	
         String name;
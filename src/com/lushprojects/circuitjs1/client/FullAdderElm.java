@@ -41,20 +41,20 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX=2;
 	    sizeY=bits*2+1;
-	    pins=new Pin[getPostCount()];
+	    allocPins(getPostCount());
 
 	    int i;
 	    for (i = 0; i != bits; i++) {
-		pins[i       ] = new Pin(bits-1-i, SIDE_W, "A" + i);
-		pins[i+bits  ] = new Pin(bits-1-i+bits, SIDE_W, "B" + i);
-		pins[i+bits*2] = new Pin(bits-1-i+2, SIDE_E, "S" + i);
+		pins[i       ] = new ChipPin(bits-1-i, SIDE_W, "A" + i);
+		pins[i+bits  ] = new ChipPin(bits-1-i+bits, SIDE_W, "B" + i);
+		pins[i+bits*2] = new ChipPin(bits-1-i+2, SIDE_E, "S" + i);
 		pins[i+bits*2].output=true;
 	    }
 	    carryIn = bits*3;
 	    carryOut = bits*3+1;
-	    pins[carryOut] = new Pin(0, SIDE_E, "C");
+	    pins[carryOut] = new ChipPin(0, SIDE_E, "C");
 	    pins[carryOut].output=true;
-	    pins[carryIn] = new Pin(bits*2, SIDE_W, "Cin");
+	    pins[carryIn] = new ChipPin(bits*2, SIDE_W, "Cin");
 	    allocNodes();
 	}
 	int getPostCount() {
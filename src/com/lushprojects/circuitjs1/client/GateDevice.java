@@ -0,0 +1,128 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// logic gate, for GateElm.  The output is a voltage source from ground which is set from the
+// inputs on each subiteration.
+class GateDevice extends Device {
+    static final int FUNC_AND = 0;
+    static final int FUNC_OR  = 1;
+    static final int FUNC_XOR = 2;
+    static final int FLAG_SCHMITT = 2;
+    static final int FLAG_INVERT_INPUTS = 4;
+    int function;
+    boolean inverting;
+    int inputCount;
+    double highVoltage;
+    boolean schmitt, invertInputs;
+    boolean lastOutput;
+    boolean inputStates[];
+    int oscillationCount;
+    double lastTime;
+
+    GateDevice(CircuitEngine s, int func, boolean inv) {
+	super(s);
+	function = func;
+	inverting = inv;
+	highVoltage = 5;
+	setInputCount(2);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	setInputCount(new Integer(st.nextToken()).intValue());
+	double lastOutputVoltage = new Double(st.nextToken()).doubleValue();
+	try {
+	    highVoltage = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) { }
+	lastOutput = lastOutputVoltage > highVoltage*.5;
+	schmitt = (f & FLAG_SCHMITT) != 0;
+	invertInputs = (f & FLAG_INVERT_INPUTS) != 0;
+    }
+
+    void setInputCount(int n) {
+	inputCount = n;
+	inputStates = new boolean[n];
+    }
+
+    int getPostCount() { return inputCount+1; }
+    int getVoltageSourceCount() { return 1; }
+
+    void stamp() {
+	sim.stampVoltageSource(0, nodes[inputCount], voltSource);
+    }
+    boolean getInput(int x) {
+	boolean high = !invertInputs;
+	if (!schmitt)
+	    return (volts[x] > highVoltage*.5) ? high : !high;
+	boolean res = volts[x] > highVoltage*(inputStates[x] ? .35 : .55);
+	inputStates[x] = res ? high : !high;
+	return res;
+    }
+    boolean calcFunction() {
+	int i;
+	boolean f = (function == FUNC_AND);
+	for (i = 0; i != inputCount; i++) {
+	    switch (function) {
+	    case FUNC_AND: f &= getInput(i); break;
+	    case FUNC_OR:  f |= getInput(i); break;
+	    default:       f ^= getInput(i); break;
+	    }
+	}
+	return f;
+    }
+    void doStep() {
+	boolean f = calcFunction();
+	if (inverting)
+	    f = !f;
+
+	if (lastTime != sim.t) {
+	    // detect oscillation (using same strategy as Atanua)
+	    if (lastOutput == !f) {
+		if (oscillationCount++ > 50) {
+		    // output is oscillating too much, randomly leave output the same
+		    oscillationCount = 0;
+		    if (sim.getrand(10) > 5)
+			f = lastOutput;
+		}
+	    } else
+		oscillationCount = 0;
+
+	    lastOutput = f;
+	    lastTime = sim.t;
+	}
+
+	double res = f ? highVoltage : 0;
+	sim.updateVoltageSource(0, nodes[inputCount], voltSource, res);
+    }
+    double getVoltageDiff() { return volts[inputCount]; }
+
+    // there is no current path through the gate inputs, but there
+    // is an indirect path through the output to ground.
+    boolean getConnection(int n1, int n2) { return false; }
+    boolean hasGroundConnection(int n1) {
+	return (n1 == inputCount);
+    }
+
+    double getCurrentIntoNode(int n) {
+	if (n == inputCount)
+	    return current;
+	return 0;
+    }
+}
@@ -24,8 +24,7 @@ package com.lushprojects.circuitjs1.client;
 	final int FLAG_SCHMITT = 1<<1;
 	final int FLAG_INVERT_INPUTS = 1<<2;
 	int inputCount = 2;
-	boolean lastOutput;
-	double highVoltage;
+	GateDevice gate;
 	public static double lastHighVoltage = 5;
 	static boolean lastSchmitt = false;
 	
@@ -33,9 +32,11 @@ package com.lushprojects.circuitjs1.client;
 	    super(xx, yy);
 	    noDiagonal = true;
 	    inputCount = 2;
+	    gate = new GateDevice(sim, getGateFunction(), isInverting());
+	    setDevice(gate);
 	    
 	    // copy defaults from last gate edited
-	    highVoltage = lastHighVoltage;
+	    gate.highVoltage = lastHighVoltage;
 	    if (lastSchmitt)
 		flags |= FLAG_SCHMITT;
 	    
@@ -44,18 +45,16 @@ package com.lushprojects.circuitjs1.client;
 	public GateElm(int xa, int ya, int xb, int yb, int f,
 			StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    inputCount = new Integer(st.nextToken()).intValue();
-	    double lastOutputVoltage = new Double (st.nextToken()).doubleValue();
 	    noDiagonal = true;
-	    highVoltage = 5;
-	    try {
-		highVoltage = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) { }
-	    lastOutput = lastOutputVoltage > highVoltage*.5;
+	    gate = new GateDevice(sim, getGateFunction(), isInverting());
+	    gate.undump(st, f);
+	    inputCount = gate.inputCount;
 	    setSize((f & FLAG_SMALL) != 0 ? 1 : 2);
-	    allocNodes();
+	    setDevice(gate);
 	}
 	boolean isInverting() { return false; }
+	// one of GateDevice.FUNC_*
+	abstract int getGateFunction();
 	int gsize, gwidth, gwidth2, gheight, hs2;
 	void setSize(int s) {
 	    gsize = s;
@@ -66,14 +65,15 @@ package com.lushprojects.circuitjs1.client;
 	    flags |= (s == 1) ? FLAG_SMALL : 0;
 	}
 	String dump() {
-	    return super.dump() + " " + inputCount + " " + volts[inputCount] + " " + highVoltage;
+	    return super.dump() + " " + inputCount + " " + volts[inputCount] + " " + gate.highVoltage;
 	}
 	Point inPosts[], inGates[];
-	boolean inputStates[];
 	int ww;
 	void setPoints() {
 	    super.setPoints();
-	    inputStates = new boolean[inputCount];
+	    gate.setInputCount(inputCount);
+	    gate.schmitt = hasSchmittInputs();
+	    gate.invertInputs = hasFlag(FLAG_INVERT_INPUTS);
 	    if (dn > 150 && this == sim.dragElm)
 		setSize(2);
 	    int hs = gheight;
@@ -99,7 +99,7 @@ package com.lushprojects.circuitjs1.client;
 		inGates[i] = interpPoint(lead1,  lead2,  icircles != null ? -8/(ww*2.) : 0, hs*i0);
 		if (icircles != null)
 		    icircles[i] = interpPoint(lead1, lead2,  -4/(ww*2.), hs*i0);
-		volts[i] = (lastOutput ^ isInverting()) ? 5 : 0;
+		volts[i] = (gate.lastOutput ^ isInverting()) ? 5 : 0;
 	    }
 	    hs2 = gwidth*(inputCount/2+1);
 	    setBbox(point1, point2, hs2);
@@ -148,72 +148,30 @@ package com.lushprojects.circuitjs1.client;
 	    if (icircles != null)
 		for (i = 0; i != inputCount; i++)
 		    drawThickCircle(g, icircles[i].x, icircles[i].y, 3);
-	    curcount = updateDotCount(current, curcount);
+	    curcount = updateDotCount(getCurrent(), curcount);
 	    drawDots(g, lead2, point2, curcount);
 	    drawPosts(g);
 	}
 	Polygon gatePoly, schmittPoly;
 	Point pcircle, linePoints[], icircles[];
-	int getPostCount() { return inputCount+1; }
 	Point getPost(int n) {
 	    if (n == inputCount)
 		return point2;
 	    return inPosts[n];
 	}
-	int getVoltageSourceCount() { return 1; }
 	abstract String getGateName();
 	void getInfo(String arr[]) {
 	    arr[0] = getGateName();
 	    arr[1] = "Vout = " + getVoltageText(volts[inputCount]);
 	    arr[2] = "Iout = " + getCurrentText(getCurrent());
 	}
-	void stamp() {
-	    sim.stampVoltageSource(0, nodes[inputCount], voltSource);
-	}
 	boolean hasSchmittInputs() { return (flags & FLAG_SCHMITT) != 0; }
-	boolean getInput(int x) {
-	    boolean high = !hasFlag(FLAG_INVERT_INPUTS);
-	    if (!hasSchmittInputs())
-		return (volts[x] > highVoltage*.5) ? high : !high;
-	    boolean res = volts[x] > highVoltage*(inputStates[x] ? .35 : .55);
-	    inputStates[x] = res ? high : !high;
-	    return res;
-	}
-	abstract boolean calcFunction();
-	
-	int oscillationCount;
-	double lastTime;
-	
-	void doStep() {
-	    boolean f = calcFunction();
-	    if (isInverting())
-		f = !f;
-	    
-	    if (lastTime != sim.t) {
-		// detect oscillation (using same strategy as Atanua)
-		if (lastOutput == !f) {
-		    if (oscillationCount++ > 50) {
-			// output is oscillating too much, randomly leave output the same
-			oscillationCount = 0;
-			if (sim.getrand(10) > 5)
-			    f = lastOutput;
-		    }
-		} else
-		    oscillationCount = 0;
-	    
-		lastOutput = f;
-		lastTime = sim.t;
-	    }
-	    
-	    double res = f ? highVoltage : 0;
-	    sim.updateVoltageSource(0, nodes[inputCount], voltSource, res);
-	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
 		return new EditInfo("# of Inputs", inputCount, 1, 8).
 		    setDimensionless();
 	    if (n == 1)
-		return new EditInfo("High Logic Voltage", highVoltage, 1, 10);
+		return new EditInfo("High Logic Voltage", gate.highVoltage, 1, 10);
 	    if (n == 2)
 		return EditInfo.createCheckbox("Schmitt Inputs", hasSchmittInputs());
 	    if (n == 3)
@@ -227,7 +185,7 @@ package com.lushprojects.circuitjs1.client;
 		setPoints();
 	    }
 	    if (n == 1)
-		highVoltage = lastHighVoltage = ei.value;
+		gate.highVoltage = lastHighVoltage = ei.value;
 	    if (n == 2) {
 		if (ei.checkbox.getState())
 		    flags |= FLAG_SCHMITT;
@@ -241,17 +199,5 @@ package com.lushprojects.circuitjs1.client;
 		setPoints();
 	    }
 	}
-	// there is no current path through the gate inputs, but there
-	// is an indirect path through the output to ground.
-	boolean getConnection(int n1, int n2) { return false; }
-	boolean hasGroundConnection(int n1) {
-	    return (n1 == inputCount);
-	}
-	
-	double getCurrentIntoNode(int n) {
-	    if (n == inputCount)
-		return current;
-	    return 0;
-	}
     }
 
@@ -33,5 +33,6 @@ class GraphicElm extends CircuitElm
     }
 
     int getPostCount() { return 0; }
+    int getStateCount() { return 0; }
 }
 
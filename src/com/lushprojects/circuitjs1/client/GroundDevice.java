@@ -0,0 +1,47 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// ground, for GroundElm.  All grounds are merged into node 0, so there's nothing to stamp,
+// except for old-style grounds in subcircuits, which are a voltage source to ground.
+class GroundDevice extends Device {
+    // this is needed for old subcircuits which have GroundElm dumped
+    static final int FLAG_OLD_STYLE = 1;
+    boolean oldStyle;
+
+    GroundDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    int getPostCount() { return 1; }
+    int getVoltageSourceCount() { return oldStyle ? 1 : 0; }
+    void stamp() {
+	if (oldStyle)
+	    sim.stampVoltageSource(0, nodes[0], voltSource, 0);
+    }
+    void setCurrent(int x, double c) { current = oldStyle ? -c : c; }
+    double getCurrentIntoNode(int n) { return -current; }
+    double getVoltageDiff() { return 0; }
+    boolean hasGroundConnection(int n1) { return true; }
+    boolean isWireEquivalent() { return true; }
+    boolean isRemovableWire() { return true; }
+    boolean storesNodeVoltageOnly() { return !oldStyle; }
+    int getStateCount() { return 0; }
+}
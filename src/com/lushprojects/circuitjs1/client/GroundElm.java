@@ -22,17 +22,20 @@ package com.lushprojects.circuitjs1.client;
     class GroundElm extends CircuitElm {
 	static int lastSymbolType = 0;
 	int symbolType;
+	GroundDevice gnd;
 	
-	// this is needed for old subcircuits which have GroundElm dumped
-	final int FLAG_OLD_STYLE = 1;
+	final int FLAG_OLD_STYLE = GroundDevice.FLAG_OLD_STYLE;
 	
 	public GroundElm(int xx, int yy) {
 	    super(xx, yy);
+	    setDevice(gnd = new GroundDevice(sim));
 	    symbolType = lastSymbolType;
 	}
 	public GroundElm(int xa, int ya, int xb, int yb, int f,
 			 StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
+	    setDevice(gnd = new GroundDevice(sim));
+	    gnd.oldStyle = isOldStyle();
 	    if (st.hasMoreTokens()) {
 		try {
 		    symbolType = Integer.parseInt(st.nextToken());
@@ -43,7 +46,6 @@ package com.lushprojects.circuitjs1.client;
 	    return super.dump() + " " + symbolType;
 	}
 	int getDumpType() { return 'g'; }
-	int getPostCount() { return 1; }
 	void draw(Graphics g) {
 	    setVoltageColor(g, 0);
 	    drawThickLine(g, point1, point2);
@@ -82,37 +84,15 @@ package com.lushprojects.circuitjs1.client;
 	
 	void setOldStyle() {
 	    flags |= FLAG_OLD_STYLE;
+	    gnd.oldStyle = true;
 	}
 	boolean isOldStyle() { return (flags & FLAG_OLD_STYLE) != 0; }
-	int getVoltageSourceCount() {
-	    return (isOldStyle()) ? 1 : 0; 
-	}
-	void stamp() {
-	    if (isOldStyle())
-		sim.stampVoltageSource(0, nodes[0], voltSource, 0);
-	}
-	void setCurrent(int x, double c) { current = isOldStyle() ? -c : c; }
-
-	boolean isWireEquivalent() { return true; }
-	boolean isRemovableWire() { return true; }
-	static Point firstGround;
-	static void resetNodeList() {
-	    firstGround = null;
-	}
-	Point getConnectedPost() {
-	    if (firstGround != null)
-		return firstGround;
-	    firstGround = point1;
-	    return null;
-	}
 	
-//	void setCurrent(int x, double c) { current = -c; }
 	double getVoltageDiff() { return 0; }
 	void getInfo(String arr[]) {
 	    arr[0] = "ground";
 	    arr[1] = "I = " + getCurrentText(getCurrent());
 	}
-	boolean hasGroundConnection(int n1) { return true; }
 	int getShortcut() { return 'g'; }
 	
 	public EditInfo getEditInfo(int n) {
@@ -133,6 +113,4 @@ package com.lushprojects.circuitjs1.client;
 	    if (n == 0)
 		lastSymbolType = symbolType = ei.choice.getSelectedIndex();
 	}
-	
-	@Override double getCurrentIntoNode(int n) { return -current; }
     }
@@ -31,14 +31,14 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX=2;
 	    sizeY=2;
-	    pins=new Pin[getPostCount()];
+	    allocPins(getPostCount());
 
-	    pins[0] = new Pin(0, SIDE_E, "S");
+	    pins[0] = new ChipPin(0, SIDE_E, "S");
 	    pins[0].output=true;
-	    pins[1] = new Pin(1, SIDE_E, "C");
+	    pins[1] = new ChipPin(1, SIDE_E, "C");
 	    pins[1].output=true;		
-	    pins[2] = new Pin(0, SIDE_W, "A");
-	    pins[3] = new Pin(1, SIDE_W, "B");
+	    pins[2] = new ChipPin(0, SIDE_W, "A");
+	    pins[3] = new ChipPin(1, SIDE_W, "B");
 
 	}
 	int getPostCount() {
@@ -23,12 +23,13 @@ class Inductor {
     public static final int FLAG_BACK_EULER = 2;
     int nodes[];
     int flags;
-    CirSim sim;
+    CircuitEngine sim;
     
     double inductance;
     double compResistance, current;
     double curSourceValue;
-    Inductor(CirSim s) {
+    TruncationError lte = new TruncationError();
+    Inductor(CircuitEngine s) {
 	sim = s;
 	nodes = new int[2];
     }
@@ -44,6 +45,7 @@ class Inductor {
 	// calculateCurrent() may get called (from setNodeVoltage()) when analyzing circuit, before
 	// startIteration() gets called
 	curSourceValue = current = c;
+	lte.reset();
     }
     void stamp(int n0, int n1) {
 	// inductor companion model using trapezoidal or backward euler
@@ -81,4 +83,10 @@ class Inductor {
     void doStep(double voltdiff) {
 	sim.stampCurrentSource(nodes[0], nodes[1], curSourceValue);
     }
+    void stepFinished() {
+	lte.add(sim.t, current);
+    }
+    double getTimeStepLimit() {
+	return lte.getTimeStepLimit(isTrapezoidal(), CircuitEngine.LTE_TOLERANCE, 1e-9);
+    }
 }
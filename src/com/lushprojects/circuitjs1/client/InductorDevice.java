@@ -0,0 +1,78 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// inductor, for InductorElm, using the Inductor model
+class InductorDevice extends Device {
+    Inductor ind;
+    double inductance;
+    double initialCurrent;
+    int flags;
+
+    InductorDevice(CircuitEngine s) {
+	super(s);
+	ind = new Inductor(s);
+    }
+    void undump(StringTokenizer st, int f) {
+	inductance = new Double(st.nextToken()).doubleValue();
+	current = new Double(st.nextToken()).doubleValue();
+	try {
+	    initialCurrent = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {}
+	flags = f;
+	setup();
+    }
+    // call after changing inductance or flags
+    void setup() {
+	ind.setup(inductance, current, flags);
+    }
+
+    void reset() {
+	super.reset();
+	current = initialCurrent;
+	ind.resetTo(initialCurrent);
+    }
+    void stamp() { ind.stamp(nodes[0], nodes[1]); }
+    void startIteration() {
+	ind.startIteration(volts[0]-volts[1]);
+    }
+    boolean nonLinear() { return ind.nonLinear(); }
+    void calculateCurrent() {
+	double voltdiff = volts[0]-volts[1];
+	current = ind.calculateCurrent(voltdiff);
+    }
+    void doStep() {
+	double voltdiff = volts[0]-volts[1];
+	ind.doStep(voltdiff);
+    }
+    void stepFinished() { ind.stepFinished(); }
+    // startIteration() uses the voltage across the inductor from the last step, so that is
+    // part of the state too
+    int getStateCount() { return 2; }
+    void getState(double s[], int off) {
+	s[off] = current;
+	s[off+1] = volts[0]-volts[1];
+    }
+    void setState(double s[], int off) {
+	current = ind.current = s[off];
+	volts[0] = volts[1]+s[off+1];
+    }
+    double getTimeStepLimit() { return ind.getTimeStepLimit(); }
+}
@@ -20,29 +20,23 @@
 package com.lushprojects.circuitjs1.client;
 
     class InductorElm extends CircuitElm {
-	Inductor ind;
-	double inductance;
-	double initialCurrent;
+	InductorDevice ind;
 	public InductorElm(int xx, int yy) {
 	    super(xx, yy);
-	    ind = new Inductor(sim);
-	    inductance = 1;
-	    ind.setup(inductance, current, flags);
+	    setDevice(ind = new InductorDevice(sim));
+	    ind.inductance = 1;
+	    ind.flags = flags;
+	    ind.setup();
 	}
 	public InductorElm(int xa, int ya, int xb, int yb, int f,
 		    StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    ind = new Inductor(sim);
-	    inductance = new Double(st.nextToken()).doubleValue();
-	    current = new Double(st.nextToken()).doubleValue();
-	    try {
-		initialCurrent = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {}
-	    ind.setup(inductance, current, flags);
+	    setDevice(ind = new InductorDevice(sim));
+	    ind.undump(st, f);
 	}
 	int getDumpType() { return 'l'; }
 	String dump() {
-	    return super.dump() + " " + inductance + " " + current + " " + initialCurrent;
+	    return super.dump() + " " + ind.inductance + " " + ind.current + " " + ind.initialCurrent;
 	}
 	void setPoints() {
 	    super.setPoints();
@@ -58,53 +52,35 @@ package com.lushprojects.circuitjs1.client;
 	    setPowerColor(g, false);
 	    drawCoil(g, 8, lead1, lead2, v1, v2);
 	    if (sim.showValuesCheckItem.getState()) {
-		String s = getShortUnitText(inductance, "H");
+		String s = getShortUnitText(ind.inductance, "H");
 		drawValues(g, s, hs);
 	    }
 	    doDots(g);
 	    drawPosts(g);
 	}
-	void reset() {
-	    volts[0] = volts[1] = curcount = 0;
-	    current = initialCurrent;
-	    ind.resetTo(initialCurrent);
-	}
-	void stamp() { ind.stamp(nodes[0], nodes[1]); }
-	void startIteration() {
-	    ind.startIteration(volts[0]-volts[1]);
-	}
-	boolean nonLinear() { return ind.nonLinear(); }
-	void calculateCurrent() {
-	    double voltdiff = volts[0]-volts[1];
-	    current = ind.calculateCurrent(voltdiff);
-	}
-	void doStep() {
-	    double voltdiff = volts[0]-volts[1];
-	    ind.doStep(voltdiff);
-	}
 	void getInfo(String arr[]) {
 	    arr[0] = "inductor";
 	    getBasicInfo(arr);
-	    arr[3] = "L = " + getUnitText(inductance, "H");
+	    arr[3] = "L = " + getUnitText(ind.inductance, "H");
 	    arr[4] = "P = " + getUnitText(getPower(), "W");
 	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Inductance (H)", inductance, 1e-2, 10);
+		return new EditInfo("Inductance (H)", ind.inductance, 1e-2, 10);
 	    if (n == 1) {
 		EditInfo ei = new EditInfo("", 0, -1, -1);
 		ei.checkbox = new Checkbox("Trapezoidal Approximation",
-					   ind.isTrapezoidal());
+					   ind.ind.isTrapezoidal());
 		return ei;
 	    }
             if (n == 2)
-                return new EditInfo("Initial Current (on Reset) (A)", initialCurrent);
+                return new EditInfo("Initial Current (on Reset) (A)", ind.initialCurrent);
 	    return null;
 	}
 	
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0 && ei.value > 0)
-		inductance = ei.value;
+		ind.inductance = ei.value;
 	    if (n == 1) {
 		if (ei.checkbox.getState())
 		    flags &= ~Inductor.FLAG_BACK_EULER;
@@ -112,14 +88,15 @@ package com.lushprojects.circuitjs1.client;
 		    flags |= Inductor.FLAG_BACK_EULER;
 	    }
             if (n == 2)
-                initialCurrent = ei.value;
-	    ind.setup(inductance, current, flags);
+                ind.initialCurrent = ei.value;
+	    ind.flags = flags;
+	    ind.setup();
 	}
 	
 	int getShortcut() { return 'L'; }
-	public double getInductance() { return inductance; }
+	public double getInductance() { return ind.inductance; }
 	void setInductance(double l) {
-	    inductance = l;
-	    ind.setup(inductance, current, flags);
+	    ind.inductance = l;
+	    ind.setup();
 	}
     }
@@ -0,0 +1,89 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// inverting Schmitt trigger, for InvertingSchmittElm: a voltage source at post 1 whose output
+// switches with hysteresis on the voltage at post 0, limited by the slew rate
+class InvertingSchmittDevice extends Device {
+    double slewRate; // V/ns
+    double lowerTrigger;
+    double upperTrigger;
+    boolean state;
+    double logicOnLevel;
+    double logicOffLevel;
+
+    InvertingSchmittDevice(CircuitEngine s) {
+	super(s);
+	slewRate = .5;
+	lowerTrigger = 1.66;
+	upperTrigger = 3.33;
+	logicOnLevel = 5;
+	logicOffLevel = 0;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	try {
+	    slewRate = new Double (st.nextToken()).doubleValue();
+	    lowerTrigger = new Double (st.nextToken()).doubleValue();
+	    upperTrigger = new Double (st.nextToken()).doubleValue();
+	    logicOnLevel = new Double (st.nextToken()).doubleValue();
+	    logicOffLevel = new Double (st.nextToken()).doubleValue();
+	} catch (Exception e) {
+	}
+    }
+
+    int getVoltageSourceCount() { return 1; }
+    void stamp() {
+	sim.stampVoltageSource(0, nodes[1], voltSource);
+    }
+
+    // output voltage for the given state
+    double getOutput(boolean st) { return st ? logicOnLevel : logicOffLevel; }
+
+    void doStep() {
+	double v0 = volts[1];
+	if (state) {
+	    // input voltage high enough to change the output
+	    if (volts[0] > upperTrigger)
+		state = false;
+	} else {
+	    // input voltage low enough to change the output
+	    if (volts[0] < lowerTrigger)
+		state = true;
+	}
+	double out = getOutput(state);
+	double maxStep = slewRate * sim.timeStep * 1e9;
+	out = Math.max(Math.min(v0+maxStep, out), v0-maxStep);
+	sim.updateVoltageSource(0, nodes[1], voltSource, out);
+    }
+    double getVoltageDiff() { return volts[0]; }
+
+    // there is no current path through the input, but there
+    // is an indirect path through the output to ground.
+    boolean getConnection(int n1, int n2) { return false; }
+    boolean hasGroundConnection(int n1) {
+	return (n1 == 1);
+    }
+    double getCurrentIntoNode(int n) {
+	if (n == 1)
+	    return current;
+	return 0;
+    }
+}
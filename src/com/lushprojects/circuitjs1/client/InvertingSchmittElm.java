@@ -22,45 +22,25 @@ package com.lushprojects.circuitjs1.client;
 // contributed by Edward Calver
 
     class InvertingSchmittElm extends CircuitElm {
-	double slewRate; // V/ns
-	double lowerTrigger;
-	double upperTrigger;
-	boolean state;
-	double logicOnLevel;
-	double logicOffLevel;
+	InvertingSchmittDevice schmitt;
 	
 	public InvertingSchmittElm(int xx, int yy) {
 	    super(xx, yy);
 	    noDiagonal = true;
-	    slewRate = .5;
-	    state=false;
-	    lowerTrigger=1.66;
-	    upperTrigger=3.33;
-	    logicOnLevel = 5;
-	    logicOffLevel = 0;
+	    setDevice(schmitt = createDevice());
 	}
 
 	public InvertingSchmittElm(int xa, int ya, int xb, int yb, int f,
 			      StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
 	    noDiagonal = true;
-	    slewRate = .5;
-	    lowerTrigger=1.66;
-	    upperTrigger=3.33;
-	    logicOnLevel = 5;
-	    logicOffLevel = 0;
-	    try {
-		slewRate = new Double (st.nextToken()).doubleValue();
-		lowerTrigger = new Double (st.nextToken()).doubleValue();
-		upperTrigger = new Double (st.nextToken()).doubleValue();
-		logicOnLevel = new Double (st.nextToken()).doubleValue();
-		logicOffLevel = new Double (st.nextToken()).doubleValue();
-	    } catch (Exception e) {
-	    }
+	    setDevice(schmitt = createDevice());
+	    schmitt.undump(st, f);
 	}
+	InvertingSchmittDevice createDevice() { return new InvertingSchmittDevice(sim); }
 
 	String dump() {
-	    return super.dump() + " " + slewRate+" "+lowerTrigger+" "+upperTrigger+" "+logicOnLevel+" "+logicOffLevel;
+	    return super.dump() + " " + schmitt.slewRate+" "+schmitt.lowerTrigger+" "+schmitt.upperTrigger+" "+schmitt.logicOnLevel+" "+schmitt.logicOffLevel;
 	}
 	
 	int getDumpType() { return 183; }//Trying to find unused type
@@ -97,42 +77,6 @@ package com.lushprojects.circuitjs1.client;
 	    symbolPoly = getSchmittPolygon(1, .3f);
 	    setBbox(point1, point2, hs);
 	}
-	int getVoltageSourceCount() { return 1; }
-	void stamp() {
-	    sim.stampVoltageSource(0, nodes[1], voltSource);
-	}
-	void doStep() {
-	    double v0 = volts[1];
-	    double out;
-		if(state)
-		{//Output is high
-			if(volts[0]>upperTrigger)//Input voltage high enough to set output low
-			{
-			state=false;
-			out=logicOffLevel;
-			}
-			else
-			{
-			out=logicOnLevel;
-			}
-		}
-		else
-		{//Output is low
-			if(volts[0]<lowerTrigger)//Input voltage low enough to set output high
-			{
-			state=true;
-			out=logicOnLevel;
-			}
-			else
-			{
-			out=logicOffLevel;
-			}
-		}
-	    
-	    double maxStep = slewRate * sim.timeStep * 1e9;
-	    out = Math.max(Math.min(v0+maxStep, out), v0-maxStep);
-	    sim.updateVoltageSource(0, nodes[1], voltSource, out);
-	}
 	double getVoltageDiff() { return volts[0]; }
 
 	void getInfo(String arr[]) {
@@ -143,20 +87,20 @@ package com.lushprojects.circuitjs1.client;
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
 		{
-		dlt=lowerTrigger;
-		return new EditInfo("Lower threshold (V)", lowerTrigger, 0.01,5);
+		dlt=schmitt.lowerTrigger;
+		return new EditInfo("Lower threshold (V)", schmitt.lowerTrigger, 0.01,5);
 		}	    
 	    if (n == 1)
 		{
-		dut=upperTrigger;
-		return new EditInfo("Upper threshold (V)", upperTrigger, 0.01,5);
+		dut=schmitt.upperTrigger;
+		return new EditInfo("Upper threshold (V)", schmitt.upperTrigger, 0.01,5);
 	    	}
 	    if (n == 2)
-		return new EditInfo("Slew Rate (V/ns)", slewRate, 0, 0);
+		return new EditInfo("Slew Rate (V/ns)", schmitt.slewRate, 0, 0);
 	    if (n == 3)
-		return new EditInfo("High Logic Voltage", logicOnLevel, 0, 0);
+		return new EditInfo("High Logic Voltage", schmitt.logicOnLevel, 0, 0);
 	    if (n == 4)
-		return new EditInfo("Low Voltage (V)", logicOffLevel, 0, 0);
+		return new EditInfo("Low Voltage (V)", schmitt.logicOffLevel, 0, 0);
 	    
 	    return null;
 	}
@@ -168,36 +112,24 @@ package com.lushprojects.circuitjs1.client;
 	  	if (n == 1)
 		dut=ei.value;
 	    	if (n == 2)
-		slewRate = ei.value;
+		schmitt.slewRate = ei.value;
 	    	if (n == 3)
-	    	    logicOnLevel = ei.value;
+	    	    schmitt.logicOnLevel = ei.value;
 	    	if (n == 4)
-	    	    logicOffLevel = ei.value;
+	    	    schmitt.logicOffLevel = ei.value;
 	    	
 		
 		if(dlt>dut)
 		{
-    		upperTrigger=dlt;
-    		lowerTrigger=dut;
+    		schmitt.upperTrigger=dlt;
+    		schmitt.lowerTrigger=dut;
 		}
 		else
 		{
-		upperTrigger=dut;
-		lowerTrigger=dlt;
+		schmitt.upperTrigger=dut;
+		schmitt.lowerTrigger=dlt;
 		}
 
 	}
-	// there is no current path through the InvertingSchmitt input, but there
-	// is an indirect path through the output to ground.
-	boolean getConnection(int n1, int n2) { return false; }
-	boolean hasGroundConnection(int n1) {
-	    return (n1 == 1);
-	}
-	
-	@Override double getCurrentIntoNode(int n) {
-	    if (n == 1)
-		return current;
-	    return 0;
-	}
 
     }
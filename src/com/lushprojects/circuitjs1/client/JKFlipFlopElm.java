@@ -37,20 +37,20 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 3;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(0, SIDE_W, "J");
-	    pins[1] = new Pin(1, SIDE_W, "");
+	    allocPins(getPostCount());
+	    pins[0] = new ChipPin(0, SIDE_W, "J");
+	    pins[1] = new ChipPin(1, SIDE_W, "");
 	    pins[1].clock = true;
 	    pins[1].bubble = !positiveEdgeTriggered();
-	    pins[2] = new Pin(2, SIDE_W, "K");
-	    pins[3] = new Pin(0, SIDE_E, "Q");
+	    pins[2] = new ChipPin(2, SIDE_W, "K");
+	    pins[3] = new ChipPin(0, SIDE_E, "Q");
 	    pins[3].output = pins[3].state = true;
-	    pins[4] = new Pin(2, SIDE_E, "Q");
+	    pins[4] = new ChipPin(2, SIDE_E, "Q");
 	    pins[4].output = true;
 	    pins[4].lineOver = true;
 	    
 	    if(hasReset()){
-	    	pins[5] = new Pin(1, SIDE_E, "R");
+	    	pins[5] = new ChipPin(1, SIDE_E, "R");
 	    	pins[5].bubble = invertReset();
 	    }
 	}
@@ -68,9 +68,9 @@ package com.lushprojects.circuitjs1.client;
             	    
 	    boolean transition;
 	    if (positiveEdgeTriggered())
-		transition = pins[1].value && !lastClock;
+		transition = pins[1].value && !chip.lastClock;
 	    else
-		transition = !pins[1].value && lastClock;
+		transition = !pins[1].value && chip.lastClock;
 	    if (transition) {
 		boolean q = pins[3].value;
 		if (pins[0].value) {
@@ -82,7 +82,7 @@ package com.lushprojects.circuitjs1.client;
 		    q = false;
 		writeOutput(3, q);
 	    }
-	    lastClock = pins[1].value;
+	    chip.lastClock = pins[1].value;
 	    
 	    if(hasReset()){
 	    	if(pins[5].value != invertReset())
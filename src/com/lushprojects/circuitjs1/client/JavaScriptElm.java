@@ -147,8 +147,8 @@ public class JavaScriptElm extends ChipElm {
             sizeY = 1;
             sizeX = 2;
             postCount = 1;
-            pins = new Pin[1];
-            pins[0] = new Pin(0, SIDE_W, "JavascriptNotAvailable");
+            allocPins(1);
+            pins[0] = new ChipPin(0, SIDE_W, "JavascriptNotAvailable");
             return;
         }
 
@@ -162,14 +162,14 @@ public class JavaScriptElm extends ChipElm {
                 sizeY = 1;
             sizeX = 2;
             postCount = inputCount+outputCount;
-            pins = new Pin[postCount];
+            allocPins(postCount);
             int i;
             for (i = 0; i != inputCount; i++) {
-                pins[i] = new Pin(i, SIDE_W, inputs.get(i));
+                pins[i] = new ChipPin(i, SIDE_W, inputs.get(i));
                 pins[i].fixName();
             }
             for (i = 0; i != outputCount; i++) {
-                pins[i+inputCount] = new Pin(i, SIDE_E, outputs.get(i));
+                pins[i+inputCount] = new ChipPin(i, SIDE_E, outputs.get(i));
                 pins[i+inputCount].output = true;
                 pins[i+inputCount].fixName();
             }
@@ -228,7 +228,7 @@ public class JavaScriptElm extends ChipElm {
         int i;
         int add = (hasTriState()) ? outputCount : 0;
         for (i = 0; i != getPostCount(); i++) {
-            Pin p = pins[i];
+            ChipPin p = pins[i];
             if (p.output) {
                 sim.stampVoltageSource(0, nodes[i+add], p.voltSource);
                 if (hasTriState()) {
@@ -242,17 +242,17 @@ public class JavaScriptElm extends ChipElm {
     void doStep() {
         int i;
         for (i = 0; i != getPostCount(); i++) {
-            Pin p = pins[i];
+            ChipPin p = pins[i];
             if (!p.output)
                 p.value = volts[i] > getThreshold();
         }
         execute();
         int add = (hasTriState()) ? outputCount : 0;
         for (i = 0; i != getPostCount(); i++) {
-            Pin p = pins[i];
+            ChipPin p = pins[i];
             if (p.output) {
                 // connect output voltage source (to internal node if tri-state, otherwise connect directly to output)
-                sim.updateVoltageSource(0, nodes[i+add], p.voltSource, p.value ? highVoltage : 0);
+                sim.updateVoltageSource(0, nodes[i+add], p.voltSource, p.value ? chip.highVoltage : 0);
                 
                 // add resistor for tri-state if necessary
                 if (hasTriState())
@@ -0,0 +1,73 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// JFET, for JfetElm.  The channel is modeled like a MOSFET's, with a diode from the gate to
+// the source.
+class JfetDevice extends MosfetDevice {
+	Diode diode;
+	double gateCurrent;
+
+	JfetDevice(CircuitEngine s) {
+	    super(s);
+	    diode = new Diode(s);
+	}
+
+	// these values are taken from Hayes+Horowitz p155
+	double getDefaultThreshold() { return -4; }
+	double getBackwardCompatibilityBeta() { return .00125; }
+
+	void reset() {
+	    super.reset();
+	    diode.reset();
+	}
+
+	double getCurrentIntoNode(int n) {
+	    if (n == 0)
+		return -gateCurrent;
+	    if (n == 1)
+		return gateCurrent+ids;
+	    return -ids;
+	}
+
+	void stamp() {
+	    super.stamp();
+	    if (pnp < 0)
+		diode.stamp(nodes[1], nodes[0]);
+	    else
+		diode.stamp(nodes[0], nodes[1]);
+	}
+	
+	void doStep() {
+	    super.doStep();
+	    diode.doStep(pnp*(volts[0]-volts[1]));
+	}
+	
+	// we override calculateCurrent(), unlike MosfetDevice
+	boolean storesNodeVoltageOnly() { return false; }
+	void calculateCurrent() {
+	    gateCurrent = pnp*diode.calculateCurrent(pnp*(volts[0]-volts[1]));
+	}
+
+	boolean showBulk() { return false; }
+	boolean getConnection(int n1, int n2) {
+	    return true;
+	}
+}
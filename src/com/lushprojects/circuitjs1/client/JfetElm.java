@@ -22,27 +22,23 @@ package com.lushprojects.circuitjs1.client;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class JfetElm extends MosfetElm {
-	Diode diode;
-	double gateCurrent;
+	JfetDevice jfet;
 	
 	JfetElm(int xx, int yy, boolean pnpflag) {
 	    super(xx, yy, pnpflag);
 	    noDiagonal = true;
-	    diode = new Diode(sim);
-	    diode.setupForDefaultModel();
+	    jfet = (JfetDevice) fet;
+	    DiodeModel.getDefaultModel().setupDiode(jfet.diode);
 	}
 	public JfetElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
 	    noDiagonal = true;
-	    diode = new Diode(sim);
-	    diode.setupForDefaultModel();
+	    jfet = (JfetDevice) fet;
+	    DiodeModel.getDefaultModel().setupDiode(jfet.diode);
 	}
 	
-	void reset() {
-	    super.reset();
-	    diode.reset();
-	}
+	MosfetDevice createDevice() { return new JfetDevice(sim); }
 	
 	Polygon gatePoly;
 	Polygon arrowPoly;
@@ -62,9 +58,9 @@ class JfetElm extends MosfetElm {
 	    g.fillPolygon(arrowPoly);
 	    setPowerColor(g, true);
 	    g.fillPolygon(gatePoly);
-	    curcountd = updateDotCount(-ids,            curcountd);
-	    curcountg = updateDotCount(gateCurrent,     curcountg);
-	    curcounts = updateDotCount(-gateCurrent-ids, curcounts);
+	    curcountd = updateDotCount(-jfet.ids,                  curcountd);
+	    curcountg = updateDotCount(jfet.gateCurrent,           curcountg);
+	    curcounts = updateDotCount(-jfet.gateCurrent-jfet.ids, curcounts);
 	    if (curcountd != 0 || curcounts != 0) {
 		drawDots(g, src[0], src[1], curcounts);
 		drawDots(g, src[1], src[2], curcounts+8);
@@ -75,14 +71,6 @@ class JfetElm extends MosfetElm {
 	    drawPosts(g);
 	}
 	
-        double getCurrentIntoNode(int n) {
-            if (n == 0)
-                return -gateCurrent;
-            if (n == 1)
-                return gateCurrent+ids;
-            return -ids;
-        }
-	
 	void setPoints() {
 	    super.setPoints();
 
@@ -101,37 +89,15 @@ class JfetElm extends MosfetElm {
 	    interpPoint2(point1, point2, ra[0], ra[1], 1-13/dn, hs);
 	    interpPoint2(point1, point2, ra[2], ra[3], 1-10/dn, hs);
 	    gatePoly = createPolygon(ra[0], ra[1], ra[3], ra[2]);
-	    if (pnp == -1) {
+	    if (fet.pnp == -1) {
 		Point x = interpPoint(gatePt, point1, 18/dn);
 		arrowPoly = calcArrow(gatePt, x, 8, 3);
 	    } else
 		arrowPoly = calcArrow(point1, gatePt, 8, 3);
 	}
 	
-	void stamp() {
-	    super.stamp();
-	    if (pnp < 0)
-		diode.stamp(nodes[1], nodes[0]);
-	    else
-		diode.stamp(nodes[0], nodes[1]);
-	}
-	
-	void doStep() {
-	    super.doStep();
-	    diode.doStep(pnp*(volts[0]-volts[1]));
-	}
-	
-	void calculateCurrent() {
-	    gateCurrent = pnp*diode.calculateCurrent(pnp*(volts[0]-volts[1]));
-	}
-
-	boolean showBulk() { return false; }
-
 	int getDumpType() { return 'j'; }
-	// these values are taken from Hayes+Horowitz p155
-	double getDefaultThreshold() { return -4; }
-	double getDefaultBeta() { return .00125; }
-	double getBackwardCompatibilityBeta() { return getDefaultBeta(); }
+	double getDefaultBeta() { return fet.getBackwardCompatibilityBeta(); }
 	void getInfo(String arr[]) {
 	    getFetInfo(arr, "JFET");
 	}
@@ -141,11 +107,7 @@ class JfetElm extends MosfetElm {
             return null;
         }
 	
-	boolean getConnection(int n1, int n2) {
-	    return true;
-	}
-
 	@Override String getScopeText(int v) { 
-	    return Locale.LS(((pnp == -1) ? "p-" : "n-") + "JFET");
+	    return Locale.LS(((fet.pnp == -1) ? "p-" : "n-") + "JFET");
 	}
     }
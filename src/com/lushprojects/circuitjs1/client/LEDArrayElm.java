@@ -44,12 +44,12 @@ package com.lushprojects.circuitjs1.client;
 		sizeX = sizeY = 8;
 		allocNodes();
 	    }
-	    pins = new Pin[sizeX+sizeY];
+	    allocPins(sizeX+sizeY);
 	    int i;
 	    for (i = 0; i != sizeX; i++)
-		pins[i] = new Pin(i, SIDE_S, "");
+		pins[i] = new ChipPin(i, SIDE_S, "");
 	    for (i = 0; i != sizeY; i++)
-		pins[i+sizeX] = new Pin(i, SIDE_W, "");
+		pins[i+sizeX] = new ChipPin(i, SIDE_W, "");
 	    brightness = new double[sizeX*sizeY];
 	}
 	
@@ -66,7 +66,7 @@ package com.lushprojects.circuitjs1.client;
 	    DiodeModel model = DiodeModel.getModelWithName("default-led");
 	    for (i = 0; i != diodes.length; i++) {
 		diodes[i] = new Diode(sim);
-		diodes[i].setup(model);
+		model.setupDiode(diodes[i]);
 		diodes[i].stamp(nodes[sizeX+(i / sizeX)], nodes[i % sizeX]);
 	    }
 	    currents = new double[diodes.length];
@@ -79,7 +79,7 @@ class LEDElm extends DiodeElm {
 	    int cr = 12;
 	    drawThickCircle(g, ledCenter.x, ledCenter.y, cr);
 	    cr -= 4;
-	    double w = current/maxBrightnessCurrent;
+	    double w = getCurrent()/maxBrightnessCurrent;
 	    if (w > 0)
 		w = 255*(1+.2*Math.log(w));
 	    if (w > 255)
@@ -0,0 +1,51 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// labeled node, for LabeledNodeElm.  Every node with the same text is connected, like a
+// wire (see CircuitEngine.getConnectedPost()).
+class LabeledNodeDevice extends Device {
+    static final int FLAG_ESCAPE = 4;
+    String text;
+
+    LabeledNodeDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	text = st.nextToken();
+	if ((f & FLAG_ESCAPE) == 0) {
+	    // old-style dump before escape/unescape
+	    while (st.hasMoreTokens())
+		text += ' ' + st.nextToken();
+	} else {
+	    // new-style dump
+	    text = unescape(text);
+	}
+    }
+
+    int getPostCount() { return 1; }
+    double getCurrentIntoNode(int n) { return -current; }
+    double getVoltageDiff() { return volts[0]; }
+    boolean isWireEquivalent() { return true; }
+    boolean isRemovableWire() { return true; }
+    boolean storesNodeVoltageOnly() { return true; }
+    int getStateCount() { return 0; }
+}
@@ -42,16 +42,16 @@ class LatchElm extends ChipElm {
     void setupPins() {
 	sizeX = 2;
 	sizeY = bits+1;
-	pins = new Pin[getPostCount()];
+	allocPins(getPostCount());
 	int i;
 	for (i = 0; i != bits; i++)
-	    pins[i] = new Pin(bits-1-i, SIDE_W, "I" + i);
+	    pins[i] = new ChipPin(bits-1-i, SIDE_W, "I" + i);
 	for (i = 0; i != bits; i++) {
-	    pins[i+bits] = new Pin(bits-1-i, SIDE_E, "O");
+	    pins[i+bits] = new ChipPin(bits-1-i, SIDE_E, "O");
 	    pins[i+bits].output = true;
 	    pins[i+bits].state = (flags & FLAG_STATE) != 0;
 	}
-	pins[loadPin = bits*2] = new Pin(bits, SIDE_W, "Ld");
+	pins[loadPin = bits*2] = new ChipPin(bits, SIDE_W, "Ld");
 	allocNodes();
     }
     boolean lastLoad = false;
@@ -0,0 +1,229 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Skips ahead in time in a linear circuit without simulating every timestep.
+//
+// In a linear circuit with sources that don't change, one timestep is an affine map from the
+// state of the reactive elements at the start of the step (capacitor voltages and currents,
+// inductor currents and voltages) to the state at the end: s' = M s + c.  M comes from the
+// companion models stamped into the matrix, and c from the sources.  We find M and c by
+// running the step with the state set to zero (which gives c) and to each unit vector (which
+// gives a column of M plus c).  Then N steps are s_N = M^N s + (I + M + ... + M^(N-1)) c, which
+// we compute with O(log N) matrix multiplications by repeated squaring.
+//
+// Square and pulse sources are constant between their breakpoints, so we jump from one
+// breakpoint to the next, and take a normal step across each one.  Only M has to be found once;
+// c is probed again for each interval.
+class LinearFastForward {
+    CircuitEngine sim;
+    SimElm elms[];
+    int stateOffset[];
+    int stateCount;
+
+    // we use dense matrices, so give up on circuits with more state than this
+    static final int MAX_STATES = 400;
+
+    LinearFastForward(CircuitEngine s) {
+	sim = s;
+    }
+
+    // find the elements with state.  returns false if we can't fast-forward this circuit.
+    boolean setup() {
+	if (sim.circuitMatrix == null || sim.circuitNonLinear || sim.dcAnalysisFlag || sim.needsStamp)
+	    return false;
+	elms = sim.elmArr;
+	stateOffset = new int[elms.length];
+	stateCount = 0;
+	int i;
+	for (i = 0; i != elms.length; i++) {
+	    int n = elms[i].getStateCount();
+	    if (n < 0) {
+		sim.log("can't fast-forward, " + elms[i].getClass().getName() + " is not supported");
+		return false;
+	    }
+	    stateOffset[i] = stateCount;
+	    stateCount += n;
+	}
+	return stateCount <= MAX_STATES;
+    }
+
+    double[] getState() {
+	double s[] = new double[stateCount];
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    elms[i].getState(s, stateOffset[i]);
+	return s;
+    }
+
+    void setState(double s[]) {
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    elms[i].setState(s, stateOffset[i]);
+    }
+
+    // do one timestep, the same way runCircuit() does it for a linear circuit.  If advance is
+    // false, time stands still, so we can use this to probe the map from one state to the next.
+    void step(boolean advance) {
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    elms[i].startIteration();
+	double rs[] = sim.circuitRightSide;
+	for (i = 0; i != sim.circuitMatrixSize; i++)
+	    rs[i] = sim.origRightSide[i];
+	for (i = 0; i != elms.length; i++)
+	    elms[i].doStep();
+	sim.circuitSolver.solve(rs);
+	sim.applySolvedRightSide(rs);
+	if (advance)
+	    advanceTime(1);
+	for (i = 0; i != elms.length; i++)
+	    elms[i].stepFinished();
+    }
+
+    void advanceTime(double steps) {
+	sim.t += steps*sim.timeStep;
+	sim.timeStepAccum += steps*sim.timeStep;
+	while (sim.timeStepAccum >= sim.maxTimeStep) {
+	    sim.timeStepAccum -= sim.maxTimeStep;
+	    sim.timeStepCount++;
+	}
+    }
+
+    // result of one step from state s
+    double[] probe(double s[]) {
+	setState(s);
+	step(false);
+	return getState();
+    }
+
+    double[][] multiply(double a[][], double b[][]) {
+	int n = stateCount;
+	double c[][] = new double[n][n];
+	int i, j, k;
+	for (i = 0; i != n; i++) {
+	    double ci[] = c[i];
+	    for (k = 0; k != n; k++) {
+		double aik = a[i][k];
+		if (aik == 0)
+		    continue;
+		double bk[] = b[k];
+		for (j = 0; j != n; j++)
+		    ci[j] += aik*bk[j];
+	    }
+	}
+	return c;
+    }
+
+    double[] multiply(double a[][], double x[]) {
+	int n = stateCount;
+	double y[] = new double[n];
+	int i, j;
+	for (i = 0; i != n; i++) {
+	    double sum = 0;
+	    for (j = 0; j != n; j++)
+		sum += a[i][j]*x[j];
+	    y[i] = sum;
+	}
+	return y;
+    }
+
+    // return state after n steps from s, where one step is s' = m s + c
+    double[] jump(double m[][], double c[], double s[], long n) {
+	int i;
+	// p = m^k, and g = (I + m + ... + m^(k-1)) c, for the k steps we have so far.
+	// b = m^j and h = (I + m + ... + m^(j-1)) c, for j = the current power of 2.
+	double p[][] = null;
+	double g[] = new double[stateCount];
+	double b[][] = m;
+	double h[] = c;
+	while (true) {
+	    if ((n & 1) != 0) {
+		// the powers of m commute, so k+j steps = j steps, then k more
+		double bg[] = multiply(b, g);
+		for (i = 0; i != stateCount; i++)
+		    g[i] = h[i] + bg[i];
+		p = (p == null) ? b : multiply(b, p);
+	    }
+	    n >>= 1;
+	    if (n == 0)
+		break;
+	    double bh[] = multiply(b, h);
+	    double nh[] = new double[stateCount];
+	    for (i = 0; i != stateCount; i++)
+		nh[i] = h[i] + bh[i];
+	    h = nh;
+	    b = multiply(b, b);
+	}
+	double r[] = (p == null) ? s : multiply(p, s);
+	for (i = 0; i != stateCount; i++)
+	    r[i] += g[i];
+	return r;
+    }
+
+    // skip ahead by the given amount of time.  returns false if the circuit isn't supported.
+    boolean run(double duration) {
+	if (!setup())
+	    return false;
+	double s[] = getState();
+	double zero[] = new double[stateCount];
+	double m[][] = null;
+	double end = sim.t+duration;
+	int i, j;
+	while (true) {
+	    long n = (long) Math.floor((end-sim.t)/sim.timeStep + 1e-9);
+	    if (n <= 0)
+		break;
+
+	    // steps until the next breakpoint.  sources are evaluated at the start of each step,
+	    // so they are constant for all the steps that start before it.
+	    sim.nextBreakpoint = Double.MAX_VALUE;
+	    for (i = 0; i != elms.length; i++)
+		elms[i].registerBreakpoints();
+	    if (sim.nextBreakpoint != Double.MAX_VALUE)
+		n = Math.min(n, Math.max(1, (long) Math.ceil((sim.nextBreakpoint-sim.t)/sim.timeStep)));
+
+	    if (n > 1) {
+		double c[] = probe(zero);
+		if (m == null) {
+		    m = new double[stateCount][stateCount];
+		    for (j = 0; j != stateCount; j++) {
+			double e[] = new double[stateCount];
+			e[j] = 1;
+			double col[] = probe(e);
+			for (i = 0; i != stateCount; i++)
+			    m[i][j] = col[i]-c[i];
+		    }
+		}
+		// jump to the start of the last step, and do that one normally so everything
+		// (node voltages, currents of all the elements) is consistent
+		s = jump(m, c, s, n-1);
+		setState(s);
+		advanceTime(n-1);
+	    } else
+		setState(s);
+	    step(true);
+	    s = getState();
+	}
+	for (i = 0; i != sim.lastNodeVoltages.length; i++)
+	    sim.lastNodeVoltages[i] = sim.nodeVoltages[i];
+	return true;
+    }
+}
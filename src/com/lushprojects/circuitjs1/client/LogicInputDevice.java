@@ -0,0 +1,66 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// logic input, for LogicInputElm: a voltage source from ground that puts out loV or hiV
+// depending on the switch position (or halfway between for position 1 of a ternary input)
+class LogicInputDevice extends SwitchDevice {
+    static final int FLAG_TERNARY = 1;
+    double hiV, loV;
+    boolean ternary;
+
+    LogicInputDevice(CircuitEngine s) {
+	super(s);
+	hiV = 5;
+	loV = 0;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	try {
+	    hiV = new Double(st.nextToken()).doubleValue();
+	    loV = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {
+	    hiV = 5;
+	    loV = 0;
+	}
+	ternary = (f & FLAG_TERNARY) != 0;
+    }
+
+    int getPostCount() { return 1; }
+    boolean isWireEquivalent() { return false; }
+    boolean isRemovableWire() { return false; }
+    void calculateCurrent() {}
+    void stamp() {
+	sim.stampVoltageSource(0, nodes[0], voltSource);
+    }
+    void doStep() {
+	double v = (position == 0) ? loV : hiV;
+	if (ternary)
+	    v = loV + position * (hiV-loV) * .5;
+	sim.updateVoltageSource(0, nodes[0], voltSource, v);
+    }
+    int getVoltageSourceCount() { return 1; }
+    double getVoltageDiff() { return volts[0]; }
+    boolean hasGroundConnection(int n1) { return true; }
+    double getCurrentIntoNode(int n) {
+	return current;
+    }
+}
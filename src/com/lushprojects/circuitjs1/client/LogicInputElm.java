@@ -22,33 +22,27 @@ package com.lushprojects.circuitjs1.client;
     class LogicInputElm extends SwitchElm {
 	final int FLAG_TERNARY = 1;
 	final int FLAG_NUMERIC = 2;
-	double hiV, loV;
+	LogicInputDevice input;
 	public LogicInputElm(int xx, int yy) {
 	    super(xx, yy, false);
-	    hiV = 5;
-	    loV = 0;
-	    
 	}
 	public LogicInputElm(int xa, int ya, int xb, int yb, int f,
 			     StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    try {
-		hiV = new Double(st.nextToken()).doubleValue();
-		loV = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {
-		hiV = 5;
-		loV = 0;
-	    }
 	    if (isTernary())
 		posCount = 3;
 	}
+	SwitchDevice createDevice() {
+	    input = new LogicInputDevice(sim);
+	    input.ternary = isTernary();
+	    return input;
+	}
 	boolean isTernary() { return (flags & FLAG_TERNARY) != 0; }
 	boolean isNumeric() { return (flags & (FLAG_TERNARY|FLAG_NUMERIC)) != 0; }
 	int getDumpType() { return 'L'; }
 	String dump() {
-	    return super.dump() + " " + hiV + " " + loV;
+	    return super.dump() + " " + input.hiV + " " + input.loV;
 	}
-	int getPostCount() { return 1; }
 	void setPoints() {
 	    super.setPoints();
 	    lead1 = interpPoint(point1, point2, 1-12/dn);
@@ -58,9 +52,9 @@ package com.lushprojects.circuitjs1.client;
 	    Font f = new Font("SansSerif", Font.BOLD, 20);
 	    g.setFont(f);
 	    g.setColor(needsHighlight() ? selectColor : whiteColor);
-	    String s = position == 0 ? "L" : "H";
+	    String s = sw.position == 0 ? "L" : "H";
 	    if (isNumeric())
-		s = "" + position;
+		s = "" + sw.position;
 	    setBbox(point1, lead1, 0);
 	    drawCenteredText(g, s, x2, y2, true);
 	    setVoltageColor(g, volts[0]);
@@ -75,42 +69,25 @@ package com.lushprojects.circuitjs1.client;
 	    return new Rectangle(x2-10, y2-10, 20, 20);
 	}	
 
-	void setCurrent(int vs, double c) { current = c; }
-	void calculateCurrent() {}
-	void stamp() {
-	    sim.stampVoltageSource(0, nodes[0], voltSource);
-	}
-	
-	boolean isWireEquivalent() { return false; }
-	boolean isRemovableWire() { return false; }
-
-	void doStep() {
-	    double v = (position == 0) ? loV : hiV;
-	    if (isTernary())
-		v = loV + position * (hiV-loV) * .5;
-	    sim.updateVoltageSource(0, nodes[0], voltSource, v);
-	}
-	int getVoltageSourceCount() { return 1; }
 	double getVoltageDiff() { return volts[0]; }
 	void getInfo(String arr[]) {
 	    arr[0] = "logic input";
-	    arr[1] = (position == 0) ? "low" : "high";
+	    arr[1] = (sw.position == 0) ? "low" : "high";
 	    if (isNumeric())
-		arr[1] = "" + position;
+		arr[1] = "" + sw.position;
 	    arr[1] += " (" + getVoltageText(volts[0]) + ")";
 	    arr[2] = "I = " + getCurrentText(getCurrent());
 	} 
-	boolean hasGroundConnection(int n1) { return true; }
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0) {
 		EditInfo ei = new EditInfo("", 0, 0, 0);
-		ei.checkbox = new Checkbox("Momentary Switch", momentary);
+		ei.checkbox = new Checkbox("Momentary Switch", sw.momentary);
 		return ei;
 	    }
 	    if (n == 1)
-		return new EditInfo("High Logic Voltage", hiV, 10, -10);
+		return new EditInfo("High Logic Voltage", input.hiV, 10, -10);
 	    if (n == 2)
-		return new EditInfo("Low Voltage", loV, 10, -10);
+		return new EditInfo("Low Voltage", input.loV, 10, -10);
 	    if (n == 3) {
 		EditInfo ei = new EditInfo("", 0, 0, 0);
 		ei.checkbox = new Checkbox("Numeric", isNumeric());
@@ -125,11 +102,11 @@ package com.lushprojects.circuitjs1.client;
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0)
-		momentary = ei.checkbox.getState();
+		sw.momentary = ei.checkbox.getState();
 	    if (n == 1)
-		hiV = ei.value;
+		input.hiV = ei.value;
 	    if (n == 2)
-		loV = ei.value;
+		input.loV = ei.value;
 	    if (n == 3) {
 		if (ei.checkbox.getState())
 		    flags |= FLAG_NUMERIC;
@@ -142,11 +119,8 @@ package com.lushprojects.circuitjs1.client;
 		else
 		    flags &= ~FLAG_TERNARY;
 		posCount = (isTernary()) ? 3 : 2;
+		input.ternary = isTernary();
 	    }
 	}
 	int getShortcut() { return 'i'; }
-	
-	double getCurrentIntoNode(int n) {
-	    return current;
-	}
     }
@@ -0,0 +1,44 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// logic output, for LogicOutputElm.  It only measures, but it can have a 1M pull-down
+// resistor to ground so a floating output reads low.
+class LogicOutputDevice extends Device {
+    boolean pullDown;
+
+    static final int FLAG_PULLDOWN = 4;
+
+    LogicOutputDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    // the threshold after the flags is only used for display, so the element reads it
+    void undump(StringTokenizer st, int f) {
+	pullDown = (f & FLAG_PULLDOWN) != 0;
+    }
+
+    int getPostCount() { return 1; }
+    void stamp() {
+	if (pullDown)
+	    sim.stampResistor(nodes[0], 0, 1e6);
+    }
+    double getVoltageDiff() { return volts[0]; }
+}
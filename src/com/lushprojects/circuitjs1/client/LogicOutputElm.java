@@ -25,13 +25,17 @@ package com.lushprojects.circuitjs1.client;
 	final int FLAG_PULLDOWN = 4;
 	double threshold;
 	String value;
+	LogicOutputDevice out;
 	public LogicOutputElm(int xx, int yy) {
 	    super(xx, yy);
+	    setDevice(out = new LogicOutputDevice(sim));
 	    threshold = 2.5;
 	}
 	public LogicOutputElm(int xa, int ya, int xb, int yb, int f,
 			      StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
+	    setDevice(out = new LogicOutputDevice(sim));
+	    out.undump(st, f);
 	    try {
 		threshold = new Double(st.nextToken()).doubleValue();
 	    } catch (Exception e) {
@@ -42,7 +46,6 @@ package com.lushprojects.circuitjs1.client;
 	    return super.dump() + " " + threshold;
 	}
 	int getDumpType() { return 'M'; }
-	int getPostCount() { return 1; }
 	boolean isTernary() { return (flags & FLAG_TERNARY) != 0; }
 	boolean isNumeric() { return (flags & (FLAG_TERNARY|FLAG_NUMERIC)) != 0; }
 	boolean needsPullDown() { return (flags & FLAG_PULLDOWN) != 0; }
@@ -75,10 +78,6 @@ package com.lushprojects.circuitjs1.client;
 	    drawPosts(g);
 	    g.restore();
 	}
-	void stamp() {
-	    if (needsPullDown())
-		sim.stampResistor(nodes[0], 0, 1e6);
-	}
 	double getVoltageDiff() { return volts[0]; }
 	void getInfo(String arr[]) {
 	    arr[0] = "logic output";
@@ -115,6 +114,7 @@ package com.lushprojects.circuitjs1.client;
 		    flags |= FLAG_PULLDOWN;
 		else
 		    flags &= ~FLAG_PULLDOWN;
+		out.pullDown = needsPullDown();
 	    }
 	    if (n == 2) {
 		if (ei.checkbox.getState())
@@ -0,0 +1,87 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// make-before-break SPDT switch, for MBBSwitchElm.  Positions 1 and 3 connect the pole to
+// both throws.
+class MBBSwitchDevice extends SwitchDevice {
+    int voltSources[];
+    double currents[];
+    boolean both;
+    // switches with the same nonzero link are toggled together
+    int link;
+
+    MBBSwitchDevice(CircuitEngine s) {
+	super(s);
+	voltSources = new int[2];
+	currents = new double[2];
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	link = new Integer(st.nextToken()).intValue();
+    }
+
+    int getPostCount() { return 3; }
+
+    // do not optimize out, even though isWireEquivalent() is true (because it may have 3 nodes to merge
+    // and calcWireClosure() doesn't handle that case)
+    boolean isWireEquivalent() { return true; }
+    boolean isRemovableWire() { return false; }
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return -currents[0]-currents[1];
+	return currents[n-1];
+    }
+    void setCurrent(int vn, double c) {
+	// set current for voltage source vn to c
+	if (vn == voltSources[0])
+	    currents[both ? 0 : position/2] = c;
+	else if (vn == voltSources[1])
+	    currents[1] = c;
+    }
+    void calculateCurrent() {
+	// make sure current of unconnected pole is zero
+	if (!both)
+	    currents[1-(position/2)] = 0;
+    }
+    void setVoltageSource(int n, int v) {
+	voltSources[n] = v;
+    }
+    void stamp() {
+	int vs = 0;
+	if (both || position == 0)
+	    sim.stampVoltageSource(nodes[0], nodes[1], voltSources[vs++], 0);
+	if (both || position == 2)
+	    sim.stampVoltageSource(nodes[0], nodes[2], voltSources[vs++], 0);
+    }
+
+    // connection is implemented by voltage source with voltage = 0.
+    // need two for both loads connected, otherwise one.
+    int getVoltageSourceCount() {
+	both = (position == 1 || position == 3);
+	return (both) ? 2 : 1;
+    }
+    boolean getConnection(int n1, int n2) {
+	if (both)
+	    return true;
+	return comparePair(n1, n2, 0, 1+position/2);
+    }
+}
@@ -20,11 +20,8 @@
 package com.lushprojects.circuitjs1.client;
 
     class MBBSwitchElm extends SwitchElm {
-	int link;
-	int voltSources[];
-	double currents[];
+	MBBSwitchDevice mbb;
 	double curcounts[];
-	boolean both;
 	
 	public MBBSwitchElm(int xx, int yy) {
 	    super(xx, yy, false);
@@ -33,21 +30,19 @@ package com.lushprojects.circuitjs1.client;
 	
 	void setup() {
 	    noDiagonal = true;
-	    voltSources = new int[2];
-	    currents = new double[2];
 	    curcounts = new double[3];
 	}
 	
 	public MBBSwitchElm(int xa, int ya, int xb, int yb, int f,
 			  StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    link = new Integer(st.nextToken()).intValue();
 	    setup();
 	}
 	
+	SwitchDevice createDevice() { return mbb = new MBBSwitchDevice(sim); }
 	int getDumpType() { return 416; }
 	String dump() {
-	    return super.dump() + " " + link;
+	    return super.dump() + " " + mbb.link;
 	}
 
 	final int openhs = 16;
@@ -89,27 +84,21 @@ package com.lushprojects.circuitjs1.client;
 	    // draw switch
 	    if (!needsHighlight())
 		g.setColor(whiteColor);
-	    if (both || position == 0)
+	    if (mbb.both || sw.position == 0)
 		drawThickLine(g, lead1, swpoles[0]);
-	    if (both || position == 2)
+	    if (mbb.both || sw.position == 2)
 		drawThickLine(g, lead1, swpoles[1]);
 
 	    // draw current
 	    for (i = 0; i != 2; i++) {
-		curcounts[i] = updateDotCount(currents[i], curcounts[i]);
+		curcounts[i] = updateDotCount(mbb.currents[i], curcounts[i]);
 		drawDots(g, swpoles[i], swposts[i], curcounts[i]);
 	    }
-	    curcounts[2] = updateDotCount(currents[0]+currents[1], curcounts[2]);
+	    curcounts[2] = updateDotCount(mbb.currents[0]+mbb.currents[1], curcounts[2]);
 	    drawDots(g, point1, lead1, curcounts[2]);
 	    drawPosts(g);
 	}
 	
-	double getCurrentIntoNode(int n) {
-	    if (n == 0)
-		return -currents[0]-currents[1];
-	    return currents[n-1];
-	}
-
 	Rectangle getSwitchRect() {
 	    return new Rectangle(lead1).union(new Rectangle(swpoles[0])).union(new Rectangle(swpoles[1]));
 	}	
@@ -118,74 +107,33 @@ package com.lushprojects.circuitjs1.client;
 	    return (n == 0) ? point1 : swposts[n-1];
 	}
 	
-	int getPostCount() { return 3; }
-	
-	void setCurrent(int vn, double c) {
-	    // set current for voltage source vn to c
-	    if (vn == voltSources[0])
-		currents[both ? 0 : position/2] = c;
-	    else if (vn == voltSources[1])
-		currents[1] = c;
-	}
-	void calculateCurrent() {
-	    // make sure current of unconnected pole is zero
-	    if (!both)
-		currents[1-(position/2)] = 0;
-	}
-	void setVoltageSource(int n, int v) {
-	    voltSources[n] = v;
-	}
-	void stamp() {
-	    int vs = 0;
-	    if (both || position == 0)
-		sim.stampVoltageSource(nodes[0], nodes[1], voltSources[vs++], 0);
-	    if (both || position == 2)
-		sim.stampVoltageSource(nodes[0], nodes[2], voltSources[vs++], 0);
-	}
-	
-	// connection is implemented by voltage source with voltage = 0.
-	// need two for both loads connected, otherwise one.
-	int getVoltageSourceCount() {
-	    both = (position == 1 || position == 3);
-	    return (both) ? 2 : 1;
-	}
 	void toggle() {
 	    super.toggle();
-	    if (link != 0) {
+	    if (mbb.link != 0) {
 		int i;
 		for (i = 0; i != sim.elmList.size(); i++) {
 		    Object o = sim.elmList.elementAt(i);
 		    if (o instanceof MBBSwitchElm) {
 			MBBSwitchElm s2 = (MBBSwitchElm) o;
-			if (s2.link == link)
-			    s2.position = position;
+			if (s2.mbb.link == mbb.link)
+			    s2.sw.position = sw.position;
 		    }
 		}
 	    }
 	}
-	boolean getConnection(int n1, int n2) {
-	    if (both)
-		return true;
-	    return comparePair(n1, n2, 0, 1+position/2);
-	}
-	
-	// do not optimize out, even though isWireEquivalent() is true (because it may have 3 nodes to merge
-	// and calcWireClosure() doesn't handle that case)
-	boolean isRemovableWire() { return false; }
-	boolean isWireEquivalent() { return true; }
 	
 	void getInfo(String arr[]) {
-	    arr[0] = "switch (" + (link == 0 ? "S" : "D") + "PDT, MBB)";
+	    arr[0] = "switch (" + (mbb.link == 0 ? "S" : "D") + "PDT, MBB)";
 	    arr[1] = "I = " + getCurrentDText(getCurrent());
 	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 1)
-	    	return new EditInfo("Switch Group", link, 0, 100).setDimensionless();
+	    	return new EditInfo("Switch Group", mbb.link, 0, 100).setDimensionless();
 	    return super.getEditInfo(n);
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 1) {
-	    	link = (int) ei.value;
+	    	mbb.link = (int) ei.value;
 	    } else
 	    	super.setEditValue(n, ei);
 	}
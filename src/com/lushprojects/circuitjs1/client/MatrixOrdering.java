@@ -0,0 +1,262 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// fill-reducing orderings for sparse matrices.  These only look at the nonzero pattern
+// of the matrix (made symmetric by adding its transpose), not at the values.
+class MatrixOrdering {
+
+    // build adjacency lists for the pattern of a + transpose(a), ignoring the diagonal
+    static int[][] getAdjacency(SparseMatrix a, int adjLen[]) {
+	int n = a.size;
+	int adj[][] = new int[n][];
+	int i, k;
+	for (i = 0; i != n; i++)
+	    adj[i] = new int[4];
+	for (i = 0; i != n; i++) {
+	    int cols[] = a.rowCols[i];
+	    for (k = 0; k != a.rowLength[i]; k++) {
+		int j = cols[k];
+		if (j == i)
+		    continue;
+		adj = addEdge(adj, adjLen, i, j);
+		adj = addEdge(adj, adjLen, j, i);
+	    }
+	}
+	return adj;
+    }
+
+    static int[][] addEdge(int adj[][], int adjLen[], int i, int j) {
+	int list[] = adj[i];
+	int len = adjLen[i];
+	int k;
+	for (k = 0; k != len; k++)
+	    if (list[k] == j)
+		return adj;
+	if (len == list.length) {
+	    int nl[] = new int[len*2];
+	    System.arraycopy(list, 0, nl, 0, len);
+	    adj[i] = list = nl;
+	}
+	list[len] = j;
+	adjLen[i] = len+1;
+	return adj;
+    }
+
+    // minimum degree ordering.  We repeatedly eliminate the node with the fewest
+    // neighbors in the elimination graph, connecting all of its neighbors to each other
+    // (which is the fill-in that eliminating it would cause).  Returns perm[], where
+    // perm[k] is the row/column to eliminate kth.
+    static int[] minimumDegree(SparseMatrix a) {
+	int n = a.size;
+	int adjLen[] = new int[n];
+	int adj[][] = getAdjacency(a, adjLen);
+	int perm[] = new int[n];
+	int marker[] = new int[n];
+	int tag = 0;
+	int i, k;
+
+	// lists of nodes with each degree
+	int head[] = new int[n+1];
+	int next[] = new int[n];
+	int prev[] = new int[n];
+	int degree[] = new int[n];
+	for (i = 0; i <= n; i++)
+	    head[i] = -1;
+	for (i = n-1; i >= 0; i--) {
+	    degree[i] = adjLen[i];
+	    insertNode(head, next, prev, i, degree[i]);
+	}
+
+	int mindeg = 0;
+	for (k = 0; k != n; k++) {
+	    while (head[mindeg] == -1)
+		mindeg++;
+	    int v = head[mindeg];
+	    removeNode(head, next, prev, v, mindeg);
+	    perm[k] = v;
+
+	    int vadj[] = adj[v];
+	    int vlen = adjLen[v];
+	    int p, q;
+	    for (p = 0; p != vlen; p++) {
+		int w = vadj[p];
+		tag++;
+		// remove v from w's list, and mark w's remaining neighbors
+		int wadj[] = adj[w];
+		int wlen = 0;
+		for (q = 0; q != adjLen[w]; q++) {
+		    int u = wadj[q];
+		    if (u == v)
+			continue;
+		    wadj[wlen++] = u;
+		    marker[u] = tag;
+		}
+		adjLen[w] = wlen;
+		// connect w to v's other neighbors
+		for (q = 0; q != vlen; q++) {
+		    int u = vadj[q];
+		    if (u == w || marker[u] == tag)
+			continue;
+		    marker[u] = tag;
+		    adj = addEdge(adj, adjLen, w, u);
+		}
+		removeNode(head, next, prev, w, degree[w]);
+		degree[w] = adjLen[w];
+		insertNode(head, next, prev, w, degree[w]);
+		if (degree[w] < mindeg)
+		    mindeg = degree[w];
+	    }
+	    adj[v] = null;
+	}
+	return perm;
+    }
+
+    // reverse Cuthill-McKee ordering, which keeps the nonzero entries close to the diagonal so
+    // the matrix can be solved as a band matrix.  We do a breadth first search starting from a
+    // node at the edge of the graph, visiting neighbors with lower degree first, and then reverse
+    // the order.  Returns perm[], where perm[k] is the row/column that goes kth.
+    static int[] reverseCuthillMcKee(SparseMatrix a) {
+	int n = a.size;
+	int adjLen[] = new int[n];
+	int adj[][] = getAdjacency(a, adjLen);
+	int perm[] = new int[n];
+	int mark[] = new int[n];
+	int i, k;
+
+	// sort nodes by degree, so we can start each connected component at a low degree node
+	int count[] = new int[n+1];
+	for (i = 0; i != n; i++)
+	    count[adjLen[i]]++;
+	for (i = 1; i <= n; i++)
+	    count[i] += count[i-1];
+	int byDegree[] = new int[n];
+	for (i = n-1; i >= 0; i--)
+	    byDegree[--count[adjLen[i]]] = i;
+
+	// mark[i] == -1 for nodes already in perm[]; other values are used by findPeripheralNode()
+	int tag = 0;
+	int next = 0;
+	for (k = 0; k != n; ) {
+	    while (mark[byDegree[next]] == -1)
+		next++;
+	    int start = byDegree[next];
+	    tag = findPeripheralNode(adj, adjLen, mark, perm, k, start, tag);
+	    start = perm[k];
+
+	    // breadth first search, using perm[] as the queue
+	    int head = k;
+	    mark[start] = -1;
+	    k++;
+	    while (head < k) {
+		int v = perm[head++];
+		int first = k;
+		int p;
+		for (p = 0; p != adjLen[v]; p++) {
+		    int w = adj[v][p];
+		    if (mark[w] == -1)
+			continue;
+		    mark[w] = -1;
+		    // insert in order of increasing degree
+		    int q = k++;
+		    while (q > first && adjLen[perm[q-1]] > adjLen[w]) {
+			perm[q] = perm[q-1];
+			q--;
+		    }
+		    perm[q] = w;
+		}
+	    }
+	}
+
+	// reverse
+	for (i = 0; i != n/2; i++) {
+	    int x = perm[i];
+	    perm[i] = perm[n-1-i];
+	    perm[n-1-i] = x;
+	}
+	return perm;
+    }
+
+    // find a node far away from start in its connected component (George and Liu's
+    // pseudo-peripheral node), by repeatedly doing a breadth first search and moving to
+    // a node in the last level, as long as that increases the number of levels.  The
+    // result goes in queue[qstart], and queue[qstart..] is used as workspace.  Nodes with
+    // mark[] == -1 are ignored.  Returns the last tag used in mark[].
+    static int findPeripheralNode(int adj[][], int adjLen[], int mark[], int queue[], int qstart,
+				  int start, int tag) {
+	int lastDepth = -1;
+	int iter;
+	for (iter = 0; iter != 8; iter++) {
+	    tag++;
+	    int head = qstart, tail = qstart;
+	    queue[tail++] = start;
+	    mark[start] = tag;
+	    int depth = 0;
+	    int levelStart = qstart;
+	    while (head < tail) {
+		int levelEnd = tail;
+		levelStart = head;
+		for (; head != levelEnd; head++) {
+		    int v = queue[head];
+		    int p;
+		    for (p = 0; p != adjLen[v]; p++) {
+			int w = adj[v][p];
+			if (mark[w] == -1 || mark[w] == tag)
+			    continue;
+			mark[w] = tag;
+			queue[tail++] = w;
+		    }
+		}
+		if (tail != levelEnd)
+		    depth++;
+	    }
+	    if (depth <= lastDepth)
+		break;
+	    lastDepth = depth;
+
+	    // pick the node with the lowest degree in the last level
+	    int best = queue[levelStart];
+	    int p;
+	    for (p = levelStart; p != tail; p++)
+		if (adjLen[queue[p]] < adjLen[best])
+		    best = queue[p];
+	    start = best;
+	}
+	queue[qstart] = start;
+	return tag;
+    }
+
+    static void insertNode(int head[], int next[], int prev[], int i, int deg) {
+	next[i] = head[deg];
+	prev[i] = -1;
+	if (head[deg] != -1)
+	    prev[head[deg]] = i;
+	head[deg] = i;
+    }
+
+    static void removeNode(int head[], int next[], int prev[], int i, int deg) {
+	if (prev[i] != -1)
+	    next[prev[i]] = next[i];
+	else
+	    head[deg] = next[i];
+	if (next[i] != -1)
+	    prev[next[i]] = prev[i];
+    }
+}
@@ -0,0 +1,39 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// solves the circuit matrix.  stampCircuit() picks one of these for each circuit, based on
+// the size, bandwidth and density of the simplified matrix, or on the "Matrix Solver" option.
+interface MatrixSolver {
+    // factor the matrix.  Returns false if it is singular.
+    boolean factor(SparseMatrix a);
+
+    // solve the system using the last factorization.  On input, b is the right hand side,
+    // and on output it contains the solution.
+    void solve(double b[]);
+
+    // the entries of the matrix that don't change in doStep() have new values (because the
+    // timestep changed), but the pattern is the same.  Forget anything computed from the old
+    // values.  Returns false if the matrix is singular.
+    boolean updateValues(SparseMatrix a);
+
+    // short description, shown in developer mode
+    String getName();
+}
@@ -43,12 +43,12 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 2;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(0, SIDE_W, "");
+	    allocPins(getPostCount());
+	    pins[0] = new ChipPin(0, SIDE_W, "");
 	    pins[0].clock = true;
-	    pins[1] = new Pin(0, SIDE_E, "Q");
+	    pins[1] = new ChipPin(0, SIDE_E, "Q");
 	    pins[1].output=true;
-	    pins[2] = new Pin(1, SIDE_E, "Q");
+	    pins[2] = new ChipPin(1, SIDE_E, "Q");
 	    pins[2].output=true;
 	    pins[2].lineOver=true;
 	}
@@ -0,0 +1,286 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// MOSFET, for MosfetElm
+class MosfetDevice extends Device {
+	// node 0 = gate, 1 = source for NPN, 2 = drain for NPN, 3 = body (if present)
+	// for PNP, 1 is drain, 2 is source
+	static final int FLAG_PNP = 1;
+	static final int FLAG_DIGITAL = 4;
+	static final int FLAG_HIDE_BULK = 16;
+	static final int FLAG_BODY_DIODE = 32;
+	static final int FLAG_BODY_TERMINAL = 64;
+
+	int pnp;
+	// the element's flags, which decide whether we have a body diode and terminal
+	int flags;
+	int bodyTerminal;
+	double vt;
+	// beta = 1/(RdsON*(Vgs-Vt))
+	double beta;
+	Diode diodeB1, diodeB2;
+	double diodeCurrent1, diodeCurrent2;
+
+	MosfetDevice(CircuitEngine s) {
+	    super(s);
+	    pnp = 1;
+	    // diode from node 1 to body terminal
+	    diodeB1 = new Diode(s);
+	    // diode from node 2 to body terminal
+	    diodeB2 = new Diode(s);
+	}
+
+	void undump(StringTokenizer st, int f) {
+	    pnp = ((f & FLAG_PNP) != 0) ? -1 : 1;
+	    flags = f;
+	    vt = getDefaultThreshold();
+	    beta = getBackwardCompatibilityBeta();
+	    try {
+		vt = new Double(st.nextToken()).doubleValue();
+		beta = new Double(st.nextToken()).doubleValue();
+	    } catch (Exception e) {}
+	}
+
+	double getDefaultThreshold() { return 1.5; }
+
+	// default for elements in old files with no configurable beta.  JfetDevice overrides this.
+	// Not sure where this value came from, but the ZVP3306A has a beta of about .027.  Power MOSFETs have much higher betas (like 80 or more)
+	double getBackwardCompatibilityBeta() { return .02; }
+
+	boolean nonLinear() { return true; }
+	boolean showBulk() { return (flags & (FLAG_DIGITAL|FLAG_HIDE_BULK)) == 0; }
+	boolean hasBodyTerminal() { return (flags & FLAG_BODY_TERMINAL) != 0 && doBodyDiode(); }
+	boolean doBodyDiode() { return (flags & FLAG_BODY_DIODE) != 0 && showBulk(); }
+	void reset() {
+	    lastv1 = lastv2 = volts[0] = volts[1] = volts[2] = 0;
+	    bypassValid = false;
+	    diodeB1.reset();
+	    diodeB2.reset();
+	    if (doBodyDiode())
+		volts[bodyTerminal] = 0;
+	}
+	boolean storesNodeVoltageOnly() { return true; }
+	double getCurrent() { return ids; }
+	int getPostCount() { return hasBodyTerminal() ? 4 : 3; }
+
+	double lastv1, lastv2;
+	double ids;
+	int mode = 0;
+	double gm = 0;
+
+	void stamp() {
+	    sim.stampNonLinear(nodes[1]);
+	    sim.stampNonLinear(nodes[2]);
+	    
+	    if (hasBodyTerminal())
+		bodyTerminal = 3;
+	    else
+		bodyTerminal = (pnp == -1) ? 2 : 1;
+
+	    if (doBodyDiode()) {
+		if (pnp == -1) {
+		    // pnp: diodes conduct when S or D are higher than body
+		    diodeB1.stamp(nodes[1], nodes[bodyTerminal]);
+		    diodeB2.stamp(nodes[2], nodes[bodyTerminal]);
+		} else {
+		    // npn: diodes conduct when body is higher than S or D
+		    diodeB1.stamp(nodes[bodyTerminal], nodes[1]);
+		    diodeB2.stamp(nodes[bodyTerminal], nodes[2]);
+		}
+	    }
+	}
+	
+	boolean nonConvergence(double last, double now) {
+	    double diff = Math.abs(last-now);
+	    
+	    // high beta MOSFETs are more sensitive to small differences, so we are more strict about convergence testing
+	    if (beta > 1)
+		diff *= 100;
+	    
+	    // difference of less than 10mV is fine
+	    if (diff < .01)
+		return false;
+	    // larger differences are fine if value is large
+	    if (sim.subIterations > 10 && diff < Math.abs(now)*.001)
+		return false;
+	    // if we're having trouble converging, get more lenient
+	    if (sim.subIterations > 100 && diff < .01+(sim.subIterations-100)*.0001)
+		return false;
+	    return true;
+	}
+	
+	void stepFinished() {
+	    calculate(true);
+	    
+	    // fix current if body is connected to source or drain
+	    if (bodyTerminal == 1)
+		diodeCurrent1 = -diodeCurrent2;
+	    if (bodyTerminal == 2)
+		diodeCurrent2 = -diodeCurrent1;
+	}
+
+	void doStep() {
+	    calculate(false);
+	}
+	
+	double lastv0;
+	
+	// point where we last evaluated the channel model, and the results, for device bypass
+	boolean bypassValid;
+	int bypassSource, bypassMode;
+	double bypassVgs, bypassVds, bypassIds, bypassGm, bypassGds, bypassRs;
+	
+	// this is called in doStep to stamp the matrix, and also called in stepFinished() to calculate the current
+	void calculate(boolean finished) {
+	    double vs[];
+	    if (finished)
+		vs = volts;
+	    else {
+		// limit voltage changes to .5V
+		vs = new double[3];
+		vs[0] = volts[0];
+		vs[1] = volts[1];
+		vs[2] = volts[2];
+		if (vs[1] > lastv1 + .5)
+		    vs[1] = lastv1 + .5;
+		if (vs[1] < lastv1 - .5)
+		    vs[1] = lastv1 - .5;
+		if (vs[2] > lastv2 + .5)
+		    vs[2] = lastv2 + .5;
+		if (vs[2] < lastv2 - .5)
+		    vs[2] = lastv2 - .5;
+	    }
+	    
+	    int source = 1;
+	    int drain = 2;
+	    
+	    // if source voltage > drain (for NPN), swap source and drain
+	    // (opposite for PNP)
+	    if (pnp*vs[1] > pnp*vs[2]) {
+	    	source = 2;
+	    	drain = 1;
+	    }
+	    int gate = 0;
+	    double vgs = vs[gate ]-vs[source];
+	    double vds = vs[drain]-vs[source];
+	    if (!finished && (nonConvergence(lastv1, vs[1]) || nonConvergence(lastv2, vs[2]) || nonConvergence(lastv0, vs[0])))
+		sim.converged = false;
+	    lastv0 = vs[0];
+	    lastv1 = vs[1];
+	    lastv2 = vs[2];
+	    double realvgs = vgs;
+	    double realvds = vds;
+	    // if the voltages have barely moved since we last evaluated the model, reuse that result
+	    boolean bypass = !finished && sim.deviceBypass && bypassValid && source == bypassSource &&
+		Math.abs(vgs-bypassVgs) < CircuitEngine.BYPASS_TOLERANCE &&
+		Math.abs(vds-bypassVds) < CircuitEngine.BYPASS_TOLERANCE;
+	    vgs *= pnp;
+	    vds *= pnp;
+	    ids = 0;
+	    gm = 0;
+	    double Gds = 0;
+	    if (bypass) {
+		ids = bypassIds;
+		gm = bypassGm;
+		Gds = bypassGds;
+		mode = bypassMode;
+	    } else if (vgs < vt) {
+		// should be all zero, but that causes a singular matrix,
+		// so instead we treat it as a large resistor
+		Gds = 1e-8;
+		ids = vds*Gds;
+		mode = 0;
+	    } else if (vds < vgs-vt) {
+		// linear
+		ids = beta*((vgs-vt)*vds - vds*vds*.5);
+		gm  = beta*vds;
+		Gds = beta*(vgs-vds-vt);
+		mode = 1;
+	    } else {
+		// saturation; Gds = 0
+		gm  = beta*(vgs-vt);
+		// use very small Gds to avoid nonconvergence
+		Gds = 1e-8;
+		ids = .5*beta*(vgs-vt)*(vgs-vt) + (vds-(vgs-vt))*Gds;
+		mode = 2;
+	    }
+	    
+	    if (doBodyDiode()) {
+		diodeB1.doStep(pnp*(volts[bodyTerminal]-volts[1]));
+		diodeCurrent1 = diodeB1.calculateCurrent(pnp*(volts[bodyTerminal]-volts[1]))*pnp;
+		diodeB2.doStep(pnp*(volts[bodyTerminal]-volts[2]));
+		diodeCurrent2 = diodeB2.calculateCurrent(pnp*(volts[bodyTerminal]-volts[2]))*pnp;
+	    } else
+		diodeCurrent1 = diodeCurrent2 = 0;
+
+	    double ids0 = ids;
+	    
+	    // flip ids if we swapped source and drain above
+	    if (source == 2 && pnp == 1 ||
+		source == 1 && pnp == -1)
+		ids = -ids;
+
+	    if (finished)
+		return;
+	    
+	    double rs;
+	    if (bypass) {
+		sim.deviceBypassCount++;
+		rs = bypassRs;
+	    } else {
+		sim.deviceEvalCount++;
+		rs = -pnp*ids0 + Gds*realvds + gm*realvgs;
+		bypassValid = true;
+		bypassSource = source;
+		bypassMode = mode;
+		bypassVgs = realvgs;
+		bypassVds = realvds;
+		bypassIds = ids0;
+		bypassGm = gm;
+		bypassGds = Gds;
+		bypassRs = rs;
+	    }
+	    sim.stampMatrix(nodes[drain],  nodes[drain],  Gds);
+	    sim.stampMatrix(nodes[drain],  nodes[source], -Gds-gm); 
+	    sim.stampMatrix(nodes[drain],  nodes[gate],   gm);
+	    
+	    sim.stampMatrix(nodes[source], nodes[drain],  -Gds);
+	    sim.stampMatrix(nodes[source], nodes[source], Gds+gm); 
+	    sim.stampMatrix(nodes[source], nodes[gate],  -gm);
+	    
+	    sim.stampRightSide(nodes[drain],  rs);
+	    sim.stampRightSide(nodes[source], -rs);
+	}
+	
+	double getVoltageDiff() { return volts[2] - volts[1]; }
+	boolean getConnection(int n1, int n2) {
+	    return !(n1 == 0 || n2 == 0);
+	}
+	double getCurrentIntoNode(int n) {
+	    if (n == 0)
+		return 0;
+	    if (n == 3)
+		return -diodeCurrent1 - diodeCurrent2;
+	    if (n == 1)
+		return ids + diodeCurrent1;
+	    return -ids + diodeCurrent2;
+	}
+}
@@ -22,7 +22,6 @@ package com.lushprojects.circuitjs1.client;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class MosfetElm extends CircuitElm {
-	int pnp;
 	int FLAG_PNP = 1;
 	int FLAG_SHOWVT = 2;
 	int FLAG_DIGITAL = 4;
@@ -31,78 +30,59 @@ class MosfetElm extends CircuitElm {
 	int FLAG_BODY_DIODE = 32;
 	int FLAG_BODY_TERMINAL = 64;
 	int FLAGS_GLOBAL = (FLAG_HIDE_BULK|FLAG_DIGITAL);
-	int bodyTerminal;
+	MosfetDevice fet;
 	
-	double vt;
-	// beta = 1/(RdsON*(Vgs-Vt))
-	double beta;
 	static int globalFlags;
-	Diode diodeB1, diodeB2;
-	double diodeCurrent1, diodeCurrent2, bodyCurrent;
 	double curcount_body1, curcount_body2;
 	static double lastBeta;
 	
 	MosfetElm(int xx, int yy, boolean pnpflag) {
 	    super(xx, yy);
-	    pnp = (pnpflag) ? -1 : 1;
+	    setDevice(fet = createDevice());
+	    fet.pnp = (pnpflag) ? -1 : 1;
 	    flags = (pnpflag) ? FLAG_PNP : 0;
 	    flags |= FLAG_BODY_DIODE;
+	    fet.flags = flags;
 	    noDiagonal = true;
 	    setupDiodes();
-	    beta = getDefaultBeta();
-	    vt = getDefaultThreshold();
+	    fet.beta = getDefaultBeta();
+	    fet.vt = getDefaultThreshold();
 	}
 	
 	public MosfetElm(int xa, int ya, int xb, int yb, int f,
 			 StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    pnp = ((f & FLAG_PNP) != 0) ? -1 : 1;
+	    setDevice(fet = createDevice());
+	    fet.undump(st, f);
 	    noDiagonal = true;
 	    setupDiodes();
-	    vt = getDefaultThreshold();
-	    beta = getBackwardCompatibilityBeta();
-	    try {
-		vt = new Double(st.nextToken()).doubleValue();
-		beta = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {}
-	    globalFlags = flags & (FLAGS_GLOBAL);
+	    globalFlags= flags & (FLAGS_GLOBAL);
 	    allocNodes(); // make sure volts[] has the right number of elements when hasBodyTerminal() is true 
 	}
 
+	MosfetDevice createDevice() { return new MosfetDevice(sim); }
+
 	// set up body diodes
 	void setupDiodes() {
-	    // diode from node 1 to body terminal 
-	    diodeB1 = new Diode(sim);
-	    diodeB1.setupForDefaultModel();
-	    // diode from node 2 to body terminal
-	    diodeB2 = new Diode(sim);
-	    diodeB2.setupForDefaultModel();
+	    DiodeModel.getDefaultModel().setupDiode(fet.diodeB1);
+	    DiodeModel.getDefaultModel().setupDiode(fet.diodeB2);
 	}
 	
-	double getDefaultThreshold() { return 1.5; }
+	double getDefaultThreshold() { return fet.getDefaultThreshold(); }
 	
 	// default beta for new elements
-	double getDefaultBeta() { return lastBeta == 0 ? getBackwardCompatibilityBeta() : lastBeta; }
-	
-	// default for elements in old files with no configurable beta.  JfetElm overrides this.
-	// Not sure where this value came from, but the ZVP3306A has a beta of about .027.  Power MOSFETs have much higher betas (like 80 or more)
-	double getBackwardCompatibilityBeta() { return .02; }
+	double getDefaultBeta() { return lastBeta == 0 ? fet.getBackwardCompatibilityBeta() : lastBeta; }
 	
-	boolean nonLinear() { return true; }
 	boolean drawDigital() { return (flags & FLAG_DIGITAL) != 0; }
-	boolean showBulk() { return (flags & (FLAG_DIGITAL|FLAG_HIDE_BULK)) == 0; }
-	boolean hasBodyTerminal() { return (flags & FLAG_BODY_TERMINAL) != 0 && doBodyDiode(); }
-	boolean doBodyDiode() { return (flags & FLAG_BODY_DIODE) != 0 && showBulk(); }
+	boolean showBulk() { return fet.showBulk(); }
+	boolean hasBodyTerminal() { return fet.hasBodyTerminal(); }
+	boolean doBodyDiode() { return fet.doBodyDiode(); }
 	void reset() {
-	    lastv1 = lastv2 = volts[0] = volts[1] = volts[2] = curcount = 0;
+	    super.reset();
 	    curcount_body1 = curcount_body2 = 0;
-	    diodeB1.reset();
-	    diodeB2.reset();
-	    if (doBodyDiode())
-		volts[bodyTerminal] = 0;
 	}
 	String dump() {
-	    return super.dump() + " " + vt + " " + beta;
+	    return super.dump() + " " + fet.vt + " " + fet.beta;
 	}
 	int getDumpType() { return 'f'; }
 	final int hs = 16;
@@ -126,7 +106,7 @@ class MosfetElm extends CircuitElm {
 		setPowerColor(g, true);
 		boolean power = sim.powerCheckItem.getState();
 		double segf = 1./segments;
-		boolean enhancement = vt > 0 && showBulk();
+		boolean enhancement = fet.vt > 0 && showBulk();
 		for (i = 0; i != segments; i++) {
 		    if ((i == 1 || i == 4) && enhancement) continue;
 		    double v = volts[1]+(volts[2]-volts[1])*i/segments;
@@ -147,15 +127,15 @@ class MosfetElm extends CircuitElm {
 		
 		// draw bulk connection
 		if (showBulk()) {
-		    setVoltageColor(g, volts[bodyTerminal]);
+		    setVoltageColor(g, volts[fet.bodyTerminal]);
 		    if (!hasBodyTerminal())
-			drawThickLine(g, pnp == -1 ? drn[0] : src[0], body[0]);
+			drawThickLine(g, fet.pnp == -1 ? drn[0] : src[0], body[0]);
 		    drawThickLine(g, body[0], body[1]);
 		}
 		
 		// draw arrow
 		if (!drawDigital()) {
-		    setVoltageColor(g, volts[bodyTerminal]);
+		    setVoltageColor(g, volts[fet.bodyTerminal]);
 		    g.fillPolygon(arrowPoly);
 		}
 		if (power)
@@ -165,23 +145,23 @@ class MosfetElm extends CircuitElm {
 		setVoltageColor(g, volts[0]);
 		drawThickLine(g, point1, gate[1]);
 		drawThickLine(g, gate[0], gate[2]);
-		if (drawDigital() && pnp == -1)
+		if (drawDigital() && fet.pnp == -1)
 			drawThickCircle(g, pcircle.x, pcircle.y, pcircler);
 		
 		if ((flags & FLAG_SHOWVT) != 0) {
-			String s = "" + (vt*pnp);
+			String s = "" + (fet.vt*fet.pnp);
 			g.setColor(whiteColor);
 			g.setFont(unitsFont);
 			drawCenteredText(g, s, x2+2, y2, false);
 		}
-		curcount = updateDotCount(-ids, curcount);
+		curcount = updateDotCount(-fet.ids, curcount);
 		drawDots(g, src[0], src[1], curcount);
 		drawDots(g, src[1], drn[1], curcount);
 		drawDots(g, drn[1], drn[0], curcount);
 		
 		if (showBulk()) {
-		    curcount_body1 = updateDotCount(diodeCurrent1, curcount_body1);
-		    curcount_body2 = updateDotCount(diodeCurrent2, curcount_body2);
+		    curcount_body1 = updateDotCount(fet.diodeCurrent1, curcount_body1);
+		    curcount_body2 = updateDotCount(fet.diodeCurrent2, curcount_body2);
 		    drawDots(g, src [0], body[0], -curcount_body1);
 		    drawDots(g, body[0], drn [0],  curcount_body2);
 		}
@@ -197,10 +177,10 @@ class MosfetElm extends CircuitElm {
 		    int dsyn = dy == 0 ? 0 : 1;
 
 		    g.drawString("G", gate[1].x - (dx < 0 ? -2 : 12), gate[1].y + ((dy > 0) ? -5 : 12));
-		    g.drawString(pnp == -1 ? "D" : "S", src[0].x-3+9*(dsx-dsyn*pnp), src[0].y+4);
-		    g.drawString(pnp == -1 ? "S" : "D", drn[0].x-3+9*(dsx-dsyn*pnp), drn[0].y+4);
+		    g.drawString(fet.pnp == -1 ? "D" : "S", src[0].x-3+9*(dsx-dsyn*fet.pnp), src[0].y+4);
+		    g.drawString(fet.pnp == -1 ? "S" : "D", drn[0].x-3+9*(dsx-dsyn*fet.pnp), drn[0].y+4);
 		    if (hasBodyTerminal())
-			g.drawString("B",  body[0].x-3+9*(dsx-dsyn*pnp),  body[0].y+4);
+			g.drawString("B",  body[0].x-3+9*(dsx-dsyn*fet.pnp),  body[0].y+4);
 		}	    
 		
 		drawPosts(g);
@@ -213,11 +193,10 @@ class MosfetElm extends CircuitElm {
 		(n == 2) ? drn[0] : body[0];
 	}
 	
-	double getCurrent() { return ids; }
 	double getPower() {
-	    return ids*(volts[2]-volts[1]) - diodeCurrent1*(volts[1]-volts[bodyTerminal]) - diodeCurrent2*(volts[2]-volts[bodyTerminal]);
+	    int bt = fet.bodyTerminal;
+	    return fet.ids*(volts[2]-volts[1]) - fet.diodeCurrent1*(volts[1]-volts[bt]) - fet.diodeCurrent2*(volts[2]-volts[bt]);
 	    }
-	int getPostCount() { return hasBodyTerminal() ? 4 : 3; }
 
 	int pcircler;
 	
@@ -234,6 +213,7 @@ class MosfetElm extends CircuitElm {
 	    // these two flags apply to all mosfets
 	    flags &= ~FLAGS_GLOBAL;
 	    flags |= globalFlags;
+	    fet.flags = flags;
 	    
 	    // find the coordinates of the various points we need to draw
 	    // the MOSFET.
@@ -257,7 +237,7 @@ class MosfetElm extends CircuitElm {
 	    }
 	    
 	    if (!drawDigital()) {
-		if (pnp == 1) {
+		if (fet.pnp == 1) {
 		    if (!showBulk())
 			arrowPoly = calcArrow(src[1], src[0], 10, 4);
 		    else
@@ -268,7 +248,7 @@ class MosfetElm extends CircuitElm {
 		    else
 			arrowPoly = calcArrow(body[1], body[0], 12, 5);
 		}
-	    } else if (pnp == -1) {
+	    } else if (fet.pnp == -1) {
 		interpPoint(point1, point2, gate[1], 1-36/dn);
 		int dist = (dsign < 0) ? 32 : 31;
 		pcircle = interpPoint(point1, point2, 1-dist/dn);
@@ -276,195 +256,32 @@ class MosfetElm extends CircuitElm {
 	    }
 	}
 
-	double lastv1, lastv2;
-	double ids;
-	int mode = 0;
-	double gm = 0;
-	
-	void stamp() {
-	    sim.stampNonLinear(nodes[1]);
-	    sim.stampNonLinear(nodes[2]);
-	    
-	    if (hasBodyTerminal())
-		bodyTerminal = 3;
-	    else
-		bodyTerminal = (pnp == -1) ? 2 : 1;
-
-	    if (doBodyDiode()) {
-		if (pnp == -1) {
-		    // pnp: diodes conduct when S or D are higher than body
-		    diodeB1.stamp(nodes[1], nodes[bodyTerminal]);
-		    diodeB2.stamp(nodes[2], nodes[bodyTerminal]);
-		} else {
-		    // npn: diodes conduct when body is higher than S or D
-		    diodeB1.stamp(nodes[bodyTerminal], nodes[1]);
-		    diodeB2.stamp(nodes[bodyTerminal], nodes[2]);
-		}
-	    }
-	}
-	
-	boolean nonConvergence(double last, double now) {
-	    double diff = Math.abs(last-now);
-	    
-	    // high beta MOSFETs are more sensitive to small differences, so we are more strict about convergence testing
-	    if (beta > 1)
-		diff *= 100;
-	    
-	    // difference of less than 10mV is fine
-	    if (diff < .01)
-		return false;
-	    // larger differences are fine if value is large
-	    if (sim.subIterations > 10 && diff < Math.abs(now)*.001)
-		return false;
-	    // if we're having trouble converging, get more lenient
-	    if (sim.subIterations > 100 && diff < .01+(sim.subIterations-100)*.0001)
-		return false;
-	    return true;
-	}
-	
-	void stepFinished() {
-	    calculate(true);
-	    
-	    // fix current if body is connected to source or drain
-	    if (bodyTerminal == 1)
-		diodeCurrent1 = -diodeCurrent2;
-	    if (bodyTerminal == 2)
-		diodeCurrent2 = -diodeCurrent1;
-	}
-
-	void doStep() {
-	    calculate(false);
-	}
-	
-	double lastv0;
-	
-	// this is called in doStep to stamp the matrix, and also called in stepFinished() to calculate the current
-	void calculate(boolean finished) {
-	    double vs[];
-	    if (finished)
-		vs = volts;
-	    else {
-		// limit voltage changes to .5V
-		vs = new double[3];
-		vs[0] = volts[0];
-		vs[1] = volts[1];
-		vs[2] = volts[2];
-		if (vs[1] > lastv1 + .5)
-		    vs[1] = lastv1 + .5;
-		if (vs[1] < lastv1 - .5)
-		    vs[1] = lastv1 - .5;
-		if (vs[2] > lastv2 + .5)
-		    vs[2] = lastv2 + .5;
-		if (vs[2] < lastv2 - .5)
-		    vs[2] = lastv2 - .5;
-	    }
-	    
-	    int source = 1;
-	    int drain = 2;
-	    
-	    // if source voltage > drain (for NPN), swap source and drain
-	    // (opposite for PNP)
-	    if (pnp*vs[1] > pnp*vs[2]) {
-	    	source = 2;
-	    	drain = 1;
-	    }
-	    int gate = 0;
-	    double vgs = vs[gate ]-vs[source];
-	    double vds = vs[drain]-vs[source];
-	    if (!finished && (nonConvergence(lastv1, vs[1]) || nonConvergence(lastv2, vs[2]) || nonConvergence(lastv0, vs[0])))
-		sim.converged = false;
-	    lastv0 = vs[0];
-	    lastv1 = vs[1];
-	    lastv2 = vs[2];
-	    double realvgs = vgs;
-	    double realvds = vds;
-	    vgs *= pnp;
-	    vds *= pnp;
-	    ids = 0;
-	    gm = 0;
-	    double Gds = 0;
-	    if (vgs < vt) {
-		// should be all zero, but that causes a singular matrix,
-		// so instead we treat it as a large resistor
-		Gds = 1e-8;
-		ids = vds*Gds;
-		mode = 0;
-	    } else if (vds < vgs-vt) {
-		// linear
-		ids = beta*((vgs-vt)*vds - vds*vds*.5);
-		gm  = beta*vds;
-		Gds = beta*(vgs-vds-vt);
-		mode = 1;
-	    } else {
-		// saturation; Gds = 0
-		gm  = beta*(vgs-vt);
-		// use very small Gds to avoid nonconvergence
-		Gds = 1e-8;
-		ids = .5*beta*(vgs-vt)*(vgs-vt) + (vds-(vgs-vt))*Gds;
-		mode = 2;
-	    }
-	    
-	    if (doBodyDiode()) {
-		diodeB1.doStep(pnp*(volts[bodyTerminal]-volts[1]));
-		diodeCurrent1 = diodeB1.calculateCurrent(pnp*(volts[bodyTerminal]-volts[1]))*pnp;
-		diodeB2.doStep(pnp*(volts[bodyTerminal]-volts[2]));
-		diodeCurrent2 = diodeB2.calculateCurrent(pnp*(volts[bodyTerminal]-volts[2]))*pnp;
-	    } else
-		diodeCurrent1 = diodeCurrent2 = 0;
-
-	    double ids0 = ids;
-	    
-	    // flip ids if we swapped source and drain above
-	    if (source == 2 && pnp == 1 ||
-		source == 1 && pnp == -1)
-		ids = -ids;
-
-	    if (finished)
-		return;
-	    
-	    double rs = -pnp*ids0 + Gds*realvds + gm*realvgs;
-	    sim.stampMatrix(nodes[drain],  nodes[drain],  Gds);
-	    sim.stampMatrix(nodes[drain],  nodes[source], -Gds-gm); 
-	    sim.stampMatrix(nodes[drain],  nodes[gate],   gm);
-	    
-	    sim.stampMatrix(nodes[source], nodes[drain],  -Gds);
-	    sim.stampMatrix(nodes[source], nodes[source], Gds+gm); 
-	    sim.stampMatrix(nodes[source], nodes[gate],  -gm);
-	    
-	    sim.stampRightSide(nodes[drain],  rs);
-	    sim.stampRightSide(nodes[source], -rs);
-	}
-	
 	void getFetInfo(String arr[], String n) {
-	    arr[0] = Locale.LS(((pnp == -1) ? "p-" : "n-") + n);
-	    arr[0] += " (Vt=" + getVoltageText(pnp*vt);
-	    arr[0] += ", \u03b2=" + beta + ")";
-	    arr[1] = ((pnp == 1) ? "Ids = " : "Isd = ") + getCurrentText(ids);
-	    arr[2] = "Vgs = " + getVoltageText(volts[0]-volts[pnp == -1 ? 2 : 1]);
-	    arr[3] = ((pnp == 1) ? "Vds = " : "Vsd = ") + getVoltageText(volts[2]-volts[1]);
-	    arr[4] = Locale.LS((mode == 0) ? "off" :
-		(mode == 1) ? "linear" : "saturation");
-	    arr[5] = "gm = " + getUnitText(gm, "A/V");
+	    arr[0] = Locale.LS(((fet.pnp == -1) ? "p-" : "n-") + n);
+	    arr[0] += " (Vt=" + getVoltageText(fet.pnp*fet.vt);
+	    arr[0] += ", \u03b2=" + fet.beta + ")";
+	    arr[1] = ((fet.pnp == 1) ? "Ids = " : "Isd = ") + getCurrentText(fet.ids);
+	    arr[2] = "Vgs = " + getVoltageText(volts[0]-volts[fet.pnp == -1 ? 2 : 1]);
+	    arr[3] = ((fet.pnp == 1) ? "Vds = " : "Vsd = ") + getVoltageText(volts[2]-volts[1]);
+	    arr[4] = Locale.LS((fet.mode == 0) ? "off" :
+		(fet.mode == 1) ? "linear" : "saturation");
+	    arr[5] = "gm = " + getUnitText(fet.gm, "A/V");
 	    arr[6] = "P = " + getUnitText(getPower(), "W");
 	    if (showBulk())
-		arr[7] = "Ib = " + getUnitText(bodyTerminal == 1 ? -diodeCurrent1 : bodyTerminal == 2 ? diodeCurrent2 : -pnp*(diodeCurrent1+diodeCurrent2), "A");
+		arr[7] = "Ib = " + getUnitText(fet.bodyTerminal == 1 ? -fet.diodeCurrent1 : fet.bodyTerminal == 2 ? fet.diodeCurrent2 : -fet.pnp*(fet.diodeCurrent1+fet.diodeCurrent2), "A");
 	}
 	void getInfo(String arr[]) {
 	    getFetInfo(arr, "MOSFET");
 	}
 	@Override String getScopeText(int v) { 
-	    return Locale.LS(((pnp == -1) ? "p-" : "n-") + "MOSFET");
+	    return Locale.LS(((fet.pnp == -1) ? "p-" : "n-") + "MOSFET");
 	}
 	boolean canViewInScope() { return true; }
-	double getVoltageDiff() { return volts[2] - volts[1]; }
-	boolean getConnection(int n1, int n2) {
-	    return !(n1 == 0 || n2 == 0);
-	}
 	public EditInfo getEditInfo(int n) {
 		if (n == 0)
-			return new EditInfo("Threshold Voltage", pnp*vt, .01, 5);
+			return new EditInfo("Threshold Voltage", fet.pnp*fet.vt, .01, 5);
 		if (n == 1)
-			return new EditInfo(EditInfo.makeLink("mosfet-beta.html", "Beta"), beta, .01, 5);
+			return new EditInfo(EditInfo.makeLink("mosfet-beta.html", "Beta"), fet.beta, .01, 5);
 		if (n == 2) {
 			EditInfo ei = new EditInfo("", 0, -1, -1);
 			ei.checkbox = new Checkbox("Show Bulk", showBulk());
@@ -495,9 +312,9 @@ class MosfetElm extends CircuitElm {
 	}
 	public void setEditValue(int n, EditInfo ei) {
 		if (n == 0)
-			vt = pnp*ei.value;
+			fet.vt = fet.pnp*ei.value;
 		if (n == 1 && ei.value > 0)
-			beta = lastBeta = ei.value;	
+			fet.beta = lastBeta = ei.value;	
 		if (n == 2) {
 		    globalFlags = (!ei.checkbox.getState()) ? (globalFlags|FLAG_HIDE_BULK) :
 				(globalFlags & ~(FLAG_HIDE_BULK|FLAG_DIGITAL));
@@ -523,16 +340,9 @@ class MosfetElm extends CircuitElm {
 		}
 
 		// lots of different cases where the body terminal might have gotten removed/added so just do this all the time
+		fet.flags = flags;
 		allocNodes();
 		setPoints();
-	}
-	double getCurrentIntoNode(int n) {
-	    if (n == 0)
-		return 0;
-	    if (n == 3)
-		return -diodeCurrent1 - diodeCurrent2;
-	    if (n == 1)
-		return ids + diodeCurrent1;
-	    return -ids + diodeCurrent2;
+		fet.bypassValid = false;
 	}
     }
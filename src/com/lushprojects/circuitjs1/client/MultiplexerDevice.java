@@ -0,0 +1,95 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of MultiplexerElm
+class MultiplexerDevice extends ChipDevice {
+    static final int FLAG_INVERTED_OUTPUT = 1<<1;
+    static final int FLAG_STROBE = 1<<2;
+    int selectBitCount;
+    boolean invertedOutput, hasStrobe;
+    int outputCount;
+    int strobe;
+    int outputPin;
+
+    MultiplexerDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	invertedOutput = (f & FLAG_INVERTED_OUTPUT) != 0;
+	hasStrobe = (f & FLAG_STROBE) != 0;
+	super.undump(st, f);
+	selectBitCount = 2;
+	try {
+	    selectBitCount = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {}
+	setupPins();
+    }
+
+    void setupPins() {
+	sizeX = selectBitCount+1;
+	outputCount = 1;
+	int i;
+	for (i = 0; i != selectBitCount; i++)
+	    outputCount <<= 1;
+	sizeY = outputCount+1;
+
+	allocPins(outputCount + selectBitCount + 1 + (invertedOutput ? 1 : 0) + (hasStrobe ? 1 : 0));
+
+	for (i = 0; i != outputCount; i++)
+	    pins[i] = new ChipPin(i, SIDE_W, "I" + i);
+
+	int n = outputCount;
+	for (i = 0; i != selectBitCount; i++, n++)
+	    pins[n] = new ChipPin(i+1, SIDE_S, "S" + i);
+
+	pins[n] = new ChipPin(0, SIDE_E, "Q");
+	pins[n].output=true;
+	outputPin = n;
+	if (invertedOutput) {
+	    n++;
+	    pins[n] = new ChipPin(1, SIDE_E, "Q");
+	    pins[n].lineOver = true;
+	    pins[n].output=true;
+	    pins[n].bubble = true;
+	}
+	if (hasStrobe) {
+	    n++;
+	    pins[n] = new ChipPin(0, SIDE_S, "STR");
+	    strobe = n;
+	} else
+	    strobe = -1;
+    }
+
+    void execute() {
+	int selectedValue=0;
+	int i;
+	for (i = 0; i != selectBitCount; i++)
+	    if (pins[outputCount+i].value)
+		selectedValue |= 1<<i;
+	boolean val = pins[selectedValue].value;
+	if (strobe != -1 && pins[strobe].value)
+	    val = false;
+	pins[outputPin].value = val;
+	if (invertedOutput)
+	    pins[outputPin+1].value = !val;
+    }
+}
@@ -0,0 +1,576 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Multirate integration.  We split the circuit into partitions that don't share any matrix
+// entries: separate circuits on the same page, or parts that are only connected through
+// elements like transmission lines, which couple the two sides with values from earlier
+// timesteps (see SimElm.isPartitionBoundary()).  Each partition gets its own timestep,
+// chosen from the truncation error of its own elements, so a slow RC network doesn't have to
+// step at the rate of a switching regulator next to it.  All partitions are advanced to the
+// end of the current maxTimeStep interval, one after the other, before we move on to the next
+// one.  That is where they synchronize: timeStepCount is incremented, and the scopes are
+// updated.  Elements on partition boundaries take part in the steps of each partition they
+// touch.
+//
+// The whole circuit is stamped into one matrix as usual, with each element stamped using the
+// timestep of its partition.  Each partition then keeps its own copy of its rows and columns
+// of that matrix, and solves it.  When a partition changes its timestep, only its own elements
+// are stamped again, and only its matrix is factored again.
+class MultirateStepper {
+    CircuitEngine sim;
+    int partitionCount;
+
+    // rows and columns of the simplified matrix that belong to each partition
+    int partRows[][], partCols[][];
+    // position of each column of the simplified matrix in its partition
+    int colLocal[];
+    // rows of the full matrix (nodes and voltage sources) whose values each partition solves for
+    int partFullRows[][];
+    // rows of the full matrix that were simplified away because they are constant
+    int constRows[];
+
+    // partition of each element in elmList, or -1 for elements on partition boundaries
+    int elmPartition[];
+    SimElm partElms[][];
+    // boundary elements touching each partition
+    SimElm partBoundaryElms[][];
+
+    boolean partNonLinear[];
+    // rows of the simplified matrix in each partition, as flags
+    boolean partRowFlags[][];
+    // stamped matrix and right side of each partition, and the matrix we factor (the same as
+    // the stamped one for linear partitions)
+    SparseMatrix partOrigMatrix[], partMatrix[];
+    double partOrigRightSide[][], partRightSide[][];
+    MatrixSolver partSolver[];
+
+    // timestep each partition was stamped with, the one it would like to use, and number of
+    // steps taken since reset
+    double partTimeStep[], partTargetTimeStep[];
+    int partStepCount[];
+
+    MultirateStepper(CircuitEngine s) {
+	sim = s;
+    }
+
+    // union-find over the rows (0..n-1) and columns (n..2n-1) of the simplified matrix
+    int parent[];
+
+    int find(int x) {
+	while (parent[x] != x) {
+	    parent[x] = parent[parent[x]];
+	    x = parent[x];
+	}
+	return x;
+    }
+
+    void union(int a, int b) {
+	a = find(a);
+	b = find(b);
+	if (a != b)
+	    parent[a] = b;
+    }
+
+    // put the row and column for full matrix row j in set a, returning the set
+    int unionFullRow(int j, int a) {
+	RowInfo ri = sim.circuitRowInfo[j];
+	int n = sim.circuitMatrixSize;
+	if (ri.mapRow >= 0) {
+	    if (a < 0)
+		a = ri.mapRow;
+	    union(ri.mapRow, a);
+	}
+	if (ri.type == RowInfo.ROW_NORMAL) {
+	    if (a < 0)
+		a = n+ri.mapCol;
+	    union(n+ri.mapCol, a);
+	}
+	return a;
+    }
+
+    // split the stamped circuit into partitions.  returns false if there is only one.
+    boolean setup() {
+	int n = sim.circuitMatrixSize;
+	SparseMatrix mat = sim.circuitMatrix;
+	int nodeCount = sim.nodeList.size()-1;
+	int i, j, k;
+	parent = new int[2*n];
+	for (i = 0; i != 2*n; i++)
+	    parent[i] = i;
+	for (i = 0; i != n; i++)
+	    for (k = 0; k != mat.rowLength[i]; k++)
+		union(i, n+mat.rowCols[i][k]);
+	for (j = 0; j != sim.circuitMatrixFullSize; j++)
+	    unionFullRow(j, -1);
+
+	// elements tie all their nodes and voltage sources together, unless they only couple
+	// them with values from earlier timesteps
+	int elmCount = sim.getElmList().size();
+	int elmSet[] = new int[elmCount];
+	for (i = 0; i != elmCount; i++) {
+	    SimElm ce = sim.getElm(i);
+	    int a = -1;
+	    if (!ce.isPartitionBoundary()) {
+		int nc = ce.getPostCount()+ce.getInternalNodeCount();
+		for (k = 0; k != nc; k++)
+		    if (ce.nodes[k] > 0)
+			a = unionFullRow(ce.nodes[k]-1, a);
+		for (k = 0; k != sim.voltageSources.length; k++)
+		    if (sim.voltageSources[k] == ce)
+			a = unionFullRow(nodeCount+k, a);
+	    }
+	    elmSet[i] = a;
+	}
+
+	// number the partitions, and make sure each one has as many rows as columns
+	int setPart[] = new int[2*n];
+	for (i = 0; i != 2*n; i++)
+	    setPart[i] = -1;
+	int rowCount[] = new int[2*n], colCount[] = new int[2*n];
+	int count = 0;
+	for (i = 0; i != 2*n; i++) {
+	    int r = find(i);
+	    if (setPart[r] < 0)
+		setPart[r] = count++;
+	    if (i < n)
+		rowCount[setPart[r]]++;
+	    else
+		colCount[setPart[r]]++;
+	}
+	if (count < 2)
+	    return false;
+	for (i = 0; i != count; i++)
+	    if (rowCount[i] != colCount[i])
+		return false;
+
+	boolean sameShape = (partitionCount == count);
+	partitionCount = count;
+	partRows = new int[count][];
+	partCols = new int[count][];
+	for (i = 0; i != count; i++) {
+	    partRows[i] = new int[rowCount[i]];
+	    partCols[i] = new int[colCount[i]];
+	    rowCount[i] = colCount[i] = 0;
+	}
+	colLocal = new int[n];
+	for (i = 0; i != n; i++) {
+	    int p = setPart[find(i)];
+	    partRows[p][rowCount[p]++] = i;
+	    p = setPart[find(n+i)];
+	    colLocal[i] = colCount[p];
+	    partCols[p][colCount[p]++] = i;
+	}
+
+	// full matrix rows
+	int fullCount[] = new int[count];
+	int constCount = 0;
+	for (j = 0; j != sim.circuitMatrixFullSize; j++) {
+	    RowInfo ri = sim.circuitRowInfo[j];
+	    if (ri.type == RowInfo.ROW_NORMAL)
+		fullCount[setPart[find(n+ri.mapCol)]]++;
+	    else if (ri.type == RowInfo.ROW_CONST)
+		constCount++;
+	}
+	partFullRows = new int[count][];
+	for (i = 0; i != count; i++) {
+	    partFullRows[i] = new int[fullCount[i]];
+	    fullCount[i] = 0;
+	}
+	constRows = new int[constCount];
+	constCount = 0;
+	for (j = 0; j != sim.circuitMatrixFullSize; j++) {
+	    RowInfo ri = sim.circuitRowInfo[j];
+	    if (ri.type == RowInfo.ROW_NORMAL) {
+		int p = setPart[find(n+ri.mapCol)];
+		partFullRows[p][fullCount[p]++] = j;
+	    } else if (ri.type == RowInfo.ROW_CONST)
+		constRows[constCount++] = j;
+	}
+
+	// elements.  ones that aren't in the matrix at all go with the first partition.
+	// boundary elements go with every partition they touch, so they start, step and finish
+	// along with each of them.
+	elmPartition = new int[elmCount];
+	int elmPartCount[] = new int[count], boundaryCount[] = new int[count];
+	boolean touches[][] = new boolean[elmCount][];
+	for (i = 0; i != elmCount; i++) {
+	    SimElm ce = sim.getElm(i);
+	    if (ce.isPartitionBoundary()) {
+		elmPartition[i] = -1;
+		touches[i] = new boolean[count];
+		int nc = ce.getPostCount()+ce.getInternalNodeCount();
+		for (k = 0; k != nc; k++)
+		    if (ce.nodes[k] > 0)
+			markFullRow(ce.nodes[k]-1, setPart, touches[i]);
+		for (k = 0; k != sim.voltageSources.length; k++)
+		    if (sim.voltageSources[k] == ce)
+			markFullRow(nodeCount+k, setPart, touches[i]);
+		int nt = 0;
+		for (k = 0; k != count; k++)
+		    if (touches[i][k])
+			nt++;
+		if (nt == 0)
+		    touches[i][0] = true;
+		for (k = 0; k != count; k++)
+		    if (touches[i][k])
+			boundaryCount[k]++;
+		continue;
+	    }
+	    elmPartition[i] = (elmSet[i] < 0) ? 0 : setPart[find(elmSet[i])];
+	    elmPartCount[elmPartition[i]]++;
+	}
+	partElms = new SimElm[count][];
+	partBoundaryElms = new SimElm[count][];
+	for (i = 0; i != count; i++) {
+	    partElms[i] = new SimElm[elmPartCount[i]];
+	    partBoundaryElms[i] = new SimElm[boundaryCount[i]];
+	    elmPartCount[i] = boundaryCount[i] = 0;
+	}
+	for (i = 0; i != elmCount; i++) {
+	    int p = elmPartition[i];
+	    if (p >= 0) {
+		partElms[p][elmPartCount[p]++] = sim.getElm(i);
+		continue;
+	    }
+	    for (p = 0; p != count; p++)
+		if (touches[i][p])
+		    partBoundaryElms[p][boundaryCount[p]++] = sim.getElm(i);
+	}
+
+	// submatrices and solvers
+	partNonLinear = new boolean[count];
+	partRowFlags = new boolean[count][];
+	partOrigMatrix = new SparseMatrix[count];
+	partMatrix = new SparseMatrix[count];
+	partOrigRightSide = new double[count][];
+	partRightSide = new double[count][];
+	partSolver = new MatrixSolver[count];
+	for (i = 0; i != count; i++) {
+	    for (k = 0; k != partElms[i].length; k++)
+		if (partElms[i][k].nonLinear())
+		    partNonLinear[i] = true;
+	    int pn = partRows[i].length;
+	    partRowFlags[i] = new boolean[n];
+	    for (k = 0; k != pn; k++)
+		partRowFlags[i][partRows[i][k]] = true;
+	    partOrigRightSide[i] = new double[pn];
+	    partRightSide[i] = new double[pn];
+	    partOrigMatrix[i] = new SparseMatrix(pn);
+	    loadStamp(i);
+	    partMatrix[i] = partNonLinear[i] ? partOrigMatrix[i].copy() : partOrigMatrix[i];
+	    if (pn < CircuitEngine.SPARSE_MATRIX_THRESHOLD)
+		partSolver[i] = new DenseMatrixSolver(pn);
+	    else {
+		SparseLU lu = new SparseLU(pn);
+		lu.analyze(partOrigMatrix[i]);
+		partSolver[i] = lu;
+	    }
+	    if (!partNonLinear[i] && !factorStamp(i))
+		return false;
+	}
+
+	// stampCircuit() cleared the node voltages, but we only solve for one partition at a time
+	if (sim.lastNodeVoltages.length == sim.nodeVoltages.length)
+	    System.arraycopy(sim.lastNodeVoltages, 0, sim.nodeVoltages, 0, sim.nodeVoltages.length);
+
+	// keep the timesteps if we are just being restamped
+	if (!sameShape || partTimeStep == null) {
+	    partTimeStep = new double[count];
+	    partTargetTimeStep = new double[count];
+	    partStepCount = new int[count];
+	    for (i = 0; i != count; i++)
+		partTimeStep[i] = partTargetTimeStep[i] = sim.timeStep;
+	}
+	return true;
+    }
+
+    // mark the partition that full matrix row j belongs to, if any
+    void markFullRow(int j, int setPart[], boolean parts[]) {
+	RowInfo ri = sim.circuitRowInfo[j];
+	if (ri.mapRow >= 0)
+	    parts[setPart[find(ri.mapRow)]] = true;
+	if (ri.type == RowInfo.ROW_NORMAL)
+	    parts[setPart[find(sim.circuitMatrixSize+ri.mapCol)]] = true;
+    }
+
+    // copy partition p's rows from the simplified matrix m into dest
+    void loadMatrix(SparseMatrix dest, int p, SparseMatrix m) {
+	int rows[] = partRows[p];
+	int i, k;
+	for (i = 0; i != rows.length; i++) {
+	    int r = rows[i];
+	    for (k = 0; k != m.rowLength[r]; k++)
+		dest.set(i, colLocal[m.rowCols[r][k]], m.rowValues[r][k]);
+	}
+    }
+
+    // copy partition p's stamped matrix and right side from the stamped circuit
+    void loadStamp(int p) {
+	int rows[] = partRows[p];
+	int i;
+	loadMatrix(partOrigMatrix[p], p, sim.origMatrix);
+	for (i = 0; i != rows.length; i++)
+	    partOrigRightSide[p][i] = sim.origRightSide[rows[i]];
+    }
+
+    // factor the stamped matrix of a linear partition
+    boolean factorStamp(int p) {
+	sim.factorCount++;
+	if (!partSolver[p].factor(partMatrix[p])) {
+	    sim.stop("Singular matrix!", null);
+	    return false;
+	}
+	return true;
+    }
+
+    // stamp partition p again after its timestep changed.  Only the elements of p (and the
+    // boundary elements touching it) are stamped, and only p's rows are updated.  Returns
+    // false if that isn't possible, in which case the caller should restamp the whole circuit.
+    boolean restampPartition(int p) {
+	if (!sim.beginRestamp())
+	    return false;
+	double ts = sim.timeStep;
+	sim.connectUnconnectedNodes();
+	int i;
+	for (i = 0; i != elmPartition.length; i++) {
+	    int ep = elmPartition[i];
+	    if (ep >= 0 ? ep != p : !touchesPartition(p, sim.getElm(i)))
+		continue;
+	    sim.timeStep = getStampTimeStep(i);
+	    sim.getElm(i).stamp();
+	}
+	sim.timeStep = ts;
+	if (!sim.finishRestamp(partRowFlags[p]))
+	    return false;
+	if (sim.stopMessage != null)
+	    return true;
+	loadStamp(p);
+	return partNonLinear[p] || factorStamp(p);
+    }
+
+    boolean touchesPartition(int p, SimElm ce) {
+	SimElm elms[] = partBoundaryElms[p];
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    if (elms[i] == ce)
+		return true;
+	return false;
+    }
+
+    // timestep to use when stamping element i of elmList
+    double getStampTimeStep(int i) {
+	if (i >= elmPartition.length || elmPartition[i] < 0)
+	    return sim.timeStep;
+	return partTimeStep[elmPartition[i]];
+    }
+
+    // set voltages and currents for partition p from the solution
+    void applySolution(int p, double x[]) {
+	int rows[] = partFullRows[p];
+	int i;
+	for (i = 0; i != rows.length; i++) {
+	    int j = rows[i];
+	    double res = x[colLocal[sim.circuitRowInfo[j].mapCol]];
+	    if (Double.isNaN(res)) {
+		sim.converged = false;
+		return;
+	    }
+	    setFullRow(j, res);
+	}
+    }
+
+    void setFullRow(int j, double res) {
+	int nodeCount = sim.nodeList.size()-1;
+	if (j < nodeCount) {
+	    sim.nodeVoltages[j] = res;
+	    sim.scatterNodeVoltage(j, res);
+	} else {
+	    int ji = j-nodeCount;
+	    sim.voltageSources[ji].setCurrent(ji, res);
+	}
+    }
+
+    // put back partition p's node voltages from the start of the step
+    void restoreNodeVoltages(int p) {
+	int rows[] = partFullRows[p];
+	int i;
+	for (i = 0; i != rows.length; i++)
+	    if (rows[i] < sim.lastNodeVoltages.length)
+		setFullRow(rows[i], sim.lastNodeVoltages[rows[i]]);
+    }
+
+    void saveNodeVoltages(int p) {
+	int rows[] = partFullRows[p];
+	int i;
+	for (i = 0; i != rows.length; i++)
+	    if (rows[i] < sim.lastNodeVoltages.length)
+		sim.lastNodeVoltages[rows[i]] = sim.nodeVoltages[rows[i]];
+    }
+
+    static final int STEP_OK = 0, STEP_RETRY = 1, STEP_STOP = 2;
+
+    // take one step of partition p, starting at time tp
+    int stepPartition(int p, double tp) {
+	SimElm elms[] = partElms[p];
+	double h = partTimeStep[p];
+	sim.t = tp;
+	sim.timeStep = h;
+	int i, subiter;
+	SimElm belms[] = partBoundaryElms[p];
+	for (i = 0; i != elms.length; i++)
+	    elms[i].startIteration();
+	for (i = 0; i != belms.length; i++)
+	    belms[i].startIteration();
+	int rows[] = partRows[p];
+	double rs[] = sim.circuitRightSide;
+	double prs[] = partRightSide[p];
+	int subiterCount = (h/2 > sim.minTimeStep) ? 100 : 5000;
+	for (subiter = 0; subiter != subiterCount; subiter++) {
+	    sim.converged = true;
+	    for (i = 0; i != rows.length; i++)
+		rs[rows[i]] = partOrigRightSide[p][i];
+	    if (sim.circuitNonLinear)
+		sim.circuitMatrix.restoreJournal(sim.origMatrix);
+	    for (i = 0; i != elms.length; i++)
+		elms[i].doStep();
+	    for (i = 0; i != belms.length; i++)
+		belms[i].doStep();
+	    if (sim.stopMessage != null)
+		return STEP_STOP;
+	    if (partNonLinear[p]) {
+		if (sim.converged && subiter > 0)
+		    break;
+		loadMatrix(partMatrix[p], p, sim.circuitMatrix);
+		sim.factorCount++;
+		if (!partSolver[p].factor(partMatrix[p])) {
+		    sim.stop("Singular matrix!", null);
+		    return STEP_STOP;
+		}
+	    }
+	    for (i = 0; i != rows.length; i++)
+		prs[i] = rs[rows[i]];
+	    partSolver[p].solve(prs);
+	    applySolution(p, prs);
+	    if (!partNonLinear[p])
+		break;
+	}
+	if (subiter == subiterCount) {
+	    if (h/2 < sim.minTimeStep) {
+		sim.log("convergence failed after " + subiter + " iterations");
+		sim.stop("Convergence failed!", null);
+		return STEP_STOP;
+	    }
+	    partTargetTimeStep[p] = h/2;
+	    sim.log("partition " + p + " timestep down to " + h/2 + " at " + tp);
+	    restoreNodeVoltages(p);
+	    return STEP_RETRY;
+	}
+	saveNodeVoltages(p);
+	return STEP_OK;
+    }
+
+    // pick the next step for partition p, landing exactly on the end of the interval and
+    // on breakpoints.  Returns true if we land on sim.nextBreakpoint.
+    double getNextTimeStep(int p, double tp, double tEnd) {
+	double ts = Math.min(partTargetTimeStep[p], tEnd-tp);
+	sim.t = tp;
+	sim.stepToBreakpoint = false;
+	if (!sim.breakpointTimeStep)
+	    return ts;
+	sim.nextBreakpoint = Double.MAX_VALUE;
+	SimElm elms[] = partElms[p];
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    elms[i].registerBreakpoints();
+	double left = sim.nextBreakpoint-tp;
+	sim.stepToBreakpoint = (left <= ts*(1+1e-6));
+	if (sim.stepToBreakpoint)
+	    ts = left;
+	return ts;
+    }
+
+    void chooseTimeStep(int p) {
+	double limit = Double.MAX_VALUE;
+	SimElm elms[] = partElms[p];
+	int i;
+	for (i = 0; i != elms.length; i++)
+	    limit = Math.min(limit, elms[i].getTimeStepLimit());
+	double ts = Math.min(partTargetTimeStep[p]*2, sim.maxTimeStep);
+	while (ts > limit && ts/2 >= sim.minTimeStep)
+	    ts /= 2;
+	partTargetTimeStep[p] = ts;
+    }
+
+    // advance all partitions to the end of the current maxTimeStep interval.  Returns false if
+    // the simulation was stopped.
+    boolean step() {
+	double tStart = sim.t;
+	double tEnd = tStart+sim.maxTimeStep;
+	int i, p;
+	for (i = 0; i != constRows.length; i++)
+	    setFullRow(constRows[i], sim.circuitRowInfo[constRows[i]].value);
+	for (p = 0; p != partitionCount; p++) {
+	    double tp = tStart;
+	    while (tEnd-tp > sim.maxTimeStep*1e-9) {
+		double h = getNextTimeStep(p, tp, tEnd);
+		boolean toBreakpoint = sim.stepToBreakpoint;
+		double bp = sim.nextBreakpoint;
+		if (h != partTimeStep[p]) {
+		    partTimeStep[p] = h;
+		    if (!restampPartition(p)) {
+			// restamp the whole circuit.  this calls setup() again.
+			sim.stampCircuit();
+			if (sim.multirateStepper != this)
+			    return false;
+		    }
+		    if (sim.stopMessage != null)
+			return false;
+		}
+		int result = stepPartition(p, tp);
+		if (result == STEP_STOP)
+		    return false;
+		if (result == STEP_RETRY)
+		    continue;
+		tp = toBreakpoint ? bp : tp+h;
+		partStepCount[p]++;
+		sim.t = tp;
+		SimElm elms[] = partElms[p];
+		for (i = 0; i != elms.length; i++)
+		    elms[i].stepFinished();
+		elms = partBoundaryElms[p];
+		for (i = 0; i != elms.length; i++)
+		    elms[i].stepFinished();
+		chooseTimeStep(p);
+	    }
+	}
+	sim.t = tEnd;
+	sim.timeStep = sim.maxTimeStep;
+	return true;
+    }
+
+    String getStepCounts() {
+	String s = "";
+	int p;
+	for (p = 0; p != partitionCount; p++)
+	    s += (p > 0 ? "/" : "") + partStepCount[p];
+	return s;
+    }
+}
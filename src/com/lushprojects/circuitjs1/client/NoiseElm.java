@@ -24,7 +24,7 @@ package com.lushprojects.circuitjs1.client;
 	public NoiseElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    waveform = WF_NOISE;
+	    source.waveform = WF_NOISE;
 	}
 	
 	// dump this class as a RailElm.  The 'n' dump type is still used in CirSim.createCe to read old files
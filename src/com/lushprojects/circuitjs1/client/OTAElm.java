@@ -35,13 +35,13 @@ public class OTAElm extends CompositeElm {
     public OTAElm(int xa, int ya, int xb, int yb, int f, StringTokenizer st) {
 	super(xa, ya, xb, yb, f, st, modelString, modelExternalNodes);
 	noDiagonal = true;
-	negVolt = ((RailElm) compElmList.get(0)).maxVoltage;
-	posVolt = ((RailElm) compElmList.get(1)).maxVoltage;
+	negVolt = ((RailElm) compElmList.get(0)).source.maxVoltage;
+	posVolt = ((RailElm) compElmList.get(1)).source.maxVoltage;
     }
 
     private void initOTA() {
-	((RailElm) compElmList.get(0)).maxVoltage = negVolt;
-	((RailElm) compElmList.get(1)).maxVoltage = posVolt;
+	((RailElm) compElmList.get(0)).source.maxVoltage = negVolt;
+	((RailElm) compElmList.get(1)).source.maxVoltage = posVolt;
     }
 
     public void reset() {
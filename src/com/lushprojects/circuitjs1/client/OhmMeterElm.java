@@ -27,15 +27,15 @@ public class OhmMeterElm extends CurrentElm {
 
 	    setBbox(point1, point2, cr);
 	    doDots(g);
-	    if (sim.showValuesCheckItem.getState() && current != 0) {
-		String s = getShortUnitText(getVoltageDiff()/current, Locale.ohmString);
+	    if (sim.showValuesCheckItem.getState() && getCurrent() != 0) {
+		String s = getShortUnitText(getVoltageDiff()/getCurrent(), Locale.ohmString);
 		if (dx == 0 || dy == 0)
 		    drawValues(g, s, cr);
 	    }
 	    drawPosts(g);
 	}
 	    double getScopeValue(int x) {
-		return (x == Scope.VAL_R) ? getVoltageDiff()/current : super.getScopeValue(x);
+		return (x == Scope.VAL_R) ? getVoltageDiff()/getCurrent() : super.getScopeValue(x);
 	    }
 	    int getScopeUnits(int x) {
 		return (x == Scope.VAL_R) ? Scope.UNITS_OHMS : super.getScopeUnits(x);
@@ -47,18 +47,18 @@ public class OhmMeterElm extends CurrentElm {
 	/*
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Current (A)", currentValue, 0, .1);
+		return new EditInfo("Current (A)", src.currentValue, 0, .1);
 	    return null;
 	}
 	public void setEditValue(int n, EditInfo ei) {
-	    currentValue = ei.value;
+	    src.currentValue = ei.value;
 	}
 	*/
 	void getInfo(String arr[]) {
 	    arr[0] = "ohmmeter";
-	    if (current == 0)
+	    if (getCurrent() == 0)
 		arr[1] = "R = \u221e";
 	    else
-		arr[1] = "R = " + getUnitText(getVoltageDiff()/current, Locale.ohmString);
+		arr[1] = "R = " + getUnitText(getVoltageDiff()/getCurrent(), Locale.ohmString);
 	}
 }
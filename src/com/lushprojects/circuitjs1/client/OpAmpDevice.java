@@ -0,0 +1,115 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// op-amp, for OpAmpElm: a voltage source at the output (post 2) driven by the difference
+// between the inputs (posts 1 and 0) times the gain, clamped to minOut..maxOut, and solved
+// by Newton-Raphson iteration
+class OpAmpDevice extends Device {
+    static final int FLAG_LOWGAIN = 4;
+    static final int FLAG_GAIN = 8;
+    double maxOut, minOut, gain;
+    double lastvd;
+    // GBW has no effect in this version of the simulator, but we
+    // retain it to keep the file format the same
+    double gbw;
+
+    OpAmpDevice(CircuitEngine s) {
+	super(s);
+	maxOut = 15;
+	minOut = -15;
+	gain = 100000;
+	gbw = 1e6;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	try {
+	    maxOut = new Double(st.nextToken()).doubleValue();
+	    minOut = new Double(st.nextToken()).doubleValue();
+	    gbw = new Double(st.nextToken()).doubleValue();
+	    volts[0] = new Double(st.nextToken()).doubleValue();
+	    volts[1] = new Double(st.nextToken()).doubleValue();
+	    gain = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {
+	}
+	// files from before the gain was saved
+	if ((f & FLAG_GAIN) == 0)
+	    setDefaultGain(f);
+    }
+
+    // gain of 100000 breaks e-amp-dfdx.txt
+    // gain was 1000, but it broke amp-schmitt.txt
+    void setDefaultGain(int f) {
+	gain = ((f & FLAG_LOWGAIN) != 0) ? 1000 : 100000;
+    }
+
+    int getPostCount() { return 3; }
+    int getVoltageSourceCount() { return 1; }
+    boolean nonLinear() { return true; }
+
+    void stamp() {
+	int vn = sim.nodeCount+voltSource;
+	sim.stampNonLinear(vn);
+	sim.stampMatrix(nodes[2], vn, 1);
+    }
+    void doStep() {
+	double vd = volts[1] - volts[0];
+	double midpoint = (maxOut+minOut)*.5;
+	if (Math.abs(lastvd-vd) > .1)
+	    sim.converged = false;
+	else if (volts[2] > maxOut+.1 || volts[2] < minOut-.1)
+	    sim.converged = false;
+	double x = 0;
+	int vn = sim.nodeCount+voltSource;
+	double dx = 0;
+	double maxAdj = maxOut-midpoint;
+	double minAdj = minOut-midpoint;
+	if (vd >= maxAdj/gain && (lastvd >= 0 || sim.getrand(4) == 1)) {
+	    dx = 1e-4;
+	    x = maxOut - dx*maxAdj/gain;
+	} else if (vd <= minAdj/gain && (lastvd <= 0 || sim.getrand(4) == 1)) {
+	    dx = 1e-4;
+	    x = minOut - dx*minAdj/gain;
+	} else {
+	    dx = gain;
+	    x = midpoint;
+	}
+
+	// newton-raphson
+	sim.stampMatrix(vn, nodes[0], dx);
+	sim.stampMatrix(vn, nodes[1], -dx);
+	sim.stampMatrix(vn, nodes[2], 1);
+	sim.stampRightSide(vn, x);
+
+	lastvd = vd;
+    }
+    // there is no current path through the op-amp inputs, but there
+    // is an indirect path through the output to ground.
+    boolean getConnection(int n1, int n2) { return false; }
+    boolean hasGroundConnection(int n1) {
+	return (n1 == 2);
+    }
+    double getVoltageDiff() { return volts[2] - volts[1]; }
+    double getCurrentIntoNode(int n) {
+	if (n==2)
+	    return -current;
+	return 0;
+    }
+}
@@ -21,56 +21,30 @@ package com.lushprojects.circuitjs1.client;
 
     class OpAmpElm extends CircuitElm {
 	int opsize, opheight, opwidth, opaddtext;
-	double maxOut, minOut, gain, gbw;
-	boolean reset;
+	OpAmpDevice opamp;
 	final int FLAG_SWAP = 1;
 	final int FLAG_SMALL = 2;
-	final int FLAG_LOWGAIN = 4;
-	final int FLAG_GAIN = 8;
+	final int FLAG_LOWGAIN = OpAmpDevice.FLAG_LOWGAIN;
+	final int FLAG_GAIN = OpAmpDevice.FLAG_GAIN;
 	public OpAmpElm(int xx, int yy) {
 	    super(xx, yy);
 	    noDiagonal = true;
-	    maxOut = 15;
-	    minOut = -15;
-	    gbw = 1e6;
+	    setDevice(opamp = new OpAmpDevice(sim));
            flags = FLAG_GAIN; // need to do this before setSize()
-	    gain = 100000;
            setSize(sim.smallGridCheckItem.getState() ? 1 : 2);
 	}
 	public OpAmpElm(int xa, int ya, int xb, int yb, int f,
 			StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    maxOut = 15;
-	    minOut = -15;
-	    // GBW has no effect in this version of the simulator, but we
-	    // retain it to keep the file format the same
-	    gbw = 1e6;
-	    try {
-		maxOut = new Double(st.nextToken()).doubleValue();
-		minOut = new Double(st.nextToken()).doubleValue();
-		gbw = new Double(st.nextToken()).doubleValue();
-		volts[0] = new Double(st.nextToken()).doubleValue();
-		volts[1] = new Double(st.nextToken()).doubleValue();
-		gain = new Double(st.nextToken()).doubleValue();
-	    } catch (Exception e) {
-	    }
+	    setDevice(opamp = new OpAmpDevice(sim));
+	    opamp.undump(st, f);
 	    noDiagonal = true;
 	    setSize((f & FLAG_SMALL) != 0 ? 1 : 2);
-	    setGain();
-	}
-	void setGain() {
-	    if ((flags & FLAG_GAIN) != 0)
-		return;
-		
-	    // gain of 100000 breaks e-amp-dfdx.txt
-	    // gain was 1000, but it broke amp-schmitt.txt
-	    gain = ((flags & FLAG_LOWGAIN) != 0) ? 1000 : 100000;
 	}
 	String dump() {
 	    flags |= FLAG_GAIN;
-	    return super.dump() + " " + maxOut + " " + minOut + " " + gbw + " " + volts[0] + " " + volts[1] + " " + gain;
+	    return super.dump() + " " + opamp.maxOut + " " + opamp.minOut + " " + opamp.gbw + " " + volts[0] + " " + volts[1] + " " + opamp.gain;
 	}
-	boolean nonLinear() { return true; }
 	void draw(Graphics g) {
 	    setBbox(point1, point2, opheight*2);
 	    setVoltageColor(g, volts[0]);
@@ -121,95 +95,40 @@ package com.lushprojects.circuitjs1.client;
 	    triangle = createPolygon(tris[0], tris[1], lead2);
 	    plusFont = new Font("SansSerif", 0, opsize == 2 ? 14 : 10);
 	}
-	int getPostCount() { return 3; }
 	Point getPost(int n) {
 	    return (n == 0) ? in1p[0] : (n == 1) ? in2p[0] : point2;
 	}
-	int getVoltageSourceCount() { return 1; }
 	void getInfo(String arr[]) {
 	    arr[0] = "op-amp";
 	    arr[1] = "V+ = " + getVoltageText(volts[1]);
 	    arr[2] = "V- = " + getVoltageText(volts[0]);
 	    // sometimes the voltage goes slightly outside range, to make
 	    // convergence easier.  so we hide that here.
-	    double vo = Math.max(Math.min(volts[2], maxOut), minOut);
+	    double vo = Math.max(Math.min(volts[2], opamp.maxOut), opamp.minOut);
 	    arr[3] = "Vout = " + getVoltageText(vo);
 	    arr[4] = "Iout = " + getCurrentText(-current);
-	    arr[5] = "range = " + getVoltageText(minOut) + " to " +
-		getVoltageText(maxOut);
+	    arr[5] = "range = " + getVoltageText(opamp.minOut) + " to " +
+		getVoltageText(opamp.maxOut);
 	}
 
-	double lastvd;
-
-	void stamp() {
-	    int vn = sim.nodeList.size()+voltSource;
-	    sim.stampNonLinear(vn);
-	    sim.stampMatrix(nodes[2], vn, 1);
-	}
-	void doStep() {
-	    double vd = volts[1] - volts[0];
-	    double midpoint = (maxOut+minOut)*.5;
-	    if (Math.abs(lastvd-vd) > .1)
-		sim.converged = false;
-	    else if (volts[2] > maxOut+.1 || volts[2] < minOut-.1)
-		sim.converged = false;
-	    double x = 0;
-	    int vn = sim.nodeList.size()+voltSource;
-	    double dx = 0;
-	    double maxAdj = maxOut-midpoint;
-	    double minAdj = minOut-midpoint;
-	    if (vd >= maxAdj/gain && (lastvd >= 0 || sim.getrand(4) == 1)) {
-		dx = 1e-4;
-		x = maxOut - dx*maxAdj/gain;
-	    } else if (vd <= minAdj/gain && (lastvd <= 0 || sim.getrand(4) == 1)) {
-		dx = 1e-4;
-		x = minOut - dx*minAdj/gain;
-	    } else {
-		dx = gain;
-		x = midpoint;
-	    }
-	    //System.out.println("opamp " + vd + " " + volts[2] + " " + dx + " "  + x + " " + lastvd + " " + sim.converged);
-	    
-	    // newton-raphson
-	    sim.stampMatrix(vn, nodes[0], dx);
-	    sim.stampMatrix(vn, nodes[1], -dx);
-	    sim.stampMatrix(vn, nodes[2], 1);
-	    sim.stampRightSide(vn, x);
-	    
-	    lastvd = vd;
-	    /*if (sim.converged)
-	      System.out.println((volts[1]-volts[0]) + " " + volts[2] + " " + initvd);*/
-	}
-	// there is no current path through the op-amp inputs, but there
-	// is an indirect path through the output to ground.
-	boolean getConnection(int n1, int n2) { return false; }
-	boolean hasGroundConnection(int n1) {
-	    return (n1 == 2);
-	}
 	double getVoltageDiff() { return volts[2] - volts[1]; }
 	int getDumpType() { return 'a'; }
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Max Output (V)", maxOut, 1, 20);
+		return new EditInfo("Max Output (V)", opamp.maxOut, 1, 20);
 	    if (n == 1)
-		return new EditInfo("Min Output (V)", minOut, -20, 0);
+		return new EditInfo("Min Output (V)", opamp.minOut, -20, 0);
 	    if (n == 2)
-		return new EditInfo("Gain", gain, 10, 1000000);
+		return new EditInfo("Gain", opamp.gain, 10, 1000000);
 	    return null;
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0)
-		maxOut = ei.value;
+		opamp.maxOut = ei.value;
 	    if (n == 1)
-		minOut = ei.value;
+		opamp.minOut = ei.value;
 	    if (n == 2 && ei.value > 0)
-		gain = ei.value;
+		opamp.gain = ei.value;
 	}
 	int getShortcut() { return 'a'; }
-	
-	@Override double getCurrentIntoNode(int n) { 
-	    if (n==2)
-		return -current;
-	   return 0;
-	}
     }
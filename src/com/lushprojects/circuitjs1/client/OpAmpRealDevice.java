@@ -0,0 +1,119 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// transistor-level op-amp, for OpAmpRealElm.  The elements come from OpAmpRealModel, with the
+// compensation capacitor and output stage adjusted for the slew rate and current limit.
+class OpAmpRealDevice extends CompositeDevice {
+    static final int MODEL_741 = 0;
+    static final int MODEL_324 = 1;
+    static final int MODEL_324v2 = 2;
+    static final double defaultCurrentLimit = .0231;
+
+    int modelType;
+    double slewRate;
+    double currentLimit;
+    double capValue;
+
+    OpAmpRealDevice(CircuitEngine s) {
+	super(s);
+	slewRate = .6;
+	currentLimit = defaultCurrentLimit;
+	modelType = MODEL_741;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	slewRate = Double.parseDouble(st.nextToken());
+	capValue = Double.parseDouble(st.nextToken());
+	try {
+	    currentLimit = Double.parseDouble(st.nextToken());
+	    modelType = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {}
+	setupModel();
+    }
+
+    // load the elements for modelType, after it or the settings change
+    void setupModel() {
+	switch (modelType) {
+	case MODEL_741: init741(); break;
+	case MODEL_324: init324(); break;
+	case MODEL_324v2: init324v2(); break;
+	}
+    }
+
+    private void init741() {
+	loadComposite(null, OpAmpRealModel.model741String, OpAmpRealModel.model741ExternalNodes, true);
+	
+	// adjust capacitor value to get desired slew rate
+	getCapacitor().capacitance = 30e-12 / (slewRate/.6);
+	getCapacitor().voltdiff = capValue;
+	
+	// set resistor values
+	int i;
+	for (i = 0; i != 11; i++)
+	    getResistor(21+i).resistance = OpAmpRealModel.model741resistances[i];
+	
+	// adjust output stage resistor values and transistor betas to increase current if desired
+	double currentMult = currentLimit / defaultCurrentLimit;
+	getResistor(21).resistance /= currentMult;
+	getResistor(22).resistance /= currentMult;
+	setBeta(13, currentMult * 100); // Q14
+	setBeta(18, currentMult * 100); // Q20
+    }
+
+    private void init324() {
+	StringTokenizer st = new StringTokenizer(OpAmpRealModel.lm324ModelDump, "/");
+	loadComposite(st, OpAmpRealModel.lm324ModelString, OpAmpRealModel.lm324ExternalNodes, true);
+	
+	// adjust capacitor value to get desired slew rate
+	getCapacitor().capacitance = 10e-12 / (slewRate/.55);
+	getCapacitor().voltdiff = capValue;
+	
+	// adjust output stage resistor values and transistor betas to increase current if desired
+	double currentMult = currentLimit / defaultCurrentLimit;
+	getResistor(11).resistance /= currentMult;
+	setBeta(9, currentMult * 100);
+	setBeta(10, currentMult * 100);
+	setBeta(12, currentMult * 100);
+	setBeta(16, currentMult * 100);
+    }
+    
+    private void init324v2() {
+	StringTokenizer st = new StringTokenizer(OpAmpRealModel.lm324v2ModelDump, "/");
+	loadComposite(st, OpAmpRealModel.lm324v2ModelString, OpAmpRealModel.lm324v2ExternalNodes, true);
+    }
+
+    CapacitorDevice getCapacitor() {
+	if (modelType == MODEL_324v2)
+	    return null;
+	return (CapacitorDevice) compElmList.get(modelType == MODEL_741 ? 20 : 4).device;
+    }
+
+    ResistorDevice getResistor(int n) { return (ResistorDevice) compElmList.get(n).device; }
+
+    // same as TransistorElm.setBeta()
+    void setBeta(int n, double b) {
+	TransistorDevice trans = (TransistorDevice) compElmList.get(n).device;
+	trans.beta = b;
+	trans.setup(trans.model);
+    }
+
+    boolean getConnection(int n1, int n2) { return true; }
+}
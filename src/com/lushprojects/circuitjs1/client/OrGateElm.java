@@ -94,13 +94,7 @@ package com.lushprojects.circuitjs1.client;
 
 	String getGateText() { return "\u22651"; }
 	
-	boolean calcFunction() {
-	    int i;
-	    boolean f = false;
-	    for (i = 0; i != inputCount; i++)
-		f |= getInput(i);
-	    return f;
-	}
+	int getGateFunction() { return GateDevice.FUNC_OR; }
 	int getDumpType() { return 152; }
 	int getShortcut() { return '3'; }
     }
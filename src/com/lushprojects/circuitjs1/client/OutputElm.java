@@ -27,11 +27,13 @@ class OutputElm extends CircuitElm {
         int scale;
 	public OutputElm(int xx, int yy) {
 	    super(xx, yy);
+	    setDevice(new ProbeDevice(sim, 1));
 	    scale = SCALE_AUTO;
 	}
 	public OutputElm(int xa, int ya, int xb, int yb, int f,
 			 StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
+	    setDevice(new ProbeDevice(sim, 1));
 	    scale = SCALE_AUTO;
 	    try {
 		scale = Integer.parseInt(st.nextToken());
@@ -42,7 +44,6 @@ class OutputElm extends CircuitElm {
 	    return super.dump() + " " + scale;
 	}
 	int getDumpType() { return 'O'; }
-	int getPostCount() { return 1; }
 	void setPoints() {
 	    super.setPoints();
 	    lead1 = new Point();
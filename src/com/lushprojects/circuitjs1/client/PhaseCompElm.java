@@ -30,10 +30,10 @@ class PhaseCompElm extends ChipElm {
     void setupPins() {
 	sizeX = 2;
 	sizeY = 2;
-	pins = new Pin[3];
-	pins[0] = new Pin(0, SIDE_W, "I1");
-	pins[1] = new Pin(1, SIDE_W, "I2");
-	pins[2] = new Pin(0, SIDE_E, "O");
+	allocPins(3);
+	pins[0] = new ChipPin(0, SIDE_W, "I1");
+	pins[1] = new ChipPin(1, SIDE_W, "I2");
+	pins[2] = new ChipPin(0, SIDE_E, "O");
 	pins[2].output = true;
     }
     boolean nonLinear() { return true; }
@@ -53,7 +53,7 @@ class PhaseCompElm extends ChipElm {
 	    ff2 = true;
 	if (ff1 && ff2)
 	    ff1 = ff2 = false;
-	double out = (ff1) ? highVoltage : (ff2) ? 0 : -1;
+	double out = (ff1) ? chip.highVoltage : (ff2) ? 0 : -1;
 	//System.out.println(out + " " + v1 + " " + v2);
 	if (out != -1)
 	    sim.stampVoltageSource(0, nodes[2], pins[2].voltSource, out);
@@ -69,17 +69,17 @@ class PisoShiftElm extends ChipElm {
 	void setupPins() {
 		sizeX = bits + 2;
 		sizeY = 3;
-		pins = new Pin[getPostCount()];
+		allocPins(getPostCount());
 		
-		pins[0] = new Pin(1, SIDE_W, "LD");
-		pins[1] = new Pin(2, SIDE_W, "");
+		pins[0] = new ChipPin(1, SIDE_W, "LD");
+		pins[1] = new ChipPin(2, SIDE_W, "");
 		pins[1].clock = true;
 		
-		pins[2] = new Pin(1, SIDE_E, "Q" + (hasNewBhvr() ?  bits-1 : bits));
+		pins[2] = new ChipPin(1, SIDE_E, "Q" + (hasNewBhvr() ?  bits-1 : bits));
 		pins[2].output = true;
 		
 		if (hasNewBhvr()) {
-			pins[3] = new Pin(0, SIDE_W, "SER");
+			pins[3] = new ChipPin(0, SIDE_W, "SER");
 			if (data != null && data.length > 0)
 				pins[2].value = data[0];
 			dataPinIndex = 4;
@@ -88,7 +88,7 @@ class PisoShiftElm extends ChipElm {
 		}
 		
 		for (int i = 0; i < bits; i++)
-			pins[dataPinIndex + i] = new Pin(bits - i, SIDE_N, "D" + (bits - (i + 1)));
+			pins[dataPinIndex + i] = new ChipPin(bits - i, SIDE_N, "D" + (bits - (i + 1)));
 		
 		allocNodes();
 	}
@@ -0,0 +1,48 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// polarized capacitor, for PolarCapacitorElm.  Stops the simulation if the reverse voltage
+// gets too high.
+class PolarCapacitorDevice extends CapacitorDevice {
+    double maxNegativeVoltage;
+
+    PolarCapacitorDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	try {
+	    maxNegativeVoltage = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {
+	    // older files have no initial voltage, so what we read as one was the max
+	    // reverse voltage
+	    maxNegativeVoltage = initialVoltage;
+	    initialVoltage = 1e-3;
+	}
+    }
+
+    void stepFinished() {
+	if (getVoltageDiff() < 0 && getVoltageDiff() < -maxNegativeVoltage)
+	    sim.stopDevice("capacitor exceeded max reverse voltage", this);
+	super.stepFinished();
+    }
+}
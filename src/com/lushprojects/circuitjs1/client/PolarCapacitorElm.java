@@ -1,20 +1,23 @@
 package com.lushprojects.circuitjs1.client;
 
 public class PolarCapacitorElm extends CapacitorElm {
-    	double maxNegativeVoltage;
-    	
 	public PolarCapacitorElm(int xx, int yy) {
 	    super(xx, yy);
-	    maxNegativeVoltage = 1;
+	    getPolarCap().maxNegativeVoltage = 1;
 	}
 	public PolarCapacitorElm(int xa, int ya, int xb, int yb, int f,
 			    StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    maxNegativeVoltage = new Double(st.nextToken()).doubleValue();
 	}
+	CapacitorDevice createDevice() {
+	    CapacitorDevice d = new PolarCapacitorDevice(sim);
+	    d.trapezoidal = isTrapezoidal();
+	    return d;
+	}
+	PolarCapacitorDevice getPolarCap() { return (PolarCapacitorDevice) cap; }
 	int getDumpType() { return 209; }
 	String dump() {
-	    return super.dump() + " " + maxNegativeVoltage;
+	    return super.dump() + " " + getPolarCap().maxNegativeVoltage;
 	}
 	
 	Point plusPoint;
@@ -50,19 +53,13 @@ public class PolarCapacitorElm extends CapacitorElm {
 	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 3)
-		return new EditInfo("Max Reverse Voltage", maxNegativeVoltage, 0, 0);
+		return new EditInfo("Max Reverse Voltage", getPolarCap().maxNegativeVoltage, 0, 0);
 	    return super.getEditInfo(n);
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 3 && ei.value >= 0)
-		maxNegativeVoltage = ei.value;
+		getPolarCap().maxNegativeVoltage = ei.value;
 	    super.setEditValue(n, ei);
 	}
-	
-	void stepFinished() {
-	    if (getVoltageDiff() < 0 && getVoltageDiff() < -maxNegativeVoltage)
-		sim.stop("capacitor exceeded max reverse voltage", this);
-	    super.stepFinished();
-	}
 	int getShortcut() { return 'C'; }
 }
@@ -0,0 +1,145 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Map from post locations to nodes, used by analyzeCircuit().  Each point that has a post on it
+// gets an index, in the order the points were added.  Points connected by wires, labeled nodes or
+// ground are merged into groups using a disjoint-set forest (union-find), and each group has a node
+// number, or -1 if it hasn't been allocated yet.  We also count how many posts are at each point,
+// so we know which ones to draw.
+//
+// This replaces a HashMap<Point,...>, which needed a Point and an Integer for every lookup and
+// had to scan the whole map to merge two groups of wires.  Here the points are kept in an open
+// addressing hash table of ints, so nothing is allocated once the table is big enough.
+class PostMap {
+    // coordinates of each point
+    int xs[], ys[];
+    int count;
+
+    // union-find parent of each point, and node number of each group (stored at its root)
+    int parent[];
+    int node[];
+    int postCount[];
+
+    // hash table of point indices + 1 (0 = empty).  size is a power of 2
+    int table[];
+
+    PostMap() {
+	xs = new int[64];
+	ys = new int[64];
+	parent = new int[64];
+	node = new int[64];
+	postCount = new int[64];
+	table = new int[128];
+    }
+
+    static int hash(int x, int y) {
+	int h = x*0x9E3779B1 + y*0x85EBCA6B;
+	return h ^ (h >>> 15);
+    }
+
+    // index of point (x,y), or -1 if it's not in the map
+    int find(int x, int y) {
+	int mask = table.length-1;
+	int i = hash(x, y) & mask;
+	while (true) {
+	    int p = table[i]-1;
+	    if (p < 0)
+		return -1;
+	    if (xs[p] == x && ys[p] == y)
+		return p;
+	    i = (i+1) & mask;
+	}
+    }
+
+    int find(Point pt) { return find(pt.x, pt.y); }
+
+    // index of point (x,y), adding it as a group of its own if necessary
+    int add(int x, int y) {
+	int p = find(x, y);
+	if (p >= 0)
+	    return p;
+	if (count == xs.length)
+	    grow();
+	p = count++;
+	xs[p] = x;
+	ys[p] = y;
+	parent[p] = p;
+	node[p] = -1;
+	postCount[p] = 0;
+	insert(p);
+	return p;
+    }
+
+    int add(Point pt) { return add(pt.x, pt.y); }
+
+    void insert(int p) {
+	int mask = table.length-1;
+	int i = hash(xs[p], ys[p]) & mask;
+	while (table[i] != 0)
+	    i = (i+1) & mask;
+	table[i] = p+1;
+    }
+
+    void grow() {
+	int n = xs.length*2;
+	xs = copy(xs, n);
+	ys = copy(ys, n);
+	parent = copy(parent, n);
+	node = copy(node, n);
+	postCount = copy(postCount, n);
+	// keep the table at most half full
+	table = new int[n*2];
+	int p;
+	for (p = 0; p != count; p++)
+	    insert(p);
+    }
+
+    static int[] copy(int a[], int n) {
+	int b[] = new int[n];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+
+    // root of the group containing point p
+    int root(int p) {
+	while (parent[p] != p) {
+	    parent[p] = parent[parent[p]];
+	    p = parent[p];
+	}
+	return p;
+    }
+
+    // merge the groups containing points a and b
+    void union(int a, int b) {
+	a = root(a);
+	b = root(b);
+	if (a == b)
+	    return;
+	// keep the lower index as the root, so the result doesn't depend on the order of merges
+	if (a < b)
+	    parent[b] = a;
+	else
+	    parent[a] = b;
+    }
+
+    int getNode(int p) { return node[root(p)]; }
+    void setNode(int p, int n) { node[root(p)] = n; }
+}
@@ -59,6 +59,7 @@ class PotElm extends CircuitElm implements Command, MouseWheelHandler {
     
     int getPostCount() { return 3; }
     int getDumpType() { return 174; }
+    int getStateCount() { return 0; }
     
     Point getPost(int n) {
 	return (n == 0) ? point1 : (n == 1) ? point2 : post3;
@@ -0,0 +1,37 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// voltmeter probe or output, for ProbeElm and OutputElm.  These only measure the voltage
+// at their posts, so there's nothing to stamp and no current flows between the posts.
+class ProbeDevice extends Device {
+    int postCount;
+
+    ProbeDevice(CircuitEngine s, int pc) {
+	super(s);
+	postCount = pc;
+    }
+
+    int getPostCount() { return postCount; }
+    boolean getConnection(int n1, int n2) { return false; }
+    double getVoltageDiff() { return (postCount == 1) ? volts[0] : volts[0] - volts[1]; }
+    boolean storesNodeVoltageOnly() { return true; }
+    int getStateCount() { return 0; }
+}
@@ -41,6 +41,7 @@ class ProbeElm extends CircuitElm {
     final int TP_DUT = 9; //mark to space ratio
     
     public ProbeElm(int xx, int yy) { super(xx, yy);
+	setDevice(new ProbeDevice(sim, 2));
     	meter = TP_VOL;
     	
     	// default for new elements
@@ -50,6 +51,7 @@ class ProbeElm extends CircuitElm {
     public ProbeElm(int xa, int ya, int xb, int yb, int f,
 		    StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
+	setDevice(new ProbeDevice(sim, 2));
     	meter = TP_VOL;
     	scale = SCALE_AUTO;
 	try {
@@ -273,7 +275,6 @@ class ProbeElm extends CircuitElm {
 	arr[0] = "voltmeter";
 	arr[1] = "Vd = " + getVoltageText(getVoltageDiff());
     }
-    boolean getConnection(int n1, int n2) { return false; }
 
     public EditInfo getEditInfo(int n) {
 	if (n == 0) {
@@ -0,0 +1,32 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// voltage source from ground to a single post, for RailElm
+class RailDevice extends VoltageDevice {
+    RailDevice(CircuitEngine s) {
+	super(s);
+    }
+    int getPostCount() { return 1; }
+    double getVoltageDiff() { return volts[0]; }
+    int getNode0() { return 0; }
+    int getNode1() { return nodes[0]; }
+    boolean hasGroundConnection(int n1) { return true; }
+}
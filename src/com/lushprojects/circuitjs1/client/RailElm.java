@@ -36,7 +36,11 @@ class RailElm extends VoltageElm {
     
     final int FLAG_CLOCK = 1;
     int getDumpType() { return 'R'; }
-    int getPostCount() { return 1; }
+    VoltageDevice createDevice() {
+	return new RailDevice(sim) {
+	    double getVoltage() { return RailElm.this.getVoltage(); }
+	};
+    }
 	
     void setPoints() {
 	super.setPoints();
@@ -58,15 +62,15 @@ class RailElm extends VoltageElm {
 	drawThickLine(g, point1, lead1);
 	drawRail(g);
 	drawPosts(g);
-	curcount = updateDotCount(-current, curcount);
+	curcount = updateDotCount(-getCurrent(), curcount);
 	if (sim.dragElm != this)
 	    drawDots(g, point1, lead1, curcount);
     }
 
     void drawRail(Graphics g) {
-	if (waveform == WF_SQUARE && (flags & FLAG_CLOCK) != 0)
+	if (source.waveform == WF_SQUARE && (flags & FLAG_CLOCK) != 0)
 	    drawRailText(g, "CLK");
-	else if (waveform == WF_DC || waveform == WF_VAR) {
+	else if (source.waveform == WF_DC || source.waveform == WF_VAR) {
 	    g.setColor(needsHighlight() ? selectColor : whiteColor);
 	    setPowerColor(g, false);
 	    double v = getVoltage();
@@ -90,17 +94,6 @@ class RailElm extends VoltageElm {
     }
     
     double getVoltageDiff() { return volts[0]; }
-    void stamp() {
-	if (waveform == WF_DC)
-	    sim.stampVoltageSource(0, nodes[0], voltSource, getVoltage());
-	else
-	    sim.stampVoltageSource(0, nodes[0], voltSource);
-    }
-    void doStep() {
-	if (waveform != WF_DC)
-	    sim.updateVoltageSource(0, nodes[0], voltSource, getVoltage());
-    }
-    boolean hasGroundConnection(int n1) { return true; }
     int getShortcut() { return 'V'; }
     
 //    void drawHandles(Graphics g, Color c) {
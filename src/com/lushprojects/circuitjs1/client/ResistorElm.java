@@ -23,16 +23,20 @@ import com.google.gwt.canvas.dom.client.CanvasGradient;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
     class ResistorElm extends CircuitElm {
-	double resistance;
-	public ResistorElm(int xx, int yy) { super(xx, yy); resistance = 1000; }
+	ResistorDevice res;
+	public ResistorElm(int xx, int yy) {
+	    super(xx, yy);
+	    setDevice(res = new ResistorDevice(sim, 1000));
+	}
 	public ResistorElm(int xa, int ya, int xb, int yb, int f,
 		    StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
-	    resistance = new Double(st.nextToken()).doubleValue();
+	    setDevice(res = new ResistorDevice(sim, 1000));
+	    res.undump(st, f);
 	}
 	int getDumpType() { return 'r'; }
 	String dump() {
-	    return super.dump() + " " + resistance;
+	    return super.dump() + " " + res.resistance;
 	}
 
 	Point ps3, ps4;
@@ -83,39 +87,32 @@ import com.lushprojects.circuitjs1.client.util.Locale;
 	    }
 	    g.context.restore();
 	    if (sim.showValuesCheckItem.getState()) {
-		String s = getShortUnitText(resistance, "");
+		String s = getShortUnitText(res.resistance, "");
 		drawValues(g, s, hs+2);
 	    }
 	    doDots(g);
 	    drawPosts(g);
 	}
 
-	void calculateCurrent() {
-	    current = (volts[0]-volts[1])/resistance;
-	    //System.out.print(this + " res current set to " + current + "\n");
-	}
-	void stamp() {
-	    sim.stampResistor(nodes[0], nodes[1], resistance);
-	}
 	void getInfo(String arr[]) {
 	    arr[0] = "resistor";
 	    getBasicInfo(arr);
-	    arr[3] = "R = " + getUnitText(resistance, Locale.ohmString);
+	    arr[3] = "R = " + getUnitText(res.resistance, Locale.ohmString);
 	    arr[4] = "P = " + getUnitText(getPower(), "W");
 	}
 	@Override String getScopeText(int v) {
-	    return Locale.LS("resistor") + ", " + getUnitText(resistance, Locale.ohmString);
+	    return Locale.LS("resistor") + ", " + getUnitText(res.resistance, Locale.ohmString);
 	}
 	public EditInfo getEditInfo(int n) {
 	    // ohmString doesn't work here on linux
 	    if (n == 0)
-		return new EditInfo("Resistance (ohms)", resistance, 0, 0);
+		return new EditInfo("Resistance (ohms)", res.resistance, 0, 0);
 	    return null;
 	}
 	public void setEditValue(int n, EditInfo ei) {
-	    resistance = (ei.value <= 0) ? 1e-9 : ei.value;
+	    res.resistance = (ei.value <= 0) ? 1e-9 : ei.value;
 	}
 	int getShortcut() { return 'r'; }
-	double getResistance() { return resistance; }
-	void setResistance(double r) { resistance = r; }
+	double getResistance() { return res.resistance; }
+	void setResistance(double r) { res.resistance = r; }
     }
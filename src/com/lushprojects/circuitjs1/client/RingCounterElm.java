@@ -45,20 +45,20 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = bits > 2 ? bits : 2;
 	    sizeY = 2;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(1, SIDE_W, "");
+	    allocPins(getPostCount());
+	    pins[0] = new ChipPin(1, SIDE_W, "");
 	    pins[0].clock = true;
-	    pins[1] = new Pin(sizeX-1, SIDE_S, "R");
+	    pins[1] = new ChipPin(sizeX-1, SIDE_S, "R");
 	    pins[1].lineOver = hasInvertReset();
 	    int i;
 	    for (i = 0; i != bits; i++) {
 		int ii = i+2;
-		pins[ii] = new Pin(i, SIDE_N, "Q" + i);
+		pins[ii] = new ChipPin(i, SIDE_N, "Q" + i);
 		pins[ii].output = pins[ii].state = true;
 	    }
 	    if (hasClockInhibit()) {
 		clockInhibit = pins.length-1;
-		pins[clockInhibit] = new Pin(1, SIDE_S, "CE");
+		pins[clockInhibit] = new ChipPin(1, SIDE_S, "CE");
 		pins[clockInhibit].lineOver = true;
 	    } else
 		clockInhibit = -1;
@@ -84,7 +84,7 @@ package com.lushprojects.circuitjs1.client;
 		if (pins[i+2].value)
 		    break;
 	    
-	    if (pins[0].value && !lastClock && running) {
+	    if (pins[0].value && !chip.lastClock && running) {
 		if (i < bits)
 		    pins[i++ +2].value = false;
 		i %= bits;
@@ -97,7 +97,7 @@ package com.lushprojects.circuitjs1.client;
 		    pins[i+2].value = false;
 		pins[2].value = true;
 	    }
-	    lastClock = pins[0].value;
+	    chip.lastClock = pins[0].value;
 	}
 	public EditInfo getChipEditInfo(int n) {
 	    if (n == 0) {
@@ -64,7 +64,7 @@ class SCRElm extends CircuitElm {
     }
     void setup() {
 	diode = new Diode(sim);
-	diode.setupForDefaultModel();
+	DiodeModel.getDefaultModel().setupDiode(diode);
 	aresistance = 1; // to avoid divide by zero
     }
     boolean nonLinear() { return true; }
@@ -91,10 +91,10 @@ import com.google.gwt.user.client.ui.TextArea;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = max(addressBits, dataBits) + 1;
-	    pins = new Pin[getPostCount()];
-	    pins[0] = new Pin(0, SIDE_W, "WE");
+	    allocPins(getPostCount());
+	    pins[0] = new ChipPin(0, SIDE_W, "WE");
 	    pins[0].lineOver = true;
-	    pins[1] = new Pin(0, SIDE_E, "OE");
+	    pins[1] = new ChipPin(0, SIDE_E, "OE");
 	    pins[1].lineOver = true;
 	    int i;
 	    addressNodes = 2;
@@ -102,11 +102,11 @@ import com.google.gwt.user.client.ui.TextArea;
 	    internalNodes = 2+addressBits+dataBits;
 	    for (i = 0; i != addressBits; i++) {
 		int ii = i+addressNodes;
-		pins[ii] = new Pin(sizeY-addressBits+i, SIDE_W, "A" + (addressBits-i-1));
+		pins[ii] = new ChipPin(sizeY-addressBits+i, SIDE_W, "A" + (addressBits-i-1));
 	    }
 	    for (i = 0; i != dataBits; i++) {
 		int ii = i+dataNodes;
-		pins[ii] = new Pin(sizeY-dataBits+i, SIDE_E, "D" + (dataBits-i-1));
+		pins[ii] = new ChipPin(sizeY-dataBits+i, SIDE_E, "D" + (dataBits-i-1));
 		pins[ii].output = true;
 	    }
 	    allocNodes();
@@ -208,7 +208,7 @@ import com.google.gwt.user.client.ui.TextArea;
 	void stamp() {
 	    int i;
 	    for (i = 0; i != dataBits; i++) {
-		Pin p = pins[i+dataNodes];
+		ChipPin p = pins[i+dataNodes];
 		sim.stampVoltageSource(0, nodes[internalNodes+i], p.voltSource);
 		sim.stampNonLinear(nodes[internalNodes+i]);
 		sim.stampNonLinear(nodes[dataNodes+i]);
@@ -229,7 +229,7 @@ import com.google.gwt.user.client.ui.TextArea;
 	    Integer dataObj = map.get(address);
 	    int data = (dataObj == null) ? 0 : dataObj;
 	    for (i = 0; i != dataBits; i++) {
-		Pin p = pins[i+dataNodes];
+		ChipPin p = pins[i+dataNodes];
 		sim.updateVoltageSource(0, nodes[internalNodes+i], p.voltSource, (data & (1<<(dataBits-1-i))) == 0 ? 0 : 5);
 		
 		// stamp resistor from internal voltage source to data pin.
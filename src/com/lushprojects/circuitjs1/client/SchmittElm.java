@@ -31,38 +31,7 @@ class SchmittElm extends InvertingSchmittElm{
 	}
 
 	int getDumpType() { return 182; }
-	void doStep() {
-	    double v0 = volts[1];
-	    double out;
-		if(state)
-		{//Output is high
-			if(volts[0]>upperTrigger)//Input voltage high enough to set output high
-			{
-			state=false;
-			out=logicOnLevel;
-			}
-			else
-			{
-			out=logicOffLevel;
-			}
-		}
-		else
-		{//Output is low
-			if(volts[0]<lowerTrigger)//Input voltage low enough to set output low
-			{
-			state=true;
-			out=logicOffLevel;
-			}
-			else
-			{
-			out=logicOnLevel;
-			}
-		}
-	    
-	    double maxStep = slewRate * sim.timeStep * 1e9;
-	    out = Math.max(Math.min(v0+maxStep, out), v0-maxStep);
-	    sim.updateVoltageSource(0, nodes[1], voltSource, out);
-	}
+	InvertingSchmittDevice createDevice() { return new SchmittDevice(sim); }
 
 	void draw(Graphics g) {
 	    drawPosts(g);
@@ -92,10 +61,4 @@ class SchmittElm extends InvertingSchmittElm{
             arr[0] = "Schmitt Trigger~"; // ~ is for localization
         }
 
-	@Override double getCurrentIntoNode(int n) {
-	    if (n == 1)
-		return current;
-	    return 0;
-	}
-
     }
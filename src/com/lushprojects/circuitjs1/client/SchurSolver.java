@@ -0,0 +1,199 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Solver for nonlinear circuits where only a few rows of the matrix change from one
+// subiteration to the next (rows with RowInfo.lsChanges set).  We split the rows into a
+// linear set L, whose left side never changes, and a nonlinear set N, and pair each row with
+// a column.  Then
+//
+//   [ A_LL A_LN ] [ x_L ]   [ b_L ]
+//   [ A_NL A_NN ] [ x_N ] = [ b_N ]
+//
+// A_LL and A_LN are constant, so we factor A_LL and compute X = A_LL^-1 A_LN once in setup().
+// On each subiteration we only need to form and factor the small dense Schur complement
+// S = A_NN - A_NL X, and then x_N = S^-1 (b_N - A_NL A_LL^-1 b_L), x_L = A_LL^-1 b_L - X x_N.
+class SchurSolver implements MatrixSolver {
+    int n, nl, nn;
+
+    // rows and columns in each set, and for each row/column, its index in its set.
+    // (index >= 0 for set L, or -1-index for set N)
+    int rowL[], colL[], rowN[], colN[];
+    int colIndex[];
+
+    SparseLU luLL;
+
+    // X = A_LL^-1 A_LN, stored by column (X[m] is column m)
+    double xmat[][];
+
+    // Schur complement and its pivots
+    double smat[][];
+    int spvt[];
+
+    SparseMatrix matrix;
+    double bl[], bn[];
+
+    // set up the partition and factor the linear block.  rowToCol[] pairs each row with a
+    // column; nonLinearRow[] says which rows change in doStep().  Returns false if the linear
+    // block is singular, in which case this solver can't be used.
+    boolean setup(SparseMatrix a, int rowToCol[], boolean nonLinearRow[]) {
+	n = a.size;
+	int i, k, m;
+	nn = 0;
+	for (i = 0; i != n; i++)
+	    if (nonLinearRow[i])
+		nn++;
+	nl = n-nn;
+	if (nl == 0 || nn == 0)
+	    return false;
+	rowL = new int[nl];
+	colL = new int[nl];
+	rowN = new int[nn];
+	colN = new int[nn];
+	colIndex = new int[n];
+	k = m = 0;
+	for (i = 0; i != n; i++) {
+	    int c = rowToCol[i];
+	    if (nonLinearRow[i]) {
+		rowN[m] = i;
+		colN[m] = c;
+		colIndex[c] = -1-m;
+		m++;
+	    } else {
+		rowL[k] = i;
+		colL[k] = c;
+		colIndex[c] = k;
+		k++;
+	    }
+	}
+
+	luLL = new SparseLU(nl);
+	xmat = new double[nn][nl];
+	smat = new double[nn][nn];
+	spvt = new int[nn];
+	bl = new double[nl];
+	bn = new double[nn];
+	return factorLinear(a, true);
+    }
+
+    // factor A_LL and compute X from the linear rows of a.  If analyze is false, we reuse the
+    // column ordering from last time (the pattern must be the same).
+    boolean factorLinear(SparseMatrix a, boolean analyze) {
+	int k, m;
+	SparseMatrix all = new SparseMatrix(nl);
+	for (k = 0; k != nl; k++) {
+	    int r = rowL[k];
+	    int j;
+	    for (j = 0; j != a.rowLength[r]; j++) {
+		int ci = colIndex[a.rowCols[r][j]];
+		if (ci >= 0)
+		    all.add(k, ci, a.rowValues[r][j]);
+	    }
+	}
+	if (analyze)
+	    luLL.analyze(all);
+	if (!luLL.factor(all))
+	    return false;
+
+	// compute X one column at a time
+	for (m = 0; m != nn; m++)
+	    for (k = 0; k != nl; k++)
+		xmat[m][k] = 0;
+	for (k = 0; k != nl; k++) {
+	    int r = rowL[k];
+	    int j;
+	    for (j = 0; j != a.rowLength[r]; j++) {
+		int ci = colIndex[a.rowCols[r][j]];
+		if (ci < 0)
+		    xmat[-1-ci][k] += a.rowValues[r][j];
+	    }
+	}
+	for (m = 0; m != nn; m++)
+	    luLL.solve(xmat[m]);
+	return true;
+    }
+
+    // the linear rows have new values (the timestep changed), so redo A_LL and X
+    public boolean updateValues(SparseMatrix a) {
+	return factorLinear(a, false);
+    }
+
+    // form the Schur complement from the nonlinear rows of a, and factor it
+    public boolean factor(SparseMatrix a) {
+	matrix = a;
+	int i, j, m;
+	for (i = 0; i != nn; i++) {
+	    double srow[] = smat[i];
+	    for (j = 0; j != nn; j++)
+		srow[j] = 0;
+	    int r = rowN[i];
+	    int cols[] = a.rowCols[r];
+	    double vals[] = a.rowValues[r];
+	    for (j = 0; j != a.rowLength[r]; j++) {
+		double v = vals[j];
+		if (v == 0)
+		    continue;
+		int ci = colIndex[cols[j]];
+		if (ci < 0) {
+		    srow[-1-ci] += v;
+		    continue;
+		}
+		for (m = 0; m != nn; m++)
+		    srow[m] -= v*xmat[m][ci];
+	    }
+	}
+	return CircuitEngine.lu_factor(smat, nn, spvt);
+    }
+
+    public String getName() { return "sparse, Schur complement"; }
+
+    // solve using the last factorization.  b is the right side on input and the solution
+    // on output.
+    public void solve(double b[]) {
+	int i, j, k, m;
+	for (k = 0; k != nl; k++)
+	    bl[k] = b[rowL[k]];
+	luLL.solve(bl);
+	for (i = 0; i != nn; i++) {
+	    int r = rowN[i];
+	    double tot = b[r];
+	    int cols[] = matrix.rowCols[r];
+	    double vals[] = matrix.rowValues[r];
+	    for (j = 0; j != matrix.rowLength[r]; j++) {
+		int ci = colIndex[cols[j]];
+		if (ci >= 0)
+		    tot -= vals[j]*bl[ci];
+	    }
+	    bn[i] = tot;
+	}
+	CircuitEngine.lu_solve(smat, nn, spvt, bn);
+	for (m = 0; m != nn; m++) {
+	    double xn = bn[m];
+	    b[colN[m]] = xn;
+	    if (xn == 0)
+		continue;
+	    double xcol[] = xmat[m];
+	    for (k = 0; k != nl; k++)
+		bl[k] -= xcol[k]*xn;
+	}
+	for (k = 0; k != nl; k++)
+	    b[colL[k]] = bl[k];
+    }
+}
@@ -85,6 +85,7 @@ class ScopeElm extends CircuitElm {
     boolean canViewInScope() { return false; }
     
     int getDumpType() { return 403; }
+    int getStateCount() { return 0; }
 
     public String dump() {
 	String dumpStr = super.dump();
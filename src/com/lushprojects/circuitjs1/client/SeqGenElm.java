@@ -78,14 +78,14 @@ class SeqGenElm extends ChipElm {
 	void setupPins() {
 		sizeX = 2;
 		sizeY = 2;
-		pins = new Pin[getPostCount()];
+		allocPins(getPostCount());
 		
-		pins[0] = new Pin(0, SIDE_W, "");
+		pins[0] = new ChipPin(0, SIDE_W, "");
 		pins[0].clock = true;
-		pins[1] = new Pin(1, SIDE_E, "Q");
+		pins[1] = new ChipPin(1, SIDE_E, "Q");
 		pins[1].output = true;
 		if (hasReset())
-		    pins[2] = new Pin(1, SIDE_W, "R");
+		    pins[2] = new ChipPin(1, SIDE_W, "R");
 	}
 	double getVoltageDiff() {
 		return volts[1];
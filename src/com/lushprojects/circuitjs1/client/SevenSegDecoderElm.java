@@ -21,26 +21,12 @@ package com.lushprojects.circuitjs1.client;
 
     class SevenSegDecoderElm extends ChipElm {
 
-	private static final boolean[][] symbols={
-		{true,true,true,true,true,true,false},//0
-		{false,true,true,false,false,false,false},//1
-		{true,true,false,true,true,false,true},//2
-		{true,true,true,true,false,false,true},//3
-		{false,true,true,false,false,true,true},//4
-		{true,false,true,true,false,true,true},//5
-		{true,false,true,true,true,true,true},//6
-		{true,true,true,false,false,false,false},//7
-		{true,true,true,true,true,true,true},//8
-		{true,true,true,false,false,true,true},//9
-		{true,true,true,false,true,true,true},//A
-		{false,false,true,true,true,true,true},//B
-		{true,false,false,true,true,true,false},//C
-		{false,true,true,true,true,false,true},//D
-		{true,false,false,true,true,true,true},//E
-		{true,false,false,false,true,true,true},//F
-	};
-	static final int FLAG_ENABLE = (1<<1);
-	static final int FLAG_BLANK_F = (1<<2);
+	static final int FLAG_ENABLE = SevenSegDecoderDevice.FLAG_ENABLE;
+	static final int FLAG_BLANK_F = SevenSegDecoderDevice.FLAG_BLANK_F;
+
+	SevenSegDecoderDevice decoder;
+
+	ChipDevice createDevice() { return decoder = new SevenSegDecoderDevice(sim); }
 
 	public SevenSegDecoderElm(int xx, int yy) { super(xx, yy); }
 	public SevenSegDecoderElm(int xa, int ya, int xb, int yb, int f,
@@ -50,63 +36,15 @@ package com.lushprojects.circuitjs1.client;
 	String getChipName() { return "7-Segment Decoder"; }
 
 	void setupPins() {
-	    sizeX = 3;
-	    sizeY = 7;
-	    pins = new Pin[getPostCount()];
-
-	    pins[7] = new Pin(0, SIDE_W, "I3");
-	    pins[8] = new Pin(1, SIDE_W, "I2");
-	    pins[9] = new Pin(2, SIDE_W, "I1");
-	    pins[10] = new Pin(3, SIDE_W, "I0");
-	
-	    pins[0] = new Pin(0, SIDE_E, "a");
-	    pins[0].output=true;
-	    pins[1] = new Pin(1, SIDE_E, "b");
-	    pins[1].output=true;
-	    pins[2] = new Pin(2, SIDE_E, "c");
-	    pins[2].output=true;
-	    pins[3] = new Pin(3, SIDE_E, "d");
-	    pins[3].output=true;
-	    pins[4] = new Pin(4, SIDE_E, "e");
-	    pins[4].output=true;
-	    pins[5] = new Pin(5, SIDE_E, "f");
-	    pins[5].output=true;
-	    pins[6] = new Pin(6, SIDE_E, "g");
-	    pins[6].output=true;
-	    
-	    if (hasBlank()) {
-		pins[11] = new Pin(4, SIDE_W, "BI");
-		pins[11].bubble = true; 
-	    }
+	    decoder.hasBlank = hasBlank();
+	    decoder.blankOnF = blankOnF();
+	    super.setupPins();
 	    allocNodes();
 	}
 
 	boolean hasBlank() { return (flags & FLAG_ENABLE) != 0; }
 	boolean blankOnF() { return (flags & FLAG_BLANK_F) != 0; }
 	
-	int getPostCount() {
-	    return hasBlank() ? 12 : 11;
-	}
-	int getVoltageSourceCount() {return 7;}
-
-	void execute() {
-	    int input=0;
-	    if(pins[7].value)input+=8;
-	    if(pins[8].value)input+=4;
-	    if(pins[9].value)input+=2;
-	    if(pins[10].value)input+=1;
-	    boolean en = true;
-	    if (hasBlank() && !pins[11].value)
-		en = false;
-	    if (!en || (input == 15 && blankOnF())) {
-		for (int i = 0; i != 7; i++)
-		    writeOutput(i, false);
-	    } else {
-		for(int i=0;i<7;i++)
-		    writeOutput(i, symbols[input][i]);
-	    }
-	}
-	
         public EditInfo getChipEditInfo(int n) {
             if (n == 0) {
                 EditInfo ei = new EditInfo("", 0, -1, -1);
@@ -129,6 +67,7 @@ package com.lushprojects.circuitjs1.client;
             }
             if (n == 1)
         	flags = ei.changeFlag(flags, FLAG_BLANK_F);
+            decoder.blankOnF = blankOnF();
             super.setChipEditValue(n, ei);
         }
 
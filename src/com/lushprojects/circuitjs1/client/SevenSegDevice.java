@@ -0,0 +1,156 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of SevenSegElm.  With no diodes the segments are logic inputs; otherwise
+// each segment is an LED between its pin and the common pin.
+class SevenSegDevice extends ChipDevice {
+    static final int ES_NONE = 0;
+    static final int ES_DP = 1;
+    static final int ES_COLON = 2;
+
+    // base segment count not including decimal point or colon
+    int baseSegmentCount;
+    // segment count including decimal point or colon
+    int segmentCount;
+    int extraSegment;
+    int pinCount;
+    int commonPin;
+    // 1 = common cathode, -1 = common anode, 0 = no diodes
+    int diodeDirection;
+    // model for the segment LEDs
+    double saturationCurrent, breakdownVoltage, emissionCoefficient;
+    Diode diodes[];
+
+    SevenSegDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	baseSegmentCount = segmentCount = 7;
+	diodeDirection = 0;
+	try {
+	    baseSegmentCount = Integer.parseInt(st.nextToken());
+	    extraSegment = Integer.parseInt(st.nextToken());
+	    diodeDirection = Integer.parseInt(st.nextToken());
+	} catch (Exception e) {}
+	setPinCount();
+	setupPins();
+    }
+
+    void setPinCount() {
+	segmentCount = baseSegmentCount;
+	if (extraSegment > 0)
+	    segmentCount++;
+	if (diodeDirection == 0) {
+	    pinCount = segmentCount;
+	    commonPin = -1;
+	} else {
+	    pinCount = segmentCount + 1;
+	    commonPin = pinCount-1;
+	}
+    }
+
+    void setupPins() {
+	if (pinCount == 0)
+	    return;
+	int segmentPinsOnLeftSide = (baseSegmentCount+1)/2;
+	sizeY = segmentPinsOnLeftSide;
+	if (baseSegmentCount == 7) {
+	    sizeX = 4;
+	    if (pinCount > 7)
+		sizeX = 5;
+	} else
+	    sizeX = 5;
+	// make room for common/dp/colon pins
+	if (pinCount > sizeY*2)
+	    sizeY++;
+	allocPins(pinCount);
+	int i;
+	for (i = 0; i != segmentPinsOnLeftSide; i++)
+	    pins[i] = new ChipPin(i, SIDE_W, Character.toString((char)('a'+i)));
+	// retain backward compatibility pin layout for old 7-segment setup, otherwise put pins on left and right side
+	boolean backwardCompatibility = (segmentCount == 7 && diodeDirection == 0 && extraSegment == ES_NONE);
+	int s = (backwardCompatibility) ? 1 : 0;
+	for (; i != segmentCount; i++)
+	    pins[i] = new ChipPin(s++, backwardCompatibility ? SIDE_S : SIDE_E, Character.toString((char)('a'+i)));
+	if (extraSegment == ES_DP)
+	    pins[segmentCount-1].text = "dp";
+	if (commonPin > 0) {
+	    int side = SIDE_E;
+	    if (segmentCount != 7) {
+		side = SIDE_W;
+		s = segmentPinsOnLeftSide;
+	    }
+	    pins[commonPin] = new ChipPin(s++, side, (diodeDirection == 1) ? "gnd" : "Vcc");
+	}
+    }
+
+    boolean nonLinear() { return diodeDirection != 0; }
+
+    void stamp() {
+	super.stamp();
+	if (diodeDirection == 0)
+	    return;
+	diodes = new Diode[segmentCount];
+	int i;
+	for (i = 0; i != segmentCount; i++) {
+	    diodes[i] = new Diode(sim);
+	    diodes[i].setup(saturationCurrent, breakdownVoltage, emissionCoefficient);
+	    if (diodeDirection == 1)
+		diodes[i].stamp(nodes[i], nodes[commonPin]);
+	    else
+		diodes[i].stamp(nodes[commonPin], nodes[i]);
+	}
+    }
+
+    void doStep() {
+	super.doStep();
+	if (diodeDirection == 0)
+	    return;
+	int i;
+	for (i = 0; i != segmentCount; i++)
+	    diodes[i].doStep(diodeDirection*(volts[i]-volts[commonPin]));
+    }
+
+    void calculateCurrent() {
+	if (diodeDirection == 0 || diodes == null) {
+	    // no current
+	    int i;
+	    for (i = 0; i != pinCount; i++)
+		pins[i].current = 0;
+	    return;
+	}
+	// calculate diode currents
+	int i;
+	pins[commonPin].current = 0;
+	for (i = 0; i != segmentCount; i++) {
+	    pins[i].current = -diodeDirection*diodes[i].calculateCurrent(diodeDirection*(volts[i]-volts[commonPin]));
+	    pins[commonPin].current -= pins[i].current;
+	}
+    }
+
+    void stepFinished() {
+	// stop for huge currents that make simulator act weird
+	if (commonPin > 0 && Math.abs(pins[commonPin].current) > 1e12)
+	    sim.stopDevice("max current exceeded", this);
+    }
+}
@@ -20,23 +20,13 @@
 package com.lushprojects.circuitjs1.client;
 
     class SevenSegElm extends ChipElm {
-	// base segment count not including decimal point or colon
-	int baseSegmentCount;
+	static final int ES_NONE = SevenSegDevice.ES_NONE;
+	static final int ES_DP = SevenSegDevice.ES_DP;
+	static final int ES_COLON = SevenSegDevice.ES_COLON;
+	SevenSegDevice seg;
 	
-	// segment count including decimal point or colon
-	int segmentCount;
+	ChipDevice createDevice() { return seg = new SevenSegDevice(sim); }
 
-	int extraSegment;
-	static final int ES_NONE = 0;
-	static final int ES_DP = 1;
-	static final int ES_COLON = 2;
-	
-	int pinCount;
-	int commonPin;
-	
-	// 1 = common cathode, -1 = common anode, 0 = no diodes
-	int diodeDirection;
-	
 	public SevenSegElm(int xx, int yy) {
 	    super(xx, yy);
 	    setDefaults();
@@ -45,62 +35,22 @@ package com.lushprojects.circuitjs1.client;
 	public SevenSegElm(int xa, int ya, int xb, int yb, int f,
 			   StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    setDefaults();
-	    try {
-		baseSegmentCount = Integer.parseInt(st.nextToken());
-		extraSegment = Integer.parseInt(st.nextToken());
-		diodeDirection = Integer.parseInt(st.nextToken());
-	    } catch (Exception e) {}
-	    setPinCount();
+	    darkred = new Color(30, 0, 0);
 	}
 	
 	void setDefaults() {
-	    baseSegmentCount = segmentCount = 7;
-	    diodeDirection = 0;
+	    seg.baseSegmentCount = seg.segmentCount = 7;
+	    seg.diodeDirection = 0;
 	}
 	
-	String dump() { return super.dump() + " " + baseSegmentCount + " " + extraSegment + " " + diodeDirection; }
+	String dump() { return super.dump() + " " + seg.baseSegmentCount + " " + seg.extraSegment + " " + seg.diodeDirection; }
 	
-	String getChipName() { return segmentCount + "-segment display"; }
+	String getChipName() { return seg.segmentCount + "-segment display"; }
 	Color darkred;
 	
 	void setupPins() {
-	    if (pinCount == 0)
-		return;
 	    darkred = new Color(30, 0, 0);
-	    int segmentPinsOnLeftSide = (baseSegmentCount+1)/2;
-	    sizeY = segmentPinsOnLeftSide;
-	    if (baseSegmentCount == 7) {
-		sizeX = 4;
-		if (pinCount > 7)
-		    sizeX = 5;
-	    } else
-		sizeX = 5;
-	    
-	    // make room for common/dp/colon pins
-	    if (pinCount > sizeY*2)
-		sizeY++;
-	    
-	    pins = new Pin[pinCount];
-	    int i;
-	    for (i = 0; i != segmentPinsOnLeftSide; i++)
-		pins[i] = new Pin(i, SIDE_W, Character.toString((char)('a'+i)));
-	    
-	    // retain backward compatibility pin layout for old 7-segment setup, otherwise put pins on left and right side
-	    boolean backwardCompatibility = (segmentCount == 7 && diodeDirection == 0 && extraSegment == ES_NONE);
-	    int s = (backwardCompatibility) ? 1 : 0;
-	    for (; i != segmentCount; i++)
-		pins[i] = new Pin(s++, backwardCompatibility ? SIDE_S : SIDE_E, Character.toString((char)('a'+i)));
-	    if (extraSegment == ES_DP)
-		pins[segmentCount-1].text = "dp";
-	    if (commonPin > 0) {
-		int side = SIDE_E;
-		if (segmentCount != 7) {
-		    side = SIDE_W;
-		    s = segmentPinsOnLeftSide;
-		}
-		pins[commonPin] = new Pin(s++, side, (diodeDirection == 1) ? "gnd" : "Vcc");
-	    }
+	    super.setupPins();
 	}
 	
 	void drawSegment(Graphics g, int x1, int y1, int x2, int y2, int thick) {
@@ -179,42 +129,21 @@ package com.lushprojects.circuitjs1.client;
 		0, 1, 1, 1
 	};
 	
-	Diode diodes[];
 	void stamp() {
-	    super.stamp();
-	    
-	    if (diodeDirection == 0)
-		return;
-	    diodes = new Diode[segmentCount];
-	    int i;
 	    DiodeModel model = DiodeModel.getModelWithName("default-led");
-	    for (i = 0; i != segmentCount; i++) {
-		diodes[i] = new Diode(sim);
-		diodes[i].setup(model);
-		if (diodeDirection == 1)
-		    diodes[i].stamp(nodes[i], nodes[commonPin]);
-		else
-		    diodes[i].stamp(nodes[commonPin], nodes[i]);
-	    }
-	} 
-	void doStep() {
-	    super.doStep();
-	    
-	    if (diodeDirection == 0)
-		return;
-	    
-	    int i;
-	    for (i = 0; i != segmentCount; i++)
-		diodes[i].doStep(diodeDirection*(volts[i]-volts[commonPin]));
+	    seg.saturationCurrent = model.saturationCurrent;
+	    seg.breakdownVoltage = model.breakdownVoltage;
+	    seg.emissionCoefficient = model.emissionCoefficient;
+	    super.stamp();
 	}
-        boolean nonLinear() { return diodeDirection != 0; }
+
 	void draw(Graphics g) {
 	    drawChip(g);
 	    g.setColor(Color.red);
 	    int spx = cspc*2;
 	    
 	    // make room for dp/colon
-	    if (extraSegment != ES_NONE)
+	    if (seg.extraSegment != ES_NONE)
 		spx = (int)(spx*.9);
 	    
 	    if (sizeY <= 4 || isFlippedXY())
@@ -225,12 +154,12 @@ package com.lushprojects.circuitjs1.client;
 	    if (sizeY <= 4 && (flags & (FLAG_FLIP_Y|FLAG_FLIP_XY)) != 0)
 		yl += 10;
 	    int i;
-	    int disp[] = (baseSegmentCount == 7) ? display7 : (baseSegmentCount == 14) ? display14 : display16;
+	    int disp[] = (seg.baseSegmentCount == 7) ? display7 : (seg.baseSegmentCount == 14) ? display14 : display16;
 	    int step;
 	    int thick = (sizeY <= 4) ? 5 : spx/6;
 	    int dpsize = (sizeY <= 4) ? 7 : isFlippedXY() ? 3 : 7;
 	    for (step = 0; step != 2; step++)
-		for (i = 0; i != segmentCount; i++) {
+		for (i = 0; i != seg.segmentCount; i++) {
 		    int i4 = i*4;
 		    // draw diagonal lines in first pass, so the other lines overlap
 		    boolean diag = (disp[i4] != disp[i4+2] && disp[i4+1] != disp[i4+3]);
@@ -239,51 +168,27 @@ package com.lushprojects.circuitjs1.client;
 		    setColor(g, i);
 		    drawSegment(g, xl+disp[i4]*spx, yl+disp[i4+1]*spy, xl+disp[i4+2]*spx, yl+disp[i4+3]*spy, thick);
 		}
-	    if (extraSegment == ES_DP) {
-		setColor(g, baseSegmentCount);
+	    if (seg.extraSegment == ES_DP) {
+		setColor(g, seg.baseSegmentCount);
 		int dist = (int)Math.max(spx*1.5, spx+12);
 		drawDecimal(g, xl+spx+dist, yl+spy*2, dpsize);
 	    }
-	    if (extraSegment == ES_COLON) {
-		setColor(g, baseSegmentCount);
+	    if (seg.extraSegment == ES_COLON) {
+		setColor(g, seg.baseSegmentCount);
 		int dist = (int)Math.max(spx*1.5, spx+14);
 		drawDecimal(g, xl+spx+dist, yl+(int)(spy*.5), dpsize);
 		drawDecimal(g, xl+spx+dist, yl+(int)(spy*1.5), dpsize);
 	    }
 	}
 	
-	void calculateCurrent() {
-	    if (diodeDirection == 0 || diodes == null) {
-		// no current
-		int i;
-		for (i = 0; i != pinCount; i++)
-		    pins[i].current = 0;
-		return;
-	    }
-	    
-	    // calculate diode currents
-	    int i;
-	    pins[commonPin].current = 0;
-	    for (i = 0; i != segmentCount; i++) {
-		pins[i].current = -diodeDirection*diodes[i].calculateCurrent(diodeDirection*(volts[i]-volts[commonPin]));
-		pins[commonPin].current -= pins[i].current;
-	    }
-	}
-	
-	void stepFinished() {
-	    // stop for huge currents that make simulator act weird
-	    if (commonPin > 0 && Math.abs(pins[commonPin].current) > 1e12)
-		sim.stop("max current exceeded", this);
-	}
-
 	void setColor(Graphics g, int p) {
-	    if (diodeDirection == 0) {
+	    if (seg.diodeDirection == 0) {
 		g.setColor(pins[p].value ? Color.red :
 		       sim.printableCheckItem.getState() ? Color.white : darkred);
 		return;
 	    }
 	    // 10mA current = max brightness
-	    double w = -diodeDirection*pins[p].current / .01;
+	    double w = -seg.diodeDirection*pins[p].current / .01;
             if (w > 0)
                 w = 255*(1+.2*Math.log(w));
             if (w > 255)
@@ -293,8 +198,6 @@ package com.lushprojects.circuitjs1.client;
             Color cc = new Color((int) w, 0, 0);
             g.setColor(cc);
 	}
-	int getPostCount() { return pinCount; }
-	int getVoltageSourceCount() { return 0; }
 	int getDumpType() { return 157; }
 	
 	public EditInfo getChipEditInfo(int n) {
@@ -304,7 +207,7 @@ package com.lushprojects.circuitjs1.client;
 	            ei.choice.add("7 Segment");
 	            ei.choice.add("14 Segment");
 	            ei.choice.add("16 Segment");
-	            ei.choice.select(baseSegmentCount == 7 ? 0 : baseSegmentCount == 14 ? 1 : 2);
+	            ei.choice.select(seg.baseSegmentCount == 7 ? 0 : seg.baseSegmentCount == 14 ? 1 : 2);
 	            return ei;
 	        }
 	        if (n == 1) {
@@ -313,7 +216,7 @@ package com.lushprojects.circuitjs1.client;
 	            ei.choice.add("None");
 	            ei.choice.add("Decimal Point");
 	            ei.choice.add("Colon");
-	            ei.choice.select(extraSegment);
+	            ei.choice.select(seg.extraSegment);
 	            return ei;
 	        }
 	        if (n == 2) {
@@ -322,7 +225,7 @@ package com.lushprojects.circuitjs1.client;
 	            ei.choice.add("Common Cathode");
 	            ei.choice.add("Common Anode");
 	            ei.choice.add("None (logic inputs)");
-	            ei.choice.select(diodeDirection == 1 ? 0 : diodeDirection == -1 ? 1 : 2);
+	            ei.choice.select(seg.diodeDirection == 1 ? 0 : seg.diodeDirection == -1 ? 1 : 2);
 	            return ei;
 	        }
 	        return super.getChipEditInfo(n);
@@ -331,18 +234,18 @@ package com.lushprojects.circuitjs1.client;
 	public void setChipEditValue(int n, EditInfo ei) {
 	    if (n == 0) {
 		int ix = ei.choice.getSelectedIndex();
-		baseSegmentCount = (ix == 0) ? 7 : (ix == 1) ? 14 : 16;
+		seg.baseSegmentCount = (ix == 0) ? 7 : (ix == 1) ? 14 : 16;
 		setPinCount();
 		return;
 	    }
 	    if (n == 1) {
-		extraSegment = ei.choice.getSelectedIndex();
+		seg.extraSegment = ei.choice.getSelectedIndex();
 		setPinCount();
 		return;
 	    }
 	    if (n == 2) {
 		int ix = ei.choice.getSelectedIndex();
-		diodeDirection = (ix == 0) ? 1 : (ix == 1) ? -1 : 0;
+		seg.diodeDirection = (ix == 0) ? 1 : (ix == 1) ? -1 : 0;
 		setPinCount();
 		return;
 	    }
@@ -350,18 +253,9 @@ package com.lushprojects.circuitjs1.client;
 	}
 	
 	void setPinCount() {
-	    segmentCount = baseSegmentCount;
-	    if (extraSegment > 0)
-		segmentCount++;
-	    if (diodeDirection == 0) {
-		pinCount = segmentCount;
-		commonPin = -1;
-	    } else {
-		pinCount = segmentCount + 1;
-		commonPin = pinCount-1;
-	    }
-	    allocNodes();
+	    seg.setPinCount();
 	    setupPins();
+	    allocNodes();
 	    setPoints();
 	}
 
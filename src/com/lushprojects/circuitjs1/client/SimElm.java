@@ -0,0 +1,367 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.Vector;
+
+// The part of a circuit element that CircuitEngine needs to analyze and run a circuit: where
+// the posts are, which nodes they're on, and the Device that does the simulation.  CircuitElm
+// extends this with drawing and editing for the browser.  The headless simulator creates
+// SimElms directly from the dump, with a device for each one (see HeadlessSim.readCircuit()).
+// Nothing in here may refer to GWT classes.
+class SimElm {
+    // initial point where user created element.  For simple two-terminal elements, this is the first node/post.
+    int x, y;
+    
+    // point to which user dragged out element.  For simple two-terminal elements, this is the second node/post
+    int x2, y2;
+    
+    int flags, nodes[], voltSource;
+    
+    // length along x and y axes, and sign of difference
+    int dx, dy, dsign;
+
+    // length of element
+    double dn;
+    
+    double dpx1, dpy1;
+    
+    // (x,y) and (x2,y2) as Point objects
+    Point point1, point2;
+    
+    // post positions for elements that have no CircuitElm to place them (set by the headless
+    // simulator, see PostLayout), or null to use point1 and point2
+    Point devicePosts[];
+    
+    // voltages at each node
+    double volts[];
+    
+    double current;
+    
+    int wireInfoIndex; // used in calcWireInfo()
+
+    // simulation half of this element, shared with the headless simulator, or null if the
+    // element does its own simulation.  See Device.
+    Device device;
+
+    SimElm() {}
+
+    // create element between xa,ya and xb,yb with flags f, with no device yet
+    SimElm(int xa, int ya, int xb, int yb, int f) {
+	x = xa; y = ya; x2 = xb; y2 = yb; flags = f;
+    }
+    
+    // allocate nodes/volts arrays we need
+    void allocNodes() {
+	int n = getPostCount() + getInternalNodeCount();
+	// preserve voltages if possible
+	if (nodes == null || nodes.length != n) {
+	    nodes = new int[n];
+	    double v[] = new double[n];
+	    // keep the voltages the device read from the dump (see ChipDevice.undumpPinStates())
+	    if (device != null && device.volts != null && device.volts != volts)
+		System.arraycopy(device.volts, 0, v, 0, Math.min(n, device.volts.length));
+	    volts = v;
+	}
+	if (device != null) {
+	    device.nodes = nodes;
+	    device.volts = volts;
+	}
+    }
+
+    // forward the simulation methods to d from now on
+    void setDevice(Device d) {
+	device = d;
+	allocNodes();
+    }
+    
+    // handle reset button
+    void reset() {
+	int i;
+	for (i = 0; i != getPostCount()+getInternalNodeCount(); i++)
+	    volts[i] = 0;
+	if (device != null)
+	    device.reset();
+    }
+    
+    // set current for voltage source vn to c.  vn will be the same value as in a previous call to setVoltageSource(n, vn) 
+    void setCurrent(int vn, double c) {
+	if (device != null)
+	    device.setCurrent(vn, c);
+	else
+	    current = c;
+    }
+    
+    // get current for one- or two-terminal elements
+    double getCurrent() { return (device != null) ? device.getCurrent() : current; }
+
+    // called before stamping with the list of elements being stamped with this one
+    void setParentList(Vector<? extends SimElm> elmList) {
+	if (device != null)
+	    device.setParentList(elmList);
+    }
+    
+    // stamp matrix values for linear elements.
+    // for non-linear elements, use this to stamp values that don't change each iteration, and call stampRightSide() or stampNonLinear() as needed
+    void stamp() {
+	if (device != null)
+	    device.stamp();
+    }
+    
+    // stamp matrix values for non-linear elements
+    void doStep() {
+	if (device != null)
+	    device.doStep();
+    }
+    
+    void startIteration() {
+	if (device != null)
+	    device.startIteration();
+    }
+    
+    // set voltage of x'th node, called by simulator logic
+    void setNodeVoltage(int n, double c) {
+	if (device != null) {
+	    device.setNodeVoltage(n, c);
+	    return;
+	}
+	volts[n] = c;
+	calculateCurrent();
+    }
+    
+    // calculate current in response to node voltages changing
+    void calculateCurrent() {
+	if (device != null)
+	    device.calculateCurrent();
+    }
+
+    // true if setNodeVoltage() just stores the voltage in volts[], so CircuitEngine can write it
+    // directly.  Only return true if neither setNodeVoltage() nor calculateCurrent() is
+    // overridden, here or in a subclass.
+    boolean storesNodeVoltageOnly() { return device != null && device.storesNodeVoltageOnly(); }
+    
+    // calculate post locations and other convenience values used for drawing.  Called when element is moved 
+    void setPoints() {
+    	dx = x2-x; dy = y2-y;
+    	dn = Math.sqrt(dx*dx+dy*dy);
+    	dpx1 = dy/dn;
+    	dpy1 = -dx/dn;
+    	dsign = (dy == 0) ? sign(dx) : sign(dy);
+    	point1 = new Point(x , y );
+    	point2 = new Point(x2, y2);
+    }
+
+    // calculate point fraction f between a and b, linearly interpolated
+    Point interpPoint(Point a, Point b, double f) {
+	Point p = new Point();
+	interpPoint(a, b, p, f);
+	return p;
+    }
+    
+    // calculate point fraction f between a and b, linearly interpolated, return it in c
+    void interpPoint(Point a, Point b, Point c, double f) {
+	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+.48);
+	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+.48);
+    }
+    
+    /**
+     * Returns a point fraction f along the line between a and b and offset perpendicular by g
+     * @param a 1st Point
+     * @param b 2nd Point
+     * @param f Fraction along line
+     * @param g Fraction perpendicular to line
+     * Returns interpolated point in c
+     */
+    void interpPoint(Point a, Point b, Point c, double f, double g) {
+	int gx = b.y-a.y;
+	int gy = a.x-b.x;
+	g /= Math.sqrt(gx*gx+gy*gy);
+	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+g*gx+.48);
+	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+g*gy+.48);
+    }
+    
+    /**
+     * Returns a point fraction f along the line between a and b and offset perpendicular by g
+     * @param a 1st Point
+     * @param b 2nd Point
+     * @param f Fraction along line
+     * @param g Fraction perpendicular to line
+     * @return Interpolated point
+     */
+    Point interpPoint(Point a, Point b, double f, double g) {
+	Point p = new Point();
+	interpPoint(a, b, p, f, g);
+	return p;
+    }
+    
+    
+    /**
+     * Calculates two points fraction f along the line between a and b and offest perpendicular by +/-g
+     * @param a 1st point (In)
+     * @param b 2nd point (In)
+     * @param c 1st point (Out)
+     * @param d 2nd point (Out)
+     * @param f Fraction along line
+     * @param g Fraction perpendicular to line
+     */
+    void interpPoint2(Point a, Point b, Point c, Point d, double f, double g) {
+//	int xpd = b.x-a.x;
+//	int ypd = b.y-a.y;
+	int gx = b.y-a.y;
+	int gy = a.x-b.x;
+	g /= Math.sqrt(gx*gx+gy*gy);
+	c.x = (int) Math.floor(a.x*(1-f)+b.x*f+g*gx+.48);
+	c.y = (int) Math.floor(a.y*(1-f)+b.y*f+g*gy+.48);
+	d.x = (int) Math.floor(a.x*(1-f)+b.x*f-g*gx+.48);
+	d.y = (int) Math.floor(a.y*(1-f)+b.y*f-g*gy+.48);
+    }
+    
+    Point [] newPointArray(int n) {
+	Point a[] = new Point[n];
+	while (n > 0)
+	    a[--n] = new Point();
+	return a;
+    }
+    
+    // number of voltage sources this element needs 
+    int getVoltageSourceCount() { return (device != null) ? device.getVoltageSourceCount() : 0; }
+    
+    // number of internal nodes (nodes not visible in UI that are needed for implementation)
+    int getInternalNodeCount() { return (device != null) ? device.getInternalNodeCount() : 0; }
+    
+    // notify this element that its pth node is n.  This value n can be passed to stampMatrix()
+    void setNode(int p, int n) {
+	nodes[p] = n;
+	if (device != null)
+	    device.setNode(p, n);
+    }
+    
+    // notify this element that its nth voltage source is v.  This value v can be passed to stampVoltageSource(), etc and will be passed back in calls to setCurrent()
+    void setVoltageSource(int n, int v) {
+	if (device != null) {
+	    device.setVoltageSource(n, v);
+	    return;
+	}
+	// default implementation only makes sense for subclasses with one voltage source.  If we have 0 this isn't used, if we have >1 this won't work 
+	voltSource = v;
+    }
+    
+    double getVoltageDiff() {
+	return volts[0] - volts[1];
+    }
+    boolean nonLinear() { return device != null && device.nonLinear(); }
+    int getPostCount() { return (device != null) ? device.getPostCount() : 2; }
+    
+    // get (global) node number of nth node
+    int getNode(int n) { return nodes[n]; }
+    
+    // get position of nth node
+    Point getPost(int n) {
+	if (devicePosts != null)
+	    return devicePosts[n];
+	return (n == 0) ? point1 : (n == 1) ? point2 : null;
+    }
+    
+    // return post we're connected to (for wires, so we can optimize them out in calculateWireClosure())
+    Point getConnectedPost() {
+	return point2;
+    }
+    
+    int getNodeAtPoint(int xp, int yp) {
+	int i;
+	for (i = 0; i != getPostCount(); i++) {
+	    Point p = getPost(i);
+	    if (p.x == xp && p.y == yp)
+		return i;
+	}
+	return 0;
+    }
+    
+    // get number of nodes that can be retrieved by getConnectionNode()
+    int getConnectionNodeCount() { return getPostCount(); }
+    
+    // get nodes that can be passed to getConnection(), to test if this element connects
+    // those two nodes; this is the same as getNode() for all but labeled nodes.
+    int getConnectionNode(int n) { return getNode(n); }
+    
+    // are n1 and n2 connected by this element?  this is used to determine
+    // unconnected nodes, and look for loops
+    boolean getConnection(int n1, int n2) { return device == null || device.getConnection(n1, n2); }
+    
+    // is n1 connected to ground somehow?
+    boolean hasGroundConnection(int n1) { return device != null && device.hasGroundConnection(n1); }
+    
+    // is this a wire or equivalent to a wire?  (used for circuit validation)
+    boolean isWireEquivalent() { return device != null && device.isWireEquivalent(); }
+    
+    // is this a wire we can remove?
+    boolean isRemovableWire() { return device != null && device.isRemovableWire(); }
+    
+    static int abs(int x) { return x < 0 ? -x : x; }
+    static int sign(int x) { return (x < 0) ? -1 : (x == 0) ? 0 : 1; }
+    static int min(int a, int b) { return (a < b) ? a : b; }
+    static int max(int a, int b) { return (a > b) ? a : b; }
+
+    void stepFinished() {
+	if (device != null)
+	    device.stepFinished();
+    }
+
+    // largest timestep that keeps the local truncation error of this element's next step within
+    // tolerance, used when the timestep is adjusted automatically.  Elements without state
+    // that is integrated over time have no limit.
+    double getTimeStepLimit() { return (device != null) ? device.getTimeStepLimit() : Double.MAX_VALUE; }
+
+    // call sim.addBreakpoint() with the next time after sim.t at which this element's output
+    // jumps or has a corner, so the timestep can be adjusted to land on it
+    void registerBreakpoints() {
+	if (device != null)
+	    device.registerBreakpoints();
+    }
+
+    // true if this element only couples its nodes using values from earlier timesteps, so the
+    // circuit can be split here into partitions with separate timesteps (see MultirateStepper)
+    boolean isPartitionBoundary() { return device != null && device.isPartitionBoundary(); }
+
+    // number of values (besides node voltages) this element carries from one timestep to the
+    // next, used by LinearFastForward.  -1 means we can't fast-forward a circuit containing this
+    // element, because it is nonlinear, has state we don't know about, or has sources that
+    // change between breakpoints.
+    int getStateCount() { return (device != null) ? device.getStateCount() : -1; }
+    void getState(double s[], int off) {
+	if (device != null)
+	    device.getState(s, off);
+    }
+    void setState(double s[], int off) {
+	if (device != null)
+	    device.setState(s, off);
+    }
+    
+    // get current flowing into node n out of this element
+    double getCurrentIntoNode(int n) {
+	if (device != null)
+	    return device.getCurrentIntoNode(n);
+	// if we take out the getPostCount() == 2 it gives the wrong value for rails
+	if (n==0 && getPostCount() == 2)
+	    return -current;
+	else
+	    return current;
+    }
+}
@@ -55,15 +55,15 @@ class SipoShiftElm extends ChipElm {
 	void setupPins() {
 		sizeX = bits + 1;
 		sizeY = 3;
-		pins = new Pin[getPostCount()];
+		allocPins(getPostCount());
 		
-		pins[0] = new Pin(1, SIDE_W, "D");
-		pins[1] = new Pin(2, SIDE_W, "");
+		pins[0] = new ChipPin(1, SIDE_W, "D");
+		pins[1] = new ChipPin(2, SIDE_W, "");
 		pins[1].clock = true;
 		
 		for (int i = 0; i < bits; i++) {
 			boolean value = pins[DATA_PIN_INDEX + i] != null ? pins[DATA_PIN_INDEX + i].value : false;
-			Pin pin = pins[DATA_PIN_INDEX + i] = new Pin(i + 1, SIDE_N, "Q" + i);
+			ChipPin pin = pins[DATA_PIN_INDEX + i] = new ChipPin(i + 1, SIDE_N, "Q" + i);
 			pin.value = value;
 			pin.output = true;
 		}
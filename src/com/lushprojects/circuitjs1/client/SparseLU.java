@@ -0,0 +1,368 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// LU factorization of a SparseMatrix, used for large circuits.
+// This is a left-looking (Gilbert-Peierls) factorization with partial pivoting: we compute
+// one column of L and U at a time by solving a sparse triangular system with the columns
+// we already have.  Only the entries reachable in the graph of L are touched, so the work
+// is proportional to the number of flops rather than n^3.
+//
+// The work is split into phases.  analyze() picks a fill-reducing column order, based only
+// on the nonzero pattern; it is called once from stampCircuit().  pivotFactor() does a full
+// factorization with pivoting, which determines the nonzero pattern of L and U.  factor()
+// then reuses the pivot order and pattern of L and U for a new matrix with the same pattern,
+// which is what happens on every subiteration of a nonlinear circuit, and only recomputes the
+// values.  It falls back to pivotFactor() if the pattern changed or a pivot got too small.
+class SparseLU implements MatrixSolver {
+    int n;
+
+    // the matrix being factored, in compressed column form
+    int ap[], ai[];
+    double ax[];
+
+    // L (unit diagonal stored first in each column) and U (diagonal stored last in
+    // each column), in compressed column form.  Row indices are in pivot order.
+    int lp[], li[];
+    double lx[];
+    int up[], ui[];
+    double ux[];
+    int lnz, unz;
+
+    // pinv[i] = k if row i was chosen as the kth pivot
+    int pinv[];
+
+    // colPerm[k] = column of the matrix that is eliminated kth
+    int colPerm[];
+
+    // number of nonzeros in the matrix when we last called analyze() and pivotFactor().  The pattern
+    // of a SparseMatrix only grows, so if the count is unchanged, the pattern is the same.
+    int analyzedNonzeros = -1, factoredNonzeros = -1;
+
+    // workspace
+    double x[];
+    int xi[], pstack[], mark[];
+    int markGen;
+
+    // prefer the diagonal entry as the pivot if it is at least this large relative to
+    // the largest entry in the column.  This keeps fill-in down.
+    static final double pivotTolerance = .001;
+
+    SparseLU(int n_) {
+	n = n_;
+	ap = new int[n+1];
+	lp = new int[n+1];
+	up = new int[n+1];
+	pinv = new int[n];
+	colPerm = new int[n];
+	int i;
+	for (i = 0; i != n; i++)
+	    colPerm[i] = i;
+	x = new double[n];
+	xi = new int[n];
+	pstack = new int[n];
+	mark = new int[n];
+	int cap = 4*n+4;
+	li = new int[cap];
+	lx = new double[cap];
+	ui = new int[cap];
+	ux = new double[cap];
+    }
+
+    // convert a to compressed column form
+    void loadMatrix(SparseMatrix a) {
+	int i, j, k;
+	int nz = a.getNonzeroCount();
+	if (ai == null || ai.length < nz) {
+	    ai = new int[nz];
+	    ax = new double[nz];
+	}
+	for (j = 0; j <= n; j++)
+	    ap[j] = 0;
+	for (i = 0; i != n; i++) {
+	    int cols[] = a.rowCols[i];
+	    for (k = 0; k != a.rowLength[i]; k++)
+		ap[cols[k]+1]++;
+	}
+	for (j = 0; j != n; j++)
+	    ap[j+1] += ap[j];
+	// use pstack to keep track of where the next entry in each column goes
+	for (j = 0; j != n; j++)
+	    pstack[j] = ap[j];
+	for (i = 0; i != n; i++) {
+	    int cols[] = a.rowCols[i];
+	    double vals[] = a.rowValues[i];
+	    for (k = 0; k != a.rowLength[i]; k++) {
+		int p = pstack[cols[k]]++;
+		ai[p] = i;
+		ax[p] = vals[k];
+	    }
+	}
+    }
+
+    void growL(int need) {
+	if (need <= li.length)
+	    return;
+	int cap = Math.max(need, li.length*2);
+	int nli[] = new int[cap];
+	double nlx[] = new double[cap];
+	System.arraycopy(li, 0, nli, 0, lnz);
+	System.arraycopy(lx, 0, nlx, 0, lnz);
+	li = nli;
+	lx = nlx;
+    }
+
+    void growU(int need) {
+	if (need <= ui.length)
+	    return;
+	int cap = Math.max(need, ui.length*2);
+	int nui[] = new int[cap];
+	double nux[] = new double[cap];
+	System.arraycopy(ui, 0, nui, 0, unz);
+	System.arraycopy(ux, 0, nux, 0, unz);
+	ui = nui;
+	ux = nux;
+    }
+
+    // find the rows reachable from row j in the graph of L (the nonzero pattern of the
+    // solution), and push them onto xi[top-1], xi[top-2], ... in topological order.
+    // Returns the new top.  Nonrecursive depth-first search.
+    int depthFirstSearch(int j, int top) {
+	int head = 0;
+	// the DFS stack is kept at the bottom of xi; the output grows down from the top.
+	// pstack[] holds the position we reached in each stacked column of L.
+	xi[0] = j;
+	while (head >= 0) {
+	    j = xi[head];
+	    int jnew = pinv[j];
+	    if (mark[j] != markGen) {
+		mark[j] = markGen;
+		pstack[head] = (jnew < 0) ? 0 : lp[jnew]+1;
+	    }
+	    boolean done = true;
+	    int p2 = (jnew < 0) ? 0 : lp[jnew+1];
+	    int p;
+	    for (p = pstack[head]; p < p2; p++) {
+		int i = li[p];
+		if (mark[i] == markGen)
+		    continue;
+		pstack[head] = p+1;
+		xi[++head] = i;
+		done = false;
+		break;
+	    }
+	    if (done) {
+		head--;
+		xi[--top] = j;
+	    }
+	}
+	return top;
+    }
+
+    // symbolic analysis: compute fill-reducing column order for matrices with a's pattern
+    void analyze(SparseMatrix a) {
+	colPerm = MatrixOrdering.minimumDegree(a);
+	analyzedNonzeros = a.getNonzeroCount();
+	factoredNonzeros = -1;
+    }
+
+    // factor the matrix, choosing new pivots.  returns false if it is singular.
+    boolean pivotFactor(SparseMatrix a) {
+	// nonlinear elements may add entries the first time doStep() is called.  Redo the
+	// ordering if that happened.
+	if (a.getNonzeroCount() != analyzedNonzeros)
+	    analyze(a);
+	factoredNonzeros = -1;
+	loadMatrix(a);
+	int i, k, p;
+	for (i = 0; i != n; i++) {
+	    pinv[i] = -1;
+	    x[i] = 0;
+	}
+	lnz = unz = 0;
+	for (k = 0; k != n; k++) {
+	    lp[k] = lnz;
+	    up[k] = unz;
+	    growL(lnz+n);
+	    growU(unz+n);
+
+	    // find nonzero pattern of column k of L\A
+	    int col = colPerm[k];
+	    markGen++;
+	    int top = n;
+	    for (p = ap[col]; p != ap[col+1]; p++)
+		if (mark[ai[p]] != markGen)
+		    top = depthFirstSearch(ai[p], top);
+
+	    // scatter column into x and solve with L.  During factorization L's row
+	    // indices are original row numbers; we fix them up at the end.
+	    for (p = ap[col]; p != ap[col+1]; p++)
+		x[ai[p]] += ax[p];
+	    int px;
+	    for (px = top; px != n; px++) {
+		int j = xi[px];
+		int jnew = pinv[j];
+		if (jnew < 0)
+		    continue;
+		double xj = x[j];
+		for (p = lp[jnew]+1; p < lp[jnew+1]; p++)
+		    x[li[p]] -= lx[p]*xj;
+	    }
+
+	    // find pivot, and store upper triangular part of column
+	    int ipiv = -1;
+	    double largest = -1;
+	    for (px = top; px != n; px++) {
+		i = xi[px];
+		if (pinv[i] < 0) {
+		    double t = Math.abs(x[i]);
+		    if (t > largest) {
+			largest = t;
+			ipiv = i;
+		    }
+		} else {
+		    ui[unz] = pinv[i];
+		    ux[unz++] = x[i];
+		}
+	    }
+	    if (ipiv == -1 || !(largest > 0))
+		return false;
+	    if (pinv[col] < 0 && Math.abs(x[col]) >= largest*pivotTolerance)
+		ipiv = col;
+
+	    // diagonal of U, and lower triangular part of column
+	    double pivot = x[ipiv];
+	    ui[unz] = k;
+	    ux[unz++] = pivot;
+	    pinv[ipiv] = k;
+	    li[lnz] = ipiv;
+	    lx[lnz++] = 1;
+	    double mult = 1/pivot;
+	    for (px = top; px != n; px++) {
+		i = xi[px];
+		if (pinv[i] < 0) {
+		    li[lnz] = i;
+		    lx[lnz++] = x[i]*mult;
+		}
+		x[i] = 0;
+	    }
+	}
+	lp[n] = lnz;
+	up[n] = unz;
+
+	// convert row indices of L to pivot order
+	for (p = 0; p != lnz; p++)
+	    li[p] = pinv[li[p]];
+	factoredNonzeros = analyzedNonzeros;
+	return true;
+    }
+
+    // factor a matrix with the same nonzero pattern as the last one we factored, using the
+    // same pivots.  If that doesn't work, do a full factorization.
+    public boolean factor(SparseMatrix a) {
+	if (factoredNonzeros < 0 || a.getNonzeroCount() != factoredNonzeros)
+	    return pivotFactor(a);
+	loadMatrix(a);
+	if (refactorNumeric())
+	    return true;
+	return pivotFactor(a);
+    }
+
+    // numeric part of factor().  We work in pivot order here, so x[k] is the kth pivot row.
+    boolean refactorNumeric() {
+	int k, p, q;
+	for (k = 0; k != n; k++) {
+	    int col = colPerm[k];
+	    for (p = ap[col]; p != ap[col+1]; p++)
+		x[pinv[ai[p]]] += ax[p];
+
+	    // upper triangular part.  the entries are stored in topological order, so each
+	    // one is final by the time we get to it.
+	    int uend = up[k+1]-1;
+	    for (p = up[k]; p != uend; p++) {
+		int j = ui[p];
+		double xj = x[j];
+		ux[p] = xj;
+		x[j] = 0;
+		if (xj == 0)
+		    continue;
+		for (q = lp[j]+1; q < lp[j+1]; q++)
+		    x[li[q]] -= lx[q]*xj;
+	    }
+
+	    // make sure the old pivot is still acceptable
+	    double pivot = x[k];
+	    x[k] = 0;
+	    double largest = 0;
+	    for (p = lp[k]+1; p < lp[k+1]; p++)
+		largest = Math.max(largest, Math.abs(x[li[p]]));
+	    if (!(Math.abs(pivot) > largest*pivotTolerance) || Double.isInfinite(pivot)) {
+		for (p = 0; p != n; p++)
+		    x[p] = 0;
+		return false;
+	    }
+	    ux[uend] = pivot;
+	    double mult = 1/pivot;
+	    for (p = lp[k]+1; p < lp[k+1]; p++) {
+		int i = li[p];
+		lx[p] = x[i]*mult;
+		x[i] = 0;
+	    }
+	}
+	return true;
+    }
+
+    public String getName() { return "sparse"; }
+
+    // the ordering and pivots only depend on the pattern, and factor() will check the pivots
+    public boolean updateValues(SparseMatrix a) { return true; }
+
+    // solve the system using the factorization.  On input, b is the right hand side,
+    // and on output it contains the solution.
+    public void solve(double b[]) {
+	int i, j, p;
+	for (i = 0; i != n; i++)
+	    x[pinv[i]] = b[i];
+
+	// forward substitution with L
+	for (j = 0; j != n; j++) {
+	    double xj = x[j];
+	    if (xj == 0)
+		continue;
+	    for (p = lp[j]+1; p < lp[j+1]; p++)
+		x[li[p]] -= lx[p]*xj;
+	}
+
+	// back substitution with U
+	for (j = n-1; j >= 0; j--) {
+	    double xj = x[j] / ux[up[j+1]-1];
+	    x[j] = xj;
+	    if (xj == 0)
+		continue;
+	    for (p = up[j]; p < up[j+1]-1; p++)
+		x[ui[p]] -= ux[p]*xj;
+	}
+
+	for (i = 0; i != n; i++) {
+	    b[colPerm[i]] = x[i];
+	    x[i] = 0;
+	}
+    }
+}
@@ -0,0 +1,177 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// square matrix that only stores the nonzero entries of each row.  Large circuits have only
+// a handful of nonzero entries per row, so a double[n][n] wastes a lot of memory and time.
+// Entries are never removed once they are created, so the pattern only grows; values that
+// become zero are kept as explicit zeroes.  A copy made with copy() has the same pattern as
+// the original, and entries added to the copy later are appended to the end of each row.
+//
+// For nonlinear circuits, we turn on journaling after the circuit is stamped.  Then every
+// entry changed in doStep() is recorded, so restoreJournal() can put back the original
+// values before the next subiteration without copying the whole matrix.
+class SparseMatrix {
+    int size;
+    int rowCols[][];
+    double rowValues[][];
+    int rowLength[];
+
+    boolean journaling;
+    int journalRows[], journalIndex[];
+    int journalLength;
+
+    SparseMatrix(int n) {
+	size = n;
+	rowCols = new int[n][];
+	rowValues = new double[n][];
+	rowLength = new int[n];
+	int i;
+	for (i = 0; i != n; i++) {
+	    rowCols[i] = new int[4];
+	    rowValues[i] = new double[4];
+	}
+    }
+
+    // return index of entry (i,j) in row i, or -1 if there is no such entry
+    int find(int i, int j) {
+	int cols[] = rowCols[i];
+	int k;
+	for (k = rowLength[i]-1; k >= 0; k--)
+	    if (cols[k] == j)
+		return k;
+	return -1;
+    }
+
+    // return index of entry (i,j) in row i, creating it if necessary
+    int findOrCreate(int i, int j) {
+	int k = find(i, j);
+	if (k >= 0)
+	    return k;
+	k = rowLength[i];
+	if (k == rowCols[i].length) {
+	    int ncols[] = new int[k*2];
+	    double nvals[] = new double[k*2];
+	    System.arraycopy(rowCols[i], 0, ncols, 0, k);
+	    System.arraycopy(rowValues[i], 0, nvals, 0, k);
+	    rowCols[i] = ncols;
+	    rowValues[i] = nvals;
+	}
+	rowCols[i][k] = j;
+	rowValues[i][k] = 0;
+	rowLength[i] = k+1;
+	return k;
+    }
+
+    void add(int i, int j, double x) {
+	int k = findOrCreate(i, j);
+	rowValues[i][k] += x;
+	if (journaling)
+	    addToJournal(i, k);
+    }
+
+    void startJournal() {
+	journaling = true;
+	journalLength = 0;
+	if (journalRows == null) {
+	    journalRows = new int[64];
+	    journalIndex = new int[64];
+	}
+    }
+
+    void addToJournal(int i, int k) {
+	if (journalLength == journalRows.length) {
+	    int nr[] = new int[journalLength*2];
+	    int ni[] = new int[journalLength*2];
+	    System.arraycopy(journalRows, 0, nr, 0, journalLength);
+	    System.arraycopy(journalIndex, 0, ni, 0, journalLength);
+	    journalRows = nr;
+	    journalIndex = ni;
+	}
+	journalRows[journalLength] = i;
+	journalIndex[journalLength++] = k;
+    }
+
+    // undo all changes since the last call, restoring the values from src, which must be the
+    // matrix we were copied from.  Entries which were added since the copy are set to zero.
+    void restoreJournal(SparseMatrix src) {
+	int p;
+	for (p = 0; p != journalLength; p++) {
+	    int i = journalRows[p];
+	    int k = journalIndex[p];
+	    rowValues[i][k] = (k < src.rowLength[i]) ? src.rowValues[i][k] : 0;
+	}
+	journalLength = 0;
+    }
+
+    void set(int i, int j, double x) {
+	int k = findOrCreate(i, j);
+	rowValues[i][k] = x;
+	if (journaling)
+	    addToJournal(i, k);
+    }
+
+    double get(int i, int j) {
+	int k = find(i, j);
+	return (k < 0) ? 0 : rowValues[i][k];
+    }
+
+    int getNonzeroCount() {
+	int i, nz = 0;
+	for (i = 0; i != size; i++)
+	    nz += rowLength[i];
+	return nz;
+    }
+
+    // make a copy with the same pattern
+    SparseMatrix copy() {
+	SparseMatrix m = new SparseMatrix(size);
+	int i;
+	for (i = 0; i != size; i++) {
+	    int len = rowLength[i];
+	    int cap = Math.max(len, 4);
+	    m.rowCols[i] = new int[cap];
+	    m.rowValues[i] = new double[cap];
+	    System.arraycopy(rowCols[i], 0, m.rowCols[i], 0, len);
+	    System.arraycopy(rowValues[i], 0, m.rowValues[i], 0, len);
+	    m.rowLength[i] = len;
+	}
+	return m;
+    }
+
+    // make a copy with rows and columns renumbered, so entry (i,j) moves to (inv[i],inv[j])
+    SparseMatrix permute(int inv[]) {
+	SparseMatrix m = new SparseMatrix(size);
+	int i, k;
+	for (i = 0; i != size; i++)
+	    for (k = 0; k != rowLength[i]; k++)
+		m.add(inv[i], inv[rowCols[i][k]], rowValues[i][k]);
+	return m;
+    }
+
+    double[][] toDense() {
+	double a[][] = new double[size][size];
+	int i, k;
+	for (i = 0; i != size; i++)
+	    for (k = 0; k != rowLength[i]; k++)
+		a[i][rowCols[i][k]] += rowValues[i][k];
+	return a;
+    }
+}
@@ -149,6 +149,18 @@ class SweepElm extends CircuitElm {
     void doStep() {
 	sim.updateVoltageSource(0, nodes[0], voltSource, v);
     }
+
+    // the frequency jumps back to minF when the sweep finishes
+    void registerBreakpoints() {
+	if ((flags & FLAG_BIDIR) != 0 || frequency <= 0)
+	    return;
+	double left;
+	if ((flags & FLAG_LOG) == 0)
+	    left = sweepTime*(maxF-frequency)/(maxF-minF);
+	else
+	    left = sweepTime*Math.log(maxF/frequency)/Math.log(maxF/minF);
+	sim.addBreakpoint(sim.t+left);
+    }
 	
     double getVoltageDiff() { return volts[0]; }
     int getVoltageSourceCount() { return 1; }
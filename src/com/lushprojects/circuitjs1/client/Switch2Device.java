@@ -0,0 +1,79 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// SPDT (or more throws) switch, for Switch2Elm.  The pole is connected to the selected throw
+// with a 0V voltage source.
+class Switch2Device extends SwitchDevice {
+    static final int FLAG_CENTER_OFF = 1;
+    int throwCount;
+    boolean centerOff;
+    // switches with the same nonzero link are toggled together
+    int link;
+
+    Switch2Device(CircuitEngine s) {
+	super(s);
+	throwCount = 2;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	super.undump(st, f);
+	link = new Integer(st.nextToken()).intValue();
+	try {
+	    throwCount = new Integer(st.nextToken()).intValue();
+	} catch (Exception e) { }
+	centerOff = (f & FLAG_CENTER_OFF) != 0;
+    }
+
+    // this is for backwards compatibility only.  we only support it if throwCount = 2
+    boolean hasCenterOff() { return centerOff && throwCount == 2; }
+
+    int getPostCount() { return 1+throwCount; }
+    boolean isWireEquivalent() { return true; }
+
+    // optimizing out this element is too complicated to be worth it (see #646)
+    boolean isRemovableWire() { return false; }
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return -current;
+	if (n == position+1)
+	    return current;
+	return 0;
+    }
+    void calculateCurrent() {
+	if (position == 2 && hasCenterOff())
+	    current = 0;
+    }
+
+    void stamp() {
+	if (position == 2 && hasCenterOff()) // in center?
+	    return;
+	sim.stampVoltageSource(nodes[0], nodes[position+1], voltSource, 0);
+    }
+
+    int getVoltageSourceCount() {
+	return (position == 2 && hasCenterOff()) ? 0 : 1;
+    }
+    boolean getConnection(int n1, int n2) {
+	if (position == 2 && hasCenterOff())
+	    return false;
+	return comparePair(n1, n2, 0, 1+position);
+    }
+}
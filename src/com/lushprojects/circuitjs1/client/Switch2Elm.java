@@ -22,33 +22,31 @@ package com.lushprojects.circuitjs1.client;
 // SPDT switch
 
     class Switch2Elm extends SwitchElm {
-	int link;
-	int throwCount;
+	Switch2Device sw2;
 	static final int FLAG_CENTER_OFF = 1;
 	
 	public Switch2Elm(int xx, int yy) {
 	    super(xx, yy, false);
 	    noDiagonal = true;
-	    throwCount = 2;
 	}
 	Switch2Elm(int xx, int yy, boolean mm) {
 	    super(xx, yy, mm);
 	    noDiagonal = true;
-	    throwCount = 2;
 	}
 	public Switch2Elm(int xa, int ya, int xb, int yb, int f,
 			  StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    link = new Integer(st.nextToken()).intValue();
-	    throwCount = 2;
-	    try {
-		throwCount = new Integer(st.nextToken()).intValue();
-	    } catch (Exception e) { }
+	    allocNodes();
 	    noDiagonal = true;
 	}
+	SwitchDevice createDevice() {
+	    sw2 = new Switch2Device(sim);
+	    sw2.centerOff = (flags & FLAG_CENTER_OFF) != 0;
+	    return sw2;
+	}
 	int getDumpType() { return 'S'; }
 	String dump() {
-	    return super.dump() + " " + link + " " + throwCount;
+	    return super.dump() + " " + sw2.link + " " + sw2.throwCount;
 	}
 
 	final int openhs = 16;
@@ -56,23 +54,23 @@ package com.lushprojects.circuitjs1.client;
 	void setPoints() {
 	    super.setPoints();
 	    calcLeads(32);
-	    swposts = newPointArray(throwCount);
-	    swpoles = newPointArray(2+throwCount);
+	    swposts = newPointArray(sw2.throwCount);
+	    swpoles = newPointArray(2+sw2.throwCount);
 	    int i;
-	    for (i = 0; i != throwCount; i++) {
-		int hs = -openhs*(i-(throwCount-1)/2);
-		if (throwCount == 2 && i == 0)
+	    for (i = 0; i != sw2.throwCount; i++) {
+		int hs = -openhs*(i-(sw2.throwCount-1)/2);
+		if (sw2.throwCount == 2 && i == 0)
 		    hs = openhs;
 		interpPoint(lead1,  lead2,  swpoles[i], 1, hs);
 		interpPoint(point1, point2, swposts[i], 1, hs);
 	    }
 	    swpoles[i] = lead2; // for center off
-	    posCount = hasCenterOff() ? 3 : throwCount;
+	    posCount = hasCenterOff() ? 3 : sw2.throwCount;
 	}
 	
 	void draw(Graphics g) {
 	    setBbox(point1, point2, openhs);
-	    adjustBbox(swposts[0], swposts[throwCount-1]);
+	    adjustBbox(swposts[0], swposts[sw2.throwCount-1]);
 
 	    // draw first lead
 	    setVoltageColor(g, volts[0]);
@@ -80,7 +78,7 @@ package com.lushprojects.circuitjs1.client;
 
 	    // draw other leads
 	    int i;
-	    for (i = 0; i != throwCount; i++) {
+	    for (i = 0; i != sw2.throwCount; i++) {
 		setVoltageColor(g, volts[i+1]);
 		drawThickLine(g, swpoles[i], swposts[i]);
 	    }
@@ -88,74 +86,39 @@ package com.lushprojects.circuitjs1.client;
 	    // draw switch
 	    if (!needsHighlight())
 		g.setColor(whiteColor);
-	    drawThickLine(g, lead1, swpoles[position]);
+	    drawThickLine(g, lead1, swpoles[sw.position]);
 	    
 	    updateDotCount();
 	    drawDots(g, point1, lead1, curcount);
-	    if (!(position == 2 && hasCenterOff()))
-		drawDots(g, swpoles[position], swposts[position], curcount);
+	    if (!(sw.position == 2 && hasCenterOff()))
+		drawDots(g, swpoles[sw.position], swposts[sw.position], curcount);
 	    drawPosts(g);
 	}
 	
-	double getCurrentIntoNode(int n) {
-	    if (n == 0)
-		return -current;
-	    if (n == position+1)
-		return current;
-	    return 0;
-	}
-
 	Rectangle getSwitchRect() {
-	    return new Rectangle(lead1).union(new Rectangle(swpoles[0])).union(new Rectangle(swpoles[throwCount-1]));
+	    return new Rectangle(lead1).union(new Rectangle(swpoles[0])).union(new Rectangle(swpoles[sw2.throwCount-1]));
 	}	
 
 	Point getPost(int n) {
 	    return (n == 0) ? point1 : swposts[n-1];
 	}
-	int getPostCount() { return 1+throwCount; }
-	void calculateCurrent() {
-	    if (position == 2 && hasCenterOff())
-		current = 0;
-	}
-	
-	void stamp() {
-	    if (position == 2 && hasCenterOff()) // in center?
-		return;
-	    sim.stampVoltageSource(nodes[0], nodes[position+1], voltSource, 0);
-	}
-		
-	int getVoltageSourceCount() {
-	    return (position == 2 && hasCenterOff()) ? 0 : 1; 	    
-	}
-	
 	void toggle() {
 	    super.toggle();
-	    if (link != 0) {
+	    if (sw2.link != 0) {
 		int i;
 		for (i = 0; i != sim.elmList.size(); i++) {
 		    Object o = sim.elmList.elementAt(i);
 		    if (o instanceof Switch2Elm) {
 			Switch2Elm s2 = (Switch2Elm) o;
-			if (s2.link == link)
-			    s2.position = position;
+			if (s2.sw2.link == sw2.link)
+			    s2.sw.position = sw.position;
 		    }
 		}
 	    }
 	}
-	boolean getConnection(int n1, int n2) {
-	    if (position == 2 && hasCenterOff())
-		return false;
-	    return comparePair(n1, n2, 0, 1+position);
-	}
-	
-	boolean isWireEquivalent() { return true; }
-	
-	// optimizing out this element is too complicated to be worth it (see #646)
-	boolean isRemovableWire() { return false; }
-	
 	void getInfo(String arr[]) {
-	    arr[0] = "switch (" + (link == 0 ? "S" : "D") + "P" +
-		    ((throwCount > 2) ? throwCount+"T)" : "DT)");
+	    arr[0] = "switch (" + (sw2.link == 0 ? "S" : "D") + "P" +
+		    ((sw2.throwCount > 2) ? sw2.throwCount+"T)" : "DT)");
 	    arr[1] = "I = " + getCurrentDText(getCurrent());
 	}
 	public EditInfo getEditInfo(int n) {
@@ -165,9 +128,9 @@ package com.lushprojects.circuitjs1.client;
 	    	return ei;
 	    }*/
 	    if (n == 1)
-	    	return new EditInfo("Switch Group", link, 0, 100).setDimensionless();
+	    	return new EditInfo("Switch Group", sw2.link, 0, 100).setDimensionless();
 	    if (n == 2)
-	    	return new EditInfo("# of Throws", throwCount, 2, 10).setDimensionless();
+	    	return new EditInfo("# of Throws", sw2.throwCount, 2, 10).setDimensionless();
 	    return super.getEditInfo(n);
 	}
 	public void setEditValue(int n, EditInfo ei) {
@@ -176,24 +139,23 @@ package com.lushprojects.circuitjs1.client;
 	    	if (ei.checkbox.getState())
 	    		flags |= FLAG_CENTER_OFF;
 	    	if (hasCenterOff())
-	    		momentary = false;
+	    		sw.momentary = false;
 	    	setPoints();
 	    } else*/
 	    if (n == 1) {
-	    	link = (int) ei.value;
+	    	sw2.link = (int) ei.value;
 	    } else if (n == 2) {
 		if (ei.value >= 2)
-		    throwCount = (int) ei.value;
-		if (throwCount > 2)
-		    momentary = false;
+		    sw2.throwCount = (int) ei.value;
+		if (sw2.throwCount > 2)
+		    sw.momentary = false;
 		allocNodes();
 		setPoints();
 	    } else
 	    	super.setEditValue(n, ei);
 	}
 	
-	// this is for backwards compatibility only.  we only support it if throwCount = 2
-	boolean hasCenterOff() { return (flags & FLAG_CENTER_OFF) != 0 && throwCount == 2; }
+	boolean hasCenterOff() { return sw2.hasCenterOff(); }
 	
 	int getShortcut() { return 'S'; }
     }
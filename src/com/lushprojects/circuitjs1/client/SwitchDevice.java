@@ -0,0 +1,53 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// SPST switch, for SwitchElm.  When closed the simulator merges the two posts like a wire,
+// so there's nothing to stamp.
+class SwitchDevice extends Device {
+    // position 0 == closed, position 1 == open
+    int position;
+    boolean momentary;
+
+    SwitchDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	// old dumps have true or false, which is open for switches and high for logic inputs
+	String str = st.nextToken();
+	if (str.compareTo("true") == 0)
+	    position = (this instanceof LogicInputDevice) ? 0 : 1;
+	else if (str.compareTo("false") == 0)
+	    position = (this instanceof LogicInputDevice) ? 1 : 0;
+	else
+	    position = new Integer(str).intValue();
+	momentary = new Boolean(st.nextToken()).booleanValue();
+    }
+
+    void calculateCurrent() {
+	if (position == 1)
+	    current = 0;
+    }
+    boolean getConnection(int n1, int n2) { return position == 0; }
+    boolean isWireEquivalent() { return position == 0; }
+    boolean isRemovableWire() { return position == 0; }
+    int getStateCount() { return 0; }
+}
@@ -21,37 +21,32 @@ package com.lushprojects.circuitjs1.client;
 
 // SPST switch
 class SwitchElm extends CircuitElm {
-    boolean momentary;
-    // position 0 == closed, position 1 == open
-    int position, posCount;
+    int posCount;
+    SwitchDevice sw;
     public SwitchElm(int xx, int yy) {
 	super(xx, yy);
-	momentary = false;
-	position = 0;
+	setDevice(sw = createDevice());
+	sw.position = 0;
 	posCount = 2;
     }
     SwitchElm(int xx, int yy, boolean mm) {
 	super(xx, yy);
-	position = (mm) ? 1 : 0;
-	momentary = mm;
+	setDevice(sw = createDevice());
+	sw.position = (mm) ? 1 : 0;
+	sw.momentary = mm;
 	posCount = 2;
     }
     public SwitchElm(int xa, int ya, int xb, int yb, int f,
 		     StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	String str = st.nextToken();
-	if (str.compareTo("true") == 0)
-	    position = (this instanceof LogicInputElm) ? 0 : 1;
-	else if (str.compareTo("false") == 0)
-	     position = (this instanceof LogicInputElm) ? 1 : 0;
-	else
-	    position = new Integer(str).intValue();
-	momentary = new Boolean(st.nextToken()).booleanValue();
+	setDevice(sw = createDevice());
+	sw.undump(st, f);
 	posCount = 2;
     }
+    SwitchDevice createDevice() { return new SwitchDevice(sim); }
     int getDumpType() { return 's'; }
     String dump() {
-	return super.dump() + " " + position + " " + momentary;
+	return super.dump() + " " + sw.position + " " + sw.momentary;
     }
 
     Point ps, ps2;
@@ -65,13 +60,13 @@ class SwitchElm extends CircuitElm {
     final int openhs = 16;
 	
     void draw(Graphics g) {
-	int hs1 = (position == 1) ? 0 : 2;
-	int hs2 = (position == 1) ? openhs : 2;
+	int hs1 = (sw.position == 1) ? 0 : 2;
+	int hs2 = (sw.position == 1) ? openhs : 2;
 	setBbox(point1, point2, openhs);
 
 	draw2Leads(g);
 	    
-	if (position == 0)
+	if (sw.position == 0)
 	    doDots(g);
 	    
 	if (!needsHighlight())
@@ -88,23 +83,18 @@ class SwitchElm extends CircuitElm {
 	return new Rectangle(lead1).union(new Rectangle(lead2)).union(new Rectangle(ps));
     }
     
-    void calculateCurrent() {
-	if (position == 1)
-	    current = 0;
-    }
-    
     void mouseUp() {
-	if (momentary)
+	if (sw.momentary)
 	    toggle();
     }
     void toggle() {
-	position++;
-	if (position >= posCount)
-	    position = 0;
+	sw.position++;
+	if (sw.position >= posCount)
+	    sw.position = 0;
     }
     void getInfo(String arr[]) {
-	arr[0] = (momentary) ? "push switch (SPST)" : "switch (SPST)";
-	if (position == 1) {
+	arr[0] = (sw.momentary) ? "push switch (SPST)" : "switch (SPST)";
+	if (sw.position == 1) {
 	    arr[1] = "open";
 	    arr[2] = "Vd = " + getVoltageDText(getVoltageDiff());
 	} else {
@@ -113,20 +103,17 @@ class SwitchElm extends CircuitElm {
 	    arr[3] = "I = " + getCurrentDText(getCurrent());
 	}
     }
-    boolean getConnection(int n1, int n2) { return position == 0; }
-    boolean isWireEquivalent() { return position == 0; }
-    boolean isRemovableWire() { return position == 0; }
     public EditInfo getEditInfo(int n) {
 	if (n == 0) {
 	    EditInfo ei = new EditInfo("", 0, -1, -1);
-	    ei.checkbox = new Checkbox("Momentary Switch", momentary);
+	    ei.checkbox = new Checkbox("Momentary Switch", sw.momentary);
 	    return ei;
 	}
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
 	if (n == 0)
-	    momentary = ei.checkbox.getState();
+	    sw.momentary = ei.checkbox.getState();
     }
     int getShortcut() { return 's'; }
 }
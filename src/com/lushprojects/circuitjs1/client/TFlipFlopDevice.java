@@ -0,0 +1,79 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// simulation half of TFlipFlopElm
+class TFlipFlopDevice extends ChipDevice {
+    static final int FLAG_RESET = 2;
+    static final int FLAG_SET = 4;
+    boolean hasReset, hasSet;
+
+    TFlipFlopDevice(CircuitEngine s) {
+	super(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	hasSet = (f & FLAG_SET) != 0;
+	hasReset = (f & FLAG_RESET) != 0 || hasSet;
+	super.undump(st, f);
+	pins[2].value = !pins[1].value;
+    }
+
+    void setupPins() {
+	sizeX = 2;
+	sizeY = 3;
+	allocPins(4 + (hasReset ? 1 : 0) + (hasSet ? 1 : 0));
+	pins[0] = new ChipPin(0, SIDE_W, "T");
+	pins[1] = new ChipPin(0, SIDE_E, "Q");
+	pins[1].output = pins[1].state = true;
+	pins[2] = new ChipPin(hasSet?1:2, SIDE_E, "Q");
+	pins[2].output = true;
+	pins[2].lineOver = true;
+	pins[3] = new ChipPin(1, SIDE_W, "");
+	pins[3].clock = true;
+	if (!hasSet) {
+	    if (hasReset)
+		pins[4] = new ChipPin(2, SIDE_W, "R");
+	} else {
+	    pins[5] = new ChipPin(2, SIDE_W, "S");
+	    pins[4] = new ChipPin(2, SIDE_E, "R");
+	}
+    }
+
+    void reset() {
+	super.reset();
+	volts[2] = highVoltage;
+	pins[2].value = true;
+    }
+
+    void execute() {
+	if (pins[3].value && !lastClock) {
+	    if (pins[0].value) // if T = 1
+		pins[1].value = !pins[1].value;
+	    // else no change
+	}
+	if (hasSet && pins[5].value)
+	    pins[1].value = true;
+	if (hasReset && pins[4].value)
+	    pins[1].value = false;
+	pins[2].value = !pins[1].value;
+	lastClock = pins[3].value;
+    }
+}
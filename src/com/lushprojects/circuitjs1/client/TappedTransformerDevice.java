@@ -0,0 +1,173 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// center-tapped transformer, for TappedTransformerElm: the primary goes from node 0 to 1 and
+// the secondary from node 2 to 4, tapped at node 3
+class TappedTransformerDevice extends Device {
+    double inductance, ratio, couplingCoef;
+    double currents[];
+    int flags;
+
+    TappedTransformerDevice(CircuitEngine s) {
+	super(s);
+	inductance = 4;
+	ratio = 1;
+	couplingCoef = .99;
+	currents = new double[4];
+	voltdiff = new double[3];
+	curSourceValue = new double[3];
+	a = new double[9];
+    }
+
+    void undump(StringTokenizer st, int f) {
+	flags = f;
+	inductance = new Double(st.nextToken()).doubleValue();
+	ratio = new Double(st.nextToken()).doubleValue();
+	currents[0] = new Double(st.nextToken()).doubleValue();
+	currents[1] = new Double(st.nextToken()).doubleValue();
+	try {
+	    currents[2] = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) { }
+	try {
+	    couplingCoef = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) { }
+    }
+
+    int getPostCount() { return 5; }
+    boolean isTrapezoidal() { return (flags & Inductor.FLAG_BACK_EULER) == 0; }
+    void reset() {
+	super.reset();
+	currents[0] = currents[1] = currents[2] = currents[3] = 0;
+	// need to set current-source values here in case one of the nodes is node 0.  In that case
+	// calculateCurrent() may get called (from setNodeVoltage()) when analyzing circuit, before
+	// startIteration() gets called
+	curSourceValue[0] = curSourceValue[1] = curSourceValue[2] = 0;
+    }
+    double a[];
+    void stamp() {
+	// equations for transformer:
+	//   v1 = L1 di1/dt + M1 di2/dt + M1 di3/dt
+	//   v2 = M1 di1/dt + L2 di2/dt + M2 di3/dt
+	//   v3 = M1 di1/dt + M2 di2/dt + L2 di3/dt
+	// we invert that to get:
+	//   di1/dt = a1 v1 + a2 v2 + a3 v3
+	//   di2/dt = a4 v1 + a5 v2 + a6 v3
+	//   di3/dt = a7 v1 + a8 v2 + a9 v3
+	// integrate di1/dt using trapezoidal approx and we get:
+	//   i1(t2) = i1(t1) + dt/2 (i1(t1) + i1(t2))
+	//          = i1(t1) + a1 dt/2 v1(t1)+a2 dt/2 v2(t1)+a3 dt/2 v3(t1) +
+	//                     a1 dt/2 v1(t2)+a2 dt/2 v2(t2)+a3 dt/2 v3(t2)
+	// the norton equivalent of this for i1 is:
+	//  a. current source, I = i1(t1) + a1 dt/2 v1(t1) + a2 dt/2 v2(t1)
+	//                                + a3 dt/2 v3(t1)
+	//  b. resistor, G = a1 dt/2
+	//  c. current source controlled by voltage v2, G = a2 dt/2
+	//  d. current source controlled by voltage v3, G = a3 dt/2
+	// and similarly for i2, i3
+	// 
+	// first winding goes from node 0 to 1, second is from 2 to 3 to 4
+	double l1 = inductance;
+	// second winding is split in half, so each part has half the turns;
+	// we square the 1/2 to divide by 4
+	double l2 = inductance*ratio*ratio/4;
+	double m1 = couplingCoef*Math.sqrt(l1*l2);
+	// mutual inductance between two halves of the second winding
+	// is equal to self-inductance of either half (slightly less
+	// because the coupling is not perfect)
+	double m2 = couplingCoef*l2;
+	// load pre-inverted matrix
+	a[0] = l2+m2;
+	a[1] = a[2] = a[3] = a[6] = -m1;
+	a[4] = a[8] = (l1*l2-m1*m1)/(l2-m2);
+	a[5] = a[7] = (m1*m1-l1*m2)/(l2-m2);
+	int i;
+	double det = l1*(l2+m2)-2*m1*m1;
+	for (i = 0; i != 9; i++)
+	    a[i] *= (isTrapezoidal() ? sim.timeStep/2 : sim.timeStep)/det;
+	sim.stampConductance(nodes[0], nodes[1], a[0]);
+	sim.stampVCCurrentSource(nodes[0], nodes[1], nodes[2], nodes[3], a[1]);
+	sim.stampVCCurrentSource(nodes[0], nodes[1], nodes[3], nodes[4], a[2]);
+
+	sim.stampVCCurrentSource(nodes[2], nodes[3], nodes[0], nodes[1], a[3]);
+	sim.stampConductance    (nodes[2], nodes[3], a[4]);
+	sim.stampVCCurrentSource(nodes[2], nodes[3], nodes[3], nodes[4], a[5]);
+
+	sim.stampVCCurrentSource(nodes[3], nodes[4], nodes[0], nodes[1], a[6]);
+	sim.stampVCCurrentSource(nodes[3], nodes[4], nodes[2], nodes[3], a[7]);
+	sim.stampConductance    (nodes[3], nodes[4], a[8]);
+
+	for (i = 0; i != 5; i++)
+	    sim.stampRightSide(nodes[i]);
+    }
+    void startIteration() {
+	voltdiff[0] = volts[0]-volts[1];
+	voltdiff[1] = volts[2]-volts[3];
+	voltdiff[2] = volts[3]-volts[4];
+	int i, j;
+	for (i = 0; i != 3; i++) {
+	    curSourceValue[i] = currents[i];
+	    if (isTrapezoidal())
+		for (j = 0; j != 3; j++)
+		    curSourceValue[i] += a[i*3+j]*voltdiff[j];
+	}
+    }
+    double curSourceValue[], voltdiff[];
+    void doStep() {
+	sim.stampCurrentSource(nodes[0], nodes[1], curSourceValue[0]);
+	sim.stampCurrentSource(nodes[2], nodes[3], curSourceValue[1]);
+	sim.stampCurrentSource(nodes[3], nodes[4], curSourceValue[2]);
+    }
+    void calculateCurrent() {
+	voltdiff[0] = volts[0]-volts[1];
+	voltdiff[1] = volts[2]-volts[3];
+	voltdiff[2] = volts[3]-volts[4];
+	int i, j;
+	for (i = 0; i != 3; i++) {
+	    currents[i] = curSourceValue[i];
+	    for (j = 0; j != 3; j++)
+		currents[i] += a[i*3+j]*voltdiff[j];
+	}
+	// calc current of tap wire
+	currents[3] = currents[1]-currents[2];
+    }
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return -currents[0];
+	if (n == 1)
+	    return currents[0];
+	if (n == 2)
+	    return -currents[1];
+	if (n == 3)
+	    return currents[3];
+	return currents[2];
+    }
+    boolean getConnection(int n1, int n2) {
+	if (comparePair(n1, n2, 0, 1))
+	    return true;
+	if (comparePair(n1, n2, 2, 3))
+	    return true;
+	if (comparePair(n1, n2, 3, 4))
+	    return true;
+	if (comparePair(n1, n2, 2, 4))
+	    return true;
+	return false;
+    }
+}
@@ -54,11 +54,11 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 2;
-	    pins = new Pin[4];
-	    pins[0] = new Pin(1, SIDE_W, "Vin");
-	    pins[1] = new Pin(1, SIDE_E, "gnd");
-	    pins[2] = new Pin(0, SIDE_W, "in");
-	    pins[3] = new Pin(0, SIDE_E, "out");
+	    allocPins(4);
+	    pins[0] = new ChipPin(1, SIDE_W, "Vin");
+	    pins[1] = new ChipPin(1, SIDE_E, "gnd");
+	    pins[2] = new ChipPin(0, SIDE_W, "in");
+	    pins[3] = new ChipPin(0, SIDE_E, "out");
 	}
 	
 	boolean nonLinear() { return true; }
@@ -43,18 +43,18 @@ class TimerElm extends ChipElm {
     void setupPins() {
 	sizeX = 3;
 	sizeY = 5;
-	pins = new Pin[8];
-	pins[N_DIS] = new Pin(1, SIDE_W, usePinNames() ? "dis" : "7");
-	pins[N_TRIG] = new Pin(3, SIDE_W, usePinNames() ? "tr" : "2");
+	allocPins(8);
+	pins[N_DIS] = new ChipPin(1, SIDE_W, usePinNames() ? "dis" : "7");
+	pins[N_TRIG] = new ChipPin(3, SIDE_W, usePinNames() ? "tr" : "2");
         if (usePinNames())
 	    pins[N_TRIG].lineOver = true;
-	pins[N_THRES] = new Pin(4, SIDE_W, usePinNames() ? "th" : "6");
-	pins[N_VIN] = new Pin(1, SIDE_N, usePinNames() ? "Vin" : "8");
-	pins[N_CTL] = new Pin(1, SIDE_S, usePinNames() ? "ctl" : "5");
-	pins[N_OUT] = new Pin(2, SIDE_E, usePinNames() ? "out" : "3");
+	pins[N_THRES] = new ChipPin(4, SIDE_W, usePinNames() ? "th" : "6");
+	pins[N_VIN] = new ChipPin(1, SIDE_N, usePinNames() ? "Vin" : "8");
+	pins[N_CTL] = new ChipPin(1, SIDE_S, usePinNames() ? "ctl" : "5");
+	pins[N_OUT] = new ChipPin(2, SIDE_E, usePinNames() ? "out" : "3");
 	pins[N_OUT].state = true;
-	pins[N_RST] = new Pin(1, SIDE_E, usePinNames() ? "rst" : "4");
-	pins[N_GND] = new Pin(2, SIDE_S, usePinNames() ? "gnd" : "1");
+	pins[N_RST] = new ChipPin(1, SIDE_E, usePinNames() ? "rst" : "4");
+	pins[N_GND] = new ChipPin(2, SIDE_S, usePinNames() ? "gnd" : "1");
     }
     boolean nonLinear() { return true; }
     boolean hasReset() { return (flags & FLAG_RESET) != 0 || hasGroundPin(); }
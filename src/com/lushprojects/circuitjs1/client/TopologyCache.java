@@ -0,0 +1,362 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+
+// Remembers how nodes were allocated in the last analysis, so small edits don't have to redo it
+// from scratch.  analyzeCircuit() normally computes the wire closure, picks the ground node and
+// then allocates nodes for each element in order.  Node numbers depend on the order of elements,
+// so we can reuse the allocation for every element before the first one that changed.  We undo
+// the allocation for the rest of the old elements (in reverse order) and then allocate nodes for
+// the rest of the new ones, which gives the same node numbers as a full analysis.  Adding an
+// element or editing the last one only touches that element.
+//
+// We can't undo the wire closure, so removing or changing a wire, labeled node or ground (or,
+// in circuits without ground, a voltage source or rail) still needs a full analysis.  New wires
+// at the end of the list can be handled, since they only join groups of posts together (see
+// join()).  We keep track of the nodes whose links changed, so calcWireInfo() only has to redo
+// the wires on those nodes.  Unconnected nodes, validation and stamping are still done for the
+// whole circuit.
+class TopologyCache {
+    // how each post was matched to a node
+    static final int POST_JOINED = 0;	// post joined an existing node
+    static final int POST_NEW    = 1;	// we allocated a new node for this post
+
+    CircuitEngine sim;
+
+    // true if the circuit has a ground element, so voltage sources don't pick the ground node
+    boolean gotGround;
+
+    int count;
+    SimElm elms[];
+    Point posts[][];
+    int nodes[][];
+    int kinds[][];
+    String labels[];
+    int voltageSourceCounts[];
+    // isRemovableWire() of each element (it changes when a switch is toggled)
+    boolean wires[];
+    // size of the node list after allocating nodes for each element
+    int nodeCounts[];
+
+    // nodes whose links changed in the last update(), in order, and the same as a set
+    Vector<CircuitNode> changedNodes;
+    HashSet<CircuitNode> changedSet;
+    // position of each element in elms[], made when needed by join()
+    HashMap<SimElm,Integer> elmIndex;
+
+    TopologyCache(CircuitEngine s) {
+	sim = s;
+	elms = new SimElm[16];
+	posts = new Point[16][];
+	nodes = new int[16][];
+	kinds = new int[16][];
+	labels = new String[16];
+	voltageSourceCounts = new int[16];
+	wires = new boolean[16];
+	nodeCounts = new int[16];
+    }
+
+    void grow() {
+	int n = elms.length*2;
+	SimElm ne[] = new SimElm[n];
+	Point np[][] = new Point[n][];
+	int nn[][] = new int[n][];
+	int nk[][] = new int[n][];
+	String nl[] = new String[n];
+	int nv[] = new int[n];
+	boolean nw[] = new boolean[n];
+	int nc[] = new int[n];
+	System.arraycopy(elms, 0, ne, 0, count);
+	System.arraycopy(posts, 0, np, 0, count);
+	System.arraycopy(nodes, 0, nn, 0, count);
+	System.arraycopy(kinds, 0, nk, 0, count);
+	System.arraycopy(labels, 0, nl, 0, count);
+	System.arraycopy(voltageSourceCounts, 0, nv, 0, count);
+	System.arraycopy(wires, 0, nw, 0, count);
+	System.arraycopy(nodeCounts, 0, nc, 0, count);
+	elms = ne;
+	posts = np;
+	nodes = nn;
+	kinds = nk;
+	labels = nl;
+	voltageSourceCounts = nv;
+	wires = nw;
+	nodeCounts = nc;
+    }
+
+    // label that determines which other elements a labeled node is connected to
+    static String getLabel(SimElm ce) {
+	return (ce.device instanceof LabeledNodeDevice) ? ((LabeledNodeDevice) ce.device).text : null;
+    }
+
+    // record the nodes just allocated for ce
+    void add(SimElm ce, int kind[]) {
+	if (count == elms.length)
+	    grow();
+	int pc = ce.getPostCount();
+	int nc = pc+ce.getInternalNodeCount();
+	Point p[] = new Point[pc];
+	int n[] = new int[nc];
+	int j;
+	for (j = 0; j != pc; j++)
+	    p[j] = new Point(ce.getPost(j));
+	for (j = 0; j != nc; j++)
+	    n[j] = ce.getNode(j);
+	elms[count] = ce;
+	posts[count] = p;
+	nodes[count] = n;
+	kinds[count] = kind;
+	labels[count] = getLabel(ce);
+	voltageSourceCounts[count] = ce.getVoltageSourceCount();
+	wires[count] = ce.isRemovableWire();
+	nodeCounts[count] = sim.nodeList.size();
+	count++;
+    }
+
+    // true if ce is the element we analyzed as element i, and its connections haven't changed
+    boolean isUnchanged(int i, SimElm ce) {
+	if (elms[i] != ce)
+	    return false;
+	int pc = ce.getPostCount();
+	if (pc != posts[i].length || pc+ce.getInternalNodeCount() != nodes[i].length ||
+		ce.getVoltageSourceCount() != voltageSourceCounts[i] || ce.isRemovableWire() != wires[i])
+	    return false;
+	int j;
+	for (j = 0; j != pc; j++)
+	    if (!posts[i][j].equals(ce.getPost(j)))
+		return false;
+	String label = getLabel(ce);
+	return (label == null) ? labels[i] == null : label.equals(labels[i]);
+    }
+
+    // can we add or remove ce without a full analysis?  wire is ce.isRemovableWire() at the time.
+    boolean isLocal(SimElm ce, boolean wire) {
+	if (wire || ce.device instanceof GroundDevice)
+	    return false;
+	if (!gotGround && ce.device instanceof VoltageDevice)
+	    return false;
+	return true;
+    }
+
+    // can we add ce at the end without a full analysis?  New wires are fine, and so is ground if
+    // we already have it (otherwise it changes the choice of ground node).
+    boolean canAdd(SimElm ce) {
+	if (ce.device instanceof GroundDevice)
+	    return gotGround;
+	return ce.isRemovableWire() || isLocal(ce, false);
+    }
+
+    void nodeChanged(int n) {
+	CircuitNode cn = sim.getCircuitNode(n);
+	if (changedSet.add(cn))
+	    changedNodes.add(cn);
+    }
+
+    // join the groups of points a and b, as calculateWireClosure() would have done before we
+    // allocated any nodes.  If both groups already have a node, the full analysis would have
+    // given them the lower of the two node numbers (the group was first reached by the element
+    // that allocated that one), so we merge the higher node into it, and renumber the nodes
+    // after it.
+    void join(int a, int b) {
+	PostMap pm = sim.postMap;
+	if (pm.root(a) == pm.root(b))
+	    return;
+	int na = pm.getNode(a);
+	int nb = pm.getNode(b);
+	pm.union(a, b);
+	if (na < 0 || nb < 0) {
+	    pm.setNode(a, Math.max(na, nb));
+	    return;
+	}
+	int lo = Math.min(na, nb), hi = Math.max(na, nb);
+	pm.setNode(a, lo);
+	int i, j;
+
+	// merge the links, keeping them in the order the elements were allocated, so undo()
+	// can still take them off the end
+	if (elmIndex == null) {
+	    elmIndex = new HashMap<SimElm,Integer>();
+	    for (i = 0; i != count; i++)
+		elmIndex.put(elms[i], i);
+	}
+	Vector<CircuitNodeLink> l1 = sim.getCircuitNode(lo).links;
+	Vector<CircuitNodeLink> l2 = sim.getCircuitNode(hi).links;
+	Vector<CircuitNodeLink> links = new Vector<CircuitNodeLink>(l1.size()+l2.size());
+	int i1 = 0, i2 = 0;
+	while (i1 < l1.size() || i2 < l2.size()) {
+	    boolean first = (i2 == l2.size());
+	    if (i1 < l1.size() && i2 < l2.size()) {
+		CircuitNodeLink c1 = l1.get(i1), c2 = l2.get(i2);
+		int e1 = elmIndex.get(c1.elm), e2 = elmIndex.get(c2.elm);
+		first = (e1 < e2 || (e1 == e2 && c1.num < c2.num));
+	    }
+	    links.add(first ? l1.get(i1++) : l2.get(i2++));
+	}
+	sim.getCircuitNode(lo).links = links;
+	nodeChanged(lo);
+	CircuitNode gone = sim.getCircuitNode(hi);
+	if (changedSet.remove(gone))
+	    changedNodes.remove(gone);
+
+	// the element that allocated hi joined lo instead
+	CircuitNodeLink creator = l2.get(0);
+	kinds[elmIndex.get(creator.elm)][creator.num] = POST_JOINED;
+
+	// renumber
+	for (i = 0; i != count; i++) {
+	    if (nodeCounts[i] > hi)
+		nodeCounts[i]--;
+	    for (j = 0; j != nodes[i].length; j++) {
+		int n = nodes[i][j];
+		if (n < hi)
+		    continue;
+		n = (n == hi) ? lo : n-1;
+		nodes[i][j] = n;
+		elms[i].setNode(j, n);
+		if (n == 0 && j < posts[i].length)
+		    elms[i].setNodeVoltage(j, 0);
+	    }
+	}
+	for (i = 0; i != pm.count; i++) {
+	    if (pm.parent[i] != i || pm.node[i] < hi)
+		continue;
+	    pm.node[i] = (pm.node[i] == hi) ? lo : pm.node[i]-1;
+	}
+	sim.nodeList.removeElementAt(hi);
+    }
+
+    // undo the node allocation for element i.  This has to be done in reverse order.  Nodes
+    // numbered keep or higher are going away, so they don't count as changed.
+    void undo(int i, int keep) {
+	int j;
+	for (j = posts[i].length-1; j >= 0; j--) {
+	    int p = sim.postMap.find(posts[i][j]);
+	    sim.postMap.postCount[p]--;
+	    if (kinds[i][j] == POST_NEW)
+		sim.postMap.setNode(p, -1);
+	    else {
+		// we were the last element to join this node
+		Vector<CircuitNodeLink> links = sim.getCircuitNode(nodes[i][j]).links;
+		links.removeElementAt(links.size()-1);
+		if (nodes[i][j] < keep)
+		    nodeChanged(nodes[i][j]);
+	    }
+	}
+	elms[i] = null;
+    }
+
+    // update the node list after an edit.  Returns false if we need a full analysis.
+    boolean update() {
+	int n = sim.getElmList().size();
+	int k, i;
+	for (k = 0; k != count && k != n; k++)
+	    if (!isUnchanged(k, sim.getElm(k)))
+		break;
+	if (k == 0)
+	    return false;
+	for (i = k; i != count; i++)
+	    if (!isLocal(elms[i], wires[i]))
+		return false;
+	for (i = k; i != n; i++)
+	    if (!canAdd(sim.getElm(i)))
+		return false;
+
+	changedNodes = new Vector<CircuitNode>();
+	changedSet = new HashSet<CircuitNode>();
+	elmIndex = null;
+	for (i = count-1; i >= k; i--)
+	    undo(i, nodeCounts[k-1]);
+	sim.nodeList.setSize(nodeCounts[k-1]);
+	count = k;
+
+	// put back the nodes of the elements we kept, in case an edit reallocated them
+	int vscount = 0;
+	int j;
+	for (i = 0; i != k; i++) {
+	    SimElm ce = elms[i];
+	    for (j = 0; j != nodes[i].length; j++) {
+		ce.setNode(j, nodes[i][j]);
+		if (nodes[i][j] == 0 && j < posts[i].length)
+		    ce.setNodeVoltage(j, 0);
+	    }
+	    vscount += voltageSourceCounts[i];
+	}
+
+	// add the new wires to the closure before allocating any nodes, like a full analysis
+	for (i = k; i != n; i++) {
+	    SimElm ce = sim.getElm(i);
+	    if (!ce.isRemovableWire())
+		continue;
+	    int p0 = sim.postMap.add(ce.getPost(0));
+	    Point p1 = sim.getConnectedPost(ce);
+	    if (p1 != null)
+		join(p0, sim.postMap.add(p1));
+	}
+
+	for (i = k; i != n; i++) {
+	    SimElm ce = sim.getElm(i);
+	    int kind[] = new int[ce.getPostCount()];
+	    sim.makeElmNodes(ce, kind);
+	    add(ce, kind);
+	    for (j = 0; j != kind.length; j++)
+		nodeChanged(ce.getNode(j));
+	    vscount += ce.getVoltageSourceCount();
+	}
+	sim.voltageSources = new SimElm[vscount];
+	return true;
+    }
+
+    // compare an incremental update (this, with node list oldList) with a full analysis.
+    // Returns a description of the first difference, or null if they match.
+    String compare(TopologyCache full, Vector<CircuitNode> oldList) {
+	if (count != full.count)
+	    return "element count " + count + " != " + full.count;
+	int i, j;
+	for (i = 0; i != count; i++) {
+	    if (elms[i] != full.elms[i])
+		return "element " + i + " differs";
+	    if (nodeCounts[i] != full.nodeCounts[i])
+		return "node count after " + elms[i] + ": " + nodeCounts[i] + " != " + full.nodeCounts[i];
+	    for (j = 0; j != nodes[i].length; j++)
+		if (nodes[i][j] != full.nodes[i][j])
+		    return "node " + j + " of " + elms[i] + ": " + nodes[i][j] + " != " + full.nodes[i][j];
+	    for (j = 0; j != kinds[i].length; j++)
+		if (kinds[i][j] != full.kinds[i][j])
+		    return "post " + j + " of " + elms[i] + " allocated differently";
+	}
+	Vector<CircuitNode> newList = sim.nodeList;
+	if (oldList.size() != newList.size())
+	    return "node list size " + oldList.size() + " != " + newList.size();
+	for (i = 0; i != oldList.size(); i++) {
+	    Vector<CircuitNodeLink> l1 = oldList.get(i).links;
+	    Vector<CircuitNodeLink> l2 = newList.get(i).links;
+	    if (l1.size() != l2.size())
+		return "node " + i + " has " + l1.size() + " links, should be " + l2.size();
+	    for (j = 0; j != l1.size(); j++)
+		if (l1.get(j).elm != l2.get(j).elm || l1.get(j).num != l2.get(j).num)
+		    return "link " + j + " of node " + i + " differs";
+	}
+	return null;
+    }
+}
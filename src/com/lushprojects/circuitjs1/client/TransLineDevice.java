@@ -0,0 +1,135 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// transmission line, for TransLineElm.  Each end is a voltage source driven by what arrived
+// at the other end delay seconds ago.  Posts 0 and 1 are the (grounded) bottom conductor,
+// posts 2 and 3 the top.
+class TransLineDevice extends Device {
+    double delay, imped;
+    double voltageL[], voltageR[];
+    int lenSteps, ptr;
+    int lastStepCount;
+    int voltSource1, voltSource2;
+    double current1, current2;
+
+    // distance between the two conductors, which sets where the posts are
+    int width;
+
+    TransLineDevice(CircuitEngine s) {
+	super(s);
+	imped = 75;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	delay = new Double(st.nextToken()).doubleValue();
+	imped = new Double(st.nextToken()).doubleValue();
+	width = new Integer(st.nextToken()).intValue();
+	// next slot is for resistance (losses), which is not implemented
+	st.nextToken();
+    }
+
+    int getPostCount() { return 4; }
+    int getInternalNodeCount() { return 2; }
+    int getVoltageSourceCount() { return 2; }
+
+    void reset() {
+	if (sim.maxTimeStep == 0)
+	    return;
+	lenSteps = (int) (delay/sim.maxTimeStep);
+	if (lenSteps > 100000 || lenSteps < 1)
+	    voltageL = voltageR = null;
+	else {
+	    voltageL = new double[lenSteps];
+	    voltageR = new double[lenSteps];
+	}
+	ptr = 0;
+	super.reset();
+	lastStepCount = 0;
+    }
+    void setVoltageSource(int n, int v) {
+	if (n == 0)
+	    voltSource1 = v;
+	else
+	    voltSource2 = v;
+    }
+    void setCurrent(int v, double c) {
+	if (v == voltSource1)
+	    current1 = c;
+	else
+	    current2 = c;
+    }
+	
+    void stamp() {
+	sim.stampVoltageSource(nodes[4], nodes[0], voltSource1);
+	sim.stampVoltageSource(nodes[5], nodes[1], voltSource2);
+	sim.stampResistor(nodes[2], nodes[4], imped);
+	sim.stampResistor(nodes[3], nodes[5], imped);
+    }
+
+    void startIteration() {
+	// calculate voltages, currents sent over wire
+	if (voltageL == null) {
+	    sim.stopDevice("Transmission line delay too large!", this);
+	    return;
+	}
+	voltageL[ptr] = volts[2]-volts[0] + volts[2]-volts[4];
+	voltageR[ptr] = volts[3]-volts[1] + volts[3]-volts[5];
+	//System.out.println(volts[2] + " " + volts[0] + " " + (volts[2]-volts[0]) + " " + (imped*current1) + " " + voltageL[ptr]);
+	/*System.out.println("sending fwd  " + currentL[ptr] + " " + current1);
+	  System.out.println("sending back " + currentR[ptr] + " " + current2);*/
+	//System.out.println("sending back " + voltageR[ptr]);
+    }
+    void doStep() {
+	if (voltageL == null) {
+	    sim.stopDevice("Transmission line delay too large!", this);
+	    return;
+	}
+	int nextPtr = (ptr + 1) % lenSteps;
+	sim.updateVoltageSource(nodes[4], nodes[0], voltSource1, -voltageR[nextPtr]);
+	sim.updateVoltageSource(nodes[5], nodes[1], voltSource2, -voltageL[nextPtr]);
+	if (Math.abs(volts[0]) > 1e-5 || Math.abs(volts[1]) > 1e-5) {
+	    sim.stopDevice("Need to ground transmission line!", this);
+	    return;
+	}
+    }
+
+    void stepFinished() {
+	if (sim.timeStepCount == lastStepCount)
+	    return;
+	lastStepCount = sim.timeStepCount;
+	ptr = (ptr+1) % lenSteps;	
+    }
+    
+    // each end is driven by voltages from the other end delay seconds ago
+    boolean isPartitionBoundary() { return true; }
+    boolean getConnection(int n1, int n2) { return false; }
+
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return current1;
+	if (n == 2)
+	    return -current1;
+	if (n == 3)
+	    return -current2;
+	return current2;
+    }
+}
+
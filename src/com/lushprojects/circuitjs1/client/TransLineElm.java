@@ -22,33 +22,29 @@ package com.lushprojects.circuitjs1.client;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class TransLineElm extends CircuitElm {
-    double delay, imped;
-    double voltageL[], voltageR[];
-    int lenSteps, ptr, width;
-    int lastStepCount;
+    TransLineDevice line;
+    int width;
     public TransLineElm(int xx, int yy) {
 	super(xx, yy);
-	delay = 1000*sim.maxTimeStep;
-	imped = 75;
+	line = new TransLineDevice(sim);
+	setDevice(line);
+	line.delay = 1000*sim.maxTimeStep;
 	noDiagonal = true;
 	reset();
     }
     public TransLineElm(int xa, int ya, int xb, int yb, int f,
 			StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	delay = new Double(st.nextToken()).doubleValue();
-	imped = new Double(st.nextToken()).doubleValue();
-	width = new Integer(st.nextToken()).intValue();
-	// next slot is for resistance (losses), which is not implemented
-	st.nextToken();
-	noDiagonal = true;
+	line = new TransLineDevice(sim);
+	setDevice(line);
+	line.undump(st, f);
+	width = line.width;
+	noDiagonal= true;
 	reset();
     }
     int getDumpType() { return 171; }
-    int getPostCount() { return 4; }
-    int getInternalNodeCount() { return 2; }
     String dump() {
-	return super.dump() + " " + delay + " " + imped + " " + width + " " + 0.;
+	return super.dump() + " " + line.delay + " " + line.imped + " " + width + " " + 0.;
     }
     void drag(int xx, int yy) {
 	xx = sim.snapGrid(xx);
@@ -68,21 +64,6 @@ class TransLineElm extends CircuitElm {
 	
     Point posts[], inner[];
 	
-    void reset() {
-	if (sim.maxTimeStep == 0)
-	    return;
-	lenSteps = (int) (delay/sim.maxTimeStep);
-	System.out.println(lenSteps + " steps");
-	if (lenSteps > 100000)
-	    voltageL = voltageR = null;
-	else {
-	    voltageL = new double[lenSteps];
-	    voltageR = new double[lenSteps];
-	}
-	ptr = 0;
-	super.reset();
-	lastStepCount = 0;
-    }
     void setPoints() {
 	super.setPoints();
 	int ds = (dy == 0) ? sign(dx) : -sign(dy);
@@ -104,7 +85,7 @@ class TransLineElm extends CircuitElm {
     void draw(Graphics g) {
 	setBbox(posts[0], posts[3], 0);
 	int segments = (int) (dn/2);
-	int ix0 = ptr-1+lenSteps;
+	int ix0 = line.ptr-1+line.lenSteps;
 	double segf = 1./segments;
 	int i;
 	g.setColor(Color.darkGray);
@@ -114,11 +95,11 @@ class TransLineElm extends CircuitElm {
 	    setVoltageColor(g, volts[i]);
 	    drawThickLine(g, posts[i], inner[i]);
 	}
-	if (voltageL != null) {
+	if (line.voltageL != null) {
 	    for (i = 0; i != segments; i++) {
-		int ix1 = (ix0-lenSteps*i/segments) % lenSteps;
-		int ix2 = (ix0-lenSteps*(segments-1-i)/segments) % lenSteps;
-		double v = (voltageL[ix1]+voltageR[ix2])/2;
+		int ix1 = (ix0-line.lenSteps*i/segments) % line.lenSteps;
+		int ix2 = (ix0-line.lenSteps*(segments-1-i)/segments) % line.lenSteps;
+		double v = (line.voltageL[ix1]+line.voltageR[ix2])/2;
 		setVoltageColor(g, v);
 		interpPoint(inner[0], inner[1], ps1, i*segf);
 		interpPoint(inner[2], inner[3], ps2, i*segf);
@@ -131,8 +112,8 @@ class TransLineElm extends CircuitElm {
 	drawThickLine(g, inner[0], inner[1]);
 	drawPosts(g);
 
-	curCount1 = updateDotCount(-current1, curCount1);
-	curCount2 = updateDotCount(current2, curCount2);
+	curCount1 = updateDotCount(-line.current1, curCount1);
+	curCount2 = updateDotCount(line.current2, curCount2);
 	if (sim.dragElm != this) {
 	    drawDots(g, posts[0], inner[0], curCount1);
 	    drawDots(g, posts[2], inner[2], -curCount1);
@@ -141,110 +122,35 @@ class TransLineElm extends CircuitElm {
 	}
     }
 
-    int voltSource1, voltSource2;
-    double current1, current2, curCount1, curCount2;
-    void setVoltageSource(int n, int v) {
-	if (n == 0)
-	    voltSource1 = v;
-	else
-	    voltSource2 = v;
-    }
-    void setCurrent(int v, double c) {
-	if (v == voltSource1)
-	    current1 = c;
-	else
-	    current2 = c;
-    }
-	
-    void stamp() {
-	sim.stampVoltageSource(nodes[4], nodes[0], voltSource1);
-	sim.stampVoltageSource(nodes[5], nodes[1], voltSource2);
-	sim.stampResistor(nodes[2], nodes[4], imped);
-	sim.stampResistor(nodes[3], nodes[5], imped);
-    }
+    double curCount1, curCount2;
 
-    void startIteration() {
-	// calculate voltages, currents sent over wire
-	if (voltageL == null) {
-	    sim.stop("Transmission line delay too large!", this);
-	    return;
-	}
-	voltageL[ptr] = volts[2]-volts[0] + volts[2]-volts[4];
-	voltageR[ptr] = volts[3]-volts[1] + volts[3]-volts[5];
-	//System.out.println(volts[2] + " " + volts[0] + " " + (volts[2]-volts[0]) + " " + (imped*current1) + " " + voltageL[ptr]);
-	/*System.out.println("sending fwd  " + currentL[ptr] + " " + current1);
-	  System.out.println("sending back " + currentR[ptr] + " " + current2);*/
-	//System.out.println("sending back " + voltageR[ptr]);
-    }
-    void doStep() {
-	if (voltageL == null) {
-	    sim.stop("Transmission line delay too large!", this);
-	    return;
-	}
-	int nextPtr = (ptr + 1) % lenSteps;
-	sim.updateVoltageSource(nodes[4], nodes[0], voltSource1, -voltageR[nextPtr]);
-	sim.updateVoltageSource(nodes[5], nodes[1], voltSource2, -voltageL[nextPtr]);
-	if (Math.abs(volts[0]) > 1e-5 || Math.abs(volts[1]) > 1e-5) {
-	    sim.stop("Need to ground transmission line!", this);
-	    return;
-	}
-    }
-
-    void stepFinished() {
-	if (sim.timeStepCount == lastStepCount)
-	    return;
-	lastStepCount = sim.timeStepCount;
-	ptr = (ptr+1) % lenSteps;	
-    }
-    
     Point getPost(int n) {
 	return posts[n];
     }
 	
     //double getVoltageDiff() { return volts[0]; }
-    int getVoltageSourceCount() { return 2; }
-    boolean hasGroundConnection(int n1) { return false; }
-    boolean getConnection(int n1, int n2) {
-	return false;
-	/*if (comparePair(n1, n2, 0, 1))
-	  return true;
-	  if (comparePair(n1, n2, 2, 3))
-	  return true;
-	  return false;*/
-    }
     void getInfo(String arr[]) {
 	arr[0] = "transmission line";
-	arr[1] = getUnitText(imped, Locale.ohmString);
+	arr[1] = getUnitText(line.imped, Locale.ohmString);
 	// use velocity factor for RG-58 cable (65%)
-	arr[2] = "length = " + getUnitText(.65*2.9979e8*delay, "m");
-	arr[3] = "delay = " + getUnitText(delay, "s");
+	arr[2] = "length = " + getUnitText(.65*2.9979e8*line.delay, "m");
+	arr[3] = "delay = " + getUnitText(line.delay, "s");
     }
     public EditInfo getEditInfo(int n) {
 	if (n == 0)
-	    return new EditInfo("Delay (s)", delay, 0, 0);
+	    return new EditInfo("Delay (s)", line.delay, 0, 0);
 	if (n == 1)
-	    return new EditInfo("Impedance (ohms)", imped, 0, 0);
+	    return new EditInfo("Impedance (ohms)", line.imped, 0, 0);
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
 	if (n == 0 && ei.value > 0) {
-	    delay = ei.value;
+	    line.delay = ei.value;
 	    reset();
 	}
 	if (n == 1 && ei.value > 0) {
-	    imped = ei.value;
+	    line.imped = ei.value;
 	    reset();
 	}
     }
-    
-    double getCurrentIntoNode(int n) {
-	if (n == 0)
-	    return current1;
-	if (n == 2)
-	    return -current1;
-	if (n == 3)
-	    return -current2;
-	return current2;
-    }
 }
-
@@ -0,0 +1,139 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// transformer, for TransformerElm: two coupled coils, the first from node 0 to 2 and the
+// second from node 1 to 3, each modeled as a Norton equivalent that is updated every step
+class TransformerDevice extends Device {
+    double inductance, ratio, couplingCoef;
+    double currents[];
+    int flags;
+
+    TransformerDevice(CircuitEngine s) {
+	super(s);
+	inductance = 4;
+	ratio = 1;
+	couplingCoef = .999;
+	currents = new double[2];
+    }
+
+    void undump(StringTokenizer st, int f) {
+	flags = f;
+	inductance = new Double(st.nextToken()).doubleValue();
+	ratio = new Double(st.nextToken()).doubleValue();
+	currents[0] = new Double(st.nextToken()).doubleValue();
+	currents[1] = new Double(st.nextToken()).doubleValue();
+	try {
+	    couplingCoef = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) { }
+    }
+
+    int getPostCount() { return 4; }
+    boolean isTrapezoidal() { return (flags & Inductor.FLAG_BACK_EULER) == 0; }
+    void reset() {
+	super.reset();
+	// need to set current-source values here in case one of the nodes is node 0.  In that case
+	// calculateCurrent() may get called (from setNodeVoltage()) when analyzing circuit, before
+	// startIteration() gets called
+	currents[0] = currents[1] = curSourceValue1 = curSourceValue2 = 0;
+    }
+    double a1, a2, a3, a4;
+    void stamp() {
+	// equations for transformer:
+	//   v1 = L1 di1/dt + M  di2/dt
+	//   v2 = M  di1/dt + L2 di2/dt
+	// we invert that to get:
+	//   di1/dt = a1 v1 + a2 v2
+	//   di2/dt = a3 v1 + a4 v2
+	// integrate di1/dt using trapezoidal approx and we get:
+	//   i1(t2) = i1(t1) + dt/2 (i1(t1) + i1(t2))
+	//          = i1(t1) + a1 dt/2 v1(t1) + a2 dt/2 v2(t1) +
+	//                     a1 dt/2 v1(t2) + a2 dt/2 v2(t2)
+	// the norton equivalent of this for i1 is:
+	//  a. current source, I = i1(t1) + a1 dt/2 v1(t1) + a2 dt/2 v2(t1)
+	//  b. resistor, G = a1 dt/2
+	//  c. current source controlled by voltage v2, G = a2 dt/2
+	// and for i2:
+	//  a. current source, I = i2(t1) + a3 dt/2 v1(t1) + a4 dt/2 v2(t1)
+	//  b. resistor, G = a3 dt/2
+	//  c. current source controlled by voltage v2, G = a4 dt/2
+	//
+	// For backward euler,
+	//
+	//   i1(t2) = i1(t1) + a1 dt v1(t2) + a2 dt v2(t2)
+	//
+	// So the current source value is just i1(t1) and we use
+	// dt instead of dt/2 for the resistor and VCCS.
+	//
+	// first winding goes from node 0 to 2, second is from 1 to 3
+	double l1 = inductance;
+	double l2 = inductance*ratio*ratio;
+	double m = couplingCoef*Math.sqrt(l1*l2);
+	// build inverted matrix
+	double deti = 1/(l1*l2-m*m);
+	double ts = isTrapezoidal() ? sim.timeStep/2 : sim.timeStep;
+	a1 = l2*deti*ts; // we multiply dt/2 into a1..a4 here
+	a2 = -m*deti*ts;
+	a3 = -m*deti*ts;
+	a4 = l1*deti*ts;
+	sim.stampConductance(nodes[0], nodes[2], a1);
+	sim.stampVCCurrentSource(nodes[0], nodes[2], nodes[1], nodes[3], a2);
+	sim.stampVCCurrentSource(nodes[1], nodes[3], nodes[0], nodes[2], a3);
+	sim.stampConductance(nodes[1], nodes[3], a4);
+	sim.stampRightSide(nodes[0]);
+	sim.stampRightSide(nodes[1]);
+	sim.stampRightSide(nodes[2]);
+	sim.stampRightSide(nodes[3]);
+    }
+    void startIteration() {
+	double voltdiff1 = volts[0]-volts[2];
+	double voltdiff2 = volts[1]-volts[3];
+	if (isTrapezoidal()) {
+	    curSourceValue1 = voltdiff1*a1+voltdiff2*a2+currents[0];
+	    curSourceValue2 = voltdiff1*a3+voltdiff2*a4+currents[1];
+	} else {
+	    curSourceValue1 = currents[0];
+	    curSourceValue2 = currents[1];
+	}
+    }
+    double curSourceValue1, curSourceValue2;
+    void doStep() {
+	sim.stampCurrentSource(nodes[0], nodes[2], curSourceValue1);
+	sim.stampCurrentSource(nodes[1], nodes[3], curSourceValue2);
+    }
+    void calculateCurrent() {
+	double voltdiff1 = volts[0]-volts[2];
+	double voltdiff2 = volts[1]-volts[3];
+	currents[0] = voltdiff1*a1 + voltdiff2*a2 + curSourceValue1;
+	currents[1] = voltdiff1*a3 + voltdiff2*a4 + curSourceValue2;
+    }
+    double getCurrentIntoNode(int n) {
+	if (n < 2)
+	    return -currents[n];
+	return currents[n-2];
+    }
+    boolean getConnection(int n1, int n2) {
+	if (comparePair(n1, n2, 0, 2))
+	    return true;
+	if (comparePair(n1, n2, 1, 3))
+	    return true;
+	return false;
+    }
+}
@@ -0,0 +1,298 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// bipolar transistor, for TransistorElm
+class TransistorDevice extends Device {
+	// node 0 = base
+	// node 1 = collector
+	// node 2 = emitter
+	int pnp;
+	double beta;
+	double gmin;
+	TransistorParameters model;
+	int badIters;
+	double ic, ie, ib;
+
+	// Electron thermal voltage at SPICE's default temperature of 27 C (300.15 K):
+	static final double vt = 0.025865;
+	double vcrit;
+	double lastvbc, lastvbe;
+
+	// model name from the dump.  The element finds the model and calls setup().
+	String modelName;
+
+	TransistorDevice(CircuitEngine s) {
+	    super(s);
+	    pnp = 1;
+	    beta = 100;
+	}
+	void undump(StringTokenizer st, int f) {
+	    pnp = new Integer(st.nextToken()).intValue();
+	    try {
+		lastvbe = new Double(st.nextToken()).doubleValue();
+		lastvbc = new Double(st.nextToken()).doubleValue();
+		volts[0] = 0;
+		volts[1] = -lastvbe;
+		volts[2] = -lastvbc;
+		beta = new Double(st.nextToken()).doubleValue();
+		modelName = unescape(st.nextToken());
+	    } catch (Exception e) {
+		modelName = "default";
+	    }
+	}
+	void setup(TransistorParameters m) {
+	    model = m;
+	    vcrit = vt * Math.log(vt/(Math.sqrt(2)*model.satCur));
+	    bypassValid = false;
+	}
+	int getPostCount() { return 3; }
+	boolean nonLinear() { return true; }
+	boolean storesNodeVoltageOnly() { return true; }
+	void reset() {
+	    super.reset();
+	    lastvbc = lastvbe = 0;
+	    badIters = 0;
+	    bypassValid = false;
+	}
+	double limitStep(double vnew, double vold) {
+	    double arg;
+	    double oo = vnew;
+	    
+	    if (vnew > vcrit && Math.abs(vnew - vold) > (vt + vt)) {
+		if(vold > 0) {
+		    arg = 1 + (vnew - vold) / vt;
+		    if(arg > 0) {
+			vnew = vold + vt * Math.log(arg);
+		    } else {
+			vnew = vcrit;
+		    }
+		} else {
+		    vnew = vt *Math.log(vnew/vt);
+		}
+		sim.converged = false;
+		//System.out.println(vnew + " " + oo + " " + vold);
+	    }
+	    return(vnew);
+	}
+	void stamp() {
+	    sim.stampNonLinear(nodes[0]);
+	    sim.stampNonLinear(nodes[1]);
+	    sim.stampNonLinear(nodes[2]);
+	}
+	void doStep() {
+	    double vbc = pnp*(volts[0]-volts[1]); // typically negative
+	    double vbe = pnp*(volts[0]-volts[2]); // typically positive
+	    if (Math.abs(vbc-lastvbc) > .01 || // .01
+		Math.abs(vbe-lastvbe) > .01)
+		sim.converged = false;
+
+	    // To prevent a possible singular matrix, put a tiny conductance in parallel
+	    // with each P-N junction.
+//	    gmin = leakage * 0.01;
+	    gmin = 1e-12;
+	    
+	    if (sim.subIterations > 100 && badIters < 5) {
+		// if we have trouble converging, put a conductance in parallel with all P-N junctions.
+		// Gradually increase the conductance value for each iteration.
+		gmin = Math.exp(-9*Math.log(10)*(1-sim.subIterations/300.));
+		if (gmin > .1)
+		    gmin = .1;
+	    }
+	    
+	    //System.out.print("T " + vbc + " " + vbe + "\n");
+	    vbc = limitStep(vbc, lastvbc);
+	    vbe = limitStep(vbe, lastvbe);
+	    lastvbc = vbc;
+	    lastvbe = vbe;
+
+	    // if the junction voltages have barely moved since we last evaluated the model,
+	    // stamp the same linearization again
+	    if (sim.deviceBypass && bypassValid && gmin == bypassGmin &&
+		  Math.abs(vbc-bypassVbc) < CircuitEngine.BYPASS_TOLERANCE &&
+		  Math.abs(vbe-bypassVbe) < CircuitEngine.BYPASS_TOLERANCE) {
+		sim.deviceBypassCount++;
+		stampModel();
+		return;
+	    }
+	    sim.deviceEvalCount++;
+
+            /*
+             *   dc model paramters (from Spice 3f5, bjtload.c)
+             */
+            double csat=model.satCur;
+            double oik=model.invRollOffF;
+            double c2=model.BEleakCur;
+            double vte=model.leakBEemissionCoeff*vt;
+            double oikr=model.invRollOffR;
+            double c4=model.BCleakCur;
+            double vtc=model.leakBCemissionCoeff*vt;
+            
+//          double rbpr=model.minBaseResist;
+//          double rbpi=model.baseResist-rbpr;
+//          double xjrb=model.baseCurrentHalfResist;
+            
+            double vtn=vt*model.emissionCoeffF;
+            double evbe, cbe, gbe, cben, gben, evben, evbc, cbc, gbc, cbcn, gbcn, evbcn;
+            double qb, dqbdve, dqbdvc, q2, sqarg, arg;
+            if(vbe > -5*vtn){
+                evbe=Math.exp(vbe/vtn);
+                cbe=csat*(evbe-1)+gmin*vbe;
+                gbe=csat*evbe/vtn+gmin;
+                if (c2 == 0) {
+                    cben=0;
+                    gben=0;
+                } else {
+                    evben=Math.exp(vbe/vte);
+                    cben=c2*(evben-1);
+                    gben=c2*evben/vte;
+                }
+            } else {
+                gbe = -csat/vbe+gmin;
+                cbe=gbe*vbe;
+                gben = -c2/vbe;
+                cben=gben*vbe;
+            }
+            vtn=vt*model.emissionCoeffR;
+            if(vbc > -5*vtn) {
+                evbc=Math.exp(vbc/vtn);
+                cbc=csat*(evbc-1)+gmin*vbc;
+                gbc=csat*evbc/vtn+gmin;
+                if (c4 == 0) {
+                    cbcn=0;
+                    gbcn=0;
+                } else {
+                    evbcn=Math.exp(vbc/vtc);
+                    cbcn=c4*(evbcn-1);
+                    gbcn=c4*evbcn/vtc;
+                }
+            } else {
+                gbc = -csat/vbc+gmin;
+                cbc = gbc*vbc;
+                gbcn = -c4/vbc;
+                cbcn=gbcn*vbc;
+            }
+            /*
+             *   determine base charge terms
+             */
+            double q1=1/(1-model.invEarlyVoltF*vbc-model.invEarlyVoltR*vbe);
+            if(oik == 0 && oikr == 0) {
+                qb=q1;
+                dqbdve=q1*qb*model.invEarlyVoltR;
+                dqbdvc=q1*qb*model.invEarlyVoltF;
+            } else {
+                q2=oik*cbe+oikr*cbc;
+                arg=Math.max(0,1+4*q2);
+                sqarg=1;
+                if(arg != 0) sqarg=Math.sqrt(arg);
+                qb=q1*(1+sqarg)/2;
+                dqbdve=q1*(qb*model.invEarlyVoltR+oik*gbe/sqarg);
+                dqbdvc=q1*(qb*model.invEarlyVoltF+oikr*gbc/sqarg);
+            }
+
+            double cc=0;
+            double cex=cbe;
+            double gex=gbe;
+            /*
+             *   determine dc incremental conductances
+             */
+            cc=cc+(cex-cbc)/qb-cbc/model.betaR-cbcn;
+            double cb=cbe/beta+cben+cbc/model.betaR+cbcn;
+            
+            // get currents
+	    ic = pnp*cc;
+	    ib = pnp*cb;
+	    ie = pnp*(-cc-cb);
+	    
+/*            double gx=rbpr+rbpi/qb;   // base resistance commented out for now
+            if(xjrb != 0) {
+                double arg1=Math.max(cb/xjrb,1e-9);
+                double arg2=(-1+Math.sqrt(1+14.59025*arg1))/2.4317/Math.sqrt(arg1);
+                arg1=Math.tan(arg2);
+                gx=rbpr+3*rbpi*(arg1-arg2)/arg2/arg1/arg1;
+            }
+            if(gx != 0) gx=1/gx;*/
+            gpi=gbe/beta+gben;
+            gmu=gbc/model.betaR+gbcn;
+            go=(gbc+(cex-cbc)*dqbdvc/qb)/qb;
+            gm=(gex-(cex-cbc)*dqbdve/qb)/qb-go;
+
+            ceqbe=pnp * (cc + cb - vbe * (gm + go + gpi) + vbc * go);
+            ceqbc=pnp * (-cc + vbe * (gm + go) - vbc * (gmu + go));
+
+            if (Double.isInfinite(ib) || Double.isNaN(ic))
+        	sim.stopDevice("infinite transistor current", this);
+
+            bypassValid = true;
+            bypassVbc = vbc;
+            bypassVbe = vbe;
+            bypassGmin = gmin;
+            stampModel();
+	}
+
+	// conductances and current sources from the last model evaluation
+	double gpi, gmu, go, gm, ceqbe, ceqbc;
+
+	// point where we last evaluated the model, for device bypass
+	boolean bypassValid;
+	double bypassVbc, bypassVbe, bypassGmin;
+
+	void stampModel() {
+            // stamp matrix.
+	    // Node 0 is the base, node 1 the collector, node 2 the emitter.
+	    sim.stampMatrix(nodes[1], nodes[1], gmu+go);
+	    sim.stampMatrix(nodes[1], nodes[0], -gmu+gm);
+	    sim.stampMatrix(nodes[1], nodes[2], -gm-go);
+	    sim.stampMatrix(nodes[0], nodes[0], gpi+gmu);
+	    sim.stampMatrix(nodes[0], nodes[2], -gpi);
+	    sim.stampMatrix(nodes[0], nodes[1], -gmu);
+	    sim.stampMatrix(nodes[2], nodes[0], -gpi-gm);
+	    sim.stampMatrix(nodes[2], nodes[1], -go);
+	    sim.stampMatrix(nodes[2], nodes[2], gpi+gm+go);
+
+            /*
+             *  load current excitation vector (right side)
+             */
+	    sim.stampRightSide(nodes[0], -ceqbe-ceqbc);
+	    sim.stampRightSide(nodes[1], ceqbc);
+	    sim.stampRightSide(nodes[2], ceqbe);
+
+	}
+	
+        void stepFinished() {
+            // stop for huge currents that make simulator act weird
+            if (Math.abs(ic) > 1e12 || Math.abs(ib) > 1e12)
+                sim.stopDevice("max current exceeded", this);
+
+            // if we needed to add a conductance to all junctions, this was a bad iteration.
+            // If we have 5 of those in a row, give up
+	    if (sim.subIterations > 100)
+		badIters++;
+	    else
+		badIters = 0;
+        }
+	double getCurrentIntoNode(int n) {
+	    if (n==0)
+		return -ib;
+	    if (n==1)
+		return -ic;
+	    return -ie;
+	}
+}
@@ -8,14 +8,11 @@ import java.util.Vector;
 
 import com.lushprojects.circuitjs1.client.util.Locale;
 
-public class TransistorModel implements Editable, Comparable<TransistorModel> {
+public class TransistorModel extends TransistorParameters implements Editable, Comparable<TransistorModel> {
 
     static HashMap<String, TransistorModel> modelMap;
 
-    int flags;
     String name, description;
-    double satCur, invRollOffF, BEleakCur, leakBEemissionCoeff, invRollOffR, BCleakCur, leakBCemissionCoeff;
-    double emissionCoeffF, emissionCoeffR, invEarlyVoltF, invEarlyVoltR, betaR;
 
     boolean dumped;
     boolean readOnly;
@@ -25,10 +22,6 @@ public class TransistorModel implements Editable, Comparable<TransistorModel> {
     TransistorModel(String d, double sc) {
 	description = d;
 	satCur = sc;
-	emissionCoeffF = emissionCoeffR = 1;
-	leakBEemissionCoeff = 1.5;
-	leakBCemissionCoeff = 2;
-	betaR = 1;
 	updateModel();
     }
 
@@ -65,30 +58,9 @@ public class TransistorModel implements Editable, Comparable<TransistorModel> {
 	addDefaultModel("default",      new TransistorModel("default",        1e-13));
 	addDefaultModel("spice-default", new TransistorModel("spice-default", 1e-16));
 	
-	// for LM324v2 OpAmpRealElm
-	loadInternalModel("xlm324v2-qpi 0 1.01e-16 333.3333333333333 0 1.5 0 0 2 1 1 0.0034482758620689655 0 1");
-	loadInternalModel("xlm324v2-qpi 0 1.01e-16 333.3333333333333 0 1.5 0 0 2 1 1 0.0034482758620689655 0 1");
-	loadInternalModel("xlm324v2-qpa 0 1.01e-16 333.3333333333333 0 1.5 0 0 2 1 1 0.004081632653061225 0 1");
-	loadInternalModel("xlm324v2-qnq 0 1e-16 200 0 1.5 0 0 2 1 1 0 0 1");
-	loadInternalModel("xlm324v2-qpq 0 1e-16 333.3333333333333 0 1.5 0 0 2 1 1 0 0 1");
-
-	// for TL431
-	loadInternalModel("~tl431ed-qn_ed 0 1e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1");
-	loadInternalModel("~tl431ed-qn_ed-A1.2 0 1.2e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1");
-	loadInternalModel("~tl431ed-qn_ed-A2.2 0 2.2000000000000002e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1");
-	loadInternalModel("~tl431ed-qn_ed-A0.5 0 5e-17 0 0 1.5 0 0 2 1 1 0.0125 0.02 1");
-	loadInternalModel("~tl431ed-qp_ed 0 1e-16 0 0 1.5 0 0 2 1 1 0.014285714285714285 0.025 1");
-	loadInternalModel("~tl431ed-qn_ed-A5 0 5e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1");
-
-	// for LM317
-	loadInternalModel("~lm317-qpl-A0.1 0 1e-17 0 0 1.5 0 0 2 1 1 0.02 0 1");
-	loadInternalModel("~lm317-qnl-A0.2 0 2e-17 0 0 1.5 0 0 2 1 1 0.01 0 1");
-	loadInternalModel("~lm317-qpl-A0.2 0 2e-17 0 0 1.5 0 0 2 1 1 0.02 0 1");
-	loadInternalModel("~lm317-qnl-A2 0 2e-16 0 0 1.5 0 0 2 1 1 0.01 0 1");
-	loadInternalModel("~lm317-qpl-A2 0 2e-16 0 0 1.5 0 0 2 1 1 0.02 0 1");
-	loadInternalModel("~lm317-qnl-A5 0 5e-16 0 0 1.5 0 0 2 1 1 0.01 0 1");
-	loadInternalModel("~lm317-qnl-A50 0 5e-15 0 0 1.5 0 0 2 1 1 0.01 0 1");
-
+	int i;
+	for (i = 0; i != internalModels.length; i++)
+	    loadInternalModel(internalModels[i]);
     }
 
     static void addDefaultModel(String name, TransistorModel dm) {
@@ -141,19 +113,7 @@ public class TransistorModel implements Editable, Comparable<TransistorModel> {
     }
 
     TransistorModel(TransistorModel copy) {
-	flags = copy.flags;
-	satCur = copy.satCur;
-	invRollOffF = copy.invRollOffF;
-	BEleakCur = copy.BEleakCur;
-	leakBEemissionCoeff = copy.leakBEemissionCoeff;
-	invRollOffR = copy.invRollOffR;
-	BCleakCur = copy.BCleakCur;
-	leakBCemissionCoeff = copy.leakBCemissionCoeff;
-	emissionCoeffF = copy.emissionCoeffF;
-	emissionCoeffR = copy.emissionCoeffR;
-	invEarlyVoltF = copy.invEarlyVoltF;
-	invEarlyVoltR = copy.invEarlyVoltR;
-	betaR = copy.betaR;
+	copy(copy);
 	updateModel();
     }
 
@@ -171,21 +131,7 @@ public class TransistorModel implements Editable, Comparable<TransistorModel> {
     }
 
     void undump(StringTokenizer st) {
-	flags = new Integer(st.nextToken()).intValue();
-
-	satCur = Double.parseDouble(st.nextToken());
-	invRollOffF = Double.parseDouble(st.nextToken());
-	BEleakCur = Double.parseDouble(st.nextToken());
-	leakBEemissionCoeff = Double.parseDouble(st.nextToken());
-	invRollOffR = Double.parseDouble(st.nextToken());
-	BCleakCur = Double.parseDouble(st.nextToken());
-	leakBCemissionCoeff = Double.parseDouble(st.nextToken());
-	emissionCoeffF = Double.parseDouble(st.nextToken());
-	emissionCoeffR = Double.parseDouble(st.nextToken());
-	invEarlyVoltF = Double.parseDouble(st.nextToken());
-	invEarlyVoltR = Double.parseDouble(st.nextToken());
-	betaR = Double.parseDouble(st.nextToken());
-
+	super.undump(st);
 	updateModel();
     }
 
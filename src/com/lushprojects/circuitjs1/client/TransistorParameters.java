@@ -0,0 +1,95 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// Gummel-Poon parameters of a bipolar transistor model, without the model list or editing
+// (see TransistorModel), so TransistorDevice can use them without GWT
+class TransistorParameters {
+    int flags;
+    double satCur, invRollOffF, BEleakCur, leakBEemissionCoeff, invRollOffR, BCleakCur, leakBCemissionCoeff;
+    double emissionCoeffF, emissionCoeffR, invEarlyVoltF, invEarlyVoltR, betaR;
+
+    // internal models used by subcircuits, in the format of a model line without the "32"
+    static final String internalModels[] = {
+	// for LM324v2 OpAmpRealElm
+	"xlm324v2-qpi 0 1.01e-16 333.3333333333333 0 1.5 0 0 2 1 1 0.0034482758620689655 0 1",
+	"xlm324v2-qpa 0 1.01e-16 333.3333333333333 0 1.5 0 0 2 1 1 0.004081632653061225 0 1",
+	"xlm324v2-qnq 0 1e-16 200 0 1.5 0 0 2 1 1 0 0 1",
+	"xlm324v2-qpq 0 1e-16 333.3333333333333 0 1.5 0 0 2 1 1 0 0 1",
+
+	// for TL431
+	"~tl431ed-qn_ed 0 1e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1",
+	"~tl431ed-qn_ed-A1.2 0 1.2e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1",
+	"~tl431ed-qn_ed-A2.2 0 2.2000000000000002e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1",
+	"~tl431ed-qn_ed-A0.5 0 5e-17 0 0 1.5 0 0 2 1 1 0.0125 0.02 1",
+	"~tl431ed-qp_ed 0 1e-16 0 0 1.5 0 0 2 1 1 0.014285714285714285 0.025 1",
+	"~tl431ed-qn_ed-A5 0 5e-16 0 0 1.5 0 0 2 1 1 0.0125 0.02 1",
+
+	// for LM317
+	"~lm317-qpl-A0.1 0 1e-17 0 0 1.5 0 0 2 1 1 0.02 0 1",
+	"~lm317-qnl-A0.2 0 2e-17 0 0 1.5 0 0 2 1 1 0.01 0 1",
+	"~lm317-qpl-A0.2 0 2e-17 0 0 1.5 0 0 2 1 1 0.02 0 1",
+	"~lm317-qnl-A2 0 2e-16 0 0 1.5 0 0 2 1 1 0.01 0 1",
+	"~lm317-qpl-A2 0 2e-16 0 0 1.5 0 0 2 1 1 0.02 0 1",
+	"~lm317-qnl-A5 0 5e-16 0 0 1.5 0 0 2 1 1 0.01 0 1",
+	"~lm317-qnl-A50 0 5e-15 0 0 1.5 0 0 2 1 1 0.01 0 1",
+    };
+
+    TransistorParameters() {
+	emissionCoeffF = emissionCoeffR = 1;
+	leakBEemissionCoeff = 1.5;
+	leakBCemissionCoeff = 2;
+	betaR = 1;
+    }
+
+    void copy(TransistorParameters p) {
+	flags = p.flags;
+	satCur = p.satCur;
+	invRollOffF = p.invRollOffF;
+	BEleakCur = p.BEleakCur;
+	leakBEemissionCoeff = p.leakBEemissionCoeff;
+	invRollOffR = p.invRollOffR;
+	BCleakCur = p.BCleakCur;
+	leakBCemissionCoeff = p.leakBCemissionCoeff;
+	emissionCoeffF = p.emissionCoeffF;
+	emissionCoeffR = p.emissionCoeffR;
+	invEarlyVoltF = p.invEarlyVoltF;
+	invEarlyVoltR = p.invEarlyVoltR;
+	betaR = p.betaR;
+    }
+
+    // read the part of a model line after the name
+    void undump(StringTokenizer st) {
+	flags = Integer.parseInt(st.nextToken());
+
+	satCur = Double.parseDouble(st.nextToken());
+	invRollOffF = Double.parseDouble(st.nextToken());
+	BEleakCur = Double.parseDouble(st.nextToken());
+	leakBEemissionCoeff = Double.parseDouble(st.nextToken());
+	invRollOffR = Double.parseDouble(st.nextToken());
+	BCleakCur = Double.parseDouble(st.nextToken());
+	leakBCemissionCoeff = Double.parseDouble(st.nextToken());
+	emissionCoeffF = Double.parseDouble(st.nextToken());
+	emissionCoeffR = Double.parseDouble(st.nextToken());
+	invEarlyVoltF = Double.parseDouble(st.nextToken());
+	invEarlyVoltR = Double.parseDouble(st.nextToken());
+	betaR = Double.parseDouble(st.nextToken());
+    }
+}
@@ -0,0 +1,105 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// TRIAC, for TriacElm.  MT2 is node 0, MT1 is node 1 and the gate is node 2.  Node 3 is an
+// internal node: a variable resistor from MT1 to node 3, back-to-back diodes from node 3 to
+// MT2, and a resistor from the gate to MT1.
+class TriacDevice extends Device {
+    final int mt1node = 1;
+    final int mt2node = 0;
+    final int gnode = 2;
+    final int mtinode = 3;
+
+    Diode diode03, diode30;
+    boolean state;
+    double i1, i2, ig;
+    double cresistance, triggerI, holdingI;
+    double aresistance;
+
+    TriacDevice(CircuitEngine s) {
+	super(s);
+	holdingI = .0082;
+	triggerI = .01;
+	cresistance = 100;
+	diode03 = new Diode(s);
+	diode30 = new Diode(s);
+    }
+
+    void undump(StringTokenizer st, int f) {
+	triggerI = Double.parseDouble(st.nextToken());
+	holdingI = Double.parseDouble(st.nextToken());
+	cresistance = Double.parseDouble(st.nextToken());
+	state = Boolean.parseBoolean(st.nextToken());
+    }
+
+    boolean nonLinear() { return true; }
+    int getPostCount() { return 3; }
+    int getInternalNodeCount() { return 1; }
+
+    void reset() {
+	volts[mt1node] = volts[mt2node] = volts[gnode] = 0;
+	diode03.reset();
+	diode30.reset();
+    }
+
+    double getCurrentIntoNode(int n) {
+	if (n == 0)
+	    return -i2;
+	if (n == 1)
+	    return -i1;
+	return -ig;
+    }
+
+    void stamp() {
+	sim.stampNonLinear(nodes[mt1node]);
+	sim.stampNonLinear(nodes[mt2node]);
+	sim.stampNonLinear(nodes[gnode]);
+	sim.stampNonLinear(nodes[mtinode]);
+	sim.stampResistor(nodes[gnode], nodes[mt1node], cresistance);
+	diode03.stamp(nodes[mt2node], nodes[mtinode]);
+	diode30.stamp(nodes[mtinode], nodes[mt2node]);
+    }
+
+    void startIteration() {
+	if (Math.abs(i2) < holdingI)
+	    state = false;
+	if (Math.abs(ig) > triggerI)
+	    state = true;
+	aresistance = (state) ? .01 : 10e5;
+    }
+
+    void doStep() {
+	diode03.doStep(volts[mt2node]-volts[mtinode]);
+	diode30.doStep(volts[mtinode]-volts[mt2node]);
+	sim.stampResistor(nodes[mtinode], nodes[mt1node], aresistance);
+    }
+    void calculateCurrent() {
+	// aresistance can be 0 on startup
+	if (aresistance == 0)
+	    i2 = 0;
+	else
+	    i2 = (volts[mtinode]-volts[mt1node])/aresistance;
+	ig = -(volts[mt1node]-volts[gnode])/cresistance;
+	i1 = -i2-ig;
+    }
+    double getVoltageDiff() { return volts[mt2node] - volts[mt1node]; }
+    double getCurrent() { return i2; }
+}
@@ -28,59 +28,37 @@ package com.lushprojects.circuitjs1.client;
 // MT1 and MT2 are nodes 1 and 0 (instead of 0 and 1) so that MT1 will be at the bottom when drawn bottom-to-top
 
 class TriacElm extends CircuitElm {
-    final int mt1node = 1;
-    final int mt2node = 0;
-    final int gnode = 2;
-    final int mtinode = 3;
-    
-    Diode diode03, diode30;
-    boolean state;
+    TriacDevice triac;
     
     public TriacElm(int xx, int yy) {
 	super(xx, yy);
-	setDefaults();
+	setDevice(triac = new TriacDevice(sim));
 	setup();
     }
     
     public TriacElm(int xa, int ya, int xb, int yb, int f,
 		  StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	setDefaults();
-	triggerI = Double.parseDouble(st.nextToken());
-	holdingI = Double.parseDouble(st.nextToken());
-	cresistance = Double.parseDouble(st.nextToken());
-	state = Boolean.parseBoolean(st.nextToken());
+	setDevice(triac = new TriacDevice(sim));
+	triac.undump(st, f);
 	setup();
     }
     
-    void setDefaults() {
-	holdingI = .0082;
-	triggerI = .01;
-	cresistance = 100;
-    }
-    
     void setup() {
-	diode03 = new Diode(sim);
-	diode03.setupForDefaultModel();
-	diode30 = new Diode(sim);
-	diode30.setupForDefaultModel();
+	DiodeModel.getDefaultModel().setupDiode(triac.diode03);
+	DiodeModel.getDefaultModel().setupDiode(triac.diode30);
     }
     
-    boolean nonLinear() { return true; }
-    
     void reset() {
-	volts[mt1node] = volts[mt2node] = volts[gnode] = 0;
-	diode03.reset();
-	diode30.reset();
+	triac.reset();
 	curcount_1 = curcount_2 = curcount_g = 0;
     }
     
     int getDumpType() { return 206; }
     String dump() {
-	return super.dump() + " " + triggerI + " " + holdingI + " " + cresistance + " " + state;
+	return super.dump() + " " + triac.triggerI + " " + triac.holdingI + " " + triac.cresistance + " " + triac.state;
     }
-    double i1, i2, ig, curcount_1, curcount_2, curcount_g;
-    double cresistance, triggerI, holdingI;
+    double curcount_1, curcount_2, curcount_g;
 
     final int hs = 8;
     Polygon poly;
@@ -152,14 +130,14 @@ class TriacElm extends CircuitElm {
 	setVoltageColor(g, v1);
 	setPowerColor(g, true);
 	g.fillPolygon(arrows[1]);
-	setVoltageColor(g, volts[gnode]);
+	setVoltageColor(g, volts[triac.gnode]);
 	
 	drawThickLine(g, lead2,   gate[0]);
 	drawThickLine(g, gate[0], gate[1]);
 
-	curcount_1 = updateDotCount(i1, curcount_1);
-	curcount_2 = updateDotCount(i2, curcount_2);
-	curcount_g = updateDotCount(ig, curcount_g);
+	curcount_1 = updateDotCount(triac.i1, curcount_1);
+	curcount_2 = updateDotCount(triac.i2, curcount_2);
+	curcount_g = updateDotCount(triac.ig, curcount_g);
 	if (sim.dragElm != this) {
 	    drawDots(g, point1, lead2, curcount_2);
 	    drawDots(g, point2, lead2, curcount_1);
@@ -182,82 +160,36 @@ class TriacElm extends CircuitElm {
 	return (n == 0) ? point1 : (n == 1) ? point2 : gate[1];
     }
 	
-    @Override double getCurrentIntoNode(int n) {
-	if (n == 0)
-            return -i2;
-	if (n == 1)
-            return -i1;
-        return -ig;
-    }
-    
-    int getPostCount() { return 3; }
-    int getInternalNodeCount() { return 1; }
-
-    double aresistance;
-    
-    void stamp() {
-	sim.stampNonLinear(nodes[mt1node]);
-	sim.stampNonLinear(nodes[mt2node]);
-	sim.stampNonLinear(nodes[gnode]);
-	sim.stampNonLinear(nodes[mtinode]);
-	sim.stampResistor(nodes[gnode], nodes[mt1node], cresistance);
-	diode03.stamp(nodes[mt2node], nodes[mtinode]);
-	diode30.stamp(nodes[mtinode], nodes[mt2node]);
-    }
-
-    void startIteration() {
-	if (Math.abs(i2) < holdingI)
-	    state = false;
-	if (Math.abs(ig) > triggerI)
-	    state = true;
-	aresistance = (state) ? .01 : 10e5;
-    }
-    
-    void doStep() {
-	diode03.doStep(volts[mt2node]-volts[mtinode]);
-	diode30.doStep(volts[mtinode]-volts[mt2node]);
-	sim.stampResistor(nodes[mtinode], nodes[mt1node], aresistance);
-    }
     void getInfo(String arr[]) {
 	arr[0] = "TRIAC";
-	arr[1] = (state) ? "on" : "off";
-	arr[2] = "Vmt2mt1 = " + getVoltageText(volts[mt2node]-volts[mt1node]);
-	arr[3] = "Imt1 = " + getCurrentText(i1);
-	arr[4] = "Imt2 = " + getCurrentText(i2);
-	arr[5] = "Ig = " + getCurrentText(ig);
+	arr[1] = (triac.state) ? "on" : "off";
+	arr[2] = "Vmt2mt1 = " + getVoltageText(volts[triac.mt2node]-volts[triac.mt1node]);
+	arr[3] = "Imt1 = " + getCurrentText(triac.i1);
+	arr[4] = "Imt2 = " + getCurrentText(triac.i2);
+	arr[5] = "Ig = " + getCurrentText(triac.ig);
         arr[6] = "P = " + getUnitText(getPower(), "W");
     }
-    void calculateCurrent() {
-	// aresistance can be 0 on startup
-	if (aresistance == 0)
-	    i2 = 0;
-	else
-	    i2 = (volts[mtinode]-volts[mt1node])/aresistance;
-	ig = -(volts[mt1node]-volts[gnode])/cresistance;
-	i1 = -i2-ig;
-    }
     double getPower() {
-	return (volts[mt2node]-volts[mt1node])*i2 + (volts[gnode]-volts[mt1node])*ig;
+	return (volts[triac.mt2node]-volts[triac.mt1node])*triac.i2 + (volts[triac.gnode]-volts[triac.mt1node])*triac.ig;
     }
     public EditInfo getEditInfo(int n) {
 	if (n == 0)
-	    return new EditInfo("Trigger Current (A)", triggerI, 0, 0);
+	    return new EditInfo("Trigger Current (A)", triac.triggerI, 0, 0);
 	if (n == 1)
-	    return new EditInfo("Holding Current (A)", holdingI, 0, 0);
+	    return new EditInfo("Holding Current (A)", triac.holdingI, 0, 0);
         if (n == 2)
-            return new EditInfo("Gate-MT1 Resistance (ohms)", cresistance, 0, 0);
+            return new EditInfo("Gate-MT1 Resistance (ohms)", triac.cresistance, 0, 0);
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
 	if (n == 0 && ei.value > 0)
-	    triggerI = ei.value;
+	    triac.triggerI = ei.value;
 	if (n == 1 && ei.value > 0)
-	    holdingI = ei.value;
+	    triac.holdingI = ei.value;
         if (n == 2 && ei.value > 0)
-            cresistance = ei.value;
+            triac.cresistance = ei.value;
     }
     boolean canViewInScope() { return true; }
-    double getVoltageDiff() { return volts[mt2node] - volts[mt1node]; }
-    double getCurrent() { return i2; } // for scope
+    double getVoltageDiff() { return triac.getVoltageDiff(); }
 }
 
@@ -0,0 +1,85 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// keeps the last few values of a state variable of a reactive element (capacitor voltage,
+// inductor current) so we can estimate the local truncation error of the integration method
+// and work out how large the next timestep can be.  The error estimate uses divided
+// differences of the history to approximate the derivatives: for trapezoidal integration the
+// error is h^3/12 x''' and for backward euler it is h^2/2 x''.
+class TruncationError {
+    static final int HISTORY = 4;
+    double times[], values[];
+    int count;
+
+    TruncationError() {
+	times = new double[HISTORY];
+	values = new double[HISTORY];
+    }
+
+    void reset() { count = 0; }
+
+    // record value x at time t, called once for each accepted timestep
+    void add(double t, double x) {
+	if (count > 0 && t <= times[0]) {
+	    // time went backwards (circuit was reset), start over
+	    count = 0;
+	}
+	int i;
+	for (i = HISTORY-1; i > 0; i--) {
+	    times[i] = times[i-1];
+	    values[i] = values[i-1];
+	}
+	times[0] = t;
+	values[0] = x;
+	if (count < HISTORY)
+	    count++;
+    }
+
+    double dividedDifference(int i) {
+	return (values[i]-values[i+1])/(times[i]-times[i+1]);
+    }
+
+    double dividedDifference2(int i) {
+	return (dividedDifference(i)-dividedDifference(i+1))/(times[i]-times[i+2]);
+    }
+
+    // return the largest timestep that keeps the error of the next step within
+    // reltol*|x|+abstol, or Double.MAX_VALUE if we don't have enough history yet
+    double getTimeStepLimit(boolean trapezoidal, double reltol, double abstol) {
+	double tol = reltol*Math.max(Math.abs(values[0]), Math.abs(values[1])) + abstol;
+	if (trapezoidal) {
+	    if (count < 4)
+		return Double.MAX_VALUE;
+	    double d3 = (dividedDifference2(0)-dividedDifference2(1))/(times[0]-times[3]);
+	    // h^3/12 * 6*d3 = tol
+	    if (d3 == 0 || Double.isNaN(d3))
+		return Double.MAX_VALUE;
+	    return Math.cbrt(2*tol/Math.abs(d3));
+	}
+	if (count < 3)
+	    return Double.MAX_VALUE;
+	double d2 = dividedDifference2(0);
+	// h^2/2 * 2*d2 = tol
+	if (d2 == 0 || Double.isNaN(d2))
+	    return Double.MAX_VALUE;
+	return Math.sqrt(tol/Math.abs(d2));
+    }
+}
@@ -0,0 +1,171 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// voltage-controlled current source, for VCCSElm.  The output current is expr evaluated on
+// the input voltages; we stamp its derivatives so the solver can converge on nonlinear
+// functions.  Inputs are pins 0 to inputCount-1, and the output is the two pins after that.
+class VCCSDevice extends ChipDevice {
+	int inputCount;
+	Expr expr;
+	ExprState exprState;
+	// set if there is no current path for the output
+	boolean broken;
+	double lastVolts[];
+	// output function from the dump, and the error we got parsing it, if any
+	String exprString;
+	String exprError;
+
+	VCCSDevice(CircuitEngine s) {
+	    super(s);
+	}
+
+	void undump(StringTokenizer st, int f) {
+	    super.undump(st, f);
+	    inputCount = Integer.parseInt(st.nextToken());
+	    parseExpr(unescape(st.nextToken()));
+	    setupPins();
+	}
+
+	// set expr from s.  exprError is set if it doesn't parse.
+	void parseExpr(String s) {
+	    exprString = s;
+	    ExprParser parser = new ExprParser(s);
+	    expr = parser.parseExpression();
+	    exprError = parser.gotError();
+	}
+
+	void setupPins() {
+	    sizeX = 2;
+	    sizeY = inputCount > 2 ? inputCount : 2;
+	    allocPins(inputCount+2);
+	    int i;
+	    for (i = 0; i != inputCount; i++)
+		pins[i] = new ChipPin(i, SIDE_W, Character.toString((char)('A'+i)));
+	    pins[inputCount] = new ChipPin(0, SIDE_E, "C+");
+	    pins[inputCount+1] = new ChipPin(1, SIDE_E, "C-");
+	    lastVolts = new double[inputCount];
+	    exprState = new ExprState(inputCount);
+	}
+	boolean nonLinear() { return true; }
+
+	// false if the output is a voltage source, so it doesn't need a current path
+	boolean hasCurrentOutput() { return true; }
+	int getOutputNode(int n) {
+	    return nodes[n+inputCount];
+	}
+
+	void stamp() {
+	    sim.stampNonLinear(nodes[inputCount]);
+	    sim.stampNonLinear(nodes[inputCount+1]);
+	}
+
+	double sign(double a, double b) {
+	    return a > 0 ? b : -b;
+	}
+
+	double getConvergeLimit() {
+	    // get maximum change in voltage per step when testing for convergence.  be more lenient over time
+	    if (sim.subIterations < 10)
+		return .001;
+	    if (sim.subIterations < 200)
+		return .01;
+	    return .1;
+	}
+
+	// set the time for evaluating expr
+	void setExprTime() {
+	    exprState.t = sim.t;
+	    exprState.timeStep = sim.timeStep;
+	}
+
+	void doStep() {
+	    int i;
+	    
+	    // no current path?  give up
+	    if (broken) {
+		pins[inputCount].current = 0;
+		pins[inputCount+1].current = 0;
+		// avoid singular matrix errors
+		sim.stampResistor(nodes[inputCount], nodes[inputCount+1], 1e8);
+		return;
+	    }
+	    
+	    // converged yet?
+	    double convergeLimit = getConvergeLimit();
+	    for (i = 0; i != inputCount; i++) {
+		if (Math.abs(volts[i]-lastVolts[i]) > convergeLimit)
+		    sim.converged = false;
+	    }
+	    if (expr != null) {
+		// calculate output
+		for (i = 0; i != inputCount; i++)
+		    exprState.values[i] = volts[i];
+		setExprTime();
+		double v0 = -expr.eval(exprState);
+		double rs = v0;
+		
+		// calculate and stamp output derivatives
+		for (i = 0; i != inputCount; i++) {
+		    double dv = volts[i]-lastVolts[i];
+		    if (Math.abs(dv) < 1e-6)
+			dv = 1e-6;
+		    exprState.values[i] = volts[i];
+		    double v = -expr.eval(exprState);
+		    exprState.values[i] = volts[i]-dv;
+		    double v2 = -expr.eval(exprState);
+		    double dx = (v-v2)/dv;
+		    if (Math.abs(dx) < 1e-6)
+			dx = sign(dx, 1e-6);
+		    sim.stampVCCurrentSource(nodes[inputCount], nodes[inputCount+1], nodes[i], 0, dx);
+		    // adjust right side
+		    rs -= dx*volts[i];
+		    exprState.values[i] = volts[i];
+		}
+		sim.stampCurrentSource(nodes[inputCount], nodes[inputCount+1], rs);
+		pins[inputCount].current = -v0;
+		pins[inputCount+1].current = v0;
+	    }
+
+	    for (i = 0; i != inputCount; i++)
+		lastVolts[i] = volts[i];
+	}
+	void stepFinished() {
+	    exprState.updateLastValues(pins[inputCount].current);
+	}
+	void registerBreakpoints() {
+	    if (expr == null)
+		return;
+	    setExprTime();
+	    sim.addBreakpoint(expr.getNextBreakpoint(exprState));
+	}
+
+	int getVoltageSourceCount() { return 0; }
+	boolean getConnection(int n1, int n2) {
+	    return comparePair(inputCount, inputCount+1, n1, n2);
+	}
+	boolean hasGroundConnection(int n1) {
+	    return false;
+	}
+	void reset() {
+	    super.reset();
+	    exprState.reset();
+	}
+}
@@ -23,151 +23,40 @@ import com.google.gwt.user.client.Window;
 import com.lushprojects.circuitjs1.client.util.Locale;
 
 class VCCSElm extends ChipElm {
-	double gain;
-	int inputCount;
-	Expr expr;
-	ExprState exprState;
 	String exprString;
-	public boolean broken;
+	VCCSDevice vccs;
 	public VCCSElm(int xa, int ya, int xb, int yb, int f,
 		      StringTokenizer st) {
 	    super(xa, ya, xb, yb, f, st);
-	    inputCount = Integer.parseInt(st.nextToken());
-	    exprString = CustomLogicModel.unescape(st.nextToken());
-	    parseExpr();
-	    setupPins();
+	    exprString = vccs.exprString;
+	    alertExprError();
 	}
 	public VCCSElm(int xx, int yy) {
 	    super(xx, yy);
-	    inputCount = 2;
+	    vccs.inputCount = 2;
 	    exprString = ".1*(a-b)";
 	    parseExpr();
 	    setupPins();
 	}
 	
 	String dump() {
-	    return super.dump() + " " + inputCount + " " + CustomLogicModel.escape(exprString);
+	    return super.dump() + " " + vccs.inputCount + " " + CustomLogicModel.escape(exprString);
 	}
 	
-	double lastVolts[];
-	
+	ChipDevice createDevice() { return vccs = new VCCSDevice(sim); }
+
 	void setupPins() {
-	    sizeX = 2;
-	    sizeY = inputCount > 2 ? inputCount : 2;
-	    pins = new Pin[inputCount+2];
-	    int i;
-	    for (i = 0; i != inputCount; i++)
-		pins[i] = new Pin(i, SIDE_W, Character.toString((char)('A'+i)));
-	    pins[inputCount] = new Pin(0, SIDE_E, "C+");
-	    pins[inputCount+1] = new Pin(1, SIDE_E, "C-");
-	    lastVolts = new double[inputCount];
-	    exprState = new ExprState(inputCount);
+	    super.setupPins();
 	    allocNodes();
 	}
 	String getChipName() { return "VCCS~"; } // ~ is for localization 
-	boolean nonLinear() { return true; }
 	@Override boolean isDigitalChip() { return false; }
 
-	void stamp() {
-            sim.stampNonLinear(nodes[inputCount]);
-            sim.stampNonLinear(nodes[inputCount+1]);
-	}
-
-        double sign(double a, double b) {
-            return a > 0 ? b : -b;
-        }
-
-        double getConvergeLimit() {
-            // get maximum change in voltage per step when testing for convergence.  be more lenient over time
-            if (sim.subIterations < 10)
-        	return .001;
-            if (sim.subIterations < 200)
-        	return .01;
-            return .1;
-        }
-        
-        boolean hasCurrentOutput() { return true; }
-        int getOutputNode(int n) {
-            return nodes[n+inputCount];
-        }
-        
-        void doStep() {
-            int i;
-            
-            // no current path?  give up
-            if (broken) {
-        	pins[inputCount].current = 0;
-        	pins[inputCount+1].current = 0;
-        	// avoid singular matrix errors
-        	sim.stampResistor(nodes[inputCount], nodes[inputCount+1], 1e8);
-        	return;
-            }
-            
-            // converged yet?
-            double convergeLimit = getConvergeLimit();
-            for (i = 0; i != inputCount; i++) {
-        	if (Math.abs(volts[i]-lastVolts[i]) > convergeLimit) {
-        	    sim.converged = false;
-//        	    sim.console("vcvs " + nodes + " " + i + " " + volts[i] + " " + lastVolts[i] + " " + sim.subIterations);
-        	}
-//        	if (Double.isNaN(volts[i]))
-//        	    volts[i] = 0;
-            }
-            if (expr != null) {
-        	// calculate output
-        	for (i = 0; i != inputCount; i++)
-        	    exprState.values[i] = volts[i];
-        	exprState.t = sim.t;
-        	double v0 = -expr.eval(exprState);
-//        	if (Math.abs(volts[inputCount]-v0) > Math.abs(v0)*.01 && sim.subIterations < 100)
-//        	    sim.converged = false;
-        	double rs = v0;
-        	
-        	// calculate and stamp output derivatives
-        	for (i = 0; i != inputCount; i++) {
-        	    double dv = volts[i]-lastVolts[i];
-        	    if (Math.abs(dv) < 1e-6)
-        		dv = 1e-6;
-        	    exprState.values[i] = volts[i];
-        	    double v = -expr.eval(exprState);
-        	    exprState.values[i] = volts[i]-dv;
-        	    double v2 = -expr.eval(exprState);
-        	    double dx = (v-v2)/dv;
-        	    if (Math.abs(dx) < 1e-6)
-        		dx = sign(dx, 1e-6);
-        	    sim.stampVCCurrentSource(nodes[inputCount], nodes[inputCount+1], nodes[i], 0, dx);
-        	    //if (sim.subIterations > 1)
-        		//sim.console("ccedx " + i + " " + dx + " " + sim.subIterations + " " + sim.t);
-        	    // adjust right side
-        	    rs -= dx*volts[i];
-        	    exprState.values[i] = volts[i];
-        	}
-//        	sim.console("ccers " + rs);
-        	sim.stampCurrentSource(nodes[inputCount], nodes[inputCount+1], rs);
-        	pins[inputCount].current = -v0;
-        	pins[inputCount+1].current = v0;
-            }
-
-            for (i = 0; i != inputCount; i++)
-        	lastVolts[i] = volts[i];
-        }
-        void stepFinished() {
-            exprState.updateLastValues(pins[inputCount].current);
-        }
 	void draw(Graphics g) {
 	    drawChip(g);
 	}
 	
-	int getPostCount() { return inputCount+2; }
-	int getVoltageSourceCount() { return 0; }
 	int getDumpType() { return 213; }
-	
-	boolean getConnection(int n1, int n2) {
-	    return comparePair(inputCount, inputCount+1, n1, n2);
-	}
-	boolean hasGroundConnection(int n1) {
-	    return false;
-	}
 
         public EditInfo getChipEditInfo(int n) {
             if (n == 0) {
@@ -177,7 +66,7 @@ class VCCSElm extends ChipElm {
                 return ei;
             }
             if (n == 1)
-                return new EditInfo("# of Inputs", inputCount, 1, 8).
+                return new EditInfo("# of Inputs", vccs.inputCount, 1, 8).
                     setDimensionless();
             return null;
         }
@@ -190,7 +79,7 @@ class VCCSElm extends ChipElm {
             if (n == 1) {
         	if (ei.value < 0 || ei.value > 8)
         	    return;
-                inputCount = (int) ei.value;
+                vccs.inputCount = (int) ei.value;
                 setupPins();
                 allocNodes();
                 setPoints();
@@ -203,23 +92,20 @@ class VCCSElm extends ChipElm {
         }
         
         void parseExpr() {
-            ExprParser parser = new ExprParser(exprString);
-            expr = parser.parseExpression();
-            String err = parser.gotError();
-            if (err != null)
-        	Window.alert(Locale.LS("Parse error in expression") + ": " + exprString + ": " + err);
+            vccs.parseExpr(exprString);
+            alertExprError();
+        }
+
+        void alertExprError() {
+            if (vccs.exprError != null)
+        	Window.alert(Locale.LS("Parse error in expression") + ": " + exprString + ": " + vccs.exprError);
         }
         
         void getInfo(String arr[]) {
             super.getInfo(arr);
             int i;
             for (i = 0; arr[i] != null; i++) ;
-            arr[i] = "I = " + getCurrentText(pins[inputCount].current);
-        }
-        
-        void reset() {
-            super.reset();
-            exprState.reset();
+            arr[i] = "I = " + getCurrentText(pins[vccs.inputCount].current);
         }
     }
 
@@ -29,15 +29,15 @@ package com.lushprojects.circuitjs1.client;
 	void setupPins() {
 	    sizeX = 2;
 	    sizeY = 4;
-	    pins = new Pin[6];
-	    pins[0] = new Pin(0, SIDE_W, "Vi");
-	    pins[1] = new Pin(3, SIDE_W, "Vo");
+	    allocPins(6);
+	    pins[0] = new ChipPin(0, SIDE_W, "Vi");
+	    pins[1] = new ChipPin(3, SIDE_W, "Vo");
 	    pins[1].output = true;
-	    pins[2] = new Pin(0, SIDE_E, "C");
-	    pins[3] = new Pin(1, SIDE_E, "C");
-	    pins[4] = new Pin(2, SIDE_E, "R1");
+	    pins[2] = new ChipPin(0, SIDE_E, "C");
+	    pins[3] = new ChipPin(1, SIDE_E, "C");
+	    pins[4] = new ChipPin(2, SIDE_E, "R1");
 	    pins[4].output = true;
-	    pins[5] = new Pin(3, SIDE_E, "R2");
+	    pins[5] = new ChipPin(3, SIDE_E, "R2");
 	    pins[5].output = true;
 	}
 	boolean nonLinear() { return true; }
@@ -0,0 +1,103 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// voltage-controlled voltage source, for VCVSElm.  Like VCCSDevice, but the output is a
+// voltage source whose row we stamp with the derivatives of expr.
+class VCVSDevice extends VCCSDevice {
+	VCVSDevice(CircuitEngine s) {
+	    super(s);
+	}
+
+	boolean hasCurrentOutput() { return false; }
+
+	void setupPins() {
+	    sizeX = 2;
+	    sizeY = inputCount > 2 ? inputCount : 2;
+	    allocPins(inputCount+2);
+	    int i;
+	    for (i = 0; i != inputCount; i++)
+		pins[i] = new ChipPin(i, SIDE_W, Character.toString((char)('A'+i)));
+	    pins[inputCount] = new ChipPin(0, SIDE_E, "V+");
+	    pins[inputCount].output = true;
+	    pins[inputCount+1] = new ChipPin(1, SIDE_E, "V-");
+	    lastVolts = new double[inputCount];
+	    exprState = new ExprState(inputCount);
+	}
+	void stamp() {
+	    int vn = pins[inputCount].voltSource + sim.nodeCount;
+	    sim.stampNonLinear(vn);
+	    sim.stampVoltageSource(nodes[inputCount+1], nodes[inputCount], pins[inputCount].voltSource);
+	}
+
+	void doStep() {
+	    int i;
+	    // converged yet?
+	    double convergeLimit = getConvergeLimit();
+	    for (i = 0; i != inputCount; i++) {
+		if (Math.abs(volts[i]-lastVolts[i]) > convergeLimit)
+		    sim.converged = false;
+	    }
+	    int vn = pins[inputCount].voltSource + sim.nodeCount;
+	    if (expr != null) {
+		// calculate output
+		for (i = 0; i != inputCount; i++)
+		    exprState.values[i] = volts[i];
+		setExprTime();
+		double v0 = expr.eval(exprState);
+		if (Math.abs(volts[inputCount]-volts[inputCount+1]-v0) > Math.abs(v0)*.01 && sim.subIterations < 100)
+		    sim.converged = false;
+		double rs = v0;
+		
+		// calculate and stamp output derivatives
+		for (i = 0; i != inputCount; i++) {
+		    double dv = volts[i]-lastVolts[i];
+		    if (Math.abs(dv) < 1e-6)
+			dv = 1e-6;
+		    exprState.values[i] = volts[i];
+		    double v = expr.eval(exprState);
+		    exprState.values[i] = volts[i]-dv;
+		    double v2 = expr.eval(exprState);
+		    double dx = (v-v2)/dv;
+		    if (Math.abs(dx) < 1e-6)
+			dx = sign(dx, 1e-6);
+		    sim.stampMatrix(vn,  nodes[i], -dx);
+		    // adjust right side
+		    rs -= dx*volts[i];
+		    exprState.values[i] = volts[i];
+		}
+		sim.stampRightSide(vn, rs);
+	    }
+
+	    for (i = 0; i != inputCount; i++)
+		lastVolts[i] = volts[i];
+	}
+	void stepFinished() {
+	    exprState.updateLastValues(volts[inputCount]-volts[inputCount+1]);
+	}
+	int getVoltageSourceCount() { return 1; }
+
+	void setCurrent(int vn, double c) {
+	    if (pins[inputCount].voltSource == vn) {
+		pins[inputCount].current = c;
+		pins[inputCount+1].current = -c;
+	    }
+	}
+}
@@ -28,87 +28,9 @@ package com.lushprojects.circuitjs1.client;
 	    super(xx, yy);
 	}
 	
-	void setupPins() {
-	    sizeX = 2;
-            sizeY = inputCount > 2 ? inputCount : 2;
-            pins = new Pin[inputCount+2];
-	    int i;
-	    for (i = 0; i != inputCount; i++)
-		pins[i] = new Pin(i, SIDE_W, Character.toString((char)('A'+i)));
-	    pins[inputCount] = new Pin(0, SIDE_E, "V+");
-	    pins[inputCount].output = true;
-            pins[inputCount+1] = new Pin(1, SIDE_E, "V-");
-	    lastVolts = new double[inputCount];
-	    exprState = new ExprState(inputCount);
-	    allocNodes();
-	}
-	String getChipName() { return "VCVS"; } 
-	void stamp() {
-            int vn = pins[inputCount].voltSource + sim.nodeList.size();
-            sim.stampNonLinear(vn);
-            sim.stampVoltageSource(nodes[inputCount+1], nodes[inputCount], pins[inputCount].voltSource);
-	}
-
-        void doStep() {
-            int i;
-            // converged yet?
-            double convergeLimit = getConvergeLimit();
-            for (i = 0; i != inputCount; i++) {
-        	if (Math.abs(volts[i]-lastVolts[i]) > convergeLimit)
-        	    sim.converged = false;
-//        	if (Double.isNaN(volts[i]))
-//        	    volts[i] = 0;
-            }
-            int vn = pins[inputCount].voltSource + sim.nodeList.size();
-            if (expr != null) {
-        	// calculate output
-        	for (i = 0; i != inputCount; i++)
-        	    exprState.values[i] = volts[i];
-        	exprState.t = sim.t;
-        	double v0 = expr.eval(exprState);
-        	if (Math.abs(volts[inputCount]-volts[inputCount+1]-v0) > Math.abs(v0)*.01 && sim.subIterations < 100)
-        	    sim.converged = false;
-        	double rs = v0;
-        	
-        	// calculate and stamp output derivatives
-        	for (i = 0; i != inputCount; i++) {
-        	    double dv = volts[i]-lastVolts[i];
-        	    if (Math.abs(dv) < 1e-6)
-        		dv = 1e-6;
-        	    exprState.values[i] = volts[i];
-        	    double v = expr.eval(exprState);
-        	    exprState.values[i] = volts[i]-dv;
-        	    double v2 = expr.eval(exprState);
-        	    double dx = (v-v2)/dv;
-        	    if (Math.abs(dx) < 1e-6)
-        		dx = sign(dx, 1e-6);
-//        	    if (sim.subIterations > 1)
-//        		sim.console("ccedx " + i + " " + dx + " v " + v + " v2 " + v2 + " dv " + dv + " lv " + lastVolts[i] + " " + volts[i] + " " + sim.subIterations + " " + sim.t);
-        	    sim.stampMatrix(vn,  nodes[i], -dx);
-        	    // adjust right side
-        	    rs -= dx*volts[i];
-        	    exprState.values[i] = volts[i];
-        	}
-        	sim.stampRightSide(vn, rs);
-            }
+	ChipDevice createDevice() { return vccs = new VCVSDevice(sim); }
 
-            for (i = 0; i != inputCount; i++)
-        	lastVolts[i] = volts[i];
-        }
-        void stepFinished() {
-            exprState.updateLastValues(volts[inputCount]-volts[inputCount+1]);
-        }
-	int getPostCount() { return inputCount+2; }
-	int getVoltageSourceCount() { return 1; }
+	String getChipName() { return "VCVS"; } 
 	int getDumpType() { return 212; }
-        boolean hasCurrentOutput() { return false; }
-
-        void setCurrent(int vn, double c) {
-            if (pins[inputCount].voltSource == vn) {
-                pins[inputCount].current = c;
-                pins[inputCount+1].current = -c;
-            }
-        }
-
     }
 
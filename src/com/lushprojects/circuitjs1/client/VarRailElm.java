@@ -31,7 +31,7 @@ import com.google.gwt.event.dom.client.MouseWheelHandler;
 	public VarRailElm(int xx, int yy) {
 	    super(xx, yy, WF_VAR);
 	    sliderText = "Voltage";
-	    frequency = maxVoltage;
+	    source.frequency = source.maxVoltage;
 	    createSlider();
 	}
 	public VarRailElm(int xa, int ya, int xb, int yb, int f,
@@ -48,17 +48,17 @@ import com.google.gwt.event.dom.client.MouseWheelHandler;
 	}
 	int getDumpType() { return 172; }
 	void createSlider() {
-	    waveform = WF_VAR;
+	    source.waveform = WF_VAR;
 	    sim.addWidgetToVerticalPanel(label = new Label(Locale.LS(sliderText)));
 	    label.addStyleName("topSpace");
-	    int value = (int) ((frequency-bias)*100/(maxVoltage-bias));
+	    int value = (int) ((source.frequency-source.bias)*100/(source.maxVoltage-source.bias));
 	    sim.addWidgetToVerticalPanel(slider = new Scrollbar(Scrollbar.HORIZONTAL, value, 1, 0, 101 ,
 	    		null, this));
 //	    sim.verticalPanel.validate();
 	}
 	double getVoltage() {
-	    frequency = slider.getValue() * (maxVoltage-bias) / 100. + bias;
-	    return frequency;
+	    source.frequency = slider.getValue() * (source.maxVoltage-source.bias) / 100. + source.bias;
+	    return source.frequency;
 	}
 	void delete() {
 	    sim.removeWidgetFromVerticalPanel(label);
@@ -67,9 +67,9 @@ import com.google.gwt.event.dom.client.MouseWheelHandler;
 	}
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0)
-		return new EditInfo("Min Voltage", bias, -20, 20);
+		return new EditInfo("Min Voltage", source.bias, -20, 20);
 	    if (n == 1)
-		return new EditInfo("Max Voltage", maxVoltage, -20, 20);
+		return new EditInfo("Max Voltage", source.maxVoltage, -20, 20);
 	    if (n == 2) {
 		EditInfo ei = new EditInfo("Slider Text", 0, -1, -1);
 		ei.text = sliderText;
@@ -79,9 +79,9 @@ import com.google.gwt.event.dom.client.MouseWheelHandler;
 	}
 	public void setEditValue(int n, EditInfo ei) {
 	    if (n == 0)
-		bias = ei.value;
+		source.bias = ei.value;
 	    if (n == 1)
-		maxVoltage = ei.value;
+		source.maxVoltage = ei.value;
 	    if (n == 2) {
 		sliderText = ei.textf.getText();
 		label.setText(Locale.LS(sliderText));
@@ -0,0 +1,79 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// varactor: a diode in parallel with a voltage-dependent capacitor, for VaractorElm.
+// The capacitor is a voltage source in series with a resistor through the internal node
+// after the diode's own.
+class VaractorDevice extends DiodeDevice {
+    double baseCapacitance;
+    double fwdrop;
+    double capacitance, capCurrent;
+    // diode.lastvoltdiff = volt diff from last iteration
+    // capvoltdiff = volt diff from last timestep
+    double compResistance, capvoltdiff;
+    double voltSourceValue;
+
+    VaractorDevice(CircuitEngine s) {
+	super(s);
+	baseCapacitance = 4e-12;
+    }
+
+    int getCapNode() { return nodes.length-1; }
+    int getInternalNodeCount() { return super.getInternalNodeCount()+1; }
+    int getVoltageSourceCount() { return 1; }
+    void setCurrent(int x, double c) { capCurrent = c; }
+
+    void stepFinished() {
+	capvoltdiff = volts[0]-volts[1];
+    }
+    void calculateCurrent() {
+	super.calculateCurrent();
+	current += capCurrent;
+    }
+    void reset() {
+	super.reset();
+	capvoltdiff = 0;
+    }
+    void stamp() {
+	super.stamp();
+	int cn = nodes[getCapNode()];
+	sim.stampVoltageSource(nodes[0], cn, voltSource);
+	sim.stampNonLinear(cn);
+    }
+    void startIteration() {
+	// capacitor companion model using trapezoidal approximation
+	// (Thevenin equivalent) consists of a voltage source in
+	// series with a resistor
+	double c0 = baseCapacitance;
+	if (capvoltdiff > 0)
+	    capacitance = c0;
+	else
+	    capacitance = c0/Math.pow(1-capvoltdiff/fwdrop, .5);
+	compResistance = sim.timeStep/(2*capacitance);
+	voltSourceValue = -capvoltdiff-capCurrent*compResistance;
+    }
+    void doStep() {
+	super.doStep();
+	int cn = nodes[getCapNode()];
+	sim.stampResistor(cn, nodes[1], compResistance);
+	sim.updateVoltageSource(nodes[0], cn, voltSource, voltSourceValue);
+    }
+}
@@ -0,0 +1,164 @@
+/*    
+    Copyright (C) Paul Falstad and Iain Sharp
+    
+    This file is part of CircuitJS1.
+
+    CircuitJS1 is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 2 of the License, or
+    (at your option) any later version.
+
+    CircuitJS1 is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with CircuitJS1.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package com.lushprojects.circuitjs1.client;
+
+// independent voltage source with one of the VoltageElm waveforms, for VoltageElm.  See
+// RailDevice for the one-terminal version.
+class VoltageDevice extends Device {
+    static final int FLAG_COS = 2;
+    static final int FLAG_PULSE_DUTY = 4;
+    static final int WF_DC = 0;
+    static final int WF_AC = 1;
+    static final int WF_SQUARE = 2;
+    static final int WF_TRIANGLE = 3;
+    static final int WF_SAWTOOTH = 4;
+    static final int WF_PULSE = 5;
+    static final int WF_NOISE = 6;
+    static final int WF_VAR = 7;
+    static final double pi = Math.PI;
+    int waveform;
+    double frequency, maxVoltage, freqTimeZero, bias,
+	phaseShift, dutyCycle, noiseValue;
+
+    VoltageDevice(CircuitEngine s) {
+	super(s);
+	maxVoltage = 5;
+	frequency = 40;
+	dutyCycle = .5;
+    }
+
+    void undump(StringTokenizer st, int f) {
+	waveform = WF_DC;
+	try {
+	    waveform = new Integer(st.nextToken()).intValue();
+	    frequency = new Double(st.nextToken()).doubleValue();
+	    maxVoltage = new Double(st.nextToken()).doubleValue();
+	    bias = new Double(st.nextToken()).doubleValue();
+	    phaseShift = new Double(st.nextToken()).doubleValue();
+	    dutyCycle = new Double(st.nextToken()).doubleValue();
+	} catch (Exception e) {
+	}
+	// the element clears FLAG_COS, so it's only in old files
+	if ((f & FLAG_COS) != 0)
+	    phaseShift = pi/2;
+	
+	// old circuit files have the wrong duty cycle for pulse waveforms (wasn't configurable in the past)
+	if ((f & FLAG_PULSE_DUTY) == 0 && waveform == WF_PULSE)
+	    dutyCycle = 1/(2*pi);
+    }
+
+    void reset() {
+	super.reset();
+	freqTimeZero = 0;
+    }
+    int getVoltageSourceCount() { return 1; }
+    double getVoltageDiff() { return volts[1] - volts[0]; }
+
+    // nodes the source is connected between
+    int getNode0() { return nodes[0]; }
+    int getNode1() { return nodes[1]; }
+
+    void stamp() {
+	if (waveform == WF_DC)
+	    sim.stampVoltageSource(getNode0(), getNode1(), voltSource,
+			       getVoltage());
+	else
+	    sim.stampVoltageSource(getNode0(), getNode1(), voltSource);
+    }
+    void doStep() {
+	if (waveform != WF_DC)
+	    sim.updateVoltageSource(getNode0(), getNode1(), voltSource,
+				getVoltage());
+    }
+    void stepFinished() {
+	if (waveform == WF_NOISE)
+	    noiseValue = (sim.random.nextDouble()*2-1) * maxVoltage + bias;
+    }
+
+    double triangleFunc(double x) {
+	if (x < pi)
+	    return x*(2/pi)-1;
+	return 1-(x-pi)*(2/pi);
+    }
+
+    // voltage to put out now.  Elements with other sources of voltage override this.
+    double getVoltage() { return getWaveformVoltage(); }
+
+    double getWaveformVoltage() {
+	if (waveform != WF_DC && sim.dcAnalysisFlag)
+	    return bias;
+
+	double w = 2*pi*(sim.t-freqTimeZero)*frequency + phaseShift;
+	switch (waveform) {
+	case WF_DC: return maxVoltage+bias;
+	case WF_AC: return Math.sin(w)*maxVoltage+bias;
+	case WF_SQUARE:
+	    return bias+((w % (2*pi) > (2*pi*dutyCycle)) ?
+			 -maxVoltage : maxVoltage);
+	case WF_TRIANGLE:
+	    return bias+triangleFunc(w % (2*pi))*maxVoltage;
+	case WF_SAWTOOTH:
+	    return bias+(w % (2*pi))*(maxVoltage/pi)-maxVoltage;
+	case WF_PULSE:
+	    return ((w % (2*pi)) < (2*pi*dutyCycle)) ? maxVoltage+bias : bias;
+	case WF_NOISE:
+	    return noiseValue;
+	// VarRailElm keeps the slider voltage in frequency
+	case WF_VAR:
+	    return frequency;
+	default: return 0;
+	}
+    }
+
+    boolean storesNodeVoltageOnly() { return true; }
+
+    // square and pulse waveforms are constant between breakpoints
+    int getStateCount() {
+	return (waveform == WF_DC || waveform == WF_VAR || waveform == WF_SQUARE ||
+		waveform == WF_PULSE) ? 0 : -1;
+    }
+
+    void registerBreakpoints() {
+	if (frequency <= 0)
+	    return;
+	switch (waveform) {
+	case WF_SQUARE:
+	case WF_PULSE:
+	    addEdgeBreakpoint(0);
+	    addEdgeBreakpoint(dutyCycle);
+	    break;
+	case WF_TRIANGLE:
+	    addEdgeBreakpoint(0);
+	    addEdgeBreakpoint(.5);
+	    break;
+	case WF_SAWTOOTH:
+	    addEdgeBreakpoint(0);
+	    break;
+	}
+    }
+
+    // report the next time after sim.t at which the waveform is at fraction f of its period
+    void addEdgeBreakpoint(double f) {
+	double p = (sim.t-freqTimeZero)*frequency + phaseShift/(2*pi);
+	double n = Math.floor(p-f)+1;
+	// go a tiny bit past the edge so getVoltage() is sure to see the new value there
+	sim.addBreakpoint(freqTimeZero + (n+f+1e-9-phaseShift/(2*pi))/frequency);
+    }
+}
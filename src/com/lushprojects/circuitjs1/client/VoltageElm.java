@@ -25,128 +25,66 @@ import com.lushprojects.circuitjs1.client.util.Locale;
 class VoltageElm extends CircuitElm {
     static final int FLAG_COS = 2;
     static final int FLAG_PULSE_DUTY = 4;
-    int waveform;
-    static final int WF_DC = 0;
-    static final int WF_AC = 1;
-    static final int WF_SQUARE = 2;
-    static final int WF_TRIANGLE = 3;
-    static final int WF_SAWTOOTH = 4;
-    static final int WF_PULSE = 5;
-    static final int WF_NOISE = 6;
-    static final int WF_VAR = 7;
-    double frequency, maxVoltage, freqTimeZero, bias,
-	phaseShift, dutyCycle, noiseValue;
+    static final int WF_DC = VoltageDevice.WF_DC;
+    static final int WF_AC = VoltageDevice.WF_AC;
+    static final int WF_SQUARE = VoltageDevice.WF_SQUARE;
+    static final int WF_TRIANGLE = VoltageDevice.WF_TRIANGLE;
+    static final int WF_SAWTOOTH = VoltageDevice.WF_SAWTOOTH;
+    static final int WF_PULSE = VoltageDevice.WF_PULSE;
+    static final int WF_NOISE = VoltageDevice.WF_NOISE;
+    static final int WF_VAR = VoltageDevice.WF_VAR;
+    VoltageDevice source;
     
     static final double defaultPulseDuty = 1/(2*Math.PI);
     
     VoltageElm(int xx, int yy, int wf) {
 	super(xx, yy);
-	waveform = wf;
-	maxVoltage = 5;
-	frequency = 40;
-	dutyCycle = .5;
+	setDevice(source = createDevice());
+	source.waveform = wf;
 	reset();
     }
     public VoltageElm(int xa, int ya, int xb, int yb, int f,
 		      StringTokenizer st) {
 	super(xa, ya, xb, yb, f);
-	maxVoltage = 5;
-	frequency = 40;
-	waveform = WF_DC;
-	dutyCycle = .5;
-	try {
-	    waveform = new Integer(st.nextToken()).intValue();
-	    frequency = new Double(st.nextToken()).doubleValue();
-	    maxVoltage = new Double(st.nextToken()).doubleValue();
-	    bias = new Double(st.nextToken()).doubleValue();
-	    phaseShift = new Double(st.nextToken()).doubleValue();
-	    dutyCycle = new Double(st.nextToken()).doubleValue();
-	} catch (Exception e) {
-	}
-	if ((flags & FLAG_COS) != 0) {
-	    flags &= ~FLAG_COS;
-	    phaseShift = pi/2;
-	}
-	
-	// old circuit files have the wrong duty cycle for pulse waveforms (wasn't configurable in the past)
-	if ((flags & FLAG_PULSE_DUTY) == 0 && waveform == WF_PULSE) {
-	    dutyCycle = defaultPulseDuty;
-	}
-	
+	setDevice(source = createDevice());
+	source.undump(st, f);
+	flags &= ~FLAG_COS;
 	reset();
     }
+
+    // the device gets its voltage from getVoltage(), so subclasses can override that
+    VoltageDevice createDevice() {
+	return new VoltageDevice(sim) {
+	    double getVoltage() { return VoltageElm.this.getVoltage(); }
+	};
+    }
     int getDumpType() { return 'v'; }
     
     String dump() {
 	// set flag so we know if duty cycle is correct for pulse waveforms
-	if (waveform == WF_PULSE)
+	if (source.waveform == WF_PULSE)
 	    flags |= FLAG_PULSE_DUTY;
 	else
 	    flags &= ~FLAG_PULSE_DUTY;
 	
-	return super.dump() + " " + waveform + " " + frequency + " " +
-	    maxVoltage + " " + bias + " " + phaseShift + " " +
-	    dutyCycle;
+	return super.dump() + " " + source.waveform + " " + source.frequency + " " +
+	    source.maxVoltage + " " + source.bias + " " + source.phaseShift + " " +
+	    source.dutyCycle;
 	// VarRailElm adds text at the end
     }
 
-    void reset() {
-	freqTimeZero = 0;
-	curcount = 0;
-    }
-    double triangleFunc(double x) {
-	if (x < pi)
-	    return x*(2/pi)-1;
-	return 1-(x-pi)*(2/pi);
-    }
-    int getVoltageSource() { return voltSource; }
-    void stamp() {
-	if (waveform == WF_DC)
-	    sim.stampVoltageSource(nodes[0], nodes[1], voltSource,
-			       getVoltage());
-	else
-	    sim.stampVoltageSource(nodes[0], nodes[1], voltSource);
-    }
-    void doStep() {
-	if (waveform != WF_DC)
-	    sim.updateVoltageSource(nodes[0], nodes[1], voltSource,
-				getVoltage());
-    }
-    void stepFinished() {
-	if (waveform == WF_NOISE)
-	    noiseValue = (sim.random.nextDouble()*2-1) * maxVoltage + bias;
-    }
-    double getVoltage() {
-	if (waveform != WF_DC && sim.dcAnalysisFlag)
-	    return bias;
-	
-	double w = 2*pi*(sim.t-freqTimeZero)*frequency + phaseShift;
-	switch (waveform) {
-	case WF_DC: return maxVoltage+bias;
-	case WF_AC: return Math.sin(w)*maxVoltage+bias;
-	case WF_SQUARE:
-	    return bias+((w % (2*pi) > (2*pi*dutyCycle)) ?
-			 -maxVoltage : maxVoltage);
-	case WF_TRIANGLE:
-	    return bias+triangleFunc(w % (2*pi))*maxVoltage;
-	case WF_SAWTOOTH:
-	    return bias+(w % (2*pi))*(maxVoltage/pi)-maxVoltage;
-	case WF_PULSE:
-	    return ((w % (2*pi)) < (2*pi*dutyCycle)) ? maxVoltage+bias : bias;
-	case WF_NOISE:
-	    return noiseValue;
-	default: return 0;
-	}
-    }
+    int getVoltageSource() { return source.voltSource; }
+    double getVoltage() { return source.getWaveformVoltage(); }
+
     final int circleSize = 17;
     void setPoints() {
 	super.setPoints();
-	calcLeads((waveform == WF_DC || waveform == WF_VAR) ? 8 : circleSize*2);
+	calcLeads((source.waveform == WF_DC || source.waveform == WF_VAR) ? 8 : circleSize*2);
     }
     void draw(Graphics g) {
 	setBbox(x, y, x2, y2);
 	draw2Leads(g);
-	if (waveform == WF_DC) {
+	if (source.waveform == WF_DC) {
 	    setVoltageColor(g, volts[0]);
 	    setPowerColor(g, false);
 	    interpPoint2(lead1, lead2, ps1, ps2, 0, 10);
@@ -162,7 +100,7 @@ class VoltageElm extends CircuitElm {
 	    interpPoint(lead1, lead2, ps1, .5);
 	    drawWaveform(g, ps1);
 	    String inds;
-	    if (bias>0 || (bias==0 && waveform == WF_PULSE))
+	    if (source.bias>0 || (source.bias==0 && source.waveform == WF_PULSE))
                inds="+";
 	    else
                inds="*";
@@ -175,7 +113,7 @@ class VoltageElm extends CircuitElm {
 	}
 	updateDotCount();
 	if (sim.dragElm != this) {
-	    if (waveform == WF_DC)
+	    if (source.waveform == WF_DC)
 		drawDots(g, point1, point2, curcount);
 	    else {
 		drawDots(g, point1, lead1, curcount);
@@ -189,19 +127,19 @@ class VoltageElm extends CircuitElm {
 	g.setColor(needsHighlight() ? selectColor : Color.gray);
 	setPowerColor(g, false);
 	int xc = center.x; int yc = center.y;
-	if (waveform != WF_NOISE)
+	if (source.waveform != WF_NOISE)
 	    drawThickCircle(g, xc, yc, circleSize);
 	int wl = 8;
 	adjustBbox(xc-circleSize, yc-circleSize,
 		   xc+circleSize, yc+circleSize);
 	int xc2;
-	switch (waveform) {
+	switch (source.waveform) {
 	case WF_DC:
 	{
 	    break;
 	}
 	case WF_SQUARE:
-	    xc2 = (int) (wl*2*dutyCycle-wl+xc);
+	    xc2 = (int) (wl*2*source.dutyCycle-wl+xc);
 	    xc2 = max(xc-wl+3, min(xc+wl-3, xc2));
 	    drawThickLine(g, xc-wl, yc-wl, xc-wl, yc   );
 	    drawThickLine(g, xc-wl, yc-wl, xc2  , yc-wl);
@@ -256,20 +194,17 @@ class VoltageElm extends CircuitElm {
 	    break;
 	}
 	}
-	if (sim.showValuesCheckItem.getState() && waveform != WF_NOISE) {
-	    String s = getShortUnitText(frequency, "Hz");
+	if (sim.showValuesCheckItem.getState() && source.waveform != WF_NOISE) {
+	    String s = getShortUnitText(source.frequency, "Hz");
 	    if (dx == 0 || dy == 0)
 		drawValues(g, s, circleSize);
 	}
     }
 	
-    int getVoltageSourceCount() {
-	return 1;
-    }
-    double getPower() { return -getVoltageDiff()*current; }
+    double getPower() { return -getVoltageDiff()*getCurrent(); }
     double getVoltageDiff() { return volts[1] - volts[0]; }
     void getInfo(String arr[]) {
-	switch (waveform) {
+	switch (source.waveform) {
 	case WF_DC: case WF_VAR:
 	    arr[0] = "voltage source"; break;
 	case WF_AC:       arr[0] = "A/C source"; break;
@@ -283,27 +218,27 @@ class VoltageElm extends CircuitElm {
 	arr[2] = ((this instanceof RailElm) ? "V = " : "Vd = ") +
 	    getVoltageText(getVoltageDiff());
 	int i = 3;
-	if (waveform != WF_DC && waveform != WF_VAR && waveform != WF_NOISE) {
-	    arr[i++] = "f = " + getUnitText(frequency, "Hz");
-	    arr[i++] = "Vmax = " + getVoltageText(maxVoltage);
-	    if (waveform == WF_AC && bias == 0)
-		arr[i++] = "V(rms) = " + getVoltageText(maxVoltage/1.41421356);
-	    if (bias != 0)
-		arr[i++] = "Voff = " + getVoltageText(bias);
-	    else if (frequency > 500)
+	if (source.waveform != WF_DC && source.waveform != WF_VAR && source.waveform != WF_NOISE) {
+	    arr[i++] = "f = " + getUnitText(source.frequency, "Hz");
+	    arr[i++] = "Vmax = " + getVoltageText(source.maxVoltage);
+	    if (source.waveform == WF_AC && source.bias == 0)
+		arr[i++] = "V(rms) = " + getVoltageText(source.maxVoltage/1.41421356);
+	    if (source.bias != 0)
+		arr[i++] = "Voff = " + getVoltageText(source.bias);
+	    else if (source.frequency > 500)
 		arr[i++] = "wavelength = " +
-		    getUnitText(2.9979e8/frequency, "m");
+		    getUnitText(2.9979e8/source.frequency, "m");
 	}
-	if (waveform == WF_DC && current != 0 && sim.showResistanceInVoltageSources)
-	    arr[i++] = "(R = " + getUnitText(maxVoltage/current, Locale.ohmString) + ")";
+	if (source.waveform == WF_DC && getCurrent() != 0 && sim.showResistanceInVoltageSources)
+	    arr[i++] = "(R = " + getUnitText(source.maxVoltage/getCurrent(), Locale.ohmString) + ")";
 	arr[i++] = "P = " + getUnitText(getPower(), "W");
     }
     public EditInfo getEditInfo(int n) {
 	if (n == 0)
-	    return new EditInfo(waveform == WF_DC ? "Voltage" :
-				"Max Voltage", maxVoltage, -20, 20);
+	    return new EditInfo(source.waveform == WF_DC ? "Voltage" :
+				"Max Voltage", source.maxVoltage, -20, 20);
 	if (n == 1) {
-	    EditInfo ei =  new EditInfo("Waveform", waveform, -1, -1);
+	    EditInfo ei =  new EditInfo("Waveform", source.waveform, -1, -1);
 	    ei.choice = new Choice();
 	    ei.choice.add("D/C");
 	    ei.choice.add("A/C");
@@ -312,63 +247,63 @@ class VoltageElm extends CircuitElm {
 	    ei.choice.add("Sawtooth");
 	    ei.choice.add("Pulse");
 	    ei.choice.add("Noise");
-	    ei.choice.select(waveform);
+	    ei.choice.select(source.waveform);
 	    return ei;
 	}
 	if (n == 2)
-	    return new EditInfo("DC Offset (V)", bias, -20, 20);
-	if (waveform == WF_DC || waveform == WF_NOISE)
+	    return new EditInfo("DC Offset (V)", source.bias, -20, 20);
+	if (source.waveform == WF_DC || source.waveform == WF_NOISE)
 	    return null;
 	if (n == 3)
-	    return new EditInfo("Frequency (Hz)", frequency, 4, 500);
+	    return new EditInfo("Frequency (Hz)", source.frequency, 4, 500);
 	if (n == 4)
-	    return new EditInfo("Phase Offset (degrees)", phaseShift*180/pi,
+	    return new EditInfo("Phase Offset (degrees)", source.phaseShift*180/pi,
 				-180, 180).setDimensionless();
-	if (n == 5 && (waveform == WF_PULSE || waveform == WF_SQUARE))
-	    return new EditInfo("Duty Cycle", dutyCycle*100, 0, 100).
+	if (n == 5 && (source.waveform == WF_PULSE || source.waveform == WF_SQUARE))
+	    return new EditInfo("Duty Cycle", source.dutyCycle*100, 0, 100).
 		setDimensionless();
 	return null;
     }
     public void setEditValue(int n, EditInfo ei) {
 	if (n == 0)
-	    maxVoltage = ei.value;
+	    source.maxVoltage = ei.value;
 	if (n == 2)
-	    bias = ei.value;
+	    source.bias = ei.value;
 	if (n == 3) {
 	    // adjust time zero to maintain continuity ind the waveform
 	    // even though the frequency has changed.
-	    double oldfreq = frequency;
-	    frequency = ei.value;
+	    double oldfreq = source.frequency;
+	    source.frequency = ei.value;
 	    double maxfreq = 1/(8*sim.maxTimeStep);
-	    if (frequency > maxfreq) {
+	    if (source.frequency > maxfreq) {
 		if (Window.confirm(Locale.LS("Adjust timestep to allow for higher frequencies?")))
-		    sim.maxTimeStep = 1/(32*frequency);
+		    sim.maxTimeStep = 1/(32*source.frequency);
 		else
-		    frequency = maxfreq;
+		    source.frequency = maxfreq;
 	    }
-	    double adj = frequency-oldfreq;
-	    freqTimeZero = (frequency == 0) ? 0 : sim.t-oldfreq*(sim.t-freqTimeZero)/frequency;
+	    double adj = source.frequency-oldfreq;
+	    source.freqTimeZero = (source.frequency == 0) ? 0 : sim.t-oldfreq*(sim.t-source.freqTimeZero)/source.frequency;
 	}
 	if (n == 1) {
-	    int ow = waveform;
-	    waveform = ei.choice.getSelectedIndex();
-	    if (waveform == WF_DC && ow != WF_DC) {
+	    int ow = source.waveform;
+	    source.waveform = ei.choice.getSelectedIndex();
+	    if (source.waveform == WF_DC && ow != WF_DC) {
 		ei.newDialog = true;
-		bias = 0;
-	    } else if (waveform != ow)
+		source.bias = 0;
+	    } else if (source.waveform != ow)
 		ei.newDialog = true;
 	    
 	    // change duty cycle if we're changing to or from pulse
-	    if (waveform == WF_PULSE && ow != WF_PULSE)
-		dutyCycle = defaultPulseDuty;
-	    else if (ow == WF_PULSE && waveform != WF_PULSE)
-		dutyCycle = .5;
+	    if (source.waveform == WF_PULSE && ow != WF_PULSE)
+		source.dutyCycle = defaultPulseDuty;
+	    else if (ow == WF_PULSE && source.waveform != WF_PULSE)
+		source.dutyCycle = .5;
 	    
 	    setPoints();
 	}
 	if (n == 4)
-	    phaseShift = ei.value*pi/180;
+	    source.phaseShift = ei.value*pi/180;
 	if (n == 5)
-	    dutyCycle = ei.value*.01;
+	    source.dutyCycle = ei.value*.01;
     }
 }
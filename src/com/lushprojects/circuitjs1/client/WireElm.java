@@ -20,10 +20,14 @@
 package com.lushprojects.circuitjs1.client;
 
     class WireElm extends CircuitElm {
-	public WireElm(int xx, int yy) { super(xx, yy); }
+	public WireElm(int xx, int yy) {
+	    super(xx, yy);
+	    setDevice(new WireDevice(sim));
+	}
 	public WireElm(int xa, int ya, int xb, int yb, int f,
 		       StringTokenizer st) {
 	    super(xa, ya, xb, yb, f);
+	    setDevice(new WireDevice(sim));
 	}
 	static final int FLAG_SHOWCURRENT = 1;
 	static final int FLAG_SHOWVOLTAGE = 2;
@@ -42,9 +46,6 @@ package com.lushprojects.circuitjs1.client;
 	    drawValues(g, s, 4);
 	    drawPosts(g);
 	}
-	void stamp() {
-//	    sim.stampVoltageSource(nodes[0], nodes[1], voltSource, 0);
-	}
 	boolean mustShowCurrent() {
 	    return (flags & FLAG_SHOWCURRENT) != 0;
 	}
@@ -60,8 +61,6 @@ package com.lushprojects.circuitjs1.client;
 	int getDumpType() { return 'w'; }
 	double getPower() { return 0; }
 	double getVoltageDiff() { return volts[0]; }
-	boolean isWireEquivalent() { return true; }
-	boolean isRemovableWire() { return true; }
 	public EditInfo getEditInfo(int n) {
 	    if (n == 0) {
 		EditInfo ei = new EditInfo("", 0, -1, -1);
@@ -27,13 +27,7 @@ package com.lushprojects.circuitjs1.client;
 	}
 	String getGateName() { return "XOR gate"; }
 	String getGateText() { return "=1"; }
-	boolean calcFunction() {
-	    int i;
-	    boolean f = false;
-	    for (i = 0; i != inputCount; i++)
-		f ^= getInput(i);
-	    return f;
-	}
+	int getGateFunction() { return GateDevice.FUNC_XOR; }
 	
 	public EditInfo getEditInfo(int n) {
 	    // no invert inputs option
@@ -2,67 +2,180 @@ package com.lushprojects.circuitjs1.client.util;
 
 import java.util.*;
 
+// Performance metrics for the simulator.  One PerfMonitor lives as long as the CirSim, so
+// the numbers build up across frames.
+//
+// Code being timed is wrapped in startContext()/stopContext() pairs, which can be nested.
+// Each context name gets a rolling histogram of its last HISTORY durations, and each
+// finished context is also written to a ring buffer of trace events, which getTraceJSON()
+// exports in the Chrome trace event format (load it in chrome://tracing or Perfetto).
+// Counters (timesteps, subiterations, ...) are plain totals, indexed by the COUNT_*
+// constants so that counting is just an array update.
+//
+// Recording a context costs two calls to performance.now() and a few array stores; the
+// sorting for percentiles is only done when stats are requested.
 public class PerfMonitor {
-    
-    String rootCtxName;
-    PerfEntry rootCtx;
-    PerfEntry ctx;
-    
+
+    // number of durations kept for each context
+    static final int HISTORY = 256;
+
+    // number of trace events kept
+    static final int TRACE_SIZE = 16384;
+
+    public static final int COUNT_TIMESTEPS = 0;
+    public static final int COUNT_SUBITERATIONS = 1;
+    public static final int COUNT_FACTORIZATIONS = 2;
+    public static final int COUNT_CONVERGENCE_FAILURES = 3;
+    static final String counterNames[] = {
+        "timesteps", "subiterations", "luFactorizations", "convergenceFailures"
+    };
+
+    double counters[] = new double[counterNames.length];
+
+    // metrics in the order they were first seen, for display
+    ArrayList<Metric> metricList = new ArrayList<Metric>();
+    HashMap<String, Metric> metrics = new HashMap<String, Metric>();
+
+    // open contexts
+    Metric stack[] = new Metric[16];
+    double stackStart[] = new double[16];
+    int depth;
+
+    // trace ring buffer
+    Metric traceMetric[] = new Metric[TRACE_SIZE];
+    double traceStart[] = new double[TRACE_SIZE];
+    double traceLength[] = new double[TRACE_SIZE];
+    int traceDepth[] = new int[TRACE_SIZE];
+    int tracePos, traceCount;
+
     public PerfMonitor() {
-    
+
     }
 
     public void startContext(String name) {
-        PerfEntry newEntry = startNewEntry(ctx);
-        if (ctx == null) {
-            ctx = newEntry;
-            if (rootCtx == null) {
-                rootCtxName = name;
-                rootCtx = ctx;
-            }
-        } else {
-            if (ctx.AddChild(name, newEntry)) {
-                ctx = newEntry;
-            }
+        if (depth == stack.length)
+            return;
+        Metric m = metrics.get(name);
+        if (m == null) {
+            m = new Metric(name, depth);
+            metrics.put(name, m);
+            metricList.add(m);
         }
+        stack[depth] = m;
+        stackStart[depth++] = getTime();
     }
-    
+
     public void stopContext() {
-        if (ctx != null) {
-            ctx.endTime = getTime();
-            ctx.length = ctx.endTime - ctx.startTime;
-            ctx = ctx.parent;
-        }
+        if (depth == 0)
+            return;
+        double end = getTime();
+        depth--;
+        double start = stackStart[depth];
+        stack[depth].add(end - start);
+        traceMetric[tracePos] = stack[depth];
+        traceStart[tracePos] = start;
+        traceLength[tracePos] = end - start;
+        traceDepth[tracePos] = depth;
+        tracePos = (tracePos + 1) % TRACE_SIZE;
+        if (traceCount < TRACE_SIZE)
+            traceCount++;
     }
-    
-    private PerfEntry startNewEntry(PerfEntry parent) {
-        PerfEntry newEntry = new PerfEntry(parent);
-        newEntry.startTime = getTime();
-        return newEntry;
+
+    // forget any contexts left open (by an exception) without recording them
+    public void clearContexts() {
+        depth = 0;
+    }
+
+    public void count(int counter, double n) {
+        counters[counter] += n;
     }
-    
+
+    public void reset() {
+        int i;
+        for (i = 0; i != counters.length; i++)
+            counters[i] = 0;
+        for (i = 0; i != metricList.size(); i++)
+            metricList.get(i).clear();
+        tracePos = traceCount = 0;
+    }
+
+    // text for the developer mode overlay: last, mean and 95th percentile time of each context
     public static StringBuilder buildString(PerfMonitor mon) {
         StringBuilder sb = new StringBuilder();
-        buildStringInternal(sb, mon.rootCtxName, mon.rootCtx, 0);
+        for (Metric m : mon.metricList) {
+            for (int x = 0; x < m.depth; x++) {
+                sb.append("-");
+            }
+            sb.append(m.name);
+            sb.append(": ");
+            sb.append(format(m.last));
+            sb.append(" (avg ");
+            sb.append(format(m.getMean()));
+            sb.append(", p95 ");
+            sb.append(format(m.getPercentile(.95)));
+            sb.append(")\n");
+        }
         return sb;
-    } 
-    
-    private static void buildStringInternal(StringBuilder sb, String name, PerfEntry entry, int depth) {
-        for (int x = 0; x < depth; x++) {
-            sb.append("-");
+    }
+
+    static String format(double x) {
+        return String.valueOf(Math.round(x * 100) / 100.);
+    }
+
+    // stats as JSON: { "contexts": { name: { count, last, mean, min, max, p50, p95 } },
+    // "counters": { name: total } }.  Times are in milliseconds, over the last HISTORY samples.
+    public String getStatsJSON() {
+        StringBuilder sb = new StringBuilder("{\"contexts\":{");
+        int i;
+        for (i = 0; i != metricList.size(); i++) {
+            Metric m = metricList.get(i);
+            if (i > 0)
+                sb.append(',');
+            sb.append(quote(m.name)).append(":{");
+            sb.append("\"count\":").append(m.count);
+            sb.append(",\"last\":").append(m.last);
+            sb.append(",\"mean\":").append(m.getMean());
+            sb.append(",\"min\":").append(m.getPercentile(0));
+            sb.append(",\"max\":").append(m.getPercentile(1));
+            sb.append(",\"p50\":").append(m.getPercentile(.5));
+            sb.append(",\"p95\":").append(m.getPercentile(.95));
+            sb.append('}');
         }
-        sb.append(name);
-        sb.append(": ");
-        sb.append(entry.length);
-        sb.append("\n");
-        Set<String> keys = entry.children.keySet();
-        for (String key : keys){
-            PerfEntry child = entry.children.get(key);
-            buildStringInternal(sb, key, child, depth + 1);
+        sb.append("},\"counters\":{");
+        for (i = 0; i != counters.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(quote(counterNames[i])).append(':').append(counters[i]);
         }
+        sb.append("}}");
+        return sb.toString();
     }
-    
-    private static native float getTime() /*-{
+
+    // recorded contexts as Chrome trace events ("complete" events, with times in
+    // microseconds), oldest first
+    public String getTraceJSON() {
+        StringBuilder sb = new StringBuilder("{\"traceEvents\":[");
+        int i;
+        int start = (tracePos - traceCount + TRACE_SIZE) % TRACE_SIZE;
+        for (i = 0; i != traceCount; i++) {
+            int p = (start + i) % TRACE_SIZE;
+            if (i > 0)
+                sb.append(",\n");
+            sb.append("{\"name\":").append(quote(traceMetric[p].name));
+            sb.append(",\"cat\":\"circuitjs\",\"ph\":\"X\",\"pid\":1,\"tid\":1");
+            sb.append(",\"ts\":").append(Math.round(traceStart[p] * 1000));
+            sb.append(",\"dur\":").append(Math.round(traceLength[p] * 1000));
+            sb.append(",\"args\":{\"depth\":").append(traceDepth[p]).append("}}");
+        }
+        sb.append("],\"displayTimeUnit\":\"ms\"}");
+        return sb.toString();
+    }
+
+    static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    public static native double getTime() /*-{
         // https://stackoverflow.com/questions/6875625
         if (window.performance.now) {
             return window.performance.now();
@@ -75,34 +188,54 @@ public class PerfMonitor {
         }
     }-*/;
 
-    class PerfEntry {
-    
-        public PerfEntry parent;
-        public HashMap<String, PerfEntry> children;
-            
-        public float startTime;
-        public float endTime;
-        public float length;
-        
-        public PerfEntry(PerfEntry p) {
-            parent = p;
-            children = new HashMap<String, PerfEntry>();
+    // rolling histogram of the durations of one context
+    static class Metric {
+        String name;
+        int depth;
+        double samples[] = new double[HISTORY];
+        int count;
+        double last;
+
+        Metric(String n, int d) {
+            name = n;
+            depth = d;
         }
-        
-        public boolean AddChild(String name, PerfEntry entry) {
-            if (!children.containsKey(name)) {
-                children.put(name, entry);
-                return true;
-            }
-            return false;
+
+        void add(double x) {
+            samples[count % HISTORY] = x;
+            count++;
+            last = x;
         }
-        
-        public PerfEntry GetChild(String name) {
-            if (children.containsKey(name)) {
-                return children.get(name);
-            }
-            return null;
+
+        void clear() {
+            count = 0;
+            last = 0;
+        }
+
+        int size() {
+            return Math.min(count, HISTORY);
+        }
+
+        double getMean() {
+            int n = size();
+            if (n == 0)
+                return 0;
+            double sum = 0;
+            for (int i = 0; i != n; i++)
+                sum += samples[i];
+            return sum / n;
+        }
+
+        // fraction q of the recent samples are at most this long
+        double getPercentile(double q) {
+            int n = size();
+            if (n == 0)
+                return 0;
+            double sorted[] = new double[n];
+            System.arraycopy(samples, 0, sorted, 0, n);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.round(q * (n - 1))];
         }
     }
-    
+
 }